@@ -59,6 +59,7 @@ public class AhoCorasickSearch {
 		while (!queue.isEmpty()) {
 			TrieNode current = queue.poll();
 			current.setFailure(findFailureNode(current));
+			current.compileOutputs();
 			queue.addAll(current.getAllNext());
 		}
 	}
@@ -115,7 +116,7 @@ public class AhoCorasickSearch {
 			if (nextNode != null) {
 				node = nextNode;
 
-				for (Pattern p : node.getPatterns(includeFailureSet)) {
+				for (Pattern p : node.getPatternArray(includeFailureSet)) {
 					int pos = length - offset + i - p.getKeyword().length + 1;
 					result.add(new Pair(pos, p));
 					needResultCount--;
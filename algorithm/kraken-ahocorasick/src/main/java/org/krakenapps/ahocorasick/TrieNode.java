@@ -18,6 +18,7 @@ package org.krakenapps.ahocorasick;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -30,6 +31,11 @@ public class TrieNode {
 	private TrieNode failure;
 	private Set<Pattern> patterns;
 
+	// patterns of this node and all failure nodes, built by compile
+	private Set<Pattern> outputs;
+	private Pattern[] outputArray;
+	private Pattern[] patternArray;
+
 	public TrieNode(int id, Byte body, TrieNode previous) {
 		this.id = id;
 		this.body = body;
@@ -101,6 +107,9 @@ public class TrieNode {
 	public Set<Pattern> getPatterns(boolean includeFailureSet) {
 		Set<Pattern> p = null;
 
+		if (includeFailureSet && outputs != null)
+			return outputs;
+
 		if (includeFailureSet) {
 			p = new HashSet<Pattern>();
 			if (id != 0) {
@@ -113,10 +122,39 @@ public class TrieNode {
 		return p;
 	}
 
+	/**
+	 * Returns compiled patterns as array, which can be iterated without
+	 * allocation.
+	 */
+	public Pattern[] getPatternArray(boolean includeFailureSet) {
+		if (outputArray == null) {
+			Set<Pattern> p = getPatterns(includeFailureSet);
+			return p.toArray(new Pattern[p.size()]);
+		}
+
+		return includeFailureSet ? outputArray : patternArray;
+	}
+
 	public void addPattern(Pattern pattern) {
 		this.patterns.add(pattern);
 	}
 
+	/**
+	 * Merges patterns of failure node, so that search does not walk failure
+	 * chain at every match. Failure node should be compiled before.
+	 */
+	public void compileOutputs() {
+		Set<Pattern> s = new HashSet<Pattern>();
+		if (id != 0) {
+			s.addAll(patterns);
+			s.addAll(failure.getPatterns(true));
+		}
+
+		outputs = Collections.unmodifiableSet(s);
+		outputArray = s.toArray(new Pattern[s.size()]);
+		patternArray = patterns.toArray(new Pattern[patterns.size()]);
+	}
+
 	public byte[] getKeyword() {
 		return getKeywordInternal(0);
 	}
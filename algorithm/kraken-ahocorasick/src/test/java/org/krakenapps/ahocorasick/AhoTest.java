@@ -16,10 +16,14 @@
 package org.krakenapps.ahocorasick;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.junit.Test;
 
+import static org.junit.Assert.*;
+
 public class AhoTest {
 
 	@Test
@@ -53,4 +57,25 @@ public class AhoTest {
 		for (Pair pair : result2)
 			System.out.println(pair);
 	}
+
+	@Test
+	public void testFailurePatterns() {
+		AhoCorasickSearch acSearch = new AhoCorasickSearch();
+		for (String keyword : new String[] { "he", "she", "his", "hers" })
+			acSearch.addKeyword(new CustomPattern(keyword, keyword));
+		acSearch.compile();
+
+		SearchContext ctx = new SearchContext();
+		ctx.setIncludeFailurePatterns(true);
+
+		Set<String> found = new HashSet<String>();
+		for (Pair pair : acSearch.search("ushers".getBytes(), ctx))
+			found.add(((CustomPattern) pair.getPattern()).getDescription());
+
+		Set<String> expected = new HashSet<String>();
+		expected.add("she");
+		expected.add("he");
+		expected.add("hers");
+		assertEquals(expected, found);
+	}
 }
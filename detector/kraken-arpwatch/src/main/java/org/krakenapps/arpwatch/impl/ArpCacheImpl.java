@@ -15,11 +15,14 @@
  */
 package org.krakenapps.arpwatch.impl;
 
+import java.net.Inet4Address;
 import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
-import java.util.Map;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -27,81 +30,126 @@ import org.krakenapps.arpwatch.ArpCache;
 import org.krakenapps.arpwatch.ArpCacheListener;
 import org.krakenapps.arpwatch.ArpEntry;
 import org.krakenapps.pcap.decoder.arp.ArpPacket;
+import org.krakenapps.pcap.decoder.ethernet.MacAddress;
 
+/**
+ * Keeps IPv4 to mac bindings in primitive table. Listeners are notified only
+ * when binding is added or changed, and at most once per refresh interval
+ * while same binding is seen again. Entry objects are created only for
+ * notifications and queries.
+ */
 public class ArpCacheImpl implements ArpCache {
-	private Map<InetAddress, ArpEntry> entryMap;
+	private static final int ADDED = 1;
+	private static final int UPDATED = 2;
+	private static final int CHANGED = 3;
+
+	private final long refreshInterval;
+	private final ArpTable table;
 	private Set<ArpCacheListener> listeners;
 
 	public ArpCacheImpl() {
-		entryMap = new ConcurrentHashMap<InetAddress, ArpEntry>();
+		refreshInterval = Integer.getInteger("kraken.arpwatch.refresh_interval", 60000);
+		table = new ArpTable(Integer.getInteger("kraken.arpwatch.expected_hosts", 1024));
 		listeners = Collections.newSetFromMap(new ConcurrentHashMap<ArpCacheListener, Boolean>());
 	}
 
 	@Override
 	public ArpEntry find(InetAddress ip) {
-		return entryMap.get(ip);
+		if (!(ip instanceof Inet4Address))
+			return null;
+
+		synchronized (table) {
+			int slot = table.indexOf(ArpTable.toInt(ip.getAddress()));
+			if (slot < 0)
+				return null;
+			return toEntry(slot, ip);
+		}
 	}
 
 	@Override
 	public Collection<ArpEntry> getCachedEntries() {
-		return Collections.unmodifiableCollection(entryMap.values());
+		synchronized (table) {
+			List<ArpEntry> entries = new ArrayList<ArpEntry>(table.size());
+			for (int slot = 0; slot < table.capacity(); slot++) {
+				if (!table.isUsed(slot))
+					continue;
+
+				try {
+					InetAddress ip = InetAddress.getByAddress(ArpTable.toBytes(table.getIp(slot)));
+					entries.add(toEntry(slot, ip));
+				} catch (UnknownHostException e) {
+					// should not reach
+				}
+			}
+			return Collections.unmodifiableCollection(entries);
+		}
 	}
 
 	@Override
 	public void add(ArpPacket p) {
-		if (p.getOpcode() == 2 || (p.getOpcode() == 1 && p.getSenderIp().equals(p.getTargetIp()))) {
-			ArpEntry oldEntry = find(p.getSenderIp());
-			if (oldEntry == null) {
-				addNewEntry(p);
-				return;
-			}
-
-			if (oldEntry.getMacAddress().equals(p.getSenderMac())) {
-				updateEntry(p, oldEntry);
+		if (p.getOpcode() != 2 && !(p.getOpcode() == 1 && p.getSenderIp().equals(p.getTargetIp())))
+			return;
+
+		InetAddress senderIp = p.getSenderIp();
+		if (!(senderIp instanceof Inet4Address))
+			return;
+
+		int ip = ArpTable.toInt(senderIp.getAddress());
+		long mac = ArpTable.toLong(p.getSenderMac().getBytes());
+		long now = System.currentTimeMillis();
+
+		int event = 0;
+		ArpEntry oldEntry = null;
+		ArpEntry entry = null;
+
+		synchronized (table) {
+			int slot = table.indexOf(ip);
+			if (slot < 0) {
+				slot = table.insert(ip);
+				table.setMac(slot, mac);
+				table.setFirstSeen(slot, now);
+				event = ADDED;
+			} else if (table.getMac(slot) == mac) {
+				// extend timeout
+				table.setLastSeen(slot, now);
+				if (now - table.getNotified(slot) < refreshInterval)
+					return;
+				event = UPDATED;
 			} else {
-				alertEntry(p, oldEntry);
+				if (!listeners.isEmpty())
+					oldEntry = toEntry(slot, senderIp);
+
+				table.setMac(slot, mac);
+				table.setFirstSeen(slot, now);
+				event = CHANGED;
 			}
-		}
-	}
 
-	private void alertEntry(ArpPacket p, ArpEntry oldEntry) {
-		ArpEntry entry = new ArpEntryImpl(p.getSenderMac(), p.getSenderIp(), new Date(), new Date());
-		entryMap.put(entry.getIpAddress(), entry);
+			table.setLastSeen(slot, now);
+			table.setNotified(slot, now);
 
-		// alert!
-		for (ArpCacheListener callback : listeners) {
-			try {
-				callback.entryChanged(oldEntry, entry);
-			} catch (Exception e) {
-				// should not reach
-			}
+			if (listeners.isEmpty())
+				return;
+
+			entry = toEntry(slot, senderIp);
 		}
-	}
 
-	private void addNewEntry(ArpPacket p) {
-		ArpEntry entry = new ArpEntryImpl(p.getSenderMac(), p.getSenderIp(), new Date(), new Date());
-		entryMap.put(entry.getIpAddress(), entry);
 		for (ArpCacheListener callback : listeners) {
 			try {
-				callback.entryAdded(entry);
+				if (event == ADDED)
+					callback.entryAdded(entry);
+				else if (event == UPDATED)
+					callback.entryUpdated(entry);
+				else
+					callback.entryChanged(oldEntry, entry); // alert!
 			} catch (Exception e) {
 				// should not reach
 			}
 		}
 	}
 
-	private void updateEntry(ArpPacket p, ArpEntry oldEntry) {
-		// extend timeout
-		ArpEntry entry = new ArpEntryImpl(p.getSenderMac(), p.getSenderIp(), oldEntry.getFirstSeen(), new Date());
-		entryMap.put(entry.getIpAddress(), entry);
-		
-		for (ArpCacheListener callback : listeners) {
-			try {
-				callback.entryUpdated(entry);
-			} catch (Exception e) {
-				// should not reach
-			}
-		}
+	private ArpEntry toEntry(int slot, InetAddress ip) {
+		MacAddress mac = new MacAddress(ArpTable.toMacBytes(table.getMac(slot)));
+		return new ArpEntryImpl(mac, ip, new Date(table.getFirstSeen(slot)), new Date(table.getLastSeen(slot)));
 	}
 
 	@Override
@@ -116,7 +164,9 @@ public class ArpCacheImpl implements ArpCache {
 
 	@Override
 	public void flush() {
-		entryMap.clear();
+		synchronized (table) {
+			table.clear();
+		}
 	}
 
 }
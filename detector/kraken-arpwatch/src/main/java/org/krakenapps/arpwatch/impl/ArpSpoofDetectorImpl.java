@@ -15,9 +15,11 @@
  */
 package org.krakenapps.arpwatch.impl;
 
+import java.net.InetAddress;
 import java.util.Collections;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.krakenapps.arpwatch.ArpCache;
 import org.krakenapps.arpwatch.ArpCacheListener;
@@ -33,8 +35,21 @@ public class ArpSpoofDetectorImpl implements ArpSpoofDetector, ArpCacheListener
 	private ArpStaticBindingConfig config;
 	private Set<ArpSpoofEventListener> callbacks;
 
+	// last event time per spoofed ip, bounded by static binding count
+	private ConcurrentHashMap<InetAddress, Long> lastEvents;
+	private final long eventInterval;
+	private AtomicLong suppressed = new AtomicLong();
+
 	public ArpSpoofDetectorImpl() {
 		callbacks = Collections.newSetFromMap(new ConcurrentHashMap<ArpSpoofEventListener, Boolean>());
+		lastEvents = new ConcurrentHashMap<InetAddress, Long>();
+		eventInterval = Integer.getInteger("kraken.arpwatch.spoof_interval", 10000);
+	}
+
+	public ArpSpoofDetectorImpl(ArpCache cache, ArpStaticBindingConfig config) {
+		this();
+		this.cache = cache;
+		this.config = config;
 	}
 
 	// validate callback
@@ -65,6 +80,15 @@ public class ArpSpoofDetectorImpl implements ArpSpoofDetector, ArpCacheListener
 	private void checkStaticBinding(ArpEntry newEntry) {
 		ArpStaticBinding binding = config.find(newEntry.getIpAddress());
 		if (binding != null && !binding.getMacAddress().equals(newEntry.getMacAddress())) {
+			// mac flapping between victim and attacker should not flood events
+			long now = System.currentTimeMillis();
+			Long last = lastEvents.get(newEntry.getIpAddress());
+			if (last != null && now - last < eventInterval) {
+				suppressed.incrementAndGet();
+				return;
+			}
+			lastEvents.put(newEntry.getIpAddress(), now);
+
 			ArpSpoofEvent event = new ArpSpoofEventImpl(newEntry.getMacAddress(), newEntry.getIpAddress());
 			for (ArpSpoofEventListener callback : callbacks) {
 				try {
@@ -80,6 +104,13 @@ public class ArpSpoofDetectorImpl implements ArpSpoofDetector, ArpCacheListener
 	public void entryRemoved(ArpEntry entry) {
 	}
 
+	/**
+	 * @return the number of spoof events dropped by per ip rate limit
+	 */
+	public long getSuppressedCount() {
+		return suppressed.get();
+	}
+
 	@Override
 	public void register(ArpSpoofEventListener callback) {
 		callbacks.add(callback);
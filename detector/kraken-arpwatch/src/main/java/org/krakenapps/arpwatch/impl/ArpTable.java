@@ -0,0 +1,212 @@
+/*
+ * Copyright 2010 NCHOVY
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.krakenapps.arpwatch.impl;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing IPv4 to (mac, first seen, last seen, flags) table. Keys and
+ * values are kept in parallel primitive arrays, so refreshing a known binding
+ * does not allocate. Entries are never removed one by one, only cleared at
+ * once. Not thread safe, caller should synchronize.
+ */
+class ArpTable {
+	public static final int USED = 1;
+
+	private static final int MIN_CAPACITY = 64;
+
+	private int[] ips;
+	private long[] macs;
+	private long[] firstSeens;
+	private long[] lastSeens;
+	private long[] notifieds;
+	private int[] flags;
+	private int size;
+	private int mask;
+
+	public ArpTable(int expected) {
+		allocate(capacityFor(expected));
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int capacity() {
+		return ips.length;
+	}
+
+	/**
+	 * @return the slot of ip, or -1 if not found
+	 */
+	public int indexOf(int ip) {
+		int slot = hash(ip) & mask;
+		while ((flags[slot] & USED) != 0) {
+			if (ips[slot] == ip)
+				return slot;
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+
+	/**
+	 * Marks a new slot for ip which should not exist yet. Slots returned
+	 * before may be moved by this call.
+	 *
+	 * @return the slot of ip
+	 */
+	public int insert(int ip) {
+		if ((size + 1) * 2 > ips.length)
+			rehash(ips.length * 2);
+
+		int slot = hash(ip) & mask;
+		while ((flags[slot] & USED) != 0)
+			slot = (slot + 1) & mask;
+
+		ips[slot] = ip;
+		flags[slot] = USED;
+		size++;
+		return slot;
+	}
+
+	public void clear() {
+		Arrays.fill(flags, 0);
+		size = 0;
+	}
+
+	public boolean isUsed(int slot) {
+		return (flags[slot] & USED) != 0;
+	}
+
+	public int getIp(int slot) {
+		return ips[slot];
+	}
+
+	public long getMac(int slot) {
+		return macs[slot];
+	}
+
+	public void setMac(int slot, long mac) {
+		macs[slot] = mac;
+	}
+
+	public long getFirstSeen(int slot) {
+		return firstSeens[slot];
+	}
+
+	public void setFirstSeen(int slot, long time) {
+		firstSeens[slot] = time;
+	}
+
+	public long getLastSeen(int slot) {
+		return lastSeens[slot];
+	}
+
+	public void setLastSeen(int slot, long time) {
+		lastSeens[slot] = time;
+	}
+
+	/**
+	 * @return the time when listeners were notified of this slot last time
+	 */
+	public long getNotified(int slot) {
+		return notifieds[slot];
+	}
+
+	public void setNotified(int slot, long time) {
+		notifieds[slot] = time;
+	}
+
+	public int getFlags(int slot) {
+		return flags[slot];
+	}
+
+	public void setFlags(int slot, int f) {
+		flags[slot] = f | USED;
+	}
+
+	public static int toInt(byte[] ip) {
+		return ((ip[0] & 0xff) << 24) | ((ip[1] & 0xff) << 16) | ((ip[2] & 0xff) << 8) | (ip[3] & 0xff);
+	}
+
+	public static byte[] toBytes(int ip) {
+		return new byte[] { (byte) (ip >>> 24), (byte) (ip >>> 16), (byte) (ip >>> 8), (byte) ip };
+	}
+
+	public static long toLong(byte[] mac) {
+		long l = 0;
+		for (int i = 0; i < 6; i++)
+			l = (l << 8) | (mac[i] & 0xff);
+		return l;
+	}
+
+	public static byte[] toMacBytes(long mac) {
+		byte[] b = new byte[6];
+		for (int i = 5; i >= 0; i--) {
+			b[i] = (byte) mac;
+			mac >>>= 8;
+		}
+		return b;
+	}
+
+	private static int hash(int ip) {
+		int h = ip * 0x9e3779b9;
+		return h ^ (h >>> 16);
+	}
+
+	private static int capacityFor(int expected) {
+		int capacity = MIN_CAPACITY;
+		while (capacity < expected * 2)
+			capacity <<= 1;
+		return capacity;
+	}
+
+	private void allocate(int capacity) {
+		ips = new int[capacity];
+		macs = new long[capacity];
+		firstSeens = new long[capacity];
+		lastSeens = new long[capacity];
+		notifieds = new long[capacity];
+		flags = new int[capacity];
+		mask = capacity - 1;
+	}
+
+	private void rehash(int capacity) {
+		int[] oldIps = ips;
+		long[] oldMacs = macs;
+		long[] oldFirstSeens = firstSeens;
+		long[] oldLastSeens = lastSeens;
+		long[] oldNotifieds = notifieds;
+		int[] oldFlags = flags;
+
+		allocate(capacity);
+		for (int i = 0; i < oldIps.length; i++) {
+			if ((oldFlags[i] & USED) == 0)
+				continue;
+
+			int slot = hash(oldIps[i]) & mask;
+			while ((flags[slot] & USED) != 0)
+				slot = (slot + 1) & mask;
+
+			ips[slot] = oldIps[i];
+			macs[slot] = oldMacs[i];
+			firstSeens[slot] = oldFirstSeens[i];
+			lastSeens[slot] = oldLastSeens[i];
+			notifieds[slot] = oldNotifieds[i];
+			flags[slot] = oldFlags[i];
+		}
+	}
+}
@@ -15,6 +15,7 @@
  */
 package org.krakenapps.arpwatch.impl;
 
+import java.io.File;
 import java.net.InetAddress;
 
 import org.krakenapps.api.Script;
@@ -22,11 +23,20 @@ import org.krakenapps.api.ScriptArgument;
 import org.krakenapps.api.ScriptContext;
 import org.krakenapps.api.ScriptUsage;
 import org.krakenapps.arpwatch.ArpCache;
+import org.krakenapps.arpwatch.ArpCacheListener;
 import org.krakenapps.arpwatch.ArpEntry;
+import org.krakenapps.arpwatch.ArpSpoofEvent;
+import org.krakenapps.arpwatch.ArpSpoofEventListener;
 import org.krakenapps.arpwatch.ArpStaticBinding;
 import org.krakenapps.arpwatch.ArpStaticBindingConfig;
 import org.krakenapps.arpwatch.ArpWatcher;
+import org.krakenapps.pcap.decoder.arp.ArpPacket;
+import org.krakenapps.pcap.decoder.arp.ArpProcessor;
+import org.krakenapps.pcap.decoder.ethernet.EthernetFrame;
+import org.krakenapps.pcap.decoder.ethernet.EthernetProcessor;
+import org.krakenapps.pcap.decoder.ethernet.EthernetType;
 import org.krakenapps.pcap.decoder.ethernet.MacAddress;
+import org.krakenapps.pcap.util.PcapFileRunner;
 
 public class ArpWatcherScript implements Script {
 	private ArpWatcher watcher;
@@ -98,6 +108,107 @@ public class ArpWatcherScript implements Script {
 		}
 	}
 
+	@ScriptUsage(description = "replay pcap file through arp decoder and spoof detector, and print packets/s", arguments = {
+			@ScriptArgument(name = "path", type = "string", description = "pcap file path"),
+			@ScriptArgument(name = "repeat", type = "int", description = "replay count, 1 by default", optional = true) })
+	public void benchmark(String[] args) {
+		File file = new File(args[0]);
+		if (!file.exists()) {
+			context.println("pcap file not found: " + file.getAbsolutePath());
+			return;
+		}
+
+		int repeat = 1;
+		if (args.length >= 2)
+			repeat = Integer.parseInt(args[1]);
+
+		for (int i = 1; i <= repeat; i++) {
+			try {
+				benchmark(file);
+			} catch (Exception e) {
+				context.println("benchmark failed: " + e.getMessage());
+				return;
+			}
+		}
+	}
+
+	private void benchmark(File file) throws Exception {
+		// replay to separate cache, live cache and event listeners are not
+		// touched
+		final ArpCacheImpl cache = new ArpCacheImpl();
+		ArpSpoofDetectorImpl detector = new ArpSpoofDetectorImpl(cache, watcher.getStaticBindingConfig());
+		BenchmarkCounter counter = new BenchmarkCounter(cache);
+		cache.register(counter);
+		detector.register(counter);
+		detector.start();
+
+		PcapFileRunner runner = new PcapFileRunner(file);
+		runner.getEthernetDecoder().register(EthernetType.ARP, counter);
+		runner.getArpDecoder().register(counter);
+
+		long begin = System.currentTimeMillis();
+		runner.run();
+		long elapsed = System.currentTimeMillis() - begin;
+
+		detector.stop();
+
+		// arp decoder calls back twice per frame, with copy and original
+		long pps = elapsed == 0 ? counter.frames : counter.frames * 1000 / elapsed;
+		context.println(String.format("packets=%d, callbacks=%d, elapsed=%dms, %d packets/s", counter.frames,
+				counter.packets, elapsed, pps));
+		context.println(String.format("entries=%d, notifications=%d, spoof events=%d, suppressed=%d", cache
+				.getCachedEntries().size(), counter.notifications, counter.spoofs, detector.getSuppressedCount()));
+	}
+
+	private static class BenchmarkCounter implements EthernetProcessor, ArpProcessor, ArpCacheListener,
+			ArpSpoofEventListener {
+		private ArpCache cache;
+		private long frames;
+		private long packets;
+		private long notifications;
+		private long spoofs;
+
+		public BenchmarkCounter(ArpCache cache) {
+			this.cache = cache;
+		}
+
+		@Override
+		public void process(EthernetFrame frame) {
+			frames++;
+		}
+
+		@Override
+		public void process(ArpPacket p) {
+			packets++;
+			cache.add(p);
+		}
+
+		@Override
+		public void entryAdded(ArpEntry entry) {
+			notifications++;
+		}
+
+		@Override
+		public void entryUpdated(ArpEntry entry) {
+			notifications++;
+		}
+
+		@Override
+		public void entryChanged(ArpEntry oldEntry, ArpEntry newEntry) {
+			notifications++;
+		}
+
+		@Override
+		public void entryRemoved(ArpEntry entry) {
+			notifications++;
+		}
+
+		@Override
+		public void underAttack(ArpSpoofEvent event) {
+			spoofs++;
+		}
+	}
+
 	public void removeBinding(String[] args) {
 		ArpStaticBindingConfig config = watcher.getStaticBindingConfig();
 		try {
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2010 NCHOVY
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.krakenapps.arpwatch.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.krakenapps.arpwatch.ArpCacheListener;
+import org.krakenapps.arpwatch.ArpEntry;
+import org.krakenapps.pcap.decoder.arp.ArpPacket;
+import org.krakenapps.pcap.decoder.ethernet.MacAddress;
+
+public class ArpCacheImplTest {
+	private ArpCacheImpl cache;
+	private List<String> events;
+
+	@Before
+	public void setUp() {
+		System.setProperty("kraken.arpwatch.expected_hosts", "1");
+		cache = new ArpCacheImpl();
+		events = new ArrayList<String>();
+		cache.register(new ArpCacheListener() {
+			@Override
+			public void entryAdded(ArpEntry entry) {
+				events.add("added " + toString(entry));
+			}
+
+			@Override
+			public void entryUpdated(ArpEntry entry) {
+				events.add("updated " + toString(entry));
+			}
+
+			@Override
+			public void entryChanged(ArpEntry oldEntry, ArpEntry newEntry) {
+				events.add("changed " + toString(oldEntry) + " -> " + toString(newEntry));
+			}
+
+			@Override
+			public void entryRemoved(ArpEntry entry) {
+				events.add("removed " + toString(entry));
+			}
+
+			private String toString(ArpEntry entry) {
+				return entry.getIpAddress().getHostAddress() + " " + entry.getMacAddress();
+			}
+		});
+	}
+
+	@After
+	public void tearDown() {
+		System.clearProperty("kraken.arpwatch.expected_hosts");
+		System.clearProperty("kraken.arpwatch.refresh_interval");
+	}
+
+	@Test
+	public void testAddAndChange() throws Exception {
+		reply("00:0c:29:00:00:01", "10.0.0.1");
+		reply("00:0c:29:00:00:02", "10.0.0.1");
+
+		assertEquals(2, events.size());
+		assertEquals("added 10.0.0.1 " + mac("00:0c:29:00:00:01"), events.get(0));
+		assertEquals("changed 10.0.0.1 " + mac("00:0c:29:00:00:01") + " -> 10.0.0.1 " + mac("00:0c:29:00:00:02"),
+				events.get(1));
+		assertEquals(mac("00:0c:29:00:00:02"), cache.find(ip("10.0.0.1")).getMacAddress());
+	}
+
+	@Test
+	public void testSameBindingSuppressed() throws Exception {
+		reply("00:0c:29:00:00:01", "10.0.0.1");
+		ArpEntry first = cache.find(ip("10.0.0.1"));
+		Thread.sleep(5);
+		reply("00:0c:29:00:00:01", "10.0.0.1");
+		reply("00:0c:29:00:00:01", "10.0.0.1");
+
+		// only timeout is extended within refresh interval
+		assertEquals(1, events.size());
+		ArpEntry entry = cache.find(ip("10.0.0.1"));
+		assertEquals(first.getFirstSeen(), entry.getFirstSeen());
+		assertTrue(entry.getLastSeen().after(first.getLastSeen()));
+	}
+
+	@Test
+	public void testRefreshAfterInterval() throws Exception {
+		System.setProperty("kraken.arpwatch.refresh_interval", "0");
+		cache = new ArpCacheImpl();
+		List<ArpEntry> updated = new ArrayList<ArpEntry>();
+		cache.register(new Collector(updated));
+
+		reply("00:0c:29:00:00:01", "10.0.0.1");
+		reply("00:0c:29:00:00:01", "10.0.0.1");
+		assertEquals(2, updated.size());
+	}
+
+	@Test
+	public void testIgnoredPackets() throws Exception {
+		// plain request does not prove binding, gratuitous request does
+		cache.add(ArpPacket.createRequest(mac("00:0c:29:00:00:01"), ip("10.0.0.1"), ip("10.0.0.2")));
+		assertNull(cache.find(ip("10.0.0.1")));
+
+		cache.add(ArpPacket.createRequest(mac("00:0c:29:00:00:01"), ip("10.0.0.1"), ip("10.0.0.1")));
+		assertEquals(1, events.size());
+		assertEquals(1, cache.getCachedEntries().size());
+	}
+
+	@Test
+	public void testManyHostsAndFlush() throws Exception {
+		for (int i = 0; i < 300; i++)
+			reply(String.format("00:0c:29:00:%02x:%02x", i >> 8, i & 0xff), "10.0." + (i >> 8) + "." + (i & 0xff));
+
+		assertEquals(300, events.size());
+		assertEquals(300, cache.getCachedEntries().size());
+		assertEquals(mac("00:0c:29:00:01:2b"), cache.find(ip("10.0.1.43")).getMacAddress());
+
+		cache.flush();
+		assertEquals(0, cache.getCachedEntries().size());
+		assertNull(cache.find(ip("10.0.1.43")));
+
+		// flushed binding is reported as new
+		reply("00:0c:29:00:01:2b", "10.0.1.43");
+		assertEquals("added 10.0.1.43 " + mac("00:0c:29:00:01:2b"), events.get(300));
+	}
+
+	private void reply(String mac, String ip) throws Exception {
+		cache.add(ArpPacket.createReply(mac(mac), ip(ip), mac("00:0c:29:ff:ff:ff"), ip("10.0.0.254")));
+	}
+
+	private static MacAddress mac(String mac) {
+		return new MacAddress(mac);
+	}
+
+	private static InetAddress ip(String ip) throws Exception {
+		return InetAddress.getByName(ip);
+	}
+
+	private static class Collector implements ArpCacheListener {
+		private List<ArpEntry> entries;
+
+		public Collector(List<ArpEntry> entries) {
+			this.entries = entries;
+		}
+
+		@Override
+		public void entryAdded(ArpEntry entry) {
+			entries.add(entry);
+		}
+
+		@Override
+		public void entryUpdated(ArpEntry entry) {
+			entries.add(entry);
+		}
+
+		@Override
+		public void entryChanged(ArpEntry oldEntry, ArpEntry newEntry) {
+			entries.add(newEntry);
+		}
+
+		@Override
+		public void entryRemoved(ArpEntry entry) {
+			entries.add(entry);
+		}
+	}
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2010 NCHOVY
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.krakenapps.arpwatch.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class ArpTableTest {
+	@Test
+	public void testInsertAndFind() {
+		ArpTable table = new ArpTable(16);
+		assertEquals(-1, table.indexOf(ip(10, 0, 0, 1)));
+
+		int slot = table.insert(ip(10, 0, 0, 1));
+		table.setMac(slot, 0x000c29112233L);
+		table.setFirstSeen(slot, 1000);
+		table.setLastSeen(slot, 2000);
+		table.setNotified(slot, 2000);
+
+		assertEquals(1, table.size());
+		assertEquals(slot, table.indexOf(ip(10, 0, 0, 1)));
+		assertTrue(table.isUsed(slot));
+		assertEquals(ip(10, 0, 0, 1), table.getIp(slot));
+		assertEquals(0x000c29112233L, table.getMac(slot));
+		assertEquals(1000, table.getFirstSeen(slot));
+		assertEquals(2000, table.getLastSeen(slot));
+		assertEquals(2000, table.getNotified(slot));
+		assertEquals(-1, table.indexOf(ip(10, 0, 0, 2)));
+	}
+
+	@Test
+	public void testUpdateInPlace() {
+		ArpTable table = new ArpTable(16);
+		int slot = table.insert(ip(10, 0, 0, 1));
+		table.setMac(slot, 1);
+
+		table.setMac(table.indexOf(ip(10, 0, 0, 1)), 2);
+		table.setLastSeen(slot, 3000);
+
+		assertEquals(1, table.size());
+		assertEquals(2, table.getMac(table.indexOf(ip(10, 0, 0, 1))));
+		assertEquals(3000, table.getLastSeen(slot));
+	}
+
+	@Test
+	public void testFlagsKeepUsedBit() {
+		ArpTable table = new ArpTable(16);
+		int slot = table.insert(ip(10, 0, 0, 1));
+		table.setFlags(slot, 4);
+
+		assertEquals(4 | ArpTable.USED, table.getFlags(slot));
+		assertEquals(slot, table.indexOf(ip(10, 0, 0, 1)));
+	}
+
+	@Test
+	public void testResize() {
+		ArpTable table = new ArpTable(1);
+		int capacity = table.capacity();
+		assertEquals(64, capacity);
+
+		// sequential addresses and 0.0.0.0 collide with themselves after
+		// growth, and all fields should move with the key
+		int count = 1000;
+		for (int i = 0; i < count; i++) {
+			int slot = table.insert(ip(192, 168, i >> 8, i));
+			table.setMac(slot, i);
+			table.setFirstSeen(slot, i * 10);
+			table.setLastSeen(slot, i * 100);
+			table.setNotified(slot, i * 1000);
+			table.setFlags(slot, 2);
+		}
+		table.insert(0);
+
+		assertEquals(count + 1, table.size());
+		assertTrue(table.capacity() > capacity);
+		assertTrue(table.size() * 2 <= table.capacity());
+
+		for (int i = 0; i < count; i++) {
+			int slot = table.indexOf(ip(192, 168, i >> 8, i));
+			assertTrue(slot >= 0);
+			assertEquals(i, table.getMac(slot));
+			assertEquals(i * 10, table.getFirstSeen(slot));
+			assertEquals(i * 100, table.getLastSeen(slot));
+			assertEquals(i * 1000, table.getNotified(slot));
+			assertEquals(2 | ArpTable.USED, table.getFlags(slot));
+		}
+		assertTrue(table.indexOf(0) >= 0);
+		assertEquals(-1, table.indexOf(ip(192, 168, 200, 1)));
+	}
+
+	@Test
+	public void testClear() {
+		ArpTable table = new ArpTable(16);
+		for (int i = 0; i < 100; i++)
+			table.insert(ip(10, 0, 0, i));
+
+		int capacity = table.capacity();
+		table.clear();
+
+		assertEquals(0, table.size());
+		assertEquals(capacity, table.capacity());
+		for (int slot = 0; slot < table.capacity(); slot++)
+			assertFalse(table.isUsed(slot));
+		assertEquals(-1, table.indexOf(ip(10, 0, 0, 1)));
+
+		// stale values of cleared slots are overwritten on insert
+		int slot = table.insert(ip(10, 0, 0, 1));
+		table.setMac(slot, 7);
+		assertEquals(1, table.size());
+		assertEquals(7, table.getMac(table.indexOf(ip(10, 0, 0, 1))));
+	}
+
+	@Test
+	public void testConversions() {
+		byte[] ip = new byte[] { (byte) 192, (byte) 168, 0, (byte) 255 };
+		assertEquals(ip(192, 168, 0, 255), ArpTable.toInt(ip));
+		assertEquals("192.168.0.255", toString(ArpTable.toBytes(ArpTable.toInt(ip))));
+
+		byte[] mac = new byte[] { 0, 0x0c, 0x29, (byte) 0xab, (byte) 0xcd, (byte) 0xef };
+		assertEquals(0x000c29abcdefL, ArpTable.toLong(mac));
+		assertEquals(toString(mac), toString(ArpTable.toMacBytes(ArpTable.toLong(mac))));
+	}
+
+	private static int ip(int a, int b, int c, int d) {
+		return ArpTable.toInt(new byte[] { (byte) a, (byte) b, (byte) c, (byte) d });
+	}
+
+	private static String toString(byte[] b) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < b.length; i++) {
+			if (i != 0)
+				sb.append('.');
+			sb.append(b[i] & 0xff);
+		}
+		return sb.toString();
+	}
+}
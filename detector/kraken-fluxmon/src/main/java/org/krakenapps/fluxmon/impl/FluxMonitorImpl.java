@@ -15,40 +15,47 @@
  */
 package org.krakenapps.fluxmon.impl;
 
+import java.io.IOException;
 import java.net.InetAddress;
-import java.util.ArrayList;
+import java.net.UnknownHostException;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.apache.felix.ipojo.annotations.Component;
+import org.apache.felix.ipojo.annotations.Invalidate;
 import org.apache.felix.ipojo.annotations.Provides;
 import org.apache.felix.ipojo.annotations.Requires;
 import org.apache.felix.ipojo.annotations.Validate;
 import org.krakenapps.cron.PeriodicJob;
-import org.krakenapps.dns.DnsAnswer;
-import org.krakenapps.dns.DnsReply;
-import org.krakenapps.dns.DnsResolver;
+import org.krakenapps.dns.AsyncDnsResolver;
+import org.krakenapps.dns.DnsFuture;
+import org.krakenapps.dns.DnsRecord;
+import org.krakenapps.dns.DnsResponse;
 import org.krakenapps.fluxmon.FluxDatabase;
 import org.krakenapps.fluxmon.FluxDomain;
 import org.krakenapps.fluxmon.FluxMonitor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 @PeriodicJob("* * * * *")
 @Component(name = "flux-monitor")
 @Provides
 public class FluxMonitorImpl implements FluxMonitor, Runnable {
+	private final Logger logger = LoggerFactory.getLogger(FluxMonitorImpl.class.getName());
+
 	@Requires
 	private FluxDatabase database;
-	private ExecutorService threadPool = Executors.newCachedThreadPool();
+	private AsyncDnsResolver resolver;
 	private Set<String> trackingDomains;
 	private Map<String, FluxDomain> domainMap;
 
@@ -64,23 +71,61 @@ public class FluxMonitorImpl implements FluxMonitor, Runnable {
 		for (FluxDomain domain : database.loadFluxDomains()) {
 			domainMap.put(domain.getName(), domain);
 		}
+
+		resolver = new AsyncDnsResolver();
+		try {
+			resolver.start();
+		} catch (IOException e) {
+			logger.error("kraken fluxmon: cannot start dns resolver", e);
+		}
+	}
+
+	@Invalidate
+	public void stop() {
+		if (resolver != null)
+			resolver.close();
 	}
 
 	@Override
 	public void run() {
-		try {
-			threadPool.invokeAll(getTasks(), 1, TimeUnit.MINUTES);
-		} catch (InterruptedException e) {
-			e.printStackTrace();
+		// all tracking domains are queried at once on the shared resolver
+		Map<String, DnsFuture> futures = new LinkedHashMap<String, DnsFuture>();
+		for (String domain : trackingDomains)
+			futures.put(domain, resolver.resolve(domain, DnsRecord.A));
+
+		long deadline = System.currentTimeMillis() + 60000;
+		for (String domain : futures.keySet()) {
+			try {
+				long remaining = Math.max(1, deadline - System.currentTimeMillis());
+				DnsResponse response = futures.get(domain).get(remaining, TimeUnit.MILLISECONDS);
+				update(domain, response);
+			} catch (ExecutionException e) {
+				logger.debug("kraken fluxmon: cannot resolve " + domain, e.getCause());
+			} catch (TimeoutException e) {
+				logger.warn("kraken fluxmon: dns scan timeout");
+				break;
+			} catch (InterruptedException e) {
+				logger.trace("kraken fluxmon: dns scan interrupted");
+				break;
+			} catch (Throwable t) {
+				logger.error("kraken fluxmon: cannot update flux domain " + domain, t);
+			}
 		}
 	}
 
-	private Collection<DnsScanTask> getTasks() {
-		List<DnsScanTask> tasks = new ArrayList<DnsScanTask>(trackingDomains.size());
-		for (String domain : trackingDomains) {
-			tasks.add(new DnsScanTask(domain));
+	private void update(String domain, DnsResponse response) throws UnknownHostException {
+		FluxDomain fluxDomain = getDomain(domain);
+		if (fluxDomain == null) {
+			fluxDomain = new FluxDomainImpl(domain);
+			domainMap.put(domain, fluxDomain);
+		}
+
+		for (DnsRecord record : response.getRecords(DnsRecord.A)) {
+			InetAddress domainAddress = InetAddress.getByName(record.getData());
+			fluxDomain.updateHost(domainAddress);
 		}
-		return tasks;
+
+		database.updateFluxDomain(fluxDomain);
 	}
 
 	@Override
@@ -121,33 +166,4 @@ public class FluxMonitorImpl implements FluxMonitor, Runnable {
 		
 		return actives;
 	}
-
-	private class DnsScanTask implements Callable<Void> {
-		private String domain;
-
-		public DnsScanTask(String domain) {
-			this.domain = domain;
-		}
-
-		@Override
-		public Void call() throws Exception {
-			DnsResolver dnsResolver = new DnsResolver();
-			DnsReply reply = dnsResolver.dig(new String[] { "IN", domain });
-
-			FluxDomain fluxDomain = getDomain(domain);
-			if (fluxDomain == null) {
-				fluxDomain = new FluxDomainImpl(domain);
-				domainMap.put(domain, fluxDomain);
-			}
-
-			for (DnsAnswer answer : reply.getAnswers()) {
-				InetAddress domainAddress = InetAddress.getByName(answer.getDomainAddress());
-				fluxDomain.updateHost(domainAddress);
-			}
-
-			database.updateFluxDomain(fluxDomain);
-			return null;
-		}
-
-	}
 }
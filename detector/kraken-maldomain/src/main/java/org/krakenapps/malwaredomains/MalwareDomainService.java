@@ -7,6 +7,11 @@ import java.net.URL;
 public interface MalwareDomainService {
 	MalwareDomain match(URL url);
 
+	/**
+	 * @return listed domain of the host or its longest parent domain, or null
+	 */
+	MalwareDomain match(String host);
+
 	void setHomeDir(File path);
 
 	void update() throws IOException;
@@ -11,11 +11,11 @@ import java.net.URL;
 import java.net.URLConnection;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.List;
 import java.util.Scanner;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
 
 import org.apache.felix.ipojo.annotations.Component;
 import org.apache.felix.ipojo.annotations.Provides;
@@ -39,7 +39,7 @@ public class DefaultMalwareDomainService implements MalwareDomainService, Runnab
 	private static final String updateFileExtension = ".txt";
 
 	private File home;
-	private ConcurrentMap<String, MalwareDomain> domains;
+	private volatile MalwareDomainTable domains;
 
 	public static void main(String[] args) throws IOException {
 		DefaultMalwareDomainService s = new DefaultMalwareDomainService();
@@ -48,7 +48,7 @@ public class DefaultMalwareDomainService implements MalwareDomainService, Runnab
 
 	public DefaultMalwareDomainService() {
 		setHomeDir(new File(System.getProperty("kraken.data.dir"), "kraken-maldomain/"));
-		domains = new ConcurrentHashMap<String, MalwareDomain>();
+		domains = MalwareDomainTable.empty();
 	}
 
 	@Validate
@@ -58,7 +58,12 @@ public class DefaultMalwareDomainService implements MalwareDomainService, Runnab
 
 	@Override
 	public MalwareDomain match(URL url) {
-		return domains.get(url.getHost());
+		return match(url.getHost());
+	}
+
+	@Override
+	public MalwareDomain match(String host) {
+		return domains.match(host);
 	}
 
 	@Override
@@ -95,18 +100,35 @@ public class DefaultMalwareDomainService implements MalwareDomainService, Runnab
 
 	@Override
 	public void reload() {
-		// clear all
-		domains.clear();
+		MalwareDomainTable.Builder builder = new MalwareDomainTable.Builder();
 
-		// reload
+		// base domains first, then updates in date order
 		File[] ruleFiles = getDataFiles(totalFileExtension);
+		if (ruleFiles == null)
+			ruleFiles = new File[0];
+		Arrays.sort(ruleFiles, new Comparator<File>() {
+			@Override
+			public int compare(File o1, File o2) {
+				boolean base1 = o1.getName().startsWith("domains.");
+				boolean base2 = o2.getName().startsWith("domains.");
+				if (base1 != base2)
+					return base1 ? -1 : 1;
+				return o1.getName().compareTo(o2.getName());
+			}
+		});
+
 		for (File f : ruleFiles) {
 			try {
-				loadDomains(f);
+				loadDomains(f, builder);
 			} catch (Exception e) {
 				logger.warn("kraken maldomain: cannot open " + f.getAbsolutePath() + ", skipped", e);
 			}
 		}
+
+		// swap at once, lookups never see partially loaded domains
+		MalwareDomainTable table = builder.build();
+		domains = table;
+		logger.info("kraken maldomain: loaded {} domains, {} trie nodes", table.size(), table.getNodeCount());
 	}
 
 	@Override
@@ -205,7 +227,7 @@ public class DefaultMalwareDomainService implements MalwareDomainService, Runnab
 		}
 	}
 
-	private void loadDomains(File f) throws IOException {
+	private void loadDomains(File f, MalwareDomainTable.Builder builder) throws IOException {
 		SimpleDateFormat dateFormat = new SimpleDateFormat("yyyyMMdd");
 
 		Scanner scanner = getFileScanner(f);
@@ -218,8 +240,7 @@ public class DefaultMalwareDomainService implements MalwareDomainService, Runnab
 					Date created = t.length < 7 || t[6].isEmpty() ? null : dateFormat.parse(t[6]);
 					Integer seq = t.length < 8 ? null : Integer.valueOf(t[7]);
 
-					MalwareDomain md = new MalwareDomain(t[2], t[3], t[4], verified, created, seq);
-					domains.put(md.getDomain(), md);
+					builder.add(t[2], t[3], t[4], verified, created, seq);
 				} catch (Exception e) {
 					logger.trace("kraken maldomain: cannot parse line [" + line + "]", e);
 				}
@@ -0,0 +1,398 @@
+package org.krakenapps.malwaredomains.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable reversed label trie of domain names. Labels are interned to label
+ * ids, and trie is stored in primitive arrays: edges are kept in an open
+ * addressing table keyed by (parent node, label id). Lookup walks host labels
+ * from the top level domain without string allocation, and returns the node
+ * of the longest listed suffix, so listed evil.com matches a.b.evil.com. Each
+ * listed domain maps to an int value, typically a row of caller's primitive
+ * columns, and the domain name is rebuilt from labels only when asked.
+ */
+public class DomainTrie {
+	// interned labels
+	private char[] labelPool;
+	private int[] labelOffsets;
+	private int[] labelTable;
+	private int labelMask;
+
+	// (parent node << 32 | label id) to child node
+	private long[] edgeKeys;
+	private int[] edgeTargets;
+	private int edgeMask;
+
+	// value + 1 of terminal node, otherwise 0
+	private int[] nodeValues;
+
+	// parent node and label id of each node, for rebuilding domain name
+	private int[] nodeParents;
+	private int[] nodeLabels;
+	private int size;
+
+	private DomainTrie() {
+	}
+
+	public static DomainTrie empty() {
+		return new Builder().build();
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int getNodeCount() {
+		return nodeValues.length;
+	}
+
+	public int getLabelCount() {
+		return labelOffsets.length - 1;
+	}
+
+	/**
+	 * @return value of the longest listed suffix domain of the host, or -1
+	 */
+	public int match(String host) {
+		int node = find(host);
+		return node < 0 ? -1 : getValue(node);
+	}
+
+	/**
+	 * @return the terminal node of the longest listed suffix domain of the
+	 *         host, or -1
+	 */
+	public int find(String host) {
+		if (host == null)
+			return -1;
+
+		int end = host.length();
+		if (end > 0 && host.charAt(end - 1) == '.')
+			end--;
+
+		int node = 0;
+		int found = 0;
+		while (end > 0) {
+			int begin = host.lastIndexOf('.', end - 1) + 1;
+			int label = findLabel(host, begin, end);
+			if (label < 0)
+				break;
+
+			node = findChild(node, label);
+			if (node < 0)
+				break;
+
+			if (nodeValues[node] != 0)
+				found = node;
+
+			end = begin - 1;
+		}
+
+		return found == 0 ? -1 : found;
+	}
+
+	public int getValue(int node) {
+		return nodeValues[node] - 1;
+	}
+
+	/**
+	 * @return lower case domain name of the node
+	 */
+	public String getDomain(int node) {
+		StringBuilder sb = new StringBuilder();
+		while (node != 0) {
+			if (sb.length() > 0)
+				sb.append('.');
+
+			int offset = labelOffsets[nodeLabels[node]];
+			sb.append(labelPool, offset, labelOffsets[nodeLabels[node] + 1] - offset);
+			node = nodeParents[node];
+		}
+		return sb.toString();
+	}
+
+	private int findChild(int node, int label) {
+		long key = edgeKey(node, label);
+		int i = mix(key) & edgeMask;
+		while (true) {
+			int target = edgeTargets[i];
+			if (target == 0)
+				return -1;
+
+			if (edgeKeys[i] == key)
+				return target;
+
+			i = (i + 1) & edgeMask;
+		}
+	}
+
+	private static long edgeKey(int node, int label) {
+		return ((long) node << 32) | label;
+	}
+
+	private static int mix(long key) {
+		key *= 0x9e3779b97f4a7c15L;
+		return (int) (key ^ (key >>> 32));
+	}
+
+	private int findLabel(String s, int begin, int end) {
+		int i = hash(s, begin, end) & labelMask;
+		while (true) {
+			int id = labelTable[i] - 1;
+			if (id < 0)
+				return -1;
+
+			if (equalsLabel(id, s, begin, end))
+				return id;
+
+			i = (i + 1) & labelMask;
+		}
+	}
+
+	private boolean equalsLabel(int id, String s, int begin, int end) {
+		int offset = labelOffsets[id];
+		int len = labelOffsets[id + 1] - offset;
+		if (len != end - begin)
+			return false;
+
+		for (int i = 0; i < len; i++)
+			if (labelPool[offset + i] != toLowerCase(s.charAt(begin + i)))
+				return false;
+		return true;
+	}
+
+	private static int hash(String s, int begin, int end) {
+		int h = 0;
+		for (int i = begin; i < end; i++)
+			h = 31 * h + toLowerCase(s.charAt(i));
+		return h ^ (h >>> 16);
+	}
+
+	private static char toLowerCase(char c) {
+		if (c >= 'A' && c <= 'Z')
+			return (char) (c + 32);
+		if (c < 128)
+			return c;
+		return Character.toLowerCase(c);
+	}
+
+	/**
+	 * Collects domains and builds immutable trie at once. If same domain is
+	 * added more than once, last value is used.
+	 */
+	public static class Builder {
+		private Map<String, Integer> labelIds = new HashMap<String, Integer>();
+		private List<String> labels = new ArrayList<String>();
+		private List<int[]> keys = new ArrayList<int[]>();
+		private IntArray values = new IntArray();
+
+		/**
+		 * @param value
+		 *            non-negative value of the domain
+		 */
+		public void add(String domain, int value) {
+			if (value < 0)
+				throw new IllegalArgumentException("negative value " + value + " of domain " + domain);
+
+			String d = domain.trim().toLowerCase();
+			if (d.endsWith("."))
+				d = d.substring(0, d.length() - 1);
+			if (d.isEmpty())
+				return;
+
+			// reversed label ids, top level domain first
+			String[] tokens = d.split("\\.");
+			int[] key = new int[tokens.length];
+			for (int i = 0; i < tokens.length; i++)
+				key[tokens.length - 1 - i] = getLabelId(tokens[i]);
+
+			keys.add(key);
+			values.add(value);
+		}
+
+		private int getLabelId(String label) {
+			Integer id = labelIds.get(label);
+			if (id == null) {
+				id = labels.size();
+				labelIds.put(label, id);
+				labels.add(label);
+			}
+			return id;
+		}
+
+		public DomainTrie build() {
+			DomainTrie t = new DomainTrie();
+			buildLabels(t);
+
+			// stable sort keeps later duplicate after earlier one
+			Integer[] order = new Integer[keys.size()];
+			for (int i = 0; i < order.length; i++)
+				order[i] = i;
+			Arrays.sort(order, new KeyComparator(keys));
+
+			IntArray edgeParents = new IntArray();
+			IntArray edgeLabels = new IntArray();
+			IntArray nodeValues = new IntArray();
+			int size = 0;
+
+			// breadth first over sorted keys, children of a node are contiguous
+			IntArray rangeBegin = new IntArray();
+			IntArray rangeEnd = new IntArray();
+			nodeValues.add(0);
+			rangeBegin.add(0);
+			rangeEnd.add(order.length);
+
+			for (int node = 0, depth = 0, levelEnd = 1; node < nodeValues.size(); node++) {
+				if (node == levelEnd) {
+					depth++;
+					levelEnd = nodeValues.size();
+				}
+
+				int lo = rangeBegin.get(node);
+				int hi = rangeEnd.get(node);
+
+				// keys ending at this node come first
+				int last = -1;
+				while (lo < hi && keys.get(order[lo]).length == depth)
+					last = order[lo++];
+
+				if (last >= 0) {
+					nodeValues.set(node, values.get(last) + 1);
+					size++;
+				}
+
+				while (lo < hi) {
+					int label = keys.get(order[lo])[depth];
+					int end = lo + 1;
+					while (end < hi && keys.get(order[end])[depth] == label)
+						end++;
+
+					// child node id is edge index + 1
+					edgeParents.add(node);
+					edgeLabels.add(label);
+					nodeValues.add(0);
+					rangeBegin.add(lo);
+					rangeEnd.add(end);
+					lo = end;
+				}
+			}
+			buildEdges(t, edgeParents, edgeLabels);
+			t.nodeValues = nodeValues.toArray();
+			t.size = size;
+
+			// node id is edge index + 1, root has no parent
+			t.nodeParents = new int[nodeValues.size()];
+			t.nodeLabels = new int[nodeValues.size()];
+			for (int e = 0; e < edgeParents.size(); e++) {
+				t.nodeParents[e + 1] = edgeParents.get(e);
+				t.nodeLabels[e + 1] = edgeLabels.get(e);
+			}
+			return t;
+		}
+
+		private void buildEdges(DomainTrie t, IntArray parents, IntArray labels) {
+			int capacity = 16;
+			while (capacity < parents.size() * 2)
+				capacity <<= 1;
+
+			t.edgeKeys = new long[capacity];
+			t.edgeTargets = new int[capacity];
+			t.edgeMask = capacity - 1;
+
+			for (int e = 0; e < parents.size(); e++) {
+				long key = edgeKey(parents.get(e), labels.get(e));
+				int i = mix(key) & t.edgeMask;
+				while (t.edgeTargets[i] != 0)
+					i = (i + 1) & t.edgeMask;
+
+				t.edgeKeys[i] = key;
+				t.edgeTargets[i] = e + 1;
+			}
+		}
+
+		private void buildLabels(DomainTrie t) {
+			int total = 0;
+			for (String label : labels)
+				total += label.length();
+
+			t.labelPool = new char[total];
+			t.labelOffsets = new int[labels.size() + 1];
+			int capacity = 16;
+			while (capacity < labels.size() * 2)
+				capacity <<= 1;
+
+			t.labelTable = new int[capacity];
+			t.labelMask = capacity - 1;
+
+			int offset = 0;
+			for (int id = 0; id < labels.size(); id++) {
+				String label = labels.get(id);
+				label.getChars(0, label.length(), t.labelPool, offset);
+				t.labelOffsets[id] = offset;
+				offset += label.length();
+
+				int i = hash(label, 0, label.length()) & t.labelMask;
+				while (t.labelTable[i] != 0)
+					i = (i + 1) & t.labelMask;
+				t.labelTable[i] = id + 1;
+			}
+			t.labelOffsets[labels.size()] = offset;
+		}
+	}
+
+	private static class KeyComparator implements Comparator<Integer> {
+		private List<int[]> keys;
+
+		public KeyComparator(List<int[]> keys) {
+			this.keys = keys;
+		}
+
+		@Override
+		public int compare(Integer o1, Integer o2) {
+			int[] a = keys.get(o1);
+			int[] b = keys.get(o2);
+			int n = Math.min(a.length, b.length);
+			for (int i = 0; i < n; i++)
+				if (a[i] != b[i])
+					return a[i] < b[i] ? -1 : 1;
+
+			if (a.length != b.length)
+				return a.length - b.length;
+
+			// keep insertion order of duplicates
+			return o1.compareTo(o2);
+		}
+	}
+
+	static class IntArray {
+		private int[] a = new int[1024];
+		private int size;
+
+		public void add(int v) {
+			if (size == a.length)
+				a = Arrays.copyOf(a, size * 2);
+			a[size++] = v;
+		}
+
+		public int get(int i) {
+			return a[i];
+		}
+
+		public void set(int i, int v) {
+			a[i] = v;
+		}
+
+		public int size() {
+			return size;
+		}
+
+		public int[] toArray() {
+			return Arrays.copyOf(a, size);
+		}
+	}
+}
@@ -24,10 +24,15 @@ public class MalwareDomainScript implements Script {
 		this.context = context;
 	}
 
-	@ScriptUsage(description = "check malware domain", arguments = { @ScriptArgument(name = "url", type = "string", description = "url (e.g. http://nchovy.com") })
+	@ScriptUsage(description = "check malware domain", arguments = { @ScriptArgument(name = "url", type = "string", description = "url or host name (e.g. http://nchovy.com or nchovy.com") })
 	public void check(String[] args) {
 		try {
-			MalwareDomain domain = md.match(new URL(args[0]));
+			MalwareDomain domain = null;
+			if (args[0].contains("://"))
+				domain = md.match(new URL(args[0]));
+			else
+				domain = md.match(args[0]);
+
 			if (domain != null)
 				context.println(domain.toString());
 			else
@@ -0,0 +1,123 @@
+package org.krakenapps.malwaredomains.impl;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.krakenapps.malwaredomains.MalwareDomain;
+
+/**
+ * Immutable malware domain list. Domain names live only in the label trie,
+ * and the other fields are kept in primitive columns indexed by trie value:
+ * type and reference as ids of shared strings, dates as yyyyMMdd. Malware
+ * domain objects are created only for matched hosts.
+ */
+class MalwareDomainTable {
+	private static final int NO_SEQ = Integer.MIN_VALUE;
+
+	private DomainTrie trie;
+	private String[] strings;
+	private int[] types;
+	private int[] references;
+	private int[] verifieds;
+	private int[] createds;
+	private int[] seqs;
+
+	private MalwareDomainTable() {
+	}
+
+	public static MalwareDomainTable empty() {
+		return new Builder().build();
+	}
+
+	public int size() {
+		return trie.size();
+	}
+
+	public int getNodeCount() {
+		return trie.getNodeCount();
+	}
+
+	/**
+	 * @return listed domain of the host or its longest parent domain, or null
+	 */
+	public MalwareDomain match(String host) {
+		int node = trie.find(host);
+		if (node < 0)
+			return null;
+
+		int row = trie.getValue(node);
+		Integer seq = seqs[row] == NO_SEQ ? null : seqs[row];
+		return new MalwareDomain(trie.getDomain(node), strings[types[row]], strings[references[row]],
+				toDate(verifieds[row]), toDate(createds[row]), seq);
+	}
+
+	private static int toInt(Date d) {
+		if (d == null)
+			return 0;
+
+		Calendar c = Calendar.getInstance();
+		c.setTime(d);
+		return c.get(Calendar.YEAR) * 10000 + (c.get(Calendar.MONTH) + 1) * 100 + c.get(Calendar.DAY_OF_MONTH);
+	}
+
+	private static Date toDate(int day) {
+		if (day == 0)
+			return null;
+
+		Calendar c = Calendar.getInstance();
+		c.clear();
+		c.set(day / 10000, day / 100 % 100 - 1, day % 100);
+		return c.getTime();
+	}
+
+	/**
+	 * Collects domains in load order. If same domain is added more than once,
+	 * last one is used.
+	 */
+	public static class Builder {
+		private DomainTrie.Builder trie = new DomainTrie.Builder();
+		private Map<String, Integer> stringIds = new HashMap<String, Integer>();
+		private List<String> strings = new ArrayList<String>();
+		private DomainTrie.IntArray types = new DomainTrie.IntArray();
+		private DomainTrie.IntArray references = new DomainTrie.IntArray();
+		private DomainTrie.IntArray verifieds = new DomainTrie.IntArray();
+		private DomainTrie.IntArray createds = new DomainTrie.IntArray();
+		private DomainTrie.IntArray seqs = new DomainTrie.IntArray();
+
+		public void add(String domain, String type, String reference, Date verified, Date created, Integer seq) {
+			trie.add(domain, types.size());
+			types.add(getStringId(type));
+			references.add(getStringId(reference));
+			verifieds.add(toInt(verified));
+			createds.add(toInt(created));
+			seqs.add(seq == null ? NO_SEQ : seq);
+		}
+
+		private int getStringId(String s) {
+			// type and reference have few distinct values
+			Integer id = stringIds.get(s);
+			if (id == null) {
+				id = strings.size();
+				stringIds.put(s, id);
+				strings.add(s);
+			}
+			return id;
+		}
+
+		public MalwareDomainTable build() {
+			MalwareDomainTable t = new MalwareDomainTable();
+			t.trie = trie.build();
+			t.strings = strings.toArray(new String[0]);
+			t.types = types.toArray();
+			t.references = references.toArray();
+			t.verifieds = verifieds.toArray();
+			t.createds = createds.toArray();
+			t.seqs = seqs.toArray();
+			return t;
+		}
+	}
+}
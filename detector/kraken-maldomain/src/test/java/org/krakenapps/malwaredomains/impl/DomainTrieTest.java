@@ -0,0 +1,169 @@
+package org.krakenapps.malwaredomains.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class DomainTrieTest {
+	private String[] domains;
+
+	private DomainTrie build(String... domains) {
+		this.domains = domains;
+		DomainTrie.Builder builder = new DomainTrie.Builder();
+		for (int i = 0; i < domains.length; i++)
+			builder.add(domains[i], i);
+		return builder.build();
+	}
+
+	private String match(DomainTrie trie, String host) {
+		int value = trie.match(host);
+		return value < 0 ? null : domains[value];
+	}
+
+	@Test
+	public void testExactMatch() {
+		DomainTrie trie = build("evil.com", "bad.co.kr");
+		assertEquals(2, trie.size());
+		assertEquals("evil.com", match(trie, "evil.com"));
+		assertEquals("bad.co.kr", match(trie, "bad.co.kr"));
+	}
+
+	@Test
+	public void testSubdomainMatch() {
+		DomainTrie trie = build("evil.com", "sub.evil.com", "org");
+		assertEquals("evil.com", match(trie, "www.evil.com"));
+		assertEquals("evil.com", match(trie, "a.b.evil.com"));
+
+		// longest listed suffix wins
+		assertEquals("sub.evil.com", match(trie, "sub.evil.com"));
+		assertEquals("sub.evil.com", match(trie, "x.sub.evil.com"));
+		assertEquals("org", match(trie, "example.org"));
+	}
+
+	@Test
+	public void testNonMatch() {
+		DomainTrie trie = build("evil.com", "bad.co.kr");
+		assertNull(match(trie, "good.com"));
+		assertNull(match(trie, "com"));
+		assertNull(match(trie, "co.kr"));
+		assertNull(match(trie, "notevil.com"));
+		assertNull(match(trie, "evil.com.example.net"));
+		assertNull(match(trie, ""));
+		assertNull(match(trie, null));
+		assertEquals(-1, trie.find("good.com"));
+		assertEquals(-1, DomainTrie.empty().match("evil.com"));
+	}
+
+	@Test
+	public void testCaseInsensitive() {
+		DomainTrie trie = build("Evil.COM");
+		assertEquals("Evil.COM", match(trie, "evil.com"));
+		assertEquals("Evil.COM", match(trie, "WWW.EVIL.com"));
+	}
+
+	@Test
+	public void testTrailingDot() {
+		DomainTrie trie = build("evil.com.", "bad.co.kr");
+		assertEquals(2, trie.size());
+		assertEquals("evil.com.", match(trie, "evil.com"));
+		assertEquals("evil.com.", match(trie, "www.evil.com."));
+		assertEquals("bad.co.kr", match(trie, "bad.co.kr."));
+	}
+
+	@Test
+	public void testDuplicateDomain() {
+		DomainTrie.Builder builder = new DomainTrie.Builder();
+		builder.add("evil.com", 7);
+		builder.add("EVIL.com.", 3);
+		DomainTrie trie = builder.build();
+
+		// later update wins
+		assertEquals(1, trie.size());
+		assertEquals(3, trie.match("evil.com"));
+	}
+
+	@Test
+	public void testDomainName() {
+		DomainTrie trie = build("Evil.COM.", "sub.evil.com", "org");
+		assertEquals("evil.com", trie.getDomain(trie.find("www.evil.com")));
+		assertEquals("sub.evil.com", trie.getDomain(trie.find("a.SUB.evil.com")));
+		assertEquals("org", trie.getDomain(trie.find("example.org")));
+	}
+
+	/**
+	 * Compares lookup result and rate against per-suffix hash map walk which
+	 * trie replaced.
+	 */
+	@Test
+	public void testBenchmark() {
+		Random r = new Random(1);
+		String[] tlds = { "com", "net", "org", "ru", "cn", "kr", "info" };
+		DomainTrie.Builder builder = new DomainTrie.Builder();
+		Map<String, String> map = new HashMap<String, String>();
+		List<String> hosts = new ArrayList<String>();
+		for (int i = 0; i < 200000; i++) {
+			String sld = Long.toString(r.nextLong() & 0xffffffffL, 36);
+			if (r.nextInt(4) == 0)
+				sld += "." + Integer.toString(r.nextInt(1000), 36);
+
+			String domain = sld + "." + tlds[r.nextInt(tlds.length)];
+			builder.add(domain, i);
+			map.put(domain, domain);
+
+			hosts.add("www." + domain);
+			hosts.add("x" + i + ".example.com");
+		}
+
+		DomainTrie trie = builder.build();
+		assertEquals(map.size(), trie.size());
+
+		// last round is reported, previous rounds are for warming up
+		for (int round = 0; round < 3; round++) {
+			int trieHits = 0;
+			long begin = System.nanoTime();
+			for (String host : hosts)
+				if (trie.match(host) >= 0)
+					trieHits++;
+			long trieElapsed = Math.max(1, System.nanoTime() - begin);
+
+			begin = System.nanoTime();
+			int mapHits = matchSuffix(map, hosts);
+			long mapElapsed = Math.max(1, System.nanoTime() - begin);
+
+			assertEquals(hosts.size() / 2, trieHits);
+			assertEquals(mapHits, trieHits);
+
+			if (round == 2)
+				System.out.println(String.format(
+						"domain trie: %d domains, %d nodes, trie %d lookups/s, map %d lookups/s", trie.size(),
+						trie.getNodeCount(), hosts.size() * 1000000000L / trieElapsed, hosts.size() * 1000000000L
+								/ mapElapsed));
+		}
+	}
+
+	private int matchSuffix(Map<String, String> map, List<String> hosts) {
+		int hits = 0;
+		for (String host : hosts) {
+			String s = host;
+			while (true) {
+				if (map.get(s) != null) {
+					hits++;
+					break;
+				}
+
+				int p = s.indexOf('.');
+				if (p < 0)
+					break;
+				s = s.substring(p + 1);
+			}
+		}
+		return hits;
+	}
+}
@@ -0,0 +1,57 @@
+package org.krakenapps.malwaredomains.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.text.SimpleDateFormat;
+
+import org.junit.Test;
+import org.krakenapps.malwaredomains.MalwareDomain;
+
+public class MalwareDomainTableTest {
+	@Test
+	public void testMatch() throws Exception {
+		SimpleDateFormat dateFormat = new SimpleDateFormat("yyyyMMdd");
+		MalwareDomainTable.Builder builder = new MalwareDomainTable.Builder();
+		builder.add("Evil.com", "malware", "spamhaus", dateFormat.parse("20110102"), dateFormat.parse("20101231"), 17);
+		builder.add("bad.co.kr", "phishing", "spamhaus", null, null, null);
+		builder.add("evil.com", "botnet", "spamhaus", null, dateFormat.parse("20110301"), 18);
+		MalwareDomainTable table = builder.build();
+
+		assertEquals(2, table.size());
+
+		// last one of duplicate domain is used
+		MalwareDomain md = table.match("www.evil.com");
+		assertEquals("evil.com", md.getDomain());
+		assertEquals("botnet", md.getType());
+		assertEquals("spamhaus", md.getReference());
+		assertNull(md.getVerified());
+		assertEquals(dateFormat.parse("20110301"), md.getCreated());
+		assertEquals(Integer.valueOf(18), md.getSeq());
+
+		md = table.match("bad.co.kr");
+		assertEquals("bad.co.kr", md.getDomain());
+		assertEquals("phishing", md.getType());
+		assertNull(md.getVerified());
+		assertNull(md.getCreated());
+		assertNull(md.getSeq());
+
+		// reference string is shared
+		assertSame(table.match("evil.com").getReference(), md.getReference());
+		assertNull(table.match("good.com"));
+		assertNull(MalwareDomainTable.empty().match("evil.com"));
+	}
+
+	@Test
+	public void testDates() throws Exception {
+		SimpleDateFormat dateFormat = new SimpleDateFormat("yyyyMMdd");
+		MalwareDomainTable.Builder builder = new MalwareDomainTable.Builder();
+		builder.add("evil.com", "malware", "ref", dateFormat.parse("19991231"), dateFormat.parse("20120229"), 0);
+		MalwareDomain md = builder.build().match("evil.com");
+
+		assertEquals(dateFormat.parse("19991231"), md.getVerified());
+		assertEquals(dateFormat.parse("20120229"), md.getCreated());
+		assertEquals(Integer.valueOf(0), md.getSeq());
+	}
+}
@@ -0,0 +1,67 @@
+package org.krakenapps.sonar;
+
+import java.net.InetAddress;
+
+/**
+ * An application seen on a host by passive fingerprinting. Observations with
+ * same host, vendor, name and version are equal, so that repeated sightings
+ * can be merged before metabase update.
+ */
+public class ApplicationObservation {
+	private String vendor;
+	private String name;
+	private String version;
+	private InetAddress ip;
+
+	public ApplicationObservation(String vendor, String name, String version, InetAddress ip) {
+		this.vendor = vendor;
+		this.name = name;
+		this.version = version;
+		this.ip = ip;
+	}
+
+	public String getVendor() {
+		return vendor;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getVersion() {
+		return version;
+	}
+
+	public InetAddress getIp() {
+		return ip;
+	}
+
+	@Override
+	public int hashCode() {
+		int h = ip.hashCode();
+		h = h * 31 + (vendor == null ? 0 : vendor.hashCode());
+		h = h * 31 + (name == null ? 0 : name.hashCode());
+		h = h * 31 + (version == null ? 0 : version.hashCode());
+		return h;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (!(obj instanceof ApplicationObservation))
+			return false;
+
+		ApplicationObservation o = (ApplicationObservation) obj;
+		return ip.equals(o.ip) && equals(vendor, o.vendor) && equals(name, o.name) && equals(version, o.version);
+	}
+
+	private static boolean equals(String a, String b) {
+		return a == null ? b == null : a.equals(b);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("ip=%s, vendor=%s, name=%s, version=%s", ip.getHostAddress(), vendor, name, version);
+	}
+}
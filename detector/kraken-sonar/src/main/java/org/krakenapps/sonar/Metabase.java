@@ -51,5 +51,11 @@ public interface Metabase {
 
 	Application updateApplication(Vendor vendor, String name, String version, IpEndPoint endpoint);
 
+	/**
+	 * Updates vendors, ip endpoints and applications of all observations in
+	 * one transaction.
+	 */
+	void updateApplications(Collection<ApplicationObservation> observations);
+
 	void clearApplications();
 }
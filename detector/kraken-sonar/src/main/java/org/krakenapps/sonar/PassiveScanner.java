@@ -1,5 +1,7 @@
 package org.krakenapps.sonar;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.Collection;
 
 import org.krakenapps.pcap.Protocol;
@@ -15,6 +17,16 @@ public interface PassiveScanner {
 
 	PcapLiveRunner getDevice(String name);
 
+	PipelineStats getPipelineStats();
+
+	/**
+	 * Feeds packets of pcap dump file to separate arp, http and dhcp detector
+	 * instances through a separate fingerprint pipeline, and returns after all
+	 * decoded events are processed. Pipeline does not drop events during
+	 * replay. Registered sniffers and the persistent metabase are not touched.
+	 */
+	PipelineStats replay(File pcapFile) throws IOException;
+
 	void addArpSniffer(ArpProcessor callback);
 
 	void removeArpSniffer(ArpProcessor callback);
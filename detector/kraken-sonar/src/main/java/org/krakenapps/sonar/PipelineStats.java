@@ -0,0 +1,67 @@
+package org.krakenapps.sonar;
+
+public class PipelineStats {
+	private int workers;
+	private int queueCapacity;
+	private int queued;
+	private long processed;
+	private long dropped;
+	private long elapsed;
+
+	public PipelineStats(int workers, int queueCapacity, int queued, long processed, long dropped) {
+		this.workers = workers;
+		this.queueCapacity = queueCapacity;
+		this.queued = queued;
+		this.processed = processed;
+		this.dropped = dropped;
+	}
+
+	public int getWorkers() {
+		return workers;
+	}
+
+	/**
+	 * @return queue capacity of each worker
+	 */
+	public int getQueueCapacity() {
+		return queueCapacity;
+	}
+
+	/**
+	 * @return events waiting in all worker queues
+	 */
+	public int getQueued() {
+		return queued;
+	}
+
+	public long getProcessed() {
+		return processed;
+	}
+
+	/**
+	 * @return events dropped because worker queue was full
+	 */
+	public long getDropped() {
+		return dropped;
+	}
+
+	/**
+	 * @return replay time in milliseconds, or 0 for live capture
+	 */
+	public long getElapsed() {
+		return elapsed;
+	}
+
+	public void setElapsed(long elapsed) {
+		this.elapsed = elapsed;
+	}
+
+	@Override
+	public String toString() {
+		String s = String.format("workers=%d, queue capacity=%d, queued=%d, processed=%d, dropped=%d", workers,
+				queueCapacity, queued, processed, dropped);
+		if (elapsed > 0)
+			s += String.format(", elapsed=%dms, rate=%d events/s", elapsed, processed * 1000 / elapsed);
+		return s;
+	}
+}
@@ -0,0 +1,205 @@
+package org.krakenapps.sonar.engine;
+
+import java.net.InetSocketAddress;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.krakenapps.pcap.decoder.arp.ArpPacket;
+import org.krakenapps.pcap.decoder.arp.ArpProcessor;
+import org.krakenapps.pcap.decoder.dhcp.DhcpMessage;
+import org.krakenapps.pcap.decoder.dhcp.DhcpProcessor;
+import org.krakenapps.pcap.decoder.http.HttpProcessor;
+import org.krakenapps.pcap.decoder.http.HttpRequest;
+import org.krakenapps.pcap.decoder.http.HttpResponse;
+import org.krakenapps.pcap.util.Buffer;
+import org.krakenapps.sonar.PipelineStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Hands decoded arp, http and dhcp events from capture threads to
+ * fingerprinting workers. Events are partitioned by host, so events of a host
+ * are processed in capture order by one worker. Capture thread never waits for
+ * a full worker queue in live mode, the event is dropped and counted instead.
+ */
+public class FingerprintPipeline implements ArpProcessor, HttpProcessor, DhcpProcessor {
+	private final Logger logger = LoggerFactory.getLogger(FingerprintPipeline.class.getName());
+	private String name;
+	private int queueCapacity;
+	private boolean blocking;
+	private Set<ArpProcessor> arpProcessors;
+	private Set<HttpProcessor> httpProcessors;
+	private Set<DhcpProcessor> dhcpProcessors;
+
+	private Worker[] workers;
+	private AtomicLong processed = new AtomicLong();
+	private AtomicLong dropped = new AtomicLong();
+
+	/**
+	 * @param blocking
+	 *            wait for queue space instead of dropping event, for pcap file
+	 *            replay
+	 */
+	public FingerprintPipeline(String name, int workerCount, int queueCapacity, boolean blocking,
+			Set<ArpProcessor> arpProcessors, Set<HttpProcessor> httpProcessors, Set<DhcpProcessor> dhcpProcessors) {
+		this.name = name;
+		this.queueCapacity = queueCapacity;
+		this.blocking = blocking;
+		this.arpProcessors = arpProcessors;
+		this.httpProcessors = httpProcessors;
+		this.dhcpProcessors = dhcpProcessors;
+		this.workers = new Worker[Math.max(1, workerCount)];
+	}
+
+	public void start() {
+		for (int i = 0; i < workers.length; i++) {
+			workers[i] = new Worker(new ArrayBlockingQueue<Runnable>(queueCapacity));
+			workers[i].thread = new Thread(workers[i], "Kraken Sonar Fingerprint (" + name + ") " + i);
+			workers[i].thread.start();
+		}
+	}
+
+	public void stop() {
+		for (Worker w : workers)
+			if (w != null)
+				w.thread.interrupt();
+	}
+
+	/**
+	 * Waits until all events queued before this call are processed.
+	 */
+	public void flush() throws InterruptedException {
+		CountDownLatch latch = new CountDownLatch(workers.length);
+		for (Worker w : workers)
+			w.queue.put(new Barrier(latch));
+		latch.await();
+	}
+
+	public PipelineStats getStats() {
+		int queued = 0;
+		for (Worker w : workers)
+			if (w != null)
+				queued += w.queue.size();
+
+		return new PipelineStats(workers.length, queueCapacity, queued, processed.get(), dropped.get());
+	}
+
+	private void submit(Object key, Runnable event) {
+		int hash = key == null ? 0 : key.hashCode();
+		Worker w = workers[((hash ^ (hash >>> 16)) & 0x7fffffff) % workers.length];
+
+		if (blocking) {
+			try {
+				w.queue.put(event);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				dropped.incrementAndGet();
+			}
+		} else if (!w.queue.offer(event)) {
+			dropped.incrementAndGet();
+		}
+	}
+
+	private static Object hostKey(InetSocketAddress addr) {
+		return addr == null ? null : addr.getAddress();
+	}
+
+	@Override
+	public void process(final ArpPacket p) {
+		submit(p.getSenderMac(), new Runnable() {
+			@Override
+			public void run() {
+				for (ArpProcessor processor : arpProcessors)
+					processor.process(p);
+			}
+		});
+	}
+
+	@Override
+	public void onRequest(final HttpRequest req) {
+		submit(hostKey(req.getRemoteAddress()), new Runnable() {
+			@Override
+			public void run() {
+				for (HttpProcessor processor : httpProcessors)
+					processor.onRequest(req);
+			}
+		});
+	}
+
+	@Override
+	public void onResponse(final HttpRequest req, final HttpResponse resp) {
+		submit(hostKey(req.getRemoteAddress()), new Runnable() {
+			@Override
+			public void run() {
+				for (HttpProcessor processor : httpProcessors)
+					processor.onResponse(req, resp);
+			}
+		});
+	}
+
+	@Override
+	public void onMultipartData(final Buffer buffer) {
+		submit(null, new Runnable() {
+			@Override
+			public void run() {
+				for (HttpProcessor processor : httpProcessors)
+					processor.onMultipartData(buffer);
+			}
+		});
+	}
+
+	@Override
+	public void process(final DhcpMessage msg) {
+		submit(msg.getClientMac(), new Runnable() {
+			@Override
+			public void run() {
+				for (DhcpProcessor processor : dhcpProcessors)
+					processor.process(msg);
+			}
+		});
+	}
+
+	private static class Barrier implements Runnable {
+		private CountDownLatch latch;
+
+		public Barrier(CountDownLatch latch) {
+			this.latch = latch;
+		}
+
+		@Override
+		public void run() {
+			latch.countDown();
+		}
+	}
+
+	private class Worker implements Runnable {
+		private BlockingQueue<Runnable> queue;
+		private Thread thread;
+
+		public Worker(BlockingQueue<Runnable> queue) {
+			this.queue = queue;
+		}
+
+		@Override
+		public void run() {
+			try {
+				while (true) {
+					Runnable event = queue.take();
+					try {
+						event.run();
+					} catch (Throwable t) {
+						logger.error("kraken sonar: fingerprint failed", t);
+					}
+
+					if (!(event instanceof Barrier))
+						processed.incrementAndGet();
+				}
+			} catch (InterruptedException e) {
+				logger.trace("kraken sonar: fingerprint worker [{}] interrupted", Thread.currentThread().getName());
+			}
+		}
+	}
+}
@@ -1,5 +1,7 @@
 package org.krakenapps.sonar.engine;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Set;
@@ -11,30 +13,38 @@ import org.apache.felix.ipojo.annotations.Invalidate;
 import org.apache.felix.ipojo.annotations.Provides;
 import org.apache.felix.ipojo.annotations.Validate;
 import org.krakenapps.pcap.Protocol;
-import org.krakenapps.pcap.decoder.arp.ArpPacket;
 import org.krakenapps.pcap.decoder.arp.ArpProcessor;
-import org.krakenapps.pcap.decoder.dhcp.DhcpMessage;
+import org.krakenapps.pcap.decoder.dhcp.DhcpDecoder;
 import org.krakenapps.pcap.decoder.dhcp.DhcpProcessor;
 import org.krakenapps.pcap.decoder.http.HttpDecoder;
 import org.krakenapps.pcap.decoder.http.HttpProcessor;
-import org.krakenapps.pcap.decoder.http.HttpRequest;
-import org.krakenapps.pcap.decoder.http.HttpResponse;
 import org.krakenapps.pcap.live.PcapDevice;
 import org.krakenapps.pcap.live.PcapDeviceManager;
 import org.krakenapps.pcap.live.PcapDeviceMetadata;
-import org.krakenapps.pcap.util.Buffer;
+import org.krakenapps.pcap.util.PcapFileRunner;
 import org.krakenapps.pcap.util.PcapLiveRunner;
 import org.krakenapps.sonar.PassiveScanner;
+import org.krakenapps.sonar.PipelineStats;
+import org.krakenapps.sonar.metabase.ReplayMetabase;
+import org.krakenapps.sonar.passive.fingerprint.ArpDetector;
+import org.krakenapps.sonar.passive.fingerprint.DhcpOsDetector;
+import org.krakenapps.sonar.passive.fingerprint.HttpApplicationDetector;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 @Component(name = "sonar-passive-scanner")
 @Provides
 public class PassiveScannerEngine implements PassiveScanner {
+	private static final int WORKERS = Integer.getInteger("kraken.sonar.workers", Runtime.getRuntime()
+			.availableProcessors());
+	private static final int QUEUE_SIZE = Integer.getInteger("kraken.sonar.queue_size", 10000);
+
+	private final Logger logger = LoggerFactory.getLogger(PassiveScannerEngine.class.getName());
 	private ConcurrentMap<String, Sniffer> sniffers;
 	private Set<ArpProcessor> arpSniffers;
 	private Set<HttpProcessor> httpSniffers;
 	private Set<DhcpProcessor> dhcpSniffers;
+	private FingerprintPipeline pipeline;
 
 	@Validate
 	@Override
@@ -44,11 +54,15 @@ public class PassiveScannerEngine implements PassiveScanner {
 		httpSniffers = Collections.newSetFromMap(new ConcurrentHashMap<HttpProcessor, Boolean>());
 		dhcpSniffers = Collections.newSetFromMap(new ConcurrentHashMap<DhcpProcessor, Boolean>());
 
+		pipeline = new FingerprintPipeline("live", WORKERS, QUEUE_SIZE, false, arpSniffers, httpSniffers,
+				dhcpSniffers);
+		pipeline.start();
+
 		for (PcapDeviceMetadata metadata : PcapDeviceManager.getDeviceMetadataList()) {
 			PcapLiveRunner runner = openDevice(metadata);
 			if (runner != null) {
 				Sniffer sniffer = new Sniffer(runner);
-				System.out.println("Kraken Sonar Sniffer (" + metadata.getName() + ")");
+				logger.info("kraken sonar: starting sniffer [{}]", metadata.getName());
 				new Thread(sniffer, "Kraken Sonar Sniffer (" + metadata.getName() + ")").start();
 				sniffers.put(metadata.getName(), sniffer);
 			}
@@ -64,6 +78,9 @@ public class PassiveScannerEngine implements PassiveScanner {
 
 		httpSniffers.clear();
 		sniffers.clear();
+
+		logger.info("kraken sonar: fingerprint pipeline stopped, {}", pipeline.getStats());
+		pipeline.stop();
 	}
 
 	@Override
@@ -80,6 +97,51 @@ public class PassiveScannerEngine implements PassiveScanner {
 		return sniffers.keySet();
 	}
 
+	@Override
+	public PipelineStats getPipelineStats() {
+		return pipeline.getStats();
+	}
+
+	@Override
+	public PipelineStats replay(File pcapFile) throws IOException {
+		// replay uses its own detectors, live sniffers would write replayed
+		// traffic into the persistent metabase
+		ReplayMetabase metabase = new ReplayMetabase();
+		HttpApplicationDetector httpDetector = new HttpApplicationDetector(metabase);
+		httpDetector.open();
+
+		FingerprintPipeline replayPipeline = new FingerprintPipeline("replay", WORKERS, QUEUE_SIZE, true,
+				Collections.<ArpProcessor> singleton(new ArpDetector(metabase)),
+				Collections.<HttpProcessor> singleton(httpDetector),
+				Collections.<DhcpProcessor> singleton(new DhcpOsDetector(metabase)));
+		replayPipeline.start();
+		try {
+			PcapFileRunner runner = new PcapFileRunner(pcapFile);
+			HttpDecoder http = new HttpDecoder();
+			http.register(replayPipeline);
+			runner.setTcpProcessor(Protocol.HTTP, http);
+
+			DhcpDecoder dhcp = new DhcpDecoder();
+			dhcp.register(replayPipeline);
+			runner.setUdpProcessor(Protocol.DHCP, dhcp);
+			runner.getArpDecoder().register(replayPipeline);
+
+			long begin = System.currentTimeMillis();
+			runner.run();
+			replayPipeline.flush();
+
+			PipelineStats stats = replayPipeline.getStats();
+			stats.setElapsed(Math.max(1, System.currentTimeMillis() - begin));
+			return stats;
+		} catch (InterruptedException e) {
+			throw new IOException("interrupted");
+		} finally {
+			replayPipeline.stop();
+			httpDetector.close();
+			logger.info("kraken sonar: replay discarded [{}] metabase updates", metabase.getUpdateCount());
+		}
+	}
+
 	private PcapLiveRunner openDevice(PcapDeviceMetadata metadata) {
 		try {
 			PcapDevice device = PcapDeviceManager.open(metadata.getName(), 10000);
@@ -125,7 +187,7 @@ public class PassiveScannerEngine implements PassiveScanner {
 			dhcpSniffers.remove(callback);
 	}
 
-	private class Sniffer implements Runnable, ArpProcessor, HttpProcessor, DhcpProcessor {
+	private class Sniffer implements Runnable {
 		private final Logger logger = LoggerFactory.getLogger(Sniffer.class.getName());
 		private Thread executingThread;
 		private PcapLiveRunner runner;
@@ -144,54 +206,20 @@ public class PassiveScannerEngine implements PassiveScanner {
 			this.executingThread = Thread.currentThread();
 
 			try {
+				// decode on capture thread, fingerprint on pipeline workers
 				HttpDecoder http = new HttpDecoder();
+				http.register(pipeline);
 				runner.setTcpProcessor(Protocol.HTTP, http);
+
+				DhcpDecoder dhcp = new DhcpDecoder();
+				dhcp.register(pipeline);
+				runner.setUdpProcessor(Protocol.DHCP, dhcp);
+				runner.getArpDecoder().register(pipeline);
+
 				runner.run();
 			} catch (Exception e) {
 				logger.error("kraken-sonar: sniffer terminated: ", e);
 			}
 		}
-
-		//
-		// Http Sniffers
-		//
-
-		@Override
-		public void onRequest(HttpRequest req) {
-			for (HttpProcessor sniffer : httpSniffers)
-				sniffer.onRequest(req);
-		}
-
-		@Override
-		public void onResponse(HttpRequest req, HttpResponse resp) {
-			for (HttpProcessor sniffer : httpSniffers)
-				sniffer.onResponse(req, resp);
-		}
-
-		@Override
-		public void onMultipartData(Buffer buffer) {
-			for (HttpProcessor sniffer : httpSniffers)
-				sniffer.onMultipartData(buffer);
-		}
-
-		//
-		// ARP
-		//
-
-		@Override
-		public void process(ArpPacket p) {
-			for (ArpProcessor arp : arpSniffers)
-				arp.process(p);
-		}
-
-		//
-		// DHCP
-		//
-
-		@Override
-		public void process(DhcpMessage msg) {
-			for (DhcpProcessor dhcp : dhcpSniffers)
-				dhcp.process(msg);
-		}
 	}
 }
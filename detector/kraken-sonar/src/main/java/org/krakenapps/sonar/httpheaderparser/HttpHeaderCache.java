@@ -0,0 +1,84 @@
+package org.krakenapps.sonar.httpheaderparser;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.krakenapps.sonar.passive.fingerprint.HttpApplicationMetaData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Memoizes parsed product lists of http headers. Most User-Agent and Server
+ * values on a network repeat, so each distinct value is parsed once until it
+ * is evicted in least recently used order. Values which cannot be parsed are
+ * cached as empty lists. Each thread uses its own parser.
+ */
+public class HttpHeaderCache {
+	private final Logger logger = LoggerFactory.getLogger(HttpHeaderCache.class.getName());
+	private final int capacity;
+	private final Map<String, List<HttpApplicationMetaData>> cache;
+	private final ThreadLocal<HttpHeaderParser> parsers = new ThreadLocal<HttpHeaderParser>() {
+		@Override
+		protected HttpHeaderParser initialValue() {
+			return new HttpHeaderParser();
+		}
+	};
+
+	private long hits;
+	private long misses;
+
+	public HttpHeaderCache(int capacity) {
+		this.capacity = capacity;
+		this.cache = new LinkedHashMap<String, List<HttpApplicationMetaData>>(capacity * 4 / 3 + 1, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, List<HttpApplicationMetaData>> eldest) {
+				return size() > HttpHeaderCache.this.capacity;
+			}
+		};
+	}
+
+	/**
+	 * @return products of header value, never null
+	 */
+	@SuppressWarnings("unchecked")
+	public List<HttpApplicationMetaData> parse(String name, String value) {
+		String header = name + " : " + value;
+		synchronized (cache) {
+			List<HttpApplicationMetaData> l = cache.get(header);
+			if (l != null) {
+				hits++;
+				return l;
+			}
+			misses++;
+		}
+
+		List<HttpApplicationMetaData> l = new ArrayList<HttpApplicationMetaData>();
+		try {
+			List<HttpApplicationMetaData> parsed = (List<HttpApplicationMetaData>) parsers.get().eval(header);
+			if (parsed != null)
+				for (HttpApplicationMetaData m : parsed)
+					if (m != null)
+						l.add(m);
+		} catch (ParseException e) {
+			logger.trace("kraken sonar: cannot parse http header [{}]", header);
+		}
+
+		l = Collections.unmodifiableList(l);
+		synchronized (cache) {
+			cache.put(header, l);
+		}
+		return l;
+	}
+
+	public String getStats() {
+		synchronized (cache) {
+			return String.format("size=%d, capacity=%d, hits=%d, misses=%d", cache.size(), capacity, hits, misses);
+		}
+	}
+}
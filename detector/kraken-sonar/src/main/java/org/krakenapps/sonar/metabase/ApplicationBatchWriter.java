@@ -0,0 +1,160 @@
+package org.krakenapps.sonar.metabase;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.krakenapps.sonar.ApplicationObservation;
+import org.krakenapps.sonar.Metabase;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Collects application observations from fingerprint workers and updates
+ * metabase in batches. Repeated observations are merged in the pending batch,
+ * and observations written recently are skipped until refresh interval
+ * elapses. A failed batch is put back in front of the pending observations
+ * and retried after flush interval, and dropped after max retries.
+ */
+public class ApplicationBatchWriter implements Runnable {
+	private static final int BATCH_SIZE = Integer.getInteger("kraken.sonar.batch_size", 500);
+	private static final int FLUSH_INTERVAL = Integer.getInteger("kraken.sonar.flush_interval", 1000);
+	private static final int REFRESH_INTERVAL = Integer.getInteger("kraken.sonar.refresh_interval", 600000);
+	private static final int MAX_RETRIES = Integer.getInteger("kraken.sonar.max_retries", 3);
+	private static final int MAX_WRITTEN = 65536;
+
+	private final Logger logger = LoggerFactory.getLogger(ApplicationBatchWriter.class.getName());
+	private Metabase metabase;
+	private Thread thread;
+	private volatile boolean doStop;
+
+	private Set<ApplicationObservation> pending = new LinkedHashSet<ApplicationObservation>();
+	private Map<ApplicationObservation, Long> written = new WrittenMap();
+
+	private long observed;
+	private long merged;
+	private long updated;
+	private long batches;
+	private long dropped;
+
+	// consecutive failures of current batch
+	private int failures;
+
+	public ApplicationBatchWriter(Metabase metabase) {
+		this.metabase = metabase;
+	}
+
+	public void start() {
+		doStop = false;
+		thread = new Thread(this, "Kraken Sonar Metabase Writer");
+		thread.start();
+	}
+
+	public void stop() {
+		doStop = true;
+		synchronized (this) {
+			notifyAll();
+		}
+
+		try {
+			thread.join(5000);
+		} catch (InterruptedException e) {
+		}
+	}
+
+	public synchronized void add(ApplicationObservation o) {
+		observed++;
+
+		Long last = written.get(o);
+		if (last != null && System.currentTimeMillis() - last < REFRESH_INTERVAL) {
+			merged++;
+			return;
+		}
+
+		if (!pending.add(o))
+			merged++;
+		else if (pending.size() >= BATCH_SIZE)
+			notifyAll();
+	}
+
+	@Override
+	public void run() {
+		try {
+			while (!doStop) {
+				synchronized (this) {
+					// back off after failure even if batch is full
+					if (pending.size() < BATCH_SIZE || failures > 0)
+						wait(FLUSH_INTERVAL);
+				}
+				flush();
+			}
+		} catch (InterruptedException e) {
+		} finally {
+			flush();
+			logger.info("kraken sonar: metabase writer stopped, {}", getStats());
+		}
+	}
+
+	void flush() {
+		List<ApplicationObservation> batch;
+		synchronized (this) {
+			if (pending.isEmpty())
+				return;
+
+			batch = new ArrayList<ApplicationObservation>(pending);
+			pending.clear();
+		}
+
+		try {
+			metabase.updateApplications(batch);
+		} catch (Throwable t) {
+			requeue(batch, t);
+			return;
+		}
+
+		long now = System.currentTimeMillis();
+		synchronized (this) {
+			failures = 0;
+			for (ApplicationObservation o : batch)
+				written.put(o, now);
+			updated += batch.size();
+			batches++;
+		}
+	}
+
+	private synchronized void requeue(List<ApplicationObservation> batch, Throwable t) {
+		if (++failures > MAX_RETRIES) {
+			failures = 0;
+			dropped += batch.size();
+			logger.error("kraken sonar: cannot update " + batch.size() + " applications, dropped after "
+					+ MAX_RETRIES + " retries", t);
+			return;
+		}
+
+		logger.warn("kraken sonar: cannot update " + batch.size() + " applications, will retry", t);
+
+		// observations added during update are merged into failed batch
+		Set<ApplicationObservation> requeued = new LinkedHashSet<ApplicationObservation>(batch);
+		for (ApplicationObservation o : pending)
+			if (!requeued.add(o))
+				merged++;
+		pending = requeued;
+	}
+
+	public synchronized String getStats() {
+		return String.format("observed=%d, merged=%d, updated=%d, batches=%d, dropped=%d, pending=%d", observed,
+				merged, updated, batches, dropped, pending.size());
+	}
+
+	private static class WrittenMap extends LinkedHashMap<ApplicationObservation, Long> {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<ApplicationObservation, Long> eldest) {
+			return size() > MAX_WRITTEN;
+		}
+	}
+}
@@ -3,6 +3,9 @@ package org.krakenapps.sonar.metabase;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import javax.persistence.EntityManager;
 import javax.persistence.NoResultException;
@@ -14,6 +17,7 @@ import org.krakenapps.jpa.ThreadLocalEntityManagerService;
 import org.krakenapps.jpa.handler.JpaConfig;
 import org.krakenapps.jpa.handler.Transactional;
 import org.krakenapps.pcap.decoder.ethernet.MacAddress;
+import org.krakenapps.sonar.ApplicationObservation;
 import org.krakenapps.sonar.Metabase;
 import org.krakenapps.sonar.metabase.model.Application;
 import org.krakenapps.sonar.metabase.model.Environment;
@@ -271,6 +275,43 @@ public class PersistentMetabase implements Metabase {
 		}
 	}
 
+	@Transactional
+	@Override
+	public void updateApplications(Collection<ApplicationObservation> observations) {
+		Map<String, Vendor> vendors = new HashMap<String, Vendor>();
+		Map<InetAddress, IpEndPoint> endpoints = new HashMap<InetAddress, IpEndPoint>();
+
+		for (ApplicationObservation o : observations) {
+			Vendor vendor = vendors.get(o.getVendor());
+			if (vendor == null) {
+				vendor = updateVendor(o.getVendor());
+				vendors.put(o.getVendor(), vendor);
+			}
+
+			IpEndPoint endpoint = endpoints.get(o.getIp());
+			if (endpoint == null) {
+				endpoint = updateIpEndPoint(o.getIp());
+				endpoints.put(o.getIp(), endpoint);
+			}
+
+			updateApplication(vendor, o.getName(), o.getVersion(), endpoint);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private IpEndPoint updateIpEndPoint(InetAddress ip) {
+		EntityManager em = entityManagerService.getEntityManager();
+		List<IpEndPoint> l = em.createQuery("FROM IpEndPoint ep WHERE ep.ip = ?").setParameter(1,
+				ip.getHostAddress()).setMaxResults(1).getResultList();
+		if (!l.isEmpty())
+			return l.get(0);
+
+		IpEndPoint ep = new IpEndPoint();
+		ep.setIp(ip);
+		em.persist(ep);
+		return ep;
+	}
+
 	@Transactional
 	@Override
 	public IpEndPoint updateIpEndPoint(InetSocketAddress localAddress) {
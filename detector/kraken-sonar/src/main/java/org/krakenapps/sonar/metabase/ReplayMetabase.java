@@ -0,0 +1,138 @@
+package org.krakenapps.sonar.metabase;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.krakenapps.pcap.decoder.ethernet.MacAddress;
+import org.krakenapps.sonar.ApplicationObservation;
+import org.krakenapps.sonar.Metabase;
+import org.krakenapps.sonar.metabase.model.Application;
+import org.krakenapps.sonar.metabase.model.AttackLog;
+import org.krakenapps.sonar.metabase.model.Environment;
+import org.krakenapps.sonar.metabase.model.IpEndPoint;
+import org.krakenapps.sonar.metabase.model.Vendor;
+
+/**
+ * Metabase of pcap replay. Updates are counted and discarded, so replayed
+ * traffic never reaches the persistent metabase. Lookups always miss.
+ */
+public class ReplayMetabase implements Metabase {
+	private AtomicLong updates = new AtomicLong();
+
+	public long getUpdateCount() {
+		return updates.get();
+	}
+
+	@Override
+	public Collection<Vendor> getVendors() {
+		return new ArrayList<Vendor>();
+	}
+
+	@Override
+	public Vendor getVendor(String name) {
+		return null;
+	}
+
+	@Override
+	public Vendor updateVendor(String name) {
+		updates.incrementAndGet();
+		return new Vendor(name);
+	}
+
+	@Override
+	public void clearVendors() {
+	}
+
+	@Override
+	public Collection<Environment> getEnvironments() {
+		return new ArrayList<Environment>();
+	}
+
+	@Override
+	public Environment getEnvironment(Vendor vendor, String family, String description) {
+		return null;
+	}
+
+	@Override
+	public Environment updateEnvironment(Vendor vendor, String family, String description) {
+		updates.incrementAndGet();
+		return new Environment(vendor, family, description);
+	}
+
+	@Override
+	public void clearEnvironments() {
+	}
+
+	@Override
+	public Collection<IpEndPoint> getIpEndPoints() {
+		return new ArrayList<IpEndPoint>();
+	}
+
+	@Override
+	public IpEndPoint getIpEndPoint(MacAddress mac) {
+		return null;
+	}
+
+	@Override
+	public IpEndPoint updateIpEndPoint(MacAddress mac, InetAddress ip) {
+		updates.incrementAndGet();
+		IpEndPoint ep = new IpEndPoint(mac);
+		ep.setIp(ip);
+		return ep;
+	}
+
+	@Override
+	public IpEndPoint updateIpEndpoint(MacAddress mac, Environment environment) {
+		updates.incrementAndGet();
+		IpEndPoint ep = new IpEndPoint(mac);
+		ep.setEnvironment(environment);
+		return ep;
+	}
+
+	@Override
+	public IpEndPoint updateIpEndPoint(InetSocketAddress localAddress) {
+		updates.incrementAndGet();
+		return new IpEndPoint(localAddress);
+	}
+
+	@Override
+	public void clearIpEndpoints() {
+	}
+
+	@Override
+	public void alert(AttackLog log) {
+		updates.incrementAndGet();
+	}
+
+	@Override
+	public void clearIdsLog() {
+	}
+
+	@Override
+	public Collection<Application> getApplications() {
+		return new ArrayList<Application>();
+	}
+
+	@Override
+	public Application getApplication(Vendor vendor, String name) {
+		return null;
+	}
+
+	@Override
+	public Application updateApplication(Vendor vendor, String name, String version, IpEndPoint endpoint) {
+		updates.incrementAndGet();
+		return new Application(vendor, name, version, endpoint);
+	}
+
+	@Override
+	public void updateApplications(Collection<ApplicationObservation> observations) {
+		updates.addAndGet(observations.size());
+	}
+
+	@Override
+	public void clearApplications() {
+	}
+}
@@ -1,5 +1,9 @@
 package org.krakenapps.sonar.passive.fingerprint;
 
+import java.net.InetAddress;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 import org.apache.felix.ipojo.annotations.Component;
 import org.apache.felix.ipojo.annotations.Invalidate;
 import org.apache.felix.ipojo.annotations.Provides;
@@ -7,6 +11,7 @@ import org.apache.felix.ipojo.annotations.Requires;
 import org.apache.felix.ipojo.annotations.Validate;
 import org.krakenapps.pcap.decoder.arp.ArpPacket;
 import org.krakenapps.pcap.decoder.arp.ArpProcessor;
+import org.krakenapps.pcap.decoder.ethernet.MacAddress;
 import org.krakenapps.sonar.Metabase;
 import org.krakenapps.sonar.PassiveScanner;
 import org.slf4j.Logger;
@@ -23,6 +28,32 @@ public class ArpDetector implements ArpProcessor {
 	@Requires
 	private Metabase metabase;
 
+	// last ip of mac written to metabase, repeated arp is not written again.
+	// least recently seen macs are evicted, and written again when they return
+	private final int cacheSize;
+	private final Map<MacAddress, InetAddress> lastIps;
+
+	public ArpDetector() {
+		this(null);
+	}
+
+	/**
+	 * Creates unregistered detector which writes to specified metabase, e.g.
+	 * for pcap replay.
+	 */
+	public ArpDetector(Metabase metabase) {
+		this.metabase = metabase;
+		this.cacheSize = Integer.getInteger("kraken.sonar.arp_cache_size", 65536);
+		this.lastIps = new LinkedHashMap<MacAddress, InetAddress>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<MacAddress, InetAddress> eldest) {
+				return size() > cacheSize;
+			}
+		};
+	}
+
 	@Validate
 	public void start() {
 		scanner.addArpSniffer(this);
@@ -36,11 +67,22 @@ public class ArpDetector implements ArpProcessor {
 
 	@Override
 	public void process(ArpPacket p) {
-		System.out.println("kraken sonar: " + p);
+		logger.trace("kraken sonar: {}", p);
 
 		try {
-			if (!p.getSenderIp().getHostAddress().equals("0.0.0.0"))
-				metabase.updateIpEndPoint(p.getSenderMac(), p.getSenderIp());
+			if (p.getSenderIp().getHostAddress().equals("0.0.0.0"))
+				return;
+
+			synchronized (lastIps) {
+				if (p.getSenderIp().equals(lastIps.get(p.getSenderMac())))
+					return;
+			}
+
+			metabase.updateIpEndPoint(p.getSenderMac(), p.getSenderIp());
+
+			synchronized (lastIps) {
+				lastIps.put(p.getSenderMac(), p.getSenderIp());
+			}
 		} catch (Exception e) {
 			logger.error("kraken sonar: cannot create ip endpoint: " + p.getSenderIp().getHostAddress(), e);
 		}
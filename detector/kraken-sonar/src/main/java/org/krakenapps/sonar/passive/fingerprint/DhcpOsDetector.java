@@ -29,6 +29,17 @@ public class DhcpOsDetector implements DhcpProcessor {
 	@Requires
 	private Metabase metabase;
 
+	public DhcpOsDetector() {
+	}
+
+	/**
+	 * Creates unregistered detector which writes to specified metabase, e.g.
+	 * for pcap replay.
+	 */
+	public DhcpOsDetector(Metabase metabase) {
+		this.metabase = metabase;
+	}
+
 	@Validate
 	public void start() {
 		scanner.addUdpSniffer(Protocol.DHCP, this);
@@ -1,7 +1,7 @@
 package org.krakenapps.sonar.passive.fingerprint;
 
-import java.text.ParseException;
-import java.util.List;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 
 import org.apache.felix.ipojo.annotations.Component;
 import org.apache.felix.ipojo.annotations.Invalidate;
@@ -13,13 +13,18 @@ import org.krakenapps.pcap.decoder.http.HttpProcessor;
 import org.krakenapps.pcap.decoder.http.HttpRequest;
 import org.krakenapps.pcap.decoder.http.HttpResponse;
 import org.krakenapps.pcap.util.Buffer;
+import org.krakenapps.sonar.ApplicationObservation;
 import org.krakenapps.sonar.Metabase;
 import org.krakenapps.sonar.PassiveScanner;
-import org.krakenapps.sonar.httpheaderparser.HttpHeaderParser;
+import org.krakenapps.sonar.httpheaderparser.HttpHeaderCache;
+import org.krakenapps.sonar.metabase.ApplicationBatchWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 @Component(name = "sonar-http-app-detector")
 @Provides
 public class HttpApplicationDetector implements HttpProcessor {
+	private final Logger logger = LoggerFactory.getLogger(HttpApplicationDetector.class.getName());
 
 	@Requires
 	private PassiveScanner scanner;
@@ -27,159 +32,116 @@ public class HttpApplicationDetector implements HttpProcessor {
 	@Requires
 	private Metabase metabase;
 
+	private HttpHeaderCache headerCache;
+	private ApplicationBatchWriter writer;
+
+	public HttpApplicationDetector() {
+	}
+
+	/**
+	 * Creates unregistered detector which writes to specified metabase, e.g.
+	 * for pcap replay. Call open() before use and close() after use.
+	 */
+	public HttpApplicationDetector(Metabase metabase) {
+		this.metabase = metabase;
+	}
+
 	@Validate
 	public void start() {
+		open();
 		scanner.addTcpSniffer(Protocol.HTTP, this);
 	}
 
 	@Invalidate
 	public void stop() {
-		scanner.removeTcpSniffer(Protocol.HTTP, this);
+		if (scanner != null)
+			scanner.removeTcpSniffer(Protocol.HTTP, this);
+
+		close();
+	}
+
+	public void open() {
+		headerCache = new HttpHeaderCache(Integer.getInteger("kraken.sonar.header_cache_size", 4096));
+		writer = new ApplicationBatchWriter(metabase);
+		writer.start();
+	}
+
+	/**
+	 * Stops metabase writer after pending observations are written.
+	 */
+	public void close() {
+		writer.stop();
+		logger.info("kraken sonar: http header cache [{}]", headerCache.getStats());
 	}
 
-	@SuppressWarnings("unchecked")
 	@Override
 	public void onRequest(HttpRequest req) {
-		// Request
-		if (req != null) {
-			String strUserAgent = req.getHeader("User-Agent");
-			// System.out.println("User-Agent(Raw text)>>\n"+strUserAgent);
-			if (strUserAgent != null && strUserAgent.length() > 0) {
-				try {
-					HttpHeaderParser parser = new HttpHeaderParser();
-					for (HttpApplicationMetaData result : (List<HttpApplicationMetaData>) parser.eval("User-Agent : "
-							+ strUserAgent)) {
-						if (result != null) {
-							System.out.println(result.toString());
-
-							req.getLocalAddress();
-
-							// update to metabase
-							metabase.updateApplication(
-									metabase.updateVendor(result.getVendor()),
-									result.getName(),
-									result.getVersion(),
-									metabase.updateIpEndPoint(req.getLocalAddress())
-									);
-						}
-					}
-
-					// Object result =
-					// parser.eval("User-Agent : "+strUserAgent);
-					// System.out.println("User-Agent(Parsed)>>\n"+result);
-				} catch (ParseException e) {
-					System.out.println("User-Agent(Parsed)>> Got ParseException!\n");
-				}
-			}
-		}
+		// client application
+		if (req != null)
+			detect("User-Agent", req.getHeader("User-Agent"), req.getRemoteAddress());
 	}
 
-	@SuppressWarnings("unchecked")
 	@Override
 	public void onResponse(HttpRequest req, HttpResponse resp) {
-		if (resp != null) {
-			// Web server fingerprint
-			String strServer = resp.getHeader("Server");
-			// System.out.println("Server(Raw text)>>\n"+strServer);
-			if (strServer != null && strServer.length() > 0) {
-				try {
-					HttpHeaderParser parser = new HttpHeaderParser();
-					for (HttpApplicationMetaData result : (List<HttpApplicationMetaData>) parser.eval("Server : "
-							+ strServer)) {
-						if (result != null) {
-							System.out.println(result.toString());
-
-							// update to metabase
-							metabase.updateApplication(
-									metabase.updateVendor(result.getVendor()),
-									result.getName(),
-									result.getVersion(),
-									metabase.updateIpEndPoint(req.getLocalAddress())
-									);
-						}
-					}
-
-					// Object result = parser.eval("Server : "+strServer);
-					// System.out.println("Server(Parsed)>>\n"+result);
-				} catch (ParseException e) {
-					System.out.println("Server(Parsed)>> Got ParseException!\n");
-				}
-			}
-
-			// Proxy fingerprint
-			String strVia = resp.getHeader("Via");
-			// System.out.println("Via(Raw text)>>\n"+strVia);
-			if (strVia != null && strVia.length() > 0) {
-				try {
-					HttpHeaderParser parser = new HttpHeaderParser();
-					for (HttpApplicationMetaData result : (List<HttpApplicationMetaData>) parser.eval("Via : "
-							+ strServer)) {
-						if (result != null) {
-							System.out.println(result.toString());
-
-							// update to metabase
-							metabase.updateApplication(
-									metabase.updateVendor(result.getVendor()),
-									result.getName(),
-									result.getVersion(),
-									metabase.updateIpEndPoint(req.getLocalAddress())
-									);
-						}
-					}
-
-					// Object result = parser.eval("Via : "+strVia);
-					// System.out.println("Via(Parsed)>>\n"+result);
-				} catch (ParseException e) {
-					System.out.println("Via(Parsed)>> Got ParseException!\n");
-				}
-			}
+		if (resp == null)
+			return;
 
-			// Web application(board) fingerprint
-			String strContent = resp.getContent();
-			String strURL = req.getURL().toString();
+		// web server and proxy fingerprint
+		detect("Server", resp.getHeader("Server"), req.getLocalAddress());
+		detect("Via", resp.getHeader("Via"), req.getLocalAddress());
 
-			// 1. Zeroboard
-			boolean bIsZeroBoard = false;
-			if (strURL.toUpperCase().contains("ZBOARD.PHP"))
-				bIsZeroBoard = true;
-			if (bIsZeroBoard) {
-				System.out.println("Zeroboard found>>");
+		// Web application(board) fingerprint
+		String strContent = resp.getContent();
+		String strURL = req.getURL().toString();
 
-				String version = "Not found";
+		// 1. Zeroboard
+		if (strContent != null && strURL.toUpperCase().contains("ZBOARD.PHP")) {
+			String version = "Not found";
 
-				// Search comments
-				int it = 0;
-				int nFindFrom = 0;
-				while ((it = strContent.indexOf("<!--", nFindFrom)) > -1) {
-					int itEnd = strContent.indexOf("-->", it);
-					if (itEnd == -1)
-						continue;
+			// Search comments
+			int it = 0;
+			int nFindFrom = 0;
+			while ((it = strContent.indexOf("<!--", nFindFrom)) > -1) {
+				int itEnd = strContent.indexOf("-->", it);
+				if (itEnd == -1)
+					break;
 
-					String strComment = strContent.substring(it, itEnd);
+				String strComment = strContent.substring(it, itEnd);
 
-					nFindFrom = it + 1;
+				nFindFrom = it + 1;
 
-					int nIdxS = strComment.indexOf("배포버젼");
-					int nIdxE = -1;
-					if (nIdxS > -1) {
-						nIdxE = strComment.indexOf('\n', nIdxS);
+				int nIdxS = strComment.indexOf("배포버젼");
+				if (nIdxS > -1) {
+					int nIdxE = strComment.indexOf('\n', nIdxS);
+					if (nIdxE == -1)
+						nIdxE = strComment.length();
 
-						version = strComment.substring(nIdxS, nIdxE);
-
-					}
+					version = strComment.substring(nIdxS, nIdxE);
 				}
-
-				// update to metabase
-				metabase.updateApplication(
-						metabase.updateVendor("Zero"),
-						"Zeroboard",
-						version,
-						metabase.updateIpEndPoint(req.getLocalAddress())
-						);
 			}
 
-			// Next
+			observe("Zero", "Zeroboard", version, req.getLocalAddress());
 		}
+
+		// Next
+	}
+
+	private void detect(String header, String value, InetSocketAddress endpoint) {
+		if (value == null || value.length() == 0)
+			return;
+
+		for (HttpApplicationMetaData result : headerCache.parse(header, value))
+			observe(result.getVendor(), result.getName(), result.getVersion(), endpoint);
+	}
+
+	private void observe(String vendor, String name, String version, InetSocketAddress endpoint) {
+		InetAddress ip = endpoint == null ? null : endpoint.getAddress();
+		if (ip == null)
+			return;
+
+		ApplicationObservation o = new ApplicationObservation(vendor, name, version, ip);
+		logger.trace("kraken sonar: http application [{}]", o);
+		writer.add(o);
 	}
 
 	@Override
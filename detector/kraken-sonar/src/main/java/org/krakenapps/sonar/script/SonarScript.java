@@ -1,5 +1,7 @@
 package org.krakenapps.sonar.script;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.Properties;
 
 import javax.persistence.EntityManagerFactory;
@@ -13,6 +15,7 @@ import org.krakenapps.pcap.decoder.tcp.TcpSession;
 import org.krakenapps.pcap.util.PcapLiveRunner;
 import org.krakenapps.sonar.Metabase;
 import org.krakenapps.sonar.PassiveScanner;
+import org.krakenapps.sonar.PipelineStats;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.BundleException;
 
@@ -61,6 +64,28 @@ public class SonarScript implements Script {
 		}
 	}
 
+	public void pipelineStats(String[] args) {
+		context.println(scanner.getPipelineStats().toString());
+	}
+
+	@ScriptUsage(description = "replay pcap file through fingerprint pipeline for offline benchmark", arguments = { @ScriptArgument(name = "pcap file", type = "string", description = "pcap dump file path") })
+	public void replay(String[] args) {
+		File f = new File(args[0]);
+		if (!f.exists()) {
+			context.println("pcap file not found: " + f.getAbsolutePath());
+			return;
+		}
+
+		try {
+			context.println("replaying " + f.getName() + ", " + f.length() + " bytes");
+			PipelineStats stats = scanner.replay(f);
+			context.println(stats.toString());
+			context.println(String.format("throughput: %d bytes/s", f.length() * 1000 / stats.getElapsed()));
+		} catch (IOException e) {
+			context.println("replay failed: " + e.getMessage());
+		}
+	}
+
 	@ScriptUsage(description = "reset all kraken-sonar database records.", arguments = { @ScriptArgument(name = "isForced", description = "use 'force' to run this method.", optional = false, type = "force or not") })
 	public void resetDatabase(String[] args) {
 		if (!args[0].equals("force")) {
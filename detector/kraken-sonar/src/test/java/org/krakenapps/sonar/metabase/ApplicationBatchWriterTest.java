@@ -0,0 +1,87 @@
+package org.krakenapps.sonar.metabase;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.krakenapps.sonar.ApplicationObservation;
+
+public class ApplicationBatchWriterTest {
+	private FailingMetabase metabase;
+	private ApplicationBatchWriter writer;
+
+	@Before
+	public void setUp() {
+		metabase = new FailingMetabase();
+		writer = new ApplicationBatchWriter(metabase);
+	}
+
+	@Test
+	public void testFailedBatchRequeued() throws Exception {
+		metabase.failures = 1;
+		writer.add(observation("apache", "10.0.0.1"));
+		writer.add(observation("nginx", "10.0.0.2"));
+		writer.flush();
+		assertEquals(0, metabase.batches.size());
+
+		// observations added after failure follow the failed batch
+		writer.add(observation("iis", "10.0.0.3"));
+		writer.add(observation("apache", "10.0.0.1"));
+		writer.flush();
+
+		assertEquals(1, metabase.batches.size());
+		assertEquals("[apache, nginx, iis]", names(metabase.batches.get(0)).toString());
+		assertTrue(writer.getStats().contains("merged=1, updated=3, batches=1, dropped=0, pending=0"));
+	}
+
+	@Test
+	public void testDroppedAfterMaxRetries() throws Exception {
+		metabase.failures = 4;
+		writer.add(observation("apache", "10.0.0.1"));
+		for (int i = 0; i < 4; i++)
+			writer.flush();
+
+		assertTrue(writer.getStats().contains("dropped=1, pending=0"));
+
+		// next batch starts with fresh retry count
+		metabase.failures = 3;
+		writer.add(observation("nginx", "10.0.0.2"));
+		for (int i = 0; i < 4; i++)
+			writer.flush();
+
+		assertEquals(1, metabase.batches.size());
+		assertEquals("[nginx]", names(metabase.batches.get(0)).toString());
+		assertTrue(writer.getStats().contains("updated=1, batches=1, dropped=1, pending=0"));
+	}
+
+	private static ApplicationObservation observation(String name, String ip) throws Exception {
+		return new ApplicationObservation("vendor", name, "1.0", InetAddress.getByName(ip));
+	}
+
+	private static List<String> names(Collection<ApplicationObservation> batch) {
+		List<String> names = new ArrayList<String>();
+		for (ApplicationObservation o : batch)
+			names.add(o.getName());
+		return names;
+	}
+
+	private static class FailingMetabase extends ReplayMetabase {
+		private int failures;
+		private List<Collection<ApplicationObservation>> batches = new ArrayList<Collection<ApplicationObservation>>();
+
+		@Override
+		public void updateApplications(Collection<ApplicationObservation> observations) {
+			if (failures > 0) {
+				failures--;
+				throw new IllegalStateException("metabase is not available");
+			}
+			batches.add(new ArrayList<ApplicationObservation>(observations));
+		}
+	}
+}
@@ -0,0 +1,67 @@
+package org.krakenapps.sonar.passive.fingerprint;
+
+import static org.junit.Assert.assertEquals;
+
+import java.net.InetAddress;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.krakenapps.pcap.decoder.arp.ArpPacket;
+import org.krakenapps.pcap.decoder.ethernet.MacAddress;
+import org.krakenapps.sonar.metabase.ReplayMetabase;
+
+public class ArpDetectorTest {
+	private ReplayMetabase metabase;
+	private ArpDetector detector;
+
+	@Before
+	public void setUp() {
+		System.setProperty("kraken.sonar.arp_cache_size", "2");
+		metabase = new ReplayMetabase();
+		detector = new ArpDetector(metabase);
+	}
+
+	@After
+	public void tearDown() {
+		System.clearProperty("kraken.sonar.arp_cache_size");
+	}
+
+	@Test
+	public void testRepeatedArpSkipped() throws Exception {
+		arp("00:00:00:00:00:01", "10.0.0.1");
+		arp("00:00:00:00:00:01", "10.0.0.1");
+		assertEquals(1, metabase.getUpdateCount());
+
+		arp("00:00:00:00:00:01", "10.0.0.2");
+		assertEquals(2, metabase.getUpdateCount());
+	}
+
+	@Test
+	public void testUnspecifiedSenderSkipped() throws Exception {
+		arp("00:00:00:00:00:01", "0.0.0.0");
+		assertEquals(0, metabase.getUpdateCount());
+	}
+
+	@Test
+	public void testLeastRecentlySeenEvicted() throws Exception {
+		arp("00:00:00:00:00:01", "10.0.0.1");
+		arp("00:00:00:00:00:02", "10.0.0.2");
+
+		// touch first mac, second mac becomes eldest
+		arp("00:00:00:00:00:01", "10.0.0.1");
+		arp("00:00:00:00:00:03", "10.0.0.3");
+		assertEquals(3, metabase.getUpdateCount());
+
+		arp("00:00:00:00:00:01", "10.0.0.1");
+		assertEquals(3, metabase.getUpdateCount());
+
+		arp("00:00:00:00:00:02", "10.0.0.2");
+		assertEquals(4, metabase.getUpdateCount());
+	}
+
+	private void arp(String mac, String ip) throws Exception {
+		detector.process(ArpPacket.createRequest(new MacAddress(mac), InetAddress.getByName(ip),
+				InetAddress.getByName("10.0.0.254")));
+	}
+}
@@ -0,0 +1,39 @@
+package org.krakenapps.sslscan;
+
+import java.util.Date;
+
+class CertificateValidation {
+	private String subject;
+	private String issuer;
+	private Date notAfter;
+	private boolean valid;
+	private String error;
+
+	public CertificateValidation(String subject, String issuer, Date notAfter, String error) {
+		this.subject = subject;
+		this.issuer = issuer;
+		this.notAfter = notAfter;
+		this.valid = error == null;
+		this.error = error;
+	}
+
+	public String getSubject() {
+		return subject;
+	}
+
+	public String getIssuer() {
+		return issuer;
+	}
+
+	public Date getNotAfter() {
+		return notAfter;
+	}
+
+	public boolean isValid() {
+		return valid;
+	}
+
+	public String getError() {
+		return error;
+	}
+}
@@ -0,0 +1,105 @@
+package org.krakenapps.sslscan;
+
+import java.security.KeyStore;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509TrustManager;
+
+/**
+ * Validates server certificate chains against default trust store. Scanner
+ * handshakes trust any certificate, and chain is validated once per distinct
+ * chain and key exchange, since every accepted cipher suite of an endpoint
+ * returns the same chain.
+ */
+class CertificateValidator {
+	private X509TrustManager trustManager;
+	private String initError;
+	private Map<List<Object>, CertificateValidation> cache = new HashMap<List<Object>, CertificateValidation>();
+	private int validationCount;
+
+	public CertificateValidator() {
+		try {
+			TrustManagerFactory tmf = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+			tmf.init((KeyStore) null);
+			for (TrustManager tm : tmf.getTrustManagers())
+				if (tm instanceof X509TrustManager)
+					trustManager = (X509TrustManager) tm;
+
+			if (trustManager == null)
+				initError = "x509 trust manager not found";
+		} catch (Exception e) {
+			initError = "cannot load trust store: " + e.getMessage();
+		}
+	}
+
+	/**
+	 * @return number of chains validated, excluding cache hits
+	 */
+	public int getValidationCount() {
+		return validationCount;
+	}
+
+	public CertificateValidation validate(Certificate[] peerCerts, String cipherSuite) {
+		if (peerCerts == null || peerCerts.length == 0 || !(peerCerts[0] instanceof X509Certificate))
+			return new CertificateValidation(null, null, null, "no x509 certificate");
+
+		String authType = getAuthType(cipherSuite);
+		List<Object> key = new ArrayList<Object>(peerCerts.length + 1);
+		key.add(authType);
+		for (Certificate c : peerCerts)
+			key.add(c);
+
+		CertificateValidation v = cache.get(key);
+		if (v != null)
+			return v;
+
+		X509Certificate[] chain = new X509Certificate[peerCerts.length];
+		for (int i = 0; i < chain.length; i++)
+			chain[i] = (X509Certificate) peerCerts[i];
+
+		String error = initError;
+		if (trustManager != null) {
+			try {
+				trustManager.checkServerTrusted(chain, authType);
+			} catch (CertificateException e) {
+				error = e.getMessage();
+				if (error == null)
+					error = e.getClass().getSimpleName();
+			} catch (RuntimeException e) {
+				error = e.toString();
+			}
+		}
+
+		X509Certificate leaf = chain[0];
+		v = new CertificateValidation(leaf.getSubjectX500Principal().getName(), leaf.getIssuerX500Principal()
+				.getName(), leaf.getNotAfter(), error);
+		cache.put(key, v);
+		validationCount++;
+		return v;
+	}
+
+	/**
+	 * Returns key exchange part of cipher suite name, such as ECDHE_RSA of
+	 * TLS_ECDHE_RSA_WITH_AES_128_GCM_SHA256, which is the auth type of jsse
+	 * trust managers.
+	 */
+	static String getAuthType(String cipherSuite) {
+		int end = cipherSuite.indexOf("_WITH_");
+		if (end < 0)
+			return "UNKNOWN";
+
+		int begin = 0;
+		if (cipherSuite.startsWith("TLS_") || cipherSuite.startsWith("SSL_"))
+			begin = 4;
+
+		return cipherSuite.substring(begin, end);
+	}
+}
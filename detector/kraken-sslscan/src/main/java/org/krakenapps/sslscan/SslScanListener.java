@@ -0,0 +1,9 @@
+package org.krakenapps.sslscan;
+
+public interface SslScanListener {
+	/**
+	 * Called on scanner thread for each probed cipher suite. Callback should
+	 * return quickly, because other handshakes are not driven meanwhile.
+	 */
+	void onResult(SslScanResult result);
+}
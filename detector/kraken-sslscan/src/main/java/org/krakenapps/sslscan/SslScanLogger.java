@@ -0,0 +1,60 @@
+package org.krakenapps.sslscan;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import org.krakenapps.log.api.AbstractLogger;
+import org.krakenapps.log.api.Log;
+import org.krakenapps.log.api.LoggerFactory;
+import org.krakenapps.log.api.SimpleLog;
+
+/**
+ * Scans configured targets on every run, and writes one log per probed cipher
+ * suite. Suites which local ssl engine cannot offer are not written.
+ */
+public class SslScanLogger extends AbstractLogger implements SslScanListener {
+	private final org.slf4j.Logger slog = org.slf4j.LoggerFactory.getLogger(SslScanLogger.class.getName());
+
+	public SslScanLogger(String namespace, String name, String description, LoggerFactory loggerFactory,
+			Properties config) {
+		super(namespace, name, description, loggerFactory, config);
+	}
+
+	@Override
+	protected void runOnce() {
+		Properties config = getConfig();
+		List<SslScanTarget> targets = new ArrayList<SslScanTarget>();
+		for (String token : config.getProperty("targets", "").split("[,\\s]+"))
+			if (!token.isEmpty())
+				targets.add(SslScanTarget.parse(token));
+
+		SslScanner scanner = new SslScanner();
+		String suites = config.getProperty("cipher_suites");
+		if (suites != null && !suites.trim().isEmpty())
+			scanner.setCipherSuites(Arrays.asList(suites.trim().split("\\s*,\\s*")));
+		if (config.getProperty("max_per_host") != null)
+			scanner.setMaxPerHost(Integer.valueOf(config.getProperty("max_per_host")));
+		if (config.getProperty("timeout") != null)
+			scanner.setTimeout(Integer.valueOf(config.getProperty("timeout")));
+
+		try {
+			SslScanStats stats = scanner.scan(targets, this);
+			slog.debug("kraken sslscan: logger [{}] scan completed, {}", getFullName(), stats);
+		} catch (Exception e) {
+			slog.error("kraken sslscan: logger [" + getFullName() + "] scan failed", e);
+		}
+	}
+
+	@Override
+	public void onResult(SslScanResult result) {
+		if (result.getStatus() == SslScanStatus.Unsupported)
+			return;
+
+		String msg = "sslscan: " + result.getTarget() + " " + result.getCipherSuite() + " "
+				+ result.getStatus().toString().toLowerCase();
+		Log log = new SimpleLog(result.getDate(), getFullName(), "sslscan", msg, result.toMap());
+		write(log);
+	}
+}
@@ -0,0 +1,67 @@
+package org.krakenapps.sslscan;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.apache.felix.ipojo.annotations.Component;
+import org.apache.felix.ipojo.annotations.Provides;
+import org.krakenapps.log.api.AbstractLoggerFactory;
+import org.krakenapps.log.api.IntegerConfigType;
+import org.krakenapps.log.api.Logger;
+import org.krakenapps.log.api.LoggerConfigOption;
+import org.krakenapps.log.api.LoggerSpecification;
+import org.krakenapps.log.api.StringConfigType;
+
+@Component(name = "sslscan-logger-factory")
+@Provides
+public class SslScanLoggerFactory extends AbstractLoggerFactory {
+	@Override
+	public String getName() {
+		return "sslscan";
+	}
+
+	@Override
+	public String getDisplayName(Locale locale) {
+		return "SSL Cipher Suite Scan";
+	}
+
+	@Override
+	public String getDescription(Locale locale) {
+		return "Scan accepted cipher suites and certificates of ssl/tls servers periodically";
+	}
+
+	@Override
+	public Collection<LoggerConfigOption> getConfigOptions() {
+		List<LoggerConfigOption> types = new ArrayList<LoggerConfigOption>();
+		types.add(new StringConfigType("targets", names("Targets"), descriptions(
+				"Comma or space separated host[:port] list, default port is 443"), true));
+		types.add(new StringConfigType("cipher_suites", names("Cipher Suites"), descriptions(
+				"Comma separated cipher suites to probe, default all supported suites"), false));
+		types.add(new IntegerConfigType("max_per_host", names("Max Handshakes per Host"), descriptions(
+				"Max concurrent handshakes per host, default 4"), false));
+		types.add(new IntegerConfigType("timeout", names("Timeout"), descriptions(
+				"Connect and handshake timeout in milliseconds, default 5000"), false));
+		return types;
+	}
+
+	private Map<Locale, String> names(String name) {
+		Map<Locale, String> m = new HashMap<Locale, String>();
+		m.put(Locale.ENGLISH, name);
+		return m;
+	}
+
+	private Map<Locale, String> descriptions(String description) {
+		Map<Locale, String> m = new HashMap<Locale, String>();
+		m.put(Locale.ENGLISH, description);
+		return m;
+	}
+
+	@Override
+	protected Logger createLogger(LoggerSpecification spec) {
+		return new SslScanLogger(spec.getNamespace(), spec.getName(), spec.getDescription(), this, spec.getConfig());
+	}
+}
@@ -0,0 +1,137 @@
+package org.krakenapps.sslscan;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class SslScanResult {
+	private Date date;
+	private SslScanTarget target;
+	private String cipherSuite;
+	private SslScanStatus status;
+	private String protocol;
+	private long elapsed;
+	private String error;
+	private CertificateValidation certificate;
+
+	public SslScanResult(SslScanTarget target, String cipherSuite, SslScanStatus status, long elapsed) {
+		this.date = new Date();
+		this.target = target;
+		this.cipherSuite = cipherSuite;
+		this.status = status;
+		this.elapsed = elapsed;
+	}
+
+	public Date getDate() {
+		return date;
+	}
+
+	public SslScanTarget getTarget() {
+		return target;
+	}
+
+	public String getCipherSuite() {
+		return cipherSuite;
+	}
+
+	public SslScanStatus getStatus() {
+		return status;
+	}
+
+	/**
+	 * @return negotiated protocol if accepted, otherwise null
+	 */
+	public String getProtocol() {
+		return protocol;
+	}
+
+	public void setProtocol(String protocol) {
+		this.protocol = protocol;
+	}
+
+	/**
+	 * @return milliseconds from connect to handshake completion or failure
+	 */
+	public long getElapsed() {
+		return elapsed;
+	}
+
+	public String getError() {
+		return error;
+	}
+
+	public void setError(String error) {
+		this.error = error;
+	}
+
+	public String getCertSubject() {
+		return certificate == null ? null : certificate.getSubject();
+	}
+
+	public String getCertIssuer() {
+		return certificate == null ? null : certificate.getIssuer();
+	}
+
+	public Date getCertNotAfter() {
+		return certificate == null ? null : certificate.getNotAfter();
+	}
+
+	/**
+	 * @return true if server certificate chain is trusted by default trust
+	 *         store, or null if handshake is not accepted
+	 */
+	public Boolean isCertValid() {
+		return certificate == null ? null : certificate.isValid();
+	}
+
+	public String getCertError() {
+		return certificate == null ? null : certificate.getError();
+	}
+
+	void setCertificate(CertificateValidation certificate) {
+		this.certificate = certificate;
+	}
+
+	/**
+	 * @return flat field map for log storage
+	 */
+	public Map<String, Object> toMap() {
+		Map<String, Object> m = new LinkedHashMap<String, Object>();
+		m.put("host", target.getHost());
+		m.put("port", target.getPort());
+		m.put("cipher", cipherSuite);
+		m.put("status", status.toString().toLowerCase());
+		m.put("elapsed", elapsed);
+		if (protocol != null)
+			m.put("protocol", protocol);
+		if (error != null)
+			m.put("error", error);
+
+		if (certificate != null) {
+			m.put("cert_subject", certificate.getSubject());
+			m.put("cert_issuer", certificate.getIssuer());
+			m.put("cert_not_after", certificate.getNotAfter());
+			m.put("cert_valid", certificate.isValid());
+			if (certificate.getError() != null)
+				m.put("cert_error", certificate.getError());
+		}
+		return m;
+	}
+
+	@Override
+	public String toString() {
+		SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+		StringBuilder sb = new StringBuilder();
+		for (Map.Entry<String, Object> e : toMap().entrySet()) {
+			if (sb.length() > 0)
+				sb.append('\t');
+
+			Object value = e.getValue();
+			if (value instanceof Date)
+				value = dateFormat.format((Date) value);
+			sb.append(e.getKey()).append('=').append(value);
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,96 @@
+package org.krakenapps.sslscan;
+
+public class SslScanStats {
+	private int targets;
+	private int probes;
+	private int accepted;
+	private int rejected;
+	private int unsupported;
+	private int timeouts;
+	private int errors;
+	private int certValidations;
+	private long elapsed;
+
+	public int getTargets() {
+		return targets;
+	}
+
+	void setTargets(int targets) {
+		this.targets = targets;
+	}
+
+	public int getProbes() {
+		return probes;
+	}
+
+	public int getAccepted() {
+		return accepted;
+	}
+
+	public int getRejected() {
+		return rejected;
+	}
+
+	public int getUnsupported() {
+		return unsupported;
+	}
+
+	public int getTimeouts() {
+		return timeouts;
+	}
+
+	public int getErrors() {
+		return errors;
+	}
+
+	/**
+	 * @return number of certificate chains validated, cached results are not
+	 *         counted
+	 */
+	public int getCertValidations() {
+		return certValidations;
+	}
+
+	void setCertValidations(int certValidations) {
+		this.certValidations = certValidations;
+	}
+
+	/**
+	 * @return scan time in milliseconds
+	 */
+	public long getElapsed() {
+		return elapsed;
+	}
+
+	void setElapsed(long elapsed) {
+		this.elapsed = elapsed;
+	}
+
+	void add(SslScanStatus status) {
+		probes++;
+		switch (status) {
+		case Accepted:
+			accepted++;
+			break;
+		case Rejected:
+			rejected++;
+			break;
+		case Unsupported:
+			unsupported++;
+			break;
+		case Timeout:
+			timeouts++;
+			break;
+		case Error:
+			errors++;
+			break;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "targets=" + targets + ", probes=" + probes + ", accepted=" + accepted + ", rejected=" + rejected
+				+ ", unsupported=" + unsupported + ", timeouts=" + timeouts + ", errors=" + errors
+				+ ", cert validations=" + certValidations + ", elapsed=" + elapsed + "ms";
+	}
+}
@@ -0,0 +1,28 @@
+package org.krakenapps.sslscan;
+
+public enum SslScanStatus {
+	/**
+	 * server completed handshake with the cipher suite
+	 */
+	Accepted,
+
+	/**
+	 * server refused the cipher suite with alert or connection close
+	 */
+	Rejected,
+
+	/**
+	 * local ssl engine could not offer the cipher suite
+	 */
+	Unsupported,
+
+	/**
+	 * connect or handshake did not complete in time
+	 */
+	Timeout,
+
+	/**
+	 * connect or i/o failure
+	 */
+	Error
+}
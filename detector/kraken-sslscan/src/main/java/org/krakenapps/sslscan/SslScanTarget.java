@@ -0,0 +1,87 @@
+package org.krakenapps.sslscan;
+
+public class SslScanTarget {
+	private String host;
+	private int port;
+
+	public SslScanTarget(String host, int port) {
+		this.host = host;
+		this.port = port;
+	}
+
+	/**
+	 * Parses host:port, or host only for port 443. Bracketed ipv6 address
+	 * such as [::1]:8443 is also accepted.
+	 */
+	public static SslScanTarget parse(String s) {
+		s = s.trim();
+		int port = 443;
+		String host = s;
+
+		if (s.startsWith("[")) {
+			int end = s.indexOf(']');
+			if (end < 0)
+				throw new IllegalArgumentException("invalid target: " + s);
+
+			host = s.substring(1, end);
+			if (end + 1 < s.length()) {
+				if (s.charAt(end + 1) != ':')
+					throw new IllegalArgumentException("invalid target: " + s);
+				port = parsePort(s, s.substring(end + 2));
+			}
+		} else {
+			int p = s.lastIndexOf(':');
+			if (p >= 0 && s.indexOf(':') == p) {
+				host = s.substring(0, p);
+				port = parsePort(s, s.substring(p + 1));
+			}
+		}
+
+		if (host.isEmpty())
+			throw new IllegalArgumentException("invalid target: " + s);
+
+		return new SslScanTarget(host, port);
+	}
+
+	private static int parsePort(String target, String s) {
+		try {
+			int port = Integer.parseInt(s);
+			if (port <= 0 || port > 65535)
+				throw new IllegalArgumentException("invalid port: " + target);
+			return port;
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("invalid port: " + target);
+		}
+	}
+
+	public String getHost() {
+		return host;
+	}
+
+	public int getPort() {
+		return port;
+	}
+
+	@Override
+	public int hashCode() {
+		return host.hashCode() * 31 + port;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (!(obj instanceof SslScanTarget))
+			return false;
+
+		SslScanTarget o = (SslScanTarget) obj;
+		return host.equals(o.host) && port == o.port;
+	}
+
+	@Override
+	public String toString() {
+		if (host.indexOf(':') >= 0)
+			return "[" + host + "]:" + port;
+		return host + ":" + port;
+	}
+}
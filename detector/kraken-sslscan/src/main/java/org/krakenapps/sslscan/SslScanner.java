@@ -1,94 +1,612 @@
 package org.krakenapps.sslscan;
 
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
-import java.net.Socket;
-import java.security.NoSuchAlgorithmException;
-import java.security.SecureRandom;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.security.GeneralSecurityException;
+import java.security.cert.Certificate;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import javax.net.SocketFactory;
-import javax.net.ssl.HandshakeCompletedEvent;
-import javax.net.ssl.HandshakeCompletedListener;
 import javax.net.ssl.SSLContext;
-import javax.net.ssl.SSLHandshakeException;
-import javax.net.ssl.SSLParameters;
-import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLPeerUnverifiedException;
+import javax.net.ssl.SSLSession;
 import javax.net.ssl.TrustManager;
 import javax.net.ssl.X509TrustManager;
 
-import sun.security.validator.ValidatorException;
-
-@SuppressWarnings("restriction")
+/**
+ * Probes which cipher suites are accepted by ssl/tls servers. Each cipher suite
+ * is offered alone in its own handshake. All handshakes of a scan are driven
+ * by one selector thread with non-blocking {@link SSLEngine}s, and handshake
+ * delegated tasks run on a small thread pool. Concurrent handshakes are
+ * bounded globally and per host, and hosts are served round robin.
+ */
 public class SslScanner {
-	private SSLContext ctx;
+	private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+	private int maxConcurrency = 128;
+	private int maxPerHost = 4;
+	private int timeout = 5000;
+	private int taskThreads = Runtime.getRuntime().availableProcessors();
+	private List<String> cipherSuites;
 
 	public static void main(String[] args) throws Exception {
 		new SslScanner().run(args);
 	}
 
 	public void run(String[] args) throws Exception {
-		if (args.length < 2) {
+		List<SslScanTarget> targets = new ArrayList<SslScanTarget>();
+
+		// legacy usage: [hostname] [port]
+		if (args.length == 2 && !args[0].startsWith("-") && args[1].matches("[0-9]+")) {
+			targets.add(new SslScanTarget(args[0], Integer.valueOf(args[1])));
+			args = new String[0];
+		}
+
+		for (int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			if (arg.startsWith("-") && i + 1 >= args.length) {
+				targets.clear();
+				break;
+			}
+
+			if (arg.equals("-f"))
+				targets.addAll(readTargets(new File(args[++i])));
+			else if (arg.equals("-c"))
+				maxConcurrency = Integer.valueOf(args[++i]);
+			else if (arg.equals("-h"))
+				maxPerHost = Integer.valueOf(args[++i]);
+			else if (arg.equals("-t"))
+				timeout = Integer.valueOf(args[++i]);
+			else if (arg.equals("-s"))
+				cipherSuites = Arrays.asList(args[++i].split(","));
+			else
+				targets.add(SslScanTarget.parse(arg));
+		}
+
+		if (targets.isEmpty()) {
 			System.out.println("SSL Cipher Suite Scanner, xeraph@nchovy.com");
-			System.out.println("Usage: java -jar kraken-sslscan.jar [hostname] [port]");
+			System.out.println("Usage: java -jar kraken-sslscan.jar [options] [host[:port]]...");
+			System.out.println("  -f file\ttarget list file, one host[:port] per line");
+			System.out.println("  -c count\tmax concurrent handshakes, default " + maxConcurrency);
+			System.out.println("  -h count\tmax concurrent handshakes per host, default " + maxPerHost);
+			System.out.println("  -t millis\tconnect and handshake timeout, default " + timeout);
+			System.out.println("  -s suites\tcomma separated cipher suites, default all supported");
 			return;
 		}
 
-		ctx = SSLContext.getDefault();
-		String hostname = args[0];
-		Integer port = Integer.valueOf(args[1]);
-
-		checkCertificate(hostname, port);
-		checkAllCipherSuites(ctx, hostname, port);
+		SslScanStats stats = scan(targets, new SslScanListener() {
+			@Override
+			public void onResult(SslScanResult result) {
+				System.out.println(result);
+			}
+		});
+		System.err.println("scan completed: " + stats);
 	}
 
-	private void checkCertificate(String hostname, int port) throws Exception {
+	private List<SslScanTarget> readTargets(File f) throws IOException {
+		List<SslScanTarget> targets = new ArrayList<SslScanTarget>();
+		BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(f), "utf-8"));
 		try {
-			checkCipherSuite(hostname, port, null);
-		} catch (SSLHandshakeException e) {
-			if (e.getCause() instanceof ValidatorException) {
-				System.out.println("Warning: Invalid Certificate, Ignoring..");
-				System.out.println(">> " + e.getCause().getMessage());
+			while (true) {
+				String line = br.readLine();
+				if (line == null)
+					break;
 
-				ctx = SSLContext.getInstance("SSL");
-				ctx.init(null, trustAllCerts, new SecureRandom());
+				line = line.trim();
+				if (line.isEmpty() || line.startsWith("#"))
+					continue;
+
+				targets.add(SslScanTarget.parse(line));
 			}
+		} finally {
+			br.close();
 		}
+		return targets;
+	}
+
+	public int getMaxConcurrency() {
+		return maxConcurrency;
+	}
+
+	public void setMaxConcurrency(int maxConcurrency) {
+		this.maxConcurrency = maxConcurrency;
+	}
+
+	public int getMaxPerHost() {
+		return maxPerHost;
+	}
+
+	public void setMaxPerHost(int maxPerHost) {
+		this.maxPerHost = maxPerHost;
+	}
+
+	/**
+	 * @return connect and handshake timeout in milliseconds
+	 */
+	public int getTimeout() {
+		return timeout;
+	}
+
+	public void setTimeout(int timeout) {
+		this.timeout = timeout;
+	}
+
+	public int getTaskThreads() {
+		return taskThreads;
+	}
+
+	public void setTaskThreads(int taskThreads) {
+		this.taskThreads = taskThreads;
+	}
+
+	/**
+	 * @return cipher suites to probe, or null for all supported suites
+	 */
+	public List<String> getCipherSuites() {
+		return cipherSuites;
+	}
+
+	public void setCipherSuites(List<String> cipherSuites) {
+		this.cipherSuites = cipherSuites;
 	}
 
-	private void checkAllCipherSuites(SSLContext ctx, String hostname, Integer port) throws NoSuchAlgorithmException {
-		SSLParameters sslParams = ctx.getSupportedSSLParameters();
-		for (String cipher : sslParams.getCipherSuites()) {
+	/**
+	 * Probes all cipher suites of all targets, and blocks until every result
+	 * is delivered to the listener.
+	 */
+	public SslScanStats scan(Collection<SslScanTarget> targets, SslScanListener listener) throws IOException {
+		// new context per scan, so that no probe resumes a cached session
+		SSLContext ctx;
+		try {
+			ctx = SSLContext.getInstance("TLS");
+			ctx.init(null, new TrustManager[] { new TrustAllManager() }, null);
+		} catch (GeneralSecurityException e) {
+			throw new IOException("cannot create ssl context: " + e.getMessage());
+		}
+
+		List<String> suites = cipherSuites;
+		if (suites == null)
+			suites = Arrays.asList(ctx.getSupportedSSLParameters().getCipherSuites());
+
+		return new Scan(ctx, listener).run(targets, suites);
+	}
+
+	private class Scan {
+		private SSLContext ctx;
+		private SslScanListener listener;
+		private Selector selector;
+		private ExecutorService executor;
+		private Queue<HostState> ready = new ArrayDeque<HostState>();
+		private Set<Probe> active = new HashSet<Probe>();
+		private Queue<Probe> resumed = new ConcurrentLinkedQueue<Probe>();
+		private CertificateValidator validator = new CertificateValidator();
+		private SslScanStats stats = new SslScanStats();
+
+		public Scan(SSLContext ctx, SslScanListener listener) {
+			this.ctx = ctx;
+			this.listener = listener;
+		}
+
+		public SslScanStats run(Collection<SslScanTarget> targets, List<String> suites) throws IOException {
+			long begin = System.currentTimeMillis();
+
+			Map<String, HostState> hosts = new LinkedHashMap<String, HostState>();
+			for (SslScanTarget target : targets) {
+				HostState host = hosts.get(target.getHost());
+				if (host == null) {
+					host = new HostState(target.getHost());
+					hosts.put(target.getHost(), host);
+				}
+
+				for (String suite : suites)
+					host.pending.add(new Probe(host, target, suite));
+			}
+
+			for (HostState host : hosts.values())
+				schedule(host);
+
+			selector = Selector.open();
+			executor = Executors.newFixedThreadPool(Math.max(1, taskThreads), new TaskThreadFactory());
 			try {
-				checkCipherSuite(hostname, port, cipher);
-				System.out.println("PASS " + cipher);
-			} catch (IOException e) {
-				System.out.println("FAIL " + cipher);
+				launch();
+				while (!active.isEmpty()) {
+					select();
+					expire();
+					launch();
+				}
+			} finally {
+				executor.shutdownNow();
+				for (Probe p : active)
+					p.close();
+				selector.close();
 			}
+
+			stats.setTargets(targets.size());
+			stats.setCertValidations(validator.getValidationCount());
+			stats.setElapsed(System.currentTimeMillis() - begin);
+			return stats;
 		}
-	}
 
-	public void checkCipherSuite(String hostname, int port, String cipher) throws IOException {
-		SocketFactory socketFactory = ctx.getSocketFactory();
-		Socket socket = socketFactory.createSocket(hostname, port);
-		SSLSocket sslSocket = (SSLSocket) socket;
+		private void launch() {
+			while (active.size() < maxConcurrency && !ready.isEmpty()) {
+				HostState host = ready.poll();
+				host.queued = false;
 
-		if (cipher != null)
-			sslSocket.setEnabledCipherSuites(new String[] { cipher });
+				Probe p = host.pending.poll();
+				host.active++;
+				active.add(p);
+				p.start();
+
+				schedule(host);
+			}
+		}
+
+		private void schedule(HostState host) {
+			if (!host.queued && host.active < maxPerHost && !host.pending.isEmpty()) {
+				host.queued = true;
+				ready.add(host);
+			}
+		}
+
+		private void select() throws IOException {
+			long now = System.currentTimeMillis();
+			long deadline = Long.MAX_VALUE;
+			for (Probe p : active)
+				deadline = Math.min(deadline, p.deadline);
+
+			if (deadline > now)
+				selector.select(deadline - now);
+			else
+				selector.selectNow();
+
+			Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+			while (it.hasNext()) {
+				SelectionKey key = it.next();
+				it.remove();
+
+				if (key.isValid())
+					((Probe) key.attachment()).onReady(key);
+			}
+
+			while (true) {
+				Probe p = resumed.poll();
+				if (p == null)
+					break;
+
+				if (!p.done)
+					p.resume();
+			}
+		}
+
+		private void expire() {
+			long now = System.currentTimeMillis();
+			List<Probe> expired = new ArrayList<Probe>();
+			for (Probe p : active)
+				if (p.deadline <= now)
+					expired.add(p);
+
+			for (Probe p : expired)
+				p.finish(SslScanStatus.Timeout, p.engine == null ? "connect timeout" : "handshake timeout");
+		}
+
+		private class Probe {
+			private HostState host;
+			private SslScanTarget target;
+			private String cipherSuite;
+			private long begin;
+			private long deadline;
+			private SocketChannel channel;
+			private SelectionKey key;
+			private SSLEngine engine;
+			private ByteBuffer netIn;
+			private ByteBuffer netOut;
+			private ByteBuffer appIn;
+			private boolean sent;
+			private boolean done;
+
+			public Probe(HostState host, SslScanTarget target, String cipherSuite) {
+				this.host = host;
+				this.target = target;
+				this.cipherSuite = cipherSuite;
+			}
+
+			public void start() {
+				begin = System.currentTimeMillis();
+				deadline = begin + timeout;
+				try {
+					InetAddress addr = host.resolve();
+					channel = SocketChannel.open();
+					channel.configureBlocking(false);
+					key = channel.register(selector, 0, this);
+
+					if (channel.connect(new InetSocketAddress(addr, target.getPort())))
+						beginHandshake();
+					else
+						key.interestOps(SelectionKey.OP_CONNECT);
+				} catch (Throwable t) {
+					fail(t);
+				}
+			}
+
+			public void onReady(SelectionKey key) {
+				try {
+					if (key.isConnectable()) {
+						if (channel.finishConnect())
+							beginHandshake();
+					} else {
+						step();
+					}
+				} catch (Throwable t) {
+					fail(t);
+				}
+			}
+
+			public void resume() {
+				try {
+					step();
+				} catch (Throwable t) {
+					fail(t);
+				}
+			}
+
+			private void beginHandshake() throws IOException {
+				engine = ctx.createSSLEngine(target.getHost(), target.getPort());
+				engine.setUseClientMode(true);
+				engine.setEnabledCipherSuites(new String[] { cipherSuite });
+
+				SSLSession session = engine.getSession();
+				netIn = ByteBuffer.allocate(session.getPacketBufferSize());
+				netOut = ByteBuffer.allocate(session.getPacketBufferSize());
+				appIn = ByteBuffer.allocate(session.getApplicationBufferSize());
+
+				engine.beginHandshake();
+				step();
+			}
+
+			private void step() throws IOException {
+				while (true) {
+					if (!flush()) {
+						key.interestOps(SelectionKey.OP_WRITE);
+						return;
+					}
+
+					if (engine.isInboundDone() || engine.isOutboundDone())
+						throw new SSLException("connection closed during handshake");
+
+					SSLEngineResult.HandshakeStatus hs = engine.getHandshakeStatus();
+					if (hs == SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING
+							|| hs == SSLEngineResult.HandshakeStatus.FINISHED) {
+						accept();
+						return;
+					} else if (hs == SSLEngineResult.HandshakeStatus.NEED_TASK) {
+						key.interestOps(0);
+						executor.execute(new DelegatedTask(this));
+						return;
+					} else if (hs == SSLEngineResult.HandshakeStatus.NEED_WRAP) {
+						SSLEngineResult r = engine.wrap(EMPTY, netOut);
+						if (r.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW)
+							netOut = enlarge(netOut, engine.getSession().getPacketBufferSize());
+						if (r.bytesProduced() > 0)
+							sent = true;
+					} else {
+						netIn.flip();
+						SSLEngineResult r = engine.unwrap(netIn, appIn);
+						netIn.compact();
+						appIn.clear();
+
+						if (r.getStatus() == SSLEngineResult.Status.BUFFER_UNDERFLOW) {
+							if (!netIn.hasRemaining())
+								netIn = enlarge(netIn, engine.getSession().getPacketBufferSize());
+
+							int n = channel.read(netIn);
+							if (n < 0)
+								throw new EOFException("connection closed by peer");
+
+							if (n == 0) {
+								key.interestOps(SelectionKey.OP_READ);
+								return;
+							}
+						} else if (r.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW) {
+							appIn = enlarge(appIn, engine.getSession().getApplicationBufferSize());
+						}
+					}
+				}
+			}
+
+			/**
+			 * @return true if all pending handshake records are written
+			 */
+			private boolean flush() throws IOException {
+				if (netOut.position() == 0)
+					return true;
+
+				netOut.flip();
+				channel.write(netOut);
+				netOut.compact();
+				return netOut.position() == 0;
+			}
+
+			private ByteBuffer enlarge(ByteBuffer b, int size) {
+				ByteBuffer n = ByteBuffer.allocate(Math.max(size, b.capacity() * 2));
+				b.flip();
+				n.put(b);
+				return n;
+			}
+
+			private void accept() {
+				SSLSession session = engine.getSession();
+				Certificate[] peerCerts = null;
+				try {
+					peerCerts = session.getPeerCertificates();
+				} catch (SSLPeerUnverifiedException e) {
+					// anonymous cipher suite
+				}
+
+				CertificateValidation cert = validator.validate(peerCerts, session.getCipherSuite());
+				String protocol = session.getProtocol();
+
+				// best effort close_notify
+				try {
+					engine.closeOutbound();
+					netOut.clear();
+					engine.wrap(EMPTY, netOut);
+					netOut.flip();
+					channel.write(netOut);
+				} catch (IOException e) {
+				}
+
+				SslScanResult result = newResult(SslScanStatus.Accepted);
+				result.setProtocol(protocol);
+				result.setCertificate(cert);
+				deliver(result);
+			}
+
+			private void fail(Throwable t) {
+				String msg = t.getMessage();
+				if (msg == null)
+					msg = t.getClass().getSimpleName();
+
+				if (engine == null)
+					finish(SslScanStatus.Error, msg);
+				else if (!sent)
+					finish(SslScanStatus.Unsupported, msg);
+				else
+					finish(SslScanStatus.Rejected, msg);
+			}
+
+			public void finish(SslScanStatus status, String error) {
+				SslScanResult result = newResult(status);
+				result.setError(error);
+				deliver(result);
+			}
+
+			private SslScanResult newResult(SslScanStatus status) {
+				return new SslScanResult(target, cipherSuite, status, System.currentTimeMillis() - begin);
+			}
+
+			private void deliver(SslScanResult result) {
+				if (done)
+					return;
+
+				done = true;
+				close();
+				active.remove(this);
+				host.active--;
+				schedule(host);
+
+				stats.add(result.getStatus());
+				listener.onResult(result);
+			}
+
+			public void close() {
+				if (channel == null)
+					return;
+
+				try {
+					channel.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+
+		private class DelegatedTask implements Runnable {
+			private Probe probe;
+
+			public DelegatedTask(Probe probe) {
+				this.probe = probe;
+			}
 
-		sslSocket.addHandshakeCompletedListener(new HandshakeCompletedListener() {
 			@Override
-			public void handshakeCompleted(HandshakeCompletedEvent e) {
+			public void run() {
+				while (true) {
+					Runnable task = probe.engine.getDelegatedTask();
+					if (task == null)
+						break;
+					task.run();
+				}
+
+				resumed.add(probe);
+				selector.wakeup();
 			}
-		});
+		}
+
+		private class HostState {
+			private String host;
+			private InetAddress address;
+			private UnknownHostException unknownHost;
+			private Queue<Probe> pending = new ArrayDeque<Probe>();
+			private int active;
+			private boolean queued;
+
+			public HostState(String host) {
+				this.host = host;
+			}
+
+			/**
+			 * Resolves host once, since every probe of the host connects to same
+			 * address.
+			 */
+			public InetAddress resolve() throws UnknownHostException {
+				if (address == null && unknownHost == null) {
+					try {
+						address = InetAddress.getByName(host);
+					} catch (UnknownHostException e) {
+						unknownHost = e;
+					}
+				}
+
+				if (unknownHost != null)
+					throw unknownHost;
+				return address;
+			}
+		}
+	}
+
+	private static class TaskThreadFactory implements ThreadFactory {
+		private static final AtomicInteger seq = new AtomicInteger();
 
-		sslSocket.startHandshake();
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "SSL Scan Task " + seq.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		}
 	}
 
-	TrustManager[] trustAllCerts = new TrustManager[] { new X509TrustManager() {
+	private static class TrustAllManager implements X509TrustManager {
 		@Override
 		public X509Certificate[] getAcceptedIssuers() {
-			return null;
+			return new X509Certificate[0];
 		}
 
 		@Override
@@ -98,6 +616,5 @@ public class SslScanner {
 		@Override
 		public void checkClientTrusted(X509Certificate[] chain, String authType) throws CertificateException {
 		}
-	} };
-
+	}
 }
@@ -0,0 +1,232 @@
+package org.krakenapps.sslscan;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.security.KeyStore;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSocket;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SslScannerTest {
+	private File keyStoreFile;
+	private SSLContext serverContext;
+	private ExecutorService executor;
+	private List<ServerSocket> servers = new ArrayList<ServerSocket>();
+
+	@Before
+	public void setup() throws Exception {
+		// self signed server certificate
+		keyStoreFile = new File(System.getProperty("java.io.tmpdir"), "kraken-sslscan-" + System.nanoTime() + ".jks");
+		String keytool = new File(System.getProperty("java.home"), "bin/keytool").getAbsolutePath();
+		Process p = new ProcessBuilder(keytool, "-genkeypair", "-alias", "test", "-keyalg", "RSA", "-keysize",
+				"2048", "-dname", "CN=localhost", "-validity", "1", "-storetype", "JKS", "-keystore",
+				keyStoreFile.getAbsolutePath(), "-storepass", "changeit", "-keypass", "changeit").redirectErrorStream(
+				true).start();
+		InputStream is = p.getInputStream();
+		while (is.read() >= 0)
+			;
+		assertEquals(0, p.waitFor());
+
+		KeyStore ks = KeyStore.getInstance("JKS");
+		FileInputStream fis = new FileInputStream(keyStoreFile);
+		try {
+			ks.load(fis, "changeit".toCharArray());
+		} finally {
+			fis.close();
+		}
+
+		KeyManagerFactory kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+		kmf.init(ks, "changeit".toCharArray());
+		serverContext = SSLContext.getInstance("TLS");
+		serverContext.init(kmf.getKeyManagers(), null, null);
+		executor = Executors.newCachedThreadPool();
+	}
+
+	@After
+	public void teardown() throws Exception {
+		for (ServerSocket s : servers)
+			s.close();
+		executor.shutdownNow();
+		keyStoreFile.delete();
+	}
+
+	@Test
+	public void testRestrictedSuites() throws Exception {
+		List<String> rsaSuites = new ArrayList<String>();
+		for (String suite : serverContext.getDefaultSSLParameters().getCipherSuites())
+			if (suite.startsWith("TLS_ECDHE_RSA_WITH_"))
+				rsaSuites.add(suite);
+		assertTrue(rsaSuites.size() >= 2);
+
+		// each server accepts only one suite
+		SslScanTarget t1 = startServer(rsaSuites.get(0));
+		SslScanTarget t2 = startServer(rsaSuites.get(1));
+
+		SslScanner scanner = new SslScanner();
+		scanner.setMaxPerHost(2);
+		scanner.setCipherSuites(Arrays.asList(SSLContext.getDefault().getDefaultSSLParameters().getCipherSuites()));
+
+		Collector c = new Collector();
+		SslScanStats stats = scanner.scan(Arrays.asList(t1, t2), c);
+		assertEquals(2 * scanner.getCipherSuites().size(), c.results.size());
+		assertEquals(2, stats.getAccepted());
+		assertEquals(0, stats.getTimeouts());
+		assertEquals(0, stats.getErrors());
+
+		// same chain is validated once
+		assertEquals(1, stats.getCertValidations());
+
+		assertEquals(new HashSet<String>(Arrays.asList(rsaSuites.get(0))), c.getAccepted(t1));
+		assertEquals(new HashSet<String>(Arrays.asList(rsaSuites.get(1))), c.getAccepted(t2));
+
+		for (SslScanResult r : c.results) {
+			if (r.getStatus() != SslScanStatus.Accepted)
+				continue;
+
+			assertEquals("TLSv1.2", r.getProtocol());
+			assertEquals("CN=localhost", r.getCertSubject());
+			assertFalse(r.isCertValid());
+			assertTrue(r.getCertError() != null);
+			assertEquals("accepted", r.toMap().get("status"));
+		}
+	}
+
+	@Test
+	public void testHandshakeTimeout() throws Exception {
+		// accepts connection but never answers client hello
+		final ServerSocket silent = new ServerSocket(0);
+		servers.add(silent);
+		final List<Socket> sockets = new ArrayList<Socket>();
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					while (true)
+						sockets.add(silent.accept());
+				} catch (Exception e) {
+				}
+			}
+		});
+
+		SslScanner scanner = new SslScanner();
+		scanner.setTimeout(300);
+		scanner.setCipherSuites(Arrays.asList("TLS_ECDHE_RSA_WITH_AES_128_GCM_SHA256", "TLS_RSA_WITH_AES_128_CBC_SHA"));
+
+		Collector c = new Collector();
+		SslScanStats stats = scanner.scan(Arrays.asList(new SslScanTarget("127.0.0.1", silent.getLocalPort())), c);
+		assertEquals(2, stats.getTimeouts());
+		for (SslScanResult r : c.results) {
+			assertEquals(SslScanStatus.Timeout, r.getStatus());
+			assertEquals("handshake timeout", r.getError());
+			assertTrue(r.getElapsed() >= 300);
+		}
+
+		for (Socket s : sockets)
+			s.close();
+	}
+
+	@Test
+	public void testConnectError() throws Exception {
+		ServerSocket s = new ServerSocket(0);
+		int port = s.getLocalPort();
+		s.close();
+
+		SslScanner scanner = new SslScanner();
+		scanner.setCipherSuites(Arrays.asList("TLS_ECDHE_RSA_WITH_AES_128_GCM_SHA256"));
+
+		Collector c = new Collector();
+		SslScanStats stats = scanner.scan(Arrays.asList(new SslScanTarget("127.0.0.1", port)), c);
+		assertEquals(1, stats.getErrors());
+		assertEquals(SslScanStatus.Error, c.results.get(0).getStatus());
+		assertEquals(null, c.results.get(0).isCertValid());
+	}
+
+	@Test
+	public void testParseTarget() {
+		assertEquals(new SslScanTarget("example.com", 443), SslScanTarget.parse("example.com"));
+		assertEquals(new SslScanTarget("10.0.0.1", 8443), SslScanTarget.parse(" 10.0.0.1:8443 "));
+		assertEquals(new SslScanTarget("::1", 8443), SslScanTarget.parse("[::1]:8443"));
+		assertEquals(new SslScanTarget("fe80::1", 443), SslScanTarget.parse("fe80::1"));
+		assertEquals("[::1]:8443", new SslScanTarget("::1", 8443).toString());
+	}
+
+	@Test
+	public void testAuthType() {
+		assertEquals("ECDHE_RSA", CertificateValidator.getAuthType("TLS_ECDHE_RSA_WITH_AES_128_GCM_SHA256"));
+		assertEquals("RSA", CertificateValidator.getAuthType("SSL_RSA_WITH_RC4_128_SHA"));
+		assertEquals("UNKNOWN", CertificateValidator.getAuthType("TLS_AES_128_GCM_SHA256"));
+	}
+
+	private SslScanTarget startServer(String suite) throws Exception {
+		final SSLServerSocket server = (SSLServerSocket) serverContext.getServerSocketFactory().createServerSocket(0);
+		server.setEnabledProtocols(new String[] { "TLSv1.2" });
+		server.setEnabledCipherSuites(new String[] { suite });
+		servers.add(server);
+
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					while (true) {
+						final SSLSocket s = (SSLSocket) server.accept();
+						executor.execute(new Runnable() {
+							@Override
+							public void run() {
+								try {
+									s.startHandshake();
+									s.getInputStream().read();
+								} catch (Exception e) {
+								} finally {
+									try {
+										s.close();
+									} catch (Exception e) {
+									}
+								}
+							}
+						});
+					}
+				} catch (Exception e) {
+				}
+			}
+		});
+
+		return new SslScanTarget("localhost", server.getLocalPort());
+	}
+
+	private static class Collector implements SslScanListener {
+		private List<SslScanResult> results = new ArrayList<SslScanResult>();
+
+		@Override
+		public void onResult(SslScanResult result) {
+			results.add(result);
+		}
+
+		public Set<String> getAccepted(SslScanTarget target) {
+			Set<String> suites = new HashSet<String>();
+			for (SslScanResult r : results)
+				if (r.getTarget().equals(target) && r.getStatus() == SslScanStatus.Accepted)
+					suites.add(r.getCipherSuite());
+			return suites;
+		}
+	}
+}
@@ -1,7 +1,26 @@
 package org.krakenapps.confdb;
 
+import java.util.List;
+
 public interface ConfigCache {
 	Config findEntry(String colName, int manifestId, int docId, long rev);
 
 	void putEntry(String colName, int manifestId, Config c);
+
+	/**
+	 * @return the document and snapshot cache hit statistics per collection
+	 */
+	List<ConfigCacheStats> getStats();
+
+	/**
+	 * @return the estimated bytes of all cached entries
+	 */
+	long getWeight();
+
+	/**
+	 * @return the cache size limit in bytes
+	 */
+	long getMaxWeight();
+
+	long getEvictions();
 }
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2011 Future Systems, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.krakenapps.confdb;
+
+/**
+ * Cache hit statistics of a collection
+ * 
+ * @author xeraph
+ * 
+ */
+public class ConfigCacheStats {
+	private String colName;
+	private long hits;
+	private long misses;
+
+	public ConfigCacheStats(String colName, long hits, long misses) {
+		this.colName = colName;
+		this.hits = hits;
+		this.misses = misses;
+	}
+
+	public String getCollectionName() {
+		return colName;
+	}
+
+	public long getHits() {
+		return hits;
+	}
+
+	public long getMisses() {
+		return misses;
+	}
+
+	public double getHitRatio() {
+		long total = hits + misses;
+		if (total == 0)
+			return 0;
+		return (double) hits / total;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("col=%s, hits=%d, misses=%d, hit ratio=%.1f%%", colName, hits, misses, getHitRatio() * 100);
+	}
+}
@@ -15,6 +15,8 @@
  */
 package org.krakenapps.confdb;
 
+import java.util.Set;
+
 public interface ConfigCollection {
 	String getName();
 
@@ -51,4 +53,20 @@ public interface ConfigCollection {
 	Config remove(Config c, boolean checkConflict, String committer, String log);
 
 	Config remove(ConfigTransaction xact, Config c, boolean ignoreConflict);
+
+	/**
+	 * declare secondary index for equality and prefix lookup. index is built
+	 * immediately and maintained at every commit.
+	 * 
+	 * @param field
+	 *            the field path (e.g. loginName or parent/name)
+	 */
+	void ensureIndex(String field);
+
+	void dropIndex(String field);
+
+	/**
+	 * @return the underscore field paths of declared indexes
+	 */
+	Set<String> getIndexFields();
 }
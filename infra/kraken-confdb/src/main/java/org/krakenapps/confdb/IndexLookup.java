@@ -0,0 +1,93 @@
+/*
+ * Copyright 2011 Future Systems, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.krakenapps.confdb;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Describes how a predicate can be resolved through a secondary index. Either
+ * exact values or a string prefix is specified. Candidates returned by index
+ * are evaluated with original predicate again, so lookup can be wider than
+ * predicate itself.
+ * 
+ * @author xeraph
+ * 
+ */
+public class IndexLookup {
+	private String field;
+	private Collection<? extends Object> values;
+	private String prefix;
+
+	public static IndexLookup values(String field, Collection<? extends Object> values) {
+		IndexLookup lookup = new IndexLookup(field);
+		lookup.values = values;
+		return lookup;
+	}
+
+	public static IndexLookup prefix(String field, String prefix) {
+		IndexLookup lookup = new IndexLookup(field);
+		lookup.prefix = prefix;
+		return lookup;
+	}
+
+	private IndexLookup(String field) {
+		this.field = field;
+	}
+
+	/**
+	 * @return the underscore field path (e.g. login_name or parent/name)
+	 */
+	public String getField() {
+		return field;
+	}
+
+	/**
+	 * @return the exact match values, or null if prefix lookup
+	 */
+	public Collection<? extends Object> getValues() {
+		return values;
+	}
+
+	/**
+	 * @return the string prefix, or null if exact match lookup
+	 */
+	public String getPrefix() {
+		return prefix;
+	}
+
+	public boolean isPrefix() {
+		return prefix != null;
+	}
+
+	/**
+	 * Only scalar values can be indexed. Map and array values are compared by
+	 * predicates directly.
+	 */
+	public static boolean isIndexable(Object value) {
+		if (value == null)
+			return false;
+
+		return !(value instanceof Map || value instanceof Collection || value.getClass().isArray());
+	}
+
+	@Override
+	public String toString() {
+		if (prefix != null)
+			return "field=" + field + ", prefix=" + prefix;
+		return "field=" + field + ", values=" + values;
+	}
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright 2011 Future Systems, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.krakenapps.confdb;
+
+import java.util.Set;
+
+/**
+ * Predicate which can narrow candidate documents using secondary index of
+ * collection.
+ * 
+ * @author xeraph
+ * 
+ */
+public interface IndexablePredicate extends Predicate {
+	/**
+	 * @param indexedFields
+	 *            the underscore field paths which are indexed in collection
+	 * @return the index lookup, or null if predicate cannot use any index
+	 */
+	IndexLookup getIndexLookup(Set<String> indexedFields);
+}
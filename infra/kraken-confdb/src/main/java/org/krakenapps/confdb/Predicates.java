@@ -18,8 +18,10 @@ package org.krakenapps.confdb;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.krakenapps.api.PrimitiveConverter;
 
@@ -44,6 +46,10 @@ public class Predicates {
 		return new KeyContains(field, values);
 	}
 
+	public static Predicate prefix(String field, String prefix) {
+		return new KeyPrefix(field, prefix);
+	}
+
 	public static Predicate and(Predicate... pred) {
 		return new Conjunction(pred);
 	}
@@ -122,20 +128,35 @@ public class Predicates {
 		}
 	}
 
-	private static class KeyMatch implements Predicate {
+	private static class KeyMatch implements IndexablePredicate {
 		private Map<String, Object> terms;
 		private Map<String, String[]> underscoreMap = new HashMap<String, String[]>();
+		private Map<String, String> fieldMap = new HashMap<String, String>();
 
 		public KeyMatch(String key, Object value) {
 			this.terms = new HashMap<String, Object>();
 			this.terms.put(key, value);
-			underscoreMap.put(key, PrimitiveConverter.toUnderscoreName(key).split("/"));
+			fieldMap.put(key, PrimitiveConverter.toUnderscoreName(key));
+			underscoreMap.put(key, fieldMap.get(key).split("/"));
 		}
 
 		public KeyMatch(Map<String, Object> terms) {
 			this.terms = terms;
-			for (String term : terms.keySet())
-				underscoreMap.put(term, PrimitiveConverter.toUnderscoreName(term).split("/"));
+			for (String term : terms.keySet()) {
+				fieldMap.put(term, PrimitiveConverter.toUnderscoreName(term));
+				underscoreMap.put(term, fieldMap.get(term).split("/"));
+			}
+		}
+
+		@Override
+		public IndexLookup getIndexLookup(Set<String> indexedFields) {
+			for (String k : terms.keySet()) {
+				String field = fieldMap.get(k);
+				Object value = terms.get(k);
+				if (indexedFields.contains(field) && IndexLookup.isIndexable(value))
+					return IndexLookup.values(field, Arrays.asList(value));
+			}
+			return null;
 		}
 
 		@Override
@@ -162,15 +183,30 @@ public class Predicates {
 		}
 	}
 
-	private static class KeyContains implements Predicate {
+	private static class KeyContains implements IndexablePredicate {
+		private String field;
 		private String[] keys;
 		private Collection<? extends Object> values;
 
 		public KeyContains(String key, Collection<? extends Object> values) {
-			this.keys = PrimitiveConverter.toUnderscoreName(key).split("/");
+			this.field = PrimitiveConverter.toUnderscoreName(key);
+			this.keys = field.split("/");
 			this.values = values;
 		}
 
+		@Override
+		public IndexLookup getIndexLookup(Set<String> indexedFields) {
+			if (!indexedFields.contains(field))
+				return null;
+
+			// null or composite value can be matched without index entry
+			for (Object value : values)
+				if (!IndexLookup.isIndexable(value))
+					return null;
+
+			return IndexLookup.values(field, values);
+		}
+
 		@Override
 		public boolean eval(Config c) {
 			Object v = getValue(c, keys);
@@ -178,7 +214,35 @@ public class Predicates {
 		}
 	}
 
-	private static class Conjunction implements Predicate {
+	private static class KeyPrefix implements IndexablePredicate {
+		private String field;
+		private String[] keys;
+		private String prefix;
+
+		public KeyPrefix(String key, String prefix) {
+			if (prefix == null)
+				throw new IllegalArgumentException("prefix should be not null");
+
+			this.field = PrimitiveConverter.toUnderscoreName(key);
+			this.keys = field.split("/");
+			this.prefix = prefix;
+		}
+
+		@Override
+		public boolean eval(Config c) {
+			Object v = getValue(c, keys);
+			return v instanceof String && ((String) v).startsWith(prefix);
+		}
+
+		@Override
+		public IndexLookup getIndexLookup(Set<String> indexedFields) {
+			if (!indexedFields.contains(field))
+				return null;
+			return IndexLookup.prefix(field, prefix);
+		}
+	}
+
+	private static class Conjunction implements IndexablePredicate {
 		private Predicate[] pred;
 
 		public Conjunction(Predicate... pred) {
@@ -194,6 +258,20 @@ public class Predicates {
 			}
 			return true;
 		}
+
+		@Override
+		public IndexLookup getIndexLookup(Set<String> indexedFields) {
+			// any indexed term narrows conjunction candidates
+			for (Predicate p : pred) {
+				if (!(p instanceof IndexablePredicate))
+					continue;
+
+				IndexLookup lookup = ((IndexablePredicate) p).getIndexLookup(indexedFields);
+				if (lookup != null)
+					return lookup;
+			}
+			return null;
+		}
 	}
 
 	private static class Disjunction implements Predicate {
@@ -1,25 +1,57 @@
 package org.krakenapps.confdb.file;
 
-import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.krakenapps.confdb.Config;
 import org.krakenapps.confdb.ConfigCache;
+import org.krakenapps.confdb.ConfigCacheStats;
+import org.krakenapps.confdb.ConfigChange;
+import org.krakenapps.confdb.Manifest;
 
+/**
+ * Decoded documents, manifests and snapshots of all config databases are kept
+ * in one size bounded LRU cache. Cache size can be set using
+ * kraken.confdb.cache_size system property (in bytes).
+ * 
+ * All cached entries are immutable for their keys. Manifest and snapshot are
+ * identified by manifest id, and document is identified by its offset in
+ * collection data file. Old revisions are never hit again once the document
+ * is changed, and they are left to LRU eviction. Commit moves snapshots of
+ * unchanged collections to new manifest.
+ * 
+ * @author xeraph
+ * 
+ */
 public class FileConfigCache implements ConfigCache {
+	private static final long DEFAULT_CACHE_SIZE = 64 * 1024 * 1024;
+	private static final WeightedLruCache shared = new WeightedLruCache(Long.getLong("kraken.confdb.cache_size",
+			DEFAULT_CACHE_SIZE));
+
 	// collection name to id maping cache
 	private ConcurrentMap<String, Integer> nameMap;
 
-	// collection id to config cache map
-	private ConcurrentMap<Integer, WeakReference<ConcurrentMap<ConfigKey, Config>>> cache;
+	// collection id to hit statistics
+	private ConcurrentMap<Integer, HitCounter> counters;
 
 	private FileConfigDatabase db;
 
+	// database directory path as cache key namespace
+	private String dbKey;
+
 	public FileConfigCache(FileConfigDatabase db) {
 		this.db = db;
+		this.dbKey = db.getDbDirectory().getAbsolutePath();
 		this.nameMap = new ConcurrentHashMap<String, Integer>();
-		this.cache = new ConcurrentHashMap<Integer, WeakReference<ConcurrentMap<ConfigKey, Config>>>();
+		this.counters = new ConcurrentHashMap<Integer, HitCounter>();
 	}
 
 	/**
@@ -32,19 +64,9 @@ public class FileConfigCache implements ConfigCache {
 		if (colId == null)
 			return null;
 
-		WeakReference<ConcurrentMap<ConfigKey, Config>> ref = cache.get(colId);
-		if (ref == null)
-			return null;
-
-		ConcurrentMap<ConfigKey, Config> map = ref.get();
-		if (map == null)
-			return null;
-
-		Config c = map.get(new ConfigKey(manifestId, docId, rev));
-		if (c != null) {
-			return c;
-		}
-		return null;
+		Config c = (Config) shared.get(new ConfigKey(dbKey, colId, manifestId, docId, rev));
+		getCounter(colId).record(c != null);
+		return c;
 	}
 
 	@Override
@@ -53,17 +75,114 @@ public class FileConfigCache implements ConfigCache {
 		if (colId == null)
 			return;
 
-		WeakReference<ConcurrentMap<ConfigKey, Config>> ref = cache.get(colId);
-		ConcurrentMap<ConfigKey, Config> configCache = null;
-		if (ref == null) {
-			configCache = createCollectionCache(colId);
-		} else {
-			configCache = ref.get();
-			if (configCache == null)
-				configCache = createCollectionCache(colId);
+		ConfigKey key = new ConfigKey(dbKey, colId, manifestId, c.getId(), c.getRevision());
+		shared.put(key, c, 64 + weigh(c.getDocument()));
+	}
+
+	/**
+	 * Returns decoded document. CAUTION: you should NOT MODIFY returned
+	 * document.
+	 */
+	public Object findDoc(int colId, RevLog log) {
+		Object doc = shared.get(new DocKey(dbKey, colId, log.getDocId(), log.getRev(), log.getDocOffset()));
+		getCounter(colId).record(doc != null);
+		return doc;
+	}
+
+	public void putDoc(int colId, RevLog log, Object doc) {
+		DocKey key = new DocKey(dbKey, colId, log.getDocId(), log.getRev(), log.getDocOffset());
+		shared.put(key, doc, 64 + weigh(doc));
+	}
+
+	public FileManifest getManifest(int manifestId) {
+		return (FileManifest) shared.get(new ManifestKey(dbKey, manifestId));
+	}
+
+	public void putManifest(FileManifest manifest) {
+		long weight = 64 + 48 * manifest.getCollectionNames().size() + 64 * manifest.getConfigCount();
+		shared.put(new ManifestKey(dbKey, manifest.getId()), manifest, weight);
+	}
+
+	public Integer getManifestId(int changeDocId) {
+		return (Integer) shared.get(new ChangeKey(dbKey, changeDocId));
+	}
+
+	public void putManifestId(int changeDocId, int manifestId) {
+		shared.put(new ChangeKey(dbKey, changeDocId), manifestId, 48);
+	}
+
+	@SuppressWarnings("unchecked")
+	public List<RevLog> getSnapshot(int colId, int manifestId) {
+		List<RevLog> snapshot = (List<RevLog>) shared.get(new SnapshotKey(dbKey, colId, manifestId));
+		getCounter(colId).record(snapshot != null);
+		return snapshot;
+	}
+
+	public void putSnapshot(int colId, int manifestId, List<RevLog> snapshot) {
+		shared.put(new SnapshotKey(dbKey, colId, manifestId), snapshot, 64 + 72 * snapshot.size());
+	}
+
+	/**
+	 * Move snapshots of unchanged collections to the committed manifest. Old
+	 * revisions of changed documents are keyed by their rev and offset, so
+	 * they are not removed here. Should be called in write locked context.
+	 */
+	public void onCommit(int baseManifestId, Manifest manifest, Collection<ConfigChange> changeSet) {
+		Set<Integer> changed = new HashSet<Integer>();
+		for (ConfigChange c : changeSet)
+			changed.add(c.getColId());
+
+		for (String colName : manifest.getCollectionNames()) {
+			int colId = manifest.getCollectionId(colName);
+			if (changed.contains(colId))
+				continue;
+
+			@SuppressWarnings("unchecked")
+			List<RevLog> snapshot = (List<RevLog>) shared.get(new SnapshotKey(dbKey, colId, baseManifestId));
+			if (snapshot != null)
+				putSnapshot(colId, manifest.getId(), snapshot);
+		}
+	}
+
+	/**
+	 * Remove all cached entries of this database. Data files can be rewritten
+	 * by shrink or import.
+	 */
+	public void clear() {
+		shared.removeAll(new WeightedLruCache.KeyFilter() {
+			@Override
+			public boolean matches(Object key) {
+				return ((CacheKey) key).dbKey.equals(dbKey);
+			}
+		});
+		nameMap.clear();
+	}
+
+	@Override
+	public List<ConfigCacheStats> getStats() {
+		Manifest manifest = db.getManifest(null, true);
+		List<ConfigCacheStats> stats = new ArrayList<ConfigCacheStats>();
+		for (String colName : manifest.getCollectionNames()) {
+			HitCounter counter = counters.get(manifest.getCollectionId(colName));
+			if (counter != null)
+				stats.add(new ConfigCacheStats(colName, counter.hits.get(), counter.misses.get()));
 		}
+		return stats;
+	}
+
+	@Override
+	public long getWeight() {
+		return shared.getWeight();
+	}
 
-		configCache.put(new ConfigKey(manifestId, c.getId(), c.getRevision()), c);
+	@Override
+	public long getMaxWeight() {
+		return shared.getMaxWeight();
+	}
+
+	@Override
+	public long getEvictions() {
+		return shared.getEvictions();
 	}
 
 	private Integer getCollectionId(String colName) {
@@ -76,19 +195,87 @@ public class FileConfigCache implements ConfigCache {
 		return colId;
 	}
 
-	private ConcurrentMap<ConfigKey, Config> createCollectionCache(int colId) {
-		ConcurrentMap<ConfigKey, Config> configCache = new ConcurrentHashMap<FileConfigCache.ConfigKey, Config>();
-		WeakReference<ConcurrentMap<ConfigKey, Config>> ref = new WeakReference<ConcurrentMap<ConfigKey, Config>>(configCache);
-		cache.put(colId, ref);
-		return configCache;
+	private HitCounter getCounter(int colId) {
+		HitCounter counter = counters.get(colId);
+		if (counter == null) {
+			counter = new HitCounter();
+			HitCounter old = counters.putIfAbsent(colId, counter);
+			if (old != null)
+				counter = old;
+		}
+		return counter;
+	}
+
+	/**
+	 * Estimate heap usage of decoded document
+	 */
+	@SuppressWarnings("unchecked")
+	static long weigh(Object o) {
+		if (o == null)
+			return 8;
+
+		if (o instanceof String)
+			return 40 + 2 * ((String) o).length();
+
+		if (o instanceof Map) {
+			long w = 48;
+			for (Map.Entry<String, Object> e : ((Map<String, Object>) o).entrySet())
+				w += 32 + weigh(e.getKey()) + weigh(e.getValue());
+			return w;
+		}
+
+		if (o instanceof Collection) {
+			long w = 40;
+			for (Object e : (Collection<Object>) o)
+				w += 8 + weigh(e);
+			return w;
+		}
+
+		if (o instanceof Object[]) {
+			long w = 16;
+			for (Object e : (Object[]) o)
+				w += 8 + weigh(e);
+			return w;
+		}
+
+		if (o instanceof byte[])
+			return 16 + ((byte[]) o).length;
+
+		if (o instanceof Date)
+			return 24;
+
+		return 16;
+	}
+
+	private static class HitCounter {
+		private AtomicLong hits = new AtomicLong();
+		private AtomicLong misses = new AtomicLong();
+
+		public void record(boolean hit) {
+			if (hit)
+				hits.incrementAndGet();
+			else
+				misses.incrementAndGet();
+		}
 	}
 
-	private static class ConfigKey {
+	private static abstract class CacheKey {
+		protected final String dbKey;
+
+		public CacheKey(String dbKey) {
+			this.dbKey = dbKey;
+		}
+	}
+
+	private static class ConfigKey extends CacheKey {
+		private int colId;
 		private int manifestId;
 		private int id;
 		private long rev;
 
-		public ConfigKey(int manifestId, int id, long rev) {
+		public ConfigKey(String dbKey, int colId, int manifestId, int id, long rev) {
+			super(dbKey);
+			this.colId = colId;
 			this.manifestId = manifestId;
 			this.id = id;
 			this.rev = rev;
@@ -97,7 +284,8 @@ public class FileConfigCache implements ConfigCache {
 		@Override
 		public int hashCode() {
 			final int prime = 31;
-			int result = 1;
+			int result = dbKey.hashCode();
+			result = prime * result + colId;
 			result = prime * result + id;
 			result = prime * result + manifestId;
 			result = prime * result + (int) (rev ^ (rev >>> 32));
@@ -113,13 +301,131 @@ public class FileConfigCache implements ConfigCache {
 			if (getClass() != obj.getClass())
 				return false;
 			ConfigKey other = (ConfigKey) obj;
-			if (id != other.id)
+			return colId == other.colId && id == other.id && manifestId == other.manifestId && rev == other.rev
+					&& dbKey.equals(other.dbKey);
+		}
+	}
+
+	private static class DocKey extends CacheKey {
+		private int colId;
+		private int docId;
+		private long rev;
+		private long offset;
+
+		public DocKey(String dbKey, int colId, int docId, long rev, long offset) {
+			super(dbKey);
+			this.colId = colId;
+			this.docId = docId;
+			this.rev = rev;
+			this.offset = offset;
+		}
+
+		@Override
+		public int hashCode() {
+			final int prime = 31;
+			int result = dbKey.hashCode();
+			result = prime * result + colId;
+			result = prime * result + docId;
+			result = prime * result + (int) (rev ^ (rev >>> 32));
+			result = prime * result + (int) (offset ^ (offset >>> 32));
+			return result;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (obj == null)
+				return false;
+			if (getClass() != obj.getClass())
+				return false;
+			DocKey other = (DocKey) obj;
+			return colId == other.colId && docId == other.docId && rev == other.rev && offset == other.offset
+					&& dbKey.equals(other.dbKey);
+		}
+	}
+
+	private static class ManifestKey extends CacheKey {
+		private int manifestId;
+
+		public ManifestKey(String dbKey, int manifestId) {
+			super(dbKey);
+			this.manifestId = manifestId;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * dbKey.hashCode() + manifestId;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (obj == null)
 				return false;
-			if (manifestId != other.manifestId)
+			if (getClass() != obj.getClass())
 				return false;
-			if (rev != other.rev)
+			ManifestKey other = (ManifestKey) obj;
+			return manifestId == other.manifestId && dbKey.equals(other.dbKey);
+		}
+	}
+
+	private static class ChangeKey extends CacheKey {
+		private int changeDocId;
+
+		public ChangeKey(String dbKey, int changeDocId) {
+			super(dbKey);
+			this.changeDocId = changeDocId;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * dbKey.hashCode() + changeDocId;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (obj == null)
+				return false;
+			if (getClass() != obj.getClass())
+				return false;
+			ChangeKey other = (ChangeKey) obj;
+			return changeDocId == other.changeDocId && dbKey.equals(other.dbKey);
+		}
+	}
+
+	private static class SnapshotKey extends CacheKey {
+		private int colId;
+		private int manifestId;
+
+		public SnapshotKey(String dbKey, int colId, int manifestId) {
+			super(dbKey);
+			this.colId = colId;
+			this.manifestId = manifestId;
+		}
+
+		@Override
+		public int hashCode() {
+			final int prime = 31;
+			int result = dbKey.hashCode();
+			result = prime * result + colId;
+			result = prime * result + manifestId;
+			return result;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (obj == null)
+				return false;
+			if (getClass() != obj.getClass())
 				return false;
-			return true;
+			SnapshotKey other = (SnapshotKey) obj;
+			return colId == other.colId && manifestId == other.manifestId && dbKey.equals(other.dbKey);
 		}
 	}
 }
@@ -21,6 +21,9 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
+
+import org.krakenapps.api.PrimitiveConverter;
 import org.krakenapps.codec.EncodingRule;
 import org.krakenapps.confdb.CollectionEntry;
 import org.krakenapps.confdb.CommitOp;
@@ -29,6 +32,8 @@ import org.krakenapps.confdb.ConfigCollection;
 import org.krakenapps.confdb.ConfigEntry;
 import org.krakenapps.confdb.ConfigIterator;
 import org.krakenapps.confdb.ConfigTransaction;
+import org.krakenapps.confdb.IndexLookup;
+import org.krakenapps.confdb.IndexablePredicate;
 import org.krakenapps.confdb.Manifest;
 import org.krakenapps.confdb.Predicate;
 import org.krakenapps.confdb.RollbackException;
@@ -142,12 +147,109 @@ public class FileConfigCollection implements ConfigCollection {
 	private ConfigIterator getIterator(Predicate pred) throws IOException {
 		Manifest manifest = db.getManifest(changeset);
 		RevLogReader reader = new RevLogReader(logFile, datFile);
-		List<RevLog> snapshot = getSnapshot(manifest, reader);
+		try {
+			List<RevLog> snapshot = null;
+			if (pred instanceof IndexablePredicate)
+				snapshot = getIndexedSnapshot(manifest, reader, (IndexablePredicate) pred);
+
+			if (snapshot == null)
+				snapshot = getSnapshot(manifest, reader);
+
+			if (logger.isDebugEnabled())
+				logger.debug("kraken confdb: db [{}], col [{}], snapshot size [{}]", new Object[] { db.getName(),
+						col.getName(), snapshot.size() });
+
+			return new FileConfigIterator(db, manifest, this, reader, snapshot, pred);
+		} catch (IOException e) {
+			reader.close();
+			throw e;
+		} catch (RuntimeException e) {
+			reader.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns candidate revlogs resolved by secondary index, or null if
+	 * predicate cannot use any index. Candidates are evaluated by predicate
+	 * again in iterator.
+	 */
+	private List<RevLog> getIndexedSnapshot(Manifest manifest, RevLogReader reader, IndexablePredicate pred)
+			throws IOException {
+		// index is maintained for head revision only
+		if (changeset != null || manifest.getVersion() != 2)
+			return null;
+
+		FileConfigIndex index = db.getIndex(col.getId());
+		if (index.isEmpty())
+			return null;
+
+		IndexLookup lookup = pred.getIndexLookup(index.getFields());
+		if (lookup == null) {
+			if (logger.isDebugEnabled())
+				logger.debug("kraken confdb: db [{}], col [{}], no usable index for predicate [{}], full scan", new Object[] {
+						db.getName(), col.getName(), pred });
+			return null;
+		}
+
+		List<ConfigEntry> entries = index.lookup(manifest, col.getName(), reader, lookup);
+		List<RevLog> snapshot = new ArrayList<RevLog>(entries.size());
+		for (ConfigEntry e : entries)
+			snapshot.add(reader.read(e.getIndex()));
+
 		if (logger.isDebugEnabled())
-			logger.debug("kraken confdb: db [{}], col [{}], snapshot size [{}]", new Object[] { db.getName(), col.getName(),
-					snapshot.size() });
+			logger.debug("kraken confdb: db [{}], col [{}], index lookup [{}] resolved [{}] candidates", new Object[] {
+					db.getName(), col.getName(), lookup, snapshot.size() });
 
-		return new FileConfigIterator(db, manifest, this, reader, snapshot, pred);
+		return snapshot;
+	}
+
+	@Override
+	public void ensureIndex(String field) {
+		String name = PrimitiveConverter.toUnderscoreName(field);
+		Manifest manifest = db.getManifest(changeset);
+		FileConfigIndex index = db.getIndex(col.getId());
+		RevLogReader reader = null;
+		try {
+			if (logFile.exists() && datFile.exists())
+				reader = new RevLogReader(logFile, datFile);
+
+			if (index.addField(name, manifest, col.getName(), reader)) {
+				index.save();
+				logger.info("kraken confdb: created index [{}] for db [{}], col [{}]",
+						new Object[] { name, db.getName(), col.getName() });
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException("cannot create index " + name + " of collection " + col.getName(), e);
+		} finally {
+			if (reader != null)
+				reader.close();
+		}
+	}
+
+	@Override
+	public void dropIndex(String field) {
+		String name = PrimitiveConverter.toUnderscoreName(field);
+		FileConfigIndex index = db.getIndex(col.getId());
+		try {
+			if (!index.removeField(name))
+				return;
+
+			if (index.isEmpty())
+				index.delete();
+			else
+				index.save();
+
+			logger.info("kraken confdb: dropped index [{}] of db [{}], col [{}]", new Object[] { name, db.getName(),
+					col.getName() });
+		} catch (IOException e) {
+			throw new IllegalStateException("cannot drop index " + name + " of collection " + col.getName(), e);
+		}
+	}
+
+	@Override
+	public Set<String> getIndexFields() {
+		return db.getIndex(col.getId()).getFields();
 	}
 
 	private List<RevLog> getSnapshot(Manifest manifest, RevLogReader reader) throws IOException {
@@ -21,7 +21,6 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.RandomAccessFile;
-import java.lang.ref.WeakReference;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
 import java.text.ParseException;
@@ -43,7 +42,6 @@ import org.krakenapps.confdb.CollectionName;
 import org.krakenapps.confdb.CommitLog;
 import org.krakenapps.confdb.CommitOp;
 import org.krakenapps.confdb.Config;
-import org.krakenapps.confdb.ConfigCache;
 import org.krakenapps.confdb.ConfigChange;
 import org.krakenapps.confdb.ConfigCollection;
 import org.krakenapps.confdb.ConfigDatabase;
@@ -96,18 +94,12 @@ public class FileConfigDatabase implements ConfigDatabase {
 	 */
 	private int defaultTimeout = 5000;
 
-	// change set rev to manifest id cache
-	private WeakReference<ConcurrentMap<Integer, Integer>> changeCache;
-
-	// manifest id to manifest cache
-	private WeakReference<ConcurrentMap<Integer, FileManifest>> manifestCache;
-
-	// (collection id, manifest id) to snapshot cache
-	private WeakReference<ConcurrentMap<SnapshotKey, List<RevLog>>> snapshotCache;
-
-	// config cache
+	// bounded cache for changeset, manifest, snapshot and decoded documents
 	private FileConfigCache configCache;
 
+	// collection id to secondary index
+	private ConcurrentMap<Integer, FileConfigIndex> indexes;
+
 	public FileConfigDatabase(File baseDir, String name) throws IOException {
 		this(baseDir, name, null);
 	}
@@ -118,12 +110,8 @@ public class FileConfigDatabase implements ConfigDatabase {
 		this.dbDir = new File(baseDir, name);
 		this.changeset = rev;
 		this.threadLock = new ReentrantLock();
-		this.changeCache = new WeakReference<ConcurrentMap<Integer, Integer>>(new ConcurrentHashMap<Integer, Integer>());
-		this.manifestCache = new WeakReference<ConcurrentMap<Integer, FileManifest>>(
-				new ConcurrentHashMap<Integer, FileManifest>());
-		this.snapshotCache = new WeakReference<ConcurrentMap<SnapshotKey, List<RevLog>>>(
-				new ConcurrentHashMap<SnapshotKey, List<RevLog>>());
 		this.configCache = new FileConfigCache(this);
+		this.indexes = new ConcurrentHashMap<Integer, FileConfigIndex>();
 
 		changeLogFile = new File(dbDir, "changeset.log");
 		changeDatFile = new File(dbDir, "changeset.dat");
@@ -569,7 +557,7 @@ public class FileConfigDatabase implements ConfigDatabase {
 			// delete all collections
 			for (File f : dbDir.listFiles()) {
 				String n = f.getName();
-				if (n.startsWith("col") && (n.endsWith(".log") || n.endsWith(".dat")))
+				if (n.startsWith("col") && (n.endsWith(".log") || n.endsWith(".dat") || n.endsWith(".idx")))
 					f.delete();
 			}
 
@@ -809,47 +797,23 @@ public class FileConfigDatabase implements ConfigDatabase {
 	}
 
 	private FileManifest getManifestCache(int rev) {
-		ConcurrentMap<Integer, FileManifest> manifestMap = manifestCache.get();
-		if (manifestMap == null)
-			return null;
-
-		FileManifest fileManifest = manifestMap.get(rev);
-		if (fileManifest == null)
-			return null;
-
-		return fileManifest;
+		return configCache.getManifest(rev);
 	}
 
 	private void setManifestCache(FileManifest manifest) {
-		ConcurrentMap<Integer, FileManifest> manifestMap = manifestCache.get();
-		if (manifestMap == null) {
-			manifestMap = new ConcurrentHashMap<Integer, FileManifest>();
-			manifestCache = new WeakReference<ConcurrentMap<Integer, FileManifest>>(manifestMap);
-		}
-
-		manifestMap.put(manifest.getId(), manifest);
+		configCache.putManifest(manifest);
 	}
 
 	private Integer getCachedManifestId(int rev) {
-		ConcurrentMap<Integer, Integer> changeMap = changeCache.get();
-		if (changeMap == null)
-			return null;
-
-		return changeMap.get(rev);
+		return configCache.getManifestId(rev);
 	}
 
 	private void setChangeSetCache(int changeDocId, int manifestId) {
-		ConcurrentMap<Integer, Integer> changeMap = changeCache.get();
-		if (changeMap == null) {
-			changeMap = new ConcurrentHashMap<Integer, Integer>();
-			changeCache = new WeakReference<ConcurrentMap<Integer, Integer>>(changeMap);
-		}
-
-		changeMap.put(changeDocId, manifestId);
+		configCache.putManifestId(changeDocId, manifestId);
 	}
 
 	@Override
-	public ConfigCache getCache() {
+	public FileConfigCache getCache() {
 		return configCache;
 	}
 
@@ -859,62 +823,79 @@ public class FileConfigDatabase implements ConfigDatabase {
 	}
 
 	public List<RevLog> getSnapshotCache(int colId, int manifestId) {
-		ConcurrentMap<SnapshotKey, List<RevLog>> snapshotMap = snapshotCache.get();
-		if (snapshotMap == null) {
-			return null;
-		}
-
-		return snapshotMap.get(new SnapshotKey(colId, manifestId));
+		return configCache.getSnapshot(colId, manifestId);
 	}
 
 	public void setSnapshotCache(int colId, int manifestId, List<RevLog> snapshot) {
-		ConcurrentMap<SnapshotKey, List<RevLog>> snapshotMap = snapshotCache.get();
-		if (snapshotMap == null) {
-			snapshotMap = new ConcurrentHashMap<SnapshotKey, List<RevLog>>();
-			snapshotCache = new WeakReference<ConcurrentMap<SnapshotKey, List<RevLog>>>(snapshotMap);
-		}
-
-		snapshotMap.put(new SnapshotKey(colId, manifestId), snapshot);
+		configCache.putSnapshot(colId, manifestId, snapshot);
 	}
 
-	private void clearAllCaches() {
-		manifestCache.clear();
-		snapshotCache.clear();
-		configCache = new FileConfigCache(this);
-	}
-
-	private static class SnapshotKey {
-		private int colId;
-		private int manifestId;
+	/**
+	 * Returns secondary index of collection. Persisted index is loaded at
+	 * first access. Returned index is empty if no index is declared.
+	 */
+	FileConfigIndex getIndex(int colId) {
+		FileConfigIndex index = indexes.get(colId);
+		if (index != null)
+			return index;
 
-		public SnapshotKey(int colId, int manifestId) {
-			this.colId = colId;
-			this.manifestId = manifestId;
+		try {
+			index = FileConfigIndex.load(dbDir, colId);
+		} catch (Throwable t) {
+			logger.error("kraken confdb: cannot load index of db [" + dbName + "], col [" + colId + "], rebuild required", t);
+			index = new FileConfigIndex(dbDir, colId);
 		}
 
-		@Override
-		public int hashCode() {
-			final int prime = 31;
-			int result = 1;
-			result = prime * result + colId;
-			result = prime * result + manifestId;
-			return result;
-		}
+		FileConfigIndex old = indexes.putIfAbsent(colId, index);
+		return old != null ? old : index;
+	}
 
-		@Override
-		public boolean equals(Object obj) {
-			if (this == obj)
-				return true;
-			if (obj == null)
-				return false;
-			if (getClass() != obj.getClass())
-				return false;
-			SnapshotKey other = (SnapshotKey) obj;
-			if (colId != other.colId)
-				return false;
-			if (manifestId != other.manifestId)
-				return false;
-			return true;
+	/**
+	 * Apply committed changes to secondary indexes. Should be called in write
+	 * locked context.
+	 * 
+	 * @param baseManifestId
+	 *            the manifest id which transaction started from
+	 * @param manifest
+	 *            the committed manifest
+	 * @param changedColIds
+	 *            the collection ids which have document changes
+	 */
+	void updateIndexes(int baseManifestId, Manifest manifest, Set<Integer> changedColIds) {
+		for (Integer colId : changedColIds)
+			getIndex(colId);
+
+		for (FileConfigIndex index : indexes.values()) {
+			if (index.isEmpty())
+				continue;
+
+			int colId = index.getCollectionId();
+			if (!changedColIds.contains(colId)) {
+				index.advance(baseManifestId, manifest.getId());
+				continue;
+			}
+
+			String colName = ((FileManifest) manifest).getCollectionName(colId);
+			if (colName == null)
+				continue;
+
+			RevLogReader reader = null;
+			try {
+				reader = new RevLogReader(new File(dbDir, "col" + colId + ".log"), new File(dbDir, "col" + colId + ".dat"));
+				index.sync(manifest, colName, reader);
+				index.save();
+			} catch (IOException e) {
+				// index will be synchronized again at next lookup
+				logger.error("kraken confdb: cannot update index of db [" + dbName + "], col [" + colName + "]", e);
+			} finally {
+				if (reader != null)
+					reader.close();
+			}
 		}
 	}
+
+	private void clearAllCaches() {
+		configCache.clear();
+		indexes.clear();
+	}
 }
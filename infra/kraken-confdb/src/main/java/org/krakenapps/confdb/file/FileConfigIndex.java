@@ -0,0 +1,410 @@
+/*
+ * Copyright 2011 Future Systems, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.krakenapps.confdb.file;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.krakenapps.codec.EncodingRule;
+import org.krakenapps.confdb.ConfigEntry;
+import org.krakenapps.confdb.IndexLookup;
+import org.krakenapps.confdb.Manifest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Secondary indexes of a collection. It keeps indexed field values and doc
+ * pointers (rev and revlog index) of every document. Index is synchronized
+ * with manifest by comparing doc pointers, so only changed documents are
+ * decoded again. Index is persisted to col[id].idx file next to manifest.
+ * 
+ * @author xeraph
+ * 
+ */
+class FileConfigIndex {
+	private static final int FORMAT_VERSION = 1;
+	private final Logger logger = LoggerFactory.getLogger(FileConfigIndex.class.getName());
+
+	private int colId;
+	private File file;
+
+	// underscore field path to field index
+	private Map<String, FieldIndex> fields = new LinkedHashMap<String, FieldIndex>();
+
+	// doc id to indexed doc pointer
+	private Map<Integer, DocPointer> docs = new HashMap<Integer, DocPointer>();
+
+	// manifest id which index is synchronized with, -1 if unknown
+	private int syncedManifestId = -1;
+
+	private boolean dirty;
+
+	public FileConfigIndex(File dbDir, int colId) {
+		this.colId = colId;
+		this.file = new File(dbDir, "col" + colId + ".idx");
+	}
+
+	public int getCollectionId() {
+		return colId;
+	}
+
+	public synchronized boolean isEmpty() {
+		return fields.isEmpty();
+	}
+
+	public synchronized Set<String> getFields() {
+		return new TreeSet<String>(fields.keySet());
+	}
+
+	public synchronized int getSyncedManifestId() {
+		return syncedManifestId;
+	}
+
+	/**
+	 * @return true if new index is added
+	 */
+	public synchronized boolean addField(String field, Manifest manifest, String colName, RevLogReader reader)
+			throws IOException {
+		if (fields.containsKey(field))
+			return false;
+
+		fields.put(field, new FieldIndex(field));
+
+		// rebuild all doc pointers to fill new field
+		docs.clear();
+		for (FieldIndex f : fields.values())
+			f.clear();
+
+		syncedManifestId = -1;
+		dirty = true;
+
+		if (reader != null)
+			sync(manifest, colName, reader);
+
+		return true;
+	}
+
+	public synchronized boolean removeField(String field) {
+		if (fields.remove(field) == null)
+			return false;
+
+		for (DocPointer p : docs.values())
+			p.values.remove(field);
+
+		dirty = true;
+		return true;
+	}
+
+	/**
+	 * Find candidate documents. Returned entries are sorted by doc id.
+	 */
+	public synchronized List<ConfigEntry> lookup(Manifest manifest, String colName, RevLogReader reader, IndexLookup lookup)
+			throws IOException {
+		FieldIndex f = fields.get(lookup.getField());
+		if (f == null)
+			throw new IllegalStateException("index not found: " + lookup.getField());
+
+		sync(manifest, colName, reader);
+
+		Set<Integer> docIds = new TreeSet<Integer>();
+		if (lookup.isPrefix()) {
+			f.collectPrefix(lookup.getPrefix(), docIds);
+		} else {
+			for (Object value : lookup.getValues()) {
+				Set<Integer> ids = f.postings.get(value);
+				if (ids != null)
+					docIds.addAll(ids);
+			}
+		}
+
+		List<ConfigEntry> entries = new ArrayList<ConfigEntry>(docIds.size());
+		for (Integer docId : docIds) {
+			DocPointer p = docs.get(docId);
+			entries.add(new ConfigEntry(colId, docId, p.rev, p.index));
+		}
+		return entries;
+	}
+
+	/**
+	 * Mark index as synchronized with new manifest without reading revlog.
+	 * Caller should guarantee that collection is not changed between two
+	 * manifests.
+	 */
+	public synchronized void advance(int baseManifestId, int newManifestId) {
+		if (syncedManifestId == baseManifestId)
+			syncedManifestId = newManifestId;
+	}
+
+	/**
+	 * Update index entries of changed documents only. Unchanged documents are
+	 * detected by doc pointer comparison without decoding.
+	 */
+	public synchronized void sync(Manifest manifest, String colName, RevLogReader reader) throws IOException {
+		if (manifest.getId() == syncedManifestId)
+			return;
+
+		int patched = 0;
+		int removed = 0;
+
+		Set<Integer> alive = new HashSet<Integer>();
+		for (ConfigEntry e : manifest.getConfigEntries(colName)) {
+			alive.add(e.getDocId());
+
+			DocPointer p = docs.get(e.getDocId());
+			if (p != null && p.rev == e.getRev() && p.index == e.getIndex())
+				continue;
+
+			RevLog log = reader.read(e.getIndex());
+			byte[] b = reader.readDoc(log.getDocOffset(), log.getDocLength());
+			Object doc = EncodingRule.decode(ByteBuffer.wrap(b));
+
+			removeDoc(e.getDocId());
+			putDoc(e.getDocId(), e.getRev(), e.getIndex(), doc);
+			patched++;
+		}
+
+		for (Integer docId : new ArrayList<Integer>(docs.keySet())) {
+			if (!alive.contains(docId)) {
+				removeDoc(docId);
+				removed++;
+			}
+		}
+
+		if (patched > 0 || removed > 0)
+			dirty = true;
+
+		if (logger.isDebugEnabled())
+			logger.debug("kraken confdb: synced index of col [{}] to manifest [{}], patched [{}], removed [{}]", new Object[] {
+					colName, manifest.getId(), patched, removed });
+
+		syncedManifestId = manifest.getId();
+	}
+
+	private void putDoc(int docId, long rev, int index, Object doc) {
+		DocPointer p = new DocPointer(rev, index);
+		for (FieldIndex f : fields.values()) {
+			Object value = getValue(doc, f.path);
+			if (!IndexLookup.isIndexable(value))
+				continue;
+
+			p.values.put(f.name, value);
+			f.add(value, docId);
+		}
+		docs.put(docId, p);
+	}
+
+	private void removeDoc(int docId) {
+		DocPointer p = docs.remove(docId);
+		if (p == null)
+			return;
+
+		for (String field : p.values.keySet()) {
+			FieldIndex f = fields.get(field);
+			if (f != null)
+				f.remove(p.values.get(field), docId);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Object getValue(Object doc, String[] keys) {
+		Object value = doc;
+		for (String k : keys) {
+			if (!(value instanceof Map))
+				return null;
+
+			value = ((Map<String, Object>) value).get(k);
+		}
+		return value;
+	}
+
+	public synchronized void save() throws IOException {
+		if (!dirty)
+			return;
+
+		Object[] fieldNames = fields.keySet().toArray();
+		Object[] entries = new Object[docs.size()];
+		int i = 0;
+		for (Integer docId : docs.keySet()) {
+			DocPointer p = docs.get(docId);
+			Object[] values = new Object[fieldNames.length];
+			for (int j = 0; j < fieldNames.length; j++)
+				values[j] = p.values.get(fieldNames[j]);
+
+			entries[i++] = new Object[] { docId, p.rev, p.index, values };
+		}
+
+		Map<String, Object> m = new HashMap<String, Object>();
+		m.put("ver", FORMAT_VERSION);
+		m.put("fields", fieldNames);
+		m.put("docs", entries);
+
+		ByteBuffer bb = ByteBuffer.allocate(EncodingRule.lengthOf(m));
+		EncodingRule.encode(bb, m);
+
+		// write and rename for atomic replacement
+		File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+		FileOutputStream os = null;
+		try {
+			os = new FileOutputStream(tmp);
+			os.write(bb.array());
+		} finally {
+			if (os != null)
+				os.close();
+		}
+
+		if (file.exists() && !file.delete())
+			throw new IOException("cannot replace index file " + file.getAbsolutePath());
+
+		if (!tmp.renameTo(file))
+			throw new IOException("cannot rename index file " + tmp.getAbsolutePath());
+
+		dirty = false;
+		logger.trace("kraken confdb: saved index file [{}]", file.getAbsolutePath());
+	}
+
+	/**
+	 * Load persisted index. Loaded index is not synchronized with any manifest
+	 * yet, but unchanged documents will not be decoded again.
+	 */
+	@SuppressWarnings("unchecked")
+	public static FileConfigIndex load(File dbDir, int colId) throws IOException {
+		FileConfigIndex index = new FileConfigIndex(dbDir, colId);
+		if (!index.file.exists())
+			return index;
+
+		byte[] b = new byte[(int) index.file.length()];
+		FileInputStream is = null;
+		try {
+			is = new FileInputStream(index.file);
+			int offset = 0;
+			while (offset < b.length) {
+				int read = is.read(b, offset, b.length - offset);
+				if (read < 0)
+					throw new IOException("unexpected end of index file " + index.file.getAbsolutePath());
+				offset += read;
+			}
+		} finally {
+			if (is != null)
+				is.close();
+		}
+
+		Map<String, Object> m = (Map<String, Object>) EncodingRule.decode(ByteBuffer.wrap(b));
+		int ver = (Integer) m.get("ver");
+		if (ver != FORMAT_VERSION)
+			throw new IOException("unsupported index file version: " + ver);
+
+		Object[] fieldNames = (Object[]) m.get("fields");
+		for (Object name : fieldNames)
+			index.fields.put((String) name, new FieldIndex((String) name));
+
+		for (Object o : (Object[]) m.get("docs")) {
+			Object[] arr = (Object[]) o;
+			int docId = (Integer) arr[0];
+			DocPointer p = new DocPointer((Long) arr[1], (Integer) arr[2]);
+			Object[] values = (Object[]) arr[3];
+			for (int j = 0; j < fieldNames.length; j++) {
+				if (values[j] == null)
+					continue;
+
+				p.values.put((String) fieldNames[j], values[j]);
+				index.fields.get(fieldNames[j]).add(values[j], docId);
+			}
+			index.docs.put(docId, p);
+		}
+
+		return index;
+	}
+
+	public synchronized void delete() {
+		file.delete();
+	}
+
+	private static class DocPointer {
+		private long rev;
+		private int index;
+		private Map<String, Object> values = new HashMap<String, Object>(4);
+
+		public DocPointer(long rev, int index) {
+			this.rev = rev;
+			this.index = index;
+		}
+	}
+
+	private static class FieldIndex {
+		private String name;
+		private String[] path;
+
+		// value to doc ids
+		private Map<Object, Set<Integer>> postings = new HashMap<Object, Set<Integer>>();
+
+		// string values only, for prefix lookup
+		private TreeMap<String, Set<Integer>> strings = new TreeMap<String, Set<Integer>>();
+
+		public FieldIndex(String name) {
+			this.name = name;
+			this.path = name.split("/");
+		}
+
+		public void add(Object value, int docId) {
+			Set<Integer> ids = postings.get(value);
+			if (ids == null) {
+				ids = new HashSet<Integer>(2);
+				postings.put(value, ids);
+				if (value instanceof String)
+					strings.put((String) value, ids);
+			}
+			ids.add(docId);
+		}
+
+		public void remove(Object value, int docId) {
+			Set<Integer> ids = postings.get(value);
+			if (ids == null)
+				return;
+
+			ids.remove(docId);
+			if (ids.isEmpty()) {
+				postings.remove(value);
+				if (value instanceof String)
+					strings.remove(value);
+			}
+		}
+
+		public void collectPrefix(String prefix, Set<Integer> docIds) {
+			for (Map.Entry<String, Set<Integer>> e : strings.tailMap(prefix).entrySet()) {
+				if (!e.getKey().startsWith(prefix))
+					break;
+				docIds.addAll(e.getValue());
+			}
+		}
+
+		public void clear() {
+			postings.clear();
+			strings.clear();
+		}
+	}
+}
@@ -26,7 +26,6 @@ import java.util.NoSuchElementException;
 import org.krakenapps.api.PrimitiveParseCallback;
 import org.krakenapps.codec.EncodingRule;
 import org.krakenapps.confdb.Config;
-import org.krakenapps.confdb.ConfigCache;
 import org.krakenapps.confdb.ConfigCollection;
 import org.krakenapps.confdb.ConfigDatabase;
 import org.krakenapps.confdb.ConfigIterator;
@@ -46,10 +45,9 @@ import org.slf4j.LoggerFactory;
 class FileConfigIterator implements ConfigIterator {
 	private final Logger logger = LoggerFactory.getLogger(FileConfigIterator.class.getName());
 	private ConfigDatabase db;
-	private ConfigCache cache;
-	private int manifestId;
+	private FileConfigCache cache;
 	private ConfigCollection col;
-	private String colName;
+	private int colId;
 	private RevLogReader reader;
 	private Iterator<RevLog> it;
 	private Predicate pred;
@@ -58,13 +56,12 @@ class FileConfigIterator implements ConfigIterator {
 	private boolean closed;
 	private ConfigParser parser;
 
-	public FileConfigIterator(ConfigDatabase db, Manifest manifest, ConfigCollection col, RevLogReader reader,
+	public FileConfigIterator(FileConfigDatabase db, Manifest manifest, FileConfigCollection col, RevLogReader reader,
 			List<RevLog> snapshot, Predicate pred) {
 		this.db = db;
-		this.manifestId = manifest.getId();
 		this.cache = db.getCache();
 		this.col = col;
-		this.colName = col.getName();
+		this.colId = col.getId();
 		this.reader = reader;
 		this.it = snapshot.iterator();
 		this.pred = pred;
@@ -139,18 +136,15 @@ class FileConfigIterator implements ConfigIterator {
 		RevLog log = it.next();
 
 		// check cache
-		Config cachedConfig = cache.findEntry(colName, manifestId, log.getDocId(), log.getRev());
-		if (cachedConfig != null) {
-			Object doc = cachedConfig.getDocument();
+		Object doc = cache.findDoc(colId, log);
+		if (doc != null)
 			return new FileConfig(db, col, log.getDocId(), log.getRev(), log.getPrevRev(), doc, parser);
-		}
 
 		// fetch doc binary and decode it
 		byte[] b = reader.readDoc(log.getDocOffset(), log.getDocLength());
-		Object doc = EncodingRule.decode(ByteBuffer.wrap(b));
-		FileConfig config = new FileConfig(db, col, log.getDocId(), log.getRev(), log.getPrevRev(), doc, parser);
-		cache.putEntry(colName, manifestId, config);
-		return config;
+		doc = EncodingRule.decode(ByteBuffer.wrap(b));
+		cache.putDoc(colId, log, doc);
+		return new FileConfig(db, col, log.getDocId(), log.getRev(), log.getPrevRev(), doc, parser);
 	}
 
 	@Override
@@ -18,8 +18,10 @@ package org.krakenapps.confdb.file;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.krakenapps.confdb.CollectionEntry;
 import org.krakenapps.confdb.CommitOp;
@@ -36,8 +38,18 @@ public class FileConfigTransaction implements ConfigTransaction {
 
 	private Manifest manifest;
 
+	/**
+	 * manifest id before commit
+	 */
+	private int baseManifestId;
+
 	private List<ConfigChange> changeSet;
 
+	/**
+	 * collection ids which have document changes, for index update
+	 */
+	private Set<Integer> changedColIds;
+
 	private File changeLogFile;
 	private File changeDatFile;
 	private File manifestLogFile;
@@ -53,7 +65,9 @@ public class FileConfigTransaction implements ConfigTransaction {
 
 		// TODO: apply changeset rev
 		manifest = ((FileManifest) db.getManifest(null)).duplicate();
+		baseManifestId = manifest.getId();
 		changeSet = new ArrayList<ConfigChange>();
+		changedColIds = new HashSet<Integer>();
 
 		changeLogFile = new File(dbDir, "changeset.log");
 		changeDatFile = new File(dbDir, "changeset.dat");
@@ -101,14 +115,17 @@ public class FileConfigTransaction implements ConfigTransaction {
 
 		ConfigEntry entry = new ConfigEntry(col.getId(), docId, rev, index);
 
-		if (op == CommitOp.CreateDoc || op == CommitOp.UpdateDoc)
+		if (op == CommitOp.CreateDoc || op == CommitOp.UpdateDoc) {
 			manifest.add(entry);
-		else if (op == CommitOp.DeleteDoc)
+			changedColIds.add(col.getId());
+		} else if (op == CommitOp.DeleteDoc) {
 			manifest.remove(entry);
-		else if (op == CommitOp.CreateCol)
+			changedColIds.add(col.getId());
+		} else if (op == CommitOp.CreateCol) {
 			manifest.add(col);
-		else if (op == CommitOp.DropCol)
+		} else if (op == CommitOp.DropCol) {
 			manifest.remove(col);
+		}
 
 		changeSet.add(new ConfigChange(op, col.getName(), col.getId(), docId));
 	}
@@ -121,6 +138,8 @@ public class FileConfigTransaction implements ConfigTransaction {
 			// do not move this code to finally block. rollback should be called
 			// after exception throwing
 			closeWriters();
+			db.getCache().onCommit(baseManifestId, manifest, changeSet);
+			db.updateIndexes(baseManifestId, manifest, changedColIds);
 			db.unlock();
 		} catch (Exception e) {
 			throw new IllegalStateException(e);
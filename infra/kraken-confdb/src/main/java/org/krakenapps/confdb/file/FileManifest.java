@@ -203,6 +203,13 @@ class FileManifest implements Manifest {
 		return new ArrayList<ConfigEntry>(m.values());
 	}
 
+	public int getConfigCount() {
+		int count = 0;
+		for (Map<Integer, ConfigEntry> m : configMap.values())
+			count += m.size();
+		return count;
+	}
+
 	public String getCollectionName(int id) {
 		CollectionEntry e = colMap.get(id);
 		if (e == null)
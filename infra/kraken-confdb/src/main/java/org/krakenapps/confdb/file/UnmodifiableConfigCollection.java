@@ -15,6 +15,8 @@
  */
 package org.krakenapps.confdb.file;
 
+import java.util.Set;
+
 import org.krakenapps.confdb.Config;
 import org.krakenapps.confdb.ConfigCollection;
 import org.krakenapps.confdb.ConfigIterator;
@@ -118,4 +120,19 @@ public class UnmodifiableConfigCollection implements ConfigCollection {
 	public Config remove(ConfigTransaction xact, Config c, boolean ignoreConflict) {
 		throw new IllegalStateException(CANNOT_MODIFY_MSG);
 	}
+
+	@Override
+	public void ensureIndex(String field) {
+		throw new IllegalStateException(CANNOT_MODIFY_MSG);
+	}
+
+	@Override
+	public void dropIndex(String field) {
+		throw new IllegalStateException(CANNOT_MODIFY_MSG);
+	}
+
+	@Override
+	public Set<String> getIndexFields() {
+		return col.getIndexFields();
+	}
 }
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2011 Future Systems, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.krakenapps.confdb.file;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Size bounded LRU cache. Each entry has estimated weight in bytes, and least
+ * recently used entries are evicted when total weight exceeds the limit. Keys
+ * are spread over segments to reduce lock contention.
+ * 
+ * Entry heavier than one segment (e.g. manifest or snapshot of large
+ * collection) goes to separate LRU segment which takes a quarter of the limit,
+ * so total weight never exceeds the limit. Entry heavier than that segment is
+ * not cached.
+ * 
+ * @author xeraph
+ * 
+ */
+class WeightedLruCache {
+	private static final int SEGMENT_COUNT = 16;
+	private static final int OVERSIZED_SHARE = 4;
+
+	private final long maxWeight;
+	private final Segment[] segments;
+	private final Segment oversized;
+	private final AtomicLong evictions = new AtomicLong();
+
+	public interface KeyFilter {
+		boolean matches(Object key);
+	}
+
+	public WeightedLruCache(long maxWeight) {
+		this.maxWeight = maxWeight;
+		long oversizedWeight = maxWeight / OVERSIZED_SHARE;
+		this.segments = new Segment[SEGMENT_COUNT];
+		for (int i = 0; i < SEGMENT_COUNT; i++)
+			segments[i] = new Segment((maxWeight - oversizedWeight) / SEGMENT_COUNT);
+		this.oversized = new Segment(oversizedWeight);
+	}
+
+	public Object get(Object key) {
+		Object value = segmentFor(key).get(key);
+		if (value != null || oversized.size() == 0)
+			return value;
+
+		return oversized.get(key);
+	}
+
+	public void put(Object key, Object value, long weight) {
+		Segment s = segmentFor(key);
+		if (weight <= s.maxWeight) {
+			s.put(key, value, weight);
+			oversized.remove(key);
+			return;
+		}
+
+		s.remove(key);
+		if (weight <= oversized.maxWeight)
+			oversized.put(key, value, weight);
+		else
+			oversized.remove(key);
+	}
+
+	public void remove(Object key) {
+		segmentFor(key).remove(key);
+		oversized.remove(key);
+	}
+
+	public void removeAll(KeyFilter filter) {
+		for (Segment s : segments)
+			s.removeAll(filter);
+		oversized.removeAll(filter);
+	}
+
+	public long getWeight() {
+		long total = oversized.getWeight();
+		for (Segment s : segments)
+			total += s.getWeight();
+		return total;
+	}
+
+	public long getMaxWeight() {
+		return maxWeight;
+	}
+
+	public int size() {
+		int total = oversized.size();
+		for (Segment s : segments)
+			total += s.size();
+		return total;
+	}
+
+	/**
+	 * @return the number of entries heavier than one segment
+	 */
+	public int getOversizedCount() {
+		return oversized.size();
+	}
+
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	private Segment segmentFor(Object key) {
+		int h = key.hashCode();
+		h ^= (h >>> 20) ^ (h >>> 12);
+		h ^= (h >>> 7) ^ (h >>> 4);
+		return segments[h & (SEGMENT_COUNT - 1)];
+	}
+
+	private static class WeightedValue {
+		private Object value;
+		private long weight;
+
+		public WeightedValue(Object value, long weight) {
+			this.value = value;
+			this.weight = weight;
+		}
+	}
+
+	private class Segment {
+		private final long maxWeight;
+		private long weight;
+
+		// access ordered for LRU eviction
+		private final LinkedHashMap<Object, WeightedValue> map = new LinkedHashMap<Object, WeightedValue>(64, 0.75f, true);
+
+		public Segment(long maxWeight) {
+			this.maxWeight = maxWeight;
+		}
+
+		public synchronized Object get(Object key) {
+			WeightedValue v = map.get(key);
+			return v == null ? null : v.value;
+		}
+
+		public synchronized void put(Object key, Object value, long w) {
+			WeightedValue old = map.put(key, new WeightedValue(value, w));
+			if (old != null)
+				weight -= old.weight;
+			weight += w;
+
+			Iterator<Map.Entry<Object, WeightedValue>> it = map.entrySet().iterator();
+			while (weight > maxWeight && it.hasNext()) {
+				WeightedValue eldest = it.next().getValue();
+				it.remove();
+				weight -= eldest.weight;
+				evictions.incrementAndGet();
+			}
+		}
+
+		public synchronized void remove(Object key) {
+			WeightedValue old = map.remove(key);
+			if (old != null)
+				weight -= old.weight;
+		}
+
+		public synchronized void removeAll(KeyFilter filter) {
+			Iterator<Map.Entry<Object, WeightedValue>> it = map.entrySet().iterator();
+			while (it.hasNext()) {
+				Map.Entry<Object, WeightedValue> e = it.next();
+				if (filter.matches(e.getKey())) {
+					weight -= e.getValue().weight;
+					it.remove();
+				}
+			}
+		}
+
+		public synchronized long getWeight() {
+			return weight;
+		}
+
+		public synchronized int size() {
+			return map.size();
+		}
+	}
+}
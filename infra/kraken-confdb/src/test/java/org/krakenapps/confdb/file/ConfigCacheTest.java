@@ -2,6 +2,8 @@ package org.krakenapps.confdb.file;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.io.IOException;
@@ -13,6 +15,7 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.krakenapps.confdb.Config;
+import org.krakenapps.confdb.ConfigCacheStats;
 import org.krakenapps.confdb.ConfigCollection;
 
 public class ConfigCacheTest {
@@ -110,4 +113,94 @@ public class ConfigCacheTest {
 		assertEquals("second", docs.iterator().next().name);
 	}
 
+	@Test
+	public void testHitStats() {
+		db.add(new CustomType("first"));
+		db.add(new CustomType("second"));
+
+		// first read decodes documents, second read hits cache
+		db.findAll(CustomType.class).getDocuments();
+		db.findAll(CustomType.class).getDocuments();
+
+		ConfigCacheStats stats = null;
+		for (ConfigCacheStats s : db.getCache().getStats())
+			if (s.getCollectionName().equals(CustomType.class.getName()))
+				stats = s;
+
+		assertNotNull(stats);
+		assertTrue(stats.getHits() >= 2);
+		assertTrue(db.getCache().getWeight() > 0);
+		assertTrue(db.getCache().getWeight() <= db.getCache().getMaxWeight());
+	}
+
+	@Test
+	public void testCommitInvalidation() {
+		Config c = db.add(new CustomType("before"));
+		assertEquals("before", db.findOne(CustomType.class, null).getDocument(CustomType.class).name);
+
+		db.update(c, new CustomType("after"));
+		assertEquals("after", db.findOne(CustomType.class, null).getDocument(CustomType.class).name);
+
+		// unchanged collection snapshot is carried to new manifest
+		col.add("untouched");
+		db.add(new CustomType("third"));
+		assertEquals(1, col.count());
+		assertEquals(2, db.findAll(CustomType.class).getDocuments().size());
+	}
+
+	@Test
+	public void testWeightedEviction() {
+		WeightedLruCache lru = new WeightedLruCache(16 * 1024);
+		for (int i = 0; i < 1000; i++)
+			lru.put(i, "value" + i, 100);
+
+		assertTrue(lru.getWeight() <= 16 * 1024);
+		assertTrue(lru.getEvictions() > 0);
+
+		// recently used entries should survive
+		assertEquals("value999", lru.get(999));
+		assertNull(lru.get(0));
+	}
+
+	@Test
+	public void testOversizedEntry() {
+		// 768 bytes per segment, 4KB for oversized entries
+		WeightedLruCache lru = new WeightedLruCache(16 * 1024);
+		lru.put("manifest", "large manifest", 2 * 1024);
+		lru.put("snapshot", "larger than oversized budget", 8 * 1024);
+
+		assertEquals("large manifest", lru.get("manifest"));
+		assertNull(lru.get("snapshot"));
+		assertEquals(1, lru.getOversizedCount());
+		assertEquals(2 * 1024, lru.getWeight());
+
+		// small entries do not evict oversized entries
+		for (int i = 0; i < 1000; i++)
+			lru.put(i, "value" + i, 100);
+		assertEquals("large manifest", lru.get("manifest"));
+		assertTrue(lru.getWeight() <= lru.getMaxWeight());
+
+		// oversized entries are evicted in LRU order within their budget
+		lru.put("snapshot1", "snapshot1", 1024);
+		lru.put("snapshot2", "snapshot2", 2 * 1024);
+		assertNull(lru.get("manifest"));
+		assertEquals("snapshot1", lru.get("snapshot1"));
+		assertEquals("snapshot2", lru.get("snapshot2"));
+		assertTrue(lru.getWeight() <= lru.getMaxWeight());
+
+		// shrunk entry moves back to weighted segment
+		lru.put("snapshot1", "small snapshot", 100);
+		assertEquals("small snapshot", lru.get("snapshot1"));
+		assertEquals(1, lru.getOversizedCount());
+
+		lru.removeAll(new WeightedLruCache.KeyFilter() {
+			@Override
+			public boolean matches(Object key) {
+				return "snapshot2".equals(key);
+			}
+		});
+		assertNull(lru.get("snapshot2"));
+		assertEquals(0, lru.getOversizedCount());
+	}
+
 }
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2011 Future Systems, Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.krakenapps.confdb.file;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.krakenapps.confdb.Config;
+import org.krakenapps.confdb.ConfigCollection;
+import org.krakenapps.confdb.ConfigTransaction;
+import org.krakenapps.confdb.Predicates;
+
+public class IndexTest {
+	private FileConfigDatabase db;
+	private ConfigCollection col;
+
+	@Before
+	public void setup() throws IOException {
+		File workingDir = new File(System.getProperty("user.dir"));
+
+		db = new FileConfigDatabase(workingDir, "testdb5");
+		col = db.ensureCollection("users");
+
+		ConfigTransaction xact = db.beginTransaction();
+		for (int i = 0; i < 100; i++)
+			col.add(xact, user("user" + i, i % 10));
+		xact.commit(null, null);
+
+		col.ensureIndex("loginName");
+	}
+
+	@After
+	public void teardown() throws IOException {
+		db.purge();
+	}
+
+	private Map<String, Object> user(String loginName, int groupId) {
+		Map<String, Object> m = new HashMap<String, Object>();
+		m.put("login_name", loginName);
+		m.put("group_id", groupId);
+		return m;
+	}
+
+	@Test
+	public void testIndexedLookup() {
+		assertTrue(col.getIndexFields().contains("login_name"));
+
+		Config c = col.findOne(Predicates.field("loginName", "user55"));
+		assertNotNull(c);
+		assertEquals("user55", ((Map<?, ?>) c.getDocument()).get("login_name"));
+
+		assertNull(col.findOne(Predicates.field("loginName", "nobody")));
+		assertEquals(11, col.count(Predicates.prefix("login_name", "user1")));
+		assertEquals(2, col.count(Predicates.in("login_name", Arrays.asList("user1", "user2", "nobody"))));
+
+		// non-indexed term is evaluated with candidates
+		assertEquals(1, col.count(Predicates.and(Predicates.field("login_name", "user3"), Predicates.field("group_id", 3))));
+		assertEquals(0, col.count(Predicates.and(Predicates.field("login_name", "user3"), Predicates.field("group_id", 4))));
+	}
+
+	@Test
+	public void testIncrementalUpdate() {
+		Config c = col.findOne(Predicates.field("login_name", "user7"));
+		c.setDocument(user("renamed7", 7));
+		col.update(c);
+
+		assertNull(col.findOne(Predicates.field("login_name", "user7")));
+		assertNotNull(col.findOne(Predicates.field("login_name", "renamed7")));
+
+		col.remove(col.findOne(Predicates.field("login_name", "user8")));
+		assertNull(col.findOne(Predicates.field("login_name", "user8")));
+
+		col.add(user("user8", 8));
+		assertEquals(1, col.count(Predicates.field("login_name", "user8")));
+	}
+
+	@Test
+	public void testPersistentIndex() throws IOException {
+		col.add(user("added", 0));
+
+		// reopen database and load index file
+		FileConfigDatabase db2 = new FileConfigDatabase(db.getDbDirectory().getParentFile(), "testdb5");
+		ConfigCollection col2 = db2.getCollection("users");
+		assertTrue(col2.getIndexFields().contains("login_name"));
+		assertNotNull(col2.findOne(Predicates.field("login_name", "added")));
+		assertEquals(101, col2.count());
+
+		col2.dropIndex("login_name");
+		assertEquals(0, col2.getIndexFields().size());
+
+		// full scan after drop
+		assertNotNull(col2.findOne(Predicates.field("login_name", "user99")));
+	}
+
+	@Test
+	public void testRollback() {
+		col.add(user("temp", 0));
+		assertNotNull(col.findOne(Predicates.field("login_name", "temp")));
+
+		db.rollback(2);
+		assertNull(col.findOne(Predicates.field("login_name", "temp")));
+		assertNotNull(col.findOne(Predicates.field("login_name", "user0")));
+	}
+}
@@ -31,6 +31,8 @@ import org.krakenapps.api.ScriptContext;
 import org.krakenapps.api.ScriptUsage;
 import org.krakenapps.confdb.CommitLog;
 import org.krakenapps.confdb.Config;
+import org.krakenapps.confdb.ConfigCache;
+import org.krakenapps.confdb.ConfigCacheStats;
 import org.krakenapps.confdb.ConfigCollection;
 import org.krakenapps.confdb.ConfigDatabase;
 import org.krakenapps.confdb.ConfigIterator;
@@ -162,6 +164,22 @@ public class ConfScript implements Script {
 		}
 	}
 
+	@ScriptUsage(description = "print cache usage and hit ratio of collections", arguments = { @ScriptArgument(name = "name", type = "string", description = "database name") })
+	public void cacheStats(String[] args) {
+		ConfigDatabase db = conf.getDatabase(args[0]);
+		if (db == null) {
+			context.println("database not found");
+			return;
+		}
+
+		ConfigCache cache = db.getCache();
+		context.println(String.format("Cache Usage: %d/%d KB, evictions=%d", cache.getWeight() / 1024,
+				cache.getMaxWeight() / 1024, cache.getEvictions()));
+		context.println("-------------");
+		for (ConfigCacheStats stats : cache.getStats())
+			context.println(stats);
+	}
+
 	@ScriptUsage(description = "print documents", arguments = {
 			@ScriptArgument(name = "database name", type = "string", description = "database name"),
 			@ScriptArgument(name = "collection name", type = "string", description = "collection name") })
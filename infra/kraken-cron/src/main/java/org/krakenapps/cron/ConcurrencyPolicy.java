@@ -0,0 +1,33 @@
+/*
+ * Copyright 2009 NCHOVY
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.krakenapps.cron;
+
+/**
+ * Decides what to do when schedule fires while previous run of the same job
+ * is still running.
+ */
+public enum ConcurrencyPolicy {
+	/**
+	 * drop the run, and count it as skipped
+	 */
+	SKIP,
+
+	/**
+	 * run once again after current run is finished. pending runs are
+	 * coalesced into one.
+	 */
+	QUEUE
+}
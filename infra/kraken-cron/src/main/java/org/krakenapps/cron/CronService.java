@@ -32,4 +32,21 @@ public interface CronService {
 	Map<Integer, Schedule> getSchedules();
 
 	List<String> getJobList();
+
+	/**
+	 * @return execution statistics of scheduled jobs, ordered by schedule id
+	 */
+	List<JobStats> getJobStats();
+
+	/**
+	 * overrides concurrency policy of the schedule until restart.
+	 */
+	void setConcurrencyPolicy(int id, ConcurrencyPolicy policy);
+
+	/**
+	 * runs the schedule now, with concurrency policy applied.
+	 * 
+	 * @return false if skipped because previous run is not finished
+	 */
+	boolean fire(int id);
 }
@@ -0,0 +1,16 @@
+package org.krakenapps.cron;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Declares concurrency policy of cron job runnable. Default policy is
+ * {@link ConcurrencyPolicy#SKIP}.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface JobConcurrency {
+	ConcurrencyPolicy value();
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2009 NCHOVY
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.krakenapps.cron;
+
+import java.util.Date;
+
+/**
+ * Snapshot of cron job execution statistics. All times are in milliseconds,
+ * and lateness is the delay between scheduled time and actual start time.
+ */
+public class JobStats {
+	private int scheduleId;
+	private String taskName;
+	private ConcurrencyPolicy policy;
+	private boolean running;
+	private long runs;
+	private long skips;
+	private long failures;
+	private Date lastRun;
+	private long lastExecTime;
+	private long avgExecTime;
+	private long maxExecTime;
+	private long lastLateness;
+	private long maxLateness;
+
+	public JobStats(int scheduleId, String taskName, ConcurrencyPolicy policy, boolean running, long runs,
+			long skips, long failures, Date lastRun, long lastExecTime, long avgExecTime, long maxExecTime,
+			long lastLateness, long maxLateness) {
+		this.scheduleId = scheduleId;
+		this.taskName = taskName;
+		this.policy = policy;
+		this.running = running;
+		this.runs = runs;
+		this.skips = skips;
+		this.failures = failures;
+		this.lastRun = lastRun;
+		this.lastExecTime = lastExecTime;
+		this.avgExecTime = avgExecTime;
+		this.maxExecTime = maxExecTime;
+		this.lastLateness = lastLateness;
+		this.maxLateness = maxLateness;
+	}
+
+	public int getScheduleId() {
+		return scheduleId;
+	}
+
+	public String getTaskName() {
+		return taskName;
+	}
+
+	public ConcurrencyPolicy getPolicy() {
+		return policy;
+	}
+
+	public boolean isRunning() {
+		return running;
+	}
+
+	public long getRuns() {
+		return runs;
+	}
+
+	public long getSkips() {
+		return skips;
+	}
+
+	public long getFailures() {
+		return failures;
+	}
+
+	public Date getLastRun() {
+		return lastRun;
+	}
+
+	public long getLastExecTime() {
+		return lastExecTime;
+	}
+
+	public long getAvgExecTime() {
+		return avgExecTime;
+	}
+
+	public long getMaxExecTime() {
+		return maxExecTime;
+	}
+
+	public long getLastLateness() {
+		return lastLateness;
+	}
+
+	public long getMaxLateness() {
+		return maxLateness;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("[%3d] %s, policy=%s, running=%s, runs=%d, skips=%d, failures=%d, "
+				+ "exec(last/avg/max)=%d/%d/%dms, late(last/max)=%d/%dms, last run=%s", scheduleId, taskName, policy,
+				running, runs, skips, failures, lastExecTime, avgExecTime, maxExecTime, lastLateness, maxLateness,
+				lastRun);
+	}
+}
@@ -8,7 +8,9 @@ import org.krakenapps.api.Script;
 import org.krakenapps.api.ScriptArgument;
 import org.krakenapps.api.ScriptContext;
 import org.krakenapps.api.ScriptUsage;
+import org.krakenapps.cron.ConcurrencyPolicy;
 import org.krakenapps.cron.CronService;
+import org.krakenapps.cron.JobStats;
 import org.krakenapps.cron.Schedule;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.InvalidSyntaxException;
@@ -60,6 +62,47 @@ public class CronScript implements Script {
 		}
 	}
 
+	@ScriptUsage(description = "view execution time and lateness statistics of cron jobs")
+	public void stats(String[] args) {
+		context.println("Cron Job Stats");
+		context.println("---------------");
+
+		for (JobStats stats : manager.getJobStats()) {
+			context.println(stats.toString());
+		}
+	}
+
+	@ScriptUsage(description = "set concurrency policy of cron schedule until restart", arguments = {
+			@ScriptArgument(name = "id", type = "string", description = "cron schedule id"),
+			@ScriptArgument(name = "policy", type = "string", description = "skip or queue") })
+	public void policy(String[] args) {
+		try {
+			ConcurrencyPolicy policy = ConcurrencyPolicy.valueOf(args[1].toUpperCase());
+			manager.setConcurrencyPolicy(Integer.parseInt(args[0]), policy);
+			context.println("set");
+		} catch (NumberFormatException e) {
+			context.println("id should be number.");
+		} catch (IllegalArgumentException e) {
+			context.println("policy should be skip or queue.");
+		} catch (NoSuchElementException e) {
+			context.println("cron script: no schedule of given id " + args[0]);
+		}
+	}
+
+	@ScriptUsage(description = "fire cron schedule now through scheduler", arguments = { @ScriptArgument(name = "id", type = "string", description = "cron schedule id") })
+	public void fire(String[] args) {
+		try {
+			if (manager.fire(Integer.parseInt(args[0])))
+				context.println("fired");
+			else
+				context.println("skipped, previous run is not finished");
+		} catch (NumberFormatException e) {
+			context.println("id should be number.");
+		} catch (NoSuchElementException e) {
+			context.println("cron script: no schedule of given id " + args[0]);
+		}
+	}
+
 	@ScriptUsage(description = "register new cron schedule", arguments = {
 			@ScriptArgument(name = "min", type = "string", description = "(0 - 59)"),
 			@ScriptArgument(name = "hour", type = "string", description = "(0 - 23)"),
@@ -30,8 +30,10 @@ import org.apache.felix.ipojo.annotations.Provides;
 import org.apache.felix.ipojo.annotations.Requires;
 import org.apache.felix.ipojo.annotations.Validate;
 import org.krakenapps.confdb.ConfigService;
+import org.krakenapps.cron.ConcurrencyPolicy;
 import org.krakenapps.cron.CronService;
 import org.krakenapps.cron.DuplicatedScheduleException;
+import org.krakenapps.cron.JobStats;
 import org.krakenapps.cron.Schedule;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.InvalidSyntaxException;
@@ -143,6 +145,21 @@ public class CronServiceImpl implements CronService {
 		return scheduler.getJobList();
 	}
 
+	@Override
+	public List<JobStats> getJobStats() {
+		return scheduler.getJobStats();
+	}
+
+	@Override
+	public void setConcurrencyPolicy(int id, ConcurrencyPolicy policy) {
+		scheduler.setConcurrencyPolicy(id, policy);
+	}
+
+	@Override
+	public boolean fire(int id) {
+		return scheduler.fire(id);
+	}
+
 	public static Runnable getRef(String Name) throws InvalidSyntaxException {
 		return getRef(bundleContext, Name);
 	}
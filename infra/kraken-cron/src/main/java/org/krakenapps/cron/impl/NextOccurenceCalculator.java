@@ -116,6 +116,7 @@ public abstract class NextOccurenceCalculator {
 
 	private static Date newDate(NextOccurence next) {
 		Calendar result = Calendar.getInstance();
+		result.set(Calendar.MILLISECOND, 0);
 		result.set(Calendar.SECOND, 0);
 		result.set(Calendar.MINUTE, next.minute);
 		result.set(Calendar.HOUR_OF_DAY, next.hour);
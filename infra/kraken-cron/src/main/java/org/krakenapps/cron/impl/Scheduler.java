@@ -17,7 +17,20 @@ package org.krakenapps.cron.impl;
 
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.krakenapps.cron.ConcurrencyPolicy;
+import org.krakenapps.cron.JobConcurrency;
+import org.krakenapps.cron.JobStats;
 import org.krakenapps.cron.Schedule;
 import org.osgi.framework.InvalidSyntaxException;
 import org.slf4j.Logger;
@@ -26,32 +39,54 @@ import org.slf4j.LoggerFactory;
 /**
  * Cron scheduler that checks and runs registered cron jobs. singleton class.
  * 
+ * Scheduler thread sleeps until the next occurrence of the first job in the
+ * queue, and it is woken up when schedule is added or removed. Fired jobs run
+ * on a bounded thread pool, and job which is still running is skipped or
+ * queued according to its {@link ConcurrencyPolicy}.
+ * 
  * @author periphery
  * @since 1.0.0
  */
 public class Scheduler {
-	private final Logger logger = LoggerFactory.getLogger(CronConfig.class.getName());
-	private PriorityQueue<Job> queue;
-	private final Thread loop = new Thread(new Loop(), "Cron Scheduler");
-	private boolean running;
+	private static final int POOL_SIZE = Integer.getInteger("kraken.cron.pool_size",
+			Math.max(4, Runtime.getRuntime().availableProcessors()));
+
+	// upper bound of sleep, to follow wall clock adjustment
+	private static final long MAX_WAIT = 60 * 1000;
+
+	private final Logger logger = LoggerFactory.getLogger(Scheduler.class.getName());
+	private final PriorityQueue<Job> queue = new PriorityQueue<Job>();
+	private final ConcurrentMap<Integer, JobState> states = new ConcurrentHashMap<Integer, JobState>();
+	private Thread loop;
+	private ThreadPoolExecutor executor;
+	private volatile boolean running;
 
 	public void start(Map<Integer, Schedule> map) {
-		queue = reset(map);
+		synchronized (queue) {
+			queue.clear();
+			states.clear();
+			for (Entry<Integer, Schedule> en : map.entrySet())
+				add(en.getKey().intValue(), en.getValue());
+		}
+
+		executor = new ThreadPoolExecutor(POOL_SIZE, POOL_SIZE, 60, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), new RunnerThreadFactory());
+		executor.allowCoreThreadTimeOut(true);
+
 		running = true;
+		loop = new Thread(new Loop(), "Cron Scheduler");
 		loop.start();
 	}
 
 	public void stop() {
 		running = false;
-	}
-
-	private PriorityQueue<Job> reset(Map<Integer, Schedule> map) {
-		PriorityQueue<Job> tempQueue = new PriorityQueue<Job>();
-		for (Entry<Integer, Schedule> en : map.entrySet()) {
-			Job job = new Job(en.getKey().intValue(), en.getValue());
-			tempQueue.add(job);
+		synchronized (queue) {
+			queue.notifyAll();
 		}
-		return tempQueue;
+
+		// running jobs are not interrupted
+		if (executor != null)
+			executor.shutdown();
 	}
 
 	/**
@@ -63,12 +98,24 @@ public class Scheduler {
 	 *            new schedule to add
 	 */
 	public void put(int id, Schedule sche) {
-		Job job = new Job(id, sche);
 		synchronized (queue) {
-			queue.add(job);
+			add(id, sche);
+			queue.notifyAll();
 		}
 	}
 
+	private void add(int id, Schedule sche) {
+		Job job = new Job(id, sche);
+
+		// current minute can match, and it is fired immediately
+		long now = System.currentTimeMillis();
+		if (job.date.getTime() < now)
+			job.date = new Date(now);
+
+		queue.add(job);
+		states.putIfAbsent(id, new JobState(id, sche.getTaskName()));
+	}
+
 	/**
 	 * delete the schedule according to the given id from the scheduling queue.
 	 * 
@@ -81,6 +128,8 @@ public class Scheduler {
 				if (((Job) job).getScheduleId() == id)
 					queue.remove(job);
 			}
+			states.remove(id);
+			queue.notifyAll();
 		}
 	}
 
@@ -90,7 +139,11 @@ public class Scheduler {
 	 * @return list of scheduling queue entries.
 	 */
 	public List<String> getJobList() {
-		Object[] sorted = queue.toArray();
+		Object[] sorted;
+		synchronized (queue) {
+			sorted = queue.toArray();
+		}
+
 		Arrays.sort(sorted);
 		List<String> result = new ArrayList<String>();
 		for (Object job : sorted) {
@@ -99,81 +152,262 @@ public class Scheduler {
 		return result;
 	}
 
+	public List<JobStats> getJobStats() {
+		List<JobStats> l = new ArrayList<JobStats>();
+		for (JobState state : new TreeMap<Integer, JobState>(states).values())
+			l.add(state.snapshot());
+		return l;
+	}
+
+	/**
+	 * overrides concurrency policy declared by {@link JobConcurrency}
+	 * annotation. policy is not persisted.
+	 */
+	public void setConcurrencyPolicy(int id, ConcurrencyPolicy policy) {
+		JobState state = states.get(id);
+		if (state == null)
+			throw new NoSuchElementException("schedule not found: " + id);
+		state.override = policy;
+	}
+
+	/**
+	 * runs the job now through the pool, with concurrency policy applied.
+	 * 
+	 * @return false if job is skipped by policy
+	 */
+	public boolean fire(int id) {
+		Job job = null;
+		synchronized (queue) {
+			for (Job j : queue)
+				if (j.getScheduleId() == id)
+					job = j.clone();
+		}
+
+		if (job == null)
+			throw new NoSuchElementException("schedule not found: " + id);
+
+		return dispatch(job, System.currentTimeMillis());
+	}
+
+	/**
+	 * returns runnable of the job. overridden for test.
+	 */
+	protected Runnable getTask(Job job) throws InvalidSyntaxException {
+		return CronServiceImpl.getRef(job.schedule.getTaskName());
+	}
+
+	private boolean dispatch(Job job, long due) {
+		JobState state = states.get(job.getScheduleId());
+		if (state == null)
+			return false;
+
+		if (!state.running.compareAndSet(false, true)) {
+			if (state.getPolicy(job) == ConcurrencyPolicy.QUEUE && state.pending.compareAndSet(false, true)) {
+				state.pendingDue = due;
+				logger.debug("kraken cron: job [{}] is still running, queued", job);
+				return true;
+			}
+
+			state.skips.incrementAndGet();
+			logger.debug("kraken cron: job [{}] is still running, skipped", job);
+			return false;
+		}
+
+		try {
+			executor.execute(new Runner(job, state, due));
+			return true;
+		} catch (RejectedExecutionException e) {
+			// scheduler is stopping
+			state.running.set(false);
+			return false;
+		}
+	}
+
 	/**
-	 * this class is used as a thread that periodically checks and runs
-	 * scheduled tasks. the thread busy waits, sleeping for 10 seconds and
-	 * checks whether the first task in the scheduling queue is time for
-	 * execution. if so, it generates child thread to run the task. If the
-	 * 'Schedule.running' is set to false when this thread wakes up, the thread
-	 * terminates itself, meaning that there can be time gap between setting the
-	 * 'Scheduler.running' to false and the actual stopping of the loop thread.
+	 * this class is used as a thread that sleeps until the first job in the
+	 * scheduling queue is due, and submits the job to runner pool. the thread
+	 * is woken up when schedule is added, removed or scheduler is stopped.
 	 * 
 	 * @author periphery
 	 * 
 	 */
 	private class Loop implements Runnable {
-		private int SLEEP_TIME = 10; // sec.
-
 		@Override
 		public void run() {
 			logger.info("Cron: scheduler started");
-			loop();
-		}
-
-		private void loop() {
-			while (running) {
-				checkAndRun();
-				try {
-					Thread.sleep(this.SLEEP_TIME * 1000); // sleep for 10 sec
-				} catch (InterruptedException e) {
-					logger.warn("Cron: scheduler Thread.sleep error.", e);
-				}
+			try {
+				loop();
+			} catch (InterruptedException e) {
+				logger.info("Cron: scheduler interrupted");
 			}
 			logger.info("Cron: scheduler stopped");
 		}
 
-		private void checkAndRun() {
-			synchronized (queue) {
-				if (itIsTime()) {
-					Job first = queue.poll();
-					Thread runner = new Thread(new Runner(first.clone()), "Cron Runner");
-					runner.start();
+		private void loop() throws InterruptedException {
+			while (running) {
+				Job fired = null;
+				long due = 0;
+
+				synchronized (queue) {
+					Job first = queue.peek();
+					long now = System.currentTimeMillis();
+					if (first == null) {
+						queue.wait(MAX_WAIT);
+						continue;
+					}
+
+					due = first.date.getTime();
+					long delay = due - now;
+					if (delay > 0) {
+						queue.wait(Math.min(delay, MAX_WAIT));
+						continue;
+					}
+
+					queue.poll();
+					fired = first.clone();
 
-					// set base time as 1 min after current time
-					first.setNextOccurence(new Date(new Date().getTime() + 60 * 1000));
+					// next occurrence after due minute. if scheduler was late
+					// for minutes, missed occurrences are fired only once.
+					long base = Math.max(due, now - now % 60000) + 60 * 1000;
+					first.setNextOccurence(new Date(base));
 					queue.add(first);
-					// recursive call to check next Job
-					checkAndRun();
 				}
-			}
-		}
 
-		public boolean itIsTime() {
-			try {
-				return queue.peek().isTimeToDo();
-			} catch (Exception e) { // empty queue
-				return false;
+				dispatch(fired, due);
 			}
 		}
 	}
 
 	private class Runner implements Runnable {
 		private final Job job;
+		private final JobState state;
+		private long due;
 
-		public Runner(Job job) {
+		public Runner(Job job, JobState state, long due) {
 			this.job = job;
+			this.state = state;
+			this.due = due;
 		}
 
 		@Override
 		public void run() {
+			while (true) {
+				runOnce();
+
+				if (state.pending.compareAndSet(true, false)) {
+					due = state.pendingDue;
+					continue;
+				}
+
+				state.running.set(false);
+
+				// job can be queued right before running flag is cleared
+				if (!state.pending.get() || !state.running.compareAndSet(false, true))
+					break;
+
+				if (!state.pending.compareAndSet(true, false)) {
+					state.running.set(false);
+					break;
+				}
+				due = state.pendingDue;
+			}
+		}
+
+		private void runOnce() {
+			long begin = System.currentTimeMillis();
+			boolean success = false;
 			try {
 				logger.debug("Cron: run registered task " + job);
-				job.run();
+				Runnable task = getTask(job);
+				if (task == null)
+					throw new NullPointerException("runnable not active");
+
+				task.run();
+				success = true;
 			} catch (NullPointerException e) {
 				logger.debug("Cron: unable to run " + job + ". runnable \'" + job.schedule.getTaskName() + "\' is not active.");
 			} catch (InvalidSyntaxException e) {
 				logger.warn("Cron: scheduler instance.name syntax error.", e);
+			} catch (Throwable t) {
+				logger.error("Cron: task " + job + " failed", t);
+			} finally {
+				long end = System.currentTimeMillis();
+				state.record(begin, end - begin, begin - due, success);
 			}
 		}
 	}
+
+	private class JobState {
+		private final int scheduleId;
+		private final String taskName;
+		private final AtomicBoolean running = new AtomicBoolean();
+		private final AtomicBoolean pending = new AtomicBoolean();
+		private volatile long pendingDue;
+		private volatile ConcurrencyPolicy override;
+		private volatile ConcurrencyPolicy declared;
+
+		private final AtomicLong skips = new AtomicLong();
+		private long runs;
+		private long failures;
+		private Date lastRun;
+		private long lastExecTime;
+		private long totalExecTime;
+		private long maxExecTime;
+		private long lastLateness;
+		private long maxLateness;
+
+		public JobState(int scheduleId, String taskName) {
+			this.scheduleId = scheduleId;
+			this.taskName = taskName;
+		}
+
+		public ConcurrencyPolicy getPolicy(Job job) {
+			if (override != null)
+				return override;
+
+			if (declared == null) {
+				try {
+					Runnable task = getTask(job);
+					JobConcurrency c = task.getClass().getAnnotation(JobConcurrency.class);
+					declared = c != null ? c.value() : ConcurrencyPolicy.SKIP;
+				} catch (Exception e) {
+					// runnable is not active yet, resolve later
+					return ConcurrencyPolicy.SKIP;
+				}
+			}
+			return declared;
+		}
+
+		public synchronized void record(long begin, long execTime, long lateness, boolean success) {
+			runs++;
+			if (!success)
+				failures++;
+
+			lastRun = new Date(begin);
+			lastExecTime = execTime;
+			totalExecTime += execTime;
+			maxExecTime = Math.max(maxExecTime, execTime);
+			lastLateness = Math.max(0, lateness);
+			maxLateness = Math.max(maxLateness, lastLateness);
+		}
+
+		public synchronized JobStats snapshot() {
+			ConcurrencyPolicy policy = override != null ? override : declared != null ? declared
+					: ConcurrencyPolicy.SKIP;
+			long avg = runs == 0 ? 0 : totalExecTime / runs;
+			return new JobStats(scheduleId, taskName, policy, running.get(), runs, skips.get(), failures, lastRun,
+					lastExecTime, avg, maxExecTime, lastLateness, maxLateness);
+		}
+	}
+
+	private static class RunnerThreadFactory implements ThreadFactory {
+		private final AtomicInteger seq = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "Cron Runner " + seq.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		}
+	}
 }
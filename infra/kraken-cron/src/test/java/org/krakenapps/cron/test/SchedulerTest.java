@@ -0,0 +1,121 @@
+/*
+ * Copyright 2009 NCHOVY
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.krakenapps.cron.test;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.krakenapps.cron.ConcurrencyPolicy;
+import org.krakenapps.cron.JobStats;
+import org.krakenapps.cron.Schedule;
+import org.krakenapps.cron.impl.Job;
+import org.krakenapps.cron.impl.Scheduler;
+
+public class SchedulerTest {
+	private CountDownLatch started;
+	private CountDownLatch release;
+	private AtomicInteger count;
+	private Scheduler scheduler;
+
+	@Before
+	public void setUp() throws Exception {
+		started = new CountDownLatch(1);
+		release = new CountDownLatch(1);
+		count = new AtomicInteger();
+
+		final Runnable task = new Runnable() {
+			@Override
+			public void run() {
+				count.incrementAndGet();
+				started.countDown();
+				try {
+					release.await(10, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+				}
+			}
+		};
+
+		scheduler = new Scheduler() {
+			@Override
+			protected Runnable getTask(Job job) {
+				return task;
+			}
+		};
+
+		// yearly schedule, never fired by timer during test
+		Map<Integer, Schedule> m = new HashMap<Integer, Schedule>();
+		m.put(1, new Schedule.Builder("task").build("0 0 1 1 *"));
+		scheduler.start(m);
+	}
+
+	@After
+	public void tearDown() {
+		release.countDown();
+		scheduler.stop();
+	}
+
+	@Test
+	public void testSkipPolicy() throws Exception {
+		assertTrue(scheduler.fire(1));
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+
+		assertFalse(scheduler.fire(1));
+		assertFalse(scheduler.fire(1));
+
+		release.countDown();
+		JobStats stats = waitIdle();
+		assertEquals(ConcurrencyPolicy.SKIP, stats.getPolicy());
+		assertEquals(1, stats.getRuns());
+		assertEquals(2, stats.getSkips());
+		assertEquals(1, count.get());
+	}
+
+	@Test
+	public void testQueuePolicy() throws Exception {
+		scheduler.setConcurrencyPolicy(1, ConcurrencyPolicy.QUEUE);
+		assertTrue(scheduler.fire(1));
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+
+		// pending runs are coalesced
+		assertTrue(scheduler.fire(1));
+		assertFalse(scheduler.fire(1));
+
+		release.countDown();
+		JobStats stats = waitIdle();
+		assertEquals(2, stats.getRuns());
+		assertEquals(1, stats.getSkips());
+		assertEquals(2, count.get());
+	}
+
+	private JobStats waitIdle() throws InterruptedException {
+		for (int i = 0; i < 500; i++) {
+			JobStats stats = scheduler.getJobStats().get(0);
+			if (!stats.isRunning())
+				return stats;
+			Thread.sleep(10);
+		}
+		fail("job is not finished");
+		return null;
+	}
+}
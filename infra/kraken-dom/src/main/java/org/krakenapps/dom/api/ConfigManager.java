@@ -12,6 +12,16 @@ import org.krakenapps.confdb.Predicate;
 public interface ConfigManager {
 	void setParser(Class<?> cls, ConfigParser parser);
 
+	/**
+	 * Declares secondary index of the collection. Index is created in each
+	 * organization database when the database is first looked up, so
+	 * predicates on the field do not scan the whole collection.
+	 * 
+	 * @param field
+	 *            the field path (e.g. loginName or orgUnit/guid)
+	 */
+	void ensureIndex(Class<?> cls, String field);
+
 	ConfigDatabase findDatabase(String domain);
 
 	ConfigDatabase getDatabase(String domain);
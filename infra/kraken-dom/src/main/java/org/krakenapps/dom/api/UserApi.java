@@ -62,6 +62,12 @@ public interface UserApi extends EntityEventProvider<User> {
 
 	void updateUser(String domain, User user, boolean updatePassword);
 
+	/**
+	 * Creates and updates users in one transaction. Passwords of created users
+	 * are hashed, and passwords of updated users are not changed.
+	 */
+	void createAndUpdateUsers(String domain, Collection<User> creates, Collection<User> updates);
+
 	void removeUsers(String domain, Collection<String> loginNames);
 
 	void removeUser(String domain, String loginName);
@@ -3,11 +3,14 @@ package org.krakenapps.dom.api.impl;
 import java.lang.ref.SoftReference;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
@@ -42,6 +45,13 @@ public class ConfigManagerImpl implements ConfigManager {
 
 	private ConcurrentMap<Class<?>, ConfigParser> parsers = new ConcurrentHashMap<Class<?>, ConfigParser>();
 
+	// declared secondary indexes (collection class to field paths)
+	private ConcurrentMap<Class<?>, Set<String>> indexes = new ConcurrentHashMap<Class<?>, Set<String>>();
+
+	// databases which have all declared indexes, dropped database is released
+	private Set<ConfigDatabase> indexedDatabases = Collections.synchronizedSet(Collections
+			.newSetFromMap(new WeakHashMap<ConfigDatabase, Boolean>()));
+
 	public void setConfigService(ConfigService conf) {
 		this.confsvc = conf;
 	}
@@ -55,12 +65,42 @@ public class ConfigManagerImpl implements ConfigManager {
 		parsers.put(cls, parser);
 	}
 
+	@Override
+	public void ensureIndex(Class<?> cls, String field) {
+		Set<String> fields = indexes.get(cls);
+		if (fields == null) {
+			indexes.putIfAbsent(cls, Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>()));
+			fields = indexes.get(cls);
+		}
+
+		// create new index in every database at next lookup
+		if (fields.add(field))
+			indexedDatabases.clear();
+	}
+
 	@Override
 	public ConfigDatabase findDatabase(String domain) {
 		ConfigDatabase db = confsvc.getDatabase("kraken-dom-" + domain);
+		if (db != null && !indexedDatabases.contains(db)) {
+			createIndexes(db);
+			indexedDatabases.add(db);
+		}
 		return db;
 	}
 
+	private void createIndexes(ConfigDatabase db) {
+		for (Map.Entry<Class<?>, Set<String>> e : indexes.entrySet()) {
+			for (String field : e.getValue()) {
+				try {
+					db.ensureCollection(e.getKey()).ensureIndex(field);
+				} catch (Throwable t) {
+					// lookup falls back to full scan
+					logger.warn("kraken dom: cannot create index [" + field + "] of db [" + db.getName() + "]", t);
+				}
+			}
+		}
+	}
+
 	@Override
 	public ConfigDatabase getDatabase(String domain) {
 		ConfigDatabase db = findDatabase(domain);
@@ -121,6 +121,8 @@ public class HostApiImpl extends DefaultEntityEventProvider<Host> implements Hos
 
 	@Validate
 	public void validate() {
+		cfg.ensureIndex(host, "guid");
+		cfg.ensureIndex(host, "area/guid");
 		areaApi.addEntityEventListener(areaEventListener);
 		appApi.getVendorEventProvider().addEntityEventListener(vendorEventListener);
 		typeEventProvider.addEntityEventListener(typeEventListener);
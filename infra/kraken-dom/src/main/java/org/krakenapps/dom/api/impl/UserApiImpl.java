@@ -19,6 +19,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -33,6 +34,7 @@ import org.apache.felix.ipojo.annotations.Requires;
 import org.apache.felix.ipojo.annotations.Validate;
 import org.krakenapps.confdb.Config;
 import org.krakenapps.confdb.ConfigDatabase;
+import org.krakenapps.confdb.ConfigIterator;
 import org.krakenapps.confdb.ConfigService;
 import org.krakenapps.confdb.ConfigTransaction;
 import org.krakenapps.confdb.Predicate;
@@ -118,6 +120,8 @@ public class UserApiImpl extends DefaultEntityEventProvider<User> implements Use
 	@Validate
 	public void validate() {
 		cfg.setParser(User.class, new UserConfigParser());
+		cfg.ensureIndex(User.class, "loginName");
+		cfg.ensureIndex(User.class, "orgUnit/guid");
 		orgUnitApi.addEntityEventListener(orgUnitEventListener);
 		tracker.open();
 	}
@@ -361,6 +365,75 @@ public class UserApiImpl extends DefaultEntityEventProvider<User> implements Use
 		cfg.update(domain, cls, getPred(user.getLoginName()), user, NOT_FOUND, this);
 	}
 
+	@Override
+	public void createAndUpdateUsers(String domain, Collection<User> creates, Collection<User> updates) {
+		List<User> createList = new ArrayList<User>();
+		List<User> updateList = new ArrayList<User>();
+		if (creates != null)
+			createList.addAll(creates);
+		if (updates != null)
+			updateList.addAll(updates);
+
+		if (createList.isEmpty() && updateList.isEmpty())
+			return;
+
+		if (!createList.isEmpty()) {
+			int saltLength = getSaltLength(domain);
+			for (User user : createList) {
+				user.setSalt(createSalt(saltLength));
+				user.setPassword(hashPassword(user.getSalt(), user.getPassword()));
+			}
+		}
+
+		for (User user : updateList)
+			user.setUpdated(new Date());
+
+		ConfigDatabase db = conf.ensureDatabase("kraken-dom-" + domain);
+		Transaction xact = new Transaction(domain, db);
+		xact.addEventProvider(cls, this);
+
+		try {
+			cfg.adds(xact, cls, getPreds(createList), createList, ALREADY_EXIST);
+			updateByLoginNames(xact, updateList);
+			xact.commit("kraken-dom", "created " + createList.size() + " users, updated " + updateList.size() + " users");
+		} catch (Throwable e) {
+			xact.rollback();
+			if (e instanceof DOMException)
+				throw (DOMException) e;
+			throw new RuntimeException(e);
+		}
+	}
+
+	private void updateByLoginNames(Transaction xact, List<User> users) {
+		if (users.isEmpty())
+			return;
+
+		Map<String, User> userMap = new HashMap<String, User>();
+		for (User user : users)
+			userMap.put(user.getLoginName(), user);
+
+		ConfigIterator it = null;
+		try {
+			it = xact.getConfigDatabase().find(cls, Predicates.in("login_name", new HashSet<String>(userMap.keySet())));
+			while (it.hasNext()) {
+				Config c = it.next();
+				@SuppressWarnings("unchecked")
+				Map<String, Object> doc = (Map<String, Object>) c.getDocument();
+				User user = userMap.remove(doc.get("login_name"));
+				if (user != null)
+					xact.update(c, user);
+			}
+		} finally {
+			if (it != null)
+				it.close();
+		}
+
+		if (!userMap.isEmpty()) {
+			logger.debug("kraken dom: no config for update users {}", userMap.keySet());
+			throw new DOMException(NOT_FOUND);
+		}
+	}
+
 	@Override
 	public void removeUsers(String domain, Collection<String> loginNames) {
 		if (loginNames == null || loginNames.size() == 0)
@@ -7,6 +7,7 @@ import java.util.List;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.krakenapps.confdb.ConfigDatabase;
 import org.krakenapps.confdb.ConfigService;
 import org.krakenapps.confdb.file.FileConfigService;
 import org.krakenapps.dom.model.Host;
@@ -59,6 +60,21 @@ public class HostApiTest {
 		assertEquals("test-guid", hostApi.getHost("localhost", "test-guid").getGuid());
 	}
 
+	@Test
+	public void testIndex() {
+		HostType hostType = createHostType("windows", "7");
+		createHost(hostType, "host-1", "Unit Test 1");
+
+		// declared index is created at next database lookup
+		cfg.ensureIndex(Host.class, "guid");
+		createHost(hostType, "host-2", "Unit Test 2");
+
+		ConfigDatabase db = conf.getDatabase("kraken-dom-localhost");
+		assertTrue(db.ensureCollection(Host.class).getIndexFields().contains("guid"));
+		assertEquals("host-1", hostApi.getHost("localhost", "host-1").getGuid());
+		assertEquals("host-2", hostApi.getHost("localhost", "host-2").getGuid());
+	}
+
 	private void createHost(HostType hostType, String guid, String name) {
 		Host host = newHost(hostType, guid, name);
 		hostApi.createHost("localhost", host);
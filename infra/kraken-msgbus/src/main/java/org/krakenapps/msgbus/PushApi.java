@@ -1,8 +1,17 @@
 package org.krakenapps.msgbus;
 
+import java.util.Collection;
 import java.util.Map;
 
 public interface PushApi {
+	/**
+	 * Callback of batched push frame. When more than one push of a session is
+	 * pending at flush, they are sent as one trap of this callback, and its
+	 * "messages" parameter is the list of method, target and params maps in
+	 * push order.
+	 */
+	String BATCH_CALLBACK = "msgbus-push-batch";
+
 	@Deprecated
 	void subscribe(String orgDomain, int sessionId, int processId, String callback);
 
@@ -22,8 +31,16 @@ public interface PushApi {
 
 	void push(String orgDomain, String callback, Map<String, Object> m);
 
+	/**
+	 * Queues status-style push. Pending push of same callback and coalesce key
+	 * is replaced, so slow sessions receive only the latest status.
+	 */
+	void push(String orgDomain, String callback, String coalesceKey, Map<String, Object> m);
+
 	void push(Session session, String callback, Map<String, Object> m);
 
+	Collection<PushQueueStats> getQueueStats();
+
 	@Deprecated
 	void sessionClosed(String orgDoamin, int sessionId);
 
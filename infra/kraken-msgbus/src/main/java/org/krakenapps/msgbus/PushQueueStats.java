@@ -0,0 +1,80 @@
+package org.krakenapps.msgbus;
+
+import java.util.Date;
+
+/**
+ * Snapshot of per-session outbound push queue counters.
+ */
+public class PushQueueStats {
+	private String sessionId;
+	private int pending;
+	private int maxPending;
+	private long enqueued;
+	private long delivered;
+	private long coalesced;
+	private long dropped;
+	private long flushes;
+	private Date lastFlush;
+
+	public PushQueueStats(String sessionId, int pending, int maxPending, long enqueued, long delivered, long coalesced,
+			long dropped, long flushes, Date lastFlush) {
+		this.sessionId = sessionId;
+		this.pending = pending;
+		this.maxPending = maxPending;
+		this.enqueued = enqueued;
+		this.delivered = delivered;
+		this.coalesced = coalesced;
+		this.dropped = dropped;
+		this.flushes = flushes;
+		this.lastFlush = lastFlush;
+	}
+
+	public String getSessionId() {
+		return sessionId;
+	}
+
+	public int getPending() {
+		return pending;
+	}
+
+	/**
+	 * @return the highest queue depth observed
+	 */
+	public int getMaxPending() {
+		return maxPending;
+	}
+
+	public long getEnqueued() {
+		return enqueued;
+	}
+
+	public long getDelivered() {
+		return delivered;
+	}
+
+	/**
+	 * @return the number of pushes replaced by newer push with same key
+	 */
+	public long getCoalesced() {
+		return coalesced;
+	}
+
+	public long getDropped() {
+		return dropped;
+	}
+
+	public long getFlushes() {
+		return flushes;
+	}
+
+	public Date getLastFlush() {
+		return lastFlush;
+	}
+
+	@Override
+	public String toString() {
+		return "session=" + sessionId + ", pending=" + pending + ", max pending=" + maxPending + ", enqueued="
+				+ enqueued + ", delivered=" + delivered + ", coalesced=" + coalesced + ", dropped=" + dropped
+				+ ", flushes=" + flushes + ", last flush=" + lastFlush;
+	}
+}
@@ -13,6 +13,8 @@ import org.krakenapps.msgbus.AbstractSession;
 import org.krakenapps.msgbus.Message;
 import org.krakenapps.msgbus.Message.Type;
 import org.krakenapps.msgbus.MessageBus;
+import org.krakenapps.msgbus.PushApi;
+import org.krakenapps.msgbus.PushQueueStats;
 import org.krakenapps.msgbus.ResourceApi;
 import org.krakenapps.msgbus.ResourceHandler;
 import org.krakenapps.msgbus.Session;
@@ -20,11 +22,13 @@ import org.krakenapps.msgbus.Session;
 public class MsgbusScript implements Script {
 	private MessageBus msgbus;
 	private ResourceApi resourceApi;
+	private PushApi pushApi;
 	private ScriptContext context;
 
-	public MsgbusScript(MessageBus msgbus, ResourceApi resourceApi) {
+	public MsgbusScript(MessageBus msgbus, ResourceApi resourceApi, PushApi pushApi) {
 		this.msgbus = msgbus;
 		this.resourceApi = resourceApi;
+		this.pushApi = pushApi;
 	}
 
 	@Override
@@ -62,6 +66,15 @@ public class MsgbusScript implements Script {
 		}
 	}
 
+	@ScriptUsage(description = "print per-session push queue statistics")
+	public void pushQueues(String[] args) {
+		context.println("Push Queues");
+		context.println("-------------------");
+		for (PushQueueStats stats : pushApi.getQueueStats()) {
+			context.println(stats.toString());
+		}
+	}
+
 	@ScriptUsage(description = "run msgbus method", arguments = {
 			@ScriptArgument(name = "org domain", type = "string", description = "org domain"),
 			@ScriptArgument(name = "admin login name", type = "string", description = "admin login name"),
@@ -1,21 +1,31 @@
 package org.krakenapps.msgbus.impl;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.felix.ipojo.annotations.Component;
+import org.apache.felix.ipojo.annotations.Invalidate;
 import org.apache.felix.ipojo.annotations.Provides;
 import org.apache.felix.ipojo.annotations.Requires;
+import org.apache.felix.ipojo.annotations.Validate;
 import org.krakenapps.msgbus.Message;
 import org.krakenapps.msgbus.MessageBus;
 import org.krakenapps.msgbus.PushApi;
 import org.krakenapps.msgbus.PushCondition;
 import org.krakenapps.msgbus.PushInterceptor;
+import org.krakenapps.msgbus.PushQueueStats;
 import org.krakenapps.msgbus.Session;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -37,6 +47,48 @@ public class PushApiImpl implements PushApi {
 	private ConcurrentMap<String, PushInterceptor> pushInterceptorsMap = new ConcurrentHashMap<String, PushInterceptor>();
 	private ConcurrentMap<PushCondition.Key, PushCondition> pushConditions = new ConcurrentHashMap<PushCondition.Key, PushCondition>();
 
+	// session to outbound push queue
+	private ConcurrentMap<String, PushQueue> pushQueues = new ConcurrentHashMap<String, PushQueue>();
+
+	private final int flushInterval = Integer.getInteger("kraken.msgbus.push_flush_interval", 100);
+	private final int queueCapacity = Integer.getInteger("kraken.msgbus.push_queue_size", 10000);
+	private final int slowConsumerTimeout = Integer.getInteger("kraken.msgbus.push_slow_consumer_timeout", 30000);
+
+	private ScheduledExecutorService flushScheduler;
+	private ExecutorService flushPool;
+
+	public PushApiImpl() {
+	}
+
+	PushApiImpl(MessageBus msgbus) {
+		this.msgbus = msgbus;
+	}
+
+	@Validate
+	public void start() {
+		flushPool = Executors.newFixedThreadPool(4);
+		flushScheduler = Executors.newSingleThreadScheduledExecutor();
+		flushScheduler.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					scheduleFlush();
+				} catch (Throwable t) {
+					logger.error("kraken msgbus: cannot schedule push flush", t);
+				}
+			}
+		}, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+	}
+
+	@Invalidate
+	public void stop() {
+		if (flushScheduler != null)
+			flushScheduler.shutdownNow();
+		if (flushPool != null)
+			flushPool.shutdown();
+		pushQueues.clear();
+	}
+
 	@Override
 	public void subscribe(String orgDomain, int sessionId, int processId, String callback) {
 		Map<String, Object> m = new HashMap<String, Object>();
@@ -111,6 +163,11 @@ public class PushApiImpl implements PushApi {
 
 	@Override
 	public void push(String orgDomain, String callback, Map<String, Object> m) {
+		push(orgDomain, callback, null, m);
+	}
+
+	@Override
+	public void push(String orgDomain, String callback, String coalesceKey, Map<String, Object> m) {
 		Set<String> sessions = orgSessionMap.get(orgDomain);
 		if (sessions == null)
 			return;
@@ -124,7 +181,7 @@ public class PushApiImpl implements PushApi {
 				Message msg = createMessage(orgDomain, binding, callback, m);
 				if (logger.isTraceEnabled())
 					tracePush(orgDomain, callback, m, binding.sessionId, binding);
-				msgbus.send(msg);
+				enqueue(callback, binding, coalesceKey, msg);
 			}
 		}
 	}
@@ -141,11 +198,121 @@ public class PushApiImpl implements PushApi {
 				Message msg = createMessage(orgDomain, binding, callback, m);
 				if (logger.isTraceEnabled())
 					tracePush(orgDomain, callback, m, binding.sessionId, binding);
-				msgbus.send(msg);
+				enqueue(callback, binding, null, msg);
 			}
 		}
 	}
 
+	@Override
+	public Collection<PushQueueStats> getQueueStats() {
+		List<PushQueueStats> stats = new ArrayList<PushQueueStats>();
+		for (PushQueue queue : pushQueues.values())
+			stats.add(queue.getStats());
+		return stats;
+	}
+
+	private void enqueue(String callback, Binding binding, String coalesceKey, Message msg) {
+		String sessionId = binding.sessionId;
+		PushQueue queue = pushQueues.get(sessionId);
+		if (queue == null) {
+			// session can be closed after bindings are read, and queue
+			// created after cleanSession() will never be removed
+			synchronized (pushQueues) {
+				Set<Binding> bindings = pushBindingsMap.get(callback);
+				if (bindings == null || !bindings.contains(binding)) {
+					logger.trace("kraken msgbus: session [{}] closed, dropped [{}]", sessionId, msg.getMethod());
+					return;
+				}
+
+				queue = pushQueues.get(sessionId);
+				if (queue == null) {
+					queue = new PushQueue(sessionId, queueCapacity);
+					pushQueues.put(sessionId, queue);
+				}
+			}
+		}
+
+		if (!queue.offer(coalesceKey, msg))
+			logger.trace("kraken msgbus: push queue full, session [{}], dropped [{}]", sessionId, msg.getMethod());
+	}
+
+	private void scheduleFlush() {
+		long now = System.currentTimeMillis();
+		for (final PushQueue queue : pushQueues.values()) {
+			// disconnect consumer which cannot keep up with pushes
+			if (queue.getFullDuration(now) > slowConsumerTimeout) {
+				disconnectSlowConsumer(queue);
+				continue;
+			}
+
+			if (queue.isEmpty() || !queue.trySchedule())
+				continue;
+
+			flushPool.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						flush(queue);
+					} finally {
+						queue.unschedule();
+					}
+				}
+			});
+		}
+	}
+
+	private void flush(PushQueue queue) {
+		List<Message> messages = queue.drain();
+		if (messages.isEmpty())
+			return;
+
+		// all pending pushes of session go in one frame
+		Message frame = messages.size() == 1 ? messages.get(0) : createBatch(queue.getSessionId(), messages);
+		try {
+			msgbus.send(frame);
+			queue.delivered(messages.size(), 0);
+		} catch (Throwable t) {
+			logger.warn("kraken msgbus: cannot send " + messages.size() + " pushes to session [" + queue.getSessionId()
+					+ "]", t);
+			queue.delivered(0, messages.size());
+		}
+	}
+
+	private Message createBatch(String sessionId, List<Message> messages) {
+		List<Map<String, Object>> l = new ArrayList<Map<String, Object>>(messages.size());
+		for (Message msg : messages) {
+			Map<String, Object> m = new HashMap<String, Object>();
+			m.put("method", msg.getMethod());
+			m.put("target", msg.getTarget());
+			m.put("params", msg.getParameters());
+			l.add(m);
+		}
+
+		Message batch = new Message();
+		batch.setSession(sessionId);
+		batch.setType(Message.Type.Trap);
+		batch.setMethod(BATCH_CALLBACK);
+		batch.getParameters().put("messages", l);
+		return batch;
+	}
+
+	private void disconnectSlowConsumer(PushQueue queue) {
+		String sessionId = queue.getSessionId();
+		pushQueues.remove(sessionId);
+
+		logger.warn("kraken msgbus: disconnecting slow push consumer, session [{}], {}", sessionId, queue.getStats());
+		Session session = msgbus.getSession(sessionId);
+		if (session == null)
+			return;
+
+		try {
+			session.close();
+		} catch (Throwable t) {
+			logger.warn("kraken msgbus: cannot close slow push consumer session [" + sessionId + "]", t);
+		}
+		msgbus.closeSession(session);
+	}
+
 	private Message createMessage(String orgDomain, Binding binding, String callback, Map<String, Object> m) {
 		Message msg = new Message();
 		msg.setSession(binding.sessionId);
@@ -199,20 +366,25 @@ public class PushApiImpl implements PushApi {
 	}
 
 	private void cleanSession(String orgDomain, String sessionId) {
-		Set<String> bindingsToRemove = Collections.newSetFromMap(new HashMap<String, Boolean>());
-		for (Entry<String, Set<Binding>> entry : pushBindingsMap.entrySet()) {
-			Set<Binding> bindings = entry.getValue();
-			Set<Binding> toRemove = Collections.newSetFromMap(new HashMap<Binding, Boolean>());
-			for (Binding binding : bindings) {
-				if (binding.sessionId.equals(sessionId))
-					toRemove.add(binding);
+		// bindings and queue are removed together, see enqueue()
+		synchronized (pushQueues) {
+			Set<String> bindingsToRemove = Collections.newSetFromMap(new HashMap<String, Boolean>());
+			for (Entry<String, Set<Binding>> entry : pushBindingsMap.entrySet()) {
+				Set<Binding> bindings = entry.getValue();
+				Set<Binding> toRemove = Collections.newSetFromMap(new HashMap<Binding, Boolean>());
+				for (Binding binding : bindings) {
+					if (binding.sessionId.equals(sessionId))
+						toRemove.add(binding);
+				}
+				bindings.removeAll(toRemove);
+				if (bindings.isEmpty())
+					bindingsToRemove.add(entry.getKey());
 			}
-			bindings.removeAll(toRemove);
-			if (bindings.isEmpty())
-				bindingsToRemove.add(entry.getKey());
+			for (String callback : bindingsToRemove)
+				pushBindingsMap.remove(callback);
+
+			pushQueues.remove(sessionId);
 		}
-		for (String callback : bindingsToRemove)
-			pushBindingsMap.remove(callback);
 
 		Set<String> sessions = orgSessionMap.get(orgDomain);
 		if (sessions != null)
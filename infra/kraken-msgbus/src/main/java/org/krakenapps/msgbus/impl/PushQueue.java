@@ -0,0 +1,129 @@
+package org.krakenapps.msgbus.impl;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.krakenapps.msgbus.Message;
+import org.krakenapps.msgbus.PushQueueStats;
+
+/**
+ * Bounded outbound push queue of a session. Pushes with same coalesce key
+ * replace the pending one, so only the latest status is delivered. Replacing
+ * push moves to the tail, so it is never delivered before pushes which were
+ * queued earlier.
+ */
+class PushQueue {
+	private final String sessionId;
+	private final int capacity;
+
+	// coalesce key or sequence number to pending message
+	private LinkedHashMap<Object, Message> pending = new LinkedHashMap<Object, Message>();
+	private long seq;
+
+	// set while flush task is scheduled or running
+	private AtomicBoolean scheduled = new AtomicBoolean();
+
+	// time when queue became full, 0 if queue has room
+	private long fullSince;
+
+	private int maxPending;
+	private long enqueued;
+	private long delivered;
+	private long coalesced;
+	private long dropped;
+	private long flushes;
+	private Date lastFlush;
+
+	public PushQueue(String sessionId, int capacity) {
+		this.sessionId = sessionId;
+		this.capacity = capacity;
+	}
+
+	public String getSessionId() {
+		return sessionId;
+	}
+
+	/**
+	 * @param coalesceKey
+	 *            the key of status-style push, or null if every push should
+	 *            be delivered
+	 * @return false if queue is full and message is dropped
+	 */
+	public synchronized boolean offer(String coalesceKey, Message msg) {
+		Object key = null;
+		if (coalesceKey != null) {
+			key = msg.getMethod() + "/" + msg.getTarget() + "/" + coalesceKey;
+			if (pending.remove(key) != null) {
+				pending.put(key, msg);
+				enqueued++;
+				coalesced++;
+				return true;
+			}
+		}
+
+		if (pending.size() >= capacity) {
+			if (fullSince == 0)
+				fullSince = System.currentTimeMillis();
+			dropped++;
+			return false;
+		}
+
+		if (key == null)
+			key = seq++;
+
+		pending.put(key, msg);
+		enqueued++;
+		maxPending = Math.max(maxPending, pending.size());
+		return true;
+	}
+
+	public synchronized boolean isEmpty() {
+		return pending.isEmpty();
+	}
+
+	/**
+	 * @return the milliseconds since queue became full, or 0 if it has room
+	 */
+	public synchronized long getFullDuration(long now) {
+		return fullSince == 0 ? 0 : now - fullSince;
+	}
+
+	public boolean trySchedule() {
+		return scheduled.compareAndSet(false, true);
+	}
+
+	public void unschedule() {
+		scheduled.set(false);
+	}
+
+	/**
+	 * Takes all pending messages at once. Producers can fill queue again
+	 * while drained messages are sent.
+	 */
+	public synchronized List<Message> drain() {
+		List<Message> l = new ArrayList<Message>(pending.values());
+		pending.clear();
+		fullSince = 0;
+		return l;
+	}
+
+	/**
+	 * @param failed
+	 *            the number of drained messages which could not be sent,
+	 *            counted as dropped
+	 */
+	public synchronized void delivered(int count, int failed) {
+		delivered += count;
+		dropped += failed;
+		flushes++;
+		lastFlush = new Date();
+	}
+
+	public synchronized PushQueueStats getStats() {
+		return new PushQueueStats(sessionId, pending.size(), maxPending, enqueued, delivered, coalesced, dropped,
+				flushes, lastFlush);
+	}
+}
@@ -0,0 +1,133 @@
+package org.krakenapps.msgbus.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.krakenapps.msgbus.Message;
+import org.krakenapps.msgbus.MessageBus;
+import org.krakenapps.msgbus.PushApi;
+import org.krakenapps.msgbus.PushQueueStats;
+
+public class PushApiImplTest {
+	private BlockingQueue<Message> sent;
+	private PushApiImpl push;
+
+	@Before
+	public void setUp() {
+		System.setProperty("kraken.msgbus.push_flush_interval", "10");
+		sent = new LinkedBlockingQueue<Message>();
+		push = new PushApiImpl(newMessageBus());
+	}
+
+	@After
+	public void tearDown() {
+		push.stop();
+		System.clearProperty("kraken.msgbus.push_flush_interval");
+	}
+
+	@Test
+	public void testSingleFrame() throws InterruptedException {
+		push.subscribe("localhost", "s1", 1, "logdb-query", new HashMap<String, Object>());
+		for (int i = 0; i < 3; i++)
+			push.push("localhost", "logdb-query", null, param("seq", i));
+		push.push("localhost", "logdb-query", "status", param("status", "running"));
+		push.push("localhost", "logdb-query", "status", param("status", "done"));
+		push.start();
+
+		Message frame = sent.poll(5, TimeUnit.SECONDS);
+		assertEquals(PushApi.BATCH_CALLBACK, frame.getMethod());
+		assertEquals(Message.Type.Trap, frame.getType());
+		assertEquals("s1", frame.getSession());
+
+		@SuppressWarnings("unchecked")
+		List<Map<String, Object>> messages = (List<Map<String, Object>>) frame.getParameters().get("messages");
+		assertEquals(4, messages.size());
+		for (int i = 0; i < 3; i++)
+			assertEquals(i, params(messages.get(i)).get("seq"));
+		assertEquals("done", params(messages.get(3)).get("status"));
+		assertEquals("logdb-query", messages.get(3).get("method"));
+		assertEquals("1", messages.get(3).get("target"));
+
+		PushQueueStats stats = waitFlush();
+		assertEquals(4, stats.getDelivered());
+		assertEquals(1, stats.getCoalesced());
+		assertEquals(0, sent.size());
+	}
+
+	@Test
+	public void testSingleMessageNotBatched() throws InterruptedException {
+		push.subscribe("localhost", "s1", 1, "logdb-query", new HashMap<String, Object>());
+		push.start();
+		push.push("localhost", "logdb-query", param("seq", 0));
+
+		Message msg = sent.poll(5, TimeUnit.SECONDS);
+		assertEquals("logdb-query", msg.getMethod());
+		assertEquals("1", msg.getTarget());
+		assertEquals(0, msg.getParameters().get("seq"));
+	}
+
+	@Test
+	public void testSessionClosed() throws InterruptedException {
+		push.subscribe("localhost", "s1", 1, "logdb-query", new HashMap<String, Object>());
+		push.push("localhost", "logdb-query", param("seq", 0));
+		assertEquals(1, push.getQueueStats().size());
+
+		push.sessionClosed("localhost", "s1");
+		assertTrue(push.getQueueStats().isEmpty());
+
+		// queue should not be created again for closed session
+		push.push("localhost", "logdb-query", param("seq", 1));
+		assertTrue(push.getQueueStats().isEmpty());
+
+		push.start();
+		assertEquals(null, sent.poll(100, TimeUnit.MILLISECONDS));
+	}
+
+	private PushQueueStats waitFlush() throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (System.currentTimeMillis() < deadline) {
+			PushQueueStats stats = push.getQueueStats().iterator().next();
+			if (stats.getFlushes() > 0)
+				return stats;
+			Thread.sleep(10);
+		}
+		throw new AssertionError("flush timeout");
+	}
+
+	@SuppressWarnings("unchecked")
+	private Map<String, Object> params(Map<String, Object> m) {
+		return (Map<String, Object>) m.get("params");
+	}
+
+	private Map<String, Object> param(String key, Object value) {
+		Map<String, Object> m = new HashMap<String, Object>();
+		m.put(key, value);
+		return m;
+	}
+
+	private MessageBus newMessageBus() {
+		InvocationHandler handler = new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				if (method.getName().equals("send"))
+					sent.add((Message) args[0]);
+				return null;
+			}
+		};
+		return (MessageBus) Proxy.newProxyInstance(MessageBus.class.getClassLoader(), new Class<?>[] { MessageBus.class },
+				handler);
+	}
+}
@@ -0,0 +1,88 @@
+package org.krakenapps.msgbus.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+import org.krakenapps.msgbus.Message;
+import org.krakenapps.msgbus.PushQueueStats;
+
+public class PushQueueTest {
+	@Test
+	public void testCoalesce() {
+		PushQueue queue = new PushQueue("s1", 10);
+		assertTrue(queue.offer("job1", push("status", "running")));
+		assertTrue(queue.offer("job1", push("status", "done")));
+		assertTrue(queue.offer("job2", push("status", "running")));
+
+		List<Message> messages = queue.drain();
+		assertEquals(2, messages.size());
+		assertEquals("done", messages.get(0).getParameters().get("value"));
+		assertEquals("running", messages.get(1).getParameters().get("value"));
+
+		PushQueueStats stats = queue.getStats();
+		assertEquals(3, stats.getEnqueued());
+		assertEquals(1, stats.getCoalesced());
+	}
+
+	@Test
+	public void testCoalescedMovesToTail() {
+		PushQueue queue = new PushQueue("s1", 10);
+		queue.offer("job1", push("status", "running"));
+		queue.offer(null, push("log", "line1"));
+		queue.offer("job1", push("status", "done"));
+		queue.offer(null, push("log", "line2"));
+
+		List<Message> messages = queue.drain();
+		assertEquals(3, messages.size());
+		assertEquals("line1", messages.get(0).getParameters().get("value"));
+		assertEquals("done", messages.get(1).getParameters().get("value"));
+		assertEquals("line2", messages.get(2).getParameters().get("value"));
+	}
+
+	@Test
+	public void testSameKeyOfOtherCallbackNotCoalesced() {
+		PushQueue queue = new PushQueue("s1", 10);
+		queue.offer("k", push("a", "1"));
+		queue.offer("k", push("b", "2"));
+		assertEquals(2, queue.drain().size());
+	}
+
+	@Test
+	public void testCapacity() {
+		PushQueue queue = new PushQueue("s1", 2);
+		assertTrue(queue.offer(null, push("log", "1")));
+		assertTrue(queue.offer("job1", push("status", "running")));
+		assertEquals(0, queue.getFullDuration(System.currentTimeMillis()));
+
+		assertFalse(queue.offer(null, push("log", "2")));
+		assertTrue(queue.getFullDuration(System.currentTimeMillis() + 1000) >= 1000);
+
+		// pending status can be replaced even if queue is full
+		assertTrue(queue.offer("job1", push("status", "done")));
+
+		List<Message> messages = queue.drain();
+		assertEquals(2, messages.size());
+		assertTrue(queue.isEmpty());
+		assertEquals(0, queue.getFullDuration(System.currentTimeMillis()));
+
+		queue.delivered(1, 1);
+		PushQueueStats stats = queue.getStats();
+		assertEquals(1, stats.getDelivered());
+		assertEquals(2, stats.getDropped());
+		assertEquals(2, stats.getMaxPending());
+		assertEquals(0, stats.getPending());
+	}
+
+	private Message push(String method, String value) {
+		Message msg = new Message();
+		msg.setType(Message.Type.Trap);
+		msg.setMethod(method);
+		msg.setTarget("1");
+		msg.getParameters().put("value", value);
+		return msg;
+	}
+}
@@ -51,14 +51,26 @@ public class CompactRrd implements Rrd {
 	public void update(Date time, Map<String, Double> values) {
 		RrdRaw raw = getRrdRaw();
 		raw.update(time, values);
-		raw.write(persLayer);
+		raw.save(persLayer);
 	}
 
 	@Override
 	public void update(Date time, Double[] values) {
 		RrdRaw raw = getRrdRaw();
 		raw.update(time, values);
-		raw.write(persLayer);
+		raw.save(persLayer);
+	}
+
+	@Override
+	public void update(List<RrdUpdate> updates) {
+		RrdRaw raw = getRrdRaw();
+		for (RrdUpdate u : updates) {
+			if (u.getValues() != null)
+				raw.update(u.getTime(), u.getValues());
+			else
+				raw.update(u.getTime(), u.getArray());
+		}
+		raw.save(persLayer);
 	}
 
 	@Override
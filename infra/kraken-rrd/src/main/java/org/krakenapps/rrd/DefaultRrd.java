@@ -69,6 +69,18 @@ public class DefaultRrd implements Rrd {
 			save();
 	}
 
+	@Override
+	public void update(List<RrdUpdate> updates) {
+		for (RrdUpdate u : updates) {
+			if (u.getValues() != null)
+				raw.update(u.getTime(), u.getValues());
+			else
+				raw.update(u.getTime(), u.getArray());
+		}
+		if (autoSave)
+			save();
+	}
+
 	@Override
 	public int length() {
 		return raw.length();
@@ -76,7 +88,7 @@ public class DefaultRrd implements Rrd {
 
 	@Override
 	public void save() {
-		raw.write(persLayer);
+		raw.save(persLayer);
 	}
 
 	@Override
@@ -20,6 +20,8 @@ public interface Rrd {
 
 	void update(Date time, Double[] values);
 
+	void update(List<RrdUpdate> updates);
+
 	int length();
 
 	void save();
@@ -0,0 +1,73 @@
+package org.krakenapps.rrd;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Collects samples of many rrds and applies them at once, so that each rrd is
+ * persisted only once per commit. Samples of the same rrd should be added in
+ * time order.
+ */
+public class RrdBatch {
+	private final Logger logger = LoggerFactory.getLogger(RrdBatch.class);
+
+	private Map<Rrd, List<RrdUpdate>> updates = new LinkedHashMap<Rrd, List<RrdUpdate>>();
+	private int size;
+
+	public void add(Rrd rrd, Date time, Map<String, Double> values) {
+		add(rrd, new RrdUpdate(time, values));
+	}
+
+	public void add(Rrd rrd, Date time, Double[] values) {
+		add(rrd, new RrdUpdate(time, values));
+	}
+
+	public void add(Rrd rrd, RrdUpdate update) {
+		List<RrdUpdate> l = updates.get(rrd);
+		if (l == null) {
+			l = new ArrayList<RrdUpdate>();
+			updates.put(rrd, l);
+		}
+		l.add(update);
+		size++;
+	}
+
+	/**
+	 * @return the number of pending samples
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Applies and clears all pending samples. Failure of one rrd does not
+	 * affect other rrds.
+	 * 
+	 * @return the number of successfully updated rrds
+	 */
+	public int commit() {
+		int success = 0;
+		try {
+			for (Rrd rrd : updates.keySet()) {
+				try {
+					rrd.update(updates.get(rrd));
+					success++;
+				} catch (RuntimeException e) {
+					logger.error("kraken rrd: batch update failed", e);
+				}
+			}
+		} finally {
+			updates.clear();
+			size = 0;
+		}
+
+		logger.trace("kraken rrd: committed batch, {} rrds updated", success);
+		return success;
+	}
+}
@@ -0,0 +1,40 @@
+package org.krakenapps.rrd;
+
+import java.util.Date;
+import java.util.Map;
+
+public class RrdUpdate {
+	private Date time;
+	private Map<String, Double> values;
+	private Double[] array;
+
+	public RrdUpdate(Date time, Map<String, Double> values) {
+		this.time = time;
+		this.values = values;
+	}
+
+	public RrdUpdate(Date time, Double[] values) {
+		this.time = time;
+		this.array = values;
+	}
+
+	public Date getTime() {
+		return time;
+	}
+
+	/**
+	 * @return values by data source name, or null if values are given in
+	 *         data source order
+	 */
+	public Map<String, Double> getValues() {
+		return values;
+	}
+
+	/**
+	 * @return values in data source order, or null if values are given by
+	 *         data source name
+	 */
+	public Double[] getArray() {
+		return array;
+	}
+}
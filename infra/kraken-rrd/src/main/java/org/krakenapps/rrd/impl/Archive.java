@@ -17,6 +17,7 @@ import org.krakenapps.rrd.DataSourceConfig;
 import org.krakenapps.rrd.FetchRow;
 import org.krakenapps.rrd.exception.InvalidStateException;
 import org.krakenapps.rrd.exception.ParameterAssertionFailedException;
+import org.krakenapps.rrd.io.MappedPersistentLayer;
 import org.krakenapps.rrd.io.PersistentLayer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -266,7 +267,7 @@ public class Archive {
 		try {
 			int len = func.toString().getBytes("utf-8").length + 2;
 			len += 16;
-			len += 8 + rowsSize * 4;
+			len += 8 + rows.length * 4;
 			return len;
 		} catch (UnsupportedEncodingException e) {
 			return 0;
@@ -286,6 +287,13 @@ public class Archive {
 			persLayer.writeInt(row.rowIndex);
 	}
 
+	public void writeInPlace(MappedPersistentLayer mapped, int offset) throws IOException {
+		// row indexes never move, only ring buffer pointers are updated
+		mapped.seek(offset + length() - 8 - rows.length * 4);
+		mapped.writeInt(rowsSize);
+		mapped.writeInt(rowsStart);
+	}
+
 	public void dump(PrintWriter writer) {
 		writer.printf("== archive func: %s, pdpPerRow: %d, xff: %f, capacity: %d ==\n", func.toString(), pdpPerRow, xff,
 				this.rowCapacity);
@@ -3,11 +3,13 @@ package org.krakenapps.rrd.impl;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.UnsupportedEncodingException;
+import java.nio.LongBuffer;
 import java.util.HashMap;
 import java.util.Map;
 
 import org.krakenapps.rrd.DataSourceConfig;
 import org.krakenapps.rrd.DataSourceType;
+import org.krakenapps.rrd.io.MappedPersistentLayer;
 import org.krakenapps.rrd.io.PersistentLayer;
 
 public abstract class DataSource {
@@ -24,7 +26,7 @@ public abstract class DataSource {
 	protected long unknownSec = 0;
 
 	private Map<Archive, ConsolidatedDataPoint> cdps;
-	private Map<Archive, long[]> data;
+	private Map<Archive, LongBuffer> data;
 
 	public static DataSource createInstance(RrdRaw rrd, DataSourceConfig dsConfig, long lastUpdate) {
 		switch (dsConfig.getType()) {
@@ -60,12 +62,19 @@ public abstract class DataSource {
 		for (Archive archive : raw.getArchives())
 			newDataSource.cdps.put(archive, new ConsolidatedDataPoint(archive, persLayer));
 
-		newDataSource.data = new HashMap<Archive, long[]>(raw.getArchives().size());
-		for (Archive archive : raw.getArchives()) {
-			long[] data = new long[archive.getRowCapacity()];
-			for (int i = 0; i < data.length; i++)
-				data[i] = persLayer.readLong();
-			newDataSource.data.put(archive, data);
+		newDataSource.data = new HashMap<Archive, LongBuffer>(raw.getArchives().size());
+		if (persLayer instanceof MappedPersistentLayer) {
+			// rows are read and written straight through the mapped region
+			MappedPersistentLayer mapped = (MappedPersistentLayer) persLayer;
+			for (Archive archive : raw.getArchives())
+				newDataSource.data.put(archive, mapped.mapLongs(archive.getRowCapacity()));
+		} else {
+			for (Archive archive : raw.getArchives()) {
+				long[] data = new long[archive.getRowCapacity()];
+				for (int i = 0; i < data.length; i++)
+					data[i] = persLayer.readLong();
+				newDataSource.data.put(archive, LongBuffer.wrap(data));
+			}
 		}
 
 		return newDataSource;
@@ -81,9 +90,9 @@ public abstract class DataSource {
 		this.cdps = new HashMap<Archive, ConsolidatedDataPoint>(raw.getArchives().size());
 		for (Archive archive : raw.getArchives())
 			cdps.put(archive, new ConsolidatedDataPoint(archive));
-		this.data = new HashMap<Archive, long[]>(raw.getArchives().size());
+		this.data = new HashMap<Archive, LongBuffer>(raw.getArchives().size());
 		for (Archive archive : raw.getArchives())
-			data.put(archive, new long[archive.getRowCapacity()]);
+			data.put(archive, LongBuffer.wrap(new long[archive.getRowCapacity()]));
 	}
 
 	public String getName() {
@@ -119,11 +128,11 @@ public abstract class DataSource {
 	}
 
 	public double getData(Archive archive, int index) {
-		return Double.longBitsToDouble(data.get(archive)[index]);
+		return Double.longBitsToDouble(data.get(archive).get(index));
 	}
 
 	public void setData(Archive archive, int index, double value) {
-		data.get(archive)[index] = Double.doubleToRawLongBits(value);
+		data.get(archive).put(index, Double.doubleToRawLongBits(value));
 	}
 
 	protected abstract double getValueDelta(long time, long lastUpdate, double newValue);
@@ -161,13 +170,18 @@ public abstract class DataSource {
 	}
 
 	public int length() {
+		int len = getStateOffset() + 24;
+		len += cdps.size() * 40;
+		len += raw.getRowCapacity() * 8;
+		return len;
+	}
+
+	// offset of last value from the beginning of data source
+	private int getStateOffset() {
 		try {
 			int len = type.toString().getBytes("utf-8").length + 2;
 			len += name.getBytes("utf-8").length + 2;
-			len += 48;
-
-			len += cdps.size() * 40;
-			len += raw.getRowCapacity();
+			len += 24;
 			return len;
 		} catch (UnsupportedEncodingException e) {
 			return 0;
@@ -189,11 +203,38 @@ public abstract class DataSource {
 			cdps.get(key).writeToPersLayer(persLayer);
 
 		for (Archive archive : raw.getArchives()) {
-			for (long d : data.get(archive))
-				persLayer.writeLong(d);
+			LongBuffer d = data.get(archive);
+			for (int i = 0; i < d.limit(); i++)
+				persLayer.writeLong(d.get(i));
 		}
 	}
 
+	/**
+	 * Patches only mutable states and cdps at the given offset. Rows are
+	 * already stored to the mapped region by setData().
+	 */
+	public void writeInPlace(MappedPersistentLayer mapped, int offset) throws IOException {
+		mapped.seek(offset + getStateOffset());
+		mapped.writeDouble(last);
+		mapped.writeDouble(value);
+		mapped.writeLong(unknownSec);
+
+		for (Archive key : raw.getArchives())
+			cdps.get(key).writeToPersLayer(mapped);
+	}
+
+	/**
+	 * Replaces row storage with views of the mapped region at the given
+	 * offset, which must contain the same rows.
+	 */
+	public void mapData(MappedPersistentLayer mapped, int offset) throws IOException {
+		mapped.seek(offset + getStateOffset() + 24 + cdps.size() * 40);
+		Map<Archive, LongBuffer> views = new HashMap<Archive, LongBuffer>(raw.getArchives().size());
+		for (Archive archive : raw.getArchives())
+			views.put(archive, mapped.mapLongs(archive.getRowCapacity()));
+		data = views;
+	}
+
 	public void dump(PrintWriter writer) {
 		writer.printf("== %s ==\ntype: %s\n", name, type.toString());
 		writer.printf("minimalHeartbaet: %d\n", minimalHeartbeat);
@@ -14,6 +14,7 @@ import org.krakenapps.rrd.ConsolidateFunc;
 import org.krakenapps.rrd.DataSourceConfig;
 import org.krakenapps.rrd.FetchResult;
 import org.krakenapps.rrd.RrdConfig;
+import org.krakenapps.rrd.io.MappedPersistentLayer;
 import org.krakenapps.rrd.io.PersistentLayer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -28,6 +29,11 @@ public class RrdRaw {
 	private List<Archive> archives = new ArrayList<Archive>();
 	private List<DataSource> dataSources = new ArrayList<DataSource>();
 
+	// layer which has same layout with this rrd. if it is mapped, rows are
+	// stored directly to the mapped region.
+	private PersistentLayer syncedLayer;
+	private boolean layoutChanged;
+
 	public RrdRaw(RrdConfig config) {
 		this.step = config.getStep();
 		this.lastUpdate = config.getStartTime() / 1000L;
@@ -71,6 +77,8 @@ public class RrdRaw {
 
 			for (int i = 0; i < dataSourceSize; i++)
 				dataSources.add(DataSource.createFromPersLayer(this, persLayer));
+
+			syncedLayer = persLayer;
 		} catch (Exception e) {
 			logger.error("kraken rrd: rrdraw read failed", e);
 			throw new IllegalStateException(e);
@@ -103,6 +111,7 @@ public class RrdRaw {
 		}
 		DataSource ds = DataSource.createInstance(this, dsConfig, lastUpdate);
 		dataSources.add(ds);
+		layoutChanged = true;
 	}
 
 	public void removeDataSource(String name) {
@@ -110,6 +119,7 @@ public class RrdRaw {
 		while (it.hasNext()) {
 			if (it.next().getName().equals(name)) {
 				it.remove();
+				layoutChanged = true;
 				return;
 			}
 		}
@@ -217,7 +227,75 @@ public class RrdRaw {
 		return len;
 	}
 
+	/**
+	 * Writes only changed states if the persistent layer is mapped and has
+	 * same layout, otherwise rewrites whole rrd.
+	 */
+	public void save(PersistentLayer persLayer) {
+		if (persLayer == syncedLayer && !layoutChanged && persLayer instanceof MappedPersistentLayer) {
+			MappedPersistentLayer mapped = (MappedPersistentLayer) persLayer;
+			if (mapped.length() == length()) {
+				writeInPlace(mapped);
+				return;
+			}
+		}
+
+		write(persLayer);
+	}
+
+	private void writeInPlace(MappedPersistentLayer mapped) {
+		try {
+			mapped.open(true);
+			mapped.seek(9);
+			mapped.writeLong(this.lastUpdate);
+
+			int offset = 21;
+			for (Archive ar : archives) {
+				ar.writeInPlace(mapped, offset);
+				offset += ar.length();
+			}
+
+			offset += 4;
+			for (DataSource ds : dataSources) {
+				ds.writeInPlace(mapped, offset);
+				offset += ds.length();
+			}
+		} catch (IOException e) {
+			logger.error("kraken rrd: rrdraw in-place write failed", e);
+		} finally {
+			try {
+				mapped.close();
+			} catch (IOException e) {
+			}
+		}
+	}
+
+	private void mapData(MappedPersistentLayer mapped) {
+		try {
+			mapped.open(true);
+			int offset = 21;
+			for (Archive ar : archives)
+				offset += ar.length();
+
+			offset += 4;
+			for (DataSource ds : dataSources) {
+				ds.mapData(mapped, offset);
+				offset += ds.length();
+			}
+			syncedLayer = mapped;
+		} catch (IOException e) {
+			logger.error("kraken rrd: rrdraw mapping failed", e);
+			syncedLayer = null;
+		} finally {
+			try {
+				mapped.close();
+			} catch (IOException e) {
+			}
+		}
+	}
+
 	public void write(PersistentLayer persLayer) {
+		boolean written = false;
 		try {
 			persLayer.open(false);
 			persLayer.writeByte(1); // version
@@ -231,14 +309,25 @@ public class RrdRaw {
 			persLayer.writeInt(dataSources.size());
 			for (DataSource ds : dataSources)
 				ds.writeToPersLayer(persLayer);
+			written = true;
 		} catch (IOException e) {
 			logger.error("kraken rrd: rrdraw write failed", e);
 		} finally {
 			try {
 				persLayer.close();
 			} catch (IOException e) {
+				logger.error("kraken rrd: rrdraw write failed", e);
+				written = false;
 			}
 		}
+
+		if (!written || (syncedLayer != null && syncedLayer != persLayer))
+			return;
+
+		syncedLayer = persLayer;
+		layoutChanged = false;
+		if (persLayer instanceof MappedPersistentLayer)
+			mapData((MappedPersistentLayer) persLayer);
 	}
 
 	public int getRowCapacity() {
@@ -0,0 +1,382 @@
+package org.krakenapps.rrd.io;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+/**
+ * Persistent layer which memory-maps the rrd file. open(true) reads and
+ * patches the mapped region in place, while open(false) collects a full
+ * rewrite in heap and replaces file contents and mapping on close(). The
+ * file descriptor is released right after mapping, so thousands of layers
+ * can be kept open.
+ */
+public class MappedPersistentLayer extends PersistentLayer {
+	private static final int DEFAULT_CAPACITY = 8192;
+
+	private File file;
+	private MappedByteBuffer map;
+	private int length;
+
+	private boolean rewrite;
+	private ByteBuffer rewriteBuffer;
+
+	public MappedPersistentLayer(File file) throws IOException {
+		this.file = file;
+		if (file.exists() && file.length() > 0)
+			remap((int) file.length());
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * @return the length of the mapped rrd image, or 0 if nothing is written
+	 *         yet
+	 */
+	public int length() {
+		return length;
+	}
+
+	public boolean isMapped() {
+		return map != null;
+	}
+
+	@Override
+	public void open(boolean read) {
+		rewrite = !read;
+		if (rewrite) {
+			if (rewriteBuffer == null)
+				rewriteBuffer = ByteBuffer.allocate(Math.max(DEFAULT_CAPACITY, length));
+			rewriteBuffer.clear();
+		} else if (map != null) {
+			map.position(0);
+		}
+	}
+
+	/**
+	 * Moves the read/write position of the mapped region. Writes after
+	 * open(true) patch the file in place.
+	 */
+	public void seek(int pos) throws IOException {
+		if (rewrite)
+			throw new IllegalStateException("seek is not allowed while rewriting " + file.getAbsolutePath());
+		if (map == null || pos > length)
+			throw new EOFException("position " + pos + " is out of mapped region of " + file.getAbsolutePath());
+		map.position(pos);
+	}
+
+	/**
+	 * Returns a long buffer view of the next count longs of the mapped
+	 * region, and advances the position. Stores to the view go directly to
+	 * the file.
+	 */
+	public LongBuffer mapLongs(int count) throws IOException {
+		if (rewrite || map == null)
+			throw new IllegalStateException("rrd file is not mapped: " + file.getAbsolutePath());
+		if (map.remaining() < count * 8)
+			throw new EOFException();
+
+		ByteBuffer dup = map.duplicate();
+		dup.limit(map.position() + count * 8);
+		map.position(map.position() + count * 8);
+		return dup.slice().asLongBuffer();
+	}
+
+	/**
+	 * Flushes dirty pages of the mapped region to disk.
+	 */
+	public void force() {
+		if (map != null)
+			map.force();
+	}
+
+	private ByteBuffer out(int needs) throws IOException {
+		if (!rewrite) {
+			if (map == null || map.remaining() < needs)
+				throw new EOFException("cannot write beyond mapped region of " + file.getAbsolutePath());
+			return map;
+		}
+
+		if (rewriteBuffer.remaining() < needs) {
+			int capacity = rewriteBuffer.capacity() * 2;
+			while (capacity - rewriteBuffer.position() < needs)
+				capacity *= 2;
+
+			ByteBuffer newBuffer = ByteBuffer.allocate(capacity);
+			rewriteBuffer.flip();
+			newBuffer.put(rewriteBuffer);
+			rewriteBuffer = newBuffer;
+		}
+		return rewriteBuffer;
+	}
+
+	private ByteBuffer in() throws IOException {
+		if (map == null)
+			throw new EOFException("rrd file is empty: " + file.getAbsolutePath());
+		return map;
+	}
+
+	private void remap(int newLength) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			map = raf.getChannel().map(MapMode.READ_WRITE, 0, newLength);
+			length = newLength;
+		} finally {
+			raf.close();
+		}
+	}
+
+	private void commitRewrite() throws IOException {
+		rewriteBuffer.flip();
+		int newLength = rewriteBuffer.remaining();
+
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			FileChannel channel = raf.getChannel();
+			long pos = 0;
+			while (rewriteBuffer.hasRemaining())
+				pos += channel.write(rewriteBuffer, pos);
+
+			// file length is the image length at next load, so stale tail
+			// should not be left. old mapping is not valid any more.
+			if (raf.length() > newLength)
+				raf.setLength(newLength);
+		} catch (IOException e) {
+			map = null;
+			length = 0;
+			throw new IOException("cannot rewrite rrd file " + file.getAbsolutePath(), e);
+		} finally {
+			raf.close();
+		}
+
+		remap(newLength);
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (rewrite) {
+			rewrite = false;
+			commitRewrite();
+		}
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		out(1).put((byte) (b & 0xFF));
+	}
+
+	@Override
+	public void write(byte[] b) throws IOException {
+		write(b, 0, b.length);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		out(len).put(b, off, len);
+	}
+
+	@Override
+	public void writeBoolean(boolean v) throws IOException {
+		out(1).put((byte) (v ? 1 : 0));
+	}
+
+	@Override
+	public void writeByte(int v) throws IOException {
+		out(1).put((byte) (v & 0xFF));
+	}
+
+	@Override
+	public void writeShort(int v) throws IOException {
+		out(2).putShort((short) (v & 0xFFFF));
+	}
+
+	@Override
+	public void writeChar(int v) throws IOException {
+		out(2).putChar((char) (v & 0xFFFF));
+	}
+
+	@Override
+	public void writeInt(int v) throws IOException {
+		out(4).putInt(v);
+	}
+
+	@Override
+	public void writeLong(long v) throws IOException {
+		out(8).putLong(v);
+	}
+
+	@Override
+	public void writeFloat(float v) throws IOException {
+		out(4).putFloat(v);
+	}
+
+	@Override
+	public void writeDouble(double v) throws IOException {
+		out(8).putDouble(v);
+	}
+
+	@Override
+	public void writeBytes(String s) throws IOException {
+		write(s.getBytes());
+	}
+
+	@Override
+	public void writeChars(String s) throws IOException {
+		for (char c : s.toCharArray())
+			writeChar(c);
+	}
+
+	@Override
+	public void writeUTF(String s) throws IOException {
+		byte[] bytes = s.getBytes("utf-8");
+		ByteBuffer bb = out(2 + bytes.length);
+		bb.putShort((short) bytes.length);
+		bb.put(bytes);
+	}
+
+	@Override
+	public int read(byte[] b) throws IOException {
+		return read(b, 0, b.length);
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		ByteBuffer bb = in();
+		len = Math.min(len, bb.remaining());
+		bb.get(b, off, len);
+		return len;
+	}
+
+	@Override
+	public void readFully(byte[] b) throws IOException {
+		readFully(b, 0, b.length);
+	}
+
+	@Override
+	public void readFully(byte[] b, int off, int len) throws IOException {
+		try {
+			in().get(b, off, len);
+		} catch (BufferUnderflowException e) {
+			throw new EOFException();
+		}
+	}
+
+	@Override
+	public int skipBytes(int n) throws IOException {
+		ByteBuffer bb = in();
+		n = Math.min(n, bb.remaining());
+		bb.position(bb.position() + n);
+		return n;
+	}
+
+	@Override
+	public boolean readBoolean() throws IOException {
+		return readByte() != 0;
+	}
+
+	@Override
+	public byte readByte() throws IOException {
+		try {
+			return in().get();
+		} catch (BufferUnderflowException e) {
+			throw new EOFException();
+		}
+	}
+
+	@Override
+	public int readUnsignedByte() throws IOException {
+		return readByte() & 0xFF;
+	}
+
+	@Override
+	public short readShort() throws IOException {
+		try {
+			return in().getShort();
+		} catch (BufferUnderflowException e) {
+			throw new EOFException();
+		}
+	}
+
+	@Override
+	public int readUnsignedShort() throws IOException {
+		return readShort() & 0xFFFF;
+	}
+
+	@Override
+	public char readChar() throws IOException {
+		return (char) readUnsignedShort();
+	}
+
+	@Override
+	public int readInt() throws IOException {
+		try {
+			return in().getInt();
+		} catch (BufferUnderflowException e) {
+			throw new EOFException();
+		}
+	}
+
+	@Override
+	public long readLong() throws IOException {
+		try {
+			return in().getLong();
+		} catch (BufferUnderflowException e) {
+			throw new EOFException();
+		}
+	}
+
+	@Override
+	public float readFloat() throws IOException {
+		return Float.intBitsToFloat(readInt());
+	}
+
+	@Override
+	public double readDouble() throws IOException {
+		return Double.longBitsToDouble(readLong());
+	}
+
+	/**
+	 * Reads bytes of the mapped region up to \n, \r or \r\n as in
+	 * {@link java.io.DataInput#readLine()}. Each byte is converted to a char
+	 * without decoding.
+	 * 
+	 * @return the line without terminator, or null at the end of mapped
+	 *         region
+	 */
+	@Override
+	public String readLine() throws IOException {
+		ByteBuffer bb = in();
+		if (!bb.hasRemaining())
+			return null;
+
+		StringBuilder sb = new StringBuilder();
+		while (bb.hasRemaining()) {
+			int c = bb.get() & 0xFF;
+			if (c == '\n')
+				break;
+			if (c == '\r') {
+				if (bb.hasRemaining() && bb.get(bb.position()) == '\n')
+					bb.get();
+				break;
+			}
+			sb.append((char) c);
+		}
+		return sb.toString();
+	}
+
+	@Override
+	public String readUTF() throws IOException {
+		byte[] b = new byte[readUnsignedShort()];
+		readFully(b);
+		return new String(b, "utf-8");
+	}
+}
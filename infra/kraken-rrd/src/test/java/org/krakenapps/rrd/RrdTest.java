@@ -1,5 +1,6 @@
 package org.krakenapps.rrd;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.io.BufferedReader;
@@ -27,6 +28,7 @@ import org.krakenapps.rrd.impl.DataSource;
 import org.krakenapps.rrd.impl.RrdRaw;
 import org.krakenapps.rrd.impl.RrdUtil;
 import org.krakenapps.rrd.io.FilePersistentLayer;
+import org.krakenapps.rrd.io.MappedPersistentLayer;
 import org.krakenapps.rrd.io.MemoryPersistentLayer;
 import org.krakenapps.rrd.io.PersistentLayer;
 
@@ -609,4 +611,110 @@ public class RrdTest {
 			System.out.println(row.getDate() + " " + row.getColumnsMap());
 		}
 	}
+
+	@Test
+	public void mappedPersistentLayerTest() throws IOException {
+		File file = new File("mapped_rrd_test.bin");
+		file.delete();
+
+		long startTime = 1264770000L;
+		RrdConfig config = new RrdConfig(makeDate(startTime), 10);
+		config.addDataSource("in", DataSourceType.GAUGE, 20, Double.NaN, Double.NaN);
+		config.addDataSource("out", DataSourceType.ABSOLUTE2, 20, Double.NaN, Double.NaN);
+		config.addArchive(ConsolidateFunc.AVERAGE, 0.5, 1, 30);
+		config.addArchive(ConsolidateFunc.MAX, 0.5, 6, 10);
+
+		try {
+			Rrd mapped = new DefaultRrd(new MappedPersistentLayer(file), config);
+			Rrd memory = new DefaultRrd(new MemoryPersistentLayer(), config);
+			for (long t = startTime + 10; t <= startTime + 600; t += 10) {
+				Double[] values = new Double[] { (double) (t % 70), 1.0 };
+				mapped.update(makeDate(t), values);
+				memory.update(makeDate(t), values);
+			}
+
+			// updates are applied in place
+			assertEquals(mapped.length(), file.length());
+
+			Rrd reopened = new DefaultRrd(new MappedPersistentLayer(file));
+			for (ConsolidateFunc f : new ConsolidateFunc[] { ConsolidateFunc.AVERAGE, ConsolidateFunc.MAX }) {
+				long resolution = f == ConsolidateFunc.AVERAGE ? 10 : 60;
+				FetchResult expected = memory.fetch(f, makeDate(startTime), makeDate(startTime + 600), resolution);
+				FetchResult actual = reopened.fetch(f, makeDate(startTime), makeDate(startTime + 600), resolution);
+				assertEquals(expected.getRows().size(), actual.getRows().size());
+				for (int i = 0; i < expected.getRows().size(); i++) {
+					FetchRow e = expected.getRows().get(i);
+					FetchRow a = actual.getRows().get(i);
+					assertEquals(e.getTimeInSec(), a.getTimeInSec());
+					assertTrue(Arrays.equals(e.getColumns(), a.getColumns()));
+				}
+			}
+
+			// layout change falls back to full rewrite
+			reopened.addDataSource("err", DataSourceType.GAUGE, 20, Double.NaN, Double.NaN);
+			reopened.update(makeDate(startTime + 610), new Double[] { 1.0, 1.0, 1.0 });
+			assertEquals(reopened.length(), file.length());
+			assertEquals(3, new DefaultRrd(new MappedPersistentLayer(file)).getDataSources().size());
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void mappedReadLineTest() throws IOException {
+		File file = new File("mapped_readline_test.bin");
+		file.delete();
+
+		try {
+			MappedPersistentLayer layer = new MappedPersistentLayer(file);
+			layer.open(false);
+			layer.writeBytes("first\nsecond\r\n\rthird\rcaf");
+			layer.writeByte(0xe9);
+			layer.close();
+
+			layer.open(true);
+			assertEquals("first", layer.readLine());
+			assertEquals("second", layer.readLine());
+			assertEquals("", layer.readLine());
+			assertEquals("third", layer.readLine());
+			assertEquals("caf\u00e9", layer.readLine());
+			assertEquals(null, layer.readLine());
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void batchUpdateTest() {
+		long startTime = 1264770000L;
+		RrdConfig config = new RrdConfig(makeDate(startTime), 10);
+		config.addDataSource("ds", DataSourceType.ABSOLUTE2, 20, Double.NaN, Double.NaN);
+		config.addArchive(ConsolidateFunc.SUM, 0.5, 1, 10);
+
+		Rrd rrd1 = new DefaultRrd(new MemoryPersistentLayer(), config);
+		Rrd rrd2 = new CompactRrd(new MemoryPersistentLayer(), config);
+		Map<String, Double> values = new HashMap<String, Double>();
+		values.put("ds", 2.0);
+
+		RrdBatch batch = new RrdBatch();
+		for (long t = startTime + 10; t <= startTime + 50; t += 10) {
+			batch.add(rrd1, makeDate(t), values);
+			batch.add(rrd2, makeDate(t), new Double[] { 3.0 });
+		}
+		// out of order sample fails only its own rrd
+		Rrd rrd3 = new DefaultRrd(new MemoryPersistentLayer(), config);
+		batch.add(rrd3, makeDate(startTime + 20), values);
+		batch.add(rrd3, makeDate(startTime + 10), values);
+
+		assertEquals(12, batch.size());
+		assertEquals(2, batch.commit());
+		assertEquals(0, batch.size());
+
+		FetchResult r1 = rrd1.fetch(ConsolidateFunc.SUM, makeDate(startTime), makeDate(startTime + 40), 10);
+		FetchResult r2 = rrd2.fetch(ConsolidateFunc.SUM, makeDate(startTime), makeDate(startTime + 40), 10);
+		for (FetchRow row : r1.getRows())
+			assertTrue(row.getColumn("ds") == 2.0);
+		for (FetchRow row : r2.getRows())
+			assertTrue(row.getColumn("ds") == 3.0);
+	}
 }
@@ -306,6 +306,14 @@ Channel = function() {
 		if(msg[0].type == 'Trap') {
 			var map = trapCallbackMap;
 			var method = msg[0].method;
+			if(method == 'msgbus-push-batch') {
+				// pending pushes of session are delivered in one frame
+				var msgs = msg[1].messages;
+				for(var i = 0; i < msgs.length; i++) {
+					this.fireCallback([ { type: 'Trap', method: msgs[i].method, target: msgs[i].target }, msgs[i].params ]);
+				}
+				return;
+			}
 			map[method](msg[1]);
 		}
 		else if(msg[0].type == 'Response') {
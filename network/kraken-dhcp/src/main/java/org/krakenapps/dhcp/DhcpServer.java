@@ -45,6 +45,11 @@ public interface DhcpServer {
 
 	void purgeIpLease(InetAddress ip);
 
+	/**
+	 * Copies current leases to database, replacing old lease records.
+	 */
+	void exportIpLeases();
+
 	void createIpGroup(DhcpIpGroup group);
 
 	void updateIpGroup(DhcpIpGroup group);
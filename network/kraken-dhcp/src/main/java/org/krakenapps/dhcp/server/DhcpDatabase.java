@@ -24,6 +24,7 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
@@ -545,6 +546,41 @@ class DhcpDatabase {
 		removeOldBinding(c, lease.getMac(), lease.getIp());
 	}
 
+	public static void exportIpLeases(Collection<DhcpIpLease> leases) {
+		Connection c = null;
+		try {
+			c = newConnection();
+			c.setAutoCommit(false);
+
+			Statement purge = c.createStatement();
+			purge.executeUpdate("delete from dhcp_ip_leases");
+			purge.close();
+
+			String q = "insert into dhcp_ip_leases (ip, mac, group_name, host_name, created_at, updated_at, expired_at) values (?,?,?,?,?,?,?)";
+			PreparedStatement stmt = c.prepareStatement(q);
+			for (DhcpIpLease lease : leases) {
+				stmt.setString(1, lease.getIp().getHostAddress());
+				stmt.setString(2, lease.getMac().toString());
+				stmt.setString(3, lease.getGroupName());
+				stmt.setString(4, lease.getHostName());
+				stmt.setTimestamp(5, toTimestamp(lease.getCreated()));
+				stmt.setTimestamp(6, toTimestamp(lease.getUpdated()));
+				stmt.setTimestamp(7, toTimestamp(lease.getExpire()));
+				stmt.addBatch();
+			}
+			stmt.executeBatch();
+			stmt.close();
+
+			c.commit();
+		} catch (SQLException e) {
+			error(e);
+			rollback(c);
+			throw new RuntimeException(e);
+		} finally {
+			disconnect(c);
+		}
+	}
+
 	public static void updateIpLease(Connection c, DhcpIpLease lease) {
 		try {
 			String q = "update dhcp_ip_leases set mac=?, host_name=?, created_at=?, updated_at=?, expired_at=? where group_name=? and ip=?";
@@ -16,7 +16,6 @@
 package org.krakenapps.dhcp.server;
 
 import org.krakenapps.dhcp.DhcpMessage;
-import org.krakenapps.dhcp.model.DhcpIpLease;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -29,18 +28,12 @@ class DhcpDeclineHandler {
 	}
 
 	public void handle(DhcpMessage msg) {
-		DhcpIpLease lease = c.leaseMap.get(msg.getClientAddress());
-		if (lease == null) {
+		if (!c.leases.decline(msg.getClientMac(), msg.getClientAddress())) {
 			logger.trace("kraken dhcp: invalid decline for [{}, {}]", msg.getClientAddress(), msg.getClientMac());
 			return;
 		}
 
-		if (lease.getMac().equals(msg.getClientMac())) {
-			DhcpDatabase.removeIpLease(lease);
-			c.leaseMap.remove(lease.getIp());
-
-			logger.trace("kraken dhcp: client declined ip={}, mac={}", msg.getClientAddress().getHostAddress(), msg
-					.getClientMac());
-		}
+		logger.trace("kraken dhcp: client declined ip={}, mac={}", msg.getClientAddress().getHostAddress(), msg
+				.getClientMac());
 	}
 }
@@ -17,18 +17,14 @@ package org.krakenapps.dhcp.server;
 
 import java.io.IOException;
 import java.net.InetAddress;
-import java.net.UnknownHostException;
-import java.util.Date;
 import java.util.List;
 
 import org.krakenapps.dhcp.DhcpMessage;
 import org.krakenapps.dhcp.DhcpServer;
 import org.krakenapps.dhcp.MacAddress;
 import org.krakenapps.dhcp.model.DhcpIpGroup;
-import org.krakenapps.dhcp.model.DhcpIpLease;
 import org.krakenapps.dhcp.model.DhcpIpReservation;
 import org.krakenapps.dhcp.model.DhcpOptionConfig;
-import org.krakenapps.dhcp.options.ByteConverter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -70,43 +66,7 @@ class DhcpDiscoverHandler {
 		if (r != null)
 			return r.getIp();
 
-		List<DhcpIpGroup> groups = DhcpDatabase.getIpGroups(c.conn);
-
-		for (DhcpIpGroup group : groups) {
-			long from = ByteConverter.toInteger(group.getFrom().getAddress()) & 0xffffffffl;
-			long to = ByteConverter.toInteger(group.getTo().getAddress()) & 0xffffffffl;
-
-			for (long target = from + 1; from <= to; target++) {
-				try {
-					InetAddress t = InetAddress.getByAddress(ByteConverter.convert((int) target));
-					if (c.offerMap.containsKey(t))
-						continue;
-
-					
-					List<DhcpOptionConfig> options = DhcpDatabase.getGroupConfigs(group.getName());
-					int leaseDuration = DhcpDatabase.getLeaseDuration(options);
-
-					DhcpIpLease lease = new DhcpIpLease(group.getName(), t, mac, hostName, leaseDuration);
-					DhcpIpLease old = c.leaseMap.get(t);
-
-					if (old == null) {
-						c.offerMap.put(t, lease);
-						return t;
-					} else {
-						// exists but expired
-						if (old.getExpire().before(new Date())) {
-							c.offerMap.put(t, lease);
-							return t;
-						}
-					}
-
-				} catch (UnknownHostException e) {
-					e.printStackTrace();
-				}
-			}
-		}
-
-		return null;
+		return c.leases.offer(mac, hostName, System.currentTimeMillis());
 	}
 
 }
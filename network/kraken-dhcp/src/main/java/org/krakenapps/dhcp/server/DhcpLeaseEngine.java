@@ -0,0 +1,640 @@
+/*
+ * Copyright 2011 Future Systems
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.krakenapps.dhcp.server;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.krakenapps.dhcp.MacAddress;
+import org.krakenapps.dhcp.model.DhcpIpGroup;
+import org.krakenapps.dhcp.model.DhcpIpLease;
+import org.krakenapps.dhcp.model.DhcpIpReservation;
+import org.krakenapps.dhcp.options.ByteConverter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * In-memory lease allocator. Each ip group has a free address bitmap, leases
+ * and offers are indexed by ip and mac, and timeouts are driven by a timing
+ * wheel of one second slots. Lease changes are written to lease journal, and
+ * offers are kept in memory only.
+ * 
+ * Expired or released lease is kept until the address is leased to other
+ * client, so that returning client gets its previous address again.
+ */
+class DhcpLeaseEngine {
+	private static final int OFFERED = 1;
+	private static final int LEASED = 2;
+	private static final int EXPIRED = 3;
+
+	private static final int OFFER_TIMEOUT = 60 * 1000;
+	private static final int WHEEL_SIZE = 4096;
+
+	private final Logger logger = LoggerFactory.getLogger(DhcpLeaseEngine.class.getName());
+	private DhcpLeaseJournal journal;
+	private int compactThreshold;
+
+	private List<Range> ranges = new ArrayList<Range>();
+	private Map<Integer, MacAddress> reservations = new HashMap<Integer, MacAddress>();
+
+	// leased or expired leases
+	private Map<Integer, Binding> leaseByIp = new HashMap<Integer, Binding>();
+	private Map<MacAddress, Binding> leaseByMac = new HashMap<MacAddress, Binding>();
+
+	// pending offers
+	private Map<Integer, Binding> offerByIp = new HashMap<Integer, Binding>();
+	private Map<MacAddress, Binding> offerByMac = new HashMap<MacAddress, Binding>();
+
+	private List<List<WheelEntry>> wheel;
+	private long wheelTick = -1;
+
+	public DhcpLeaseEngine(DhcpLeaseJournal journal) {
+		this.journal = journal;
+		this.compactThreshold = Integer.getInteger("kraken.dhcp.journal_compact", 100000);
+		this.wheel = new ArrayList<List<WheelEntry>>(WHEEL_SIZE);
+		for (int i = 0; i < WHEEL_SIZE; i++)
+			wheel.add(new ArrayList<WheelEntry>());
+	}
+
+	public synchronized boolean hasJournal() {
+		return journal.exists();
+	}
+
+	/**
+	 * Restores leases from snapshot and journal, and compacts journal.
+	 */
+	public synchronized void load(long now) throws IOException {
+		List<DhcpIpLease> leases = journal.load();
+		for (DhcpIpLease lease : leases)
+			restore(lease, now);
+
+		compact();
+		logger.info("kraken dhcp: loaded {} leases from journal", leaseByIp.size());
+	}
+
+	/**
+	 * Restores leases of other store such as derby database, and writes them
+	 * to new snapshot.
+	 */
+	public synchronized void importLeases(Collection<DhcpIpLease> leases, long now) {
+		for (DhcpIpLease lease : leases)
+			restore(lease, now);
+
+		compact();
+		logger.info("kraken dhcp: imported {} leases", leaseByIp.size());
+	}
+
+	private void restore(DhcpIpLease lease, long now) {
+		int ip = toInt(lease.getIp());
+		Range r = findRange(ip);
+		if (r == null) {
+			logger.trace("kraken dhcp: ignored lease out of ip groups, {}", lease);
+			return;
+		}
+
+		Binding b = new Binding(lease, ip, lease.getExpire().getTime() > now ? LEASED : EXPIRED);
+		Binding old = leaseByIp.put(ip, b);
+		if (old != null)
+			unlinkMac(old);
+		leaseByMac.put(lease.getMac(), b);
+
+		updateBit(ip);
+		if (b.state == LEASED)
+			schedule(b);
+	}
+
+	/**
+	 * Rebuilds address bitmaps, and drops leases and offers of removed range.
+	 */
+	public synchronized void setGroups(List<DhcpIpGroup> groups) {
+		List<Range> newRanges = new ArrayList<Range>();
+		for (DhcpIpGroup g : groups) {
+			long from = ByteConverter.toUnsignedInteger(g.getFrom().getAddress());
+			long to = ByteConverter.toUnsignedInteger(g.getTo().getAddress());
+			if (from > to) {
+				logger.warn("kraken dhcp: invalid ip group range, {}", g);
+				continue;
+			}
+			newRanges.add(new Range(g.getName(), from, to));
+		}
+		ranges = newRanges;
+
+		Iterator<Binding> it = leaseByIp.values().iterator();
+		while (it.hasNext()) {
+			Binding b = it.next();
+			Range r = findRange(b.ip);
+			if (r == null) {
+				it.remove();
+				unlinkMac(b);
+				b.removed = true;
+				writeRemove(b.lease.getIp());
+			} else {
+				b.lease.setGroupName(r.name);
+			}
+		}
+
+		it = offerByIp.values().iterator();
+		while (it.hasNext()) {
+			Binding b = it.next();
+			if (findRange(b.ip) == null) {
+				it.remove();
+				offerByMac.remove(b.lease.getMac());
+				b.removed = true;
+			}
+		}
+
+		for (Integer ip : leaseByIp.keySet())
+			updateBit(ip);
+		for (Integer ip : offerByIp.keySet())
+			updateBit(ip);
+		for (Integer ip : reservations.keySet())
+			updateBit(ip);
+	}
+
+	public synchronized void setReservations(Collection<DhcpIpReservation> entries) {
+		List<Integer> old = new ArrayList<Integer>(reservations.keySet());
+		reservations.clear();
+		for (Integer ip : old)
+			updateBit(ip);
+
+		for (DhcpIpReservation r : entries)
+			reserve(r.getIp(), r.getMac());
+	}
+
+	public synchronized void reserve(InetAddress addr, MacAddress mac) {
+		int ip = toInt(addr);
+		reservations.put(ip, mac);
+		updateBit(ip);
+	}
+
+	public synchronized void unreserve(InetAddress addr) {
+		int ip = toInt(addr);
+		reservations.remove(ip);
+		updateBit(ip);
+	}
+
+	/**
+	 * Offers active lease, pending offer or previous address of the client, or
+	 * next free address.
+	 * 
+	 * @return offered address, or null if all ranges are exhausted
+	 */
+	public synchronized InetAddress offer(MacAddress mac, String hostName, long now) {
+		expire(now);
+
+		Binding lease = leaseByMac.get(mac);
+		if (lease != null && isActive(lease, now))
+			return lease.lease.getIp();
+
+		Binding offer = offerByMac.get(mac);
+		if (offer != null && isActive(offer, now)) {
+			setExpire(offer, now + OFFER_TIMEOUT);
+			schedule(offer);
+			return offer.lease.getIp();
+		}
+
+		if (offer != null)
+			removeOffer(offer);
+
+		Range r = null;
+		int ip = 0;
+		if (lease != null && isFree(lease.ip, mac, now)) {
+			ip = lease.ip;
+			r = findRange(ip);
+		} else {
+			for (Range range : ranges) {
+				int offset = range.allocate();
+				if (offset >= 0) {
+					r = range;
+					ip = (int) (range.from + offset);
+					break;
+				}
+			}
+		}
+
+		if (r == null)
+			return null;
+
+		Date created = new Date(now);
+		DhcpIpLease l = new DhcpIpLease(r.name, toAddress(ip), mac, hostName, new Date(now + OFFER_TIMEOUT), created,
+				created);
+		offer = new Binding(l, ip, OFFERED);
+		offerByIp.put(ip, offer);
+		offerByMac.put(mac, offer);
+		updateBit(ip);
+		schedule(offer);
+		return l.getIp();
+	}
+
+	/**
+	 * Commits lease for the requested address.
+	 * 
+	 * @return committed lease, or null if address is not available to the
+	 *         client
+	 */
+	public synchronized DhcpIpLease request(MacAddress mac, InetAddress addr, String hostName, int leaseDuration,
+			long now) {
+		expire(now);
+
+		int ip = toInt(addr);
+		Range r = findRange(ip);
+		if (r == null)
+			return null;
+
+		MacAddress owner = reservations.get(ip);
+		if (owner != null && !owner.equals(mac))
+			return null;
+
+		Binding offer = offerByIp.get(ip);
+		if (offer != null && isActive(offer, now) && !offer.lease.getMac().equals(mac))
+			return null;
+
+		Binding b = leaseByIp.get(ip);
+		if (b != null && isActive(b, now) && !b.lease.getMac().equals(mac))
+			return null;
+
+		// drop offers of this address and this client
+		if (offer != null)
+			removeOffer(offer);
+
+		Binding myOffer = offerByMac.get(mac);
+		if (myOffer != null)
+			removeOffer(myOffer);
+
+		// remove old binding of this client
+		Binding old = leaseByMac.get(mac);
+		if (old != null && old != b)
+			removeLease(old);
+
+		// previous lease of other client
+		if (b != null && !b.lease.getMac().equals(mac)) {
+			removeLease(b);
+			b = null;
+		}
+
+		Date date = new Date(now);
+		if (b == null) {
+			DhcpIpLease l = new DhcpIpLease(r.name, addr, mac, hostName, date, date, date);
+			b = new Binding(l, ip, LEASED);
+			leaseByIp.put(ip, b);
+			leaseByMac.put(mac, b);
+		} else {
+			if (b.state == EXPIRED || !isActive(b, now))
+				b.lease.setCreated(date);
+			if (hostName != null)
+				b.lease.setHostName(hostName);
+			b.lease.setUpdated(date);
+			b.state = LEASED;
+		}
+
+		setExpire(b, now + leaseDuration * 1000L);
+		updateBit(ip);
+		schedule(b);
+		writePut(b.lease);
+		return b.lease;
+	}
+
+	/**
+	 * Ends lease at once. The address is kept for the client until other
+	 * client takes it.
+	 */
+	public synchronized boolean release(MacAddress mac, InetAddress addr, long now) {
+		Binding b = leaseByIp.get(toInt(addr));
+		if (b == null || b.state != LEASED || !b.lease.getMac().equals(mac))
+			return false;
+
+		b.state = EXPIRED;
+		setExpire(b, now);
+		updateBit(b.ip);
+		writePut(b.lease);
+		return true;
+	}
+
+	/**
+	 * Removes lease of the address which client found already in use.
+	 */
+	public synchronized boolean decline(MacAddress mac, InetAddress addr) {
+		Binding b = leaseByIp.get(toInt(addr));
+		if (b == null || !b.lease.getMac().equals(mac))
+			return false;
+
+		removeLease(b);
+		return true;
+	}
+
+	public synchronized void purge() {
+		for (Binding b : leaseByIp.values())
+			b.removed = true;
+		for (Binding b : offerByIp.values())
+			b.removed = true;
+
+		leaseByIp.clear();
+		leaseByMac.clear();
+		offerByIp.clear();
+		offerByMac.clear();
+
+		for (Range r : ranges)
+			r.used.clear();
+		for (Integer ip : reservations.keySet())
+			updateBit(ip);
+
+		try {
+			journal.purge();
+		} catch (IOException e) {
+			logger.error("kraken dhcp: cannot write lease journal", e);
+		}
+	}
+
+	public synchronized void purge(InetAddress addr) {
+		int ip = toInt(addr);
+		Binding b = leaseByIp.get(ip);
+		if (b != null)
+			removeLease(b);
+
+		Binding offer = offerByIp.get(ip);
+		if (offer != null)
+			removeOffer(offer);
+	}
+
+	public synchronized List<DhcpIpLease> getLeases(String groupName) {
+		List<DhcpIpLease> leases = new ArrayList<DhcpIpLease>();
+		for (Binding b : leaseByIp.values())
+			if (b.lease.getGroupName().equals(groupName))
+				leases.add(b.lease);
+		return leases;
+	}
+
+	public synchronized List<DhcpIpLease> getLeases() {
+		List<DhcpIpLease> leases = new ArrayList<DhcpIpLease>(leaseByIp.size());
+		for (Binding b : leaseByIp.values())
+			leases.add(b.lease);
+		return leases;
+	}
+
+	public synchronized List<DhcpIpLease> getOffers() {
+		List<DhcpIpLease> offers = new ArrayList<DhcpIpLease>(offerByIp.size());
+		for (Binding b : offerByIp.values())
+			offers.add(b.lease);
+		return offers;
+	}
+
+	public synchronized DhcpIpLease getLease(InetAddress addr) {
+		Binding b = leaseByIp.get(toInt(addr));
+		return b != null ? b.lease : null;
+	}
+
+	/**
+	 * @return number of addresses which can be offered
+	 */
+	public synchronized int getFreeCount() {
+		int free = 0;
+		for (Range r : ranges)
+			if (r.size > 1)
+				free += r.size - 1 - r.used.get(1, r.size).cardinality();
+		return free;
+	}
+
+	/**
+	 * Advances timing wheel, and frees timed out offers and expired leases.
+	 * Only passed slots are visited, so timeout is detected within one second.
+	 */
+	public synchronized void expire(long now) {
+		long tick = now / 1000 - 1;
+		if (wheelTick < 0 || tick <= wheelTick) {
+			if (wheelTick < 0)
+				wheelTick = tick;
+			return;
+		}
+
+		long begin = Math.max(wheelTick + 1, tick - WHEEL_SIZE + 1);
+		for (long t = begin; t <= tick; t++) {
+			List<WheelEntry> slot = wheel.get((int) (t % WHEEL_SIZE));
+			int kept = 0;
+			for (int i = 0; i < slot.size(); i++) {
+				WheelEntry e = slot.get(i);
+				Binding b = e.binding;
+
+				// removed, or rescheduled to other slot
+				if (b.removed || b.state == EXPIRED || b.expire != e.expire)
+					continue;
+
+				// not this round
+				if (b.expire > now) {
+					slot.set(kept++, e);
+					continue;
+				}
+
+				timeout(b);
+			}
+
+			for (int i = slot.size() - 1; i >= kept; i--)
+				slot.remove(i);
+		}
+
+		wheelTick = tick;
+	}
+
+	public synchronized void close() {
+		journal.close();
+	}
+
+	private void timeout(Binding b) {
+		if (b.state == OFFERED) {
+			removeOffer(b);
+		} else {
+			b.state = EXPIRED;
+			updateBit(b.ip);
+		}
+	}
+
+	private void schedule(Binding b) {
+		long tick = b.expire / 1000;
+		if (wheelTick >= 0 && tick <= wheelTick)
+			tick = wheelTick + 1;
+		wheel.get((int) (tick % WHEEL_SIZE)).add(new WheelEntry(b));
+	}
+
+	private void setExpire(Binding b, long expire) {
+		b.expire = expire;
+		b.lease.setExpire(new Date(expire));
+	}
+
+	private boolean isActive(Binding b, long now) {
+		return !b.removed && b.state != EXPIRED && b.expire > now;
+	}
+
+	private boolean isFree(int ip, MacAddress mac, long now) {
+		if (findRange(ip) == null)
+			return false;
+
+		MacAddress owner = reservations.get(ip);
+		if (owner != null && !owner.equals(mac))
+			return false;
+
+		Binding offer = offerByIp.get(ip);
+		if (offer != null && isActive(offer, now))
+			return false;
+
+		Binding lease = leaseByIp.get(ip);
+		return lease == null || !isActive(lease, now);
+	}
+
+	private void removeOffer(Binding b) {
+		b.removed = true;
+		if (offerByIp.get(b.ip) == b)
+			offerByIp.remove(b.ip);
+		if (offerByMac.get(b.lease.getMac()) == b)
+			offerByMac.remove(b.lease.getMac());
+		updateBit(b.ip);
+	}
+
+	private void removeLease(Binding b) {
+		b.removed = true;
+		if (leaseByIp.get(b.ip) == b)
+			leaseByIp.remove(b.ip);
+		unlinkMac(b);
+		updateBit(b.ip);
+		writeRemove(b.lease.getIp());
+	}
+
+	private void unlinkMac(Binding b) {
+		if (leaseByMac.get(b.lease.getMac()) == b)
+			leaseByMac.remove(b.lease.getMac());
+	}
+
+	/**
+	 * Marks address as used if it is leased, offered or reserved.
+	 */
+	private void updateBit(int ip) {
+		Range r = findRange(ip);
+		if (r == null)
+			return;
+
+		int offset = (int) ((ip & 0xffffffffL) - r.from);
+		Binding lease = leaseByIp.get(ip);
+		boolean used = offerByIp.containsKey(ip) || reservations.containsKey(ip)
+				|| (lease != null && lease.state == LEASED);
+		r.used.set(offset, used);
+	}
+
+	private Range findRange(int ip) {
+		long n = ip & 0xffffffffL;
+		for (Range r : ranges)
+			if (r.from <= n && n < r.from + r.size)
+				return r;
+		return null;
+	}
+
+	private void writePut(DhcpIpLease lease) {
+		try {
+			journal.put(lease);
+			if (journal.getRecordCount() >= compactThreshold)
+				compact();
+		} catch (IOException e) {
+			logger.error("kraken dhcp: cannot write lease journal", e);
+		}
+	}
+
+	private void writeRemove(InetAddress ip) {
+		try {
+			journal.remove(ip);
+		} catch (IOException e) {
+			logger.error("kraken dhcp: cannot write lease journal", e);
+		}
+	}
+
+	private void compact() {
+		try {
+			journal.snapshot(getLeases());
+		} catch (IOException e) {
+			logger.error("kraken dhcp: cannot write lease snapshot", e);
+		}
+	}
+
+	private static int toInt(InetAddress ip) {
+		return ByteConverter.toInteger(ip.getAddress());
+	}
+
+	private static InetAddress toAddress(int ip) {
+		return IpConverter.toInetAddress(ip);
+	}
+
+	private static class Range {
+		private String name;
+		private long from;
+		private int size;
+		private BitSet used;
+		private int hint = 1;
+
+		public Range(String name, long from, long to) {
+			this.name = name;
+			this.from = from;
+			this.size = (int) Math.min(Integer.MAX_VALUE, to - from + 1);
+			this.used = new BitSet(size);
+		}
+
+		/**
+		 * Finds next free address after last allocation, so that recently
+		 * freed address is reused as late as possible. First address of range
+		 * is not offered.
+		 * 
+		 * @return offset of free address, or -1 if range is exhausted
+		 */
+		public int allocate() {
+			for (int pass = 0; pass < 2; pass++) {
+				int i = used.nextClearBit(pass == 0 ? hint : 1);
+				if (i < size) {
+					hint = i + 1;
+					return i;
+				}
+			}
+			return -1;
+		}
+	}
+
+	private static class Binding {
+		private DhcpIpLease lease;
+		private int ip;
+		private int state;
+		private long expire;
+		private boolean removed;
+
+		public Binding(DhcpIpLease lease, int ip, int state) {
+			this.lease = lease;
+			this.ip = ip;
+			this.state = state;
+			this.expire = lease.getExpire().getTime();
+		}
+	}
+
+	private static class WheelEntry {
+		private Binding binding;
+		private long expire;
+
+		public WheelEntry(Binding binding) {
+			this.binding = binding;
+			this.expire = binding.expire;
+		}
+	}
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright 2011 Future Systems
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.krakenapps.dhcp.server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.krakenapps.dhcp.MacAddress;
+import org.krakenapps.dhcp.model.DhcpIpLease;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append-only lease journal with snapshot. Every lease change is appended as
+ * one record, and snapshot replaces the journal when it grows. Each record
+ * sets the state of one address, so replaying journal over newer snapshot is
+ * harmless, and torn record at the tail is ignored.
+ */
+class DhcpLeaseJournal {
+	private static final int PUT = 1;
+	private static final int REMOVE = 2;
+	private static final int PURGE = 3;
+
+	private final Logger logger = LoggerFactory.getLogger(DhcpLeaseJournal.class.getName());
+	private File snapshotFile;
+	private File tempFile;
+	private File journalFile;
+	private FileOutputStream fos;
+	private DataOutputStream out;
+	private int recordCount;
+	private boolean sync;
+
+	public DhcpLeaseJournal(File dir) {
+		dir.mkdirs();
+		this.snapshotFile = new File(dir, "leases.snapshot");
+		this.tempFile = new File(dir, "leases.snapshot.tmp");
+		this.journalFile = new File(dir, "leases.journal");
+		this.sync = Boolean.getBoolean("kraken.dhcp.journal_sync");
+	}
+
+	public boolean exists() {
+		return snapshotFile.exists() || tempFile.exists() || journalFile.exists();
+	}
+
+	public int getRecordCount() {
+		return recordCount;
+	}
+
+	/**
+	 * @return leases of snapshot and journal, in replay order
+	 */
+	public List<DhcpIpLease> load() throws IOException {
+		Map<InetAddress, DhcpIpLease> leases = new LinkedHashMap<InetAddress, DhcpIpLease>();
+
+		// snapshot is renamed after temp file is completely written
+		if (snapshotFile.exists())
+			replay(snapshotFile, leases);
+		else if (tempFile.exists())
+			replay(tempFile, leases);
+
+		if (journalFile.exists())
+			replay(journalFile, leases);
+
+		return new ArrayList<DhcpIpLease>(leases.values());
+	}
+
+	private void replay(File f, Map<InetAddress, DhcpIpLease> leases) throws IOException {
+		DataInputStream is = new DataInputStream(new BufferedInputStream(new FileInputStream(f), 65536));
+		int count = 0;
+		try {
+			while (true) {
+				int op = is.read();
+				if (op < 0)
+					break;
+
+				if (op == PUT) {
+					DhcpIpLease lease = readLease(is);
+					leases.remove(lease.getIp());
+					leases.put(lease.getIp(), lease);
+				} else if (op == REMOVE) {
+					leases.remove(readAddress(is));
+				} else if (op == PURGE) {
+					leases.clear();
+				} else {
+					logger.warn("kraken dhcp: broken lease journal record at {}, file {}", count, f.getName());
+					break;
+				}
+				count++;
+			}
+		} catch (EOFException e) {
+			logger.warn("kraken dhcp: ignored incomplete lease journal record at {}, file {}", count, f.getName());
+		} catch (UTFDataFormatException e) {
+			logger.warn("kraken dhcp: ignored broken lease journal record at {}, file {}", count, f.getName());
+		} finally {
+			is.close();
+		}
+
+		logger.trace("kraken dhcp: replayed {} lease records from {}", count, f.getName());
+	}
+
+	public void put(DhcpIpLease lease) throws IOException {
+		DataOutputStream out = open();
+		out.write(PUT);
+		writeLease(out, lease);
+		commit();
+	}
+
+	public void remove(InetAddress ip) throws IOException {
+		DataOutputStream out = open();
+		out.write(REMOVE);
+		out.write(ip.getAddress());
+		commit();
+	}
+
+	public void purge() throws IOException {
+		DataOutputStream out = open();
+		out.write(PURGE);
+		commit();
+	}
+
+	/**
+	 * Writes all leases to new snapshot and truncates journal.
+	 */
+	public void snapshot(Collection<DhcpIpLease> leases) throws IOException {
+		FileOutputStream tfos = new FileOutputStream(tempFile);
+		try {
+			DataOutputStream tos = new DataOutputStream(new BufferedOutputStream(tfos, 65536));
+			for (DhcpIpLease lease : leases) {
+				tos.write(PUT);
+				writeLease(tos, lease);
+			}
+			tos.flush();
+			tfos.getFD().sync();
+		} finally {
+			tfos.close();
+		}
+
+		if (snapshotFile.exists() && !snapshotFile.delete())
+			throw new IOException("cannot delete old lease snapshot " + snapshotFile.getAbsolutePath());
+
+		if (!tempFile.renameTo(snapshotFile))
+			throw new IOException("cannot rename lease snapshot " + tempFile.getAbsolutePath());
+
+		close();
+		fos = new FileOutputStream(journalFile, false);
+		out = new DataOutputStream(new BufferedOutputStream(fos, 8192));
+		recordCount = 0;
+
+		logger.trace("kraken dhcp: lease snapshot written, {} leases", leases.size());
+	}
+
+	public void close() {
+		if (fos == null)
+			return;
+
+		try {
+			out.flush();
+			fos.close();
+		} catch (IOException e) {
+			logger.error("kraken dhcp: cannot close lease journal", e);
+		} finally {
+			fos = null;
+			out = null;
+		}
+	}
+
+	private DataOutputStream open() throws IOException {
+		if (fos == null) {
+			fos = new FileOutputStream(journalFile, true);
+			out = new DataOutputStream(new BufferedOutputStream(fos, 8192));
+		}
+		return out;
+	}
+
+	private void commit() throws IOException {
+		out.flush();
+		if (sync)
+			fos.getFD().sync();
+		recordCount++;
+	}
+
+	private static void writeLease(DataOutputStream out, DhcpIpLease lease) throws IOException {
+		out.write(lease.getIp().getAddress());
+		out.write(lease.getMac().getBytes());
+		out.writeUTF(lease.getGroupName());
+		out.writeBoolean(lease.getHostName() != null);
+		if (lease.getHostName() != null)
+			out.writeUTF(lease.getHostName());
+		out.writeLong(lease.getCreated().getTime());
+		out.writeLong(lease.getUpdated().getTime());
+		out.writeLong(lease.getExpire().getTime());
+	}
+
+	private static DhcpIpLease readLease(DataInputStream is) throws IOException {
+		InetAddress ip = readAddress(is);
+		byte[] mac = new byte[6];
+		is.readFully(mac);
+		String groupName = is.readUTF();
+		String hostName = is.readBoolean() ? is.readUTF() : null;
+		Date created = new Date(is.readLong());
+		Date updated = new Date(is.readLong());
+		Date expire = new Date(is.readLong());
+		return new DhcpIpLease(groupName, ip, new MacAddress(mac), hostName, expire, created, updated);
+	}
+
+	private static InetAddress readAddress(DataInputStream is) throws IOException {
+		byte[] b = new byte[4];
+		is.readFully(b);
+		return InetAddress.getByAddress(b);
+	}
+}
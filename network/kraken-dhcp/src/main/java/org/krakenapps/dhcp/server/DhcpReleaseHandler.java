@@ -17,7 +17,6 @@ package org.krakenapps.dhcp.server;
 
 import org.krakenapps.dhcp.DhcpMessage;
 import org.krakenapps.dhcp.MacAddress;
-import org.krakenapps.dhcp.model.DhcpIpLease;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -30,16 +29,8 @@ class DhcpReleaseHandler {
 	}
 
 	public void handle(DhcpMessage msg) {
-		DhcpIpLease lease = c.leaseMap.get(msg.getClientAddress());
-
-		if (lease == null)
-			return;
-
 		MacAddress mac = msg.getClientMac();
-		if (lease.getMac().equals(mac)) {
-			DhcpDatabase.removeIpLease(lease);
-			c.leaseMap.remove(msg.getClientAddress());
-
+		if (c.leases.release(mac, msg.getClientAddress(), System.currentTimeMillis())) {
 			String ip = msg.getClientAddress().getHostAddress();
 			logger.trace("kraken dhcp: released ip={}, mac={}", ip, mac);
 		}
@@ -17,8 +17,6 @@ package org.krakenapps.dhcp.server;
 
 import java.io.IOException;
 import java.net.InetAddress;
-import java.sql.SQLException;
-import java.util.Date;
 import java.util.List;
 
 import org.krakenapps.dhcp.DhcpMessage;
@@ -88,21 +86,7 @@ class DhcpRequestHandler {
 			return;
 		}
 
-		// check if already used
-		DhcpIpLease lease = c.leaseMap.get(requestedIp);
-		if (lease != null) {
-			handleWithOldLease(msg, requestedIp, lease);
-			return;
-		}
-
-		// check if offered to this client
-		DhcpIpLease offer = c.offerMap.get(requestedIp);
-		if (offer != null && !offer.getMac().equals(msg.getClientMac())) {
-			handleIpConflict(msg, requestedIp, offer, serverIp);
-			return;
-		}
-
-		lease(group, configs, msg, requestedIp, offer);
+		lease(configs, msg, requestedIp, serverIp);
 	}
 
 	private InetAddress getRequestedIp(DhcpMessage msg) {
@@ -118,80 +102,25 @@ class DhcpRequestHandler {
 		return requestedIp;
 	}
 
-	private void lease(DhcpIpGroup group, List<DhcpOptionConfig> configs, DhcpMessage msg, InetAddress requestedIp,
-			DhcpIpLease offer) throws IOException {
+	private void lease(List<DhcpOptionConfig> configs, DhcpMessage msg, InetAddress requestedIp, InetAddress serverIp)
+			throws IOException {
 		String hostName = DhcpOptions.getHostName(msg);
-		InetAddress serverIp = DhcpDatabase.getServerIdentifier(configs);
 		int leaseDuration = DhcpDatabase.getLeaseDuration(configs);
 
-		// no previous offer found
-		if (offer == null)
-			offer = new DhcpIpLease(group.getName(), requestedIp, msg.getClientMac(), hostName, leaseDuration);
+		// new lease, renewal, or replacement of expired lease
+		DhcpIpLease lease = c.leases.request(msg.getClientMac(), requestedIp, hostName, leaseDuration, System
+				.currentTimeMillis());
 
-		DhcpIpLease lease = offer;
-
-		try {
-			// Success!
-			DhcpDatabase.createIpLease(lease);
-
-			c.leaseMap.put(requestedIp, lease);
-
-			DhcpMessage m = DhcpMessageBuilder.newAck(msg, configs, requestedIp);
-			logger.info("kraken dhcp: sending ack [{}]", m);
+		if (lease == null) {
+			// already offered, leased or reserved to other client
+			DhcpMessage m = DhcpMessageBuilder.newNak(msg, serverIp);
+			logger.info("kraken dhcp: ip conflict, sending nack [{}]", m);
 			c.send(m);
-		} catch (RuntimeException e) {
-			// duplicated entry
-			if (e.getCause() instanceof SQLException) {
-				DhcpMessage m = DhcpMessageBuilder.newNak(msg, serverIp);
-				logger.info("kraken dhcp: ip conflict, sending nack [{}]", m);
-				c.send(m);
-			}
+			return;
 		}
-	}
-
-	private void handleIpConflict(DhcpMessage msg, InetAddress requestedIp, DhcpIpLease offer, InetAddress serverIp)
-			throws IOException {
-		logger.trace("kraken dhcp: request ip [{}] from [{}] is already offered to other client [{}]",
-				new Object[] { requestedIp, msg.getClientMac(), offer.getMac() });
 
-		DhcpMessage m = DhcpMessageBuilder.newNak(msg, serverIp);
-		logger.trace("kraken dhcp: already offered to others, sending nack [{}]", m);
+		DhcpMessage m = DhcpMessageBuilder.newAck(msg, configs, requestedIp);
+		logger.info("kraken dhcp: sending ack [{}]", m);
 		c.send(m);
 	}
-
-	private void handleWithOldLease(DhcpMessage msg, InetAddress requestedIp, DhcpIpLease lease) throws IOException {
-		DhcpIpGroup group = server.getIpGroup(requestedIp);
-		List<DhcpOptionConfig> configs = server.getGroupOptions(group.getName());
-		int leaseDuration = DhcpDatabase.getLeaseDuration(configs);
-		InetAddress serverIp = DhcpDatabase.getServerIdentifier(configs);
-
-		if (lease.getExpire().before(new Date())) {
-			// replace expired lease
-			lease.setMac(msg.getClientMac());
-			lease.setHostName(DhcpOptions.getHostName(msg));
-			lease.setCreated(new Date());
-			lease.setUpdated(new Date());
-			lease.setNewExpire(leaseDuration);
-			DhcpDatabase.updateIpLease(c.conn, lease);
-
-			c.send(DhcpMessageBuilder.newAck(msg, configs, requestedIp));
-
-			logger.trace("kraken dhcp: replaced expired ip [{}] with [{}]", requestedIp.getHostAddress(), msg
-					.getClientMac());
-		} else if (lease.getMac().equals(msg.getClientMac())) {
-			// extend expire
-			lease.setUpdated(new Date());
-			lease.setNewExpire(leaseDuration);
-			DhcpDatabase.updateIpLease(c.conn, lease);
-
-			c.send(DhcpMessageBuilder.newAck(msg, configs, requestedIp));
-
-			logger.trace("kraken dhcp: extend ip lease [{}] from owner [{}]", requestedIp, msg.getClientMac());
-		} else {
-			logger.trace("kraken dhcp: request ip [{}] from [{}] is already leased by other client [{}]",
-					new Object[] { requestedIp, msg.getClientMac(), lease.getMac() });
-
-			c.send(DhcpMessageBuilder.newNak(msg, serverIp));
-		}
-	}
 }
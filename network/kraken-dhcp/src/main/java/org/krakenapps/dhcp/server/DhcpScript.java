@@ -203,6 +203,15 @@ public class DhcpScript implements Script {
 		}
 	}
 
+	public void exportLeases(String[] args) {
+		try {
+			server.exportIpLeases();
+			context.println("exported");
+		} catch (Exception e) {
+			context.println(e.getMessage());
+		}
+	}
+
 	@ScriptUsage(description = "list all ip reservations", arguments = { @ScriptArgument(type = "string", name = "group name", description = "group name") })
 	public void reservations(String[] args) {
 		List<DhcpIpReservation> reservations = server.getIpReservations(args[0]);
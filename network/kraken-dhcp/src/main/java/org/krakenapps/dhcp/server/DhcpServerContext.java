@@ -32,7 +32,6 @@ import org.krakenapps.dhcp.DhcpMessage;
 import org.krakenapps.dhcp.DhcpMessageListener;
 import org.krakenapps.dhcp.MacAddress;
 import org.krakenapps.dhcp.model.DhcpFilter;
-import org.krakenapps.dhcp.model.DhcpIpLease;
 import org.krakenapps.dhcp.model.DhcpIpReservation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -47,14 +46,9 @@ class DhcpServerContext {
 	public CopyOnWriteArraySet<DhcpMessageListener> callbacks;
 
 	/**
-	 * offered ip address (can be timeout'd)
+	 * offered and leased ip addresses
 	 */
-	public ConcurrentMap<InetAddress, DhcpIpLease> offerMap;
-
-	/**
-	 * leased ip address map
-	 */
-	public ConcurrentMap<InetAddress, DhcpIpLease> leaseMap;
+	public DhcpLeaseEngine leases;
 
 	/**
 	 * reserved mac address mappings
@@ -77,16 +71,16 @@ class DhcpServerContext {
 	}
 
 	public DhcpServerContext() throws Exception {
-		offerMap = new ConcurrentHashMap<InetAddress, DhcpIpLease>();
-		leaseMap = new ConcurrentHashMap<InetAddress, DhcpIpLease>();
 		reserveMap = new ConcurrentHashMap<MacAddress, DhcpIpReservation>();
 		blockFilters = new ConcurrentHashMap<MacAddress, DhcpFilter>();
 		allowFilters = new ConcurrentHashMap<MacAddress, DhcpFilter>();
 		socket = new DatagramSocket(67);
 
 		System.setProperty("derby.system.home", System.getProperty("user.dir"));
-		new File(System.getProperty("kraken.data.dir"), "kraken-dhcp").mkdirs();
+		File dir = new File(System.getProperty("kraken.data.dir"), "kraken-dhcp");
+		dir.mkdirs();
 		conn = DhcpDatabase.newConnection();
+		leases = new DhcpLeaseEngine(new DhcpLeaseJournal(dir));
 	}
 
 	public DhcpMessage receive() throws IOException {
@@ -111,6 +105,9 @@ class DhcpServerContext {
 		if (socket != null)
 			socket.close();
 
+		if (leases != null)
+			leases.close();
+
 		try {
 			if (conn != null)
 				conn.close();
@@ -18,8 +18,10 @@ package org.krakenapps.dhcp.server;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.util.ArrayList;
-import java.util.Date;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.felix.ipojo.annotations.Component;
 import org.apache.felix.ipojo.annotations.Invalidate;
@@ -54,6 +56,13 @@ public class DhcpServerImpl implements DhcpServer, Runnable {
 	private DhcpInformHandler informHandler;
 	private DhcpReleaseHandler releaseHandler;
 
+	/**
+	 * cached ip groups and group options, packet handlers do not touch
+	 * database
+	 */
+	private volatile List<DhcpIpGroup> groups = new ArrayList<DhcpIpGroup>();
+	private ConcurrentMap<String, List<DhcpOptionConfig>> groupOptions = new ConcurrentHashMap<String, List<DhcpOptionConfig>>();
+
 	/**
 	 * listener thread stop indicator
 	 */
@@ -84,13 +93,11 @@ public class DhcpServerImpl implements DhcpServer, Runnable {
 		releaseHandler = new DhcpReleaseHandler(c);
 	}
 
-	private void loadDatabase() {
+	private void loadDatabase() throws IOException {
 		DhcpDatabase.checkSchema(c.conn);
 
-		for (DhcpIpGroup group : DhcpDatabase.getIpGroups(c.conn)) {
-			for (DhcpIpLease lease : DhcpDatabase.getIpLeases(group.getName()))
-				c.leaseMap.put(lease.getIp(), lease);
-
+		groups = DhcpDatabase.getIpGroups(c.conn);
+		for (DhcpIpGroup group : groups) {
 			for (DhcpIpReservation r : DhcpDatabase.getIpReservations(group.getName()))
 				c.reserveMap.put(r.getMac(), r);
 		}
@@ -100,6 +107,25 @@ public class DhcpServerImpl implements DhcpServer, Runnable {
 
 		for (DhcpFilter f : DhcpDatabase.getBlockFilters())
 			c.blockFilters.put(f.getMac(), f);
+
+		c.leases.setGroups(groups);
+		c.leases.setReservations(c.reserveMap.values());
+
+		// leases were stored in database before lease journal
+		long now = System.currentTimeMillis();
+		if (c.leases.hasJournal()) {
+			c.leases.load(now);
+		} else {
+			List<DhcpIpLease> leases = new ArrayList<DhcpIpLease>();
+			for (DhcpIpGroup group : groups)
+				leases.addAll(DhcpDatabase.getIpLeases(group.getName()));
+			c.leases.importLeases(leases, now);
+		}
+	}
+
+	private void reloadGroups() {
+		groups = DhcpDatabase.getIpGroups();
+		c.leases.setGroups(groups);
 	}
 
 	@Invalidate
@@ -164,9 +190,6 @@ public class DhcpServerImpl implements DhcpServer, Runnable {
 				logger.warn("kraken dhcp: maybe other server's message", msg);
 				break;
 			}
-
-			clearTimeout();
-
 		} catch (IOException e) {
 			logger.error("kraken dhcp: cannot handle msg - " + msg, e);
 		} catch (RuntimeException e) {
@@ -174,20 +197,9 @@ public class DhcpServerImpl implements DhcpServer, Runnable {
 		}
 	}
 
-	private void clearTimeout() {
-		for (InetAddress ip : c.offerMap.keySet()) {
-			DhcpIpLease offer = c.offerMap.get(ip);
-			long gap = new Date().getTime() - offer.getCreated().getTime();
-
-			// remind only under 60sec offers
-			if (gap > 60 * 1000)
-				c.offerMap.remove(ip);
-		}
-	}
-
 	@Override
 	public DhcpIpGroup getIpGroup(InetAddress ip) {
-		for (DhcpIpGroup g : getIpGroups()) {
+		for (DhcpIpGroup g : groups) {
 			long from = ByteConverter.toUnsignedInteger(g.getFrom().getAddress());
 			long to = ByteConverter.toUnsignedInteger(g.getTo().getAddress());
 			long n = ByteConverter.toUnsignedInteger(ip.getAddress());
@@ -201,17 +213,24 @@ public class DhcpServerImpl implements DhcpServer, Runnable {
 
 	@Override
 	public List<DhcpOptionConfig> getGroupOptions(String groupName) {
-		return DhcpDatabase.getGroupConfigs(groupName);
+		List<DhcpOptionConfig> configs = groupOptions.get(groupName);
+		if (configs == null) {
+			configs = Collections.unmodifiableList(DhcpDatabase.getGroupConfigs(groupName));
+			groupOptions.put(groupName, configs);
+		}
+		return configs;
 	}
 
 	@Override
 	public void createGroupOption(DhcpOptionConfig config) {
 		DhcpDatabase.createGroupConfig(config);
+		groupOptions.clear();
 	}
 
 	@Override
 	public void removeGroupOption(int id) {
 		DhcpDatabase.removeGroupConfig(id);
+		groupOptions.clear();
 	}
 
 	@Override
@@ -226,17 +245,17 @@ public class DhcpServerImpl implements DhcpServer, Runnable {
 
 	@Override
 	public List<DhcpIpGroup> getIpGroups() {
-		return DhcpDatabase.getIpGroups();
+		return new ArrayList<DhcpIpGroup>(groups);
 	}
 
 	@Override
 	public List<DhcpIpLease> getIpOffers() {
-		return new ArrayList<DhcpIpLease>(c.offerMap.values());
+		return c.leases.getOffers();
 	}
 
 	@Override
 	public List<DhcpIpLease> getIpLeases(String groupName) {
-		return DhcpDatabase.getIpLeases(groupName);
+		return c.leases.getLeases(groupName);
 	}
 
 	@Override
@@ -246,36 +265,50 @@ public class DhcpServerImpl implements DhcpServer, Runnable {
 
 	@Override
 	public void purgeIpLease() {
-		DhcpDatabase.purgeIpLease();
-		c.leaseMap.clear();
+		c.leases.purge();
 	}
 
 	@Override
 	public void purgeIpLease(InetAddress ip) {
-		DhcpDatabase.purgeIpLease(ip);
-		c.leaseMap.remove(ip);
+		c.leases.purge(ip);
+	}
+
+	@Override
+	public void exportIpLeases() {
+		DhcpDatabase.exportIpLeases(c.leases.getLeases());
 	}
 
 	@Override
 	public void createIpGroup(DhcpIpGroup group) {
 		DhcpDatabase.createIpGroup(group);
+		reloadGroups();
 	}
 
 	@Override
 	public void updateIpGroup(DhcpIpGroup group) {
 		DhcpDatabase.updateIpGroup(group);
+		reloadGroups();
 	}
 
 	@Override
 	public void removeIpGroup(String name) {
 		// TODO: check existence
 		DhcpDatabase.removeIpGroup(name);
+
+		for (DhcpIpReservation r : c.reserveMap.values())
+			if (r.getGroupName().equals(name))
+				c.reserveMap.remove(r.getMac());
+
+		groupOptions.remove(name);
+		c.leases.setReservations(c.reserveMap.values());
+		reloadGroups();
 	}
 
 	@Override
 	public void reserve(DhcpIpReservation entry) {
 		// in memory
 		c.reserveMap.put(entry.getMac(), entry);
+		c.leases.reserve(entry.getIp(), entry.getMac());
 
 		// persist
 		DhcpDatabase.createIpReservation(entry);
@@ -286,8 +319,11 @@ public class DhcpServerImpl implements DhcpServer, Runnable {
 		// persist
 		DhcpDatabase.removeIpReservation(entry);
 
-		// in memory
-		c.reserveMap.remove(entry.getMac());
+		// in memory, entry may not have mac
+		for (DhcpIpReservation r : c.reserveMap.values())
+			if (r.getIp().equals(entry.getIp()))
+				c.reserveMap.remove(r.getMac());
+		c.leases.unreserve(entry.getIp());
 	}
 
 	@Override
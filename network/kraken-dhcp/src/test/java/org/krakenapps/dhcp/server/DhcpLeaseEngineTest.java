@@ -0,0 +1,253 @@
+/*
+ * Copyright 2011 Future Systems
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.krakenapps.dhcp.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.krakenapps.dhcp.MacAddress;
+import org.krakenapps.dhcp.model.DhcpIpGroup;
+import org.krakenapps.dhcp.model.DhcpIpLease;
+import org.krakenapps.dhcp.model.DhcpIpReservation;
+
+public class DhcpLeaseEngineTest {
+	private File dir;
+	private long now;
+
+	@Before
+	public void setup() {
+		dir = new File(System.getProperty("java.io.tmpdir"), "kraken-dhcp-lease-" + System.nanoTime());
+		now = 1300000000000L;
+	}
+
+	@After
+	public void teardown() {
+		File[] files = dir.listFiles();
+		if (files != null)
+			for (File f : files)
+				f.delete();
+		dir.delete();
+	}
+
+	@Test
+	public void testOfferAndRequest() throws Exception {
+		DhcpLeaseEngine engine = newEngine("10.0.0.1", "10.0.0.100");
+		MacAddress mac1 = mac(1);
+		MacAddress mac2 = mac(2);
+
+		// first address of range is not offered
+		InetAddress ip1 = engine.offer(mac1, "host1", now);
+		assertEquals("10.0.0.2", ip1.getHostAddress());
+		assertEquals(ip1, engine.offer(mac1, "host1", now));
+		assertEquals(1, engine.getOffers().size());
+
+		InetAddress ip2 = engine.offer(mac2, "host2", now);
+		assertEquals("10.0.0.3", ip2.getHostAddress());
+
+		// offered to other client
+		assertNull(engine.request(mac2, ip1, "host2", 3600, now));
+
+		DhcpIpLease lease = engine.request(mac1, ip1, "host1", 3600, now);
+		assertNotNull(lease);
+		assertEquals("office", lease.getGroupName());
+		assertEquals(now + 3600 * 1000L, lease.getExpire().getTime());
+		assertEquals(1, engine.getOffers().size());
+
+		// leased to other client
+		assertNull(engine.request(mac2, ip1, "host2", 3600, now));
+
+		// renew
+		lease = engine.request(mac1, ip1, null, 3600, now + 1000);
+		assertEquals("host1", lease.getHostName());
+		assertEquals(now + 3601 * 1000L, lease.getExpire().getTime());
+		assertEquals(1, engine.getLeases("office").size());
+
+		// rebooting client gets its lease again
+		assertEquals(ip1, engine.offer(mac1, "host1", now + 2000));
+		engine.close();
+	}
+
+	@Test
+	public void testExpiry() throws Exception {
+		DhcpLeaseEngine engine = newEngine("10.0.0.1", "10.0.0.3");
+		MacAddress mac1 = mac(1);
+		MacAddress mac2 = mac(2);
+		MacAddress mac3 = mac(3);
+
+		InetAddress ip1 = engine.offer(mac1, null, now);
+		assertNotNull(engine.request(mac1, ip1, null, 10, now));
+		InetAddress ip2 = engine.offer(mac2, null, now);
+		assertNotNull(engine.request(mac2, ip2, null, 100, now));
+
+		// exhausted
+		assertNull(engine.offer(mac3, null, now));
+		assertEquals(0, engine.getFreeCount());
+
+		// first lease is expired
+		engine.expire(now + 12000);
+		assertEquals(1, engine.getFreeCount());
+
+		// returning client gets previous address
+		assertEquals(ip1, engine.offer(mac1, null, now + 12000));
+
+		// but offered address is not available to other client
+		assertNull(engine.offer(mac3, null, now + 12000));
+
+		// offer timeout
+		engine.expire(now + 80000);
+		assertEquals(0, engine.getOffers().size());
+		assertEquals(ip1, engine.offer(mac3, null, now + 80000));
+		assertNotNull(engine.request(mac3, ip1, null, 10, now + 80000));
+
+		// previous lease of mac1 is replaced
+		assertEquals(mac3, engine.getLease(ip1).getMac());
+		assertNull(engine.offer(mac1, null, now + 80000));
+		engine.close();
+	}
+
+	@Test
+	public void testReservation() throws Exception {
+		DhcpLeaseEngine engine = newEngine("10.0.0.1", "10.0.0.3");
+		InetAddress reserved = InetAddress.getByName("10.0.0.2");
+		engine.setReservations(Arrays.asList(new DhcpIpReservation("office", reserved, mac(9), "printer")));
+
+		assertEquals("10.0.0.3", engine.offer(mac(1), null, now).getHostAddress());
+		assertNull(engine.offer(mac(2), null, now));
+		assertNull(engine.request(mac(2), reserved, null, 3600, now));
+		assertNotNull(engine.request(mac(9), reserved, null, 3600, now));
+
+		engine.unreserve(reserved);
+		engine.purge(reserved);
+		assertEquals(reserved, engine.offer(mac(2), null, now));
+		engine.close();
+	}
+
+	@Test
+	public void testReleaseAndDecline() throws Exception {
+		DhcpLeaseEngine engine = newEngine("10.0.0.1", "10.0.0.100");
+		InetAddress ip1 = engine.offer(mac(1), null, now);
+		engine.request(mac(1), ip1, null, 3600, now);
+		InetAddress ip2 = engine.offer(mac(2), null, now);
+		engine.request(mac(2), ip2, null, 3600, now);
+
+		assertFalse(engine.release(mac(2), ip1, now));
+		assertTrue(engine.release(mac(1), ip1, now));
+		assertTrue(engine.decline(mac(2), ip2));
+		assertEquals(99, engine.getFreeCount());
+
+		// released lease is kept for the client
+		assertEquals(1, engine.getLeases("office").size());
+		assertEquals(ip1, engine.offer(mac(1), null, now));
+		engine.close();
+	}
+
+	@Test
+	public void testJournalRecovery() throws Exception {
+		DhcpLeaseEngine engine = newEngine("10.0.0.1", "10.0.0.100");
+		for (int i = 0; i < 10; i++) {
+			InetAddress ip = engine.offer(mac(i), "host" + i, now);
+			engine.request(mac(i), ip, "host" + i, 3600, now);
+		}
+		engine.release(mac(3), InetAddress.getByName("10.0.0.5"), now);
+		engine.decline(mac(4), InetAddress.getByName("10.0.0.6"));
+		engine.close();
+
+		// torn record at the tail
+		FileOutputStream os = new FileOutputStream(new File(dir, "leases.journal"), true);
+		os.write(new byte[] { 1, 10, 0 });
+		os.close();
+
+		engine = newEngine("10.0.0.1", "10.0.0.100");
+		assertTrue(engine.hasJournal());
+		engine.load(now + 1000);
+
+		assertEquals(9, engine.getLeases("office").size());
+		assertEquals(91, engine.getFreeCount());
+		assertEquals("host0", engine.getLease(InetAddress.getByName("10.0.0.2")).getHostName());
+		assertNull(engine.getLease(InetAddress.getByName("10.0.0.6")));
+		assertEquals(InetAddress.getByName("10.0.0.5"), engine.offer(mac(3), null, now + 1000));
+		engine.close();
+	}
+
+	@Test
+	public void testStorm() throws Exception {
+		System.setProperty("kraken.dhcp.journal_compact", "20000");
+		try {
+			int clients = 50000;
+			List<InetAddress> assigned = new ArrayList<InetAddress>(clients);
+
+			DhcpLeaseEngine engine = newEngine("10.1.0.1", "10.1.255.254");
+			long begin = System.currentTimeMillis();
+			for (int i = 0; i < clients; i++) {
+				InetAddress ip = engine.offer(mac(i), "host" + i, now);
+				assertNotNull(engine.request(mac(i), ip, "host" + i, 86400, now));
+				assigned.add(ip);
+			}
+			long elapsed = Math.max(1, System.currentTimeMillis() - begin);
+			System.out.println(String.format("dhcp storm: %d discover/request pairs/s", clients * 1000L / elapsed));
+			engine.close();
+
+			// power outage, every client comes back at once
+			engine = newEngine("10.1.0.1", "10.1.255.254");
+			begin = System.currentTimeMillis();
+			engine.load(now + 1000);
+			long loadElapsed = System.currentTimeMillis() - begin;
+
+			begin = System.currentTimeMillis();
+			for (int i = 0; i < clients; i++) {
+				InetAddress ip = engine.offer(mac(i), null, now + 1000);
+				assertEquals(assigned.get(i), ip);
+				assertNotNull(engine.request(mac(i), ip, null, 86400, now + 1000));
+			}
+			elapsed = Math.max(1, System.currentTimeMillis() - begin);
+			System.out.println(String.format("dhcp storm after restart: %d leases loaded in %d ms, %d pairs/s",
+					clients, loadElapsed, clients * 1000L / elapsed));
+
+			assertEquals(clients, engine.getLeases().size());
+			engine.close();
+		} finally {
+			System.clearProperty("kraken.dhcp.journal_compact");
+		}
+	}
+
+	private DhcpLeaseEngine newEngine(String from, String to) throws Exception {
+		DhcpIpGroup group = new DhcpIpGroup();
+		group.setName("office");
+		group.setFrom(InetAddress.getByName(from));
+		group.setTo(InetAddress.getByName(to));
+
+		DhcpLeaseEngine engine = new DhcpLeaseEngine(new DhcpLeaseJournal(dir));
+		engine.setGroups(Arrays.asList(group));
+		return engine;
+	}
+
+	private static MacAddress mac(int i) {
+		return new MacAddress(new byte[] { 0, 0x0c, 0x29, (byte) (i >> 16), (byte) (i >> 8), (byte) i });
+	}
+}
@@ -0,0 +1,619 @@
+/*
+ * Copyright 2009 NCHOVY
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.krakenapps.dns;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Asynchronous stub resolver. All queries are multiplexed on a single
+ * non-blocking datagram channel by transaction id, and one i/o thread receives
+ * responses and retransmits timed out queries to the next upstream server
+ * with exponential backoff. Identical in-flight queries are coalesced, and
+ * positive and negative responses are cached up to their ttl.
+ * 
+ * Truncated responses are returned as is, since tcp fallback is not
+ * supported.
+ */
+public class AsyncDnsResolver {
+	private static final int MAX_ID = 65536;
+	private static final int DNS_PORT = 53;
+
+	private final Logger logger = LoggerFactory.getLogger(AsyncDnsResolver.class.getName());
+	private List<InetSocketAddress> upstreams;
+	private int timeout = Integer.getInteger("kraken.dns.timeout", 1000);
+	private int retries = Integer.getInteger("kraken.dns.retries", 2);
+	private int maxInflight = Integer.getInteger("kraken.dns.max_inflight", 8192);
+	private int maxTtl = 86400;
+	private int negativeTtl = 300;
+	private int maxNegativeTtl = 3600;
+	private ResponseCache cache = new ResponseCache(Integer.getInteger("kraken.dns.cache_size", 100000));
+
+	private DatagramChannel channel;
+	private Selector selector;
+	private Thread thread;
+	private volatile boolean running;
+
+	// guarded by lock
+	private final Object lock = new Object();
+	private Query[] slots = new Query[MAX_ID];
+	private Map<String, Query> inflight = new HashMap<String, Query>();
+	private LinkedList<Query> waiting = new LinkedList<Query>();
+	private PriorityQueue<Query> deadlines = new PriorityQueue<Query>(1024, new DeadlineComparator());
+	private int inflightCount;
+	private Random random = new Random(new SecureRandom().nextLong());
+
+	private AtomicLong queryCount = new AtomicLong();
+	private AtomicLong cacheHits = new AtomicLong();
+	private AtomicLong sentCount = new AtomicLong();
+	private AtomicLong retransmits = new AtomicLong();
+	private AtomicLong timeouts = new AtomicLong();
+
+	public AsyncDnsResolver() {
+		this(getDefaultServers());
+	}
+
+	public AsyncDnsResolver(List<InetSocketAddress> upstreams) {
+		if (upstreams.isEmpty())
+			throw new IllegalArgumentException("upstream dns server is required");
+		this.upstreams = new ArrayList<InetSocketAddress>(upstreams);
+	}
+
+	/**
+	 * @return servers of kraken.dns.servers property (comma separated), or
+	 *         name servers of /etc/resolv.conf
+	 */
+	public static List<InetSocketAddress> getDefaultServers() {
+		List<InetSocketAddress> servers = new ArrayList<InetSocketAddress>();
+		String prop = System.getProperty("kraken.dns.servers");
+		if (prop != null) {
+			for (String s : prop.split(","))
+				if (!s.trim().isEmpty())
+					servers.add(new InetSocketAddress(s.trim(), DNS_PORT));
+			return servers;
+		}
+
+		File f = new File("/etc/resolv.conf");
+		if (f.exists()) {
+			BufferedReader br = null;
+			try {
+				br = new BufferedReader(new FileReader(f));
+				String line;
+				while ((line = br.readLine()) != null) {
+					String[] tokens = line.trim().split("\\s+");
+					if (tokens.length >= 2 && tokens[0].equals("nameserver"))
+						servers.add(new InetSocketAddress(tokens[1], DNS_PORT));
+				}
+			} catch (IOException e) {
+			} finally {
+				if (br != null) {
+					try {
+						br.close();
+					} catch (IOException e) {
+					}
+				}
+			}
+		}
+
+		if (servers.isEmpty())
+			servers.add(new InetSocketAddress("168.126.63.1", DNS_PORT));
+		return servers;
+	}
+
+	public List<InetSocketAddress> getUpstreams() {
+		return upstreams;
+	}
+
+	public int getTimeout() {
+		return timeout;
+	}
+
+	/**
+	 * @param timeout
+	 *            first retransmission timeout in milliseconds, doubled on
+	 *            each retry
+	 */
+	public void setTimeout(int timeout) {
+		this.timeout = timeout;
+	}
+
+	public int getRetries() {
+		return retries;
+	}
+
+	public void setRetries(int retries) {
+		this.retries = retries;
+	}
+
+	public int getMaxInflight() {
+		return maxInflight;
+	}
+
+	public void setMaxInflight(int maxInflight) {
+		this.maxInflight = Math.min(maxInflight, MAX_ID / 2);
+	}
+
+	public void setMaxTtl(int maxTtl) {
+		this.maxTtl = maxTtl;
+	}
+
+	/**
+	 * @param negativeTtl
+	 *            negative caching ttl if response has no SOA record
+	 */
+	public void setNegativeTtl(int negativeTtl) {
+		this.negativeTtl = negativeTtl;
+	}
+
+	public void start() throws IOException {
+		if (running)
+			return;
+
+		selector = Selector.open();
+		channel = DatagramChannel.open();
+		try {
+			channel.socket().setReceiveBufferSize(1024 * 1024);
+			channel.socket().bind(new InetSocketAddress(0));
+			channel.configureBlocking(false);
+			channel.register(selector, SelectionKey.OP_READ);
+		} catch (IOException e) {
+			channel.close();
+			selector.close();
+			throw e;
+		}
+
+		running = true;
+		thread = new Thread(new IoLoop(), "DNS Resolver");
+		thread.setDaemon(true);
+		thread.start();
+		logger.info("kraken dns: resolver started, upstreams {}", upstreams);
+	}
+
+	public void close() {
+		if (!running)
+			return;
+
+		running = false;
+		selector.wakeup();
+		try {
+			thread.join(5000);
+		} catch (InterruptedException e) {
+		}
+
+		try {
+			channel.close();
+			selector.close();
+		} catch (IOException e) {
+		}
+
+		// fail all pending queries
+		List<Query> pending;
+		synchronized (lock) {
+			pending = new ArrayList<Query>(inflight.values());
+		}
+
+		for (Query q : pending)
+			complete(q, null, new IOException("dns resolver is closed"));
+	}
+
+	public DnsFuture resolve(String name, int type) {
+		String n = name.toLowerCase();
+		if (n.endsWith("."))
+			n = n.substring(0, n.length() - 1);
+
+		DnsFuture future = new DnsFuture(n, type);
+		queryCount.incrementAndGet();
+		if (!running) {
+			future.fail(new IllegalStateException("dns resolver is not started"));
+			return future;
+		}
+
+		String key = type + " " + n;
+		DnsResponse cached = cache.get(key);
+		if (cached != null) {
+			cacheHits.incrementAndGet();
+			future.complete(cached);
+			return future;
+		}
+
+		Query q;
+		synchronized (lock) {
+			q = inflight.get(key);
+			if (q != null) {
+				q.futures.add(future);
+				return future;
+			}
+
+			q = new Query(n, type, key);
+			q.futures.add(future);
+			inflight.put(key, q);
+
+			if (inflightCount >= maxInflight) {
+				waiting.add(q);
+				return future;
+			}
+
+			assign(q);
+		}
+
+		send(q);
+		return future;
+	}
+
+	public DnsFuture resolve(String name, int type, DnsResponseCallback callback) {
+		DnsFuture future = resolve(name, type);
+		future.addCallback(callback);
+		return future;
+	}
+
+	/**
+	 * Queries PTR record of in-addr.arpa or ip6.arpa name
+	 */
+	public DnsFuture reverse(InetAddress ip) {
+		return resolve(getReverseName(ip), DnsRecord.PTR);
+	}
+
+	public static String getReverseName(InetAddress ip) {
+		byte[] b = ip.getAddress();
+		StringBuilder sb = new StringBuilder();
+		if (b.length == 4) {
+			for (int i = 3; i >= 0; i--)
+				sb.append(b[i] & 0xff).append('.');
+			sb.append("in-addr.arpa");
+		} else {
+			for (int i = b.length - 1; i >= 0; i--) {
+				sb.append(Character.forDigit(b[i] & 0xf, 16)).append('.');
+				sb.append(Character.forDigit((b[i] >> 4) & 0xf, 16)).append('.');
+			}
+			sb.append("ip6.arpa");
+		}
+		return sb.toString();
+	}
+
+	public int getInflightCount() {
+		synchronized (lock) {
+			return inflightCount;
+		}
+	}
+
+	public int getWaitingCount() {
+		synchronized (lock) {
+			return waiting.size();
+		}
+	}
+
+	public int getCacheSize() {
+		return cache.size();
+	}
+
+	public void clearCache() {
+		cache.clear();
+	}
+
+	public long getQueryCount() {
+		return queryCount.get();
+	}
+
+	public long getCacheHits() {
+		return cacheHits.get();
+	}
+
+	public long getSentCount() {
+		return sentCount.get();
+	}
+
+	public long getRetransmits() {
+		return retransmits.get();
+	}
+
+	public long getTimeouts() {
+		return timeouts.get();
+	}
+
+	// should be called in lock
+	private void assign(Query q) {
+		int id = random.nextInt(MAX_ID);
+		while (slots[id] != null)
+			id = (id + 1) & (MAX_ID - 1);
+
+		slots[id] = q;
+		q.id = id;
+		q.packet = DnsMessageCodec.encodeQuery(id, q.name, q.type);
+		q.deadline = System.currentTimeMillis() + timeout;
+		deadlines.add(q);
+		inflightCount++;
+	}
+
+	private void send(Query q) {
+		InetSocketAddress upstream;
+		synchronized (lock) {
+			upstream = upstreams.get((q.id + q.attempt) % upstreams.size());
+			if (!q.sentTo.contains(upstream))
+				q.sentTo.add(upstream);
+		}
+
+		try {
+			// datagram is dropped if socket buffer is full, and it will be
+			// retransmitted after timeout
+			channel.send(ByteBuffer.wrap(q.packet), upstream);
+			sentCount.incrementAndGet();
+		} catch (IOException e) {
+			logger.debug("kraken dns: cannot send query to " + upstream, e);
+		}
+	}
+
+	private void complete(Query q, DnsResponse response, Throwable cause) {
+		List<Query> next = new ArrayList<Query>();
+		synchronized (lock) {
+			if (q.done)
+				return;
+
+			q.done = true;
+			inflight.remove(q.key);
+			if (q.id >= 0) {
+				slots[q.id] = null;
+				inflightCount--;
+			} else {
+				waiting.remove(q);
+			}
+
+			while (!waiting.isEmpty() && inflightCount < maxInflight) {
+				Query w = waiting.removeFirst();
+				assign(w);
+				next.add(w);
+			}
+		}
+
+		if (response != null) {
+			cache.put(q.key, response);
+			for (DnsFuture f : q.futures)
+				f.complete(response);
+		} else {
+			for (DnsFuture f : q.futures)
+				f.fail(cause);
+		}
+
+		for (Query w : next)
+			send(w);
+	}
+
+	private void handle(SocketAddress from, ByteBuffer bb) {
+		if (bb.remaining() < 12)
+			return;
+
+		Query q;
+		synchronized (lock) {
+			q = slots[DnsMessageCodec.getTransactionId(bb)];
+
+			// late response of completed query, or spoofed response from
+			// server which was not asked for this query
+			if (q == null || !q.sentTo.contains(from))
+				return;
+		}
+
+		DnsResponse r = DnsMessageCodec.decodeResponse(bb);
+		if (r == null || r.getType() != q.type || !r.getName().equalsIgnoreCase(q.name))
+			return;
+
+		int rcode = r.getReplyCode();
+		if ((rcode == DnsResponse.SERVFAIL || rcode == DnsResponse.REFUSED) && q.attempt < retries
+				&& upstreams.size() > 1) {
+			// try next upstream at once, deadline is not changed
+			synchronized (lock) {
+				q.attempt++;
+			}
+			retransmits.incrementAndGet();
+			send(q);
+			return;
+		}
+
+		complete(q, r, null);
+	}
+
+	private void expire() {
+		List<Query> resend = new ArrayList<Query>();
+		List<Query> expired = new ArrayList<Query>();
+		long now = System.currentTimeMillis();
+
+		synchronized (lock) {
+			while (!deadlines.isEmpty() && deadlines.peek().deadline <= now) {
+				Query q = deadlines.poll();
+				if (q.done)
+					continue;
+
+				if (q.attempt < retries) {
+					q.attempt++;
+					q.deadline = now + ((long) timeout << q.attempt);
+					deadlines.add(q);
+					resend.add(q);
+				} else {
+					expired.add(q);
+				}
+			}
+		}
+
+		for (Query q : resend) {
+			retransmits.incrementAndGet();
+			send(q);
+		}
+
+		for (Query q : expired) {
+			timeouts.incrementAndGet();
+			complete(q, null, new SocketTimeoutException("dns query timeout: " + q.name));
+		}
+	}
+
+	private long getWaitTime() {
+		synchronized (lock) {
+			// new query deadline is not earlier than timeout
+			if (deadlines.isEmpty())
+				return Math.max(1, timeout);
+			return Math.max(1, deadlines.peek().deadline - System.currentTimeMillis());
+		}
+	}
+
+	private class IoLoop implements Runnable {
+		@Override
+		public void run() {
+			ByteBuffer bb = ByteBuffer.allocate(65536);
+			while (running) {
+				try {
+					selector.select(getWaitTime());
+					selector.selectedKeys().clear();
+
+					while (true) {
+						bb.clear();
+						SocketAddress from = channel.receive(bb);
+						if (from == null)
+							break;
+
+						bb.flip();
+						handle(from, bb);
+					}
+
+					expire();
+				} catch (Throwable t) {
+					if (running)
+						logger.error("kraken dns: resolver i/o error", t);
+				}
+			}
+		}
+	}
+
+	private class ResponseCache {
+		private final int capacity;
+		private final LinkedHashMap<String, CacheEntry> map;
+
+		public ResponseCache(final int capacity) {
+			this.capacity = capacity;
+			this.map = new LinkedHashMap<String, CacheEntry>(1024, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+					return size() > ResponseCache.this.capacity;
+				}
+			};
+		}
+
+		public synchronized DnsResponse get(String key) {
+			CacheEntry e = map.get(key);
+			if (e == null)
+				return null;
+
+			if (e.expire < System.currentTimeMillis()) {
+				map.remove(key);
+				return null;
+			}
+			return e.response;
+		}
+
+		public void put(String key, DnsResponse r) {
+			if (r.isTruncated())
+				return;
+
+			int rcode = r.getReplyCode();
+			if (rcode != DnsResponse.NOERROR && rcode != DnsResponse.NXDOMAIN)
+				return;
+
+			int ttl;
+			if (r.isNegative())
+				ttl = r.getNegativeTtl() >= 0 ? Math.min(r.getNegativeTtl(), maxNegativeTtl) : negativeTtl;
+			else
+				ttl = Math.min(r.getMinimumTtl(), maxTtl);
+
+			if (ttl <= 0 || capacity <= 0)
+				return;
+
+			CacheEntry e = new CacheEntry(r.toCached(), System.currentTimeMillis() + ttl * 1000L);
+			synchronized (this) {
+				map.put(key, e);
+			}
+		}
+
+		public synchronized int size() {
+			return map.size();
+		}
+
+		public synchronized void clear() {
+			map.clear();
+		}
+	}
+
+	private static class CacheEntry {
+		private DnsResponse response;
+		private long expire;
+
+		public CacheEntry(DnsResponse response, long expire) {
+			this.response = response;
+			this.expire = expire;
+		}
+	}
+
+	private static class Query {
+		private String name;
+		private int type;
+		private String key;
+		private int id = -1;
+		private int attempt;
+		private long deadline;
+		private byte[] packet;
+		private boolean done;
+		private List<DnsFuture> futures = new ArrayList<DnsFuture>(1);
+
+		// upstreams which received this query, guarded by lock
+		private List<InetSocketAddress> sentTo = new ArrayList<InetSocketAddress>(2);
+
+		public Query(String name, int type, String key) {
+			this.name = name;
+			this.type = type;
+			this.key = key;
+		}
+	}
+
+	private static class DeadlineComparator implements Comparator<Query> {
+		@Override
+		public int compare(Query o1, Query o2) {
+			if (o1.deadline == o2.deadline)
+				return 0;
+			return o1.deadline < o2.deadline ? -1 : 1;
+		}
+	}
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2009 NCHOVY
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.krakenapps.dns;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pending result of asynchronous dns query. Callbacks added after completion
+ * are invoked immediately by the calling thread.
+ */
+public class DnsFuture implements Future<DnsResponse> {
+	private final Logger logger = LoggerFactory.getLogger(DnsFuture.class.getName());
+	private final String name;
+	private final int type;
+	private final CountDownLatch latch = new CountDownLatch(1);
+	private List<DnsResponseCallback> callbacks = new ArrayList<DnsResponseCallback>(1);
+	private volatile DnsResponse response;
+	private volatile Throwable cause;
+
+	public DnsFuture(String name, int type) {
+		this.name = name;
+		this.type = type;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public int getType() {
+		return type;
+	}
+
+	public void addCallback(DnsResponseCallback callback) {
+		synchronized (this) {
+			if (callbacks != null) {
+				callbacks.add(callback);
+				return;
+			}
+		}
+
+		invoke(callback);
+	}
+
+	void complete(DnsResponse response) {
+		this.response = response;
+		done();
+	}
+
+	void fail(Throwable cause) {
+		this.cause = cause;
+		done();
+	}
+
+	private void done() {
+		List<DnsResponseCallback> l;
+		synchronized (this) {
+			if (callbacks == null)
+				return;
+
+			l = callbacks;
+			callbacks = null;
+		}
+
+		latch.countDown();
+		for (DnsResponseCallback callback : l)
+			invoke(callback);
+	}
+
+	private void invoke(DnsResponseCallback callback) {
+		try {
+			if (cause != null)
+				callback.onFailure(name, type, cause);
+			else
+				callback.onResponse(response);
+		} catch (Throwable t) {
+			logger.warn("kraken dns: callback should not throw any exception", t);
+		}
+	}
+
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		return false;
+	}
+
+	@Override
+	public boolean isCancelled() {
+		return false;
+	}
+
+	@Override
+	public boolean isDone() {
+		return latch.getCount() == 0;
+	}
+
+	@Override
+	public DnsResponse get() throws InterruptedException, ExecutionException {
+		latch.await();
+		return getResult();
+	}
+
+	@Override
+	public DnsResponse get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException,
+			TimeoutException {
+		if (!latch.await(timeout, unit))
+			throw new TimeoutException("dns query is not completed: " + name);
+		return getResult();
+	}
+
+	private DnsResponse getResult() throws ExecutionException {
+		if (cause != null)
+			throw new ExecutionException(cause);
+		return response;
+	}
+}
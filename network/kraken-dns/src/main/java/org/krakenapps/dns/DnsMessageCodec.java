@@ -0,0 +1,230 @@
+/*
+ * Copyright 2009 NCHOVY
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.krakenapps.dns;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Encodes single question query and decodes its response. Unlike the legacy
+ * reply decoder, names are decompressed by following any compression
+ * pointer, and records of unknown type are skipped by rdata length.
+ */
+public class DnsMessageCodec {
+	private static final int MAX_POINTERS = 64;
+
+	private DnsMessageCodec() {
+	}
+
+	public static byte[] encodeQuery(int id, String name, int type) {
+		ByteBuffer bb = ByteBuffer.allocate(18 + name.length());
+		bb.putShort((short) id);
+		bb.putShort((short) 0x0100); // recursion desired
+		bb.putShort((short) 1);
+		bb.putShort((short) 0);
+		bb.putShort((short) 0);
+		bb.putShort((short) 0);
+		encodeName(bb, name);
+		bb.putShort((short) type);
+		bb.putShort((short) 1); // IN
+		return bb.array();
+	}
+
+	public static void encodeName(ByteBuffer bb, String name) {
+		int begin = 0;
+		int end = name.length();
+		if (end > 0 && name.charAt(end - 1) == '.')
+			end--;
+
+		while (begin < end) {
+			int dot = name.indexOf('.', begin);
+			if (dot < 0 || dot > end)
+				dot = end;
+
+			int len = dot - begin;
+			if (len == 0 || len > 63)
+				throw new IllegalArgumentException("invalid dns name: " + name);
+
+			bb.put((byte) len);
+			for (int i = begin; i < dot; i++)
+				bb.put((byte) name.charAt(i));
+			begin = dot + 1;
+		}
+		bb.put((byte) 0);
+	}
+
+	public static int getTransactionId(ByteBuffer bb) {
+		return bb.getShort(bb.position()) & 0xffff;
+	}
+
+	/**
+	 * @return decoded response, or null if datagram is malformed
+	 */
+	public static DnsResponse decodeResponse(ByteBuffer bb) {
+		try {
+			int base = bb.position();
+			bb.getShort(); // id
+			int flags = bb.getShort() & 0xffff;
+			if ((flags & 0x8000) == 0)
+				return null;
+
+			int questions = bb.getShort() & 0xffff;
+			int answers = bb.getShort() & 0xffff;
+			int authorities = bb.getShort() & 0xffff;
+			bb.getShort(); // additional
+
+			if (questions != 1)
+				return null;
+
+			String name = decodeName(bb, base);
+			int type = bb.getShort() & 0xffff;
+			bb.getShort(); // class
+
+			List<DnsRecord> records = new ArrayList<DnsRecord>(answers);
+			for (int i = 0; i < answers; i++) {
+				DnsRecord r = decodeRecord(bb, base);
+				if (r != null)
+					records.add(r);
+			}
+
+			// negative caching ttl, RFC 2308
+			int negativeTtl = -1;
+			for (int i = 0; i < authorities; i++) {
+				int ttl = decodeSoaTtl(bb, base);
+				if (ttl >= 0)
+					negativeTtl = ttl;
+			}
+
+			DnsResponse response = new DnsResponse(name, type, flags & 0xf, records);
+			response.setTruncated((flags & 0x0200) != 0);
+			response.setNegativeTtl(negativeTtl);
+			return response;
+		} catch (BufferUnderflowException e) {
+			return null;
+		} catch (IndexOutOfBoundsException e) {
+			return null;
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+	}
+
+	private static DnsRecord decodeRecord(ByteBuffer bb, int base) {
+		String name = decodeName(bb, base);
+		int type = bb.getShort() & 0xffff;
+		bb.getShort(); // class
+		int ttl = bb.getInt();
+		int len = bb.getShort() & 0xffff;
+		int end = bb.position() + len;
+		if (end > bb.limit())
+			throw new BufferUnderflowException();
+
+		String data = null;
+		try {
+			switch (type) {
+			case DnsRecord.A:
+			case DnsRecord.AAAA:
+				byte[] b = new byte[len];
+				bb.get(b);
+				data = InetAddress.getByAddress(b).getHostAddress();
+				break;
+			case DnsRecord.CNAME:
+			case DnsRecord.NS:
+			case DnsRecord.PTR:
+				data = decodeName(bb, base);
+				break;
+			case DnsRecord.MX:
+				bb.getShort(); // preference
+				data = decodeName(bb, base);
+				break;
+			case DnsRecord.TXT:
+				StringBuilder sb = new StringBuilder();
+				while (bb.position() < end) {
+					int l = bb.get() & 0xff;
+					for (int i = 0; i < l; i++)
+						sb.append((char) (bb.get() & 0xff));
+				}
+				data = sb.toString();
+				break;
+			}
+		} catch (UnknownHostException e) {
+			data = null;
+		}
+
+		bb.position(end);
+		return data != null ? new DnsRecord(name, type, Math.max(0, ttl), data) : null;
+	}
+
+	private static int decodeSoaTtl(ByteBuffer bb, int base) {
+		decodeName(bb, base);
+		int type = bb.getShort() & 0xffff;
+		bb.getShort();
+		int ttl = bb.getInt();
+		int len = bb.getShort() & 0xffff;
+		int end = bb.position() + len;
+		if (end > bb.limit())
+			throw new BufferUnderflowException();
+
+		int result = -1;
+		if (type == DnsRecord.SOA) {
+			decodeName(bb, base); // mname
+			decodeName(bb, base); // rname
+			bb.position(bb.position() + 16); // serial, refresh, retry, expire
+			int minimum = bb.getInt();
+			result = Math.max(0, Math.min(ttl, minimum));
+		}
+
+		bb.position(end);
+		return result;
+	}
+
+	public static String decodeName(ByteBuffer bb, int base) {
+		StringBuilder sb = new StringBuilder();
+		int pos = bb.position();
+		int resume = -1;
+		int jumps = 0;
+
+		while (true) {
+			int len = bb.get(pos) & 0xff;
+			if ((len & 0xc0) == 0xc0) {
+				if (++jumps > MAX_POINTERS)
+					throw new IllegalArgumentException("dns name pointer loop");
+
+				int offset = ((len & 0x3f) << 8) | (bb.get(pos + 1) & 0xff);
+				if (resume < 0)
+					resume = pos + 2;
+				pos = base + offset;
+				continue;
+			}
+
+			pos++;
+			if (len == 0)
+				break;
+
+			if (sb.length() > 0)
+				sb.append('.');
+			for (int i = 0; i < len; i++)
+				sb.append((char) (bb.get(pos + i) & 0xff));
+			pos += len;
+		}
+
+		bb.position(resume >= 0 ? resume : pos);
+		return sb.toString();
+	}
+}
@@ -25,7 +25,7 @@ public class DnsQueryEncoder {
 
 	public static byte[] encode(DnsHeader header, DnsQuery query) {
 		ByteBuffer dnsBuffer = ByteBuffer.allocate(1000);
-		dnsBuffer.putShort((short) 2);
+		dnsBuffer.putShort(header.getTransactionId());
 		dnsBuffer.putShort(encodeFlags(header.getFlags()));
 		dnsBuffer.putShort(header.getQuestions());
 		dnsBuffer.putShort(header.getAnswerRRs());
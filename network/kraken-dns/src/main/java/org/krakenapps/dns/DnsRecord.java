@@ -0,0 +1,64 @@
+/*
+ * Copyright 2009 NCHOVY
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.krakenapps.dns;
+
+/**
+ * Resource record of dns response. Data is dotted address for A and AAAA,
+ * target name for CNAME, NS, PTR and MX, and concatenated text for TXT.
+ */
+public class DnsRecord {
+	public static final int A = 1;
+	public static final int NS = 2;
+	public static final int CNAME = 5;
+	public static final int SOA = 6;
+	public static final int PTR = 12;
+	public static final int MX = 15;
+	public static final int TXT = 16;
+	public static final int AAAA = 28;
+
+	private String name;
+	private int type;
+	private int ttl;
+	private String data;
+
+	public DnsRecord(String name, int type, int ttl, String data) {
+		this.name = name;
+		this.type = type;
+		this.ttl = ttl;
+		this.data = data;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public int getType() {
+		return type;
+	}
+
+	public int getTtl() {
+		return ttl;
+	}
+
+	public String getData() {
+		return data;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s, type %d, ttl %d, %s", name, type, ttl, data);
+	}
+}
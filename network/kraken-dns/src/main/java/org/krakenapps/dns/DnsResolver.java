@@ -3,7 +3,7 @@ package org.krakenapps.dns;
 import java.io.IOException;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
-import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
 import java.net.UnknownHostException;
@@ -19,8 +19,6 @@ public class DnsResolver {
 		A, NS, CNAME, SOA, PTR, HINFO, MX, AAAA
 	}
 
-	private static final int DNS_PORT = 53;
-
 	public DnsReply dig(String[] args) {
 		try {
 			String domainName = "www.google.com";
@@ -45,9 +43,10 @@ public class DnsResolver {
 			ByteBuffer replyByteBuffer = ByteBuffer.allocate(1000);
 
 			// sending packet in socket.
-			InetAddress address = InetAddress.getByAddress(new byte[] { (byte) 168, (byte) 126, (byte) 63, (byte) 1 });
+			InetSocketAddress server = AsyncDnsResolver.getDefaultServers().get(0);
 
-			DatagramPacket dnsQueryPacket = new DatagramPacket(buffer, buffer.length, address, DNS_PORT);
+			DatagramPacket dnsQueryPacket = new DatagramPacket(buffer, buffer.length, server.getAddress(),
+					server.getPort());
 			socket.send(dnsQueryPacket);
 
 			// packet received.
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2009 NCHOVY
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.krakenapps.dns;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Decoded answer of a single question. Negative response (NXDOMAIN or no
+ * answer of the queried type) has empty record list.
+ */
+public class DnsResponse {
+	public static final int NOERROR = 0;
+	public static final int SERVFAIL = 2;
+	public static final int NXDOMAIN = 3;
+	public static final int REFUSED = 5;
+
+	private String name;
+	private int type;
+	private int replyCode;
+	private boolean truncated;
+	private boolean cached;
+	private List<DnsRecord> records;
+
+	// negative caching ttl from SOA of authority section, -1 if absent
+	private int negativeTtl = -1;
+
+	public DnsResponse(String name, int type, int replyCode, List<DnsRecord> records) {
+		this.name = name;
+		this.type = type;
+		this.replyCode = replyCode;
+		this.records = Collections.unmodifiableList(records);
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public int getType() {
+		return type;
+	}
+
+	public int getReplyCode() {
+		return replyCode;
+	}
+
+	public boolean isNegative() {
+		return replyCode == NXDOMAIN || (replyCode == NOERROR && getRecords(type).isEmpty());
+	}
+
+	public boolean isTruncated() {
+		return truncated;
+	}
+
+	public void setTruncated(boolean truncated) {
+		this.truncated = truncated;
+	}
+
+	public boolean isCached() {
+		return cached;
+	}
+
+	DnsResponse toCached() {
+		DnsResponse r = new DnsResponse(name, type, replyCode, records);
+		r.truncated = truncated;
+		r.negativeTtl = negativeTtl;
+		r.cached = true;
+		return r;
+	}
+
+	public List<DnsRecord> getRecords() {
+		return records;
+	}
+
+	/**
+	 * @return records of the type, including records of CNAME chain
+	 */
+	public List<DnsRecord> getRecords(int type) {
+		List<DnsRecord> l = new ArrayList<DnsRecord>();
+		for (DnsRecord r : records)
+			if (r.getType() == type)
+				l.add(r);
+		return l;
+	}
+
+	public int getNegativeTtl() {
+		return negativeTtl;
+	}
+
+	public void setNegativeTtl(int negativeTtl) {
+		this.negativeTtl = negativeTtl;
+	}
+
+	/**
+	 * @return minimum ttl of answer records, or -1 if no records
+	 */
+	public int getMinimumTtl() {
+		int min = -1;
+		for (DnsRecord r : records)
+			if (min < 0 || r.getTtl() < min)
+				min = r.getTtl();
+		return min;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s, type %d, rcode %d, %d records%s", name, type, replyCode, records.size(),
+				cached ? " (cached)" : "");
+	}
+}
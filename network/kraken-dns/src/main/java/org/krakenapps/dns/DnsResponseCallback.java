@@ -0,0 +1,26 @@
+/*
+ * Copyright 2009 NCHOVY
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.krakenapps.dns;
+
+/**
+ * Completion callback of asynchronous dns query. Callbacks are invoked by the
+ * resolver i/o thread, and should not block.
+ */
+public interface DnsResponseCallback {
+	void onResponse(DnsResponse response);
+
+	void onFailure(String name, int type, Throwable cause);
+}
@@ -15,8 +15,12 @@
  */
 package org.krakenapps.dns;
 
+import java.net.InetAddress;
+
 import org.krakenapps.api.Script;
+import org.krakenapps.api.ScriptArgument;
 import org.krakenapps.api.ScriptContext;
+import org.krakenapps.api.ScriptUsage;
 
 /**
  * @author mindori
@@ -79,6 +83,46 @@ public class DnsScript implements Script {
 		}
 	}
 
+	@ScriptUsage(description = "resolve name using asynchronous resolver", arguments = {
+			@ScriptArgument(name = "name", type = "string", description = "domain name, or ip address for PTR query"),
+			@ScriptArgument(name = "type", type = "string", description = "A, NS, CNAME, PTR, MX, TXT or AAAA", optional = true) })
+	public void resolve(String[] args) {
+		AsyncDnsResolver resolver = new AsyncDnsResolver();
+		try {
+			resolver.start();
+
+			String type = args.length > 1 ? args[1].toUpperCase() : "A";
+			DnsFuture future = null;
+			if (type.equals("PTR"))
+				future = resolver.reverse(InetAddress.getByName(args[0]));
+			else
+				future = resolver.resolve(args[0], getRecordType(type));
+
+			DnsResponse response = future.get();
+			context.println(response.toString());
+			for (DnsRecord record : response.getRecords())
+				context.println("\t" + record.toString());
+		} catch (Exception e) {
+			context.println("cannot resolve " + args[0] + ": " + e.getMessage());
+		} finally {
+			resolver.close();
+		}
+	}
+
+	private int getRecordType(String type) {
+		if (type.equals("NS"))
+			return DnsRecord.NS;
+		else if (type.equals("CNAME"))
+			return DnsRecord.CNAME;
+		else if (type.equals("MX"))
+			return DnsRecord.MX;
+		else if (type.equals("TXT"))
+			return DnsRecord.TXT;
+		else if (type.equals("AAAA"))
+			return DnsRecord.AAAA;
+		return DnsRecord.A;
+	}
+
 	private String getAnswer(DnsAnswer answer) {
 		return String.format("\tName: %s\r\n" + "\tType: %d\r\n" + "\tClass: 0x%x\r\n" + "\tTime to live: %d\r\n"
 				+ "\tData length: %d\r\n" + "\tPrimary name server: %s\r\n" + "\tMail Exchange: %s\r\n", answer
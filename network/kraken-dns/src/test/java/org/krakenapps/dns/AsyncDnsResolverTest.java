@@ -0,0 +1,290 @@
+/*
+ * Copyright 2009 NCHOVY
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.krakenapps.dns;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AsyncDnsResolverTest {
+	private StubDnsServer server;
+	private AsyncDnsResolver resolver;
+
+	@Before
+	public void setup() throws Exception {
+		server = new StubDnsServer();
+		server.put("www.krakenapps.org", "10.0.0.1");
+		server.put("4.3.2.1.in-addr.arpa", "host.krakenapps.org");
+		for (int i = 0; i < 20000; i++)
+			server.put("host" + i + ".bench", "10.1." + (i >> 8) + "." + (i & 0xff));
+		server.start();
+
+		resolver = new AsyncDnsResolver(Arrays.asList(server.getAddress()));
+		resolver.setTimeout(200);
+		resolver.start();
+	}
+
+	@After
+	public void teardown() throws Exception {
+		resolver.close();
+		server.stop();
+	}
+
+	@Test
+	public void testResolve() throws Exception {
+		DnsResponse r = resolver.resolve("www.krakenapps.org", DnsRecord.A).get(5, TimeUnit.SECONDS);
+		assertEquals(DnsResponse.NOERROR, r.getReplyCode());
+		assertFalse(r.isCached());
+		assertEquals(1, r.getRecords(DnsRecord.A).size());
+		assertEquals("10.0.0.1", r.getRecords(DnsRecord.A).get(0).getData());
+		assertEquals(300, r.getMinimumTtl());
+
+		// second query is answered from cache
+		r = resolver.resolve("WWW.krakenapps.org.", DnsRecord.A).get(5, TimeUnit.SECONDS);
+		assertTrue(r.isCached());
+		assertEquals("10.0.0.1", r.getRecords(DnsRecord.A).get(0).getData());
+		assertEquals(1, server.getReceived());
+		assertEquals(1, resolver.getCacheHits());
+	}
+
+	@Test
+	public void testReverse() throws Exception {
+		DnsResponse r = resolver.reverse(InetAddress.getByName("1.2.3.4")).get(5, TimeUnit.SECONDS);
+		assertEquals("host.krakenapps.org", r.getRecords(DnsRecord.PTR).get(0).getData());
+		assertEquals("4.3.2.1.in-addr.arpa", AsyncDnsResolver.getReverseName(InetAddress.getByName("1.2.3.4")));
+	}
+
+	@Test
+	public void testNegativeCache() throws Exception {
+		DnsResponse r = resolver.resolve("unknown.krakenapps.org", DnsRecord.A).get(5, TimeUnit.SECONDS);
+		assertEquals(DnsResponse.NXDOMAIN, r.getReplyCode());
+		assertTrue(r.isNegative());
+		assertEquals(60, r.getNegativeTtl());
+
+		r = resolver.resolve("unknown.krakenapps.org", DnsRecord.A).get(5, TimeUnit.SECONDS);
+		assertTrue(r.isCached());
+		assertEquals(1, server.getReceived());
+	}
+
+	@Test
+	public void testCoalesce() throws Exception {
+		server.setDelay(100);
+		List<DnsFuture> futures = new ArrayList<DnsFuture>();
+		for (int i = 0; i < 10; i++)
+			futures.add(resolver.resolve("www.krakenapps.org", DnsRecord.A));
+
+		for (DnsFuture f : futures)
+			assertEquals("10.0.0.1", f.get(5, TimeUnit.SECONDS).getRecords(DnsRecord.A).get(0).getData());
+
+		assertEquals(1, server.getReceived());
+	}
+
+	@Test
+	public void testRetransmit() throws Exception {
+		server.setDropCount(1);
+		DnsResponse r = resolver.resolve("www.krakenapps.org", DnsRecord.A).get(5, TimeUnit.SECONDS);
+		assertEquals("10.0.0.1", r.getRecords(DnsRecord.A).get(0).getData());
+		assertEquals(2, server.getReceived());
+		assertEquals(1, resolver.getRetransmits());
+	}
+
+	@Test
+	public void testTimeout() throws Exception {
+		server.setDropCount(Integer.MAX_VALUE);
+		resolver.setRetries(1);
+		DnsFuture f = resolver.resolve("www.krakenapps.org", DnsRecord.A);
+		try {
+			f.get(5, TimeUnit.SECONDS);
+			fail();
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof SocketTimeoutException);
+		}
+
+		assertEquals(2, server.getReceived());
+		assertEquals(1, resolver.getTimeouts());
+		assertEquals(0, resolver.getInflightCount());
+	}
+
+	@Test
+	public void testFailover() throws Exception {
+		StubDnsServer broken = new StubDnsServer();
+		broken.setServerFailure(true);
+		broken.start();
+
+		AsyncDnsResolver r = new AsyncDnsResolver(Arrays.asList(broken.getAddress(), server.getAddress()));
+		r.start();
+		try {
+			// every query hits good server within one retry
+			for (int i = 0; i < 10; i++) {
+				DnsResponse resp = r.resolve("host" + i + ".bench", DnsRecord.A).get(5, TimeUnit.SECONDS);
+				assertEquals(DnsResponse.NOERROR, resp.getReplyCode());
+			}
+			assertEquals(10, r.getCacheSize());
+		} finally {
+			r.close();
+			broken.stop();
+		}
+	}
+
+	@Test
+	public void testIgnoreResponseFromOtherUpstream() throws Exception {
+		StubDnsServer forged = new StubDnsServer();
+		forged.put("www.krakenapps.org", "6.6.6.6");
+
+		DatagramSocket a = new DatagramSocket(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0));
+		DatagramSocket b = new DatagramSocket(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0));
+		AsyncDnsResolver r = new AsyncDnsResolver(Arrays.asList((InetSocketAddress) a.getLocalSocketAddress(),
+				(InetSocketAddress) b.getLocalSocketAddress()));
+		r.setTimeout(5000);
+		r.start();
+		try {
+			DnsFuture f = r.resolve("www.krakenapps.org", DnsRecord.A);
+
+			// query goes to one of upstreams
+			DatagramPacket p = receive(a);
+			DatagramSocket asked = a;
+			DatagramSocket other = b;
+			if (p == null) {
+				p = receive(b);
+				asked = b;
+				other = a;
+			}
+			assertNotNull(p);
+
+			// same transaction id from upstream which was not asked
+			byte[] spoofed = forged.answer(ByteBuffer.wrap(p.getData(), 0, p.getLength()));
+			other.send(new DatagramPacket(spoofed, spoofed.length, p.getSocketAddress()));
+			Thread.sleep(200);
+			assertFalse(f.isDone());
+
+			byte[] reply = server.answer(ByteBuffer.wrap(p.getData(), 0, p.getLength()));
+			asked.send(new DatagramPacket(reply, reply.length, p.getSocketAddress()));
+			assertEquals("10.0.0.1", f.get(5, TimeUnit.SECONDS).getRecords(DnsRecord.A).get(0).getData());
+		} finally {
+			r.close();
+			a.close();
+			b.close();
+		}
+	}
+
+	private DatagramPacket receive(DatagramSocket s) throws IOException {
+		s.setSoTimeout(500);
+		DatagramPacket p = new DatagramPacket(new byte[512], 512);
+		try {
+			s.receive(p);
+			return p;
+		} catch (SocketTimeoutException e) {
+			return null;
+		}
+	}
+
+	@Test
+	public void testCallback() throws Exception {
+		final CountDownLatch latch = new CountDownLatch(1);
+		final AtomicInteger found = new AtomicInteger();
+		resolver.resolve("www.krakenapps.org", DnsRecord.A, new DnsResponseCallback() {
+			@Override
+			public void onResponse(DnsResponse response) {
+				found.set(response.getRecords().size());
+				latch.countDown();
+			}
+
+			@Override
+			public void onFailure(String name, int type, Throwable cause) {
+				latch.countDown();
+			}
+		});
+
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+		assertEquals(1, found.get());
+	}
+
+	@Test
+	public void testThroughput() throws Exception {
+		int count = 20000;
+
+		// blocking socket per query like DnsResolver.dig
+		int blockingCount = 2000;
+		long begin = System.currentTimeMillis();
+		for (int i = 0; i < blockingCount; i++) {
+			DatagramSocket s = new DatagramSocket();
+			try {
+				s.setSoTimeout(1000);
+				byte[] query = DnsMessageCodec.encodeQuery(i, "host" + i + ".bench", DnsRecord.A);
+				s.send(new DatagramPacket(query, query.length, server.getAddress()));
+				DatagramPacket p = new DatagramPacket(new byte[512], 512);
+				s.receive(p);
+				assertEquals(1, DnsMessageCodec.decodeResponse(ByteBuffer.wrap(p.getData(), 0, p.getLength()))
+						.getRecords().size());
+			} finally {
+				s.close();
+			}
+		}
+		long elapsed = Math.max(1, System.currentTimeMillis() - begin);
+		System.out.println(String.format("blocking dns: %d queries/s", blockingCount * 1000L / elapsed));
+
+		// pipelined queries on one channel
+		resolver.setTimeout(1000);
+		resolver.setRetries(3);
+		// single threaded stub server drops queries beyond its socket buffer
+		resolver.setMaxInflight(512);
+		final CountDownLatch latch = new CountDownLatch(count);
+		final AtomicInteger failures = new AtomicInteger();
+		DnsResponseCallback callback = new DnsResponseCallback() {
+			@Override
+			public void onResponse(DnsResponse response) {
+				latch.countDown();
+			}
+
+			@Override
+			public void onFailure(String name, int type, Throwable cause) {
+				failures.incrementAndGet();
+				latch.countDown();
+			}
+		};
+
+		begin = System.currentTimeMillis();
+		for (int i = 0; i < count; i++)
+			resolver.resolve("host" + i + ".bench", DnsRecord.A, callback);
+
+		assertTrue(latch.await(60, TimeUnit.SECONDS));
+		elapsed = Math.max(1, System.currentTimeMillis() - begin);
+		assertEquals(0, failures.get());
+		System.out.println(String.format("async dns: %d queries/s, %d retransmits", count * 1000L / elapsed,
+				resolver.getRetransmits()));
+	}
+}
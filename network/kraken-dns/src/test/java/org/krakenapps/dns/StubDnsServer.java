@@ -0,0 +1,170 @@
+/*
+ * Copyright 2009 NCHOVY
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.krakenapps.dns;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Local dns server for resolver tests. Answers A and PTR queries from static
+ * zone, returns NXDOMAIN with SOA for unknown names, and can drop or fail
+ * queries to simulate packet loss and broken upstream.
+ */
+public class StubDnsServer implements Runnable {
+	private DatagramSocket socket;
+	private Thread thread;
+	private volatile boolean running;
+	private ConcurrentMap<String, String> zone = new ConcurrentHashMap<String, String>();
+	private AtomicInteger received = new AtomicInteger();
+	private volatile int dropCount;
+	private volatile boolean serverFailure;
+	private volatile int delay;
+	private int ttl = 300;
+
+	public void start() throws IOException {
+		socket = new DatagramSocket(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0));
+		socket.setReceiveBufferSize(1024 * 1024);
+		running = true;
+		thread = new Thread(this, "Stub DNS Server");
+		thread.start();
+	}
+
+	public void stop() throws InterruptedException {
+		running = false;
+		socket.close();
+		thread.join();
+	}
+
+	public InetSocketAddress getAddress() {
+		return (InetSocketAddress) socket.getLocalSocketAddress();
+	}
+
+	public void put(String name, String data) {
+		zone.put(name, data);
+	}
+
+	public int getReceived() {
+		return received.get();
+	}
+
+	/**
+	 * @param dropCount
+	 *            number of next queries to ignore
+	 */
+	public void setDropCount(int dropCount) {
+		this.dropCount = dropCount;
+	}
+
+	public void setServerFailure(boolean serverFailure) {
+		this.serverFailure = serverFailure;
+	}
+
+	public void setDelay(int delay) {
+		this.delay = delay;
+	}
+
+	@Override
+	public void run() {
+		byte[] buf = new byte[512];
+		while (running) {
+			try {
+				DatagramPacket p = new DatagramPacket(buf, buf.length);
+				socket.receive(p);
+				received.incrementAndGet();
+
+				if (dropCount > 0) {
+					dropCount--;
+					continue;
+				}
+
+				if (delay > 0)
+					Thread.sleep(delay);
+
+				byte[] reply = answer(ByteBuffer.wrap(buf, 0, p.getLength()));
+				socket.send(new DatagramPacket(reply, reply.length, p.getSocketAddress()));
+			} catch (IOException e) {
+			} catch (InterruptedException e) {
+			}
+		}
+	}
+
+	byte[] answer(ByteBuffer req) {
+		int id = req.getShort() & 0xffff;
+		req.position(12);
+		String name = DnsMessageCodec.decodeName(req, 0);
+		int type = req.getShort() & 0xffff;
+
+		String data = zone.get(name);
+		int rcode = serverFailure ? DnsResponse.SERVFAIL : (data == null ? DnsResponse.NXDOMAIN : 0);
+
+		ByteBuffer bb = ByteBuffer.allocate(512);
+		bb.putShort((short) id);
+		bb.putShort((short) (0x8180 | rcode));
+		bb.putShort((short) 1);
+		bb.putShort((short) (rcode == 0 ? 1 : 0));
+		bb.putShort((short) (rcode == DnsResponse.NXDOMAIN ? 1 : 0));
+		bb.putShort((short) 0);
+
+		// question
+		DnsMessageCodec.encodeName(bb, name);
+		bb.putShort((short) type);
+		bb.putShort((short) 1);
+
+		if (rcode == 0) {
+			bb.putShort((short) 0xc00c); // pointer to question name
+			bb.putShort((short) type);
+			bb.putShort((short) 1);
+			bb.putInt(ttl);
+			if (type == DnsRecord.PTR) {
+				ByteBuffer rdata = ByteBuffer.allocate(256);
+				DnsMessageCodec.encodeName(rdata, data);
+				bb.putShort((short) rdata.position());
+				bb.put(rdata.array(), 0, rdata.position());
+			} else {
+				bb.putShort((short) 4);
+				for (String s : data.split("\\."))
+					bb.put((byte) Integer.parseInt(s));
+			}
+		} else if (rcode == DnsResponse.NXDOMAIN) {
+			// SOA of root with minimum 60
+			bb.put((byte) 0);
+			bb.putShort((short) DnsRecord.SOA);
+			bb.putShort((short) 1);
+			bb.putInt(3600);
+			ByteBuffer rdata = ByteBuffer.allocate(256);
+			DnsMessageCodec.encodeName(rdata, "ns.stub");
+			DnsMessageCodec.encodeName(rdata, "admin.stub");
+			rdata.putInt(1);
+			rdata.putInt(3600);
+			rdata.putInt(600);
+			rdata.putInt(86400);
+			rdata.putInt(60);
+			bb.putShort((short) rdata.position());
+			bb.put(rdata.array(), 0, rdata.position());
+		}
+
+		byte[] b = new byte[bb.position()];
+		System.arraycopy(bb.array(), 0, b, 0, b.length);
+		return b;
+	}
+}
@@ -49,6 +49,17 @@ public class BundleResourceServlet extends ResourceServlet {
 		}
 	}
 
+	@Override
+	protected String getCacheKey(HttpServletRequest req) {
+		// last modified is changed when bundle is updated
+		return "bundle/" + bundle.getBundleId() + "/" + bundle.getLastModified() + ":" + basePath + req.getPathInfo();
+	}
+
+	@Override
+	protected long getResourceLastModified(HttpServletRequest req) {
+		return bundle.getLastModified();
+	}
+
 	@Override
 	public String toString() {
 		return bundle.getEntry("/").toString();
@@ -45,6 +45,11 @@ public class FileResourceServlet extends ResourceServlet {
 		}
 	}
 
+	@Override
+	protected File getFile(HttpServletRequest req) {
+		return new File(basePath, req.getPathInfo());
+	}
+
 	@Override
 	public String toString() {
 		return String.format("filesystem resource: %s", basePath);
@@ -15,8 +15,15 @@
  */
 package org.krakenapps.httpd;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
@@ -24,15 +31,43 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.krakenapps.httpd.impl.Request;
+import org.krakenapps.httpd.impl.ResourceCache;
+import org.krakenapps.httpd.impl.Response;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public abstract class ResourceServlet extends HttpServlet {
 	private static final long serialVersionUID = 1L;
+	private static final String HTTP_DATE_FORMAT = "EEE, dd MMM yyyy HH:mm:ss zzz";
 	private final Logger logger = LoggerFactory.getLogger(ResourceServlet.class.getName());
 
 	protected abstract InputStream getInputStream(HttpServletRequest req);
 
+	/**
+	 * Returns the file of requested resource if resource is backed by
+	 * filesystem. File resources are sent using zero-copy file transfer.
+	 */
+	protected File getFile(HttpServletRequest req) {
+		return null;
+	}
+
+	/**
+	 * Returns the in-memory cache key of requested resource, or null if
+	 * resource should not be cached. Key should be changed when resource
+	 * content is changed.
+	 */
+	protected String getCacheKey(HttpServletRequest req) {
+		return null;
+	}
+
+	/**
+	 * Returns last modified time of requested resource in milliseconds, or -1
+	 * if unknown.
+	 */
+	protected long getResourceLastModified(HttpServletRequest req) {
+		return -1;
+	}
+
 	@Override
 	protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
 		logger.trace("kraken httpd: httpd session [{}]", req.getSession().getId());
@@ -43,6 +78,11 @@ public abstract class ResourceServlet extends HttpServlet {
 			if (pathInfo.endsWith("/"))
 				((Request) req).setPathInfo(pathInfo + "index.html");
 		}
+
+		// HEAD request is wrapped by servlet api, and goes to stream path
+		if (resp instanceof Response && sendStatic(req, (Response) resp))
+			return;
+
 		InputStream is = getInputStream(req);
 
 		if (is == null || is.available() == 0) {
@@ -76,6 +116,242 @@ public abstract class ResourceServlet extends HttpServlet {
 		}
 	}
 
+	/**
+	 * Sends file or cached resource with conditional get and range support.
+	 * 
+	 * @return false if resource cannot be served from file or cache
+	 */
+	private boolean sendStatic(HttpServletRequest req, Response resp) throws IOException {
+		ResourceCache cache = ResourceCache.getInstance();
+		String mimeType = getMimeType(req.getPathInfo());
+
+		File file = getFile(req);
+		if (file != null && file.isFile()) {
+			long length = file.length();
+			long lastModified = file.lastModified();
+			String etag = Long.toHexString(lastModified) + "-" + Long.toHexString(length);
+
+			setCacheHeaders(resp, mimeType, etag, lastModified);
+			if (isNotModified(req, etag, lastModified)) {
+				cache.countNotModified();
+				sendNotModified(resp);
+				return true;
+			}
+
+			long[] range = getRange(req, resp, etag, lastModified, length);
+			if (range == null)
+				return true;
+
+			cache.countFileTransfer();
+			resp.sendFile(file, range[0], range[1]);
+			return true;
+		}
+
+		String key = getCacheKey(req);
+		if (key == null)
+			return false;
+
+		ResourceCache.Entry entry = cache.get(key);
+		if (entry == null) {
+			InputStream is = getInputStream(req);
+			if (is == null)
+				return false;
+
+			byte[] content = null;
+			try {
+				content = readAll(is);
+			} finally {
+				is.close();
+			}
+
+			// empty stream means directory or missing resource
+			if (content.length == 0)
+				return false;
+
+			entry = cache.put(key, content, getResourceLastModified(req), isCompressible(mimeType));
+		}
+
+		setCacheHeaders(resp, mimeType, entry.getEtag(), entry.getLastModified());
+		if (isNotModified(req, entry.getEtag(), entry.getLastModified())) {
+			cache.countNotModified();
+			sendNotModified(resp);
+			return true;
+		}
+
+		byte[] content = entry.getContent();
+		if (req.getHeader("Range") == null && entry.getGzipped() != null) {
+			resp.setHeader("Vary", "Accept-Encoding");
+			if (acceptsGzip(req)) {
+				cache.countGzipResponse();
+				resp.setHeader("Content-Encoding", "gzip");
+				resp.setHeader("ETag", "\"" + entry.getEtag() + "-gz\"");
+				resp.sendContent(entry.getGzipped(), 0, entry.getGzipped().length);
+				return true;
+			}
+		}
+
+		long[] range = getRange(req, resp, entry.getEtag(), entry.getLastModified(), content.length);
+		if (range == null)
+			return true;
+
+		resp.sendContent(content, (int) range[0], (int) range[1]);
+		return true;
+	}
+
+	private void setCacheHeaders(HttpServletResponse resp, String mimeType, String etag, long lastModified) {
+		resp.setContentType(mimeType);
+		resp.setHeader("Accept-Ranges", "bytes");
+		resp.setHeader("ETag", "\"" + etag + "\"");
+		if (lastModified > 0)
+			resp.setHeader("Last-Modified", formatDate(lastModified));
+	}
+
+	private boolean isNotModified(HttpServletRequest req, String etag, long lastModified) {
+		String ifNoneMatch = req.getHeader("If-None-Match");
+		if (ifNoneMatch != null)
+			return matchesEtag(ifNoneMatch, etag);
+
+		String ifModifiedSince = req.getHeader("If-Modified-Since");
+		if (ifModifiedSince != null && lastModified > 0) {
+			long since = parseDate(ifModifiedSince);
+			return since != -1 && lastModified / 1000 <= since / 1000;
+		}
+
+		return false;
+	}
+
+	private boolean matchesEtag(String header, String etag) {
+		for (String token : header.split(",")) {
+			token = token.trim();
+			if (token.startsWith("W/"))
+				token = token.substring(2);
+
+			if (token.equals("*") || token.equals("\"" + etag + "\"") || token.equals("\"" + etag + "-gz\""))
+				return true;
+		}
+		return false;
+	}
+
+	private void sendNotModified(HttpServletResponse resp) throws IOException {
+		resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+		resp.getOutputStream().close();
+	}
+
+	/**
+	 * Returns offset and length to send. Invalid range header is ignored as
+	 * RFC 7233 says. If range is valid but not satisfiable, it sends 416
+	 * response and returns null.
+	 */
+	private long[] getRange(HttpServletRequest req, HttpServletResponse resp, String etag, long lastModified, long length)
+			throws IOException {
+		long[] all = new long[] { 0, length };
+		String range = req.getHeader("Range");
+		if (range == null || !range.startsWith("bytes=") || range.indexOf(',') >= 0)
+			return all;
+
+		// send whole content if resource is changed
+		String ifRange = req.getHeader("If-Range");
+		if (ifRange != null) {
+			if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+				if (!ifRange.equals("\"" + etag + "\""))
+					return all;
+			} else if (lastModified <= 0 || parseDate(ifRange) / 1000 != lastModified / 1000) {
+				return all;
+			}
+		}
+
+		long begin;
+		long end;
+		try {
+			String spec = range.substring("bytes=".length()).trim();
+			int p = spec.indexOf('-');
+			if (p < 0)
+				return all;
+
+			String first = spec.substring(0, p).trim();
+			String last = spec.substring(p + 1).trim();
+			if (first.isEmpty()) {
+				// suffix range
+				long suffix = Long.parseLong(last);
+				if (suffix < 0)
+					return all;
+				begin = Math.max(0, length - suffix);
+				end = length - 1;
+			} else {
+				begin = Long.parseLong(first);
+				end = length - 1;
+				if (!last.isEmpty()) {
+					// last-byte-pos less than first-byte-pos is syntactically
+					// invalid, not unsatisfiable
+					long lastPos = Long.parseLong(last);
+					if (lastPos < begin)
+						return all;
+					end = Math.min(lastPos, end);
+				}
+			}
+		} catch (NumberFormatException e) {
+			return all;
+		}
+
+		if (begin >= length || begin > end) {
+			resp.setHeader("Content-Range", "bytes */" + length);
+			resp.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+			return null;
+		}
+
+		ResourceCache.getInstance().countPartialContent();
+		resp.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+		resp.setHeader("Content-Range", "bytes " + begin + "-" + end + "/" + length);
+		return new long[] { begin, end - begin + 1 };
+	}
+
+	private boolean acceptsGzip(HttpServletRequest req) {
+		String acceptEncoding = req.getHeader("Accept-Encoding");
+		if (acceptEncoding == null)
+			return false;
+
+		for (String token : acceptEncoding.split(",")) {
+			String[] pair = token.trim().split(";");
+			if (!pair[0].trim().equalsIgnoreCase("gzip"))
+				continue;
+
+			if (pair.length > 1 && pair[1].trim().replace(" ", "").matches("q=0(\\.0*)?"))
+				return false;
+			return true;
+		}
+		return false;
+	}
+
+	private boolean isCompressible(String mimeType) {
+		return mimeType.startsWith("text/") || mimeType.contains("javascript") || mimeType.contains("json")
+				|| mimeType.contains("xml");
+	}
+
+	private byte[] readAll(InputStream is) throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream(Math.max(is.available(), 4096));
+		byte[] b = new byte[8192];
+		int len;
+		while ((len = is.read(b)) != -1)
+			bos.write(b, 0, len);
+		return bos.toByteArray();
+	}
+
+	private String formatDate(long time) {
+		SimpleDateFormat df = new SimpleDateFormat(HTTP_DATE_FORMAT, Locale.US);
+		df.setTimeZone(TimeZone.getTimeZone("GMT"));
+		return df.format(new Date(time));
+	}
+
+	private long parseDate(String s) {
+		try {
+			SimpleDateFormat df = new SimpleDateFormat(HTTP_DATE_FORMAT, Locale.US);
+			df.setTimeZone(TimeZone.getTimeZone("GMT"));
+			return df.parse(s).getTime();
+		} catch (ParseException e) {
+			return -1;
+		}
+	}
+
 	private String getMimeType(String path) {
 		String mimeType = MimeTypes.instance().getByFile(path);
 
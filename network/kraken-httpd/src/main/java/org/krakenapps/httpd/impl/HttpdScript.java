@@ -294,4 +294,15 @@ public class HttpdScript implements Script {
 			logger.error("kraken httpd: invalid listen ip format", e);
 		}
 	}
+
+	@ScriptUsage(description = "print static resource cache and transfer statistics")
+	public void resourceCache(String[] args) {
+		context.println(ResourceCache.getInstance().toString());
+	}
+
+	@ScriptUsage(description = "clear static resource cache")
+	public void clearResourceCache(String[] args) {
+		ResourceCache.getInstance().clear();
+		context.println("cleared");
+	}
 }
@@ -0,0 +1,222 @@
+/*
+ * Copyright 2011 Future Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.krakenapps.httpd.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Size-bounded LRU cache of static resources which are not backed by
+ * filesystem (e.g. bundle resources). Compressible resources are kept with
+ * gzip precompressed variant. It also counts static resource metrics.
+ */
+public class ResourceCache {
+	private static final ResourceCache instance = new ResourceCache(Long.getLong("kraken.httpd.resource_cache_size",
+			32 * 1024 * 1024L));
+
+	private final Logger logger = LoggerFactory.getLogger(ResourceCache.class.getName());
+	private final long maxSize;
+	private long size;
+	private LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(64, 0.75f, true);
+
+	private AtomicLong hits = new AtomicLong();
+	private AtomicLong misses = new AtomicLong();
+	private AtomicLong evictions = new AtomicLong();
+	private AtomicLong notModified = new AtomicLong();
+	private AtomicLong partialContents = new AtomicLong();
+	private AtomicLong fileTransfers = new AtomicLong();
+	private AtomicLong gzipResponses = new AtomicLong();
+
+	public static ResourceCache getInstance() {
+		return instance;
+	}
+
+	public ResourceCache(long maxSize) {
+		this.maxSize = maxSize;
+	}
+
+	public synchronized Entry get(String key) {
+		Entry e = entries.get(key);
+		if (e != null)
+			hits.incrementAndGet();
+		else
+			misses.incrementAndGet();
+		return e;
+	}
+
+	/**
+	 * Builds cache entry and caches it if it fits in cache. Returned entry is
+	 * valid even if it is not cached.
+	 */
+	public Entry put(String key, byte[] content, long lastModified, boolean compressible) {
+		Entry e = new Entry(content, lastModified, compressible ? gzip(content) : null);
+		if (e.getWeight() > maxSize / 4)
+			return e;
+
+		synchronized (this) {
+			Entry old = entries.put(key, e);
+			if (old != null)
+				size -= old.getWeight();
+			size += e.getWeight();
+
+			Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+			while (size > maxSize && it.hasNext()) {
+				Entry victim = it.next().getValue();
+				it.remove();
+				size -= victim.getWeight();
+				evictions.incrementAndGet();
+			}
+		}
+
+		return e;
+	}
+
+	private byte[] gzip(byte[] content) {
+		try {
+			ByteArrayOutputStream bos = new ByteArrayOutputStream(content.length / 2);
+			GZIPOutputStream gos = new GZIPOutputStream(bos);
+			gos.write(content);
+			gos.close();
+
+			// keep only if it saves bandwidth
+			byte[] b = bos.toByteArray();
+			return b.length < content.length ? b : null;
+		} catch (IOException e) {
+			logger.warn("kraken httpd: cannot compress resource", e);
+			return null;
+		}
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+		size = 0;
+	}
+
+	public synchronized int getCount() {
+		return entries.size();
+	}
+
+	public synchronized long getSize() {
+		return size;
+	}
+
+	public long getMaxSize() {
+		return maxSize;
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	public long getNotModified() {
+		return notModified.get();
+	}
+
+	public long getPartialContents() {
+		return partialContents.get();
+	}
+
+	public long getFileTransfers() {
+		return fileTransfers.get();
+	}
+
+	public long getGzipResponses() {
+		return gzipResponses.get();
+	}
+
+	public void countNotModified() {
+		notModified.incrementAndGet();
+	}
+
+	public void countPartialContent() {
+		partialContents.incrementAndGet();
+	}
+
+	public void countFileTransfer() {
+		fileTransfers.incrementAndGet();
+	}
+
+	public void countGzipResponse() {
+		gzipResponses.incrementAndGet();
+	}
+
+	@Override
+	public String toString() {
+		long total = getHits() + getMisses();
+		double ratio = total == 0 ? 0 : getHits() * 100.0 / total;
+		return String.format("cached=%d, size=%d/%d, hits=%d, misses=%d (%.1f%% hit), evictions=%d, "
+				+ "not modified=%d, partial=%d, file transfers=%d, gzip=%d", getCount(), getSize(), maxSize, getHits(),
+				getMisses(), ratio, getEvictions(), getNotModified(), getPartialContents(), getFileTransfers(),
+				getGzipResponses());
+	}
+
+	public static class Entry {
+		private byte[] content;
+		private byte[] gzipped;
+		private String etag;
+		private long lastModified;
+
+		public Entry(byte[] content, long lastModified, byte[] gzipped) {
+			CRC32 crc = new CRC32();
+			crc.update(content);
+
+			this.content = content;
+			this.gzipped = gzipped;
+			this.lastModified = lastModified;
+			this.etag = Long.toHexString(crc.getValue()) + "-" + Integer.toHexString(content.length);
+		}
+
+		public byte[] getContent() {
+			return content;
+		}
+
+		/**
+		 * @return gzip compressed content, or null if not compressible
+		 */
+		public byte[] getGzipped() {
+			return gzipped;
+		}
+
+		public String getEtag() {
+			return etag;
+		}
+
+		public long getLastModified() {
+			return lastModified;
+		}
+
+		private long getWeight() {
+			return content.length + (gzipped != null ? gzipped.length : 0) + 64;
+		}
+	}
+}
@@ -15,9 +15,11 @@
  */
 package org.krakenapps.httpd.impl;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.io.RandomAccessFile;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -37,7 +39,11 @@ import javax.servlet.http.HttpServletResponse;
 
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
 import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.DefaultFileRegion;
+import org.jboss.netty.channel.FileRegion;
 import org.jboss.netty.handler.codec.http.DefaultHttpChunk;
 import org.jboss.netty.handler.codec.http.DefaultHttpResponse;
 import org.jboss.netty.handler.codec.http.HttpHeaders;
@@ -46,6 +52,7 @@ import org.jboss.netty.handler.codec.http.HttpHeaders.Values;
 import org.jboss.netty.handler.codec.http.HttpResponse;
 import org.jboss.netty.handler.codec.http.HttpResponseStatus;
 import org.jboss.netty.handler.codec.http.HttpVersion;
+import org.jboss.netty.handler.stream.ChunkedFile;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.Constants;
 import org.slf4j.Logger;
@@ -54,6 +61,7 @@ import org.slf4j.LoggerFactory;
 public class Response implements HttpServletResponse {
 	private final Logger logger = LoggerFactory.getLogger(Response.class.getName());
 	private final int bufferSize = 128 * 1024;
+	private final int fileChunkSize = 8192;
 
 	private BundleContext bc;
 	private ChannelHandlerContext ctx;
@@ -137,38 +145,8 @@ public class Response implements HttpServletResponse {
 			String transferEncoding = getHeader(HttpHeaders.Names.TRANSFER_ENCODING);
 			boolean isChunked = transferEncoding != null && transferEncoding.equals("chunked");
 
-			if ((force || isChunked) && !sentHeader) {
-				// send response if not sent
-				HttpResponse resp = new DefaultHttpResponse(HttpVersion.HTTP_1_1, status);
-
-				HttpSessionImpl session = (HttpSessionImpl) req.getSession(false);
-				if (session != null) {
-					if (session.isNew()) {
-						resp.addHeader(HttpHeaders.Names.SET_COOKIE, "JSESSIONID=" + session.getId() + "; path=/");
-						session.setNew(false);
-					}
-
-					session.setLastAccess(new Date());
-				}
-
-				if (!isChunked)
-					resp.setHeader(HttpHeaders.Names.CONTENT_LENGTH, buf.readableBytes());
-
-				for (Cookie c : cookies) {
-					resp.addHeader(HttpHeaders.Names.SET_COOKIE, c.getName() + "=" + c.getValue());
-				}
-
-				for (String name : headers.keySet())
-					resp.setHeader(name, headers.get(name));
-
-				if (logger.isDebugEnabled())
-					logger.debug("kraken httpd: channel [{}], sent header", ctx.getChannel());
-
-				// write http header
-				ctx.getChannel().write(resp);
-
-				sentHeader = true;
-			}
+			if ((force || isChunked) && !sentHeader)
+				writeHeader(isChunked, buf.readableBytes());
 
 			if (isChunked) {
 				if (logger.isDebugEnabled())
@@ -185,6 +163,85 @@ public class Response implements HttpServletResponse {
 			}
 		}
 
+		private void writeHeader(boolean isChunked, long contentLength) {
+			// send response if not sent
+			HttpResponse resp = new DefaultHttpResponse(HttpVersion.HTTP_1_1, status);
+
+			HttpSessionImpl session = (HttpSessionImpl) req.getSession(false);
+			if (session != null) {
+				if (session.isNew()) {
+					resp.addHeader(HttpHeaders.Names.SET_COOKIE, "JSESSIONID=" + session.getId() + "; path=/");
+					session.setNew(false);
+				}
+
+				session.setLastAccess(new Date());
+			}
+
+			if (!isChunked)
+				resp.setHeader(HttpHeaders.Names.CONTENT_LENGTH, contentLength);
+
+			for (Cookie c : cookies) {
+				resp.addHeader(HttpHeaders.Names.SET_COOKIE, c.getName() + "=" + c.getValue());
+			}
+
+			for (String name : headers.keySet())
+				resp.setHeader(name, headers.get(name));
+
+			if (logger.isDebugEnabled())
+				logger.debug("kraken httpd: channel [{}], sent header", ctx.getChannel());
+
+			// write http header
+			ctx.getChannel().write(resp);
+
+			sentHeader = true;
+		}
+
+		private void sendFile(File file, long offset, long length) throws IOException {
+			if (sentHeader)
+				throw new IllegalStateException("response header is already sent");
+
+			RandomAccessFile raf = new RandomAccessFile(file, "r");
+			closed = true;
+			writeHeader(false, length);
+
+			ChannelFuture future;
+			if (length == 0) {
+				raf.close();
+				future = ctx.getChannel().write(ChannelBuffers.EMPTY_BUFFER);
+			} else if (ctx.getPipeline().get("ssl") != null) {
+				// zero-copy is impossible over ssl, chunked writer closes file
+				future = ctx.getChannel().write(new ChunkedFile(raf, offset, length, fileChunkSize));
+			} else {
+				final FileRegion region = new DefaultFileRegion(raf.getChannel(), offset, length);
+				future = ctx.getChannel().write(region);
+				future.addListener(new ChannelFutureListener() {
+					@Override
+					public void operationComplete(ChannelFuture future) throws Exception {
+						region.releaseExternalResources();
+					}
+				});
+			}
+
+			if (logger.isDebugEnabled())
+				logger.debug("kraken httpd: channel [{}], sent file [{}], offset [{}], length [{}]", new Object[] {
+						ctx.getChannel(), file.getAbsolutePath(), offset, length });
+
+			if (!isKeepAlive())
+				future.addListener(ChannelFutureListener.CLOSE);
+		}
+
+		private void sendContent(byte[] b, int offset, int length) {
+			if (sentHeader)
+				throw new IllegalStateException("response header is already sent");
+
+			closed = true;
+			writeHeader(false, length);
+			ChannelFuture future = ctx.getChannel().write(ChannelBuffers.wrappedBuffer(b, offset, length));
+
+			if (!isKeepAlive())
+				future.addListener(ChannelFutureListener.CLOSE);
+		}
+
 		private boolean isKeepAlive() {
 			String connection = req.getHeader(Names.CONNECTION);
 			if (connection != null && Values.CLOSE.equalsIgnoreCase(connection))
@@ -199,6 +256,23 @@ public class Response implements HttpServletResponse {
 
 	}
 
+	/**
+	 * Sends the file region as response body and completes the response. The
+	 * file is transferred by zero-copy file region unless the channel is
+	 * secured.
+	 */
+	public void sendFile(File file, long offset, long length) throws IOException {
+		((ResponseOutputStream) os).sendFile(file, offset, length);
+	}
+
+	/**
+	 * Sends the byte array as response body without copying, and completes
+	 * the response. The array should not be modified after call.
+	 */
+	public void sendContent(byte[] b, int offset, int length) {
+		((ResponseOutputStream) os).sendContent(b, offset, length);
+	}
+
 	@Override
 	public String getCharacterEncoding() {
 		List<String> contentTypes = (List<String>) headers.get(HttpHeaders.Names.CONTENT_TYPE);
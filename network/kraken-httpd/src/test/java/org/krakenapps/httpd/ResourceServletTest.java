@@ -0,0 +1,276 @@
+/*
+ * Copyright 2012 Future Systems
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.krakenapps.httpd;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.zip.GZIPInputStream;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.krakenapps.httpd.impl.MockHttpExchange;
+
+public class ResourceServletTest {
+	private static final byte[] CONTENT = "0123456789abcdef".getBytes();
+	private File dir;
+	private File file;
+	private byte[] page;
+	private HttpContext httpContext;
+
+	@Before
+	public void setUp() throws IOException {
+		dir = File.createTempFile("kraken-httpd", "");
+		dir.delete();
+		dir.mkdir();
+
+		file = new File(dir, "hello.txt");
+		FileOutputStream os = new FileOutputStream(file);
+		os.write(CONTENT);
+		os.close();
+		file.setLastModified(1350000000000L);
+
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 100; i++)
+			sb.append("<p>kraken httpd resource cache</p>\n");
+		page = sb.toString().getBytes("utf-8");
+
+		httpContext = new HttpContext("test");
+		httpContext.addServlet("file", new FileResourceServlet(dir), "/file/*");
+		httpContext.addServlet("cache", new CachedServlet(page, "test-" + System.nanoTime()), "/cache/*");
+	}
+
+	@After
+	public void tearDown() {
+		file.delete();
+		dir.delete();
+	}
+
+	@Test
+	public void testFullFile() throws IOException {
+		MockHttpExchange ex = get("/file/hello.txt");
+		assertEquals(200, ex.getStatus());
+		assertArrayEquals(CONTENT, ex.getBody());
+		assertEquals(1, ex.getFileTransfers());
+		assertEquals("16", ex.getHeader("Content-Length"));
+		assertEquals("bytes", ex.getHeader("Accept-Ranges"));
+		assertEquals(formatDate(file.lastModified()), ex.getHeader("Last-Modified"));
+	}
+
+	@Test
+	public void testConditionalGet() throws IOException {
+		String etag = get("/file/hello.txt").getHeader("ETag");
+
+		MockHttpExchange ex = new MockHttpExchange("/file/hello.txt").setHeader("If-None-Match", etag).run(httpContext);
+		assertEquals(304, ex.getStatus());
+		assertEquals(0, ex.getBody().length);
+		assertEquals(etag, ex.getHeader("ETag"));
+
+		ex = new MockHttpExchange("/file/hello.txt").setHeader("If-None-Match", "W/" + etag + ", \"other\"").run(
+				httpContext);
+		assertEquals(304, ex.getStatus());
+
+		ex = new MockHttpExchange("/file/hello.txt").setHeader("If-None-Match", "\"other\"").run(httpContext);
+		assertEquals(200, ex.getStatus());
+
+		ex = new MockHttpExchange("/file/hello.txt").setHeader("If-Modified-Since", formatDate(file.lastModified()))
+				.run(httpContext);
+		assertEquals(304, ex.getStatus());
+
+		ex = new MockHttpExchange("/file/hello.txt").setHeader("If-Modified-Since",
+				formatDate(file.lastModified() - 60000)).run(httpContext);
+		assertEquals(200, ex.getStatus());
+		assertArrayEquals(CONTENT, ex.getBody());
+	}
+
+	@Test
+	public void testSingleRange() throws IOException {
+		MockHttpExchange ex = range("/file/hello.txt", "bytes=2-5");
+		assertEquals(206, ex.getStatus());
+		assertEquals("bytes 2-5/16", ex.getHeader("Content-Range"));
+		assertEquals("2345", new String(ex.getBody()));
+
+		// open-ended and suffix ranges
+		ex = range("/file/hello.txt", "bytes=12-");
+		assertEquals(206, ex.getStatus());
+		assertEquals("bytes 12-15/16", ex.getHeader("Content-Range"));
+		assertEquals("cdef", new String(ex.getBody()));
+
+		ex = range("/file/hello.txt", "bytes=-3");
+		assertEquals(206, ex.getStatus());
+		assertEquals("def", new String(ex.getBody()));
+
+		// last-byte-pos over length is truncated
+		ex = range("/file/hello.txt", "bytes=14-100");
+		assertEquals(206, ex.getStatus());
+		assertEquals("bytes 14-15/16", ex.getHeader("Content-Range"));
+	}
+
+	@Test
+	public void testIfRange() throws IOException {
+		String etag = get("/file/hello.txt").getHeader("ETag");
+
+		MockHttpExchange ex = new MockHttpExchange("/file/hello.txt").setHeader("Range", "bytes=0-3")
+				.setHeader("If-Range", etag).run(httpContext);
+		assertEquals(206, ex.getStatus());
+
+		// resource is changed, send whole content
+		ex = new MockHttpExchange("/file/hello.txt").setHeader("Range", "bytes=0-3").setHeader("If-Range", "\"old\"")
+				.run(httpContext);
+		assertEquals(200, ex.getStatus());
+		assertArrayEquals(CONTENT, ex.getBody());
+	}
+
+	@Test
+	public void testUnsatisfiableRange() throws IOException {
+		MockHttpExchange ex = range("/file/hello.txt", "bytes=16-");
+		assertEquals(416, ex.getStatus());
+		assertEquals("bytes */16", ex.getHeader("Content-Range"));
+		assertEquals(0, ex.getFileTransfers());
+
+		ex = range("/cache/index.html", "bytes=100000-100010");
+		assertEquals(416, ex.getStatus());
+		assertEquals("bytes */" + page.length, ex.getHeader("Content-Range"));
+	}
+
+	@Test
+	public void testInvalidRangeIgnored() throws IOException {
+		String[] ranges = new String[] { "bytes=5-2", "bytes=abc-", "bytes=--3", "bytes=5", "items=0-3" };
+		for (String range : ranges) {
+			MockHttpExchange ex = range("/file/hello.txt", range);
+			assertEquals(range, 200, ex.getStatus());
+			assertNull(range, ex.getHeader("Content-Range"));
+			assertEquals(range, new String(CONTENT), new String(ex.getBody()));
+		}
+	}
+
+	@Test
+	public void testMultiRangeFallback() throws IOException {
+		// multipart/byteranges is not supported, whole content is sent
+		MockHttpExchange ex = range("/file/hello.txt", "bytes=0-1,4-5");
+		assertEquals(200, ex.getStatus());
+		assertNull(ex.getHeader("Content-Range"));
+		assertArrayEquals(CONTENT, ex.getBody());
+
+		ex = range("/cache/index.html", "bytes=0-1,4-5");
+		assertEquals(200, ex.getStatus());
+		assertArrayEquals(page, ex.getBody());
+	}
+
+	@Test
+	public void testGzipCache() throws IOException {
+		MockHttpExchange ex = new MockHttpExchange("/cache/index.html").setHeader("Accept-Encoding", "gzip, deflate")
+				.run(httpContext);
+		assertEquals(200, ex.getStatus());
+		assertEquals("gzip", ex.getHeader("Content-Encoding"));
+		assertEquals("Accept-Encoding", ex.getHeader("Vary"));
+		assertEquals(0, ex.getFileTransfers());
+		assertEquals(Integer.toString(ex.getBody().length), ex.getHeader("Content-Length"));
+		assertArrayEquals(page, gunzip(ex.getBody()));
+
+		// gzip etag also validates
+		String gzipEtag = ex.getHeader("ETag");
+		ex = new MockHttpExchange("/cache/index.html").setHeader("If-None-Match", gzipEtag).run(httpContext);
+		assertEquals(304, ex.getStatus());
+
+		// identity and range requests use uncompressed content
+		ex = get("/cache/index.html");
+		assertEquals(200, ex.getStatus());
+		assertNull(ex.getHeader("Content-Encoding"));
+		assertEquals("Accept-Encoding", ex.getHeader("Vary"));
+		assertArrayEquals(page, ex.getBody());
+
+		ex = new MockHttpExchange("/cache/index.html").setHeader("Accept-Encoding", "gzip;q=0").run(httpContext);
+		assertNull(ex.getHeader("Content-Encoding"));
+
+		ex = new MockHttpExchange("/cache/index.html").setHeader("Accept-Encoding", "gzip")
+				.setHeader("Range", "bytes=0-2").run(httpContext);
+		assertEquals(206, ex.getStatus());
+		assertNull(ex.getHeader("Content-Encoding"));
+		assertEquals("<p>", new String(ex.getBody()));
+	}
+
+	@Test
+	public void testCachedOnce() throws IOException {
+		CachedServlet servlet = new CachedServlet(page, "test-" + System.nanoTime());
+		httpContext.addServlet("counted", servlet, "/counted/*");
+
+		for (int i = 0; i < 3; i++)
+			assertArrayEquals(page, get("/counted/index.html").getBody());
+		assertEquals(1, servlet.opened);
+	}
+
+	private MockHttpExchange get(String uri) throws IOException {
+		return new MockHttpExchange(uri).run(httpContext);
+	}
+
+	private MockHttpExchange range(String uri, String range) throws IOException {
+		return new MockHttpExchange(uri).setHeader("Range", range).run(httpContext);
+	}
+
+	private byte[] gunzip(byte[] b) throws IOException {
+		GZIPInputStream is = new GZIPInputStream(new ByteArrayInputStream(b));
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		byte[] buf = new byte[8192];
+		int len;
+		while ((len = is.read(buf)) != -1)
+			os.write(buf, 0, len);
+		return os.toByteArray();
+	}
+
+	private String formatDate(long time) {
+		SimpleDateFormat df = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+		df.setTimeZone(TimeZone.getTimeZone("GMT"));
+		return df.format(new Date(time));
+	}
+
+	private static class CachedServlet extends ResourceServlet {
+		private static final long serialVersionUID = 1L;
+		private byte[] content;
+		private String key;
+		private int opened;
+
+		public CachedServlet(byte[] content, String key) {
+			this.content = content;
+			this.key = key;
+		}
+
+		@Override
+		protected InputStream getInputStream(HttpServletRequest req) {
+			opened++;
+			return new ByteArrayInputStream(content);
+		}
+
+		@Override
+		protected String getCacheKey(HttpServletRequest req) {
+			return key + req.getPathInfo();
+		}
+	}
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2012 Future Systems
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.krakenapps.httpd.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.channels.WritableByteChannel;
+import java.util.Hashtable;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.FileRegion;
+import org.jboss.netty.handler.codec.http.DefaultHttpRequest;
+import org.jboss.netty.handler.codec.http.HttpMethod;
+import org.jboss.netty.handler.codec.http.HttpRequest;
+import org.jboss.netty.handler.codec.http.HttpResponse;
+import org.jboss.netty.handler.codec.http.HttpVersion;
+import org.krakenapps.httpd.HttpContext;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.Constants;
+
+/**
+ * Runs a request through http context without network, and captures the
+ * response header and body written to the channel.
+ */
+public class MockHttpExchange {
+	private HttpRequest req;
+	private HttpResponse resp;
+	private ByteArrayOutputStream body = new ByteArrayOutputStream();
+	private int fileTransfers;
+
+	public MockHttpExchange(String uri) {
+		req = new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, uri);
+	}
+
+	public MockHttpExchange setHeader(String name, String value) {
+		req.setHeader(name, value);
+		return this;
+	}
+
+	public MockHttpExchange run(HttpContext httpContext) throws IOException {
+		ChannelHandlerContext ctx = newContext();
+		Request request = new Request(ctx, req);
+		Response response = new Response(newBundleContext(), ctx, request);
+		request.setResponse(response);
+		httpContext.handle(request, response);
+		return this;
+	}
+
+	public int getStatus() {
+		return resp.getStatus().getCode();
+	}
+
+	public String getHeader(String name) {
+		return resp.getHeader(name);
+	}
+
+	public byte[] getBody() {
+		return body.toByteArray();
+	}
+
+	/**
+	 * @return the number of zero-copy file region writes
+	 */
+	public int getFileTransfers() {
+		return fileTransfers;
+	}
+
+	private void write(Object msg) throws IOException {
+		if (msg instanceof HttpResponse) {
+			resp = (HttpResponse) msg;
+		} else if (msg instanceof ChannelBuffer) {
+			ChannelBuffer buf = (ChannelBuffer) msg;
+			buf.getBytes(buf.readerIndex(), body, buf.readableBytes());
+		} else if (msg instanceof FileRegion) {
+			// region is released as soon as write future completes
+			FileRegion region = (FileRegion) msg;
+			WritableByteChannel out = java.nio.channels.Channels.newChannel(body);
+			long sent = 0;
+			while (sent < region.getCount())
+				sent += region.transferTo(out, sent);
+			fileTransfers++;
+		} else {
+			throw new IllegalArgumentException("unexpected message: " + msg);
+		}
+	}
+
+	private ChannelHandlerContext newContext() {
+		final ChannelPipeline pipeline = Channels.pipeline();
+		final Channel channel = (Channel) Proxy.newProxyInstance(Channel.class.getClassLoader(),
+				new Class<?>[] { Channel.class }, new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+						if (method.getName().equals("write")) {
+							write(args[0]);
+							return Channels.succeededFuture((Channel) proxy);
+						}
+						if (method.getName().equals("close"))
+							return Channels.succeededFuture((Channel) proxy);
+						return defaultValue(method);
+					}
+				});
+
+		return (ChannelHandlerContext) Proxy.newProxyInstance(ChannelHandlerContext.class.getClassLoader(),
+				new Class<?>[] { ChannelHandlerContext.class }, new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+						if (method.getName().equals("getChannel"))
+							return channel;
+						if (method.getName().equals("getPipeline"))
+							return pipeline;
+						return defaultValue(method);
+					}
+				});
+	}
+
+	private BundleContext newBundleContext() {
+		final Hashtable<String, String> headers = new Hashtable<String, String>();
+		headers.put(Constants.BUNDLE_VERSION, "1.0.0");
+
+		final Bundle bundle = (Bundle) Proxy.newProxyInstance(Bundle.class.getClassLoader(),
+				new Class<?>[] { Bundle.class }, new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+						if (method.getName().equals("getHeaders"))
+							return headers;
+						return defaultValue(method);
+					}
+				});
+
+		return (BundleContext) Proxy.newProxyInstance(BundleContext.class.getClassLoader(),
+				new Class<?>[] { BundleContext.class }, new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+						if (method.getName().equals("getBundle"))
+							return bundle;
+						return defaultValue(method);
+					}
+				});
+	}
+
+	private static Object defaultValue(Method method) {
+		Class<?> type = method.getReturnType();
+		if (type == boolean.class)
+			return false;
+		if (type == int.class)
+			return 0;
+		if (type == long.class)
+			return 0L;
+		return null;
+	}
+}
@@ -72,6 +72,19 @@ public class LdapProfile {
 
 	private Date lastSync;
 
+	/**
+	 * high-water mark of last successful sync, see {@link LdapSyncMark}
+	 */
+	private String syncMark;
+
+	private Date lastFullSync;
+
+	/**
+	 * milliseconds unit. incremental sync cannot see removed entries, so every
+	 * sync after this interval fetches all entries
+	 */
+	private long fullSyncInterval = 86400000;
+
 	public String getName() {
 		return name;
 	}
@@ -213,6 +226,30 @@ public class LdapProfile {
 		this.lastSync = lastSync;
 	}
 
+	public String getSyncMark() {
+		return syncMark;
+	}
+
+	public void setSyncMark(String syncMark) {
+		this.syncMark = syncMark;
+	}
+
+	public Date getLastFullSync() {
+		return lastFullSync;
+	}
+
+	public void setLastFullSync(Date lastFullSync) {
+		this.lastFullSync = lastFullSync;
+	}
+
+	public long getFullSyncInterval() {
+		return fullSyncInterval;
+	}
+
+	public void setFullSyncInterval(long fullSyncInterval) {
+		this.fullSyncInterval = fullSyncInterval;
+	}
+
 	@Override
 	public String toString() {
 		return String.format(
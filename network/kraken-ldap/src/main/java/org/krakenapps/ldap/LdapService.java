@@ -34,6 +34,29 @@ public interface LdapService {
 
 	Collection<LdapOrgUnit> getOrgUnits(LdapProfile profile);
 
+	/**
+	 * Returns current high-water mark of the directory. Take it before fetching
+	 * changes, so that changes made while fetching are fetched again next time.
+	 */
+	LdapSyncMark getSyncMark(LdapProfile profile);
+
+	/**
+	 * Fetches users page by page using simple paged results control.
+	 * 
+	 * @param since
+	 *            fetch only users changed after this mark, or all users if null
+	 */
+	void getUsers(LdapProfile profile, LdapSyncMark since, LdapPageCallback<LdapUser> callback);
+
+	/**
+	 * Fetches org units page by page using simple paged results control.
+	 * 
+	 * @param since
+	 *            fetch only org units changed after this mark, or all org units
+	 *            if null
+	 */
+	void getOrgUnits(LdapProfile profile, LdapSyncMark since, LdapPageCallback<LdapOrgUnit> callback);
+
 	boolean verifyPassword(LdapProfile profile, String uid, String password);
 
 	boolean verifyPassword(LdapProfile profile, String uid, String password, int timeout);
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2011 Future Systems
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.krakenapps.ldap;
+
+/**
+ * High-water mark of directory changes seen by the last sync. Active directory
+ * mark is the highestCommittedUSN of the domain controller which served the
+ * sync, and it cannot be compared with the USN of other domain controllers.
+ * Other directory servers use modifyTimestamp in generalized time format.
+ */
+public class LdapSyncMark {
+	private String origin;
+	private String value;
+
+	/**
+	 * @param origin
+	 *            the dns host name of the active directory domain controller,
+	 *            or null for timestamp mark
+	 */
+	public LdapSyncMark(String origin, String value) {
+		if (value == null)
+			throw new IllegalArgumentException("sync mark value should be not null");
+
+		this.origin = origin;
+		this.value = value;
+	}
+
+	/**
+	 * @return parsed mark, or null if s is null
+	 */
+	public static LdapSyncMark parse(String s) {
+		if (s == null)
+			return null;
+
+		int p = s.lastIndexOf('/');
+		if (p < 0)
+			return new LdapSyncMark(null, s);
+		return new LdapSyncMark(s.substring(0, p), s.substring(p + 1));
+	}
+
+	public String getOrigin() {
+		return origin;
+	}
+
+	public String getValue() {
+		return value;
+	}
+
+	public boolean isComparable(LdapSyncMark other) {
+		if (other == null)
+			return false;
+		if (origin == null)
+			return other.origin == null;
+		return origin.equalsIgnoreCase(other.origin);
+	}
+
+	@Override
+	public String toString() {
+		if (origin == null)
+			return value;
+		return origin + "/" + value;
+	}
+}
@@ -28,8 +28,10 @@ import org.krakenapps.dom.model.Admin;
 import org.krakenapps.dom.model.OrganizationUnit;
 import org.krakenapps.dom.model.User;
 import org.krakenapps.ldap.LdapOrgUnit;
+import org.krakenapps.ldap.LdapPageCallback;
 import org.krakenapps.ldap.LdapProfile;
 import org.krakenapps.ldap.LdapService;
+import org.krakenapps.ldap.LdapSyncMark;
 import org.krakenapps.ldap.LdapSyncService;
 import org.krakenapps.ldap.LdapUser;
 import org.slf4j.Logger;
@@ -64,6 +66,13 @@ public class DomSyncService implements LdapSyncService, Runnable {
 	@Requires
 	private ProgramApi programApi;
 
+	public DomSyncService() {
+	}
+
+	DomSyncService(UserApi userApi) {
+		this.userApi = userApi;
+	}
+
 	@Override
 	public void run() {
 		try {
@@ -88,8 +97,10 @@ public class DomSyncService implements LdapSyncService, Runnable {
 
 				if (span == -1 || span > profile.getSyncInterval()) {
 					try {
-						logger.debug("kraken ldap: try to sync using profile [{}]", profile.getName());
-						sync(profile);
+						boolean full = isFullSyncRequired(profile, now);
+						logger.debug("kraken ldap: try to {} sync using profile [{}]", full ? "full" : "incremental",
+								profile.getName());
+						sync(profile, full);
 					} catch (Exception e) {
 						logger.error("kraken ldap: periodic sync failed", e);
 					}
@@ -103,15 +114,84 @@ public class DomSyncService implements LdapSyncService, Runnable {
 		}
 	}
 
+	private boolean isFullSyncRequired(LdapProfile profile, Date now) {
+		if (profile.getSyncMark() == null || profile.getLastFullSync() == null)
+			return true;
+		return now.getTime() - profile.getLastFullSync().getTime() >= profile.getFullSyncInterval();
+	}
+
 	@Override
 	public void sync(LdapProfile profile) {
-		Collection<LdapOrgUnit> orgUnits = ldap.getOrgUnits(profile);
-		Collection<LdapUser> users = ldap.getUsers(profile);
+		sync(profile, true);
+	}
 
-		exportDom(orgUnits, users, profile);
+	/**
+	 * Incremental sync fetches only entries changed after last sync mark, but
+	 * cannot see removed entries. Full sync fetches all entries and removes dom
+	 * users which are not found in directory. Users are written to kraken-dom
+	 * page by page, so whole directory is never held in memory.
+	 */
+	private void sync(LdapProfile profile, boolean full) {
+		Date begin = new Date();
+
+		// take mark first, changes while fetching will be fetched again later
+		LdapSyncMark mark = ldap.getSyncMark(profile);
+		LdapSyncMark since = full ? null : LdapSyncMark.parse(profile.getSyncMark());
+
+		Map<List<String>, OrganizationUnit> domOrgUnits = syncOrgUnits(profile, since);
+
+		UserExporter exporter = new UserExporter(profile, domOrgUnits, full);
+		ldap.getUsers(profile, since, exporter);
+		if (full)
+			removeUsers(profile, exporter.accountNames);
+
+		logger.info("kraken ldap: profile [{}], {} sync created {} users, updated {} users", new Object[] { profile.getName(),
+				full ? "full" : "incremental", exporter.created, exporter.updated });
+
+		profile.setSyncMark(mark.toString());
+		if (full)
+			profile.setLastFullSync(begin);
 		profile.setLastSync(new Date());
 	}
 
+	private Map<List<String>, OrganizationUnit> syncOrgUnits(LdapProfile profile, LdapSyncMark since) {
+		if (since != null) {
+			// renamed or moved org unit changes whole subtree, so diff whole
+			// tree if any org unit is changed
+			PageCounter<LdapOrgUnit> changed = new PageCounter<LdapOrgUnit>();
+			ldap.getOrgUnits(profile, since, changed);
+			if (changed.count == 0)
+				return getDomOrgUnits(profile);
+		}
+
+		return exportOrgUnits(profile, ldap.getOrgUnits(profile));
+	}
+
+	/**
+	 * @return synced org units of profile, keyed by names from leaf to root
+	 */
+	@SuppressWarnings("unchecked")
+	private Map<List<String>, OrganizationUnit> getDomOrgUnits(LdapProfile profile) {
+		Collection<OrganizationUnit> orgUnits = orgUnitApi.getOrganizationUnits(profile.getTargetDomain());
+		Map<String, OrganizationUnit> guids = new HashMap<String, OrganizationUnit>();
+		for (OrganizationUnit ou : orgUnits)
+			guids.put(ou.getGuid(), ou);
+
+		Map<List<String>, OrganizationUnit> result = new HashMap<List<String>, OrganizationUnit>();
+		for (OrganizationUnit ou : orgUnits) {
+			Object ext = ou.getExt() == null ? null : ou.getExt().get(EXT_NAME);
+			if (ext == null || !(ext instanceof Map) || !profile.getName().equals(((Map<String, Object>) ext).get("profile")))
+				continue;
+
+			List<String> names = new ArrayList<String>();
+			for (OrganizationUnit p = ou; p != null; p = p.getParent() == null ? null : guids.get(p.getParent()))
+				names.add(p.getName());
+			result.put(names, ou);
+		}
+
+		return result;
+	}
+
 	@Override
 	public void unsync(LdapProfile profile) {
 		Collection<OrganizationUnit> orgUnits = orgUnitApi.getOrganizationUnits("localhost");
@@ -145,11 +225,6 @@ public class DomSyncService implements LdapSyncService, Runnable {
 		orgUnitApi.removeOrganizationUnits("localhost", guids);
 	}
 
-	private void exportDom(Collection<LdapOrgUnit> orgUnits, Collection<LdapUser> users, LdapProfile profile) {
-		Map<List<String>, OrganizationUnit> domOrgUnits = exportOrgUnits(profile, orgUnits);
-		exportUsers(profile, users, domOrgUnits);
-	}
-
 	@SuppressWarnings("unchecked")
 	private Map<List<String>, OrganizationUnit> exportOrgUnits(LdapProfile profile, Collection<LdapOrgUnit> orgUnits) {
 		String domain = profile.getTargetDomain();
@@ -319,27 +394,46 @@ public class DomSyncService implements LdapSyncService, Runnable {
 		}
 	}
 
-	@SuppressWarnings("unchecked")
-	private void exportUsers(LdapProfile profile, Collection<LdapUser> users, Map<List<String>, OrganizationUnit> orgUnits) {
-		String domain = profile.getTargetDomain();
+	private static class PageCounter<T> implements LdapPageCallback<T> {
+		private int count;
 
-		// remove removed ldap users
-		Set<String> loginNames = new HashSet<String>();
-		List<String> remove = new ArrayList<String>();
-		Map<String, User> domUsers = new HashMap<String, User>();
-		for (LdapUser user : users)
-			loginNames.add(user.getAccountName());
-		for (User user : userApi.getUsers(domain)) {
-			domUsers.put(user.getLoginName(), user);
+		@Override
+		public void onPage(List<T> page) {
+			count += page.size();
+		}
+	}
 
-			Object ext = user.getExt().get(EXT_NAME);
-			if (ext == null || !(ext instanceof Map) || !profile.getName().equals(((Map<String, Object>) ext).get("profile")))
-				continue;
+	private class UserExporter implements LdapPageCallback<LdapUser> {
+		private LdapProfile profile;
+		private Map<List<String>, OrganizationUnit> orgUnits;
+		private Admin defaultAdmin;
+
+		/**
+		 * fetched account names for removal, collected at full sync only
+		 */
+		private Set<String> accountNames;
+		private int created;
+		private int updated;
+
+		public UserExporter(LdapProfile profile, Map<List<String>, OrganizationUnit> orgUnits, boolean full) {
+			this.profile = profile;
+			this.orgUnits = orgUnits;
+			this.defaultAdmin = createDefaultAdmin(profile.getTargetDomain());
+			if (full)
+				this.accountNames = new HashSet<String>();
+		}
+
+		@Override
+		public void onPage(List<LdapUser> page) {
+			if (accountNames != null)
+				for (LdapUser user : page)
+					accountNames.add(user.getAccountName());
 
-			if (!loginNames.contains(user.getLoginName()))
-				remove.add(user.getLoginName());
+			exportUsers(this, page);
 		}
+	}
 
+	private Admin createDefaultAdmin(String domain) {
 		Admin defaultAdmin = new Admin();
 		defaultAdmin.setRole(roleApi.getRole(domain, DEFAULT_ROLE_NAME));
 		defaultAdmin.setProfile(programApi.getProgramProfile(domain, DEFAULT_PROFILE_NAME));
@@ -350,6 +444,55 @@ public class DomSyncService implements LdapSyncService, Runnable {
 		defaultAdmin.setUseOtp(false);
 		defaultAdmin.setUseAcl(false);
 		defaultAdmin.setEnabled(true);
+		return defaultAdmin;
+	}
+
+	/**
+	 * Removes synced dom users which are not found by full sync. Dom users are
+	 * read page by page, and only login names of removed users are kept.
+	 */
+	@SuppressWarnings("unchecked")
+	void removeUsers(LdapProfile profile, Set<String> accountNames) {
+		String domain = profile.getTargetDomain();
+		int pageSize = Integer.getInteger("kraken.ldap.page_size", 500);
+
+		// remove after paging, removal shifts offsets of following pages
+		List<String> remove = new ArrayList<String>();
+		int offset = 0;
+		while (true) {
+			Collection<User> page = userApi.getUsers(domain, offset, pageSize);
+			for (User user : page) {
+				Object ext = user.getExt() == null ? null : user.getExt().get(EXT_NAME);
+				if (ext == null || !(ext instanceof Map)
+						|| !profile.getName().equals(((Map<String, Object>) ext).get("profile")))
+					continue;
+
+				if (!accountNames.contains(user.getLoginName()))
+					remove.add(user.getLoginName());
+			}
+
+			if (page.size() < pageSize)
+				break;
+			offset += page.size();
+		}
+
+		if (!remove.isEmpty())
+			logger.info("kraken ldap: profile [{}], removing {} users", profile.getName(), remove.size());
+		userApi.removeUsers(domain, remove);
+	}
+
+	@SuppressWarnings("unchecked")
+	private void exportUsers(UserExporter exporter, Collection<LdapUser> users) {
+		LdapProfile profile = exporter.profile;
+		String domain = profile.getTargetDomain();
+
+		// load only dom users of this page
+		Set<String> loginNames = new HashSet<String>();
+		Map<String, User> domUsers = new HashMap<String, User>();
+		for (LdapUser user : users)
+			loginNames.add(user.getAccountName());
+		for (User user : userApi.getUsers(domain, loginNames))
+			domUsers.put(user.getLoginName(), user);
 
 		// sync
 		List<User> create = new ArrayList<User>();
@@ -373,7 +516,7 @@ public class DomSyncService implements LdapSyncService, Runnable {
 					logger.trace("kraken ldap: skip local user [{}]", domUser.getLoginName());
 					continue;
 				}
-				basicInfoUpdated = updateDomUserFromDomainUser(orgUnits, user, domUser);
+				basicInfoUpdated = updateDomUserFromDomainUser(exporter.orgUnits, user, domUser);
 			} catch (Exception e) {
 				logger.trace("kraken ldap: update failed", e);
 				failed.add(new Object[] { user, e });
@@ -385,7 +528,7 @@ public class DomSyncService implements LdapSyncService, Runnable {
 				domUserExt = new HashMap<String, Object>();
 			domUserExt.put(EXT_NAME, ext);
 			if (user.isDomainAdmin() && !domUserExt.containsKey(adminApi.getExtensionName()))
-				domUserExt.put(adminApi.getExtensionName(), defaultAdmin);
+				domUserExt.put(adminApi.getExtensionName(), exporter.defaultAdmin);
 
 			boolean equals = domUserExt.equals(domUser.getExt());
 
@@ -414,9 +557,10 @@ public class DomSyncService implements LdapSyncService, Runnable {
 			}
 		}
 
-		userApi.createUsers(domain, create);
-		userApi.updateUsers(domain, update, false);
-		userApi.removeUsers(domain, remove);
+		// one transaction per page
+		userApi.createAndUpdateUsers(domain, create, update);
+		exporter.created += create.size();
+		exporter.updated += update.size();
 	}
 
 	private static Pattern p = Pattern.compile("OU=(.*?),");
@@ -22,9 +22,12 @@ import java.net.UnknownHostException;
 import java.security.KeyStore;
 import java.security.SecureRandom;
 import java.util.ArrayList;
+import java.text.SimpleDateFormat;
 import java.util.Collection;
+import java.util.Date;
 import java.util.List;
 import java.util.StringTokenizer;
+import java.util.TimeZone;
 
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.TrustManagerFactory;
@@ -37,10 +40,12 @@ import org.krakenapps.confdb.ConfigDatabase;
 import org.krakenapps.confdb.ConfigService;
 import org.krakenapps.confdb.Predicates;
 import org.krakenapps.ldap.LdapOrgUnit;
+import org.krakenapps.ldap.LdapPageCallback;
 import org.krakenapps.ldap.LdapUser;
 import org.krakenapps.ldap.LdapProfile;
 import org.krakenapps.ldap.LdapServerType;
 import org.krakenapps.ldap.LdapService;
+import org.krakenapps.ldap.LdapSyncMark;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -108,49 +113,29 @@ public class JLdapService implements LdapService {
 
 	@Override
 	public Collection<LdapUser> getUsers(LdapProfile profile) {
-		List<LdapUser> users = new ArrayList<LdapUser>();
-
-		LDAPConnection lc = openLdapConnection(profile, null);
-		int count = 0;
-		try {
-			String filter = "(&(userPrincipalName=*))";
-			if (profile.getServerType() != LdapServerType.ActiveDirectory)
-				filter = "(&(objectClass=inetOrgPerson))";
-
-			String idAttr = profile.getIdAttr() == null ? "uid" : profile.getIdAttr();
-			LDAPSearchConstraints cons = new LDAPSearchConstraints();
-			cons.setTimeLimit(20000);
-			cons.setMaxResults(0);
-			LDAPSearchResults r = lc.search(buildBaseDN(profile), LDAPConnection.SCOPE_SUB, filter, null, false, cons);
-
-			while (r.hasMore()) {
-				try {
-					LDAPEntry entry = r.next();
-					logger.debug("kraken-ldap: fetch entry [{}]", entry.getDN());
-					users.add(new LdapUser(entry, idAttr));
-					count++;
-				} catch (LDAPReferralException e) {
-				}
+		final List<LdapUser> users = new ArrayList<LdapUser>();
+		getUsers(profile, null, new LdapPageCallback<LdapUser>() {
+			@Override
+			public void onPage(List<LdapUser> page) {
+				users.addAll(page);
 			}
+		});
+		return users;
+	}
 
-			logger.info("kraken-ldap: profile [{}], total {} ldap entries", profile.getName(), count);
-		} catch (LDAPException e) {
-			if (e.getResultCode() == LDAPException.SIZE_LIMIT_EXCEEDED)
-				logger.error("kraken-ldap: profile [{}], size limit, fetched only {} ldap entries", profile.getName(), count);
-			throw new IllegalStateException(e);
-		} catch (Exception e) {
-			logger.error("kraken-ldap: cannot fetch domain users", e);
-			throw new IllegalStateException(e);
-		} finally {
-			try {
-				if (lc != null && lc.isConnected())
-					lc.disconnect();
-			} catch (LDAPException e) {
-				logger.error("kraken ldap: disconnect failed", e);
+	@Override
+	public void getUsers(LdapProfile profile, LdapSyncMark since, LdapPageCallback<LdapUser> callback) {
+		String filter = "(&(userPrincipalName=*))";
+		if (profile.getServerType() != LdapServerType.ActiveDirectory)
+			filter = "(&(objectClass=inetOrgPerson))";
+
+		final String idAttr = profile.getIdAttr() == null ? "uid" : profile.getIdAttr();
+		search(profile, filter, since, callback, new EntryMapper<LdapUser>() {
+			@Override
+			public LdapUser map(LDAPEntry entry) {
+				return new LdapUser(entry, idAttr);
 			}
-		}
-
-		return users;
+		});
 	}
 
 	@Override
@@ -192,23 +177,108 @@ public class JLdapService implements LdapService {
 
 	@Override
 	public Collection<LdapOrgUnit> getOrgUnits(LdapProfile profile) {
-		List<LdapOrgUnit> ous = new ArrayList<LdapOrgUnit>();
+		final List<LdapOrgUnit> ous = new ArrayList<LdapOrgUnit>();
+		getOrgUnits(profile, null, new LdapPageCallback<LdapOrgUnit>() {
+			@Override
+			public void onPage(List<LdapOrgUnit> page) {
+				ous.addAll(page);
+			}
+		});
+		return ous;
+	}
+
+	@Override
+	public void getOrgUnits(LdapProfile profile, LdapSyncMark since, LdapPageCallback<LdapOrgUnit> callback) {
+		search(profile, "(objectClass=organizationalUnit)", since, callback, new EntryMapper<LdapOrgUnit>() {
+			@Override
+			public LdapOrgUnit map(LDAPEntry entry) {
+				return new LdapOrgUnit(entry);
+			}
+		});
+	}
+
+	@Override
+	public LdapSyncMark getSyncMark(LdapProfile profile) {
+		if (profile.getServerType() != LdapServerType.ActiveDirectory) {
+			// modifyTimestamp is set by server clock in seconds, step back
+			// enough to cover clock difference between client and server
+			long skew = Long.getLong("kraken.ldap.clock_skew", 300000L);
+			SimpleDateFormat f = new SimpleDateFormat("yyyyMMddHHmmss'Z'");
+			f.setTimeZone(TimeZone.getTimeZone("UTC"));
+			return new LdapSyncMark(null, f.format(new Date(System.currentTimeMillis() - skew)));
+		}
 
 		LDAPConnection lc = openLdapConnection(profile, null);
 		try {
-			String filter = "(objectClass=organizationalUnit)";
-			LDAPSearchResults r = lc.search(buildBaseDN(profile), LDAPConnection.SCOPE_SUB, filter, null, false);
+			LDAPEntry rootDse = lc.read("", new String[] { "dnsHostName", "highestCommittedUSN" });
+			LDAPAttribute usn = rootDse.getAttribute("highestCommittedUSN");
+			if (usn == null)
+				throw new IllegalStateException("highestCommittedUSN not found, profile=" + profile.getName());
 
-			while (r.hasMore()) {
-				try {
-					LDAPEntry entry = r.next();
-					logger.debug("kraken-ldap: fetch org unit entry [{}]", entry.getDN());
-					ous.add(new LdapOrgUnit(entry));
-				} catch (LDAPReferralException e) {
-				}
+			return new LdapSyncMark(getDnsHostName(rootDse, profile), usn.getStringValue());
+		} catch (LDAPException e) {
+			throw new IllegalStateException("cannot read root dse, profile=" + profile.getName(), e);
+		} finally {
+			try {
+				if (lc.isConnected())
+					lc.disconnect();
+			} catch (LDAPException e) {
+				logger.error("kraken ldap: disconnect failed", e);
 			}
-		} catch (Exception e) {
-			logger.error("kraken-ldap: cannot fetch domain users");
+		}
+	}
+
+	private String getDnsHostName(LDAPEntry rootDse, LdapProfile profile) {
+		LDAPAttribute host = rootDse.getAttribute("dnsHostName");
+		return host == null ? profile.getDc() : host.getStringValue();
+	}
+
+	/**
+	 * Fetches entries using simple paged results control, and passes each page
+	 * to callback before fetching the next page. Exceptions thrown by callback
+	 * stop the search and propagate as is.
+	 */
+	private <T> void search(LdapProfile profile, String filter, LdapSyncMark since, LdapPageCallback<T> callback,
+			EntryMapper<T> mapper) {
+		int pageSize = Integer.getInteger("kraken.ldap.page_size", 500);
+		int count = 0;
+		int pages = 0;
+
+		LDAPConnection lc = openLdapConnection(profile, null);
+		try {
+			filter = buildChangedFilter(lc, profile, filter, since);
+
+			byte[] cookie = new byte[0];
+			do {
+				LDAPSearchConstraints cons = new LDAPSearchConstraints();
+				cons.setTimeLimit(20000);
+				cons.setMaxResults(0);
+				cons.setControls(PagedResultsControl.create(pageSize, cookie));
+				LDAPSearchResults r = lc.search(buildBaseDN(profile), LDAPConnection.SCOPE_SUB, filter, null, false, cons);
+
+				List<T> page = new ArrayList<T>(pageSize);
+				while (r.hasMore()) {
+					try {
+						LDAPEntry entry = r.next();
+						logger.debug("kraken-ldap: fetch entry [{}]", entry.getDN());
+						page.add(mapper.map(entry));
+					} catch (LDAPReferralException e) {
+					}
+				}
+
+				count += page.size();
+				pages++;
+				callback.onPage(page);
+				cookie = PagedResultsControl.getCookie(r.getResponseControls());
+			} while (cookie != null);
+
+			logger.info("kraken-ldap: profile [{}], total {} ldap entries in {} pages",
+					new Object[] { profile.getName(), count, pages });
+		} catch (LDAPException e) {
+			if (e.getResultCode() == LDAPException.SIZE_LIMIT_EXCEEDED)
+				logger.error("kraken-ldap: profile [{}], size limit, fetched only {} ldap entries", profile.getName(), count);
+			else
+				logger.error("kraken-ldap: cannot fetch ldap entries, profile [" + profile.getName() + "]", e);
 			throw new IllegalStateException(e);
 		} finally {
 			try {
@@ -218,8 +288,32 @@ public class JLdapService implements LdapService {
 				logger.error("kraken ldap: disconnect failed", e);
 			}
 		}
+	}
 
-		return ous;
+	private String buildChangedFilter(LDAPConnection lc, LdapProfile profile, String filter, LdapSyncMark since)
+			throws LDAPException {
+		if (since == null)
+			return filter;
+
+		if (profile.getServerType() != LdapServerType.ActiveDirectory)
+			return "(&" + filter + "(modifyTimestamp>=" + since.getValue() + "))";
+
+		// usn is local to each domain controller, fall back to full fetch if
+		// dc name is resolved to other domain controller this time
+		LDAPEntry rootDse = lc.read("", new String[] { "dnsHostName" });
+		String host = getDnsHostName(rootDse, profile);
+		if (!since.isComparable(new LdapSyncMark(host, since.getValue()))) {
+			logger.info("kraken-ldap: profile [{}], sync mark [{}] is not valid for domain controller [{}], fetch all",
+					new Object[] { profile.getName(), since, host });
+			return filter;
+		}
+
+		long usn = Long.parseLong(since.getValue()) + 1;
+		return "(&" + filter + "(uSNChanged>=" + usn + "))";
+	}
+
+	private interface EntryMapper<T> {
+		T map(LDAPEntry entry);
 	}
 
 	@Override
@@ -301,6 +301,25 @@ public class LdapScript implements Script {
 		}
 	}
 
+	@ScriptUsage(description = "set full sync interval. syncs in between fetch only changed entries", arguments = {
+			@ScriptArgument(name = "profile name", type = "string", description = "profile name"),
+			@ScriptArgument(name = "full sync interval", type = "int", description = "full sync interval in milliseconds") })
+	public void setFullSyncInterval(String[] args) {
+		LdapProfile p = ldap.getProfile(args[0]);
+		if (p == null) {
+			context.println("profile not found");
+			return;
+		}
+
+		try {
+			p.setFullSyncInterval(Long.valueOf(args[1]));
+			ldap.updateProfile(p);
+			context.println("set");
+		} catch (NumberFormatException e) {
+			context.println("invalid number format");
+		}
+	}
+
 	private LdapSyncService getSyncService() {
 		ServiceReference ref = bc.getServiceReference(LdapSyncService.class.getName());
 		if (ref == null)
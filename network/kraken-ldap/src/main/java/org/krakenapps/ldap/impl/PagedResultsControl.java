@@ -0,0 +1,72 @@
+/*
+ * Copyright 2011 Future Systems
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.krakenapps.ldap.impl;
+
+import com.novell.ldap.LDAPControl;
+import com.novell.ldap.asn1.ASN1Integer;
+import com.novell.ldap.asn1.ASN1Object;
+import com.novell.ldap.asn1.ASN1OctetString;
+import com.novell.ldap.asn1.ASN1Sequence;
+import com.novell.ldap.asn1.LBERDecoder;
+import com.novell.ldap.asn1.LBEREncoder;
+
+/**
+ * Simple paged results control (RFC 2696). Active directory returns at most
+ * MaxPageSize (1000 by default) entries per search, and large result without
+ * paging is held entirely by both server and client.
+ */
+class PagedResultsControl {
+	public static final String OID = "1.2.840.113556.1.4.319";
+
+	private PagedResultsControl() {
+	}
+
+	/**
+	 * Creates non-critical request control, so that server without paging
+	 * support returns all entries at once.
+	 * 
+	 * @param cookie
+	 *            empty for the first page
+	 */
+	public static LDAPControl create(int pageSize, byte[] cookie) {
+		ASN1Sequence seq = new ASN1Sequence(2);
+		seq.add(new ASN1Integer(pageSize));
+		seq.add(new ASN1OctetString(cookie));
+		return new LDAPControl(OID, false, seq.getEncoding(new LBEREncoder()));
+	}
+
+	/**
+	 * @return the cookie for the next page, or null if there is no more page
+	 */
+	public static byte[] getCookie(LDAPControl[] controls) {
+		if (controls == null)
+			return null;
+
+		for (LDAPControl c : controls) {
+			if (!OID.equals(c.getID()) || c.getValue() == null)
+				continue;
+
+			ASN1Object o = new LBERDecoder().decode(c.getValue());
+			if (!(o instanceof ASN1Sequence) || ((ASN1Sequence) o).size() < 2)
+				return null;
+
+			byte[] cookie = ((ASN1OctetString) ((ASN1Sequence) o).get(1)).byteValue();
+			return cookie.length == 0 ? null : cookie;
+		}
+
+		return null;
+	}
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2011 Future Systems
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.krakenapps.ldap.impl;
+
+import static org.junit.Assert.assertEquals;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.krakenapps.dom.api.UserApi;
+import org.krakenapps.dom.model.User;
+import org.krakenapps.ldap.LdapProfile;
+
+public class DomSyncServiceTest {
+	private List<User> users = new ArrayList<User>();
+	private List<String> removed = new ArrayList<String>();
+	private int pages;
+	private LdapProfile profile;
+	private DomSyncService sync;
+
+	@Before
+	public void setup() {
+		System.setProperty("kraken.ldap.page_size", "10");
+
+		profile = new LdapProfile();
+		profile.setName("test");
+		profile.setTargetDomain("localhost");
+
+		UserApi userApi = (UserApi) Proxy.newProxyInstance(UserApi.class.getClassLoader(), new Class<?>[] { UserApi.class },
+				new UserApiStub());
+		sync = new DomSyncService(userApi);
+	}
+
+	@After
+	public void teardown() {
+		System.clearProperty("kraken.ldap.page_size");
+	}
+
+	@Test
+	public void testRemoveUsers() {
+		Set<String> accountNames = new HashSet<String>();
+		for (int i = 0; i < 25; i++) {
+			users.add(newUser("user" + i, "test"));
+			if (i % 2 == 0)
+				accountNames.add("user" + i);
+		}
+		users.add(newUser("local", null));
+		users.add(newUser("other", "other"));
+
+		sync.removeUsers(profile, accountNames);
+
+		assertEquals(3, pages);
+		assertEquals(12, removed.size());
+		for (String loginName : removed)
+			assertEquals(1, Integer.parseInt(loginName.substring(4)) % 2);
+	}
+
+	@Test
+	public void testRemoveUsersAtPageBoundary() {
+		for (int i = 0; i < 20; i++)
+			users.add(newUser("user" + i, "test"));
+
+		sync.removeUsers(profile, new HashSet<String>());
+
+		assertEquals(3, pages);
+		assertEquals(20, removed.size());
+	}
+
+	private User newUser(String loginName, String profileName) {
+		User user = new User();
+		user.setLoginName(loginName);
+		Map<String, Object> ext = new HashMap<String, Object>();
+		if (profileName != null) {
+			Map<String, Object> ldap = new HashMap<String, Object>();
+			ldap.put("profile", profileName);
+			ext.put("ldap", ldap);
+		}
+		user.setExt(ext);
+		return user;
+	}
+
+	/**
+	 * Supports paged getUsers and removeUsers only, so loading all users fails
+	 */
+	private class UserApiStub implements InvocationHandler {
+		@SuppressWarnings("unchecked")
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			Class<?>[] types = method.getParameterTypes();
+			if (method.getName().equals("getUsers") && types.length == 3 && types[1] == int.class) {
+				pages++;
+				int offset = (Integer) args[1];
+				int limit = (Integer) args[2];
+				return new ArrayList<User>(users.subList(Math.min(offset, users.size()),
+						Math.min(offset + limit, users.size())));
+			}
+
+			if (method.getName().equals("removeUsers")) {
+				removed.addAll((Collection<String>) args[1]);
+				return null;
+			}
+
+			throw new UnsupportedOperationException(method.getName());
+		}
+	}
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2011 Future Systems
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.krakenapps.ldap.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.krakenapps.ldap.LdapOrgUnit;
+import org.krakenapps.ldap.LdapPageCallback;
+import org.krakenapps.ldap.LdapProfile;
+import org.krakenapps.ldap.LdapServerType;
+import org.krakenapps.ldap.LdapSyncMark;
+import org.krakenapps.ldap.LdapUser;
+
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.listener.InMemoryListenerConfig;
+import com.unboundid.ldap.sdk.Modification;
+import com.unboundid.ldap.sdk.ModificationType;
+
+public class JLdapServiceTest {
+	private static final String BASE_DN = "dc=example,dc=com";
+
+	private InMemoryDirectoryServer server;
+	private LdapProfile profile;
+	private JLdapService ldap = new JLdapService();
+
+	@Before
+	public void setup() throws Exception {
+		InMemoryDirectoryServerConfig config = new InMemoryDirectoryServerConfig(BASE_DN);
+		config.addAdditionalBindCredentials("cn=Directory Manager", "password");
+		config.setListenerConfigs(InMemoryListenerConfig.createLDAPConfig("default", 0));
+		server = new InMemoryDirectoryServer(config);
+		server.add("dn: " + BASE_DN, "objectClass: top", "objectClass: domain", "dc: example");
+		server.add("dn: ou=people," + BASE_DN, "objectClass: top", "objectClass: organizationalUnit", "ou: people");
+		for (int i = 0; i < 25; i++)
+			server.add("dn: uid=user" + i + ",ou=people," + BASE_DN, "objectClass: top", "objectClass: person",
+					"objectClass: organizationalPerson", "objectClass: inetOrgPerson", "uid: user" + i, "cn: User " + i,
+					"sn: " + i);
+		server.startListening();
+
+		System.setProperty("kraken.ldap.page_size", "10");
+
+		profile = new LdapProfile();
+		profile.setName("test");
+		profile.setDc("localhost");
+		profile.setPort(server.getListenPort());
+		profile.setAccount("cn=Directory Manager");
+		profile.setPassword("password");
+		profile.setBaseDn(BASE_DN);
+		profile.setServerType(LdapServerType.SunOneDirectory);
+		profile.setIdAttr("uid");
+	}
+
+	@After
+	public void teardown() {
+		server.shutDown(true);
+		System.clearProperty("kraken.ldap.page_size");
+		System.clearProperty("kraken.ldap.clock_skew");
+	}
+
+	@Test
+	public void testPagedUsers() {
+		PageCollector<LdapUser> c = new PageCollector<LdapUser>();
+		ldap.getUsers(profile, null, c);
+
+		assertEquals(3, c.pages.size());
+		assertEquals(Arrays.asList(10, 10, 5), c.getPageSizes());
+
+		Set<String> names = new HashSet<String>();
+		for (LdapUser user : c.getAll())
+			names.add(user.getAccountName());
+		assertEquals(25, names.size());
+		assertTrue(names.contains("user24"));
+
+		assertEquals(25, ldap.getUsers(profile).size());
+	}
+
+	@Test
+	public void testIncrementalUsers() throws Exception {
+		System.setProperty("kraken.ldap.clock_skew", "0");
+
+		// modifyTimestamp has second precision
+		Thread.sleep(1100);
+		LdapSyncMark mark = ldap.getSyncMark(profile);
+		assertNull(mark.getOrigin());
+		Thread.sleep(1100);
+
+		server.modify("uid=user3,ou=people," + BASE_DN, new Modification(ModificationType.REPLACE, "title", "manager"));
+
+		PageCollector<LdapUser> c = new PageCollector<LdapUser>();
+		ldap.getUsers(profile, mark, c);
+		List<LdapUser> users = c.getAll();
+		assertEquals(1, users.size());
+		assertEquals("user3", users.get(0).getAccountName());
+		assertEquals("manager", users.get(0).getTitle());
+
+		PageCollector<LdapOrgUnit> ous = new PageCollector<LdapOrgUnit>();
+		ldap.getOrgUnits(profile, mark, ous);
+		assertTrue(ous.getAll().isEmpty());
+	}
+
+	@Test
+	public void testOrgUnits() {
+		List<LdapOrgUnit> ous = new ArrayList<LdapOrgUnit>(ldap.getOrgUnits(profile));
+		assertEquals(1, ous.size());
+		assertEquals("people", ous.get(0).getName());
+	}
+
+	@Test
+	public void testSyncMark() {
+		LdapSyncMark usn = LdapSyncMark.parse("dc1.example.com/12345");
+		assertEquals("dc1.example.com", usn.getOrigin());
+		assertEquals("12345", usn.getValue());
+		assertEquals("dc1.example.com/12345", usn.toString());
+		assertTrue(usn.isComparable(new LdapSyncMark("DC1.example.com", "1")));
+		assertFalse(usn.isComparable(new LdapSyncMark("dc2.example.com", "1")));
+
+		LdapSyncMark ts = LdapSyncMark.parse("20121001000000Z");
+		assertNull(ts.getOrigin());
+		assertEquals("20121001000000Z", ts.toString());
+		assertFalse(ts.isComparable(usn));
+		assertNull(LdapSyncMark.parse(null));
+	}
+
+	private static class PageCollector<T> implements LdapPageCallback<T> {
+		private List<List<T>> pages = new ArrayList<List<T>>();
+
+		@Override
+		public void onPage(List<T> page) {
+			pages.add(page);
+		}
+
+		public List<Integer> getPageSizes() {
+			List<Integer> sizes = new ArrayList<Integer>();
+			for (List<T> page : pages)
+				sizes.add(page.size());
+			return sizes;
+		}
+
+		public List<T> getAll() {
+			List<T> all = new ArrayList<T>();
+			for (List<T> page : pages)
+				all.addAll(page);
+			return all;
+		}
+	}
+}
@@ -7,6 +7,8 @@ public interface ForwardProxy {
 
 	ForwardRoute getRoute(String name);
 
+	ForwardRouteStats getRouteStats(String name);
+
 	void addRoute(String name, ForwardRoute route);
 
 	void removeRoute(String name);
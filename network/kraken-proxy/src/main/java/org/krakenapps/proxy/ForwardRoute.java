@@ -6,6 +6,15 @@ public class ForwardRoute {
 	private InetSocketAddress remote;
 	private InetSocketAddress local;
 
+	// connected idle upstream connections kept ready, 0 disables pooling
+	private int poolSize;
+
+	// pooled connection idle longer than this (in milliseconds) is discarded
+	private int idleTimeout = 60000;
+
+	// read into direct buffers, so relayed writes skip heap to direct copy
+	private boolean directBuffer;
+
 	public ForwardRoute(InetSocketAddress local, InetSocketAddress remote) {
 		this.remote = remote;
 		this.local = local;
@@ -18,4 +27,34 @@ public class ForwardRoute {
 	public InetSocketAddress getLocal() {
 		return local;
 	}
+
+	public int getPoolSize() {
+		return poolSize;
+	}
+
+	public void setPoolSize(int poolSize) {
+		this.poolSize = poolSize;
+	}
+
+	public int getIdleTimeout() {
+		return idleTimeout;
+	}
+
+	public void setIdleTimeout(int idleTimeout) {
+		this.idleTimeout = idleTimeout;
+	}
+
+	public boolean isDirectBuffer() {
+		return directBuffer;
+	}
+
+	public void setDirectBuffer(boolean directBuffer) {
+		this.directBuffer = directBuffer;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("local=%s, remote=%s, pool=%d, idle_timeout=%dms, direct=%s", local, remote, poolSize,
+				idleTimeout, directBuffer);
+	}
 }
@@ -0,0 +1,43 @@
+package org.krakenapps.proxy;
+
+/**
+ * Traffic and connection counters of a forward route. Latencies are in
+ * microseconds.
+ */
+public interface ForwardRouteStats {
+	int getActiveConnections();
+
+	long getTotalConnections();
+
+	long getFailedConnections();
+
+	int getIdleConnections();
+
+	long getPoolHits();
+
+	long getPoolMisses();
+
+	/**
+	 * @return bytes received from clients and sent to upstream
+	 */
+	long getRxBytes();
+
+	/**
+	 * @return bytes received from upstream and sent to clients
+	 */
+	long getTxBytes();
+
+	/**
+	 * @return average upstream connect latency
+	 */
+	long getConnectLatency();
+
+	long getMaxConnectLatency();
+
+	/**
+	 * @return average time from client accept to upstream ready
+	 */
+	long getQueueTime();
+
+	long getMaxQueueTime();
+}
@@ -15,9 +15,9 @@
  */
 package org.krakenapps.proxy.impl;
 
-import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
 
-import org.jboss.netty.bootstrap.ClientBootstrap;
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.Channel;
@@ -28,21 +28,21 @@ import org.jboss.netty.channel.ChannelStateEvent;
 import org.jboss.netty.channel.ExceptionEvent;
 import org.jboss.netty.channel.MessageEvent;
 import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
-import org.jboss.netty.channel.socket.ClientSocketChannelFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class ForwardProxyHandler extends SimpleChannelUpstreamHandler {
-	private final ClientSocketChannelFactory cf;
-	private final String remoteHost;
-	private final int remotePort;
+	private static final Logger logger = LoggerFactory.getLogger(ForwardProxyHandler.class.getName());
+	private final UpstreamPool pool;
+	private final RouteStats stats;
 
 	final Object trafficLock = new Object();
 
 	private volatile Channel outboundChannel;
 
-	public ForwardProxyHandler(ClientSocketChannelFactory cf, String remoteHost, int remotePort) {
-		this.cf = cf;
-		this.remoteHost = remoteHost;
-		this.remotePort = remotePort;
+	public ForwardProxyHandler(UpstreamPool pool, RouteStats stats) {
+		this.pool = pool;
+		this.stats = stats;
 	}
 
 	@Override
@@ -50,11 +50,11 @@ public class ForwardProxyHandler extends SimpleChannelUpstreamHandler {
 		// Suspend incoming traffic until connected to the remote host
 		final Channel inboundChannel = e.getChannel();
 		inboundChannel.setReadable(false);
+		stats.opened();
 
-		// Start the connection attempt
-		ClientBootstrap cb = new ClientBootstrap(cf);
-		cb.getPipeline().addLast("handler", new OutboundHandler(e.getChannel()));
-		ChannelFuture f = cb.connect(new InetSocketAddress(remoteHost, remotePort));
+		// Take pooled connection, or start the connection attempt
+		final long begin = System.nanoTime();
+		ChannelFuture f = pool.acquire(inboundChannel, trafficLock);
 
 		outboundChannel = f.getChannel();
 		f.addListener(new ChannelFutureListener() {
@@ -63,10 +63,12 @@ public class ForwardProxyHandler extends SimpleChannelUpstreamHandler {
 				if (future.isSuccess()) {
 					// Connection attempt succeeded:
 					// Begin to accept incoming traffic.
+					stats.recordQueueTime((System.nanoTime() - begin) / 1000);
 					inboundChannel.setReadable(true);
 				} else {
 					// Close the connection if the connection attempt has
 					// failed.
+					stats.failed();
 					inboundChannel.close();
 				}
 			}
@@ -76,6 +78,7 @@ public class ForwardProxyHandler extends SimpleChannelUpstreamHandler {
 	@Override
 	public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
 		ChannelBuffer msg = (ChannelBuffer) e.getMessage();
+		stats.addRxBytes(msg.readableBytes());
 		synchronized (trafficLock) {
 			outboundChannel.write(msg);
 
@@ -98,26 +101,77 @@ public class ForwardProxyHandler extends SimpleChannelUpstreamHandler {
 
 	@Override
 	public void channelClosed(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
+		stats.closed();
 		if (outboundChannel != null)
 			closeOnFlush(outboundChannel);
 	}
 
 	@Override
 	public void exceptionCaught(ChannelHandlerContext ctx, ExceptionEvent e) throws Exception {
-		e.getCause().printStackTrace();
+		logger.debug("kraken proxy: inbound channel error", e.getCause());
 		closeOnFlush(e.getChannel());
 	}
 
-	private class OutboundHandler extends SimpleChannelUpstreamHandler {
-		private final Channel inboundChannel;
-		
-		public OutboundHandler(Channel inboundChannel) {
+	/**
+	 * Relays upstream traffic to client channel. Upstream connection may be
+	 * connected before client is attached, so received data is kept until
+	 * attach.
+	 */
+	static class OutboundHandler extends SimpleChannelUpstreamHandler {
+		private static final int MAX_PENDING_BYTES = 65536;
+		private final RouteStats stats;
+		private Channel inboundChannel;
+		private Object trafficLock;
+		private List<ChannelBuffer> pending;
+		private int pendingBytes;
+		private boolean closed;
+
+		public OutboundHandler(RouteStats stats) {
+			this.stats = stats;
+		}
+
+		/**
+		 * @return false if upstream is already closed, and client is not
+		 *         attached
+		 */
+		public synchronized boolean attach(Channel inboundChannel, Object trafficLock) {
+			if (closed)
+				return false;
+
 			this.inboundChannel = inboundChannel;
+			this.trafficLock = trafficLock;
+
+			// e.g. server greeting received while pooled
+			if (pending != null) {
+				for (ChannelBuffer msg : pending) {
+					stats.addTxBytes(msg.readableBytes());
+					inboundChannel.write(msg);
+				}
+				pending = null;
+			}
+			return true;
 		}
 
 		@Override
 		public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
 			ChannelBuffer msg = (ChannelBuffer) e.getMessage();
+			Channel inboundChannel;
+			Object trafficLock;
+			synchronized (this) {
+				inboundChannel = this.inboundChannel;
+				trafficLock = this.trafficLock;
+				if (inboundChannel == null) {
+					if (pending == null)
+						pending = new ArrayList<ChannelBuffer>();
+					pending.add(msg);
+					pendingBytes += msg.readableBytes();
+					if (pendingBytes > MAX_PENDING_BYTES)
+						e.getChannel().close();
+					return;
+				}
+			}
+
+			stats.addTxBytes(msg.readableBytes());
 			synchronized (trafficLock) {
 				inboundChannel.write(msg);
 				// If inboundChannel is saturated, do not read until notified in
@@ -129,6 +183,15 @@ public class ForwardProxyHandler extends SimpleChannelUpstreamHandler {
 
 		@Override
 		public void channelInterestChanged(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
+			Channel inboundChannel;
+			Object trafficLock;
+			synchronized (this) {
+				inboundChannel = this.inboundChannel;
+				trafficLock = this.trafficLock;
+			}
+			if (inboundChannel == null)
+				return;
+
 			// If outboundChannel is not saturated anymore, continue accepting
 			// the incoming traffic from the inboundChannel.
 			synchronized (trafficLock) {
@@ -139,12 +202,18 @@ public class ForwardProxyHandler extends SimpleChannelUpstreamHandler {
 
 		@Override
 		public void channelClosed(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
-			closeOnFlush(inboundChannel);
+			Channel inboundChannel;
+			synchronized (this) {
+				closed = true;
+				inboundChannel = this.inboundChannel;
+			}
+			if (inboundChannel != null)
+				closeOnFlush(inboundChannel);
 		}
 
 		@Override
 		public void exceptionCaught(ChannelHandlerContext ctx, ExceptionEvent e) throws Exception {
-			e.getCause().printStackTrace();
+			logger.debug("kraken proxy: outbound channel error", e.getCause());
 			closeOnFlush(e.getChannel());
 		}
 	}
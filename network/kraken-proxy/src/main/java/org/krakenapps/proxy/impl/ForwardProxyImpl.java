@@ -22,44 +22,98 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.felix.ipojo.annotations.Component;
 import org.apache.felix.ipojo.annotations.Invalidate;
 import org.apache.felix.ipojo.annotations.Provides;
 import org.apache.felix.ipojo.annotations.Validate;
 import org.jboss.netty.bootstrap.ServerBootstrap;
+import org.jboss.netty.buffer.DirectChannelBufferFactory;
 import org.jboss.netty.channel.Channel;
-import org.jboss.netty.channel.socket.ClientSocketChannelFactory;
 import org.jboss.netty.channel.socket.nio.NioClientSocketChannelFactory;
 import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
 import org.krakenapps.proxy.ForwardProxy;
 import org.krakenapps.proxy.ForwardRoute;
-
+import org.krakenapps.proxy.ForwardRouteStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * All routes share one server and one client channel factory. Worker count is
+ * bounded by kraken.proxy.workers, and boss threads are one per route plus
+ * one for upstream connects. Upstream pools of all routes are maintained by
+ * one timer thread every kraken.proxy.pool_maintain_interval milliseconds.
+ */
 @Component(name = "forward-proxy")
 @Provides
 public class ForwardProxyImpl implements ForwardProxy {
-	private ExecutorService executor;
+	private final Logger logger = LoggerFactory.getLogger(ForwardProxyImpl.class.getName());
+	private ExecutorService bossExecutor;
+	private ExecutorService workerExecutor;
+	private NioServerSocketChannelFactory serverFactory;
+	private NioClientSocketChannelFactory clientFactory;
+	private ScheduledExecutorService poolTimer;
 	private ConcurrentMap<String, ForwardChannel> routeMap;
 
 	@Validate
 	public void start() {
-		executor = Executors.newCachedThreadPool();
+		int workers = Integer.getInteger("kraken.proxy.workers", Runtime.getRuntime().availableProcessors() * 2);
+
+		// server and client factories run their own workers
+		bossExecutor = Executors.newCachedThreadPool(new ProxyThreadFactory("Forward Proxy Boss"));
+		workerExecutor = Executors.newFixedThreadPool(workers * 2, new ProxyThreadFactory("Forward Proxy Worker"));
+		serverFactory = new NioServerSocketChannelFactory(bossExecutor, workerExecutor, workers);
+		clientFactory = new NioClientSocketChannelFactory(bossExecutor, workerExecutor, workers);
 		routeMap = new ConcurrentHashMap<String, ForwardChannel>();
+
+		// expire idle upstream connections and refill pools
+		int interval = Integer.getInteger("kraken.proxy.pool_maintain_interval", 1000);
+		poolTimer = Executors.newSingleThreadScheduledExecutor(new ProxyThreadFactory("Forward Proxy Pool Timer"));
+		poolTimer.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				for (ForwardChannel channel : routeMap.values()) {
+					try {
+						channel.pool.maintain();
+					} catch (Throwable t) {
+						logger.error("kraken proxy: cannot maintain upstream pool of " + channel.route, t);
+					}
+				}
+			}
+		}, interval, interval, TimeUnit.MILLISECONDS);
 	}
 
 	@Invalidate
 	public void stop() {
+		if (poolTimer != null) {
+			poolTimer.shutdownNow();
+			poolTimer = null;
+		}
+
 		if (routeMap != null) {
 			// stop all proxies
 			for (ForwardChannel channel : routeMap.values())
-				channel.server.close();
+				channel.close();
 
 			routeMap.clear();
 		}
 
-		if (executor != null) {
-			executor.shutdownNow();
-			executor = null;
+		if (serverFactory != null) {
+			serverFactory.releaseExternalResources();
+			clientFactory.releaseExternalResources();
+			serverFactory = null;
+			clientFactory = null;
+		}
+
+		if (bossExecutor != null) {
+			bossExecutor.shutdownNow();
+			workerExecutor.shutdownNow();
+			bossExecutor = null;
+			workerExecutor = null;
 		}
 	}
 
@@ -81,18 +135,32 @@ public class ForwardProxyImpl implements ForwardProxy {
 		return null;
 	}
 
+	@Override
+	public ForwardRouteStats getRouteStats(String name) {
+		if (routeMap == null)
+			return null;
+
+		ForwardChannel channel = routeMap.get(name);
+		if (channel != null)
+			return channel.stats;
+		return null;
+	}
+
 	@Override
 	public void addRoute(String name, ForwardRoute route) {
-		ServerBootstrap sb = new ServerBootstrap(new NioServerSocketChannelFactory(executor, executor));
-		ClientSocketChannelFactory cf = new NioClientSocketChannelFactory(executor, executor);
+		RouteStats stats = new RouteStats();
+		UpstreamPool pool = new UpstreamPool(clientFactory, route, stats);
 
-		String remoteHost = route.getRemote().getHostName();
-		int remotePort = route.getRemote().getPort();
-		int localPort = route.getLocal().getPort();
+		ServerBootstrap sb = new ServerBootstrap(serverFactory);
+		sb.setPipelineFactory(new ForwardProxyPipelineFactory(pool, stats));
+		sb.setOption("child.tcpNoDelay", true);
+		if (route.isDirectBuffer())
+			sb.setOption("child.bufferFactory", DirectChannelBufferFactory.getInstance());
 
-		sb.setPipelineFactory(new ForwardProxyPipelineFactory(cf, remoteHost, remotePort));
+		int localPort = route.getLocal().getPort();
 		Channel server = sb.bind(new InetSocketAddress(localPort));
-		routeMap.put(name, new ForwardChannel(server, route));
+		pool.start();
+		routeMap.put(name, new ForwardChannel(server, route, pool, stats));
 	}
 
 	@Override
@@ -100,17 +168,42 @@ public class ForwardProxyImpl implements ForwardProxy {
 		if (routeMap.containsKey(name)) {
 			ForwardChannel channel = routeMap.remove(name);
 			if (channel != null)
-				channel.server.close();
+				channel.close();
 		}
 	}
 
 	static class ForwardChannel {
-		public ForwardChannel(Channel server, ForwardRoute route) {
+		public ForwardChannel(Channel server, ForwardRoute route, UpstreamPool pool, RouteStats stats) {
 			this.server = server;
 			this.route = route;
+			this.pool = pool;
+			this.stats = stats;
 		}
 
 		private ForwardRoute route;
 		private Channel server;
+		private UpstreamPool pool;
+		private RouteStats stats;
+
+		public void close() {
+			server.close();
+			pool.close();
+		}
+	}
+
+	private static class ProxyThreadFactory implements ThreadFactory {
+		private final String name;
+		private final AtomicInteger seq = new AtomicInteger();
+
+		public ProxyThreadFactory(String name) {
+			this.name = name;
+		}
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, name + " " + seq.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		}
 	}
 }
@@ -18,23 +18,20 @@ package org.krakenapps.proxy.impl;
 import org.jboss.netty.channel.ChannelPipeline;
 import org.jboss.netty.channel.ChannelPipelineFactory;
 import org.jboss.netty.channel.Channels;
-import org.jboss.netty.channel.socket.ClientSocketChannelFactory;
 
 public class ForwardProxyPipelineFactory implements ChannelPipelineFactory {
-	private final ClientSocketChannelFactory cf;
-	private final String remoteHost;
-	private final int remotePort;
-	
-	public ForwardProxyPipelineFactory(ClientSocketChannelFactory cf, String remoteHost, int remotePort) {
-		this.cf = cf;
-		this.remoteHost = remoteHost;
-		this.remotePort = remotePort;
+	private final UpstreamPool pool;
+	private final RouteStats stats;
+
+	public ForwardProxyPipelineFactory(UpstreamPool pool, RouteStats stats) {
+		this.pool = pool;
+		this.stats = stats;
 	}
 	
 	@Override
 	public ChannelPipeline getPipeline() throws Exception {
 		ChannelPipeline p = Channels.pipeline();
-		p.addLast("handler", new ForwardProxyHandler(cf, remoteHost, remotePort));
+		p.addLast("handler", new ForwardProxyHandler(pool, stats));
 		return p;
 	}
 
@@ -8,6 +8,7 @@ import org.krakenapps.api.ScriptContext;
 import org.krakenapps.api.ScriptUsage;
 import org.krakenapps.proxy.ForwardProxy;
 import org.krakenapps.proxy.ForwardRoute;
+import org.krakenapps.proxy.ForwardRouteStats;
 
 public class ProxyScript implements Script {
 	private ScriptContext context;
@@ -31,11 +32,30 @@ public class ProxyScript implements Script {
 		}
 	}
 
+	@ScriptUsage(description = "print forward route stats", arguments = { @ScriptArgument(name = "name", type = "string", description = "route name") })
+	public void forwardRouteStats(String[] args) {
+		ForwardRouteStats stats = forwardProxy.getRouteStats(args[0]);
+		if (stats == null) {
+			context.println("route not found");
+			return;
+		}
+
+		context.printf("active connections: %d\n", stats.getActiveConnections());
+		context.printf("total connections: %d (failed %d)\n", stats.getTotalConnections(), stats.getFailedConnections());
+		context.printf("idle pooled connections: %d (hit %d, miss %d)\n", stats.getIdleConnections(),
+				stats.getPoolHits(), stats.getPoolMisses());
+		context.printf("rx bytes: %d, tx bytes: %d\n", stats.getRxBytes(), stats.getTxBytes());
+		context.printf("connect latency: avg %dus, max %dus\n", stats.getConnectLatency(), stats.getMaxConnectLatency());
+		context.printf("queue time: avg %dus, max %dus\n", stats.getQueueTime(), stats.getMaxQueueTime());
+	}
+
 	@ScriptUsage(description = "add forward route", arguments = {
 			@ScriptArgument(name = "name", type = "string", description = "route name"),
 			@ScriptArgument(name = "remote host", type = "string", description = "remote hostname or ip"),
 			@ScriptArgument(name = "remote port", type = "int", description = "remote port"),
-			@ScriptArgument(name = "local port", type = "int", description = "local port") })
+			@ScriptArgument(name = "local port", type = "int", description = "local port"),
+			@ScriptArgument(name = "pool size", type = "int", description = "connected idle upstream connections, 0 by default", optional = true),
+			@ScriptArgument(name = "direct buffer", type = "string", description = "true or false, false by default", optional = true) })
 	public void addForwardRoute(String[] args) {
 		String name = args[0];
 		String remoteHost = args[1];
@@ -43,6 +63,10 @@ public class ProxyScript implements Script {
 		int localPort = Integer.valueOf(args[3]);
 		ForwardRoute route = new ForwardRoute(new InetSocketAddress(localPort), new InetSocketAddress(remoteHost,
 				remotePort));
+		if (args.length > 4)
+			route.setPoolSize(Integer.valueOf(args[4]));
+		if (args.length > 5)
+			route.setDirectBuffer(Boolean.parseBoolean(args[5]));
 
 		forwardProxy.addRoute(name, route);
 		context.println("route added");
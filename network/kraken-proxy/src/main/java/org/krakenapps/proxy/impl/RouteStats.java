@@ -0,0 +1,137 @@
+package org.krakenapps.proxy.impl;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.krakenapps.proxy.ForwardRouteStats;
+
+class RouteStats implements ForwardRouteStats {
+	private AtomicInteger activeConnections = new AtomicInteger();
+	private AtomicLong totalConnections = new AtomicLong();
+	private AtomicLong failedConnections = new AtomicLong();
+	private AtomicLong poolHits = new AtomicLong();
+	private AtomicLong poolMisses = new AtomicLong();
+	private AtomicLong rxBytes = new AtomicLong();
+	private AtomicLong txBytes = new AtomicLong();
+	private volatile int idleConnections;
+
+	private long connectCount;
+	private long totalConnectLatency;
+	private long maxConnectLatency;
+	private long queueCount;
+	private long totalQueueTime;
+	private long maxQueueTime;
+
+	void opened() {
+		activeConnections.incrementAndGet();
+		totalConnections.incrementAndGet();
+	}
+
+	void closed() {
+		activeConnections.decrementAndGet();
+	}
+
+	void failed() {
+		failedConnections.incrementAndGet();
+	}
+
+	void poolHit() {
+		poolHits.incrementAndGet();
+	}
+
+	void poolMiss() {
+		poolMisses.incrementAndGet();
+	}
+
+	void addRxBytes(int bytes) {
+		rxBytes.addAndGet(bytes);
+	}
+
+	void addTxBytes(int bytes) {
+		txBytes.addAndGet(bytes);
+	}
+
+	void setIdleConnections(int idleConnections) {
+		this.idleConnections = idleConnections;
+	}
+
+	synchronized void recordConnect(long latency) {
+		connectCount++;
+		totalConnectLatency += latency;
+		maxConnectLatency = Math.max(maxConnectLatency, latency);
+	}
+
+	synchronized void recordQueueTime(long time) {
+		queueCount++;
+		totalQueueTime += time;
+		maxQueueTime = Math.max(maxQueueTime, time);
+	}
+
+	@Override
+	public int getActiveConnections() {
+		return activeConnections.get();
+	}
+
+	@Override
+	public long getTotalConnections() {
+		return totalConnections.get();
+	}
+
+	@Override
+	public long getFailedConnections() {
+		return failedConnections.get();
+	}
+
+	@Override
+	public int getIdleConnections() {
+		return idleConnections;
+	}
+
+	@Override
+	public long getPoolHits() {
+		return poolHits.get();
+	}
+
+	@Override
+	public long getPoolMisses() {
+		return poolMisses.get();
+	}
+
+	@Override
+	public long getRxBytes() {
+		return rxBytes.get();
+	}
+
+	@Override
+	public long getTxBytes() {
+		return txBytes.get();
+	}
+
+	@Override
+	public synchronized long getConnectLatency() {
+		return connectCount == 0 ? 0 : totalConnectLatency / connectCount;
+	}
+
+	@Override
+	public synchronized long getMaxConnectLatency() {
+		return maxConnectLatency;
+	}
+
+	@Override
+	public synchronized long getQueueTime() {
+		return queueCount == 0 ? 0 : totalQueueTime / queueCount;
+	}
+
+	@Override
+	public synchronized long getMaxQueueTime() {
+		return maxQueueTime;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("active=%d, total=%d, failed=%d, idle=%d, pool hit/miss=%d/%d, rx=%d, tx=%d, "
+				+ "connect(avg/max)=%d/%dus, queue(avg/max)=%d/%dus", getActiveConnections(), getTotalConnections(),
+				getFailedConnections(), idleConnections, getPoolHits(), getPoolMisses(), getRxBytes(), getTxBytes(),
+				getConnectLatency(), getMaxConnectLatency(), getQueueTime(), getMaxQueueTime());
+	}
+}
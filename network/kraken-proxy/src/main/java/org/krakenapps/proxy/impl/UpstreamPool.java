@@ -0,0 +1,241 @@
+package org.krakenapps.proxy.impl;
+
+import java.net.InetSocketAddress;
+import java.util.Iterator;
+import java.util.LinkedList;
+
+import org.jboss.netty.bootstrap.ClientBootstrap;
+import org.jboss.netty.buffer.DirectChannelBufferFactory;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelPipelineFactory;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.socket.ClientSocketChannelFactory;
+import org.krakenapps.proxy.ForwardRoute;
+
+/**
+ * Keeps connected upstream connections of a route ready, so accepted client
+ * does not wait for connect. Forwarded stream has no framing, so each
+ * upstream connection serves only one client and pool is refilled in
+ * background. Idle connections use tcp keepalive, and are discarded after
+ * idle timeout by periodic {@link #maintain()}, which also refills the pool.
+ */
+class UpstreamPool {
+	private final ForwardRoute route;
+	private final RouteStats stats;
+	private final ClientBootstrap bootstrap;
+	private final LinkedList<IdleChannel> idle = new LinkedList<IdleChannel>();
+	private int connecting;
+	private boolean closed;
+
+	public UpstreamPool(ClientSocketChannelFactory cf, ForwardRoute route, RouteStats stats) {
+		this.route = route;
+		this.stats = stats;
+
+		final RouteStats s = stats;
+		bootstrap = new ClientBootstrap(cf);
+		bootstrap.setPipelineFactory(new ChannelPipelineFactory() {
+			@Override
+			public ChannelPipeline getPipeline() throws Exception {
+				ChannelPipeline p = Channels.pipeline();
+				p.addLast("handler", new ForwardProxyHandler.OutboundHandler(s));
+				return p;
+			}
+		});
+		bootstrap.setOption("tcpNoDelay", true);
+		bootstrap.setOption("keepAlive", true);
+		if (route.isDirectBuffer())
+			bootstrap.setOption("bufferFactory", DirectChannelBufferFactory.getInstance());
+	}
+
+	public void start() {
+		fill();
+	}
+
+	public void close() {
+		LinkedList<IdleChannel> channels;
+		synchronized (this) {
+			closed = true;
+			channels = new LinkedList<IdleChannel>(idle);
+			idle.clear();
+			stats.setIdleConnections(0);
+		}
+
+		for (IdleChannel c : channels)
+			c.channel.close();
+	}
+
+	/**
+	 * Attaches idle upstream connection to client channel, or connects new
+	 * one if pool is empty.
+	 * 
+	 * @return future of upstream connect
+	 */
+	public ChannelFuture acquire(Channel inbound, Object trafficLock) {
+		ChannelFuture f = null;
+		Channel ch;
+		while ((ch = poll()) != null) {
+			// closed by upstream just before attach, try next one
+			if (getHandler(ch).attach(inbound, trafficLock)) {
+				f = Channels.succeededFuture(ch);
+				break;
+			}
+		}
+
+		if (f != null) {
+			stats.poolHit();
+		} else {
+			if (route.getPoolSize() > 0)
+				stats.poolMiss();
+			f = connect();
+			getHandler(f.getChannel()).attach(inbound, trafficLock);
+		}
+
+		fill();
+		return f;
+	}
+
+	/**
+	 * Closes expired idle connections and refills pool. Called periodically,
+	 * so idle connections do not outlive idle timeout and failed connects are
+	 * retried while no client arrives.
+	 */
+	public void maintain() {
+		LinkedList<Channel> expired = new LinkedList<Channel>();
+		synchronized (this) {
+			long now = System.currentTimeMillis();
+			Iterator<IdleChannel> it = idle.iterator();
+			while (it.hasNext()) {
+				IdleChannel c = it.next();
+				if (!isUsable(c, now)) {
+					it.remove();
+					expired.add(c.channel);
+				}
+			}
+			stats.setIdleConnections(idle.size());
+		}
+
+		for (Channel c : expired)
+			c.close();
+
+		fill();
+	}
+
+	/**
+	 * Takes oldest usable idle connection, and closes expired ones on the way.
+	 * 
+	 * @return idle connection, or null if pool is empty
+	 */
+	private Channel poll() {
+		Channel ch = null;
+		LinkedList<Channel> expired = new LinkedList<Channel>();
+		synchronized (this) {
+			long now = System.currentTimeMillis();
+			while (!idle.isEmpty()) {
+				IdleChannel c = idle.removeFirst();
+				if (isUsable(c, now)) {
+					ch = c.channel;
+					break;
+				}
+				expired.add(c.channel);
+			}
+			stats.setIdleConnections(idle.size());
+		}
+
+		for (Channel c : expired)
+			c.close();
+
+		return ch;
+	}
+
+	private boolean isUsable(IdleChannel c, long now) {
+		return c.channel.isConnected() && now - c.since < route.getIdleTimeout();
+	}
+
+	private ForwardProxyHandler.OutboundHandler getHandler(Channel ch) {
+		return (ForwardProxyHandler.OutboundHandler) ch.getPipeline().get("handler");
+	}
+
+	private ChannelFuture connect() {
+		final long begin = System.nanoTime();
+		InetSocketAddress remote = route.getRemote();
+		ChannelFuture f = bootstrap.connect(new InetSocketAddress(remote.getHostName(), remote.getPort()));
+		f.addListener(new ChannelFutureListener() {
+			@Override
+			public void operationComplete(ChannelFuture future) throws Exception {
+				if (future.isSuccess())
+					stats.recordConnect((System.nanoTime() - begin) / 1000);
+			}
+		});
+		return f;
+	}
+
+	/**
+	 * Connects up to pool size. Failed connect is retried on next acquire or
+	 * maintain.
+	 */
+	private void fill() {
+		int count;
+		synchronized (this) {
+			if (closed)
+				return;
+
+			count = route.getPoolSize() - idle.size() - connecting;
+			if (count <= 0)
+				return;
+
+			connecting += count;
+		}
+
+		for (int i = 0; i < count; i++) {
+			ChannelFuture f = connect();
+			f.addListener(new ChannelFutureListener() {
+				@Override
+				public void operationComplete(ChannelFuture future) throws Exception {
+					Channel ch = future.getChannel();
+					synchronized (UpstreamPool.this) {
+						connecting--;
+						if (!future.isSuccess())
+							return;
+
+						if (!closed) {
+							idle.addLast(new IdleChannel(ch));
+							stats.setIdleConnections(idle.size());
+							ch.getCloseFuture().addListener(new IdleCloseListener());
+							return;
+						}
+					}
+					ch.close();
+				}
+			});
+		}
+	}
+
+	private class IdleCloseListener implements ChannelFutureListener {
+		@Override
+		public void operationComplete(ChannelFuture future) throws Exception {
+			// closed by upstream while idle
+			synchronized (UpstreamPool.this) {
+				Iterator<IdleChannel> it = idle.iterator();
+				while (it.hasNext()) {
+					if (it.next().channel == future.getChannel()) {
+						it.remove();
+						break;
+					}
+				}
+				stats.setIdleConnections(idle.size());
+			}
+		}
+	}
+
+	private static class IdleChannel {
+		private Channel channel;
+		private long since = System.currentTimeMillis();
+
+		public IdleChannel(Channel channel) {
+			this.channel = channel;
+		}
+	}
+}
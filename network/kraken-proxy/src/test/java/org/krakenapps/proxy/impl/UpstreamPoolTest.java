@@ -0,0 +1,217 @@
+package org.krakenapps.proxy.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.socket.nio.NioClientSocketChannelFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.krakenapps.proxy.ForwardRoute;
+
+public class UpstreamPoolTest {
+	private Upstream upstream;
+	private NioClientSocketChannelFactory cf;
+	private RouteStats stats;
+	private UpstreamPool pool;
+	private List<Channel> acquired = new ArrayList<Channel>();
+
+	@Before
+	public void setUp() throws IOException {
+		upstream = new Upstream(new ServerSocket(0));
+		cf = new NioClientSocketChannelFactory(Executors.newCachedThreadPool(), Executors.newCachedThreadPool());
+		stats = new RouteStats();
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		if (pool != null)
+			pool.close();
+		for (Channel ch : acquired)
+			ch.close().awaitUninterruptibly();
+		upstream.close();
+		cf.releaseExternalResources();
+	}
+
+	@Test
+	public void testMissAndHit() throws Exception {
+		pool = newPool(upstream.getPort(), 2, 60000);
+
+		// not started, pool is empty
+		ChannelFuture f = acquire();
+		assertTrue(f.awaitUninterruptibly(5000) && f.isSuccess());
+		assertEquals(1, stats.getPoolMisses());
+		assertEquals(0, stats.getPoolHits());
+
+		// acquire refills pool
+		waitIdle(2);
+		f = acquire();
+		assertTrue(f.isSuccess());
+		assertEquals(1, stats.getPoolHits());
+		waitIdle(2);
+		waitFor(upstream.accepted, 4);
+	}
+
+	@Test
+	public void testIdleExpiry() throws Exception {
+		pool = newPool(upstream.getPort(), 2, 100);
+		pool.start();
+		waitIdle(2);
+		waitFor(upstream.accepted, 2);
+
+		Thread.sleep(150);
+		pool.maintain();
+
+		// expired connections are closed and replaced without acquire
+		waitFor(upstream.disconnected, 2);
+		waitFor(upstream.accepted, 4);
+		waitIdle(2);
+		assertEquals(0, stats.getPoolHits() + stats.getPoolMisses());
+	}
+
+	@Test
+	public void testRefillAfterFailedConnect() throws Exception {
+		int port = upstream.getPort();
+		upstream.close();
+
+		pool = newPool(port, 2, 60000);
+		pool.start();
+		Thread.sleep(200);
+		assertEquals(0, stats.getIdleConnections());
+
+		upstream = new Upstream(new ServerSocket(port));
+		pool.maintain();
+		waitIdle(2);
+	}
+
+	@Test
+	public void testClose() throws Exception {
+		pool = newPool(upstream.getPort(), 2, 60000);
+		pool.start();
+		waitIdle(2);
+
+		pool.close();
+		assertEquals(0, stats.getIdleConnections());
+		waitFor(upstream.disconnected, 2);
+
+		// closed pool is not refilled
+		pool.maintain();
+		Thread.sleep(200);
+		assertEquals(2, upstream.accepted.get());
+		assertEquals(0, stats.getIdleConnections());
+	}
+
+	@Test
+	public void testAttachClosedUpstream() throws Exception {
+		ForwardProxyHandler.OutboundHandler handler = new ForwardProxyHandler.OutboundHandler(stats);
+		handler.channelClosed(null, null);
+		assertFalse(handler.attach(newInbound(), new Object()));
+	}
+
+	private ChannelFuture acquire() {
+		ChannelFuture f = pool.acquire(newInbound(), new Object());
+		acquired.add(f.getChannel());
+		return f;
+	}
+
+	private UpstreamPool newPool(int port, int poolSize, int idleTimeout) {
+		ForwardRoute route = new ForwardRoute(new InetSocketAddress(0), new InetSocketAddress("127.0.0.1", port));
+		route.setPoolSize(poolSize);
+		route.setIdleTimeout(idleTimeout);
+		return new UpstreamPool(cf, route, stats);
+	}
+
+	private void waitIdle(int count) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (stats.getIdleConnections() != count) {
+			if (System.currentTimeMillis() > deadline)
+				throw new AssertionError("expected " + count + " idle connections, but " + stats.getIdleConnections());
+			Thread.sleep(10);
+		}
+	}
+
+	private void waitFor(AtomicInteger counter, int count) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (counter.get() < count) {
+			if (System.currentTimeMillis() > deadline)
+				throw new AssertionError("expected " + count + ", but " + counter.get());
+			Thread.sleep(10);
+		}
+	}
+
+	// client channel is only passed through in these tests
+	private Channel newInbound() {
+		return (Channel) Proxy.newProxyInstance(Channel.class.getClassLoader(), new Class<?>[] { Channel.class },
+				new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+						if (method.getReturnType() == boolean.class)
+							return false;
+						return null;
+					}
+				});
+	}
+
+	private static class Upstream implements Runnable {
+		private ServerSocket server;
+		private AtomicInteger accepted = new AtomicInteger();
+		private AtomicInteger disconnected = new AtomicInteger();
+
+		public Upstream(ServerSocket server) {
+			this.server = server;
+			Thread t = new Thread(this, "Upstream Acceptor");
+			t.setDaemon(true);
+			t.start();
+		}
+
+		public int getPort() {
+			return server.getLocalPort();
+		}
+
+		public void close() throws IOException {
+			server.close();
+		}
+
+		@Override
+		public void run() {
+			try {
+				while (true) {
+					final Socket s = server.accept();
+					accepted.incrementAndGet();
+					Thread t = new Thread(new Runnable() {
+						@Override
+						public void run() {
+							try {
+								InputStream is = s.getInputStream();
+								while (is.read() >= 0)
+									;
+							} catch (IOException e) {
+							} finally {
+								disconnected.incrementAndGet();
+							}
+						}
+					}, "Upstream Reader");
+					t.setDaemon(true);
+					t.start();
+				}
+			} catch (IOException e) {
+			}
+		}
+	}
+}
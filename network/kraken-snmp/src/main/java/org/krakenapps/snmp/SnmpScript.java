@@ -57,6 +57,11 @@ public class SnmpScript implements Script {
 			context.println(name + " => " + trap.getBinding(name));
 	}
 
+	@ScriptUsage(description = "print trap receive, dedup, drop and delivery counters")
+	public void trapstats(String[] args) {
+		context.println(trap.getStats().toString());
+	}
+
 	@ScriptUsage(description = "trace snmp trap packet")
 	public void trace(String[] args) {
 		Map<String, String> filters = new HashMap<String, String>();
@@ -16,74 +16,71 @@
 package org.krakenapps.snmp;
 
 import java.net.InetSocketAddress;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.Date;
 import java.util.Map;
 
+/**
+ * Immutable trap decoded once by trap service. Same instance is shared by all
+ * receivers, so variable bindings are not modifiable.
+ */
 public class SnmpTrap {
-	private InetSocketAddress remoteAddress;
-	private InetSocketAddress localAddress;
-	private int version;
-	private String enterpriseOid;
-	private int genericTrap;
-	private int specificTrap;
-	private Map<String, Object> variableBindings = new HashMap<String, Object>();
+	private final Date date;
+	private final InetSocketAddress remoteAddress;
+	private final InetSocketAddress localAddress;
+	private final int version;
+	private final String enterpriseOid;
+	private final int genericTrap;
+	private final int specificTrap;
+	private final Map<String, Object> variableBindings;
+
+	public SnmpTrap(Date date, InetSocketAddress remoteAddress, InetSocketAddress localAddress, int version,
+			String enterpriseOid, int genericTrap, int specificTrap, Map<String, Object> variableBindings) {
+		this.date = date;
+		this.remoteAddress = remoteAddress;
+		this.localAddress = localAddress;
+		this.version = version;
+		this.enterpriseOid = enterpriseOid;
+		this.genericTrap = genericTrap;
+		this.specificTrap = specificTrap;
+		this.variableBindings = Collections.unmodifiableMap(variableBindings);
+	}
 
-	public InetSocketAddress getRemoteAddress() {
-		return remoteAddress;
+	/**
+	 * @return the received time
+	 */
+	public Date getDate() {
+		return date;
 	}
 
-	public void setRemoteAddress(InetSocketAddress remoteAddress) {
-		this.remoteAddress = remoteAddress;
+	public InetSocketAddress getRemoteAddress() {
+		return remoteAddress;
 	}
 
 	public InetSocketAddress getLocalAddress() {
 		return localAddress;
 	}
 
-	public void setLocalAddress(InetSocketAddress localAddress) {
-		this.localAddress = localAddress;
-	}
-
 	public int getVersion() {
 		return version;
 	}
 
-	public void setVersion(int version) {
-		this.version = version;
-	}
-
 	public String getEnterpriseOid() {
 		return enterpriseOid;
 	}
 
-	public void setEnterpriseOid(String enterpriseOid) {
-		this.enterpriseOid = enterpriseOid;
-	}
-
 	public int getGenericTrap() {
 		return genericTrap;
 	}
 
-	public void setGenericTrap(int genericTrap) {
-		this.genericTrap = genericTrap;
-	}
-
 	public int getSpecificTrap() {
 		return specificTrap;
 	}
 
-	public void setSpecificTrap(int specificTrap) {
-		this.specificTrap = specificTrap;
-	}
-
 	public Map<String, Object> getVariableBindings() {
 		return variableBindings;
 	}
 
-	public void setVariableBindings(Map<String, Object> variableBindings) {
-		this.variableBindings = variableBindings;
-	}
-
 	@Override
 	public String toString() {
 		return "remote=" + remoteAddress + ", local=" + localAddress + ", version=" + version + ", enterprise="
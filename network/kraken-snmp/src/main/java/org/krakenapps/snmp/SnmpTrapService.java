@@ -38,4 +38,6 @@ public interface SnmpTrapService {
 	void addReceiver(String name, SnmpTrapReceiver callback);
 
 	void removeReceiver(String name, SnmpTrapReceiver callback);
+
+	SnmpTrapStats getStats();
 }
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2011 Future Systems
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.krakenapps.snmp;
+
+public class SnmpTrapStats {
+	private long received;
+	private long duplicated;
+	private long dropped;
+	private long delivered;
+	private int queued;
+
+	public SnmpTrapStats(long received, long duplicated, long dropped, long delivered, int queued) {
+		this.received = received;
+		this.duplicated = duplicated;
+		this.dropped = dropped;
+		this.delivered = delivered;
+		this.queued = queued;
+	}
+
+	/**
+	 * @return the number of decoded traps
+	 */
+	public long getReceived() {
+		return received;
+	}
+
+	/**
+	 * @return the number of traps suppressed in dedup window
+	 */
+	public long getDuplicated() {
+		return duplicated;
+	}
+
+	/**
+	 * @return the number of traps not queued because receiver queue was full
+	 */
+	public long getDropped() {
+		return dropped;
+	}
+
+	/**
+	 * @return the number of traps handed to receivers
+	 */
+	public long getDelivered() {
+		return delivered;
+	}
+
+	/**
+	 * @return the number of traps waiting in all receiver queues
+	 */
+	public int getQueued() {
+		return queued;
+	}
+
+	@Override
+	public String toString() {
+		return "received=" + received + ", duplicated=" + duplicated + ", dropped=" + dropped + ", delivered="
+				+ delivered + ", queued=" + queued;
+	}
+}
@@ -21,10 +21,14 @@ import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.felix.ipojo.annotations.Component;
 import org.apache.felix.ipojo.annotations.Invalidate;
@@ -34,6 +38,7 @@ import org.krakenapps.snmp.SnmpTrap;
 import org.krakenapps.snmp.SnmpTrapBinding;
 import org.krakenapps.snmp.SnmpTrapReceiver;
 import org.krakenapps.snmp.SnmpTrapService;
+import org.krakenapps.snmp.SnmpTrapStats;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.snmp4j.CommandResponder;
@@ -47,8 +52,10 @@ import org.snmp4j.TransportMapping;
 import org.snmp4j.mp.MPv1;
 import org.snmp4j.mp.MPv2c;
 import org.snmp4j.smi.Address;
+import org.snmp4j.smi.IpAddress;
 import org.snmp4j.smi.OctetString;
 import org.snmp4j.smi.SMIConstants;
+import org.snmp4j.smi.TransportIpAddress;
 import org.snmp4j.smi.UdpAddress;
 import org.snmp4j.smi.Variable;
 import org.snmp4j.smi.VariableBinding;
@@ -56,9 +63,15 @@ import org.snmp4j.transport.DefaultUdpTransportMapping;
 import org.snmp4j.util.MultiThreadedMessageDispatcher;
 import org.snmp4j.util.ThreadPool;
 
+/**
+ * Decodes each trap once on snmp dispatcher thread, and queues the immutable
+ * trap to bounded queue of each receiver. Receivers are called in batches on
+ * their own threads, and traps are dropped and counted when receiver queue is
+ * full.
+ */
 @Component(name = "snmp-trap-service")
 @Provides
-public class SnmpTrapServiceImpl implements SnmpTrapService, CommandResponder {
+public class SnmpTrapServiceImpl implements SnmpTrapService {
 	private final Logger logger = LoggerFactory.getLogger(SnmpTrapServiceImpl.class.getName());
 	private final Charset charset = Charset.forName("utf-8");
 	private ConcurrentMap<String, SnmpTrapBinding> bindings;
@@ -67,11 +80,31 @@ public class SnmpTrapServiceImpl implements SnmpTrapService, CommandResponder {
 	private CopyOnWriteArraySet<SnmpTrapReceiver> callbacks;
 	private ConcurrentMap<String, CopyOnWriteArraySet<SnmpTrapReceiver>> bindingCallbacks;
 
+	// receiver channels, shared by global and binding registrations
+	private ConcurrentMap<SnmpTrapReceiver, TrapChannel> channels;
+	private final int queueSize;
+	private final int batchSize;
+	private TrapDeduplicator deduplicator;
+
+	private AtomicLong received = new AtomicLong();
+	private AtomicLong duplicated = new AtomicLong();
+	private AtomicLong closedDropped = new AtomicLong();
+	private AtomicLong closedDelivered = new AtomicLong();
+
 	public SnmpTrapServiceImpl() {
 		bindings = new ConcurrentHashMap<String, SnmpTrapBinding>();
 		listeners = new ConcurrentHashMap<String, SnmpListener>();
 		callbacks = new CopyOnWriteArraySet<SnmpTrapReceiver>();
 		bindingCallbacks = new ConcurrentHashMap<String, CopyOnWriteArraySet<SnmpTrapReceiver>>();
+		channels = new ConcurrentHashMap<SnmpTrapReceiver, TrapChannel>();
+
+		queueSize = Integer.getInteger("kraken.snmp.trap_queue_size", 10000);
+		batchSize = Integer.getInteger("kraken.snmp.trap_batch_size", 500);
+
+		// disabled by default, identical traps can be meaningful
+		int dedupWindow = Integer.getInteger("kraken.snmp.trap_dedup_window", 0);
+		if (dedupWindow > 0)
+			deduplicator = new TrapDeduplicator(dedupWindow, Integer.getInteger("kraken.snmp.trap_dedup_size", 100000));
 	}
 
 	@Validate
@@ -90,6 +123,13 @@ public class SnmpTrapServiceImpl implements SnmpTrapService, CommandResponder {
 			}
 		}
 
+		synchronized (channels) {
+			for (TrapChannel channel : channels.values())
+				channel.stop();
+
+			channels.clear();
+		}
+
 		listeners.clear();
 		bindings.clear();
 		callbacks.clear();
@@ -136,7 +176,7 @@ public class SnmpTrapServiceImpl implements SnmpTrapService, CommandResponder {
 			Snmp snmp = new Snmp(dispatcher, transport);
 			snmp.getMessageDispatcher().addMessageProcessingModel(new MPv1());
 			snmp.getMessageDispatcher().addMessageProcessingModel(new MPv2c());
-			snmp.addCommandResponder(this);
+			snmp.addCommandResponder(new TrapResponder(binding.getName(), binding.getListenAddress()));
 			snmp.listen();
 
 			listeners.put(binding.getName(), new SnmpListener(snmp, threadPool));
@@ -164,35 +204,84 @@ public class SnmpTrapServiceImpl implements SnmpTrapService, CommandResponder {
 
 	@Override
 	public void addReceiver(SnmpTrapReceiver callback) {
-		callbacks.add(callback);
+		synchronized (channels) {
+			openChannel(callback);
+			callbacks.add(callback);
+		}
 	}
 
 	@Override
 	public void removeReceiver(SnmpTrapReceiver callback) {
-		callbacks.remove(callback);
+		synchronized (channels) {
+			callbacks.remove(callback);
+			closeChannel(callback);
+		}
 	}
 
 	@Override
 	public void addReceiver(String name, SnmpTrapReceiver callback) {
-		CopyOnWriteArraySet<SnmpTrapReceiver> set = new CopyOnWriteArraySet<SnmpTrapReceiver>();
-		CopyOnWriteArraySet<SnmpTrapReceiver> old = bindingCallbacks.putIfAbsent(name, set);
-		if (old != null)
-			set = old;
-
-		set.add(callback);
+		synchronized (channels) {
+			CopyOnWriteArraySet<SnmpTrapReceiver> set = new CopyOnWriteArraySet<SnmpTrapReceiver>();
+			CopyOnWriteArraySet<SnmpTrapReceiver> old = bindingCallbacks.putIfAbsent(name, set);
+			if (old != null)
+				set = old;
+
+			openChannel(callback);
+			set.add(callback);
+		}
 	}
 
 	@Override
 	public void removeReceiver(String name, SnmpTrapReceiver callback) {
-		CopyOnWriteArraySet<SnmpTrapReceiver> set = new CopyOnWriteArraySet<SnmpTrapReceiver>();
-		CopyOnWriteArraySet<SnmpTrapReceiver> old = bindingCallbacks.putIfAbsent(name, set);
-		if (old != null)
-			set = old;
+		synchronized (channels) {
+			CopyOnWriteArraySet<SnmpTrapReceiver> set = bindingCallbacks.get(name);
+			if (set != null)
+				set.remove(callback);
 
-		set.remove(callback);
+			closeChannel(callback);
+		}
 	}
 
-	public void processPdu(CommandResponderEvent e) {
+	private void openChannel(SnmpTrapReceiver callback) {
+		if (channels.containsKey(callback))
+			return;
+
+		TrapChannel channel = new TrapChannel(callback, queueSize, batchSize);
+		channel.start("SNMP Trap Receiver [" + callback.getClass().getSimpleName() + "]");
+		channels.put(callback, channel);
+	}
+
+	private void closeChannel(SnmpTrapReceiver callback) {
+		if (callbacks.contains(callback))
+			return;
+
+		for (CopyOnWriteArraySet<SnmpTrapReceiver> set : bindingCallbacks.values())
+			if (set.contains(callback))
+				return;
+
+		TrapChannel channel = channels.remove(callback);
+		if (channel != null) {
+			channel.stop();
+			closedDropped.addAndGet(channel.getDropped());
+			closedDelivered.addAndGet(channel.getDelivered());
+		}
+	}
+
+	@Override
+	public SnmpTrapStats getStats() {
+		long dropped = closedDropped.get();
+		long delivered = closedDelivered.get();
+		int queued = 0;
+		for (TrapChannel channel : channels.values()) {
+			dropped += channel.getDropped();
+			delivered += channel.getDelivered();
+			queued += channel.getQueued();
+		}
+
+		return new SnmpTrapStats(received.get(), duplicated.get(), dropped, delivered, queued);
+	}
+
+	private void processPdu(String bindingName, InetSocketAddress local, CommandResponderEvent e) {
 		PDU command = e.getPDU();
 		if (command == null)
 			return;
@@ -200,49 +289,62 @@ public class SnmpTrapServiceImpl implements SnmpTrapService, CommandResponder {
 		if (logger.isTraceEnabled())
 			logger.trace("kraken snmp: trap [{}]", e.toString());
 
-		InetSocketAddress remote = toInetSocketAddress(e.getPeerAddress());
-		InetSocketAddress local = toInetSocketAddress(e.getTransportMapping().getListenAddress());
+		SnmpTrap trap = decode(local, e);
+		received.incrementAndGet();
+
+		if (deduplicator != null && deduplicator.isDuplicated(trap)) {
+			duplicated.incrementAndGet();
+			return;
+		}
+
+		// invoke callbacks
+		CopyOnWriteArraySet<SnmpTrapReceiver> set = bindingCallbacks.get(bindingName);
+		if (set != null)
+			dispatchCallbacks(trap, set);
 
-		SnmpTrap trap = new SnmpTrap();
-		trap.setRemoteAddress(remote);
-		trap.setLocalAddress(local);
+		dispatchCallbacks(trap, callbacks);
+	}
 
+	private SnmpTrap decode(InetSocketAddress local, CommandResponderEvent e) {
+		PDU command = e.getPDU();
+		InetSocketAddress remote = toInetSocketAddress(e.getPeerAddress());
+
+		String enterpriseOid = null;
+		int genericTrap = 0;
+		int specificTrap = 0;
 		if (command instanceof PDUv1) {
 			PDUv1 v1 = (PDUv1) command;
-			trap.setEnterpriseOid(v1.getEnterprise().toString());
-			trap.setGenericTrap(v1.getGenericTrap());
-			trap.setSpecificTrap(v1.getSpecificTrap());
+			enterpriseOid = v1.getEnterprise().toString();
+			genericTrap = v1.getGenericTrap();
+			specificTrap = v1.getSpecificTrap();
 		}
 
+		Map<String, Object> variableBindings = new HashMap<String, Object>(command.size() * 2);
 		for (Object o : command.getVariableBindings()) {
 			VariableBinding binding = (VariableBinding) o;
 			String oid = binding.getOid().toString();
 			Object value = toPrimitive(binding.getVariable());
-			trap.getVariableBindings().put(oid, value);
-		}
-
-		// invoke callbacks
-		SnmpTrapBinding binding = getBinding(local);
-		if (binding != null) {
-			CopyOnWriteArraySet<SnmpTrapReceiver> callbacks = bindingCallbacks.get(binding.getName());
-			if (callbacks != null)
-				dispatchCallbacks(trap, callbacks);
+			variableBindings.put(oid, value);
 		}
 
-		dispatchCallbacks(trap, callbacks);
+		return new SnmpTrap(new Date(), remote, local, e.getMessageProcessingModel(), enterpriseOid, genericTrap,
+				specificTrap, variableBindings);
 	}
 
 	private void dispatchCallbacks(SnmpTrap trap, CopyOnWriteArraySet<SnmpTrapReceiver> callbacks) {
 		for (SnmpTrapReceiver callback : callbacks) {
-			try {
-				callback.handle(trap);
-			} catch (Throwable t) {
-				logger.warn("kraken snmp: callback should not throw any exception", t);
-			}
+			TrapChannel channel = channels.get(callback);
+			if (channel != null && !channel.offer(trap) && logger.isTraceEnabled())
+				logger.trace("kraken snmp: receiver queue full, dropped trap [{}]", trap);
 		}
 	}
 
 	private InetSocketAddress toInetSocketAddress(Address address) {
+		if (address instanceof TransportIpAddress) {
+			TransportIpAddress addr = (TransportIpAddress) address;
+			return new InetSocketAddress(addr.getInetAddress(), addr.getPort());
+		}
+
 		try {
 			String[] tokens = address.toString().split("/");
 			int port = Integer.parseInt(tokens[1]);
@@ -264,11 +366,7 @@ public class SnmpTrapServiceImpl implements SnmpTrapService, CommandResponder {
 		case SMIConstants.SYNTAX_INTEGER:
 			return var.toInt();
 		case SMIConstants.SYNTAX_IPADDRESS:
-			try {
-				return InetAddress.getByName(var.toString());
-			} catch (UnknownHostException e) {
-				return null;
-			}
+			return ((IpAddress) var).getInetAddress();
 		case SMIConstants.SYNTAX_NULL:
 			return null;
 		case SMIConstants.SYNTAX_OBJECT_IDENTIFIER:
@@ -282,6 +380,21 @@ public class SnmpTrapServiceImpl implements SnmpTrapService, CommandResponder {
 		}
 	}
 
+	private class TrapResponder implements CommandResponder {
+		private String bindingName;
+		private InetSocketAddress local;
+
+		public TrapResponder(String bindingName, InetSocketAddress local) {
+			this.bindingName = bindingName;
+			this.local = local;
+		}
+
+		@Override
+		public void processPdu(CommandResponderEvent e) {
+			SnmpTrapServiceImpl.this.processPdu(bindingName, local, e);
+		}
+	}
+
 	private class SnmpListener {
 		private Snmp snmp;
 		private ThreadPool threadPool;
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2011 Future Systems
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.krakenapps.snmp.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.krakenapps.snmp.SnmpTrap;
+import org.krakenapps.snmp.SnmpTrapBatchReceiver;
+import org.krakenapps.snmp.SnmpTrapReceiver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounded trap queue and delivery thread of one receiver. Slow receiver fills
+ * its own queue only, and never blocks snmp dispatcher threads or other
+ * receivers.
+ */
+class TrapChannel implements Runnable {
+	private final Logger logger = LoggerFactory.getLogger(TrapChannel.class.getName());
+	private final SnmpTrapReceiver receiver;
+	private final BlockingQueue<SnmpTrap> queue;
+	private final int batchSize;
+	private final AtomicLong dropped = new AtomicLong();
+	private final AtomicLong delivered = new AtomicLong();
+	private Thread thread;
+
+	public TrapChannel(SnmpTrapReceiver receiver, int queueSize, int batchSize) {
+		this.receiver = receiver;
+		this.queue = new ArrayBlockingQueue<SnmpTrap>(queueSize);
+		this.batchSize = batchSize;
+	}
+
+	public void start(String name) {
+		thread = new Thread(this, name);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	public void stop() {
+		if (thread != null)
+			thread.interrupt();
+	}
+
+	/**
+	 * @return false if queue is full and trap is dropped
+	 */
+	public boolean offer(SnmpTrap trap) {
+		if (queue.offer(trap))
+			return true;
+
+		dropped.incrementAndGet();
+		return false;
+	}
+
+	public int getQueued() {
+		return queue.size();
+	}
+
+	public long getDropped() {
+		return dropped.get();
+	}
+
+	public long getDelivered() {
+		return delivered.get();
+	}
+
+	@Override
+	public void run() {
+		List<SnmpTrap> batch = new ArrayList<SnmpTrap>(batchSize);
+		try {
+			while (true) {
+				batch.add(queue.take());
+				queue.drainTo(batch, batchSize - 1);
+
+				deliver(batch);
+				delivered.addAndGet(batch.size());
+				batch.clear();
+			}
+		} catch (InterruptedException e) {
+			logger.trace("kraken snmp: trap channel [{}] interrupted", Thread.currentThread().getName());
+		}
+	}
+
+	private void deliver(List<SnmpTrap> batch) {
+		if (receiver instanceof SnmpTrapBatchReceiver) {
+			try {
+				((SnmpTrapBatchReceiver) receiver).handle(batch);
+			} catch (Throwable t) {
+				logger.warn("kraken snmp: callback should not throw any exception", t);
+			}
+			return;
+		}
+
+		for (SnmpTrap trap : batch) {
+			try {
+				receiver.handle(trap);
+			} catch (Throwable t) {
+				logger.warn("kraken snmp: callback should not throw any exception", t);
+			}
+		}
+	}
+}
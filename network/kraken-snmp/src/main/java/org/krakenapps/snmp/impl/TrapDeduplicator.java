@@ -0,0 +1,132 @@
+/*
+ * Copyright 2011 Future Systems
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.krakenapps.snmp.impl;
+
+import java.net.InetAddress;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.krakenapps.snmp.SnmpTrap;
+
+/**
+ * Suppresses identical traps from same sender within window, e.g. repeated
+ * link down traps of flapping port. Window starts at first trap, and repeated
+ * traps do not extend it. Traps are identical when sender ip, trap oid and
+ * variable bindings except sysUpTime.0 are equal. Sender port is ignored since
+ * agents may send each trap from a new source port.
+ */
+class TrapDeduplicator {
+	// sysUpTime.0 differs in every v2c trap
+	private static final String SYS_UP_TIME_OID = "1.3.6.1.2.1.1.3.0";
+	private static final String SNMP_TRAP_OID = "1.3.6.1.6.3.1.1.4.1.0";
+
+	private final long window;
+	private final int maxEntries;
+
+	// insertion order is first seen order
+	private final LinkedHashMap<TrapKey, Long> firstSeens;
+
+	public TrapDeduplicator(long window, int maxEntries) {
+		this.window = window;
+		this.maxEntries = maxEntries;
+		this.firstSeens = new LinkedHashMap<TrapKey, Long>();
+	}
+
+	/**
+	 * @return true if same trap is seen within window
+	 */
+	public boolean isDuplicated(SnmpTrap trap) {
+		long now = trap.getDate().getTime();
+		TrapKey key = new TrapKey(trap);
+
+		synchronized (firstSeens) {
+			Iterator<Entry<TrapKey, Long>> it = firstSeens.entrySet().iterator();
+			while (it.hasNext()) {
+				if (now - it.next().getValue() < window)
+					break;
+				it.remove();
+			}
+
+			Long firstSeen = firstSeens.get(key);
+			if (firstSeen != null && now - firstSeen < window)
+				return true;
+
+			// evict first seen trap when full
+			firstSeens.remove(key);
+			it = firstSeens.entrySet().iterator();
+			if (firstSeens.size() >= maxEntries && it.hasNext()) {
+				it.next();
+				it.remove();
+			}
+
+			firstSeens.put(key, now);
+			return false;
+		}
+	}
+
+	private static class TrapKey {
+		private final InetAddress sender;
+		private final String trapOid;
+		private final Map<String, Object> bindings;
+		private final int hash;
+
+		public TrapKey(SnmpTrap trap) {
+			this.sender = trap.getRemoteAddress() == null ? null : trap.getRemoteAddress().getAddress();
+
+			Map<String, Object> bindings = new HashMap<String, Object>(trap.getVariableBindings());
+			bindings.remove(SYS_UP_TIME_OID);
+
+			// v1 trap is identified by enterprise and trap numbers, v2c trap
+			// by snmpTrapOID.0 binding
+			if (trap.getEnterpriseOid() != null)
+				this.trapOid = trap.getEnterpriseOid() + "/" + trap.getGenericTrap() + "/" + trap.getSpecificTrap();
+			else {
+				Object oid = bindings.remove(SNMP_TRAP_OID);
+				this.trapOid = oid == null ? null : oid.toString();
+			}
+
+			this.bindings = bindings;
+
+			int h = sender == null ? 0 : sender.hashCode();
+			h = 31 * h + (trapOid == null ? 0 : trapOid.hashCode());
+			this.hash = 31 * h + bindings.hashCode();
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof TrapKey))
+				return false;
+
+			TrapKey other = (TrapKey) obj;
+			return hash == other.hash && eq(sender, other.sender) && eq(trapOid, other.trapOid)
+					&& bindings.equals(other.bindings);
+		}
+
+		private static boolean eq(Object a, Object b) {
+			return a == null ? b == null : a.equals(b);
+		}
+	}
+}
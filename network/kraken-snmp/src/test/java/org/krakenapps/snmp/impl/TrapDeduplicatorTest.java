@@ -0,0 +1,98 @@
+/*
+ * Copyright 2011 Future Systems
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.krakenapps.snmp.impl;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetSocketAddress;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+import org.krakenapps.snmp.SnmpTrap;
+
+public class TrapDeduplicatorTest {
+	private static final String LINK_DOWN = "1.3.6.1.6.3.1.1.5.3";
+
+	@Test
+	public void testWindow() {
+		TrapDeduplicator dedup = new TrapDeduplicator(1000, 100);
+		assertFalse(dedup.isDuplicated(v2c(0, "10.0.0.1", 162, LINK_DOWN, 1)));
+		assertTrue(dedup.isDuplicated(v2c(500, "10.0.0.1", 162, LINK_DOWN, 1)));
+
+		// repeated trap does not extend window
+		assertTrue(dedup.isDuplicated(v2c(999, "10.0.0.1", 162, LINK_DOWN, 1)));
+		assertFalse(dedup.isDuplicated(v2c(1000, "10.0.0.1", 162, LINK_DOWN, 1)));
+		assertTrue(dedup.isDuplicated(v2c(1500, "10.0.0.1", 162, LINK_DOWN, 1)));
+	}
+
+	@Test
+	public void testDifferentTraps() {
+		TrapDeduplicator dedup = new TrapDeduplicator(1000, 100);
+		assertFalse(dedup.isDuplicated(v2c(0, "10.0.0.1", 162, LINK_DOWN, 1)));
+		assertFalse(dedup.isDuplicated(v2c(0, "10.0.0.2", 162, LINK_DOWN, 1)));
+		assertFalse(dedup.isDuplicated(v2c(0, "10.0.0.1", 162, "1.3.6.1.6.3.1.1.5.4", 1)));
+		assertFalse(dedup.isDuplicated(v2c(0, "10.0.0.1", 162, LINK_DOWN, 2)));
+		assertFalse(dedup.isDuplicated(v1(0, "10.0.0.1", 2)));
+		assertFalse(dedup.isDuplicated(v1(0, "10.0.0.1", 3)));
+		assertTrue(dedup.isDuplicated(v1(100, "10.0.0.1", 2)));
+	}
+
+	@Test
+	public void testSysUpTimeAndSenderPortIgnored() {
+		TrapDeduplicator dedup = new TrapDeduplicator(1000, 100);
+		SnmpTrap first = v2c(0, "10.0.0.1", 40001, LINK_DOWN, 1);
+		assertFalse(dedup.isDuplicated(withUpTime(first, 1000L)));
+		assertTrue(dedup.isDuplicated(withUpTime(v2c(100, "10.0.0.1", 40002, LINK_DOWN, 1), 1010L)));
+	}
+
+	@Test
+	public void testEviction() {
+		TrapDeduplicator dedup = new TrapDeduplicator(1000, 2);
+		assertFalse(dedup.isDuplicated(v2c(0, "10.0.0.1", 162, LINK_DOWN, 1)));
+		assertFalse(dedup.isDuplicated(v2c(0, "10.0.0.1", 162, LINK_DOWN, 2)));
+		assertTrue(dedup.isDuplicated(v2c(0, "10.0.0.1", 162, LINK_DOWN, 1)));
+
+		// first seen trap is evicted when full, even within window
+		assertFalse(dedup.isDuplicated(v2c(0, "10.0.0.1", 162, LINK_DOWN, 3)));
+		assertFalse(dedup.isDuplicated(v2c(0, "10.0.0.1", 162, LINK_DOWN, 1)));
+		assertTrue(dedup.isDuplicated(v2c(0, "10.0.0.1", 162, LINK_DOWN, 3)));
+	}
+
+	private SnmpTrap v2c(long time, String sender, int port, String trapOid, int ifIndex) {
+		Map<String, Object> bindings = new HashMap<String, Object>();
+		bindings.put("1.3.6.1.6.3.1.1.4.1.0", trapOid);
+		bindings.put("1.3.6.1.2.1.2.2.1.1." + ifIndex, ifIndex);
+		return new SnmpTrap(new Date(time), new InetSocketAddress(sender, port), new InetSocketAddress(162), 1,
+				null, 0, 0, bindings);
+	}
+
+	private SnmpTrap v1(long time, String sender, int genericTrap) {
+		Map<String, Object> bindings = new HashMap<String, Object>();
+		bindings.put("1.3.6.1.2.1.2.2.1.1.1", 1);
+		return new SnmpTrap(new Date(time), new InetSocketAddress(sender, 162), new InetSocketAddress(162), 0,
+				"1.3.6.1.4.1.9", genericTrap, 0, bindings);
+	}
+
+	private SnmpTrap withUpTime(SnmpTrap trap, long upTime) {
+		Map<String, Object> bindings = new HashMap<String, Object>(trap.getVariableBindings());
+		bindings.put("1.3.6.1.2.1.1.3.0", upTime);
+		return new SnmpTrap(trap.getDate(), trap.getRemoteAddress(), trap.getLocalAddress(), trap.getVersion(),
+				trap.getEnterpriseOid(), trap.getGenericTrap(), trap.getSpecificTrap(), bindings);
+	}
+}
@@ -28,7 +28,21 @@ public interface FileMonitorService {
 
 	void createBaseline() throws IOException;
 
+	/**
+	 * @param incremental
+	 *            reuse previous hash if file size, modified time and inode are
+	 *            not changed
+	 */
+	void createBaseline(boolean incremental) throws IOException;
+
 	void check();
+
+	/**
+	 * Waits for file events of the directory, and reports them to event
+	 * listeners. Modify events of baseline files are verified against
+	 * baseline, and reported as file change.
+	 */
+	void watch(File dir) throws Exception;
 	
 	Date getLastTimestamp();
 	
@@ -25,12 +25,20 @@ public class Baseline {
 	private boolean hidden;
 	private String hash;
 
+	// inode identity if supported by file system, otherwise null
+	private String fileKey;
+
 	public Baseline(File file, long fileSize, long lastModified, boolean hidden, String hash) {
+		this(file, fileSize, lastModified, hidden, hash, null);
+	}
+
+	public Baseline(File file, long fileSize, long lastModified, boolean hidden, String hash, String fileKey) {
 		this.file = file;
 		this.fileSize = fileSize;
 		this.lastModified = lastModified;
 		this.hidden = hidden;
 		this.hash = hash;
+		this.fileKey = fileKey;
 	}
 
 	public File getFile() {
@@ -53,6 +61,10 @@ public class Baseline {
 		return hash;
 	}
 
+	public String getFileKey() {
+		return fileKey;
+	}
+
 	public boolean isDeleted() {
 		return !file.exists();
 	}
@@ -101,7 +113,7 @@ public class Baseline {
 
 	@Override
 	public String toString() {
-		return String.format("file=%s, size=%d, last_modified=%d, hidden=%s, hash=%s", file.getAbsolutePath(),
-				fileSize, lastModified, hidden, hash);
+		return String.format("file=%s, size=%d, last_modified=%d, hidden=%s, hash=%s, key=%s", file.getAbsolutePath(),
+				fileSize, lastModified, hidden, hash, fileKey);
 	}
 }
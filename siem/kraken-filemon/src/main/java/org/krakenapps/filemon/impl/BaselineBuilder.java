@@ -15,54 +15,111 @@
  */
 package org.krakenapps.filemon.impl;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.ByteBuffer;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Pattern;
 
 import org.krakenapps.codec.EncodingRule;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Builds baseline db and its path index. Inclusion paths are walked once with
+ * file attributes, and files are hashed in fork-join pool. In incremental
+ * mode, hash of previous baseline is reused if size, last modified time and
+ * file key (inode) are not changed. Previous baseline is merged by streaming
+ * since both are sorted by absolute path.
+ */
 public class BaselineBuilder {
+	public static final String DB_FILE_NAME = "kraken-filemon-baseline.db";
+	public static final String INDEX_FILE_NAME = "kraken-filemon-baseline.idx";
+
+	private static final int HASH_THREADS = Integer.getInteger("kraken.filemon.hash_threads", Runtime.getRuntime()
+			.availableProcessors());
+
 	private final Logger logger = LoggerFactory.getLogger(BaselineBuilder.class.getName());
 	private final File baseDir;
-	private Set<File> files;
+	private List<Entry> entries;
 	private Set<File> paths;
 	private Set<Pattern> excludes;
 
+	private int reusedCount;
+	private AtomicInteger hashedCount = new AtomicInteger();
+	private AtomicInteger failedCount = new AtomicInteger();
+
 	public BaselineBuilder(Set<File> paths, Set<Pattern> excludes) {
 		this.baseDir = getBaseDirectory();
-		this.files = new TreeSet<File>();
+		this.entries = new ArrayList<Entry>();
 		this.paths = paths;
 		this.excludes = excludes;
 
 		for (File f : paths)
-			scan(f, excludes);
+			scan(f);
 
+		Collections.sort(entries);
+		removeDuplicates();
 		logger.trace("kraken filemon: set base directory [{}]", baseDir.getAbsolutePath());
 	}
 
-	private void scan(File f, Set<Pattern> excludes) {
-		if (f.isFile() && !isExcluded(excludes, f))
-			files.add(f);
+	private void scan(File f) {
+		try {
+			Files.walkFileTree(f.toPath(), new SimpleFileVisitor<Path>() {
+				@Override
+				public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+					if (!attrs.isRegularFile())
+						return FileVisitResult.CONTINUE;
+
+					String path = file.toAbsolutePath().toString();
+					if (!isExcluded(path))
+						entries.add(new Entry(file, path, attrs));
+					return FileVisitResult.CONTINUE;
+				}
+
+				@Override
+				public FileVisitResult visitFileFailed(Path file, IOException e) throws IOException {
+					logger.warn("kraken filemon: cannot visit file [{}], {}", file, e.toString());
+					return FileVisitResult.CONTINUE;
+				}
+			});
+		} catch (IOException e) {
+			logger.error("kraken filemon: cannot scan path [" + f.getAbsolutePath() + "]", e);
+		}
+	}
 
-		if (f.isDirectory()) {
-			for (File entry : f.listFiles())
-				scan(entry, excludes);
+	private void removeDuplicates() {
+		// inclusion paths can be nested
+		List<Entry> l = new ArrayList<Entry>(entries.size());
+		Entry last = null;
+		for (Entry e : entries) {
+			if (last == null || !last.path.equals(e.path))
+				l.add(e);
+			last = e;
 		}
+		entries = l;
 	}
 
-	private boolean isExcluded(Set<Pattern> excludes, File f) {
-		String path = f.getAbsolutePath();
+	private boolean isExcluded(String path) {
 		for (Pattern p : excludes)
 			if (p.matcher(path).matches())
 				return true;
@@ -70,18 +127,104 @@ public class BaselineBuilder {
 		return false;
 	}
 
-	public Set<File> getTargetFiles() {
-		return files;
+	public int getTargetCount() {
+		return entries.size();
+	}
+
+	public int getReusedCount() {
+		return reusedCount;
+	}
+
+	public int getHashedCount() {
+		return hashedCount.get();
+	}
+
+	public int getFailedCount() {
+		return failedCount.get();
 	}
 
 	public File build() throws IOException {
-		File db = File.createTempFile("kraken-filemon-", ".db");
-		FileOutputStream os = new FileOutputStream(db);
+		return build(false);
+	}
+
+	/**
+	 * @param incremental
+	 *            reuse hash of previous baseline for unchanged files
+	 */
+	public File build(boolean incremental) throws IOException {
+		File target = new File(baseDir, DB_FILE_NAME);
+		if (incremental && target.exists())
+			mergePrevious(target);
+
+		hashAll();
+
+		File db = File.createTempFile("kraken-filemon-", ".db", baseDir);
+		File index = File.createTempFile("kraken-filemon-", ".idx", baseDir);
+		try {
+			write(db, index);
+
+			Files.move(db.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			Files.move(index.toPath(), new File(baseDir, INDEX_FILE_NAME).toPath(),
+					StandardCopyOption.REPLACE_EXISTING);
+
+			logger.trace("kraken filemon: created baseline [{}]", target.getAbsolutePath());
+			return target;
+		} finally {
+			db.delete();
+			index.delete();
+		}
+	}
+
+	private void mergePrevious(File previous) {
+		BaselineReader reader = null;
+		try {
+			reader = new BaselineReader(previous);
+			Baseline old = reader.next();
+			for (Entry e : entries) {
+				while (old != null && old.getFile().getAbsolutePath().compareTo(e.path) < 0)
+					old = reader.next();
+
+				if (old == null)
+					break;
+
+				if (old.getFile().getAbsolutePath().equals(e.path) && e.isSame(old)) {
+					e.hash = old.getHash();
+					reusedCount++;
+				}
+			}
+		} catch (Exception e) {
+			// fall back to full hashing for rest files
+			logger.warn("kraken filemon: cannot read previous baseline [" + previous.getAbsolutePath() + "]", e);
+		} finally {
+			if (reader != null)
+				reader.close();
+		}
+	}
+
+	private void hashAll() {
+		ForkJoinPool pool = new ForkJoinPool(HASH_THREADS);
+		try {
+			pool.invoke(new HashTask(0, entries.size()));
+		} finally {
+			pool.shutdown();
+		}
+
+		logger.info("kraken filemon: baseline files [{}], hashed [{}], reused [{}], failed [{}]", new Object[] {
+				entries.size(), hashedCount.get(), reusedCount, failedCount.get() });
+	}
+
+	private void write(File db, File index) throws IOException {
+		long[] hashes = new long[Math.max(16, entries.size())];
+		long[] offsets = new long[hashes.length];
+		int count = 0;
+
+		OutputStream os = new BufferedOutputStream(new FileOutputStream(db), 65536);
+		long offset = 0;
 		try {
 			// write file headers
 			Map<String, Object> headers = new HashMap<String, Object>();
 			headers.put("created", new Date());
-			headers.put("file_count", files.size());
+			headers.put("file_count", entries.size() - failedCount.get());
 			headers.put("includes", marshalPaths());
 			headers.put("excludes", marshalExcludes());
 
@@ -89,37 +232,37 @@ public class BaselineBuilder {
 			ByteBuffer b = ByteBuffer.allocate(len);
 			EncodingRule.encode(b, headers);
 			os.write(b.array());
+			offset += len;
 
 			// write files
 			ByteBuffer bb = ByteBuffer.allocate(512);
-			for (File f : files) {
-				long fileSize = f.length();
-				long lastModified = f.lastModified();
-				boolean hidden = f.isHidden();
-				String hash = HashUtils.getSha1(f);
+			for (Entry e : entries) {
+				if (e.hash == null)
+					continue;
+
+				Object[] record = new Object[] { e.path, e.size, e.lastModified, e.hidden, e.hash, e.fileKey };
+				len = EncodingRule.lengthOf(record);
+				if (bb.capacity() < len)
+					bb = ByteBuffer.allocate(len * 2);
 
-				Object[] record = new Object[] { f.getAbsolutePath(), fileSize, lastModified, hidden, hash };
 				EncodingRule.encode(bb, record);
 				bb.flip();
 				os.write(bb.array(), 0, bb.limit());
 				bb.clear();
 
-				logger.trace("kraken filemon: adding file [{}] to baseline", f.getAbsolutePath());
+				hashes[count] = BaselineIndex.hash(e.path);
+				offsets[count] = offset;
+				count++;
+				offset += len;
+
+				logger.trace("kraken filemon: adding file [{}] to baseline", e.path);
 			}
-			return db;
 		} finally {
-			logger.trace("kraken filemon: baseline [{}] created", db.getAbsolutePath());
 			os.close();
-
-			File target = new File(baseDir, "kraken-filemon-baseline.db");
-			boolean deleted = target.delete();
-
-			if (!deleted)
-				logger.trace("kraken filemon: old baseline not removed");
-
-			db.renameTo(target);
-			logger.trace("kraken filemon: created baseline [{}]", target.getAbsolutePath());
 		}
+
+		BaselineIndex.write(index, offset, hashes, offsets, count);
+		logger.trace("kraken filemon: baseline [{}] created", db.getAbsolutePath());
 	}
 
 	private List<String> marshalPaths() {
@@ -141,4 +284,75 @@ public class BaselineBuilder {
 		dir.mkdirs();
 		return dir;
 	}
+
+	private class HashTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private static final int THRESHOLD = 32;
+		private final int begin;
+		private final int end;
+
+		public HashTask(int begin, int end) {
+			this.begin = begin;
+			this.end = end;
+		}
+
+		@Override
+		protected void compute() {
+			if (end - begin > THRESHOLD) {
+				int mid = (begin + end) >>> 1;
+				invokeAll(new HashTask(begin, mid), new HashTask(mid, end));
+				return;
+			}
+
+			for (int i = begin; i < end; i++) {
+				Entry e = entries.get(i);
+				try {
+					e.hidden = Files.isHidden(e.file);
+					if (e.hash != null)
+						continue;
+
+					e.hash = HashUtils.getSha1(e.file.toFile());
+					hashedCount.incrementAndGet();
+				} catch (IOException ex) {
+					// removed or unreadable after scan
+					e.hash = null;
+					failedCount.incrementAndGet();
+					logger.warn("kraken filemon: cannot hash file [{}], {}", e.path, ex.toString());
+				}
+			}
+		}
+	}
+
+	private static class Entry implements Comparable<Entry> {
+		private Path file;
+		private String path;
+		private long size;
+		private long lastModified;
+		private String fileKey;
+		private boolean hidden;
+		private String hash;
+
+		public Entry(Path file, String path, BasicFileAttributes attrs) {
+			this.file = file;
+			this.path = path;
+			this.size = attrs.size();
+			this.lastModified = attrs.lastModifiedTime().toMillis();
+			this.fileKey = attrs.fileKey() != null ? attrs.fileKey().toString() : null;
+		}
+
+		public boolean isSame(Baseline b) {
+			if (size != b.getFileSize() || lastModified != b.getLastModified())
+				return false;
+
+			if (fileKey != null && !fileKey.equals(b.getFileKey()))
+				return false;
+
+			return b.getHash() != null;
+		}
+
+		@Override
+		public int compareTo(Entry o) {
+			return path.compareTo(o.path);
+		}
+	}
 }
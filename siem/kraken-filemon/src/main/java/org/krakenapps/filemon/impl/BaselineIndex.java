@@ -0,0 +1,227 @@
+/*
+ * Copyright 2011 Future Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.krakenapps.filemon.impl;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+import org.krakenapps.codec.EncodingRule;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Path hash index of baseline db for point lookup. Index file is an open
+ * addressing table of (path hash, record offset + 1) slots, and it is memory
+ * mapped while opened. Record path is always compared after lookup, so hash
+ * collision or stale index never returns wrong baseline.
+ */
+public class BaselineIndex {
+	private static final int MAGIC = 0x4b464d49;
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 24;
+
+	private final Logger logger = LoggerFactory.getLogger(BaselineIndex.class.getName());
+	private RandomAccessFile db;
+	private FileChannel dbChannel;
+	private MappedByteBuffer slots;
+	private int mask;
+	private int count;
+
+	public BaselineIndex(File dbFile, File indexFile) throws IOException {
+		if (!isValid(dbFile, indexFile)) {
+			logger.info("kraken filemon: rebuilding baseline index [{}]", indexFile.getAbsolutePath());
+			rebuild(dbFile, indexFile);
+		}
+
+		RandomAccessFile raf = new RandomAccessFile(indexFile, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			MappedByteBuffer mb = channel.map(MapMode.READ_ONLY, 0, channel.size());
+			this.count = mb.getInt(16);
+			this.mask = mb.getInt(20) - 1;
+			this.slots = mb;
+		} finally {
+			raf.close();
+		}
+
+		this.db = new RandomAccessFile(dbFile, "r");
+		this.dbChannel = db.getChannel();
+	}
+
+	public int getCount() {
+		return count;
+	}
+
+	/**
+	 * @return baseline of the file, or null if file is not in baseline
+	 */
+	public Baseline find(File f) throws IOException {
+		String path = f.getAbsolutePath();
+		long h = hash(path);
+		int i = (int) (h ^ (h >>> 32)) & mask;
+		while (true) {
+			int p = HEADER_SIZE + i * 16;
+			long offset = slots.getLong(p + 8);
+			if (offset == 0)
+				return null;
+
+			if (slots.getLong(p) == h) {
+				Baseline b = readRecord(offset - 1);
+				if (b != null && b.getFile().getAbsolutePath().equals(path))
+					return b;
+			}
+
+			i = (i + 1) & mask;
+		}
+	}
+
+	public void close() {
+		try {
+			db.close();
+		} catch (IOException e) {
+		}
+	}
+
+	private Baseline readRecord(long offset) throws IOException {
+		ByteBuffer head = ByteBuffer.allocate(11);
+		dbChannel.read(head, offset);
+		head.flip();
+		if (head.remaining() < 2)
+			return null;
+
+		head.position(1);
+		int payloadLen = (int) EncodingRule.decodeRawNumber(head);
+		int totalLength = head.position() + payloadLen;
+
+		ByteBuffer bb = ByteBuffer.allocate(totalLength);
+		while (bb.hasRemaining())
+			if (dbChannel.read(bb, offset + bb.position()) < 0)
+				return null;
+
+		bb.flip();
+		return BaselineReader.decode((Object[]) EncodingRule.decode(bb));
+	}
+
+	public static long hash(String path) {
+		// 64bit FNV-1a
+		long h = 0xcbf29ce484222325L;
+		for (int i = 0; i < path.length(); i++) {
+			h ^= path.charAt(i);
+			h *= 0x100000001b3L;
+		}
+		return h;
+	}
+
+	/**
+	 * Writes index of records. hashes and offsets are parallel arrays of
+	 * record path hash and record file offset.
+	 */
+	public static void write(File indexFile, long dbLength, long[] hashes, long[] offsets, int count)
+			throws IOException {
+		int capacity = 16;
+		while (capacity < count * 2)
+			capacity <<= 1;
+
+		int mask = capacity - 1;
+		long[] table = new long[capacity * 2];
+		for (int n = 0; n < count; n++) {
+			long h = hashes[n];
+			int i = (int) (h ^ (h >>> 32)) & mask;
+			while (table[i * 2 + 1] != 0)
+				i = (i + 1) & mask;
+
+			table[i * 2] = h;
+			table[i * 2 + 1] = offsets[n] + 1;
+		}
+
+		DataOutputStream os = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile), 65536));
+		try {
+			os.writeInt(MAGIC);
+			os.writeInt(VERSION);
+			os.writeLong(dbLength);
+			os.writeInt(count);
+			os.writeInt(capacity);
+			for (long l : table)
+				os.writeLong(l);
+		} finally {
+			os.close();
+		}
+	}
+
+	public static void rebuild(File dbFile, File indexFile) throws IOException {
+		long[] hashes = new long[1024];
+		long[] offsets = new long[1024];
+		int count = 0;
+
+		BaselineReader reader = new BaselineReader(dbFile);
+		try {
+			while (true) {
+				Baseline b = reader.next();
+				if (b == null)
+					break;
+
+				if (count == hashes.length) {
+					hashes = grow(hashes);
+					offsets = grow(offsets);
+				}
+
+				hashes[count] = hash(b.getFile().getAbsolutePath());
+				offsets[count] = reader.getRecordOffset();
+				count++;
+			}
+		} finally {
+			reader.close();
+		}
+
+		File tmp = new File(indexFile.getAbsolutePath() + ".tmp");
+		write(tmp, dbFile.length(), hashes, offsets, count);
+		indexFile.delete();
+		if (!tmp.renameTo(indexFile))
+			throw new IOException("cannot rename baseline index: " + tmp.getAbsolutePath());
+	}
+
+	static long[] grow(long[] a) {
+		long[] n = new long[a.length * 2];
+		System.arraycopy(a, 0, n, 0, a.length);
+		return n;
+	}
+
+	private static boolean isValid(File dbFile, File indexFile) throws IOException {
+		if (!indexFile.exists() || indexFile.length() < HEADER_SIZE)
+			return false;
+
+		RandomAccessFile raf = new RandomAccessFile(indexFile, "r");
+		try {
+			if (raf.readInt() != MAGIC || raf.readInt() != VERSION)
+				return false;
+
+			long dbLength = raf.readLong();
+			raf.readInt();
+			int capacity = raf.readInt();
+			return dbLength == dbFile.length() && indexFile.length() == HEADER_SIZE + capacity * 16L;
+		} finally {
+			raf.close();
+		}
+	}
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2011 Future Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.krakenapps.filemon.impl;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+import org.krakenapps.codec.EncodingRule;
+
+/**
+ * Reads baseline db sequentially. Baseline db consists of encoded header map
+ * and file records sorted by absolute path.
+ */
+public class BaselineReader {
+	private DataInputStream is;
+	private Map<String, Object> headers;
+	private long position;
+	private long recordOffset;
+	private byte[] buf = new byte[512];
+
+	public BaselineReader(File db) throws IOException {
+		this.is = new DataInputStream(new BufferedInputStream(new FileInputStream(db), 65536));
+		try {
+			ByteBuffer bb = readNext();
+			if (bb == null)
+				throw new IOException("empty baseline db: " + db.getAbsolutePath());
+			this.headers = EncodingRule.decodeMap(bb);
+		} catch (IOException e) {
+			close();
+			throw e;
+		}
+	}
+
+	public Map<String, Object> getHeaders() {
+		return headers;
+	}
+
+	/**
+	 * @return file offset of the record returned by last next() call
+	 */
+	public long getRecordOffset() {
+		return recordOffset;
+	}
+
+	/**
+	 * @return next baseline record, or null if end of db
+	 */
+	public Baseline next() throws IOException {
+		recordOffset = position;
+		ByteBuffer bb = readNext();
+		if (bb == null)
+			return null;
+
+		return decode((Object[]) EncodingRule.decode(bb));
+	}
+
+	public void close() {
+		try {
+			is.close();
+		} catch (IOException e) {
+		}
+	}
+
+	public static Object[] encode(Baseline b) {
+		return new Object[] { b.getFile().getAbsolutePath(), b.getFileSize(), b.getLastModified(), b.isHidden(),
+				b.getHash(), b.getFileKey() };
+	}
+
+	public static Baseline decode(Object[] record) {
+		// file key is appended later, old baseline db has 5 columns
+		String fileKey = record.length > 5 ? (String) record[5] : null;
+		return new Baseline(new File((String) record[0]), (Long) record[1], (Long) record[2], (Boolean) record[3],
+				(String) record[4], fileKey);
+	}
+
+	private ByteBuffer readNext() throws IOException {
+		int type = is.read();
+		if (type < 0)
+			return null;
+
+		try {
+			// type byte and raw number length prefix
+			int headerLength = 1;
+			buf[0] = (byte) type;
+			while (true) {
+				byte b = is.readByte();
+				buf[headerLength++] = b;
+				if ((b & 0x80) == 0)
+					break;
+				if (headerLength > 10)
+					throw new IOException("corrupted baseline record at " + position);
+			}
+
+			ByteBuffer lb = ByteBuffer.wrap(buf, 1, headerLength - 1);
+			int payloadLen = (int) EncodingRule.decodeRawNumber(lb);
+			int totalLength = headerLength + payloadLen;
+			if (buf.length < totalLength) {
+				byte[] newBuf = new byte[Math.max(totalLength, buf.length * 2)];
+				System.arraycopy(buf, 0, newBuf, 0, headerLength);
+				buf = newBuf;
+			}
+
+			is.readFully(buf, headerLength, payloadLen);
+			position += totalLength;
+			return ByteBuffer.wrap(buf, 0, totalLength);
+		} catch (EOFException e) {
+			// truncated tail
+			return null;
+		}
+	}
+}
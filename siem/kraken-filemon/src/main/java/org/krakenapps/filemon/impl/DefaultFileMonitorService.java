@@ -16,9 +16,7 @@
 package org.krakenapps.filemon.impl;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.nio.ByteBuffer;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
@@ -30,8 +28,8 @@ import java.util.regex.Pattern;
 
 import org.apache.felix.ipojo.annotations.Component;
 import org.apache.felix.ipojo.annotations.Provides;
+import org.apache.felix.ipojo.annotations.Invalidate;
 import org.apache.felix.ipojo.annotations.Validate;
-import org.krakenapps.codec.EncodingRule;
 import org.krakenapps.filemon.FileMonitorEventListener;
 import org.krakenapps.filemon.FileMonitorService;
 import org.slf4j.Logger;
@@ -49,6 +47,9 @@ public class DefaultFileMonitorService implements FileMonitorService {
 	private Date created = null;
 	private Integer fileCount;
 
+	// opened lazily for point lookup, and closed when baseline is rebuilt
+	private BaselineIndex index;
+
 	public DefaultFileMonitorService() {
 		this.baseDir = getBaseDirectory();
 		this.inclusionPaths = Collections.synchronizedSet(new TreeSet<File>());
@@ -78,8 +79,64 @@ public class DefaultFileMonitorService implements FileMonitorService {
 
 	@Override
 	public void createBaseline() throws IOException {
+		createBaseline(false);
+	}
+
+	@Override
+	public void createBaseline(boolean incremental) throws IOException {
 		BaselineBuilder builder = new BaselineBuilder(inclusionPaths, excludePatterns);
-		builder.build();
+		synchronized (this) {
+			closeIndex();
+			builder.build(incremental);
+		}
+
+		Map<String, Object> headers = readMetadata();
+		created = (Date) headers.get("created");
+		fileCount = (Integer) headers.get("file_count");
+	}
+
+	/**
+	 * Finds baseline record of the file using path index.
+	 * 
+	 * @return baseline, or null if file is not in baseline or baseline is not
+	 *         built yet
+	 */
+	public synchronized Baseline getBaseline(File f) throws IOException {
+		if (!new File(baseDir, BaselineBuilder.DB_FILE_NAME).exists())
+			return null;
+
+		return getIndex().find(f);
+	}
+
+	public synchronized BaselineIndex getIndex() throws IOException {
+		if (index == null)
+			index = new BaselineIndex(new File(baseDir, BaselineBuilder.DB_FILE_NAME), new File(baseDir,
+					BaselineBuilder.INDEX_FILE_NAME));
+		return index;
+	}
+
+	private synchronized void closeIndex() {
+		if (index != null) {
+			index.close();
+			index = null;
+		}
+	}
+
+	@Override
+	public void watch(File dir) throws Exception {
+		FileWatcher watcher = newWatcher();
+		for (FileMonitorEventListener callback : callbacks)
+			watcher.register(callback);
+
+		watcher.watch(dir.getAbsolutePath());
+	}
+
+	/**
+	 * Creates watcher which looks up baseline using path index. Index is
+	 * reopened after baseline rebuild.
+	 */
+	public FileWatcher newWatcher() {
+		return new FileWatcher(this);
 	}
 
 	@Validate
@@ -104,43 +161,35 @@ public class DefaultFileMonitorService implements FileMonitorService {
 		}
 	}
 
+	@Invalidate
+	public void stop() {
+		closeIndex();
+	}
+
 	private Map<String, Object> readMetadata() throws IOException {
-		File db = new File(baseDir, "kraken-filemon-baseline.db");
+		File db = new File(baseDir, BaselineBuilder.DB_FILE_NAME);
 
-		FileInputStream is = null;
+		BaselineReader reader = new BaselineReader(db);
 		try {
-			is = new FileInputStream(db);
-			return readHeaders(is);
+			return reader.getHeaders();
 		} finally {
-			if (is != null)
-				try {
-					is.close();
-				} catch (IOException e) {
-				}
+			reader.close();
 		}
 	}
 
 	@Override
 	public void check() {
-		File db = new File(baseDir, "kraken-filemon-baseline.db");
+		File db = new File(baseDir, BaselineBuilder.DB_FILE_NAME);
 
-		FileInputStream is = null;
+		BaselineReader reader = null;
 		try {
-			is = new FileInputStream(db);
-			readHeaders(is);
+			reader = new BaselineReader(db);
 
 			while (true) {
-				if (is.available() <= 0)
+				Baseline baseline = reader.next();
+				if (baseline == null)
 					break;
 
-				ByteBuffer bb = readNext(is);
-				Object[] record = (Object[]) EncodingRule.decode(bb);
-				if (record == null)
-					break;
-
-				Baseline baseline = new Baseline(new File((String) record[0]), (Long) record[1], (Long) record[2],
-						(Boolean) record[3], (String) record[4]);
-
 				fireCheckCallback(baseline);
 
 				if (baseline.isDeleted()) {
@@ -152,11 +201,8 @@ public class DefaultFileMonitorService implements FileMonitorService {
 		} catch (IOException e) {
 			logger.error("kraken filemon: cannot open baseline db", e);
 		} finally {
-			if (is != null)
-				try {
-					is.close();
-				} catch (IOException e) {
-				}
+			if (reader != null)
+				reader.close();
 		}
 	}
 
@@ -171,11 +217,12 @@ public class DefaultFileMonitorService implements FileMonitorService {
 	}
 
 	private void fireModifiedCallback(Baseline baseline) throws IOException {
-		logger.trace("kraken filemon: file modified, %s", baseline.getFileChange());
+		FileChange change = baseline.getFileChange();
+		logger.trace("kraken filemon: file modified, {}", change);
 
 		for (FileMonitorEventListener callback : callbacks) {
 			try {
-				callback.onModified(baseline.getFileChange());
+				callback.onModified(change);
 			} catch (Exception e) {
 				logger.warn("kraken filemon: file monitor callback should not throw any exception", e);
 			}
@@ -192,40 +239,6 @@ public class DefaultFileMonitorService implements FileMonitorService {
 		}
 	}
 
-	private Map<String, Object> readHeaders(FileInputStream is) throws IOException {
-		ByteBuffer bb = readNext(is);
-		return EncodingRule.decodeMap(bb);
-	}
-
-	private ByteBuffer readNext(FileInputStream is) throws IOException {
-		byte[] b = new byte[5];
-		ByteBuffer bb = ByteBuffer.wrap(b);
-		int type = is.read();
-
-		int i = 0;
-		for (;;) {
-			b[i] = (byte) is.read();
-			if ((b[i] & 0x80) == 0)
-				break;
-			i++;
-		}
-
-		int payloadLen = (int) EncodingRule.decodeRawNumber(bb);
-		int headerLength = 1 + EncodingRule.lengthOfRawNumber(int.class, payloadLen);
-
-		int totalLength = headerLength + payloadLen;
-		b = new byte[totalLength];
-		bb = ByteBuffer.wrap(b);
-
-		// rebuild bytes in memory
-		bb.put((byte) type);
-		EncodingRule.encodeNumber(bb, Long.class, payloadLen);
-		is.read(b, headerLength, payloadLen);
-		bb.flip();
-		bb.limit(totalLength);
-		return bb;
-	}
-
 	@Override
 	public Collection<File> getInclusionPaths() {
 		return inclusionPaths;
@@ -158,10 +158,18 @@ public class FileMonitorScript implements Script {
 		}
 	}
 
+	@ScriptUsage(description = "build baseline", arguments = { @ScriptArgument(name = "option", type = "string", description = "-i for incremental build which rehashes only changed files", optional = true) })
 	public void build(String[] args) {
+		boolean incremental = false;
+		for (String arg : args)
+			if (arg.equals("-i"))
+				incremental = true;
+
 		try {
-			monitor.createBaseline();
-			context.println("baseline created");
+			long begin = System.currentTimeMillis();
+			monitor.createBaseline(incremental);
+			long elapsed = System.currentTimeMillis() - begin;
+			context.println("baseline created, " + monitor.getLastFileCount() + " files, " + elapsed + "ms");
 		} catch (IOException e) {
 			context.println(e.getMessage());
 			logger.error("kraken baseline: baseline build failed", e);
@@ -187,6 +195,22 @@ public class FileMonitorScript implements Script {
 		}
 	}
 
+	@ScriptUsage(description = "wait for file events of the directory", arguments = { @ScriptArgument(type = "string", name = "directory", description = "directory path to watch") })
+	public void watch(String[] args) {
+		FileEventPrinter p = new FileEventPrinter(false);
+		try {
+			monitor.addEventListener(p);
+			monitor.watch(new File(args[0]));
+		} catch (InterruptedException e) {
+			context.println("interrupted");
+		} catch (Exception e) {
+			context.println(e.getMessage());
+			logger.error("kraken filemon: cannot watch directory", e);
+		} finally {
+			monitor.removeEventListener(p);
+		}
+	}
+
 	private class FileEventPrinter implements FileMonitorEventListener {
 		private boolean verbose = false;
 
@@ -1,6 +1,7 @@
 package org.krakenapps.filemon.impl;
 
 import java.io.File;
+import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardWatchEventKinds;
@@ -15,9 +16,20 @@ import org.krakenapps.filemon.FileMonitorEventListener;
 
 public class FileWatcher {
 	private Set<FileMonitorEventListener> callbacks;
+	private DefaultFileMonitorService monitor;
 
 	public FileWatcher() {
-		callbacks = new HashSet<FileMonitorEventListener>();
+		this(null);
+	}
+
+	/**
+	 * @param monitor
+	 *            if not null, modify events of baseline files are verified
+	 *            against baseline and reported as file change
+	 */
+	public FileWatcher(DefaultFileMonitorService monitor) {
+		this.callbacks = new HashSet<FileMonitorEventListener>();
+		this.monitor = monitor;
 	}
 
 	public void register(FileMonitorEventListener callback) {
@@ -37,22 +49,41 @@ public class FileWatcher {
 
 		List<WatchEvent<?>> events = watchKey.pollEvents();
 		for (WatchEvent<?> event : events) {
+			// event context is relative to watched directory
+			File file = path.resolve((Path) event.context()).toFile();
 			if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
 				for (FileMonitorEventListener callback : callbacks) {
-					callback.onCreated(new File(event.context().toString()));
+					callback.onCreated(file);
 				}
 			}
 			if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
 				for (FileMonitorEventListener callback : callbacks) {
-					callback.onDeleted(new File(event.context().toString()));
+					callback.onDeleted(file);
 				}
 			}
 
 			if (event.kind() == StandardWatchEventKinds.ENTRY_MODIFY) {
-				for (FileMonitorEventListener callback : callbacks) {
-					callback.onModified(new File(event.context().toString()));
-				}
+				fireModified(file);
 			}
 		}
 	}
+
+	private void fireModified(File file) throws IOException {
+		Baseline b = monitor != null ? monitor.getBaseline(file) : null;
+		if (b == null) {
+			for (FileMonitorEventListener callback : callbacks) {
+				callback.onModified(file);
+			}
+			return;
+		}
+
+		// ignore touch without content or metadata change
+		if (!b.isModified())
+			return;
+
+		FileChange change = b.getFileChange();
+		for (FileMonitorEventListener callback : callbacks) {
+			callback.onModified(change);
+		}
+	}
 }
\ No newline at end of file
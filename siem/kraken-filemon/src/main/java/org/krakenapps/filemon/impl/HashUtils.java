@@ -4,12 +4,19 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
 public class HashUtils {
 	private static final String[] hexTable = new String[256];
 
+	// files larger than threshold are hashed through memory mapped windows
+	private static final long MMAP_THRESHOLD = Long.getLong("kraken.filemon.mmap_threshold", 4 * 1024 * 1024);
+	private static final int MMAP_WINDOW = 64 * 1024 * 1024;
+
 	static {
 		buildHexTable();
 	}
@@ -59,15 +66,27 @@ public class HashUtils {
 
 	public static String digest(MessageDigest method, File f) throws NoSuchAlgorithmException, FileNotFoundException,
 			IOException {
-
-		byte[] b = new byte[4096];
 		FileInputStream fs = new FileInputStream(f);
-		while (true) {
-			int readBytes = fs.read(b);
-			if (readBytes < 0)
-				break;
-
-			method.update(b, 0, readBytes);
+		try {
+			FileChannel channel = fs.getChannel();
+			long size = channel.size();
+			if (size >= MMAP_THRESHOLD) {
+				for (long offset = 0; offset < size; offset += MMAP_WINDOW) {
+					MappedByteBuffer mb = channel.map(MapMode.READ_ONLY, offset, Math.min(MMAP_WINDOW, size - offset));
+					method.update(mb);
+				}
+			} else {
+				byte[] b = new byte[(int) Math.max(1, Math.min(size, 65536))];
+				while (true) {
+					int readBytes = fs.read(b);
+					if (readBytes < 0)
+						break;
+
+					method.update(b, 0, readBytes);
+				}
+			}
+		} finally {
+			fs.close();
 		}
 
 		byte[] digest = method.digest();
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2011 Future Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.krakenapps.filemon.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BaselineIndexTest {
+	private File dataDir;
+	private File target;
+	private DefaultFileMonitorService monitor;
+
+	@Before
+	public void setup() throws IOException {
+		dataDir = new File(System.getProperty("java.io.tmpdir"), "kraken-filemon-test-" + System.nanoTime());
+		System.setProperty("kraken.data.dir", dataDir.getAbsolutePath());
+
+		target = new File(dataDir, "target");
+		for (int i = 0; i < 100; i++)
+			write(new File(target, "dir" + (i % 10) + "/file" + i + ".txt"), "content " + i);
+
+		monitor = new DefaultFileMonitorService();
+		monitor.addInclusionPath(target);
+	}
+
+	@After
+	public void teardown() {
+		monitor.stop();
+		delete(dataDir);
+	}
+
+	@Test
+	public void testBuildAndLookup() throws IOException {
+		assertNull(monitor.getBaseline(new File(target, "dir1/file1.txt")));
+
+		monitor.createBaseline();
+		assertEquals(100, monitor.getIndex().getCount());
+
+		for (int i = 0; i < 100; i++) {
+			File f = new File(target, "dir" + (i % 10) + "/file" + i + ".txt");
+			Baseline b = monitor.getBaseline(f);
+			assertNotNull(b);
+			assertEquals(f.getAbsolutePath(), b.getFile().getAbsolutePath());
+			assertEquals(f.length(), b.getFileSize());
+			assertFalse(b.isModified());
+		}
+
+		assertNull(monitor.getBaseline(new File(target, "dir1/missing.txt")));
+		assertNull(monitor.getBaseline(new File(dataDir, "dir1/file1.txt")));
+	}
+
+	@Test
+	public void testModifiedAfterBuild() throws IOException {
+		monitor.createBaseline();
+
+		File f = new File(target, "dir3/file13.txt");
+		write(f, "tampered content");
+		assertTrue(monitor.getBaseline(f).isModified());
+
+		// index is reopened after rebuild
+		monitor.createBaseline(true);
+		assertFalse(monitor.getBaseline(f).isModified());
+	}
+
+	@Test
+	public void testRebuildStaleIndex() throws IOException {
+		monitor.createBaseline();
+		monitor.stop();
+
+		File db = new File(dataDir, "kraken-filemon/" + BaselineBuilder.DB_FILE_NAME);
+		File idx = new File(dataDir, "kraken-filemon/" + BaselineBuilder.INDEX_FILE_NAME);
+
+		// truncated index is detected and rebuilt from baseline db
+		new FileOutputStream(idx).close();
+
+		BaselineIndex index = new BaselineIndex(db, idx);
+		try {
+			assertEquals(100, index.getCount());
+			assertNotNull(index.find(new File(target, "dir9/file99.txt")));
+			assertNull(index.find(new File(target, "dir9/file98.txt")));
+		} finally {
+			index.close();
+		}
+	}
+
+	private static void write(File f, String content) throws IOException {
+		f.getParentFile().mkdirs();
+		FileOutputStream os = new FileOutputStream(f);
+		try {
+			os.write(content.getBytes("utf-8"));
+		} finally {
+			os.close();
+		}
+	}
+
+	private static void delete(File f) {
+		File[] children = f.listFiles();
+		if (children != null)
+			for (File c : children)
+				delete(c);
+		f.delete();
+	}
+}
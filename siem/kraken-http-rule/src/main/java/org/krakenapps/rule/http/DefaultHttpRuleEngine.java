@@ -21,27 +21,21 @@ import java.io.FileInputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.io.UnsupportedEncodingException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.felix.ipojo.annotations.Component;
 import org.apache.felix.ipojo.annotations.Provides;
 import org.apache.felix.ipojo.annotations.Validate;
-import org.krakenapps.ahocorasick.AhoCorasickSearch;
-import org.krakenapps.ahocorasick.Pair;
-import org.krakenapps.ahocorasick.Pattern;
-import org.krakenapps.ahocorasick.SearchContext;
 import org.krakenapps.rule.Rule;
 import org.krakenapps.rule.RuleDatabase;
 import org.krakenapps.rule.RuleGroup;
@@ -62,7 +56,7 @@ public class DefaultHttpRuleEngine implements HttpRuleEngine {
 
 	private GenericRuleSyntax syntax = new GenericRuleSyntax();
 
-	private volatile AhoCorasickSearch acm = null;
+	private volatile HttpRuleIndex index = new HttpRuleIndex();
 	private volatile Map<String, List<HttpRequestRule>> requestRuleMap = new ConcurrentHashMap<String, List<HttpRequestRule>>();
 	private volatile Map<String, List<HttpResponseRule>> responseRuleMap = new ConcurrentHashMap<String, List<HttpResponseRule>>();
 
@@ -98,7 +92,7 @@ public class DefaultHttpRuleEngine implements HttpRuleEngine {
 		File dir = new File(System.getProperty("kraken.data.dir"), "kraken-http-rule");
 		dir.mkdirs();
 
-		AhoCorasickSearch s = new AhoCorasickSearch();
+		HttpRuleIndex s = new HttpRuleIndex();
 		Map<String, List<HttpRequestRule>> reqs = new ConcurrentHashMap<String, List<HttpRequestRule>>();
 		Map<String, List<HttpResponseRule>> resps = new ConcurrentHashMap<String, List<HttpResponseRule>>();
 
@@ -120,8 +114,9 @@ public class DefaultHttpRuleEngine implements HttpRuleEngine {
 		}
 
 		s.compile();
+		logger.info("kraken http rule: loaded {} rules, {} literal factors", s.getRuleCount(), s.getFactorCount());
 
-		this.acm = s;
+		this.index = s;
 		this.requestRuleMap = reqs;
 		this.responseRuleMap = resps;
 	}
@@ -140,7 +135,7 @@ public class DefaultHttpRuleEngine implements HttpRuleEngine {
 		reload();
 	}
 
-	private void loadRules(AhoCorasickSearch fsm, Map<String, List<HttpRequestRule>> reqs,
+	private void loadRules(HttpRuleIndex index, Map<String, List<HttpRequestRule>> reqs,
 			Map<String, List<HttpResponseRule>> resps, File f) {
 		BufferedReader br = null;
 		try {
@@ -150,7 +145,7 @@ public class DefaultHttpRuleEngine implements HttpRuleEngine {
 				if (line == null)
 					break;
 
-				parse(fsm, reqs, resps, line);
+				parse(index, reqs, resps, line);
 			}
 		} catch (Exception e) {
 			logger.error("kraken http rule: cannot open http-rule file", e);
@@ -163,7 +158,7 @@ public class DefaultHttpRuleEngine implements HttpRuleEngine {
 		}
 	}
 
-	private void parse(AhoCorasickSearch fsm, Map<String, List<HttpRequestRule>> reqs,
+	private void parse(HttpRuleIndex index, Map<String, List<HttpRequestRule>> reqs,
 			Map<String, List<HttpResponseRule>> resps, String line) throws ParseException {
 		line = line.trim();
 		if (line.isEmpty() || line.startsWith(";"))
@@ -223,19 +218,16 @@ public class DefaultHttpRuleEngine implements HttpRuleEngine {
 			rule = new VariableRegexRule(r.getId(), r.getMessage(), path, params);
 		}
 
-		try {
-			if (rule != null) {
-				rule.getReferences().addAll(convert(r.getAll("reference")));
-				rule.getCveNames().addAll(r.getAll("cve"));
+		if (rule != null) {
+			rule.getReferences().addAll(convert(r.getAll("reference")));
+			rule.getCveNames().addAll(r.getAll("cve"));
 
-				fsm.addKeyword(new RulePattern(path, rule));
+			index.add((HttpRequestRule) rule);
 
-				if (!reqs.containsKey(rule.getId()))
-					reqs.put(rule.getId(), new ArrayList<HttpRequestRule>());
+			if (!reqs.containsKey(rule.getId()))
+				reqs.put(rule.getId(), new ArrayList<HttpRequestRule>());
 
-				reqs.get(rule.getId()).add((HttpRequestRule) rule);
-			}
-		} catch (UnsupportedEncodingException e) {
+			reqs.get(rule.getId()).add((HttpRequestRule) rule);
 		}
 	}
 
@@ -280,46 +272,12 @@ public class DefaultHttpRuleEngine implements HttpRuleEngine {
 
 	@Override
 	public Collection<HttpRequestRule> matchAll(HttpRequestContext context) {
-		Set<HttpRequestRule> matches = new HashSet<HttpRequestRule>();
-		byte[] bytes = getPathBytes(context.getPath());
-		SearchContext sctx = new SearchContext();
-		sctx.setIncludeFailurePatterns(true);
-		List<Pair> pairs = acm.search(bytes, sctx);
-
-		for (Pair p : pairs) {
-			Rule rule = ((RulePattern) p.getPattern()).getRule();
-			HttpRequestRule httpRule = (HttpRequestRule) rule;
-			if (httpRule.match(context))
-				matches.add(httpRule);
-		}
-
-		return matches;
+		return new LinkedHashSet<HttpRequestRule>(index.matchAll(context));
 	}
 
 	@Override
 	public HttpRequestRule match(HttpRequestContext context) {
-		byte[] bytes = getPathBytes(context.getPath());
-		SearchContext sctx = new SearchContext();
-		sctx.setIncludeFailurePatterns(true);
-		List<Pair> pairs = acm.search(bytes, sctx);
-
-		for (Pair p : pairs) {
-			Rule rule = ((RulePattern) p.getPattern()).getRule();
-			HttpRequestRule httpRule = (HttpRequestRule) rule;
-			if (httpRule.match(context))
-				return httpRule;
-		}
-
-		return null;
-	}
-
-	private byte[] getPathBytes(String path) {
-		byte[] bytes = null;
-		try {
-			bytes = path.getBytes("utf-8");
-		} catch (UnsupportedEncodingException e) {
-		}
-		return bytes;
+		return index.match(context);
 	}
 
 	@Override
@@ -338,28 +296,4 @@ public class DefaultHttpRuleEngine implements HttpRuleEngine {
 			return name.endsWith(".rules");
 		}
 	}
-
-	private static class RulePattern implements Pattern {
-		private byte[] b;
-		private Rule rule;
-
-		public RulePattern(String path, Rule rule) throws UnsupportedEncodingException {
-			this.b = path.getBytes("utf-8");
-			this.rule = rule;
-		}
-
-		public Rule getRule() {
-			return rule;
-		}
-
-		@Override
-		public byte[] getKeyword() {
-			return b;
-		}
-
-		@Override
-		public String toString() {
-			return rule.toString();
-		}
-	}
 }
@@ -15,6 +15,9 @@
  */
 package org.krakenapps.rule.http;
 
+import java.util.Collection;
+import java.util.Collections;
+
 import org.krakenapps.rule.AbstractRule;
 
 public abstract class HttpRequestRule extends AbstractRule {
@@ -30,5 +33,15 @@ public abstract class HttpRequestRule extends AbstractRule {
 		return path;
 	}
 
+	/**
+	 * Returns literals that every matching request contains in its
+	 * "name=value" parameter section. Rule index uses them to select candidate
+	 * rules before match() is called, so the literals should be necessary
+	 * conditions of match(). Empty collection means no literal is known.
+	 */
+	public Collection<String> getParameterFactors() {
+		return Collections.emptyList();
+	}
+
 	public abstract boolean match(HttpRequestContext c);
 }
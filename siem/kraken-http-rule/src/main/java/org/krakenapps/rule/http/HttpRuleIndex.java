@@ -0,0 +1,243 @@
+/*
+ * Copyright 2011 NCHOVY
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.krakenapps.rule.http;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.krakenapps.ahocorasick.AhoCorasickSearch;
+import org.krakenapps.ahocorasick.Pair;
+import org.krakenapps.ahocorasick.Pattern;
+import org.krakenapps.ahocorasick.SearchContext;
+
+/**
+ * Compiled index of http request rules. Each rule is indexed by its required
+ * literal factors: rule path which should be found in request path, and
+ * parameter factors which should be found in "name=value" parameter lines.
+ * One aho-corasick pass over path and parameters collects found factors, and
+ * match() of the rule is called only if all of its factors are found.
+ *
+ * Index is immutable after compile(), and it is safe to search concurrently.
+ */
+public class HttpRuleIndex {
+	private static final Charset UTF8 = Charset.forName("utf-8");
+
+	private AhoCorasickSearch acm = new AhoCorasickSearch();
+	private Map<String, Factor> factors = new HashMap<String, Factor>();
+	private List<Entry> entries = new ArrayList<Entry>();
+
+	// rules without any factor, always evaluated
+	private List<Entry> unconditional = new ArrayList<Entry>();
+	private boolean compiled;
+
+	public void add(HttpRequestRule rule) {
+		if (compiled)
+			throw new IllegalStateException("rule index is already compiled");
+
+		List<Factor> l = new ArrayList<Factor>();
+		String path = rule.getPath();
+		if (path != null && !path.isEmpty())
+			l.add(getFactor(path, true));
+
+		for (String s : rule.getParameterFactors()) {
+			if (s.isEmpty())
+				continue;
+
+			Factor f = getFactor(s, false);
+			if (!l.contains(f))
+				l.add(f);
+		}
+
+		int[] ids = new int[l.size()];
+		for (int i = 0; i < ids.length; i++)
+			ids[i] = l.get(i).id;
+
+		Entry entry = new Entry(entries.size(), rule, ids);
+		entries.add(entry);
+
+		if (ids.length == 0) {
+			unconditional.add(entry);
+			return;
+		}
+
+		// candidate is checked when any factor is found, visited once
+		for (Factor f : l)
+			f.entries.add(entry);
+	}
+
+	private Factor getFactor(String literal, boolean path) {
+		String key = (path ? "p:" : "v:") + literal;
+		Factor f = factors.get(key);
+		if (f == null) {
+			f = new Factor(factors.size(), literal.getBytes(UTF8), path);
+			factors.put(key, f);
+			acm.addKeyword(f);
+		}
+		return f;
+	}
+
+	public void compile() {
+		acm.compile();
+		compiled = true;
+	}
+
+	public int getRuleCount() {
+		return entries.size();
+	}
+
+	public int getFactorCount() {
+		return factors.size();
+	}
+
+	public List<HttpRequestRule> matchAll(HttpRequestContext c) {
+		List<HttpRequestRule> matches = new ArrayList<HttpRequestRule>();
+		for (Entry e : getCandidates(c))
+			if (e.rule.match(c))
+				matches.add(e.rule);
+		return matches;
+	}
+
+	public HttpRequestRule match(HttpRequestContext c) {
+		for (Entry e : getCandidates(c))
+			if (e.rule.match(c))
+				return e.rule;
+		return null;
+	}
+
+	/**
+	 * @return candidate rules in load order
+	 */
+	List<Entry> getCandidates(HttpRequestContext c) {
+		byte[] path = c.getPath() != null ? c.getPath().getBytes(UTF8) : new byte[0];
+		byte[] buf = encode(path, c.getParameters());
+
+		SearchContext sctx = new SearchContext();
+		sctx.setIncludeFailurePatterns(true);
+		List<Pair> pairs = acm.search(buf, sctx);
+
+		boolean[] found = new boolean[factors.size()];
+		List<Factor> foundFactors = new ArrayList<Factor>();
+		for (Pair p : pairs) {
+			Factor f = (Factor) p.getPattern();
+			if (found[f.id])
+				continue;
+
+			// path factor should be found in path section
+			if (f.path && p.getPosition() + f.keyword.length > path.length)
+				continue;
+
+			found[f.id] = true;
+			foundFactors.add(f);
+		}
+
+		List<Entry> candidates = new ArrayList<Entry>(unconditional);
+		boolean[] visited = new boolean[entries.size()];
+		for (Factor f : foundFactors) {
+			for (Entry e : f.entries) {
+				if (visited[e.order])
+					continue;
+
+				visited[e.order] = true;
+				if (e.isSatisfied(found))
+					candidates.add(e);
+			}
+		}
+
+		if (candidates.size() > 1) {
+			Entry[] sorted = candidates.toArray(new Entry[0]);
+			Arrays.sort(sorted);
+			return Arrays.asList(sorted);
+		}
+		return candidates;
+	}
+
+	private byte[] encode(byte[] path, Map<String, String> params) {
+		if (params == null || params.isEmpty())
+			return path;
+
+		StringBuilder sb = new StringBuilder();
+		for (Map.Entry<String, String> e : params.entrySet()) {
+			if (e.getValue() == null)
+				continue;
+
+			sb.append('\n');
+			sb.append(e.getKey());
+			sb.append('=');
+			sb.append(e.getValue());
+		}
+
+		byte[] b = sb.toString().getBytes(UTF8);
+		byte[] buf = new byte[path.length + b.length];
+		System.arraycopy(path, 0, buf, 0, path.length);
+		System.arraycopy(b, 0, buf, path.length, b.length);
+		return buf;
+	}
+
+	static class Entry implements Comparable<Entry> {
+		private final int order;
+		private final HttpRequestRule rule;
+		private final int[] factorIds;
+
+		public Entry(int order, HttpRequestRule rule, int[] factorIds) {
+			this.order = order;
+			this.rule = rule;
+			this.factorIds = factorIds;
+		}
+
+		public HttpRequestRule getRule() {
+			return rule;
+		}
+
+		public boolean isSatisfied(boolean[] found) {
+			for (int id : factorIds)
+				if (!found[id])
+					return false;
+			return true;
+		}
+
+		@Override
+		public int compareTo(Entry o) {
+			return order - o.order;
+		}
+	}
+
+	private static class Factor implements Pattern {
+		private final int id;
+		private final byte[] keyword;
+		private final boolean path;
+		private final List<Entry> entries = new ArrayList<Entry>();
+
+		public Factor(int id, byte[] keyword, boolean path) {
+			this.id = id;
+			this.keyword = keyword;
+			this.path = path;
+		}
+
+		@Override
+		public byte[] getKeyword() {
+			return keyword;
+		}
+
+		@Override
+		public String toString() {
+			return (path ? "path " : "param ") + new String(keyword, UTF8);
+		}
+	}
+}
@@ -15,6 +15,9 @@
  */
 package org.krakenapps.rule.http;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.regex.Pattern;
 
@@ -26,6 +29,18 @@ public class LocalFileInclusionRule extends HttpRequestRule {
 		this.params = params;
 	}
 
+	@Override
+	public Collection<String> getParameterFactors() {
+		// null byte can pass the rule after first variable, so only the first
+		// variable is required
+		List<String> factors = new ArrayList<String>();
+		for (String var : params.keySet()) {
+			factors.add(var + "=");
+			break;
+		}
+		return factors;
+	}
+
 	@Override
 	public boolean match(HttpRequestContext c) {
 		for (String var : params.keySet()) {
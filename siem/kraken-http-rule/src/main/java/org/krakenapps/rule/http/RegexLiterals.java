@@ -0,0 +1,232 @@
+/*
+ * Copyright 2011 NCHOVY
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.krakenapps.rule.http;
+
+/**
+ * Extracts literal factor which every match of java regex must contain. Only
+ * top level literal runs are considered, and groups, character classes and
+ * escapes break the run. Returns null when regex has top level alternation or
+ * inline flags, since literal cannot be guaranteed.
+ */
+public class RegexLiterals {
+	private RegexLiterals() {
+	}
+
+	public static String getRequiredLiteral(String regex) {
+		String best = "";
+		StringBuilder run = new StringBuilder();
+
+		int n = regex.length();
+		int i = 0;
+		while (i < n) {
+			char c = regex.charAt(i);
+			switch (c) {
+			case '|':
+				return null;
+			case '(':
+				if (i + 2 < n && regex.charAt(i + 1) == '?' && ":=!<>".indexOf(regex.charAt(i + 2)) < 0)
+					return null;
+
+				best = longer(best, run);
+				i = skipGroup(regex, i);
+				break;
+			case '[':
+				best = longer(best, run);
+				i = skipClass(regex, i);
+				break;
+			case '.':
+			case '^':
+			case '$':
+				best = longer(best, run);
+				i++;
+				break;
+			case '*':
+			case '?':
+				// previous atom is optional
+				if (run.length() > 0)
+					run.setLength(run.length() - 1);
+				best = longer(best, run);
+				i = skipQuantifierSuffix(regex, i + 1);
+				break;
+			case '+':
+				best = longer(best, run);
+				i = skipQuantifierSuffix(regex, i + 1);
+				break;
+			case '{': {
+				int end = regex.indexOf('}', i);
+				if (end < 0)
+					return null;
+
+				String min = regex.substring(i + 1, end);
+				int comma = min.indexOf(',');
+				if (comma >= 0)
+					min = min.substring(0, comma);
+				if (min.trim().equals("0") && run.length() > 0)
+					run.setLength(run.length() - 1);
+
+				best = longer(best, run);
+				i = skipQuantifierSuffix(regex, end + 1);
+				break;
+			}
+			case '\\': {
+				if (i + 1 >= n)
+					return null;
+
+				char d = regex.charAt(i + 1);
+				if (d == 'Q') {
+					int end = regex.indexOf("\\E", i + 2);
+					if (end < 0)
+						end = n;
+					run.append(regex, i + 2, end);
+					i = Math.min(n, end + 2);
+				} else if (d == 't') {
+					run.append('\t');
+					i += 2;
+				} else if (d == 'n') {
+					run.append('\n');
+					i += 2;
+				} else if (d == 'r') {
+					run.append('\r');
+					i += 2;
+				} else if (Character.isLetterOrDigit(d)) {
+					best = longer(best, run);
+					i = skipEscape(regex, i);
+				} else {
+					run.append(d);
+					i += 2;
+				}
+				break;
+			}
+			default:
+				run.append(c);
+				i++;
+			}
+		}
+
+		best = longer(best, run);
+		return best.isEmpty() ? null : best;
+	}
+
+	private static String longer(String best, StringBuilder run) {
+		String s = best;
+		if (run.length() > best.length())
+			s = run.toString();
+		run.setLength(0);
+		return s;
+	}
+
+	private static int skipQuantifierSuffix(String regex, int i) {
+		// lazy or possessive quantifier
+		if (i < regex.length() && (regex.charAt(i) == '?' || regex.charAt(i) == '+'))
+			return i + 1;
+		return i;
+	}
+
+	private static int skipGroup(String regex, int i) {
+		int depth = 0;
+		int n = regex.length();
+		while (i < n) {
+			char c = regex.charAt(i);
+			if (c == '\\') {
+				i += 2;
+				continue;
+			}
+
+			if (c == '[') {
+				i = skipClass(regex, i);
+				continue;
+			}
+
+			if (c == '(')
+				depth++;
+			else if (c == ')' && --depth == 0)
+				return i + 1;
+			i++;
+		}
+		return n;
+	}
+
+	private static int skipClass(String regex, int i) {
+		int n = regex.length();
+		i++;
+
+		// leading ] or ^] is literal
+		if (i < n && regex.charAt(i) == '^')
+			i++;
+		if (i < n && regex.charAt(i) == ']')
+			i++;
+
+		while (i < n) {
+			char c = regex.charAt(i);
+			if (c == '\\') {
+				i += 2;
+				continue;
+			}
+
+			if (c == '[') {
+				i = skipClass(regex, i);
+				continue;
+			}
+
+			if (c == ']')
+				return i + 1;
+			i++;
+		}
+		return n;
+	}
+
+	private static int skipEscape(String regex, int i) {
+		int n = regex.length();
+		char d = regex.charAt(i + 1);
+		i += 2;
+
+		switch (d) {
+		case 'x':
+			if (i < n && regex.charAt(i) == '{') {
+				int end = regex.indexOf('}', i);
+				return end < 0 ? n : end + 1;
+			}
+			return Math.min(n, i + 2);
+		case 'u':
+			return Math.min(n, i + 4);
+		case 'c':
+			return Math.min(n, i + 1);
+		case '0':
+			for (int k = 0; k < 3 && i < n && regex.charAt(i) >= '0' && regex.charAt(i) <= '7'; k++)
+				i++;
+			return i;
+		case 'p':
+		case 'P':
+			if (i < n && regex.charAt(i) == '{') {
+				int end = regex.indexOf('}', i);
+				return end < 0 ? n : end + 1;
+			}
+			return Math.min(n, i + 1);
+		case 'k':
+			if (i < n && regex.charAt(i) == '<') {
+				int end = regex.indexOf('>', i);
+				return end < 0 ? n : end + 1;
+			}
+			return i;
+		default:
+			// back reference
+			if (d >= '1' && d <= '9')
+				while (i < n && Character.isDigit(regex.charAt(i)))
+					i++;
+			return i;
+		}
+	}
+}
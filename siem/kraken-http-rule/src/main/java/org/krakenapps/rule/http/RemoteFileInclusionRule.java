@@ -15,6 +15,9 @@
  */
 package org.krakenapps.rule.http;
 
+import java.util.Arrays;
+import java.util.Collection;
+
 public class RemoteFileInclusionRule extends HttpRequestRule {
 	private String var;
 
@@ -23,6 +26,11 @@ public class RemoteFileInclusionRule extends HttpRequestRule {
 		this.var = var;
 	}
 
+	@Override
+	public Collection<String> getParameterFactors() {
+		return Arrays.asList(var + "=http://");
+	}
+
 	@Override
 	public boolean match(HttpRequestContext c) {
 		String value = c.getParameters().get(var);
@@ -48,14 +48,33 @@ public class URLParser {
 	}
 
 	public static HttpRequestContext parse(String method, String path, String queryString) {
-		Map<String, String> params = parseQueryString(queryString);
+		Map<String, String> params = new HashMap<String, String>();
+		parseQueryString(params, queryString);
 		return new HttpRequestContext(method, path, params);
 	}
 
-	private static Map<String, String> parseQueryString(String queryString) {
+	/**
+	 * Parse url string and form encoded request body, and create request
+	 * context. Body parameters are scanned by rules same as query string
+	 * parameters, but query string parameter wins on name conflict.
+	 * 
+	 * @param body
+	 *            application/x-www-form-urlencoded request body, or null
+	 */
+	public static HttpRequestContext parseWithBody(String method, String url, String body) {
+		HttpRequestContext c = parse(method, url);
+		if (body == null || body.isEmpty())
+			return c;
+
 		Map<String, String> params = new HashMap<String, String>();
+		parseQueryString(params, body);
+		params.putAll(c.getParameters());
+		return new HttpRequestContext(method, c.getPath(), params);
+	}
+
+	private static void parseQueryString(Map<String, String> params, String queryString) {
 		if (queryString == null)
-			return params;
+			return;
 
 		StringTokenizer tokenizer = new StringTokenizer(queryString, "&");
 		while (tokenizer.hasMoreTokens()) {
@@ -68,7 +87,5 @@ public class URLParser {
 					params.put(key, value);
 			}
 		}
-
-		return params;
 	}
 }
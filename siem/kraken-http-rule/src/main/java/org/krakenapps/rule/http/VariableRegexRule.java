@@ -15,6 +15,9 @@
  */
 package org.krakenapps.rule.http;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -27,6 +30,23 @@ public class VariableRegexRule extends HttpRequestRule {
 		this.params = params;
 	}
 
+	@Override
+	public Collection<String> getParameterFactors() {
+		List<String> factors = new ArrayList<String>();
+		for (String key : params.keySet()) {
+			ParameterValue val = params.get(key);
+			if (val != null && !val.isRegex()) {
+				factors.add(key + "=" + val.getValue());
+				continue;
+			}
+
+			factors.add(key + "=");
+			if (val != null && val.getRequiredLiteral() != null)
+				factors.add(val.getRequiredLiteral());
+		}
+		return factors;
+	}
+
 	@Override
 	public boolean match(HttpRequestContext c) {
 		for (String key : params.keySet()) {
@@ -34,7 +54,11 @@ public class VariableRegexRule extends HttpRequestRule {
 			if (value == null)
 				return false;
 
+			// variable without value only requires existence
 			ParameterValue val = params.get(key);
+			if (val == null)
+				continue;
+
 			if (val.isRegex()) {
 				Matcher matcher = val.getPattern().matcher(value);
 				if (!matcher.find())
@@ -57,6 +81,7 @@ public class VariableRegexRule extends HttpRequestRule {
 		private String value;
 		private boolean regex;
 		private Pattern pattern;
+		private String requiredLiteral;
 
 		public ParameterValue(String value) {
 			this(value, false);
@@ -65,8 +90,10 @@ public class VariableRegexRule extends HttpRequestRule {
 		public ParameterValue(String value, boolean isRegex) {
 			this.value = value;
 			this.regex = isRegex;
-			if (isRegex)
+			if (isRegex) {
 				pattern = Pattern.compile(value);
+				requiredLiteral = RegexLiterals.getRequiredLiteral(value);
+			}
 		}
 
 		public String getValue() {
@@ -80,6 +107,14 @@ public class VariableRegexRule extends HttpRequestRule {
 		public Pattern getPattern() {
 			return pattern;
 		}
+
+		/**
+		 * @return longest literal which every match of the regex contains, or
+		 *         null if unknown
+		 */
+		public String getRequiredLiteral() {
+			return requiredLiteral;
+		}
 	}
 
 }
@@ -0,0 +1,214 @@
+/*
+ * Copyright 2011 NCHOVY
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.krakenapps.rule.http;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+import org.krakenapps.ahocorasick.AhoCorasickSearch;
+import org.krakenapps.ahocorasick.Pair;
+import org.krakenapps.ahocorasick.Pattern;
+import org.krakenapps.ahocorasick.SearchContext;
+import org.krakenapps.rule.http.VariableRegexRule.ParameterValue;
+
+import static org.junit.Assert.*;
+
+public class HttpRuleIndexTest {
+	@Test
+	public void testRequiredLiteral() {
+		assertNull(RegexLiterals.getRequiredLiteral("\\D+"));
+		assertEquals("'", RegexLiterals.getRequiredLiteral("'+"));
+		assertEquals(" union", RegexLiterals.getRequiredLiteral("\\d+ union\\s+select"));
+		assertEquals("etc../", RegexLiterals.getRequiredLiteral("(\\.\\./)+etc\\.\\./"));
+		assertEquals("passw", RegexLiterals.getRequiredLiteral("[a-z]passwd?"));
+		assertEquals("script", RegexLiterals.getRequiredLiteral("<\\s*script"));
+		assertEquals("x41", RegexLiterals.getRequiredLiteral("\\x41\\x42x41"));
+		assertEquals("a.b", RegexLiterals.getRequiredLiteral("\\Qa.b\\E"));
+		assertNull(RegexLiterals.getRequiredLiteral("select|union"));
+		assertNull(RegexLiterals.getRequiredLiteral("(?i)select"));
+		assertEquals("from", RegexLiterals.getRequiredLiteral("(?:a|b)from"));
+	}
+
+	@Test
+	public void testMatch() {
+		HttpRuleIndex index = new HttpRuleIndex();
+		Map<String, ParameterValue> params = new HashMap<String, ParameterValue>();
+		params.put("page", new ParameterValue("profile"));
+		params.put("id", new ParameterValue("'+", true));
+		HttpRequestRule sqli = new VariableRegexRule("r1", "sqli", "index.php", params);
+		HttpRequestRule rfi = new RemoteFileInclusionRule("r2", "rfi", "/RR.php", "phpdns_basedir");
+		index.add(sqli);
+		index.add(rfi);
+		index.compile();
+
+		assertEquals(sqli, index.match(URLParser.parse("GET", "/index.php?page=profile&id=1'")));
+		assertNull(index.match(URLParser.parse("GET", "/index.php?page=profile&id=1")));
+		assertNull(index.match(URLParser.parse("GET", "/main.php?page=profile&id=1'")));
+
+		// path literal should be found in path, not in parameters
+		assertNull(index.match(URLParser.parse("GET", "/main.php?x=index.php&page=profile&id=1'")));
+
+		assertEquals(rfi, index.match(URLParser.parse("GET", "/DNS/RR.php?phpdns_basedir=http://evil/id.txt")));
+		assertEquals(rfi, index.match(URLParser.parseWithBody("POST", "/DNS/RR.php", "phpdns_basedir=http://evil/")));
+		assertNull(index.match(URLParser.parse("GET", "/DNS/RR.php?phpdns_basedir=/usr/share")));
+	}
+
+	@Test
+	public void testThroughput() {
+		List<HttpRequestRule> rules = generateRules(3000);
+		List<HttpRequestContext> requests = generateRequests(20000);
+
+		LegacyMatcher legacy = new LegacyMatcher(rules);
+		HttpRuleIndex index = new HttpRuleIndex();
+		for (HttpRequestRule rule : rules)
+			index.add(rule);
+		index.compile();
+
+		// same results as path only candidate search
+		int detected = 0;
+		for (HttpRequestContext c : requests) {
+			Set<HttpRequestRule> expected = legacy.matchAll(c);
+			assertEquals(expected, new HashSet<HttpRequestRule>(index.matchAll(c)));
+			if (!expected.isEmpty())
+				detected++;
+		}
+
+		long legacyElapsed = 0;
+		long indexElapsed = 0;
+		for (int round = 0; round < 3; round++) {
+			long begin = System.nanoTime();
+			for (HttpRequestContext c : requests)
+				legacy.matchAll(c);
+			legacyElapsed = System.nanoTime() - begin;
+
+			begin = System.nanoTime();
+			for (HttpRequestContext c : requests)
+				index.matchAll(c);
+			indexElapsed = System.nanoTime() - begin;
+		}
+
+		System.out.println(String.format("http rule: %d rules, %d factors, %d requests, %d detected", rules.size(),
+				index.getFactorCount(), requests.size(), detected));
+		System.out.println(String.format("http rule: legacy %d req/s, rule index %d req/s", requests.size()
+				* 1000000000L / legacyElapsed, requests.size() * 1000000000L / indexElapsed));
+	}
+
+	private List<HttpRequestRule> generateRules(int count) {
+		Random r = new Random(1);
+		List<HttpRequestRule> rules = new ArrayList<HttpRequestRule>();
+		String[] paths = { "index.php", "board.php", "/admin/index.php", "view.php", "list.php" };
+		String[] regexes = { "'+", "\\d+ union\\s+select", "<\\s*script", "\\.\\./\\.\\./", "\\D+", "or\\s+1=1" };
+
+		for (int i = 0; i < count; i++) {
+			String id = "TEST-" + i;
+			String path = paths[r.nextInt(paths.length)];
+			switch (i % 3) {
+			case 0: {
+				Map<String, ParameterValue> params = new HashMap<String, ParameterValue>();
+				params.put("option", new ParameterValue("com_" + i));
+				params.put("id", new ParameterValue(regexes[r.nextInt(regexes.length)], true));
+				rules.add(new VariableRegexRule(id, "regex " + i, path, params));
+				break;
+			}
+			case 1:
+				rules.add(new RemoteFileInclusionRule(id, "rfi " + i, path, "inc" + i));
+				break;
+			default: {
+				Map<String, String> params = new HashMap<String, String>();
+				params.put("controller" + i, null);
+				rules.add(new LocalFileInclusionRule(id, "lfi " + i, path, params));
+			}
+			}
+		}
+		return rules;
+	}
+
+	private List<HttpRequestContext> generateRequests(int count) {
+		Random r = new Random(2);
+		List<HttpRequestContext> requests = new ArrayList<HttpRequestContext>();
+		String[] paths = { "/index.php", "/board.php", "/admin/index.php", "/main.html", "/view.php" };
+		String[] values = { "1", "1'", "1 union select", "<script>", "news", "../../etc/passwd", "http://evil/" };
+
+		for (int i = 0; i < count; i++) {
+			String path = paths[r.nextInt(paths.length)];
+			int n = r.nextInt(3000);
+			String url;
+			switch (r.nextInt(4)) {
+			case 0:
+				url = path + "?option=com_" + (n - n % 3) + "&id=" + values[r.nextInt(values.length)];
+				break;
+			case 1:
+				url = path + "?inc" + (n - n % 3 + 1) + "=" + values[r.nextInt(values.length)];
+				break;
+			case 2:
+				url = path + "?controller" + (n - n % 3 + 2) + "=" + values[r.nextInt(values.length)] + "&page=" + n;
+				break;
+			default:
+				url = path + "?page=" + n + "&sort=desc&q=" + values[r.nextInt(values.length)];
+			}
+
+			if (i % 10 == 0)
+				requests.add(URLParser.parseWithBody("POST", path, url.substring(url.indexOf('?') + 1)));
+			else
+				requests.add(URLParser.parse("GET", url));
+		}
+		return requests;
+	}
+
+	/**
+	 * candidate search by rule path only, as before rule index
+	 */
+	private static class LegacyMatcher {
+		private AhoCorasickSearch acm = new AhoCorasickSearch();
+
+		public LegacyMatcher(List<HttpRequestRule> rules) {
+			for (HttpRequestRule rule : rules)
+				acm.addKeyword(new RulePattern(rule));
+			acm.compile();
+		}
+
+		public Set<HttpRequestRule> matchAll(HttpRequestContext c) {
+			Set<HttpRequestRule> matches = new HashSet<HttpRequestRule>();
+			SearchContext sctx = new SearchContext();
+			sctx.setIncludeFailurePatterns(true);
+			for (Pair p : acm.search(c.getPath().getBytes(), sctx)) {
+				HttpRequestRule rule = ((RulePattern) p.getPattern()).rule;
+				if (rule.match(c))
+					matches.add(rule);
+			}
+			return matches;
+		}
+	}
+
+	private static class RulePattern implements Pattern {
+		private HttpRequestRule rule;
+
+		public RulePattern(HttpRequestRule rule) {
+			this.rule = rule;
+		}
+
+		@Override
+		public byte[] getKeyword() {
+			return rule.getPath().getBytes();
+		}
+	}
+}
@@ -17,6 +17,7 @@ package org.krakenapps.log.api;
 
 import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 import java.util.Properties;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
@@ -38,12 +39,11 @@ public abstract class AbstractLogger implements Logger, Runnable {
 	private boolean isPassive;
 	private volatile LogPipe[] pipes;
 	private Object updateLock = new Object();
-	private Thread t;
+	private Object stopLock = new Object();
 	private int interval;
 	private Properties config;
 
 	private volatile LoggerStatus status = LoggerStatus.Stopped;
-	private volatile boolean doStop = false;
 	private volatile boolean stopped = true;
 
 	private volatile Date lastStartDate;
@@ -51,6 +51,15 @@ public abstract class AbstractLogger implements Logger, Runnable {
 	private volatile Date lastLogDate;
 	private AtomicLong logCounter;
 
+	// guarded by stopLock
+	private long runCount;
+	private long skipCount;
+	private long lastLatency;
+	private long maxLatency;
+	private long totalLatency;
+	private long lastLateness;
+	private long maxLateness;
+
 	private Set<LoggerEventListener> eventListeners;
 
 	public AbstractLogger(String name, String description, LoggerFactory loggerFactory) {
@@ -189,6 +198,17 @@ public abstract class AbstractLogger implements Logger, Runnable {
 		return interval;
 	}
 
+	@Override
+	public LoggerRunStats getRunStats() {
+		if (isPassive)
+			return null;
+
+		synchronized (stopLock) {
+			return new LoggerRunStats(runCount, skipCount, lastLatency, maxLatency, totalLatency, lastLateness,
+					maxLateness);
+		}
+	}
+
 	@Override
 	public void start() { // Passive
 		if (!isPassive)
@@ -205,27 +225,42 @@ public abstract class AbstractLogger implements Logger, Runnable {
 			return;
 		}
 
-		if (!stopped)
-			throw new IllegalStateException("logger is already running");
+		synchronized (stopLock) {
+			// already started
+			if (!stopped)
+				return;
+
+			stopped = false;
+		}
 
 		status = LoggerStatus.Starting;
 		this.interval = interval;
+		resetRunStats();
 
-		if (getExecutor() == null) {
-			t = new Thread(this, "Logger [" + fullName + "]");
-			t.start();
-		} else {
-			stopped = false;
+		if (getExecutor() == null)
+			LoggerScheduler.getInstance().schedule(this, interval, getJitter());
+		else
 			getExecutor().execute(this);
-		}
 
 		invokeStartCallback();
 	}
 
+	/**
+	 * Override this if logger should run on its own executor instead of shared
+	 * logger scheduler.
+	 */
 	protected ExecutorService getExecutor() {
 		return null;
 	}
 
+	/**
+	 * @return max random delay of first run in milliseconds. 10% of interval
+	 *         by default.
+	 */
+	protected int getJitter() {
+		return interval / 10;
+	}
+
 	private void invokeStartCallback() {
 		lastStartDate = new Date();
 		status = LoggerStatus.Running;
@@ -256,43 +291,36 @@ public abstract class AbstractLogger implements Logger, Runnable {
 			return;
 		}
 
-		if (t != null) {
-			if (!t.isAlive()) {
-				t = null;
+		if (getExecutor() == null) {
+			// already stopped by failure, or not started
+			if (stopped)
 				return;
-			}
-			t.interrupt();
-			t = null;
-		}
 
-		status = LoggerStatus.Stopping;
+			status = LoggerStatus.Stopping;
+			LoggerScheduler.getInstance().unschedule(this, maxWaitTime);
+		} else {
+			status = LoggerStatus.Stopping;
+		}
 
-		if (getExecutor() == null) {
-			doStop = true;
-			long begin = new Date().getTime();
-			try {
-				while (true) {
-					if (stopped)
-						break;
+		markStopped();
+		invokeStopCallback();
+	}
 
-					if (maxWaitTime != 0 && new Date().getTime() - begin > maxWaitTime)
-						break;
+	private boolean markStopped() {
+		synchronized (stopLock) {
+			if (stopped)
+				return false;
 
-					Thread.sleep(50);
-				}
-			} catch (InterruptedException e) {
-			}
-		} else {
 			status = LoggerStatus.Stopped;
 			stopped = true;
-			try {
-				onStop();
-			} catch (Exception e) {
-				log.warn("krane log api: [" + fullName + "] stop callback should not throw any exception", e);
-			}
 		}
 
-		invokeStopCallback();
+		try {
+			onStop();
+		} catch (Exception e) {
+			log.warn("krane log api: [" + fullName + "] stop callback should not throw any exception", e);
+		}
+		return true;
 	}
 
 	private void invokeStopCallback() {
@@ -310,66 +338,87 @@ public abstract class AbstractLogger implements Logger, Runnable {
 	protected void onStop() {
 	}
 
+	/**
+	 * Called by logger scheduler at each interval. Logger is stopped if
+	 * runOnce() throws exception.
+	 */
+	void runScheduled() {
+		if (stopped || status == LoggerStatus.Stopping)
+			return;
+
+		try {
+			runOnce();
+			updateConfig(config);
+			lastRunDate = new Date();
+		} catch (Exception e) {
+			log.error("kraken log api: logger [" + fullName + "] stopped", e);
+			LoggerScheduler.getInstance().unschedule(this, -1);
+			markStopped();
+		}
+	}
+
+	void recordRun(long lateness, long latency) {
+		synchronized (stopLock) {
+			runCount++;
+			lastLatency = latency;
+			maxLatency = Math.max(maxLatency, latency);
+			totalLatency += latency;
+			lastLateness = lateness;
+			maxLateness = Math.max(maxLateness, lateness);
+		}
+	}
+
+	void recordSkip(long count) {
+		synchronized (stopLock) {
+			skipCount += count;
+		}
+	}
+
+	private void resetRunStats() {
+		synchronized (stopLock) {
+			runCount = 0;
+			skipCount = 0;
+			lastLatency = 0;
+			maxLatency = 0;
+			totalLatency = 0;
+			lastLateness = 0;
+			maxLateness = 0;
+		}
+	}
+
+	/**
+	 * Executor driven run. Used only if getExecutor() is overridden.
+	 */
 	@Override
 	public void run() {
-		if (getExecutor() == null) {
-			stopped = false;
-			try {
-				while (true) {
-					try {
-						if (doStop)
-							break;
-						long startedAt = System.currentTimeMillis();
-						runOnce();
-						updateConfig(config);
-						long elapsed = System.currentTimeMillis() - startedAt;
-						lastRunDate = new Date();
-						if (interval - elapsed < 0)
-							continue;
-						Thread.sleep(interval - elapsed);
-					} catch (InterruptedException e) {
-					}
-				}
-			} catch (Exception e) {
-				log.error("kraken log api: logger stopped", e);
-			} finally {
-				status = LoggerStatus.Stopped;
-				stopped = true;
-				doStop = false;
+		if (!isRunning())
+			return;
 
+		if (lastRunDate != null) {
+			long millis = lastRunDate.getTime() + (long) interval - System.currentTimeMillis();
+			if (millis > 0) {
 				try {
-					onStop();
-				} catch (Exception e) {
-					log.warn("krane log api: [" + fullName + "] stop callback should not throw any exception", e);
+					Thread.sleep(Math.min(millis, 500));
+				} catch (InterruptedException e) {
 				}
-			}
-		} else {
-			if (!isRunning())
-				return;
-
-			if (lastRunDate != null) {
-				long millis = lastRunDate.getTime() + (long) interval - System.currentTimeMillis();
-				if (millis > 0) {
-					try {
-						Thread.sleep(Math.min(millis, 500));
-					} catch (InterruptedException e) {
-					}
-					if (millis > 500) {
-						ExecutorService executor = getExecutor();
-						if (executor != null)
-							executor.execute(this);
-						return;
-					}
+				if (millis > 500) {
+					ExecutorService executor = getExecutor();
+					if (executor != null)
+						executor.execute(this);
+					return;
 				}
 			}
-
-			runOnce();
-			updateConfig(config);
-			lastRunDate = new Date();
-			ExecutorService executor = getExecutor();
-			if (executor != null)
-				executor.execute(this);
 		}
+
+		long begin = System.currentTimeMillis();
+		runOnce();
+		updateConfig(config);
+		lastRunDate = new Date();
+		recordRun(0, lastRunDate.getTime() - begin);
+
+		ExecutorService executor = getExecutor();
+		if (executor != null)
+			executor.execute(this);
 	}
 
 	protected void write(Log log) {
@@ -394,6 +443,34 @@ public abstract class AbstractLogger implements Logger, Runnable {
 		}
 	}
 
+	/**
+	 * Writes logs at once. Batch log pipes receive whole list, and other pipes
+	 * receive each log.
+	 */
+	protected void write(List<Log> logs) {
+		if (stopped || logs.isEmpty())
+			return;
+
+		// update last log date
+		lastLogDate = logs.get(logs.size() - 1).getDate();
+		logCounter.addAndGet(logs.size());
+
+		// notify all
+		LogPipe[] capturedPipes = pipes;
+		for (LogPipe pipe : capturedPipes) {
+			try {
+				if (pipe instanceof BatchLogPipe) {
+					((BatchLogPipe) pipe).onLogBatch(this, logs);
+				} else {
+					for (Log log : logs)
+						pipe.onLog(this, log);
+				}
+			} catch (Exception e) {
+				this.log.warn("kraken-log-api: log pipe should not throw exception", e);
+			}
+		}
+	}
+
 	@Override
 	public void updateConfig(Properties config) {
 		for (LoggerEventListener callback : eventListeners) {
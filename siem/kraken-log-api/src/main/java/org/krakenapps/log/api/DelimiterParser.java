@@ -4,10 +4,22 @@ import java.util.HashMap;
 import java.util.Map;
 
 public class DelimiterParser implements LogParser {
+	private static final String REGEX_META = ".$|()[]{}^?*+\\";
+	private static final String[] COLUMN_NAMES = new String[64];
+
+	static {
+		for (int i = 0; i < COLUMN_NAMES.length; i++)
+			COLUMN_NAMES[i] = "column" + Integer.toString(i);
+	}
+
 	private final String delimiter;
 	private final String[] columnHeaders;
 	private final String targetField;
 
+	// single character delimiter can be scanned without regex
+	private final char delimiterChar;
+	private final boolean singleChar;
+
 	public DelimiterParser(String delimiter, String[] columnHeaders) {
 		this(delimiter, columnHeaders, "line");
 	}
@@ -16,6 +28,18 @@ public class DelimiterParser implements LogParser {
 		this.delimiter = delimiter;
 		this.columnHeaders = columnHeaders;
 		this.targetField = targetField;
+
+		if (delimiter.length() == 1 && REGEX_META.indexOf(delimiter.charAt(0)) < 0) {
+			delimiterChar = delimiter.charAt(0);
+			singleChar = true;
+		} else if (delimiter.length() == 2 && delimiter.charAt(0) == '\\'
+				&& !Character.isLetterOrDigit(delimiter.charAt(1))) {
+			delimiterChar = delimiter.charAt(1);
+			singleChar = true;
+		} else {
+			delimiterChar = 0;
+			singleChar = false;
+		}
 	}
 
 	@Override
@@ -27,6 +51,51 @@ public class DelimiterParser implements LogParser {
 		if (line == null)
 			return params;
 
+		if (!singleChar)
+			return parseRegex(params, line);
+
+		int capacity = (columnHeaders != null ? columnHeaders.length : 16) + params.size();
+		Map<String, Object> m = new HashMap<String, Object>(capacity * 4 / 3 + 1);
+		m.putAll(params);
+		m.remove("line");
+
+		// split() of empty line yields one empty column
+		if (line.isEmpty()) {
+			put(m, 0, "");
+			return m;
+		}
+
+		// trailing empty columns are discarded like split()
+		LogTokenizer t = new LogTokenizer(line);
+		int i = 0;
+		int emptyColumns = 0;
+		while (t.next(delimiterChar)) {
+			if (t.isTokenEmpty()) {
+				emptyColumns++;
+				i++;
+				continue;
+			}
+
+			for (int j = i - emptyColumns; j < i; j++)
+				put(m, j, "");
+			emptyColumns = 0;
+
+			boolean hasHeader = columnHeaders != null && i < columnHeaders.length;
+			put(m, i, hasHeader ? t.trimmedToken() : t.token());
+			i++;
+		}
+
+		return m;
+	}
+
+	private void put(Map<String, Object> m, int i, String value) {
+		if (columnHeaders != null && i < columnHeaders.length)
+			m.put(columnHeaders[i], value);
+		else
+			m.put(i < COLUMN_NAMES.length ? COLUMN_NAMES[i] : "column" + Integer.toString(i), value);
+	}
+
+	private Map<String, Object> parseRegex(Map<String, Object> params, String line) {
 		String[] tokens = line.split(delimiter);
 
 		Map<String, Object> m = new HashMap<String, Object>(tokens.length);
@@ -0,0 +1,231 @@
+/*
+ * Copyright 2011 NCHOVY
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.krakenapps.log.api;
+
+import java.text.ParseException;
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+
+/**
+ * Thread-safe date parser for fixed width numeric patterns such as
+ * "yyyy-MM-dd HH:mm:ss" or "yyyyMMdd HHmmss". Digits are read in place and
+ * converted without calendar, and timezone offset is cached per hour.
+ * Patterns with text fields, or input which does not match the exact width,
+ * fall back to SimpleDateFormat with same semantics.
+ */
+public class FastDateParser {
+	private static final int LITERAL = 0;
+	private static final int YEAR = 1;
+	private static final int MONTH = 2;
+	private static final int DAY = 3;
+	private static final int HOUR = 4;
+	private static final int MINUTE = 5;
+	private static final int SECOND = 6;
+	private static final int MILLIS = 7;
+
+	private final String pattern;
+	private final TimeZone timeZone;
+	private final int length;
+
+	// per pattern character, null if pattern is not supported
+	private final int[] fields;
+
+	private volatile OffsetCache offsetCache = new OffsetCache(Long.MIN_VALUE, 0);
+
+	private final ThreadLocal<SimpleDateFormat> fallback = new ThreadLocal<SimpleDateFormat>() {
+		@Override
+		protected SimpleDateFormat initialValue() {
+			SimpleDateFormat f = new SimpleDateFormat(pattern);
+			f.setTimeZone(timeZone);
+			return f;
+		}
+	};
+
+	public FastDateParser(String pattern) {
+		this(pattern, TimeZone.getDefault());
+	}
+
+	public FastDateParser(String pattern, TimeZone timeZone) {
+		this.pattern = pattern;
+		this.timeZone = timeZone;
+		this.length = pattern.length();
+		this.fields = compile(pattern);
+	}
+
+	public String getPattern() {
+		return pattern;
+	}
+
+	public Date parse(CharSequence s) throws ParseException {
+		return parse(s, 0, s.length());
+	}
+
+	public Date parse(CharSequence s, int begin, int end) throws ParseException {
+		if (fields != null && end - begin == length) {
+			long millis = parseFixed(s, begin);
+			if (millis != Long.MIN_VALUE)
+				return new Date(millis);
+		}
+
+		String text = s.subSequence(begin, end).toString();
+		ParsePosition pos = new ParsePosition(0);
+		Date d = fallback.get().parse(text, pos);
+		if (d == null)
+			throw new ParseException("Unparseable date: \"" + text + "\"", pos.getErrorIndex());
+		return d;
+	}
+
+	private long parseFixed(CharSequence s, int begin) {
+		int year = 1970, month = 1, day = 1, hour = 0, minute = 0, second = 0, millis = 0;
+		int i = 0;
+		while (i < length) {
+			int field = fields[i];
+			if (field == LITERAL) {
+				if (s.charAt(begin + i) != pattern.charAt(i))
+					return Long.MIN_VALUE;
+				i++;
+				continue;
+			}
+
+			int v = 0;
+			int j = i;
+			for (; j < length && fields[j] == field && pattern.charAt(j) == pattern.charAt(i); j++) {
+				char c = s.charAt(begin + j);
+				if (c < '0' || c > '9')
+					return Long.MIN_VALUE;
+				v = v * 10 + (c - '0');
+			}
+
+			switch (field) {
+			case YEAR:
+				year = v;
+				break;
+			case MONTH:
+				month = v;
+				break;
+			case DAY:
+				day = v;
+				break;
+			case HOUR:
+				hour = v;
+				break;
+			case MINUTE:
+				minute = v;
+				break;
+			case SECOND:
+				second = v;
+				break;
+			case MILLIS:
+				millis = v;
+				break;
+			}
+			i = j;
+		}
+
+		// leave out of range values to lenient fallback
+		if (year < 1970 || month < 1 || month > 12 || day < 1 || day > 31 || hour > 23 || minute > 59 || second > 59)
+			return Long.MIN_VALUE;
+
+		long local = daysFromCivil(year, month, day) * 86400000L + hour * 3600000L + minute * 60000L + second * 1000L
+				+ millis;
+		return local - offset(local);
+	}
+
+	private int offset(long local) {
+		long hour = local / 3600000L;
+		OffsetCache cache = offsetCache;
+		if (cache.hour == hour)
+			return cache.offset;
+
+		int offset = timeZone.getOffset(local - timeZone.getRawOffset());
+		offset = timeZone.getOffset(local - offset);
+		offsetCache = new OffsetCache(hour, offset);
+		return offset;
+	}
+
+	private static long daysFromCivil(int y, int m, int d) {
+		y -= m <= 2 ? 1 : 0;
+		long era = y / 400;
+		long yoe = y - era * 400;
+		long doy = (153 * (m + (m > 2 ? -3 : 9)) + 2) / 5 + d - 1;
+		long doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+		return era * 146097 + doe - 719468;
+	}
+
+	private static int[] compile(String pattern) {
+		int[] fields = new int[pattern.length()];
+		for (int i = 0; i < pattern.length(); i++) {
+			char c = pattern.charAt(i);
+			switch (c) {
+			case 'y':
+				fields[i] = YEAR;
+				break;
+			case 'M':
+				fields[i] = MONTH;
+				break;
+			case 'd':
+				fields[i] = DAY;
+				break;
+			case 'H':
+				fields[i] = HOUR;
+				break;
+			case 'm':
+				fields[i] = MINUTE;
+				break;
+			case 's':
+				fields[i] = SECOND;
+				break;
+			case 'S':
+				fields[i] = MILLIS;
+				break;
+			case '\'':
+				return null;
+			default:
+				if (Character.isLetter(c))
+					return null;
+				fields[i] = LITERAL;
+			}
+		}
+
+		// only numeric widths which can be read without separator
+		for (int i = 0; i < pattern.length();) {
+			int j = i;
+			while (j < pattern.length() && pattern.charAt(j) == pattern.charAt(i))
+				j++;
+
+			int width = j - i;
+			int field = fields[i];
+			if ((field == YEAR && width != 4) || (field == MILLIS && width != 3)
+					|| (field != LITERAL && field != YEAR && field != MILLIS && width != 2))
+				return null;
+			i = j;
+		}
+
+		return fields;
+	}
+
+	private static class OffsetCache {
+		private final long hour;
+		private final int offset;
+
+		public OffsetCache(long hour, int offset) {
+			this.hour = hour;
+			this.offset = offset;
+		}
+	}
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2011 NCHOVY
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.krakenapps.log.api;
+
+/**
+ * Immutable table of well-known field names. Looking up a key in a character
+ * range returns the shared string instance, so that parsers do not allocate
+ * key strings for every log. Unknown keys are copied as usual.
+ */
+public class KeyTable {
+	private final String[] table;
+	private final int mask;
+
+	public KeyTable(String... keys) {
+		int capacity = 16;
+		while (capacity < keys.length * 2)
+			capacity <<= 1;
+
+		this.table = new String[capacity];
+		this.mask = capacity - 1;
+
+		for (String key : keys) {
+			int i = spread(key.hashCode()) & mask;
+			while (table[i] != null && !table[i].equals(key))
+				i = (i + 1) & mask;
+			table[i] = key;
+		}
+	}
+
+	public String get(CharSequence s) {
+		return get(s, 0, s.length());
+	}
+
+	/**
+	 * @return well-known key instance, or new string if not found
+	 */
+	public String get(CharSequence s, int begin, int end) {
+		int h = 0;
+		for (int i = begin; i < end; i++)
+			h = 31 * h + s.charAt(i);
+
+		int len = end - begin;
+		int i = spread(h) & mask;
+		while (true) {
+			String key = table[i];
+			if (key == null)
+				return s.subSequence(begin, end).toString();
+
+			if (key.length() == len && regionEquals(key, s, begin, len))
+				return key;
+
+			i = (i + 1) & mask;
+		}
+	}
+
+	private static boolean regionEquals(String key, CharSequence s, int begin, int len) {
+		for (int i = 0; i < len; i++)
+			if (key.charAt(i) != s.charAt(begin + i))
+				return false;
+		return true;
+	}
+
+	private static int spread(int h) {
+		return h ^ (h >>> 16);
+	}
+}
@@ -0,0 +1,320 @@
+/*
+ * Copyright 2011 NCHOVY
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.krakenapps.log.api;
+
+import java.text.ParseException;
+import java.util.Date;
+
+/**
+ * Scans log line in place. Each next call only moves the current token range,
+ * and the token is copied or converted on demand, so that skipped fields and
+ * numeric fields cost no allocation. Tokenizer is reusable by reset(), but
+ * not thread-safe.
+ */
+public class LogTokenizer {
+	private CharSequence s;
+	private int pos;
+	private int end;
+	private boolean done;
+
+	private int tokenBegin;
+	private int tokenEnd;
+
+	public LogTokenizer() {
+	}
+
+	public LogTokenizer(CharSequence s) {
+		reset(s);
+	}
+
+	public LogTokenizer reset(CharSequence s) {
+		return reset(s, 0, s.length());
+	}
+
+	public LogTokenizer reset(CharSequence s, int begin, int end) {
+		this.s = s;
+		this.pos = begin;
+		this.end = end;
+		this.done = false;
+		this.tokenBegin = begin;
+		this.tokenEnd = begin;
+		return this;
+	}
+
+	public boolean hasNext() {
+		return !done;
+	}
+
+	public int position() {
+		return pos;
+	}
+
+	/**
+	 * @return true if no character is left after current token
+	 */
+	public boolean atEnd() {
+		return pos >= end;
+	}
+
+	/**
+	 * Moves to next token terminated by delimiter or end of line. Like
+	 * String.split(), n delimiters yield n + 1 tokens.
+	 */
+	public boolean next(char delimiter) {
+		if (done)
+			return false;
+
+		int i = pos;
+		while (i < end && s.charAt(i) != delimiter)
+			i++;
+
+		tokenBegin = pos;
+		tokenEnd = i;
+		if (i >= end) {
+			done = true;
+			pos = end;
+		} else {
+			pos = i + 1;
+		}
+		return true;
+	}
+
+	/**
+	 * Skips count tokens terminated by delimiter.
+	 *
+	 * @return false if line ended before count tokens
+	 */
+	public boolean skip(char delimiter, int count) {
+		for (int i = 0; i < count; i++)
+			if (!next(delimiter))
+				return false;
+		return true;
+	}
+
+	/**
+	 * Moves to next key which is terminated by assign character. Key is the
+	 * last word before assign character, and preceding words are skipped.
+	 */
+	public boolean nextKey(char assign) {
+		if (done)
+			return false;
+
+		int i = pos;
+		while (i < end && s.charAt(i) != assign)
+			i++;
+
+		if (i >= end) {
+			done = true;
+			pos = end;
+			return false;
+		}
+
+		int b = i;
+		while (b > pos && s.charAt(b - 1) != ' ')
+			b--;
+
+		tokenBegin = b;
+		tokenEnd = i;
+		pos = i + 1;
+		return true;
+	}
+
+	/**
+	 * Moves to next value. If value starts with quote, value ends at next
+	 * quote and quotes are excluded. Otherwise value ends at delimiter.
+	 */
+	public boolean nextValue(char delimiter, char quote) {
+		if (done)
+			return false;
+
+		if (pos < end && s.charAt(pos) == quote) {
+			int i = pos + 1;
+			while (i < end && s.charAt(i) != quote)
+				i++;
+
+			tokenBegin = pos + 1;
+			tokenEnd = i;
+			pos = Math.min(i + 1, end);
+			if (pos >= end)
+				done = true;
+			return true;
+		}
+
+		return next(delimiter);
+	}
+
+	/**
+	 * Reads next space terminated value which can contain single or double
+	 * quoted segments. Quotes are removed, escaped quotes do not close the
+	 * segment, and backslashes are removed in quoted segments. Value is copied
+	 * only if it has quoted segment.
+	 */
+	public String nextQuotedValue() {
+		if (done)
+			return null;
+
+		StringBuilder sb = null;
+		int segment = pos;
+		int i = pos;
+		while (i < end) {
+			char c = s.charAt(i);
+			if (c == ' ')
+				break;
+
+			if ((c == '"' || c == '\'') && (i == 0 || s.charAt(i - 1) != '\\')) {
+				if (sb == null)
+					sb = new StringBuilder(end - pos);
+				sb.append(s, segment, i);
+
+				int q = i + 1;
+				while (q < end && (s.charAt(q) != c || s.charAt(q - 1) == '\\'))
+					q++;
+
+				for (int k = i + 1; k < q; k++) {
+					char e = s.charAt(k);
+					if (e != '\\')
+						sb.append(e);
+				}
+
+				i = q + 1;
+				segment = i;
+				continue;
+			}
+
+			i++;
+		}
+
+		tokenBegin = pos;
+		tokenEnd = Math.min(i, end);
+		if (i >= end) {
+			done = true;
+			pos = end;
+		} else {
+			pos = i + 1;
+		}
+
+		if (sb == null)
+			return token();
+
+		if (segment < tokenEnd)
+			sb.append(s, segment, tokenEnd);
+		return sb.toString();
+	}
+
+	public int tokenBegin() {
+		return tokenBegin;
+	}
+
+	public int tokenEnd() {
+		return tokenEnd;
+	}
+
+	public int tokenLength() {
+		return tokenEnd - tokenBegin;
+	}
+
+	public boolean isTokenEmpty() {
+		return tokenEnd == tokenBegin;
+	}
+
+	public String token() {
+		return s.subSequence(tokenBegin, tokenEnd).toString();
+	}
+
+	/**
+	 * @return interned key if token is well-known key
+	 */
+	public String token(KeyTable keys) {
+		return keys.get(s, tokenBegin, tokenEnd);
+	}
+
+	public String trimmedToken() {
+		int b = tokenBegin;
+		int e = tokenEnd;
+		while (b < e && s.charAt(b) <= ' ')
+			b++;
+		while (e > b && s.charAt(e - 1) <= ' ')
+			e--;
+		return s.subSequence(b, e).toString();
+	}
+
+	public boolean tokenEquals(String value) {
+		int len = tokenEnd - tokenBegin;
+		if (value.length() != len)
+			return false;
+
+		for (int i = 0; i < len; i++)
+			if (s.charAt(tokenBegin + i) != value.charAt(i))
+				return false;
+		return true;
+	}
+
+	public char tokenCharAt(int index) {
+		return s.charAt(tokenBegin + index);
+	}
+
+	/**
+	 * Parses token as decimal integer, same as Integer.parseInt() but without
+	 * substring.
+	 */
+	public int tokenInt() {
+		long v = tokenLong();
+		if (v < Integer.MIN_VALUE || v > Integer.MAX_VALUE)
+			throw new NumberFormatException("For input string: \"" + token() + "\"");
+		return (int) v;
+	}
+
+	/**
+	 * Parses token as decimal long, same as Long.parseLong() but without
+	 * substring.
+	 */
+	public long tokenLong() {
+		int i = tokenBegin;
+		if (i >= tokenEnd)
+			throw new NumberFormatException("For input string: \"\"");
+
+		boolean negative = false;
+		char first = s.charAt(i);
+		if (first == '-' || first == '+') {
+			negative = first == '-';
+			if (++i >= tokenEnd)
+				throw new NumberFormatException("For input string: \"" + token() + "\"");
+		}
+
+		long v = 0;
+		for (; i < tokenEnd; i++) {
+			int d = s.charAt(i) - '0';
+			if (d < 0 || d > 9 || v < -(Long.MAX_VALUE / 10))
+				throw new NumberFormatException("For input string: \"" + token() + "\"");
+
+			// accumulate negatively to cover Long.MIN_VALUE
+			v = v * 10 - d;
+			if (v > 0)
+				throw new NumberFormatException("For input string: \"" + token() + "\"");
+		}
+
+		if (!negative) {
+			if (v == Long.MIN_VALUE)
+				throw new NumberFormatException("For input string: \"" + token() + "\"");
+			return -v;
+		}
+		return v;
+	}
+
+	public Date tokenDate(FastDateParser parser) throws ParseException {
+		return parser.parse(s, tokenBegin, tokenEnd);
+	}
+}
@@ -51,6 +51,12 @@ public interface Logger {
 
 	int getInterval();
 
+	/**
+	 * @return run latency and lateness of active logger, or null if logger is
+	 *         passive
+	 */
+	LoggerRunStats getRunStats();
+
 	void start();
 
 	void start(int interval);
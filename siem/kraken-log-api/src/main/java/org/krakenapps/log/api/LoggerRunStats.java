@@ -0,0 +1,80 @@
+/*
+ * Copyright 2011 NCHOVY
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.krakenapps.log.api;
+
+/**
+ * Run metrics snapshot of an active logger. Latency is elapsed time of
+ * runOnce(), and lateness is the delay between the scheduled time and the
+ * actual start of the run.
+ */
+public class LoggerRunStats {
+	private long runCount;
+	private long skipCount;
+	private long lastLatency;
+	private long maxLatency;
+	private long totalLatency;
+	private long lastLateness;
+	private long maxLateness;
+
+	public LoggerRunStats(long runCount, long skipCount, long lastLatency, long maxLatency, long totalLatency,
+			long lastLateness, long maxLateness) {
+		this.runCount = runCount;
+		this.skipCount = skipCount;
+		this.lastLatency = lastLatency;
+		this.maxLatency = maxLatency;
+		this.totalLatency = totalLatency;
+		this.lastLateness = lastLateness;
+		this.maxLateness = maxLateness;
+	}
+
+	public long getRunCount() {
+		return runCount;
+	}
+
+	/**
+	 * @return the number of intervals skipped because previous run was not
+	 *         finished yet
+	 */
+	public long getSkipCount() {
+		return skipCount;
+	}
+
+	public long getLastLatency() {
+		return lastLatency;
+	}
+
+	public long getMaxLatency() {
+		return maxLatency;
+	}
+
+	public long getAverageLatency() {
+		return runCount == 0 ? 0 : totalLatency / runCount;
+	}
+
+	public long getLastLateness() {
+		return lastLateness;
+	}
+
+	public long getMaxLateness() {
+		return maxLateness;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("runs=%d, skipped=%d, latency=%dms (avg %dms, max %dms), lateness=%dms (max %dms)", runCount,
+				skipCount, lastLatency, getAverageLatency(), maxLatency, lastLateness, maxLateness);
+	}
+}
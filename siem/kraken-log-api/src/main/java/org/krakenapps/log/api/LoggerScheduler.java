@@ -0,0 +1,334 @@
+/*
+ * Copyright 2011 NCHOVY
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.krakenapps.log.api;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs all active loggers on a bounded thread pool. A single timer thread
+ * walks a hashed timing wheel and dispatches due loggers at fixed rate. If
+ * previous run of a logger is not finished at next due time, the interval is
+ * skipped instead of queueing another run, also across unschedule and
+ * reschedule of the same logger. Timer thread and pool are created on demand,
+ * and released when last logger is unscheduled.
+ */
+public class LoggerScheduler {
+	private static final LoggerScheduler instance = new LoggerScheduler(Integer.getInteger(
+			"kraken.logapi.scheduler_threads", Math.max(4, Runtime.getRuntime().availableProcessors() * 2)));
+
+	private static final long TICK = 50;
+	private static final int WHEEL_SIZE = 512;
+	private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+
+	private final org.slf4j.Logger slog = org.slf4j.LoggerFactory.getLogger(LoggerScheduler.class.getName());
+	private final int poolSize;
+	private final Random random = new Random();
+
+	// guarded by this
+	private final List<Job>[] wheel;
+	private final Map<AbstractLogger, Job> jobs = new HashMap<AbstractLogger, Job>();
+	// running flags of unscheduled jobs which were not finished in wait time
+	private final Map<AbstractLogger, AtomicBoolean> draining = new HashMap<AbstractLogger, AtomicBoolean>();
+	private long lastTick;
+	private Thread timer;
+	private ThreadPoolExecutor pool;
+
+	public static LoggerScheduler getInstance() {
+		return instance;
+	}
+
+	@SuppressWarnings("unchecked")
+	public LoggerScheduler(int poolSize) {
+		this.poolSize = poolSize;
+		this.wheel = new List[WHEEL_SIZE];
+		for (int i = 0; i < WHEEL_SIZE; i++)
+			wheel[i] = new ArrayList<Job>();
+	}
+
+	/**
+	 * Schedules logger at fixed rate. First run is delayed by random time in
+	 * [0, jitter) milliseconds, so that loggers started at once do not run in
+	 * lockstep.
+	 */
+	public synchronized void schedule(AbstractLogger logger, int interval, int jitter) {
+		if (jobs.containsKey(logger))
+			throw new IllegalStateException("logger is already scheduled: " + logger.getFullName());
+
+		long now = now();
+		if (pool == null) {
+			lastTick = now / TICK - 1;
+			pool = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+					new WorkerThreadFactory());
+		}
+
+		if (timer == null)
+			startTimer();
+
+		// share running flag, previous run should not overlap with new one
+		AtomicBoolean running = draining.remove(logger);
+		Job job = new Job(logger, Math.max(interval, 1), running != null ? running : new AtomicBoolean());
+		job.next = now + (jitter > 0 ? random.nextInt(jitter) : 0);
+		jobs.put(logger, job);
+		enqueue(job);
+	}
+
+	/**
+	 * Cancels next runs of the logger, and waits until running one is
+	 * finished.
+	 *
+	 * @param maxWaitTime
+	 *            max wait time in milliseconds, 0 for infinite, and negative
+	 *            value for no wait
+	 * @return false if logger was not scheduled
+	 */
+	public boolean unschedule(AbstractLogger logger, int maxWaitTime) {
+		Job job = null;
+		synchronized (this) {
+			job = jobs.remove(logger);
+			if (job == null)
+				return false;
+			job.cancelled = true;
+		}
+
+		if (maxWaitTime < 0)
+			return true;
+
+		long begin = System.currentTimeMillis();
+		try {
+			while (job.running.get()) {
+				if (maxWaitTime != 0 && System.currentTimeMillis() - begin > maxWaitTime)
+					break;
+
+				Thread.sleep(50);
+			}
+		} catch (InterruptedException e) {
+		}
+
+		synchronized (this) {
+			if (job.running.get() && !jobs.containsKey(logger))
+				draining.put(logger, job.running);
+		}
+		return true;
+	}
+
+	public synchronized boolean isScheduled(AbstractLogger logger) {
+		return jobs.containsKey(logger);
+	}
+
+	public synchronized int getScheduledCount() {
+		return jobs.size();
+	}
+
+	public int getPoolSize() {
+		return poolSize;
+	}
+
+	public synchronized int getActiveCount() {
+		return pool != null ? pool.getActiveCount() : 0;
+	}
+
+	public synchronized int getQueueSize() {
+		return pool != null ? pool.getQueue().size() : 0;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("scheduled=%d, pool=%d, active=%d, queued=%d", getScheduledCount(), poolSize,
+				getActiveCount(), getQueueSize());
+	}
+
+	private void startTimer() {
+		timer = new Thread(new Timer(), "Logger Scheduler");
+		timer.setDaemon(true);
+		timer.start();
+	}
+
+	// guarded by this
+	private void release() {
+		for (List<Job> bucket : wheel)
+			bucket.clear();
+		pool.shutdown();
+		pool = null;
+		timer = null;
+		draining.clear();
+	}
+
+	private void enqueue(Job job) {
+		// round up, job should never run before its due time
+		long tick = Math.max((job.next + TICK - 1) / TICK, lastTick + 1);
+		wheel[(int) (tick & WHEEL_MASK)].add(job);
+	}
+
+	private void dispatch(ThreadPoolExecutor pool, Job job, long now) {
+		// fixed rate, and intervals already passed are skipped
+		long planned = job.next;
+		long next = planned + job.interval;
+		if (next <= now) {
+			long missed = (now - planned) / job.interval;
+			job.logger.recordSkip(missed);
+			next = planned + (missed + 1) * job.interval;
+		}
+
+		if (job.running.compareAndSet(false, true)) {
+			try {
+				pool.execute(new RunTask(job, planned));
+			} catch (RejectedExecutionException e) {
+				job.running.set(false);
+				job.logger.recordSkip(1);
+			}
+		} else {
+			job.logger.recordSkip(1);
+		}
+
+		synchronized (this) {
+			if (job.cancelled)
+				return;
+
+			job.next = next;
+			enqueue(job);
+		}
+	}
+
+	private static long now() {
+		// monotonic, wall clock adjustment should not stall loggers
+		return System.nanoTime() / 1000000L;
+	}
+
+	private class Timer implements Runnable {
+		@Override
+		public void run() {
+			List<Job> due = new ArrayList<Job>();
+			try {
+				while (true) {
+					ThreadPoolExecutor capturedPool = null;
+					synchronized (LoggerScheduler.this) {
+						if (jobs.isEmpty()) {
+							release();
+							slog.debug("kraken log api: no scheduled logger, stopping logger scheduler");
+							return;
+						}
+
+						capturedPool = pool;
+						long end = Math.min(now() / TICK, lastTick + WHEEL_SIZE);
+						while (lastTick < end) {
+							lastTick++;
+							Iterator<Job> it = wheel[(int) (lastTick & WHEEL_MASK)].iterator();
+							while (it.hasNext()) {
+								Job job = it.next();
+								if (job.cancelled) {
+									it.remove();
+								} else if (job.next <= lastTick * TICK) {
+									it.remove();
+									due.add(job);
+								}
+							}
+						}
+					}
+
+					long now = now();
+					for (Job job : due)
+						dispatch(capturedPool, job, now);
+					due.clear();
+
+					Thread.sleep(TICK - now % TICK);
+				}
+			} catch (InterruptedException e) {
+				slog.info("kraken log api: logger scheduler interrupted");
+			} catch (Throwable t) {
+				slog.error("kraken log api: logger scheduler failed", t);
+			} finally {
+				synchronized (LoggerScheduler.this) {
+					// timer is cleared already if stopped normally
+					if (timer == Thread.currentThread()) {
+						if (jobs.isEmpty()) {
+							release();
+						} else {
+							// scheduled jobs are still in wheel, resume them
+							slog.warn("kraken log api: logger scheduler stopped unexpectedly, restarting");
+							startTimer();
+						}
+					}
+				}
+			}
+		}
+	}
+
+	private class RunTask implements Runnable {
+		private Job job;
+		private long planned;
+
+		public RunTask(Job job, long planned) {
+			this.job = job;
+			this.planned = planned;
+		}
+
+		@Override
+		public void run() {
+			Thread current = Thread.currentThread();
+			String threadName = current.getName();
+			current.setName("Logger [" + job.logger.getFullName() + "]");
+
+			long begin = now();
+			try {
+				if (!job.cancelled)
+					job.logger.runScheduled();
+			} finally {
+				job.logger.recordRun(begin - planned, now() - begin);
+				job.running.set(false);
+				current.setName(threadName);
+			}
+		}
+	}
+
+	private static class WorkerThreadFactory implements ThreadFactory {
+		private AtomicInteger counter = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "Logger Scheduler Worker " + counter.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		}
+	}
+
+	private static class Job {
+		private final AbstractLogger logger;
+		private final long interval;
+		private final AtomicBoolean running;
+		private volatile boolean cancelled;
+
+		// guarded by scheduler
+		private long next;
+
+		public Job(AbstractLogger logger, long interval, AtomicBoolean running) {
+			this.logger = logger;
+			this.interval = interval;
+			this.running = running;
+		}
+	}
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2011 NCHOVY
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.krakenapps.log.api;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Collects fields into map, which is the form LogParser returns.
+ */
+public class MapFieldSink implements FieldSink {
+	private Map<String, Object> m;
+
+	public MapFieldSink() {
+		this(new HashMap<String, Object>());
+	}
+
+	public MapFieldSink(Map<String, Object> m) {
+		this.m = m;
+	}
+
+	public Map<String, Object> getMap() {
+		return m;
+	}
+
+	@Override
+	public void onString(String key, String value) {
+		m.put(key, value);
+	}
+
+	@Override
+	public void onInt(String key, int value) {
+		m.put(key, value);
+	}
+
+	@Override
+	public void onLong(String key, long value) {
+		m.put(key, value);
+	}
+
+	@Override
+	public void onDate(String key, Date value) {
+		m.put(key, value);
+	}
+
+	@Override
+	public void onNull(String key) {
+		m.put(key, null);
+	}
+}
@@ -16,25 +16,56 @@
 package org.krakenapps.log.api;
 
 import java.io.Closeable;
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
 import java.nio.charset.CharacterCodingException;
 import java.nio.charset.Charset;
 import java.nio.charset.CharsetDecoder;
 
+/**
+ * Tails rotating text log file using file channel and reusable read buffer.
+ * Log rotation is detected by first line fingerprint and file truncation.
+ * Incomplete last line is not returned until newline is appended. Carriage
+ * return of CRLF line ending is removed.
+ */
 public class RotatingLogFileReader implements Closeable {
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	// eight newline bytes for word-at-a-time scanning
+	private static final long NEWLINES = 0x0A0A0A0A0A0A0A0AL;
+	private static final long LOW_BITS = 0x0101010101010101L;
+	private static final long HIGH_BITS = 0x8080808080808080L;
+
+	private File f;
 	private RandomAccessFile file;
+	private FileChannel channel;
 	private CharsetDecoder decoder;
 	private String filePath;
 	private long lastOffset;
 	private String firstLine;
-	private ByteBuffer byteBuffer;
+
+	// read buffer and file offset of its first byte
+	private ByteBuffer readBuffer;
+	private long bufferOffset;
+
+	// bytes of line which spans read buffers
+	private byte[] lineBuffer;
+	private int lineLength;
+
+	// file state at last close, for cheap modification check
+	private long lastLength = -1;
+	private long lastModified = -1;
 
 	public RotatingLogFileReader(String filePath) {
 		this.filePath = filePath;
-		this.byteBuffer = ByteBuffer.allocate(4096);
+		this.f = new File(filePath);
+		this.readBuffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		this.lineBuffer = new byte[4096];
 		this.decoder = Charset.forName("utf-8").newDecoder();
 	}
 
@@ -62,78 +93,166 @@ public class RotatingLogFileReader implements Closeable {
 		this.firstLine = firstLine;
 	}
 
+	/**
+	 * Checks file length and modified time without opening file.
+	 * 
+	 * @return true if file may have new lines or rotated since last close
+	 */
+	public boolean isModified() {
+		return f.length() != lastLength || f.lastModified() != lastModified || lastOffset != lastLength;
+	}
+
 	public void open() throws FileNotFoundException, IOException {
 		close(); // for sure
 
 		file = new RandomAccessFile(filePath, "r");
-		String line = file.readLine();
+		channel = file.getChannel();
+
+		String line = readFirstLine();
+		long length = channel.size();
 
 		if (firstLine == null) {
 			// first open
 			firstLine = line;
-		} else if (firstLine.equals(line) == false) {
-			// log rotated
+		} else if (firstLine.equals(line) == false || length < lastOffset) {
+			// log rotated or truncated
 			lastOffset = 0;
 			firstLine = line;
 		}
 
-		file.seek(lastOffset);
+		seek(lastOffset);
 	}
 
 	public String readLine() throws IOException {
 		if (file == null)
 			throw new IOException("Stream not opened.");
 
-		long offset = lastOffset;
-		long remainingBytes = file.length() - offset;
+		return readNextLine();
+	}
+
+	/**
+	 * Reads first line in the same way of RandomAccessFile.readLine(), since
+	 * first line is persisted as rotation fingerprint.
+	 */
+	private String readFirstLine() throws IOException {
+		seek(0);
+		if (!fill())
+			return null;
+
+		byte[] b = readBuffer.array();
+		int limit = readBuffer.limit();
+		for (int i = 0; i < limit; i++) {
+			if (b[i] == '\n' || b[i] == '\r')
+				return new String(b, 0, i, "ISO-8859-1");
+		}
 
-		while (remainingBytes > 0) {
-			int b = file.read();
+		// very long first line
+		if (limit == readBuffer.capacity()) {
+			file.seek(0);
+			return file.readLine();
+		}
+
+		return new String(b, 0, limit, "ISO-8859-1");
+	}
 
-			// EOF
-			if (b == -1)
-				break;
+	private void seek(long offset) {
+		bufferOffset = offset;
+		readBuffer.clear();
+		readBuffer.limit(0);
+		lineLength = 0;
+	}
 
-			if (isASCII(b) && isNewLine(b)) {
-				byteBuffer.flip();
-				if (isFirstLine())
-					removeBOM(byteBuffer);
+	private String readNextLine() throws IOException {
+		long lineOffset = bufferOffset + readBuffer.position() - lineLength;
 
-				lastOffset = file.getFilePointer();
-				String line = getString(byteBuffer);
-				byteBuffer.clear();
-				return line;
+		while (true) {
+			if (!readBuffer.hasRemaining() && !fill()) {
+				// incomplete line, read again later
+				seek(lastOffset);
+				return null;
 			}
 
-			byteBuffer.put((byte) b);
-			remainingBytes -= 1;
-		}
+			int begin = readBuffer.position();
+			int end = indexOfNewLine(readBuffer);
+			if (end < 0) {
+				appendLine(begin, readBuffer.limit());
+				readBuffer.position(readBuffer.limit());
+				continue;
+			}
+
+			readBuffer.position(end + 1);
+
+			ByteBuffer bb;
+			if (lineLength == 0) {
+				bb = ByteBuffer.wrap(readBuffer.array(), begin, end - begin);
+			} else {
+				appendLine(begin, end);
+				bb = ByteBuffer.wrap(lineBuffer, 0, lineLength);
+				lineLength = 0;
+			}
+
+			if (bb.hasRemaining() && bb.get(bb.limit() - 1) == '\r')
+				bb.limit(bb.limit() - 1);
 
-		// last offset is not changed.
-		byteBuffer.clear();
+			if (lineOffset == 0)
+				removeBOM(bb);
 
-		return null;
+			lastOffset = bufferOffset + readBuffer.position();
+
+			return getString(bb);
+		}
 	}
 
-	private boolean isFirstLine() {
-		return lastOffset == 0;
+	private boolean fill() throws IOException {
+		bufferOffset += readBuffer.limit();
+		readBuffer.clear();
+
+		int len = channel.read(readBuffer, bufferOffset);
+		readBuffer.flip();
+		return len > 0;
 	}
 
-	private boolean isNewLine(int b) {
-		return b == '\n';
+	private void appendLine(int begin, int end) {
+		int len = end - begin;
+		if (lineLength + len > lineBuffer.length) {
+			byte[] newBuffer = new byte[Math.max(lineBuffer.length * 2, lineLength + len)];
+			System.arraycopy(lineBuffer, 0, newBuffer, 0, lineLength);
+			lineBuffer = newBuffer;
+		}
+
+		System.arraycopy(readBuffer.array(), begin, lineBuffer, lineLength, len);
+		lineLength += len;
 	}
 
-	private boolean isASCII(int b) {
-		return (b & 0x80) == 0;
+	/**
+	 * Finds newline from current position, testing eight bytes at once. False
+	 * positives can occur only in bytes after a real match, so the lowest
+	 * matched byte of little endian word is the first newline.
+	 */
+	private static int indexOfNewLine(ByteBuffer bb) {
+		int i = bb.position();
+		int limit = bb.limit();
+
+		for (; i + 8 <= limit; i += 8) {
+			long x = bb.getLong(i) ^ NEWLINES;
+			long found = (x - LOW_BITS) & ~x & HIGH_BITS;
+			if (found != 0)
+				return i + (Long.numberOfTrailingZeros(found) >>> 3);
+		}
+
+		for (; i < limit; i++)
+			if (bb.get(i) == '\n')
+				return i;
+
+		return -1;
 	}
 
 	private void removeBOM(ByteBuffer bb) {
 		// only removes UTF-8 BOM
-		if (bb.get(0) == 0xEF && bb.get(1) == 0xBB && bb.get(2) == 0xBF) {
-			bb.get();
-			bb.get();
-			bb.get();
-		}
+		int p = bb.position();
+		if (bb.remaining() >= 3 && bb.get(p) == (byte) 0xEF && bb.get(p + 1) == (byte) 0xBB
+				&& bb.get(p + 2) == (byte) 0xBF)
+			bb.position(p + 3);
 	}
 
 	private String getString(ByteBuffer bb) throws CharacterCodingException {
@@ -146,8 +265,11 @@ public class RotatingLogFileReader implements Closeable {
 			return;
 
 		try {
+			lastLength = channel.size();
+			lastModified = f.lastModified();
 			file.close();
 			file = null;
+			channel = null;
 		} catch (IOException e) {
 			// ignore
 			e.printStackTrace();
@@ -4,9 +4,11 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Properties;
@@ -14,6 +16,7 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public class TextFileLogger extends AbstractLogger {
+	private static final int BATCH_SIZE = 1000;
 	private final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(TextFileLogger.class.getName());
 	private RotatingLogFileReader reader;
 	private DateParser dateParser;
@@ -170,6 +173,11 @@ public class TextFileLogger extends AbstractLogger {
 
 	@Override
 	protected void runOnce() {
+		// do not open file if nothing is appended
+		if (!reader.isModified())
+			return;
+
+		List<Log> logs = new ArrayList<Log>(BATCH_SIZE);
 		try {
 			this.reader.open();
 			while (true) {
@@ -196,10 +204,17 @@ public class TextFileLogger extends AbstractLogger {
 				params.put("date", date);
 				params.put("line", line);
 
-				Log log = new SimpleLog(date, getFullName(), params);
-				write(log);
+				logs.add(new SimpleLog(date, getFullName(), params));
+				if (logs.size() >= BATCH_SIZE) {
+					write(logs);
+					logs = new ArrayList<Log>(BATCH_SIZE);
+				}
 			}
 
+			// offset should not pass over logs which are not written yet
+			write(logs);
+			logs = new ArrayList<Log>(BATCH_SIZE);
+
 			getConfig().put("first_line", reader.getFirstLine());
 			getConfig().put("last_offset", reader.getLastOffset());
 
@@ -207,6 +222,8 @@ public class TextFileLogger extends AbstractLogger {
 		} catch (Exception e) {
 			logger.error("kraken log api: cannot read log file", e);
 		} finally {
+			// flush logs read before failure
+			write(logs);
 			this.reader.close();
 		}
 	}
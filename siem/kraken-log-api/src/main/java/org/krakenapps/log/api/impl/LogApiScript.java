@@ -36,6 +36,8 @@ import org.krakenapps.log.api.LoggerConfigOption;
 import org.krakenapps.log.api.LoggerFactory;
 import org.krakenapps.log.api.LoggerFactoryRegistry;
 import org.krakenapps.log.api.LoggerRegistry;
+import org.krakenapps.log.api.LoggerRunStats;
+import org.krakenapps.log.api.LoggerScheduler;
 
 public class LogApiScript implements Script {
 	private final org.slf4j.Logger slog = org.slf4j.LoggerFactory.getLogger(LogApiScript.class.getName());
@@ -109,6 +111,22 @@ public class LogApiScript implements Script {
 		}
 	}
 
+	@ScriptUsage(description = "print shared logger scheduler status and run stats of active loggers")
+	public void loggerScheduler(String[] args) {
+		context.println("Logger Scheduler");
+		context.println("------------------");
+		context.println(LoggerScheduler.getInstance().toString());
+		context.println("");
+
+		for (Logger logger : loggerRegistry.getLoggers()) {
+			LoggerRunStats stats = logger.getRunStats();
+			if (!logger.isRunning() || stats == null)
+				continue;
+
+			context.println("[" + logger.getFullName() + "] interval=" + logger.getInterval() + "ms, " + stats);
+		}
+	}
+
 	@ScriptUsage(description = "print logger configuration", arguments = { @ScriptArgument(name = "logger fullname", type = "string", description = "logger fullname") })
 	public void logger(String[] args) {
 		String fullName = args[0];
@@ -131,6 +149,8 @@ public class LogApiScript implements Script {
 		context.println(" * Last Log: " + lastLogDate);
 		context.println(" * Last Run: " + lastRunDate);
 		context.println(" * Log Count: " + logger.getLogCount());
+		if (logger.getRunStats() != null)
+			context.println(" * Run Stats: " + logger.getRunStats());
 		context.println("");
 
 		context.println("Configuration");
@@ -196,6 +216,11 @@ public class LogApiScript implements Script {
 				return;
 			}
 
+			if (logger.isRunning()) {
+				context.println("logger is already running");
+				return;
+			}
+
 			logger.start(interval);
 			context.println("logger started");
 		} catch (NumberFormatException e) {
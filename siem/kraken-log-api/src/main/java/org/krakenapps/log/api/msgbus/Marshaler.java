@@ -13,6 +13,7 @@ import org.krakenapps.log.api.LogParserFactory;
 import org.krakenapps.log.api.Logger;
 import org.krakenapps.log.api.LoggerConfigOption;
 import org.krakenapps.log.api.LoggerFactory;
+import org.krakenapps.log.api.LoggerRunStats;
 
 public class Marshaler {
 
@@ -52,6 +53,19 @@ public class Marshaler {
 		m.put("last_run", dateFormatting(logger.getLastRunDate()));
 		m.put("last_log", dateFormatting(logger.getLastLogDate()));
 		m.put("log_count", logger.getLogCount());
+
+		LoggerRunStats stats = logger.getRunStats();
+		if (stats != null) {
+			Map<String, Object> s = new HashMap<String, Object>();
+			s.put("run_count", stats.getRunCount());
+			s.put("skip_count", stats.getSkipCount());
+			s.put("last_latency", stats.getLastLatency());
+			s.put("avg_latency", stats.getAverageLatency());
+			s.put("max_latency", stats.getMaxLatency());
+			s.put("last_lateness", stats.getLastLateness());
+			s.put("max_lateness", stats.getMaxLateness());
+			m.put("run_stats", s);
+		}
 		return m;
 	}
 
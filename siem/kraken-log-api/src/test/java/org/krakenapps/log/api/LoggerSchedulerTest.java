@@ -0,0 +1,119 @@
+/*
+ * Copyright 2011 NCHOVY
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.krakenapps.log.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class LoggerSchedulerTest {
+	private LoggerScheduler scheduler = LoggerScheduler.getInstance();
+
+	@Test
+	public void testStartIdempotent() throws InterruptedException {
+		CountingLogger logger = new CountingLogger("idempotent", 0);
+		try {
+			logger.start(20);
+			logger.start(20);
+			assertTrue(scheduler.isScheduled(logger));
+
+			Thread.sleep(300);
+			assertTrue(logger.runs.get() > 0);
+		} finally {
+			logger.stop(1000);
+		}
+
+		assertFalse(scheduler.isScheduled(logger));
+		assertFalse(logger.isRunning());
+	}
+
+	@Test
+	public void testRestartDoesNotOverlap() throws InterruptedException {
+		CountingLogger logger = new CountingLogger("overlap", 500);
+		try {
+			logger.start(20);
+			waitForRun(logger);
+
+			// stop gives up before running one is finished
+			logger.stop(10);
+			assertEquals(1, logger.active.get());
+
+			logger.start(20);
+			Thread.sleep(1200);
+			assertTrue(logger.runs.get() >= 2);
+			assertEquals(1, logger.maxActive.get());
+		} finally {
+			logger.stop(1000);
+		}
+	}
+
+	@Test
+	public void testTimerRestartedAfterInterrupt() throws InterruptedException {
+		CountingLogger logger = new CountingLogger("interrupt", 0);
+		try {
+			logger.start(20);
+			waitForRun(logger);
+
+			for (Thread t : Thread.getAllStackTraces().keySet())
+				if (t.getName().equals("Logger Scheduler"))
+					t.interrupt();
+
+			Thread.sleep(100);
+			int runs = logger.runs.get();
+			Thread.sleep(300);
+			assertTrue(logger.runs.get() > runs);
+		} finally {
+			logger.stop(1000);
+		}
+	}
+
+	private void waitForRun(CountingLogger logger) throws InterruptedException {
+		for (int i = 0; i < 100 && logger.runs.get() == 0 && logger.active.get() == 0; i++)
+			Thread.sleep(10);
+	}
+
+	private static class CountingLogger extends AbstractLogger {
+		private final long sleep;
+		private final AtomicInteger runs = new AtomicInteger();
+		private final AtomicInteger active = new AtomicInteger();
+		private final AtomicInteger maxActive = new AtomicInteger();
+
+		public CountingLogger(String name, long sleep) {
+			super("local", name, "local", "test", new Properties());
+			this.sleep = sleep;
+		}
+
+		@Override
+		protected void runOnce() {
+			int n = active.incrementAndGet();
+			if (n > maxActive.get())
+				maxActive.set(n);
+
+			try {
+				Thread.sleep(sleep);
+			} catch (InterruptedException e) {
+			} finally {
+				active.decrementAndGet();
+				runs.incrementAndGet();
+			}
+		}
+	}
+}
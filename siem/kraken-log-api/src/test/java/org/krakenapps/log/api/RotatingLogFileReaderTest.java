@@ -0,0 +1,211 @@
+/*
+ * Copyright 2011 NCHOVY
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.krakenapps.log.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RotatingLogFileReaderTest {
+	private File file;
+	private RotatingLogFileReader reader;
+
+	@Before
+	public void setUp() throws IOException {
+		file = File.createTempFile("kraken-log-api", ".log");
+		reader = new RotatingLogFileReader(file.getAbsolutePath());
+	}
+
+	@After
+	public void tearDown() {
+		reader.close();
+		file.delete();
+	}
+
+	@Test
+	public void testLinesAcrossBufferBoundary() throws IOException {
+		// multibyte characters are split at buffer boundaries too
+		List<String> lines = new ArrayList<String>();
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 5000; i++) {
+			String line = i + " " + repeat(i % 3 == 0 ? "한글" : "ab", (i * 31) % 97);
+			lines.add(line);
+			sb.append(line).append('\n');
+		}
+
+		// longer than two read buffers
+		String longLine = repeat("0123456789", 15000);
+		lines.add(longLine);
+		sb.append(longLine).append('\n');
+		lines.add("last");
+		sb.append("last\n");
+		write(sb.toString(), false);
+
+		reader.open();
+		assertEquals(lines, readAll());
+		assertEquals(file.length(), reader.getLastOffset());
+	}
+
+	@Test
+	public void testLineEndsAtBufferBoundary() throws IOException {
+		String first = repeat("x", 64 * 1024 - 1);
+		write(first + "\nnext\n", false);
+
+		reader.open();
+		assertEquals(first, reader.readLine());
+		assertEquals("next", reader.readLine());
+		assertNull(reader.readLine());
+	}
+
+	@Test
+	public void testCrLf() throws IOException {
+		write("first\r\nsecond\r\n\r\nthird\nmid\rline\r\n", false);
+
+		reader.open();
+		assertEquals("first", reader.getFirstLine());
+		assertEquals("first", reader.readLine());
+		assertEquals("second", reader.readLine());
+		assertEquals("", reader.readLine());
+		assertEquals("third", reader.readLine());
+		assertEquals("mid\rline", reader.readLine());
+		assertNull(reader.readLine());
+		assertEquals(file.length(), reader.getLastOffset());
+	}
+
+	@Test
+	public void testBom() throws IOException {
+		write("﻿first\nsecond\n", false);
+
+		reader.open();
+		assertEquals("first", reader.readLine());
+		assertEquals("second", reader.readLine());
+	}
+
+	@Test
+	public void testIncompleteLine() throws IOException {
+		write("first\nsec", false);
+
+		reader.open();
+		assertEquals("first", reader.readLine());
+		assertNull(reader.readLine());
+		assertEquals(6, reader.getLastOffset());
+		reader.close();
+
+		// pending partial line keeps file dirty
+		assertTrue(reader.isModified());
+
+		write("ond\n", true);
+		assertTrue(reader.isModified());
+
+		reader.open();
+		assertEquals("second", reader.readLine());
+		assertNull(reader.readLine());
+		assertEquals(file.length(), reader.getLastOffset());
+		reader.close();
+		assertFalse(reader.isModified());
+	}
+
+	@Test
+	public void testResumeOffset() throws IOException {
+		write("line1\nline2\nline3\nline4\n", false);
+
+		reader.open();
+		assertEquals("line1", reader.readLine());
+		assertEquals("line2", reader.readLine());
+		reader.close();
+
+		// persisted state of text file logger
+		String firstLine = reader.getFirstLine();
+		long offset = reader.getLastOffset();
+
+		RotatingLogFileReader resumed = new RotatingLogFileReader(file.getAbsolutePath());
+		resumed.setFirstLine(firstLine);
+		resumed.setLastOffset(offset);
+		try {
+			resumed.open();
+			assertEquals("line3", resumed.readLine());
+			assertEquals("line4", resumed.readLine());
+			assertNull(resumed.readLine());
+		} finally {
+			resumed.close();
+		}
+	}
+
+	@Test
+	public void testRotation() throws IOException {
+		write("old1\nold2\n", false);
+		reader.open();
+		assertEquals(2, readAll().size());
+		reader.close();
+
+		// new file is longer than last offset, but first line differs
+		write("new1\nnew2\nnew3\n", false);
+		reader.open();
+		assertEquals("new1", reader.getFirstLine());
+		assertEquals("new1", reader.readLine());
+		assertEquals(2, readAll().size());
+	}
+
+	@Test
+	public void testTruncation() throws IOException {
+		write("head\nline2\nline3\n", false);
+		reader.open();
+		assertEquals(3, readAll().size());
+		reader.close();
+
+		// copytruncate keeps same first line
+		write("head\nx\n", false);
+		reader.open();
+		assertEquals("head", reader.readLine());
+		assertEquals("x", reader.readLine());
+		assertNull(reader.readLine());
+	}
+
+	private List<String> readAll() throws IOException {
+		List<String> lines = new ArrayList<String>();
+		String line;
+		while ((line = reader.readLine()) != null)
+			lines.add(line);
+		return lines;
+	}
+
+	private void write(String s, boolean append) throws IOException {
+		FileOutputStream os = new FileOutputStream(file, append);
+		try {
+			os.write(s.getBytes("utf-8"));
+		} finally {
+			os.close();
+		}
+	}
+
+	private String repeat(String s, int count) {
+		StringBuilder sb = new StringBuilder(s.length() * count);
+		for (int i = 0; i < count; i++)
+			sb.append(s);
+		return sb.toString();
+	}
+}
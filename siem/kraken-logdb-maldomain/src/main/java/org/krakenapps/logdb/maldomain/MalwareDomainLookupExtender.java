@@ -0,0 +1,87 @@
+package org.krakenapps.logdb.maldomain;
+
+import java.net.URL;
+
+import org.apache.felix.ipojo.annotations.Component;
+import org.apache.felix.ipojo.annotations.Invalidate;
+import org.apache.felix.ipojo.annotations.Requires;
+import org.apache.felix.ipojo.annotations.Validate;
+import org.krakenapps.logdb.LookupHandler;
+import org.krakenapps.logdb.LookupHandlerRegistry;
+import org.krakenapps.malwaredomains.MalwareDomain;
+import org.krakenapps.malwaredomains.MalwareDomainService;
+
+@Component(name = "logdb-maldomain")
+public class MalwareDomainLookupExtender implements LookupHandler {
+	@Requires
+	private MalwareDomainService maldomain;
+
+	@Requires
+	private LookupHandlerRegistry lookup;
+
+	@Validate
+	public void start() {
+		lookup.addLookupHandler("maldomain", this);
+	}
+
+	@Invalidate
+	public void stop() {
+		if (lookup != null)
+			lookup.removeLookupHandler("maldomain");
+	}
+
+	@Override
+	public Object lookup(String srcField, String dstField, Object value) {
+		MalwareDomain domain = null;
+		if (value instanceof URL)
+			domain = maldomain.match((URL) value);
+
+		if (value instanceof String) {
+			String s = (String) value;
+			int p = s.indexOf("://");
+			if (p >= 0)
+				s = getHost(s, p + 3);
+			domain = maldomain.match(s);
+		}
+
+		if (domain == null)
+			return null;
+
+		if (dstField.equals("domain"))
+			return domain.getDomain();
+		else if (dstField.equals("type"))
+			return domain.getType();
+		else if (dstField.equals("reference"))
+			return domain.getReference();
+		else if (dstField.equals("verified"))
+			return domain.getVerified();
+		else if (dstField.equals("created"))
+			return domain.getCreated();
+		else if (dstField.equals("seq"))
+			return domain.getSeq();
+
+		return null;
+	}
+
+	private String getHost(String url, int begin) {
+		// cut path, user info and port without url parsing
+		int end = url.length();
+		for (int i = begin; i < url.length(); i++) {
+			char c = url.charAt(i);
+			if (c == '/' || c == '?' || c == '#') {
+				end = i;
+				break;
+			}
+		}
+
+		int at = url.lastIndexOf('@', end - 1);
+		if (at >= begin)
+			begin = at + 1;
+
+		int colon = url.indexOf(':', begin);
+		if (colon >= 0 && colon < end)
+			end = colon;
+
+		return url.substring(begin, end);
+	}
+}
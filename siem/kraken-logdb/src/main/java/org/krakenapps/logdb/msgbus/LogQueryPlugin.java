@@ -257,8 +257,8 @@ public class LogQueryPlugin {
 			m.put("id", query.getId());
 			m.put("type", "status_change");
 			m.put("count", query.getResult().size());
-			pushApi.push(orgDomain, "logdb-query-" + query.getId(), m);
-			pushApi.push(orgDomain, "logstorage-query-" + query.getId(), m); // deprecated
+			pushApi.push(orgDomain, "logdb-query-" + query.getId(), "status_change", m);
+			pushApi.push(orgDomain, "logstorage-query-" + query.getId(), "status_change", m); // deprecated
 		}
 
 		@Override
@@ -312,10 +312,12 @@ public class LogQueryPlugin {
 			m.put("span_amount", spanValue.getAmount());
 			m.put("begin", beginTime);
 			m.put("values", values);
-			pushApi.push(orgDomain, "logdb-query-timeline-" + query.getId(), m);
+			// periodic timeline is replaced by newer one if not delivered yet
+			String coalesceKey = isEnd ? null : "periodic";
+			pushApi.push(orgDomain, "logdb-query-timeline-" + query.getId(), coalesceKey, m);
 
 			m.put("count", query.getResult().size());
-			pushApi.push(orgDomain, "logstorage-query-timeline-" + query.getId(), m); // deprecated
+			pushApi.push(orgDomain, "logstorage-query-timeline-" + query.getId(), coalesceKey, m); // deprecated
 
 			Object[] trace = new Object[] { query.getId(), spanValue.getFieldName(), spanValue.getAmount(), beginTime,
 					Arrays.toString(values), query.getResult().size() };
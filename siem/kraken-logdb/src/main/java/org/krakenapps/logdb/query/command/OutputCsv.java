@@ -1,24 +1,59 @@
 package org.krakenapps.logdb.query.command;
 
-import java.io.FileOutputStream;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.charset.Charset;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
 
 import org.krakenapps.logdb.LogQueryCommand;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+/**
+ * Writes csv rows to file. Rows are encoded into large chunks on the query
+ * thread, and chunks are written by writer thread through bounded queue, so
+ * disk or compression latency does not block query pipeline until queue is
+ * full.
+ * 
+ * Query cancel calls eof() from other thread, so push and eof are serialized,
+ * and rows pushed after eof are dropped.
+ */
 public class OutputCsv extends LogQueryCommand {
+	private static final int CHUNK_SIZE = 256 * 1024;
+	private static final int QUEUE_SIZE = 64;
+	private static final byte[] END = new byte[0];
+
+	private final Logger logger = LoggerFactory.getLogger(OutputCsv.class.getName());
 	private Charset utf8;
 	private List<String> fields;
-	private FileOutputStream os;
+	private OutputStream os;
+	private StringBuilder sb = new StringBuilder(CHUNK_SIZE + 4096);
+	private BlockingQueue<byte[]> queue = new ArrayBlockingQueue<byte[]>(QUEUE_SIZE);
+	private Thread writer;
+	private volatile IOException error;
+	private boolean closed;
+
+	public OutputCsv(OutputStream os, List<String> fields) {
+		this(os, fields, false);
+	}
 
-	public OutputCsv(FileOutputStream os, List<String> fields) {
-		this.os = os;
+	public OutputCsv(OutputStream os, List<String> fields, boolean compress) {
 		this.fields = fields;
 		this.utf8 = Charset.forName("utf-8");
 
+		try {
+			OutputStream bos = new BufferedOutputStream(os, 1024 * 1024);
+			this.os = compress ? new GZIPOutputStream(bos, 65536) : bos;
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+
 		// write first header line
-		StringBuilder sb = new StringBuilder();
 		int i = 0;
 		for (String field : fields) {
 			if (i != 0)
@@ -27,17 +62,13 @@ public class OutputCsv extends LogQueryCommand {
 			i++;
 		}
 		sb.append("\n");
-
-		try {
-			os.write(sb.toString().getBytes(utf8));
-		} catch (IOException e) {
-			throw new IllegalStateException(e);
-		}
 	}
 
 	@Override
-	public void push(LogMap m) {
-		StringBuilder sb = new StringBuilder();
+	public synchronized void push(LogMap m) {
+		if (closed)
+			return;
+
 		int i = 0;
 		for (String field : fields) {
 			if (i != 0)
@@ -50,10 +81,34 @@ public class OutputCsv extends LogQueryCommand {
 		}
 		sb.append("\n");
 
+		if (sb.length() >= CHUNK_SIZE)
+			flushChunk();
+	}
+
+	private void flushChunk() {
+		if (error != null)
+			throw new IllegalStateException(error);
+
+		byte[] b = sb.toString().getBytes(utf8);
+		sb.setLength(0);
+		enqueue(b);
+	}
+
+	private void enqueue(byte[] b) {
+		if (writer == null) {
+			writer = new Thread(new ChunkWriter(), "LogDB OutputCsv Writer");
+			// cancelled query may never reach eof, and should not block jvm shutdown
+			writer.setDaemon(true);
+			writer.start();
+		}
+
 		try {
-			os.write(sb.toString().getBytes(utf8));
-		} catch (IOException e) {
-			throw new IllegalStateException(e);
+			// writer may be dead by unexpected error, do not wait forever
+			while (!queue.offer(b, 1, TimeUnit.SECONDS))
+				if (!writer.isAlive())
+					throw new IllegalStateException("csv writer is not running");
+		} catch (InterruptedException e) {
+			throw new IllegalStateException("interrupted csv output", e);
 		}
 	}
 
@@ -64,10 +119,67 @@ public class OutputCsv extends LogQueryCommand {
 
 	@Override
 	public void eof() {
-		try {
-			os.close();
-		} catch (IOException e) {
+		Thread w = null;
+		synchronized (this) {
+			if (!closed) {
+				closed = true;
+				try {
+					if (sb.length() > 0)
+						flushChunk();
+				} catch (Throwable t) {
+					logger.error("kraken logdb: cannot write csv output", t);
+				}
+
+				try {
+					// empty chunk marks end of output
+					enqueue(END);
+					w = writer;
+				} catch (Throwable t) {
+					logger.error("kraken logdb: cannot close csv output", t);
+				}
+			}
+		}
+
+		if (w != null) {
+			try {
+				w.join();
+			} catch (InterruptedException e) {
+				logger.error("kraken logdb: interrupted while closing csv output");
+			}
 		}
 		super.eof();
 	}
+
+	private class ChunkWriter implements Runnable {
+		@Override
+		public void run() {
+			try {
+				while (true) {
+					byte[] b = queue.take();
+					if (b == END)
+						break;
+
+					// drain remaining chunks after error to release query thread
+					if (error == null)
+						write(b);
+				}
+			} catch (InterruptedException e) {
+				logger.trace("kraken logdb: csv writer interrupted");
+			} finally {
+				try {
+					os.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+
+		private void write(byte[] b) {
+			try {
+				os.write(b);
+			} catch (IOException e) {
+				logger.error("kraken logdb: cannot write csv output", e);
+				error = e;
+			}
+		}
+	}
 }
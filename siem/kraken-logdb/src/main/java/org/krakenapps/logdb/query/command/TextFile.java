@@ -2,71 +2,162 @@ package org.krakenapps.logdb.query.command;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
 
 import org.krakenapps.log.api.LogParser;
+import org.krakenapps.log.api.LogParserFactory;
 import org.krakenapps.logdb.LogQueryCommand;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Reads text files line by line. Each file is decoded and parsed by reader
+ * threads, and parsed batches are merged on the query thread in file order
+ * (ordered) or in arrival order. Gzip compressed files are detected by magic
+ * number and decoded directly.
+ */
 public class TextFile extends LogQueryCommand {
+	private static final int BATCH_SIZE = 1000;
+	private static final int QUEUE_SIZE = 16;
+	private static final List<Map<String, Object>> END = Collections.emptyList();
+
 	private final Logger logger = LoggerFactory.getLogger(TextFile.class.getName());
-	private FileInputStream is;
-	private LogParser parser;
+	private List<File> files;
+	private LogParserFactory parserFactory;
+	private Properties parserConfig;
 	private int offset;
 	private int limit;
+	private int threads;
+	private boolean ordered = true;
+	private volatile boolean stopped;
 
-	public TextFile(FileInputStream is, LogParser parser, int offset, int limit) {
-		this.is = is;
-		this.parser = parser;
+	public TextFile(List<File> files, LogParserFactory parserFactory, Properties parserConfig, int offset, int limit) {
+		this.files = files;
+		this.parserFactory = parserFactory;
+		this.parserConfig = parserConfig;
 		this.offset = offset;
 		this.limit = limit;
+		this.threads = Math.min(files.size(), Runtime.getRuntime().availableProcessors());
+	}
+
+	public List<File> getFiles() {
+		return files;
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+
+	public boolean isOrdered() {
+		return ordered;
+	}
+
+	public void setOrdered(boolean ordered) {
+		this.ordered = ordered;
 	}
 
 	@Override
 	public void start() {
 		status = Status.Running;
 
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads), new ReaderThreadFactory());
 		try {
-			Charset utf8 = Charset.forName("utf-8");
-			BufferedReader br = new BufferedReader(new InputStreamReader(new BufferedInputStream(is), utf8));
-
-			int i = 0;
-			int count = 0;
-			while (true) {
-				if (limit > 0 && count >= limit)
-					break;
-
-				String line = br.readLine();
-				if (line == null)
-					break;
-
-				Map<String, Object> m = new HashMap<String, Object>();
-				Map<String, Object> parsed = null;
-				m.put("line", line);
-				if (parser != null) {
-					parsed = parser.parse(m);
-					if (parsed == null)
-						continue;
-				}
+			// ordered merge drains each file queue in turn, otherwise all
+			// readers share one queue
+			BlockingQueue<List<Map<String, Object>>> shared = null;
+			if (!ordered)
+				shared = new ArrayBlockingQueue<List<Map<String, Object>>>(QUEUE_SIZE * Math.max(1, threads));
 
-				if (i >= offset) {
-					write(new LogMap(parsed != null ? parsed : m));
-					count++;
-				}
-				i++;
+			List<FileReader> readers = new ArrayList<FileReader>();
+			for (File f : files) {
+				BlockingQueue<List<Map<String, Object>>> queue = shared;
+				if (queue == null)
+					queue = new ArrayBlockingQueue<List<Map<String, Object>>>(QUEUE_SIZE);
+
+				FileReader reader = new FileReader(f, queue);
+				readers.add(reader);
+				executor.execute(reader);
 			}
+
+			Counter counter = new Counter();
+			if (ordered) {
+				for (FileReader reader : readers)
+					if (!drain(reader.queue, 1, counter))
+						break;
+			} else {
+				drain(shared, readers.size(), counter);
+			}
+		} catch (InterruptedException e) {
+			logger.trace("kraken logdb: textfile interrupted");
 		} catch (Throwable t) {
-			logger.error("kraken logstorage: file error", t);
+			logger.error("kraken logdb: file error", t);
+		} finally {
+			stopped = true;
+			executor.shutdownNow();
 		}
 
 		eof();
 	}
 
+	/**
+	 * @return false if query is ended or limit is reached
+	 */
+	private boolean drain(BlockingQueue<List<Map<String, Object>>> queue, int readerCount, Counter counter)
+			throws InterruptedException {
+		int ended = 0;
+		while (ended < readerCount) {
+			if (status == Status.End)
+				return false;
+
+			List<Map<String, Object>> batch = queue.poll(100, TimeUnit.MILLISECONDS);
+			if (batch == null)
+				continue;
+
+			if (batch == END) {
+				ended++;
+				continue;
+			}
+
+			for (Map<String, Object> m : batch) {
+				if (limit > 0 && counter.written >= limit)
+					return false;
+
+				if (counter.skipped < offset) {
+					counter.skipped++;
+					continue;
+				}
+
+				write(new LogMap(m));
+				counter.written++;
+			}
+		}
+
+		return !(limit > 0 && counter.written >= limit);
+	}
+
 	@Override
 	public void push(LogMap m) {
 		throw new UnsupportedOperationException();
@@ -77,4 +168,104 @@ public class TextFile extends LogQueryCommand {
 		return false;
 	}
 
+	private static InputStream open(File f) throws IOException {
+		BufferedInputStream is = new BufferedInputStream(new FileInputStream(f), 65536);
+		try {
+			is.mark(2);
+			int b1 = is.read();
+			int b2 = is.read();
+			is.reset();
+
+			if (b1 == 0x1f && b2 == 0x8b)
+				return new GZIPInputStream(is, 65536);
+			return is;
+		} catch (IOException e) {
+			is.close();
+			throw e;
+		}
+	}
+
+	private static class Counter {
+		private int skipped;
+		private int written;
+	}
+
+	private class FileReader implements Runnable {
+		private File file;
+		private BlockingQueue<List<Map<String, Object>>> queue;
+
+		public FileReader(File file, BlockingQueue<List<Map<String, Object>>> queue) {
+			this.file = file;
+			this.queue = queue;
+		}
+
+		@Override
+		public void run() {
+			try {
+				read();
+			} catch (InterruptedException e) {
+				return;
+			} catch (Throwable t) {
+				logger.error("kraken logdb: cannot read text file " + file.getAbsolutePath(), t);
+			}
+
+			try {
+				put(END);
+			} catch (InterruptedException e) {
+			}
+		}
+
+		private void read() throws IOException, InterruptedException {
+			LogParser parser = null;
+			if (parserFactory != null)
+				parser = parserFactory.createParser(parserConfig);
+
+			Charset utf8 = Charset.forName("utf-8");
+			BufferedReader br = new BufferedReader(new InputStreamReader(open(file), utf8), 65536);
+			try {
+				List<Map<String, Object>> batch = new ArrayList<Map<String, Object>>(BATCH_SIZE);
+				while (!stopped) {
+					String line = br.readLine();
+					if (line == null)
+						break;
+
+					Map<String, Object> m = new HashMap<String, Object>();
+					m.put("line", line);
+					if (parser != null) {
+						m = parser.parse(m);
+						if (m == null)
+							continue;
+					}
+
+					batch.add(m);
+					if (batch.size() >= BATCH_SIZE) {
+						put(batch);
+						batch = new ArrayList<Map<String, Object>>(BATCH_SIZE);
+					}
+				}
+
+				if (!batch.isEmpty())
+					put(batch);
+			} finally {
+				br.close();
+			}
+		}
+
+		private void put(List<Map<String, Object>> batch) throws InterruptedException {
+			while (!stopped)
+				if (queue.offer(batch, 100, TimeUnit.MILLISECONDS))
+					return;
+		}
+	}
+
+	private static class ReaderThreadFactory implements ThreadFactory {
+		private static final AtomicInteger seq = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "LogDB TextFile Reader " + seq.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		}
+	}
 }
@@ -1,6 +1,7 @@
 package org.krakenapps.logdb.query.parser;
 
 import static org.krakenapps.bnf.Syntax.k;
+import static org.krakenapps.bnf.Syntax.ref;
 import static org.krakenapps.bnf.Syntax.repeat;
 
 import java.io.File;
@@ -8,6 +9,7 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import org.krakenapps.bnf.Binding;
 import org.krakenapps.bnf.Syntax;
@@ -19,7 +21,7 @@ public class OutputCsvParser implements LogQueryParser {
 
 	@Override
 	public void addSyntax(Syntax syntax) {
-		syntax.add("outputcsv", this, k("outputcsv "), new StringPlaceholder(), repeat(new StringPlaceholder(new char[] { ' ',
+		syntax.add("outputcsv", this, k("outputcsv "), ref("option"), new StringPlaceholder(), repeat(new StringPlaceholder(new char[] { ' ',
 				',' })));
 		syntax.addRoot("outputcsv");
 	}
@@ -27,9 +29,11 @@ public class OutputCsvParser implements LogQueryParser {
 	@Override
 	public Object parse(Binding b) {
 		List<String> fields = new ArrayList<String>();
-		String csvPath = (String) b.getChildren()[1].getValue();
+		@SuppressWarnings("unchecked")
+		Map<String, String> options = (Map<String, String>) b.getChildren()[1].getValue();
+		String csvPath = (String) b.getChildren()[2].getValue();
 
-		Binding c = b.getChildren()[2];
+		Binding c = b.getChildren()[3];
 
 		if (c.getValue() != null) {
 			fields.add((String) c.getValue());
@@ -54,7 +58,8 @@ public class OutputCsvParser implements LogQueryParser {
 		try {
 			csvFile.getParentFile().mkdirs();
 			FileOutputStream os = new FileOutputStream(csvFile);
-			return new OutputCsv(os, fields);
+			boolean compress = "gzip".equals(options.get("compress")) || csvPath.endsWith(".gz");
+			return new OutputCsv(os, fields, compress);
 		} catch (FileNotFoundException e) {
 			throw new IllegalStateException(e);
 		}
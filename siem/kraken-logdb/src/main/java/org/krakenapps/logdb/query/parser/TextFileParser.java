@@ -4,13 +4,15 @@ import static org.krakenapps.bnf.Syntax.k;
 import static org.krakenapps.bnf.Syntax.ref;
 
 import java.io.File;
-import java.io.FileInputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.regex.Pattern;
 
 import org.krakenapps.bnf.Binding;
 import org.krakenapps.bnf.Syntax;
-import org.krakenapps.log.api.LogParser;
 import org.krakenapps.log.api.LogParserFactory;
 import org.krakenapps.log.api.LogParserFactoryRegistry;
 import org.krakenapps.logdb.LogQueryParser;
@@ -40,23 +42,78 @@ public class TextFileParser implements LogQueryParser {
 			if (options.containsKey("limit"))
 				limit = Integer.valueOf(options.get("limit"));
 
-			FileInputStream is = new FileInputStream(new File(filePath));
+			List<File> files = getFiles(filePath);
+			if (files.isEmpty())
+				throw new IllegalStateException("file not found: " + filePath);
+
 			String parserName = options.get("parser");
-			LogParser parser = null;
+			LogParserFactory factory = null;
 			if (parserName != null) {
-				LogParserFactory factory = parserFactoryRegistry.get(parserName);
+				factory = parserFactoryRegistry.get(parserName);
 				if (factory == null)
 					throw new IllegalStateException("log parser not found: " + parserName);
-
-				parser = factory.createParser(convert(options));
 			}
 
-			return new TextFile(is, parser, offset, limit);
+			TextFile textFile = new TextFile(files, factory, convert(options), offset, limit);
+			if (options.containsKey("threads"))
+				textFile.setThreads(Integer.valueOf(options.get("threads")));
+			if (options.containsKey("ordered"))
+				textFile.setOrdered(Boolean.parseBoolean(options.get("ordered")));
+
+			return textFile;
 		} catch (Throwable t) {
 			throw new RuntimeException("cannot create textfile source", t);
 		}
 	}
 
+	/**
+	 * Resolves file path to sorted file list. Path can be a file, a directory
+	 * or a file name pattern with * and ? wildcards.
+	 */
+	private List<File> getFiles(String path) {
+		List<File> files = new ArrayList<File>();
+		File f = new File(path);
+		if (f.isFile()) {
+			files.add(f);
+			return files;
+		}
+
+		File dir = f;
+		Pattern p = null;
+		if (!f.isDirectory()) {
+			if (f.getName().indexOf('*') < 0 && f.getName().indexOf('?') < 0)
+				return files;
+
+			dir = f.getAbsoluteFile().getParentFile();
+			p = Pattern.compile(toRegex(f.getName()));
+		}
+
+		File[] children = dir.listFiles();
+		if (children == null)
+			return files;
+
+		for (File c : children)
+			if (c.isFile() && (p == null || p.matcher(c.getName()).matches()))
+				files.add(c);
+
+		Collections.sort(files);
+		return files;
+	}
+
+	private String toRegex(String glob) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < glob.length(); i++) {
+			char c = glob.charAt(i);
+			if (c == '*')
+				sb.append(".*");
+			else if (c == '?')
+				sb.append('.');
+			else
+				sb.append(Pattern.quote(String.valueOf(c)));
+		}
+		return sb.toString();
+	}
+
 	private Properties convert(Map<String, String> options) {
 		Properties p = new Properties();
 		for (String key : options.keySet()) {
@@ -0,0 +1,107 @@
+package org.krakenapps.logdb.query;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+import org.krakenapps.logdb.LogQueryCommand.LogMap;
+import org.krakenapps.logdb.query.command.OutputCsv;
+
+public class OutputCsvTest {
+	@Test
+	public void testCancelDuringPush() throws Exception {
+		final SlowOutputStream os = new SlowOutputStream();
+		final OutputCsv csv = new OutputCsv(os, Arrays.asList("line"));
+		final AtomicBoolean stop = new AtomicBoolean();
+
+		char[] c = new char[1000];
+		Arrays.fill(c, 'x');
+		Map<String, Object> m = new HashMap<String, Object>();
+		m.put("line", new String(c));
+		final LogMap row = new LogMap(m);
+
+		// query thread keeps pushing, and blocks when writer queue is full
+		Thread pusher = new Thread() {
+			@Override
+			public void run() {
+				while (!stop.get())
+					csv.push(row);
+			}
+		};
+		pusher.setDaemon(true);
+		pusher.start();
+		os.blocked.await();
+
+		// cancel from other thread
+		Thread canceller = new Thread() {
+			@Override
+			public void run() {
+				csv.eof();
+			}
+		};
+		canceller.setDaemon(true);
+		canceller.start();
+		Thread.sleep(200);
+
+		os.release.countDown();
+		canceller.join(10000);
+		assertFalse(canceller.isAlive());
+
+		// pushes after eof are dropped and never block
+		Thread.sleep(200);
+		assertTrue(pusher.isAlive());
+		stop.set(true);
+		pusher.join(10000);
+		assertFalse(pusher.isAlive());
+
+		byte[] b = os.toByteArray();
+		assertTrue(os.closed);
+		assertEquals('\n', b[b.length - 1]);
+		assertEquals(0, (b.length - "line\n".length()) % (c.length + 1));
+	}
+
+	@Test
+	public void testPushAfterEof() throws Exception {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		OutputCsv csv = new OutputCsv(os, Arrays.asList("a", "b"));
+		Map<String, Object> m = new HashMap<String, Object>();
+		m.put("a", 1);
+		m.put("b", "x");
+		csv.push(new LogMap(m));
+		csv.eof();
+		csv.push(new LogMap(m));
+		csv.eof();
+
+		assertEquals("a,b\n1,x\n", new String(os.toByteArray(), "utf-8"));
+	}
+
+	private static class SlowOutputStream extends ByteArrayOutputStream {
+		private CountDownLatch blocked = new CountDownLatch(1);
+		private CountDownLatch release = new CountDownLatch(1);
+		private volatile boolean closed;
+
+		@Override
+		public synchronized void write(byte[] b, int off, int len) {
+			blocked.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+			}
+			super.write(b, off, len);
+		}
+
+		@Override
+		public void close() throws IOException {
+			closed = true;
+		}
+	}
+}
@@ -0,0 +1,189 @@
+package org.krakenapps.logdb.query;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.krakenapps.bnf.Syntax;
+import org.krakenapps.logdb.LogQueryCommand;
+import org.krakenapps.logdb.query.command.OutputCsv;
+import org.krakenapps.logdb.query.command.TextFile;
+import org.krakenapps.logdb.query.parser.OptionParser;
+import org.krakenapps.logdb.query.parser.OutputCsvParser;
+import org.krakenapps.logdb.query.parser.TextFileParser;
+
+public class TextFileTest {
+	private File dir;
+	private Syntax syntax;
+
+	@Before
+	public void setup() throws IOException {
+		dir = new File(System.getProperty("java.io.tmpdir"), "kraken-logdb-textfile-" + System.nanoTime());
+		dir.mkdirs();
+
+		// 3 files with 2500 lines, last one is gzipped
+		for (int f = 0; f < 3; f++) {
+			String name = "access.log." + f + (f == 2 ? ".gz" : "");
+			OutputStream os = new FileOutputStream(new File(dir, name));
+			if (f == 2)
+				os = new GZIPOutputStream(os);
+
+			StringBuilder sb = new StringBuilder();
+			for (int i = 0; i < 2500; i++)
+				sb.append(f * 2500 + i).append('\n');
+			os.write(sb.toString().getBytes("utf-8"));
+			os.close();
+		}
+		new File(dir, "other.txt").createNewFile();
+
+		syntax = new Syntax();
+		new OptionParser().addSyntax(syntax);
+		new TextFileParser(null).addSyntax(syntax);
+		new OutputCsvParser().addSyntax(syntax);
+	}
+
+	@After
+	public void teardown() {
+		File[] files = dir.listFiles();
+		if (files != null)
+			for (File f : files)
+				f.delete();
+		dir.delete();
+	}
+
+	@Test
+	public void testOrderedGlob() throws Exception {
+		TextFile textFile = (TextFile) syntax.eval("textfile threads=3 " + dir.getAbsolutePath() + "/access.log.*");
+		assertEquals(3, textFile.getFiles().size());
+
+		List<String> lines = run(textFile);
+		assertEquals(7500, lines.size());
+		for (int i = 0; i < lines.size(); i++)
+			assertEquals(Integer.toString(i), lines.get(i));
+	}
+
+	@Test
+	public void testUnorderedOffsetLimit() throws Exception {
+		TextFile textFile = (TextFile) syntax.eval("textfile ordered=false offset=100 limit=5000 "
+				+ dir.getAbsolutePath() + "/access.log.*");
+		List<String> lines = run(textFile);
+		assertEquals(5000, lines.size());
+		assertEquals(5000, textFile.getPushCount());
+
+		List<Integer> numbers = new ArrayList<Integer>();
+		for (String line : lines)
+			numbers.add(Integer.valueOf(line));
+		Collections.sort(numbers);
+		for (int i = 1; i < numbers.size(); i++)
+			assertTrue(numbers.get(i - 1) < numbers.get(i));
+	}
+
+	@Test
+	public void testDirectory() throws Exception {
+		TextFile textFile = (TextFile) syntax.eval("textfile " + dir.getAbsolutePath());
+		assertEquals(4, textFile.getFiles().size());
+		assertEquals(7500, run(textFile).size());
+	}
+
+	@Test
+	public void testOutputCsv() throws Exception {
+		File csv = new File(dir, "out.csv.gz");
+		OutputCsv output = (OutputCsv) syntax.eval("outputcsv " + csv.getAbsolutePath() + " line,missing");
+		TextFile textFile = (TextFile) syntax.eval("textfile " + dir.getAbsolutePath() + "/access.log.*");
+		textFile.setNextCommand(output);
+		textFile.start();
+
+		BufferedReader br = new BufferedReader(new InputStreamReader(new GZIPInputStream(new FileInputStream(csv)),
+				"utf-8"));
+		try {
+			assertEquals("line,missing", br.readLine());
+			for (int i = 0; i < 7500; i++)
+				assertEquals(i + ",", br.readLine());
+			assertEquals(null, br.readLine());
+		} finally {
+			br.close();
+		}
+	}
+
+	@Test
+	public void testThroughput() throws Exception {
+		// 10 files of 200k lines each
+		File big = new File(dir, "big");
+		big.mkdirs();
+		try {
+			for (int f = 0; f < 10; f++) {
+				OutputStream os = new GZIPOutputStream(new FileOutputStream(new File(big, "big.log." + f + ".gz")));
+				StringBuilder sb = new StringBuilder();
+				for (int i = 0; i < 200000; i++)
+					sb.append("2012-01-01 00:00:00 10.0.0.1 GET /index.php?id=").append(i).append(" 200\n");
+				os.write(sb.toString().getBytes("utf-8"));
+				os.close();
+			}
+
+			for (int threads : Arrays.asList(1, 4)) {
+				TextFile textFile = (TextFile) syntax.eval("textfile threads=" + threads + " "
+						+ big.getAbsolutePath());
+				textFile.setNextCommand(new Discard());
+
+				long begin = System.currentTimeMillis();
+				textFile.start();
+				long elapsed = Math.max(1, System.currentTimeMillis() - begin);
+				assertEquals(2000000, textFile.getPushCount());
+				System.out.println(String.format("textfile: %d threads, %d lines/s", threads, 2000000L * 1000
+						/ elapsed));
+			}
+		} finally {
+			for (File f : big.listFiles())
+				f.delete();
+			big.delete();
+		}
+	}
+
+	private List<String> run(TextFile textFile) {
+		Collector c = new Collector();
+		textFile.setNextCommand(c);
+		textFile.start();
+		return c.lines;
+	}
+
+	private static class Collector extends LogQueryCommand {
+		private List<String> lines = new ArrayList<String>();
+
+		@Override
+		public void push(LogMap m) {
+			lines.add((String) m.get("line"));
+		}
+
+		@Override
+		public boolean isReducer() {
+			return false;
+		}
+	}
+
+	private static class Discard extends LogQueryCommand {
+		@Override
+		public void push(LogMap m) {
+		}
+
+		@Override
+		public boolean isReducer() {
+			return false;
+		}
+	}
+}
@@ -16,6 +16,7 @@
 package org.krakenapps.siem;
 
 import java.util.Collection;
+import java.util.List;
 import org.krakenapps.logstorage.Log;
 import org.krakenapps.siem.model.ManagedLogger;
 
@@ -34,4 +35,6 @@ public interface LogServer {
 
 	void removeNormalizedLogListener(String category, NormalizedLogListener callback);
 
+	List<PipelineStageStats> getPipelineStats();
+
 }
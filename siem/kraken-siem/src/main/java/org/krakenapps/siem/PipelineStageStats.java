@@ -0,0 +1,90 @@
+/*
+ * Copyright 2011 NCHOVY
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.krakenapps.siem;
+
+/**
+ * Snapshot of log server pipeline stage counters.
+ */
+public class PipelineStageStats {
+	private String name;
+	private int workers;
+	private int queueDepth;
+	private int queueCapacity;
+	private long processed;
+	private long dropped;
+	private long batches;
+	private long failures;
+	private double throughput;
+
+	public PipelineStageStats(String name, int workers, int queueDepth, int queueCapacity, long processed,
+			long dropped, long batches, long failures, double throughput) {
+		this.name = name;
+		this.workers = workers;
+		this.queueDepth = queueDepth;
+		this.queueCapacity = queueCapacity;
+		this.processed = processed;
+		this.dropped = dropped;
+		this.batches = batches;
+		this.failures = failures;
+		this.throughput = throughput;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public int getWorkers() {
+		return workers;
+	}
+
+	public int getQueueDepth() {
+		return queueDepth;
+	}
+
+	public int getQueueCapacity() {
+		return queueCapacity;
+	}
+
+	public long getProcessed() {
+		return processed;
+	}
+
+	public long getDropped() {
+		return dropped;
+	}
+
+	public long getBatches() {
+		return batches;
+	}
+
+	public long getFailures() {
+		return failures;
+	}
+
+	/**
+	 * @return processed items per second since last stats query
+	 */
+	public double getThroughput() {
+		return throughput;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s: workers=%d, queue=%d/%d, processed=%d, dropped=%d, batches=%d, failures=%d, "
+				+ "throughput=%.1f/s", name, workers, queueDepth, queueCapacity, processed, dropped, batches, failures,
+				throughput);
+	}
+}
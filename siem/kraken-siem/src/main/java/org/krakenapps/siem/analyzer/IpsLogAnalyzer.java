@@ -2,8 +2,6 @@ package org.krakenapps.siem.analyzer;
 
 import java.net.InetAddress;
 import java.net.UnknownHostException;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
 
 import org.apache.felix.ipojo.annotations.Component;
 import org.apache.felix.ipojo.annotations.Invalidate;
@@ -28,11 +26,18 @@ public class IpsLogAnalyzer implements NormalizedLogListener {
 	@Requires
 	private EventDispatcher eventDispatcher;
 
-	private ConcurrentMap<AttackKey, AttackEvent> attacks;
+	/**
+	 * attack counters. first event of the key is attached to keep event key
+	 * and resolved addresses until the key is idle for an hour.
+	 */
+	private WindowAggregator<AttackKey> attacks;
 
 	@Validate
 	public void start() {
-		attacks = new ConcurrentHashMap<AttackKey, AttackEvent>();
+		attacks = new WindowAggregator<AttackKey>(WindowType.Sliding, 60000);
+		attacks.setSuppressInterval(10000);
+		attacks.setIdleTimeout(3600000);
+		attacks.setMaxKeys(100000);
 		logServer.addNormalizedLogListener("ips", this);
 	}
 
@@ -48,29 +53,39 @@ public class IpsLogAnalyzer implements NormalizedLogListener {
 
 		try {
 			AttackKey key = new AttackKey(log.getString("src"), log.getString("dst"), log.getString("rule"));
+			Integer count = log.getInteger("count");
+			WindowState state = attacks.add(key, System.currentTimeMillis(), count != null ? count : 1);
+
+			// dispatch cumulative count at most once per suppress interval
+			if (!state.isTriggered())
+				return;
+
+			Event first = (Event) state.getAttachment();
 
 			Event event = new Event();
 			event.setOrgDomain(log.getOrgDomain());
 			event.setCategory("attack");
-			event.setFirstSeen(log.getDate("date"));
+			event.setFirstSeen(first != null ? first.getFirstSeen() : log.getDate("date"));
 			event.setLastSeen(log.getDate("date"));
-			event.setSourceIp(InetAddress.getByName(log.getString("src_ip")));
+			if (first != null) {
+				event.setKey(first.getKey());
+				event.setSourceIp(first.getSourceIp());
+				event.setDestinationIp(first.getDestinationIp());
+			} else {
+				event.setSourceIp(InetAddress.getByName(log.getString("src_ip")));
+				event.setDestinationIp(InetAddress.getByName(log.getString("dst_ip")));
+			}
 			event.setSourcePort(log.getInteger("src_port"));
-			event.setDestinationIp(InetAddress.getByName(log.getString("dst_ip")));
 			event.setDestinationPort(log.getInteger("dst_port"));
 			event.setSeverity(EventSeverity.values()[log.getInteger("severity")]);
 			event.setRule(log.getString("rule"));
 			event.setDetail(log.getString("detail"));
-			event.setCount(log.getInteger("count"));
-
-			// save until ack
-			AttackEvent old = attacks.putIfAbsent(key, new AttackEvent(event));
-			if (old != null) {
-				event.setKey(old.getEvent().getKey());
-				event.setCount(old.getCount().addAndGet(event.getCount()));
-			}
+			event.setCount((int) state.getTotal());
 
 			eventDispatcher.dispatch(event);
+
+			if (first == null)
+				state.setAttachment(event);
 		} catch (UnknownHostException e) {
 		}
 	}
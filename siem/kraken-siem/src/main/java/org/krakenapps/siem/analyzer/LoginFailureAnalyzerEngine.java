@@ -21,8 +21,6 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.felix.ipojo.annotations.Component;
 import org.apache.felix.ipojo.annotations.Invalidate;
@@ -50,12 +48,11 @@ public class LoginFailureAnalyzerEngine implements NormalizedLogListener, LoginF
 
 	private Set<LoginFailureEventListener> callbacks;
 
-	private static ConcurrentMap<InetAddress, FailureStat> m = new ConcurrentHashMap<InetAddress, FailureStat>();
+	private WindowAggregator<InetAddress> failures;
 	private WallClock clock;
 
 	// milliseconds
 	private long idleTime;
-	private long ignoreTime;
 	private long eventPeriod;
 	private int limitCount;
 
@@ -70,10 +67,16 @@ public class LoginFailureAnalyzerEngine implements NormalizedLogListener, LoginF
 	public LoginFailureAnalyzerEngine() {
 		this.limitCount = 3;
 		this.idleTime = 10000;
-		this.ignoreTime = 5000;
 		this.eventPeriod = 3600000;
 		this.clock = new SystemWallClock();
 
+		// limit count failures in idle time, and dispatch once per event period
+		failures = new WindowAggregator<InetAddress>(WindowType.Sliding, idleTime);
+		failures.setThreshold(limitCount);
+		failures.setSuppressInterval(eventPeriod);
+		failures.setIdleTimeout(eventPeriod);
+		failures.setMaxKeys(100000);
+
 		callbacks = Collections.newSetFromMap(new ConcurrentHashMap<LoginFailureEventListener, Boolean>());
 	}
 
@@ -99,46 +102,26 @@ public class LoginFailureAnalyzerEngine implements NormalizedLogListener, LoginF
 		if (logger.isDebugEnabled())
 			logger.debug("kraken siem: received login log, ip [{}], access [{}]", ip, date);
 
-		FailureStat fs = new FailureStat(ip, new AtomicInteger(1), date);
-		FailureStat old = m.putIfAbsent(ip, fs);
-		if (old != null)
-			fs = old;
-
-		long interval = getIntervalTime(date, fs.lastSeen);
-		if (interval >= idleTime) {
-			logger.debug("kraken siem: login failure interval {} reset {}", interval, ip);
-
-			fs.firstSeen = date;
-			fs.lastSeen = date;
-			fs.count.set(0);
-			fs.alerted = false;
-		} else if (fs.count.get() >= limitCount) {
-			fs.lastSeen = date;
-
-			if (!fs.alerted || !isIgnored(fs.firstSeen)) {
-				fs.alerted = true;
-
-				if (logger.isTraceEnabled())
-					traceAlert(ip, fs);
-
-				if (fs.lastDispatch == null || clock.now().getTime() - fs.lastDispatch.getTime() >= eventPeriod) {
-					generateEvent(fs.firstSeen, fs.lastSeen, fs.ip, fs.count.get());
-					invokeCallbacks(ip, fs);
-					fs.lastDispatch = clock.now();
-				}
-			}
-		}
+		WindowState state = failures.add(ip, clock.now().getTime(), 1);
+		if (state.getAttachment() == null)
+			state.setAttachment(date);
 
-		fs.count.getAndIncrement();
-		m.put(ip, fs);
+		if (!state.isTriggered())
+			return;
+
+		Date firstSeen = (Date) state.getAttachment();
+		if (logger.isTraceEnabled())
+			traceAlert(ip, state.getCount(), firstSeen, date);
+
+		generateEvent(firstSeen, date, ip, state.getCount());
+		invokeCallbacks(ip, state.getCount());
 	}
 
-	private void traceAlert(InetAddress ip, FailureStat fs) {
+	private void traceAlert(InetAddress ip, int count, Date firstSeen, Date lastSeen) {
 		SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
 		logger.trace(
 				"kraken siem: [{}] tries login bruteforce attack [{}] times, first seen [{}], last seen [{}]",
-				new Object[] { ip.getHostAddress(), fs.count.get(), dateFormat.format(fs.firstSeen),
-						dateFormat.format(fs.lastSeen) });
+				new Object[] { ip.getHostAddress(), count, dateFormat.format(firstSeen), dateFormat.format(lastSeen) });
 	}
 
 	private void generateEvent(Date firstSeen, Date lastSeen, InetAddress source, int count) {
@@ -155,10 +138,10 @@ public class LoginFailureAnalyzerEngine implements NormalizedLogListener, LoginF
 		eventDispatcher.dispatch(event);
 	}
 
-	private void invokeCallbacks(InetAddress ip, FailureStat fs) {
+	private void invokeCallbacks(InetAddress ip, int count) {
 		for (LoginFailureEventListener callback : callbacks) {
 			try {
-				callback.onBruteforceAttack(ip, fs.count.get());
+				callback.onBruteforceAttack(ip, count);
 			} catch (Exception e) {
 				logger.warn("kraken siem: login failure analyzer listener should not throw any exception", e);
 			}
@@ -169,23 +152,6 @@ public class LoginFailureAnalyzerEngine implements NormalizedLogListener, LoginF
 		this.clock = clock;
 	}
 
-	static class FailureStat {
-		InetAddress ip;
-		AtomicInteger count;
-		Date firstSeen;
-		Date lastSeen;
-		Date lastDispatch;
-		boolean alerted;
-
-		public FailureStat(InetAddress ip, AtomicInteger count, Date firstSeen) {
-			this.ip = ip;
-			this.count = count;
-			this.firstSeen = firstSeen;
-			this.lastSeen = firstSeen;
-			this.lastDispatch = null;
-		}
-	}
-
 	public void register(LoginFailureEventListener event) {
 		callbacks.add(event);
 	}
@@ -194,15 +160,6 @@ public class LoginFailureAnalyzerEngine implements NormalizedLogListener, LoginF
 		callbacks.remove(event);
 	}
 
-	private boolean isIgnored(Date firstSeen) {
-		Date now = clock.now();
-		return now.getTime() - firstSeen.getTime() < ignoreTime;
-	}
-
-	private long getIntervalTime(Date recent, Date lastAccess) {
-		return recent.getTime() - lastAccess.getTime();
-	}
-
 	private static class SystemWallClock implements WallClock {
 		@Override
 		public Date now() {
@@ -0,0 +1,304 @@
+/*
+ * Copyright 2011 NCHOVY
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.krakenapps.siem.analyzer;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Counts events per key in tumbling or sliding windows, and triggers when
+ * window count reaches threshold. Idle keys are expired by hashed timer
+ * wheel, and least recently used keys are shed when key count exceeds the
+ * limit, so memory is bounded even under scan storm.
+ * 
+ * Time is supplied by caller and should be monotonic, e.g. wall clock.
+ */
+public class WindowAggregator<K> {
+	private static final int WHEEL_SIZE = 1024;
+	private static final int SLIDING_BUCKETS = 10;
+
+	private final WindowType type;
+	private final long windowSize;
+	private int threshold = 1;
+	private long suppressInterval;
+	private long idleTimeout;
+	private int maxKeys = Integer.MAX_VALUE;
+
+	private LinkedHashMap<K, WindowState> states = new LinkedHashMap<K, WindowState>(1024, 0.75f, true);
+
+	// slot heads of doubly linked states, so shed state is unlinked at once
+	private WindowState[] wheel;
+	private int scheduledCount;
+	private long tickDuration;
+	private long currentTick = -1;
+
+	private long expiredCount;
+	private long shedCount;
+	private long triggerCount;
+
+	public WindowAggregator(WindowType type, long windowSize) {
+		if (windowSize <= 0)
+			throw new IllegalArgumentException("window size should be positive");
+
+		this.type = type;
+		this.windowSize = windowSize;
+		this.suppressInterval = windowSize;
+		this.idleTimeout = windowSize;
+	}
+
+	public int getThreshold() {
+		return threshold;
+	}
+
+	public void setThreshold(int threshold) {
+		this.threshold = threshold;
+	}
+
+	/**
+	 * @return minimum milliseconds between triggers of same key
+	 */
+	public long getSuppressInterval() {
+		return suppressInterval;
+	}
+
+	public void setSuppressInterval(long suppressInterval) {
+		this.suppressInterval = suppressInterval;
+	}
+
+	public long getIdleTimeout() {
+		return idleTimeout;
+	}
+
+	/**
+	 * Sets the milliseconds to keep key after last event. It should be
+	 * greater than suppress interval to suppress triggers of idle keys.
+	 */
+	public synchronized void setIdleTimeout(long idleTimeout) {
+		if (wheel != null)
+			throw new IllegalStateException("idle timeout cannot be changed after first add");
+		this.idleTimeout = Math.max(idleTimeout, windowSize);
+	}
+
+	public int getMaxKeys() {
+		return maxKeys;
+	}
+
+	public void setMaxKeys(int maxKeys) {
+		this.maxKeys = maxKeys;
+	}
+
+	public synchronized int size() {
+		return states.size();
+	}
+
+	/**
+	 * @return the number of states linked in timer wheel
+	 */
+	synchronized int getScheduledCount() {
+		return scheduledCount;
+	}
+
+	public synchronized long getExpiredCount() {
+		return expiredCount;
+	}
+
+	public synchronized long getShedCount() {
+		return shedCount;
+	}
+
+	public synchronized long getTriggerCount() {
+		return triggerCount;
+	}
+
+	public synchronized WindowState get(K key) {
+		return states.get(key);
+	}
+
+	/**
+	 * Adds delta to the window counter of the key. Check
+	 * {@link WindowState#isTriggered()} of returned state for threshold event.
+	 */
+	public synchronized WindowState add(K key, long time, int delta) {
+		expire(time);
+
+		WindowState s = states.get(key);
+		if (s == null) {
+			s = new WindowState(key, time, type == WindowType.Sliding ? SLIDING_BUCKETS : 1);
+			states.put(key, s);
+			shed();
+		}
+
+		s.total += delta;
+		s.lastSeen = Math.max(s.lastSeen, time);
+
+		if (type == WindowType.Tumbling)
+			addTumbling(s, time, delta);
+		else
+			addSliding(s, time, delta);
+
+		s.deadline = s.lastSeen + idleTimeout;
+		if (!s.scheduled)
+			schedule(s);
+
+		s.triggered = false;
+		if (s.getCount() >= threshold && canTrigger(s, time)) {
+			s.triggered = true;
+			s.lastTriggered = time;
+			triggerCount++;
+		}
+
+		return s;
+	}
+
+	private void addTumbling(WindowState s, long time, int delta) {
+		if (time >= s.windowStart + windowSize) {
+			s.windowStart += (time - s.windowStart) / windowSize * windowSize;
+			s.count = 0;
+		}
+		s.count += delta;
+	}
+
+	private void addSliding(WindowState s, long time, int delta) {
+		long bucketSize = Math.max(1, windowSize / s.buckets.length);
+		long bucket = time / bucketSize;
+
+		if (bucket > s.headBucket) {
+			// clear buckets passed out of window
+			long passed = Math.min(bucket - s.headBucket, s.buckets.length);
+			for (long i = 1; i <= passed; i++)
+				s.buckets[(int) ((s.headBucket + i) % s.buckets.length)] = 0;
+			s.headBucket = bucket;
+		} else if (bucket <= s.headBucket - s.buckets.length) {
+			// too old for current window
+			return;
+		}
+
+		s.buckets[(int) (bucket % s.buckets.length)] += delta;
+	}
+
+	private boolean canTrigger(WindowState s, long time) {
+		if (s.lastTriggered < 0)
+			return true;
+
+		// trigger once per tumbling window
+		if (type == WindowType.Tumbling && s.lastTriggered >= s.windowStart)
+			return false;
+
+		return time - s.lastTriggered >= suppressInterval;
+	}
+
+	private void shed() {
+		if (states.size() <= maxKeys)
+			return;
+
+		Iterator<WindowState> it = states.values().iterator();
+		WindowState eldest = it.next();
+		it.remove();
+		eldest.removed = true;
+		if (eldest.scheduled)
+			unlink(eldest);
+		shedCount++;
+	}
+
+	private void schedule(WindowState s) {
+		if (wheel == null) {
+			wheel = new WindowState[WHEEL_SIZE];
+			tickDuration = Math.max(1, idleTimeout / WHEEL_SIZE);
+		}
+
+		long tick = Math.max(s.deadline / tickDuration, currentTick + 1);
+		int slot = (int) (tick % WHEEL_SIZE);
+		s.slot = slot;
+		s.prev = null;
+		s.next = wheel[slot];
+		if (s.next != null)
+			s.next.prev = s;
+		wheel[slot] = s;
+		s.scheduled = true;
+		scheduledCount++;
+	}
+
+	private void unlink(WindowState s) {
+		if (s.prev != null)
+			s.prev.next = s.next;
+		else
+			wheel[s.slot] = s.next;
+
+		if (s.next != null)
+			s.next.prev = s.prev;
+
+		s.prev = null;
+		s.next = null;
+		s.scheduled = false;
+		scheduledCount--;
+	}
+
+	/**
+	 * Removes keys which are idle for idle timeout. Keys are also expired by
+	 * add, so periodic call is required only if adds can be stopped.
+	 */
+	public synchronized void expire(long now) {
+		if (wheel == null)
+			return;
+
+		long target = now / tickDuration;
+		if (currentTick < 0 || target <= currentTick) {
+			currentTick = Math.max(currentTick, target);
+			return;
+		}
+
+		// visit each bucket at most once
+		long from = Math.max(currentTick + 1, target - WHEEL_SIZE + 1);
+		for (long tick = from; tick <= target; tick++) {
+			currentTick = tick;
+
+			int index = (int) (tick % WHEEL_SIZE);
+			WindowState s = wheel[index];
+			wheel[index] = null;
+			while (s != null) {
+				WindowState next = s.next;
+				s.prev = null;
+				s.next = null;
+				s.scheduled = false;
+				scheduledCount--;
+
+				if (s.deadline <= now) {
+					states.remove(s.key);
+					s.removed = true;
+					expiredCount++;
+				} else {
+					// touched after scheduled, or deadline is in later round
+					schedule(s);
+				}
+
+				s = next;
+			}
+		}
+	}
+
+	public synchronized void clear() {
+		states.clear();
+		wheel = null;
+		scheduledCount = 0;
+		currentTick = -1;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "type=" + type + ", window=" + windowSize + "ms, threshold=" + threshold + ", keys=" + states.size()
+				+ ", triggered=" + triggerCount + ", expired=" + expiredCount + ", shed=" + shedCount;
+	}
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2011 NCHOVY
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.krakenapps.siem.analyzer;
+
+/**
+ * Per-key counters of window aggregator. State is updated by later adds of
+ * same key, and discarded when key is expired or shed.
+ */
+public class WindowState {
+	Object key;
+	long firstSeen;
+	long lastSeen;
+	long total;
+
+	// tumbling window
+	long windowStart;
+	int count;
+
+	// sliding window sub-buckets, indexed by (time / bucket size) % length
+	int[] buckets;
+	long headBucket;
+
+	long lastTriggered = -1;
+	boolean triggered;
+
+	// expiry, linked in timer wheel slot while scheduled
+	long deadline;
+	boolean scheduled;
+	boolean removed;
+	int slot;
+	WindowState prev;
+	WindowState next;
+
+	private Object attachment;
+
+	WindowState(Object key, long time, int bucketCount) {
+		this.key = key;
+		this.firstSeen = time;
+		this.lastSeen = time;
+		this.windowStart = time;
+		if (bucketCount > 1)
+			this.buckets = new int[bucketCount];
+	}
+
+	public long getFirstSeen() {
+		return firstSeen;
+	}
+
+	public long getLastSeen() {
+		return lastSeen;
+	}
+
+	/**
+	 * @return the count in current window
+	 */
+	public int getCount() {
+		if (buckets == null)
+			return count;
+
+		int sum = 0;
+		for (int c : buckets)
+			sum += c;
+		return sum;
+	}
+
+	/**
+	 * @return the count since key is created
+	 */
+	public long getTotal() {
+		return total;
+	}
+
+	/**
+	 * @return true if last add crossed threshold
+	 */
+	public boolean isTriggered() {
+		return triggered;
+	}
+
+	/**
+	 * @return the analyzer specific data, e.g. event of first trigger
+	 */
+	public Object getAttachment() {
+		return attachment;
+	}
+
+	public void setAttachment(Object attachment) {
+		this.attachment = attachment;
+	}
+}
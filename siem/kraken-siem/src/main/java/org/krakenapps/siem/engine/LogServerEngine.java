@@ -16,6 +16,7 @@
 package org.krakenapps.siem.engine;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
@@ -53,6 +54,7 @@ import org.krakenapps.siem.ConfigManager;
 import org.krakenapps.siem.LogServer;
 import org.krakenapps.siem.NormalizedLog;
 import org.krakenapps.siem.NormalizedLogListener;
+import org.krakenapps.siem.PipelineStageStats;
 import org.krakenapps.siem.model.ManagedLogger;
 
 @Component(name = "siem-log-server")
@@ -96,8 +98,48 @@ public class LogServerEngine implements LogServer, LogPipe, LoggerRegistryEventL
 	 */
 	private ConcurrentMap<String, LogNormalizer> normalizers;
 
+	/**
+	 * log storage, parse/normalize, and analysis stages. storage stage blocks
+	 * loggers when full, and later stages drop logs since raw logs are already
+	 * stored.
+	 */
+	private PipelineStage<PipelineLog> storageStage;
+	private PipelineStage<PipelineLog> normalizeStage;
+	private PipelineStage<PipelineLog> analysisStage;
+
 	@Validate
 	public void start() {
+		int batchSize = Integer.getInteger("kraken.siem.pipeline_batch_size", 500);
+		int queueSize = Integer.getInteger("kraken.siem.pipeline_queue_size", 100000);
+
+		storageStage = new PipelineStage<PipelineLog>("Log Storage",
+				Integer.getInteger("kraken.siem.storage_workers", 1), queueSize, batchSize, true) {
+			@Override
+			protected void process(PipelineLog l) {
+				store(l);
+			}
+		};
+
+		normalizeStage = new PipelineStage<PipelineLog>("Log Normalizer", Integer.getInteger(
+				"kraken.siem.normalize_workers", 2), queueSize, batchSize, false) {
+			@Override
+			protected void process(PipelineLog l) {
+				normalize(l);
+			}
+		};
+
+		analysisStage = new PipelineStage<PipelineLog>("Log Analysis", Integer.getInteger(
+				"kraken.siem.analysis_workers", 2), queueSize, batchSize, false) {
+			@Override
+			protected void process(PipelineLog l) {
+				analyze(l);
+			}
+		};
+
+		analysisStage.start();
+		normalizeStage.start();
+		storageStage.start();
+
 		normalizedLogCallbacks = new ConcurrentHashMap<String, CopyOnWriteArrayList<NormalizedLogListener>>();
 
 		managedLoggers = new ConcurrentHashMap<String, ManagedLogger>();
@@ -127,6 +169,16 @@ public class LogServerEngine implements LogServer, LogPipe, LoggerRegistryEventL
 			disconnectManagedLogger(logger);
 
 		loggerRegistry.removeListener(this);
+
+		// stop in pipeline order to flush queued logs to next stage
+		storageStage.stop();
+		normalizeStage.stop();
+		analysisStage.stop();
+	}
+
+	@Override
+	public List<PipelineStageStats> getPipelineStats() {
+		return Arrays.asList(storageStage.getStats(), normalizeStage.getStats(), analysisStage.getStats());
 	}
 
 	@Override
@@ -225,39 +277,60 @@ public class LogServerEngine implements LogServer, LogPipe, LoggerRegistryEventL
 	@Override
 	public void onLog(Logger logger, Log log) {
 		String fullName = logger.getFullName();
-		logStorage.write(convert(fullName, log));
+		storageStage.offer(fullName, new PipelineLog(fullName, log));
+	}
+
+	private void store(PipelineLog l) {
+		logStorage.write(convert(l.fullName, l.log));
+		normalizeStage.offer(l.fullName, l);
+	}
+
+	private void normalize(PipelineLog l) {
+		NormalizedLog normalizedLog = normalize(l.fullName, l.log);
+		if (normalizedLog == null)
+			return;
+
+		l.normalized = normalizedLog;
+		l.log = null;
+		analysisStage.offer(l.fullName, l);
+	}
 
+	private NormalizedLog normalize(String fullName, Log log) {
 		ManagedLogger ml = managedLoggers.get(fullName);
 		if (ml == null) {
 			slog.trace("kraken siem: managed logger not found, {}", fullName);
-			return;
+			return null;
 		}
 
 		LogParser parser = parsers.get(fullName);
 		if (parser == null) {
 			slog.trace("kraken siem: parser not found for logger [{}]", fullName);
-			return;
+			return null;
 		}
 
 		Map<String, Object> parsed = parser.parse(log.getParams());
 		if (parsed == null) {
 			slog.debug("kraken siem: parser returned null");
-			return;
+			return null;
 		}
 
 		LogNormalizer normalizer = normalizers.get(fullName);
 		if (normalizer == null) {
 			slog.trace("kraken siem: normalizer not found for logger [{}]", fullName);
-			return;
+			return null;
 		}
 
 		Map<String, Object> normalized = normalizer.normalize(parsed);
 		if (normalized == null) {
 			slog.debug("kraken siem: normalizer returned null");
-			return;
+			return null;
 		}
 
-		NormalizedLog normalizedLog = new NormalizedLog(ml.getOrgDomain(), normalized);
+		return new NormalizedLog(ml.getOrgDomain(), normalized);
+	}
+
+	private void analyze(PipelineLog l) {
+		NormalizedLog normalizedLog = l.normalized;
 		String category = (String) normalizedLog.get("category");
 		if (category == null) {
 			slog.debug("kraken siem: normalization category not found");
@@ -367,4 +440,14 @@ public class LogServerEngine implements LogServer, LogPipe, LoggerRegistryEventL
 		return col;
 	}
 
+	private static class PipelineLog {
+		private String fullName;
+		private Log log;
+		private NormalizedLog normalized;
+
+		public PipelineLog(String fullName, Log log) {
+			this.fullName = fullName;
+			this.log = log;
+		}
+	}
 }
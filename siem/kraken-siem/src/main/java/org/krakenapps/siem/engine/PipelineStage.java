@@ -0,0 +1,188 @@
+/*
+ * Copyright 2011 NCHOVY
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.krakenapps.siem.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.krakenapps.siem.PipelineStageStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounded stage of log server pipeline. Each worker owns a ring buffer queue,
+ * and items of same partition key always go to same worker to keep order of
+ * logs and single threaded access to per-logger parsers. Workers take queued
+ * items in batch, but each item is processed separately, so that one bad item
+ * does not discard the rest of batch. Blocking stage makes producer wait when
+ * queue is full, and non-blocking stage drops new items instead.
+ */
+abstract class PipelineStage<T> {
+	private final Logger logger = LoggerFactory.getLogger(PipelineStage.class.getName());
+
+	private final String name;
+	private final int workerCount;
+	private final int batchSize;
+	private final boolean blocking;
+	private final ArrayBlockingQueue<T>[] queues;
+
+	private volatile boolean running;
+	private List<Thread> workers = new ArrayList<Thread>();
+
+	private AtomicLong processed = new AtomicLong();
+	private AtomicLong dropped = new AtomicLong();
+	private AtomicLong batches = new AtomicLong();
+	private AtomicLong failures = new AtomicLong();
+
+	// for throughput calculation
+	private long lastSampleTime = System.currentTimeMillis();
+	private long lastSampleCount;
+
+	public PipelineStage(String name, int workerCount, int capacity, int batchSize, boolean blocking) {
+		this.name = name;
+		this.workerCount = workerCount;
+		this.batchSize = batchSize;
+		this.blocking = blocking;
+		this.queues = newQueues(workerCount, Math.max(1, capacity / workerCount));
+	}
+
+	@SuppressWarnings("unchecked")
+	private ArrayBlockingQueue<T>[] newQueues(int count, int capacity) {
+		ArrayBlockingQueue<T>[] queues = new ArrayBlockingQueue[count];
+		for (int i = 0; i < count; i++)
+			queues[i] = new ArrayBlockingQueue<T>(capacity);
+		return queues;
+	}
+
+	protected abstract void process(T item);
+
+	public String getName() {
+		return name;
+	}
+
+	public void start() {
+		running = true;
+		for (int i = 0; i < workerCount; i++) {
+			Thread t = new Thread(new Worker(queues[i]), "Siem " + name + " " + (i + 1));
+			t.start();
+			workers.add(t);
+		}
+	}
+
+	/**
+	 * Stops workers after processing all queued items.
+	 */
+	public void stop() {
+		running = false;
+		for (Thread t : workers) {
+			try {
+				t.join(5000);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+		workers.clear();
+
+		int remains = 0;
+		for (ArrayBlockingQueue<T> queue : queues) {
+			remains += queue.size();
+			queue.clear();
+		}
+
+		if (remains > 0) {
+			dropped.addAndGet(remains);
+			logger.warn("kraken siem: stage [{}] stopped, discarded [{}] items", name, remains);
+		}
+	}
+
+	public boolean offer(Object partitionKey, T item) {
+		ArrayBlockingQueue<T> queue = queues[(partitionKey.hashCode() & 0x7fffffff) % queues.length];
+		if (blocking && running) {
+			try {
+				queue.put(item);
+				return true;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		} else if (queue.offer(item)) {
+			return true;
+		}
+
+		dropped.incrementAndGet();
+		return false;
+	}
+
+	public synchronized PipelineStageStats getStats() {
+		long now = System.currentTimeMillis();
+		long count = processed.get();
+		long elapsed = now - lastSampleTime;
+		double throughput = elapsed == 0 ? 0 : (count - lastSampleCount) * 1000.0 / elapsed;
+		lastSampleTime = now;
+		lastSampleCount = count;
+
+		int depth = 0;
+		int capacity = 0;
+		for (ArrayBlockingQueue<T> queue : queues) {
+			depth += queue.size();
+			capacity += queue.size() + queue.remainingCapacity();
+		}
+
+		return new PipelineStageStats(name, workerCount, depth, capacity, count, dropped.get(), batches.get(),
+				failures.get(), throughput);
+	}
+
+	private class Worker implements Runnable {
+		private ArrayBlockingQueue<T> queue;
+
+		public Worker(ArrayBlockingQueue<T> queue) {
+			this.queue = queue;
+		}
+
+		@Override
+		public void run() {
+			List<T> batch = new ArrayList<T>(batchSize);
+			while (running || !queue.isEmpty()) {
+				try {
+					T first = queue.poll(100, TimeUnit.MILLISECONDS);
+					if (first == null)
+						continue;
+
+					batch.add(first);
+					queue.drainTo(batch, batchSize - 1);
+
+					for (T item : batch) {
+						try {
+							process(item);
+						} catch (Throwable t) {
+							failures.incrementAndGet();
+							logger.error("kraken siem: stage [" + name + "] failed to process item", t);
+						}
+					}
+					batches.incrementAndGet();
+				} catch (InterruptedException e) {
+					break;
+				} finally {
+					processed.addAndGet(batch.size());
+					batch.clear();
+				}
+			}
+		}
+	}
+}
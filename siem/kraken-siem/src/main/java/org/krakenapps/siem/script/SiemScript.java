@@ -39,6 +39,7 @@ import org.krakenapps.siem.CandidateTextFileLogger;
 import org.krakenapps.siem.LogFileScanner;
 import org.krakenapps.siem.LogFileScannerRegistry;
 import org.krakenapps.siem.LogServer;
+import org.krakenapps.siem.PipelineStageStats;
 import org.krakenapps.siem.engine.EventResponseMapper;
 import org.krakenapps.siem.engine.IscHttpRuleManager;
 import org.krakenapps.siem.engine.ResponseKey;
@@ -80,6 +81,15 @@ public class SiemScript implements Script {
 		}
 	}
 
+	@ScriptUsage(description = "print log pipeline stage statistics")
+	public void pipeline(String[] args) {
+		LogServer logServer = getLogServer();
+		context.println("Log Pipeline Stages");
+		context.println("---------------------");
+		for (PipelineStageStats stats : logServer.getPipelineStats())
+			context.println(stats.toString());
+	}
+
 	public void updateHttpRules(String[] args) {
 		IscHttpRuleManager manager = getIscHttpRuleManager();
 
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2011 NCHOVY
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.krakenapps.siem.analyzer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class WindowAggregatorTest {
+	@Test
+	public void testThresholdAndSuppress() {
+		WindowAggregator<String> aggregator = new WindowAggregator<String>(WindowType.Sliding, 60000);
+		aggregator.setThreshold(3);
+		aggregator.setSuppressInterval(10000);
+
+		assertFalse(aggregator.add("a", 0, 1).isTriggered());
+		assertFalse(aggregator.add("a", 1000, 1).isTriggered());
+		assertTrue(aggregator.add("a", 2000, 1).isTriggered());
+
+		// suppressed until interval passes
+		assertFalse(aggregator.add("a", 3000, 1).isTriggered());
+		WindowState state = aggregator.add("a", 13000, 1);
+		assertTrue(state.isTriggered());
+		assertEquals(5, state.getTotal());
+		assertEquals(2, aggregator.getTriggerCount());
+	}
+
+	@Test
+	public void testTumblingWindow() {
+		WindowAggregator<String> aggregator = new WindowAggregator<String>(WindowType.Tumbling, 60000);
+		aggregator.setThreshold(2);
+		aggregator.setSuppressInterval(0);
+
+		assertFalse(aggregator.add("a", 0, 1).isTriggered());
+		assertTrue(aggregator.add("a", 1000, 1).isTriggered());
+
+		// once per window
+		assertFalse(aggregator.add("a", 2000, 1).isTriggered());
+
+		// counter is reset at window boundary
+		WindowState state = aggregator.add("a", 60000, 1);
+		assertFalse(state.isTriggered());
+		assertEquals(1, state.getCount());
+		assertTrue(aggregator.add("a", 61000, 1).isTriggered());
+	}
+
+	@Test
+	public void testSlidingWindow() {
+		WindowAggregator<String> aggregator = new WindowAggregator<String>(WindowType.Sliding, 60000);
+		aggregator.add("a", 0, 1);
+		aggregator.add("a", 30000, 1);
+		assertEquals(2, aggregator.get("a").getCount());
+
+		// first event slides out of window
+		WindowState state = aggregator.add("a", 70000, 1);
+		assertEquals(2, state.getCount());
+		assertEquals(3, state.getTotal());
+	}
+
+	@Test
+	public void testIdleExpire() {
+		WindowAggregator<String> aggregator = new WindowAggregator<String>(WindowType.Sliding, 60000);
+		aggregator.add("a", 0, 1);
+		aggregator.add("b", 50000, 1);
+
+		aggregator.expire(59000);
+		assertEquals(2, aggregator.size());
+
+		aggregator.expire(65000);
+		assertEquals(1, aggregator.size());
+		assertNull(aggregator.get("a"));
+		assertEquals(1, aggregator.getExpiredCount());
+
+		aggregator.expire(120000);
+		assertEquals(0, aggregator.size());
+		assertEquals(2, aggregator.getExpiredCount());
+	}
+
+	@Test
+	public void testShedLeastRecentlyUsed() {
+		WindowAggregator<String> aggregator = new WindowAggregator<String>(WindowType.Sliding, 60000);
+		aggregator.setMaxKeys(2);
+
+		aggregator.add("a", 0, 1);
+		aggregator.add("b", 1, 1);
+		aggregator.add("a", 2, 1);
+		aggregator.add("c", 3, 1);
+
+		assertEquals(2, aggregator.size());
+		assertNull(aggregator.get("b"));
+		assertEquals(2, aggregator.get("a").getTotal());
+		assertEquals(1, aggregator.getShedCount());
+	}
+
+	/**
+	 * Two minutes of distinct keys, like scan storm. Keys of first minute
+	 * should be expired while second minute is added, and key limit should
+	 * hold for the rest.
+	 */
+	@Test
+	public void testDistinctKeysBounded() {
+		int count = 200000;
+		int maxKeys = count * 3 / 2;
+
+		WindowAggregator<Long> aggregator = new WindowAggregator<Long>(WindowType.Sliding, 60000);
+		aggregator.setThreshold(3);
+		aggregator.setMaxKeys(maxKeys);
+
+		for (int minute = 0; minute < 2; minute++) {
+			long begin = System.currentTimeMillis();
+			for (int i = 0; i < count; i++) {
+				long time = minute * 60000L + i * 60000L / count;
+				aggregator.add((long) minute * count + i, time, 1);
+				assertTrue(aggregator.size() <= maxKeys);
+			}
+			long elapsed = Math.max(1, System.currentTimeMillis() - begin);
+			System.out.println(String.format("window aggregator: minute %d, %d keys in %dms (%d keys/s), %s",
+					minute + 1, count, elapsed, count * 1000L / elapsed, aggregator));
+		}
+
+		assertTrue(aggregator.getExpiredCount() > count / 2);
+		assertTrue(aggregator.size() < count + count / 10);
+		assertEquals(0, aggregator.getTriggerCount());
+	}
+
+	@Test
+	public void testShedStatesReleased() {
+		// analyzer settings, keys churn much faster than idle timeout
+		int maxKeys = 1000;
+		WindowAggregator<Long> aggregator = new WindowAggregator<Long>(WindowType.Sliding, 60000);
+		aggregator.setSuppressInterval(10000);
+		aggregator.setIdleTimeout(3600000);
+		aggregator.setMaxKeys(maxKeys);
+
+		for (long i = 0; i < 30000; i++) {
+			aggregator.add(i, i * 10, 1);
+			assertTrue(aggregator.size() <= maxKeys);
+			assertTrue(aggregator.getScheduledCount() <= maxKeys);
+		}
+
+		assertEquals(29000, aggregator.getShedCount());
+		assertEquals(maxKeys, aggregator.getScheduledCount());
+
+		// live states still expire after shedding
+		aggregator.expire(300000 + 3600000 * 2);
+		assertEquals(0, aggregator.size());
+		assertEquals(0, aggregator.getScheduledCount());
+		assertEquals(maxKeys, aggregator.getExpiredCount());
+	}
+}
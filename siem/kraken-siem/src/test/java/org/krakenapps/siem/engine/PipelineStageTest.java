@@ -0,0 +1,56 @@
+/*
+ * Copyright 2011 NCHOVY
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.krakenapps.siem.engine;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+import org.krakenapps.siem.PipelineStageStats;
+
+public class PipelineStageTest {
+	@Test
+	public void testPoisonedItem() {
+		final List<Integer> done = Collections.synchronizedList(new ArrayList<Integer>());
+		PipelineStage<Integer> stage = new PipelineStage<Integer>("Test", 1, 100, 500, true) {
+			@Override
+			protected void process(Integer item) {
+				if (item == 3)
+					throw new IllegalStateException("poisoned");
+				done.add(item);
+			}
+		};
+
+		// queued before start, so all items are drained as one batch
+		for (int i = 0; i < 10; i++)
+			stage.offer("logger", i);
+
+		stage.start();
+		stage.stop();
+
+		assertEquals(Arrays.asList(0, 1, 2, 4, 5, 6, 7, 8, 9), done);
+
+		PipelineStageStats stats = stage.getStats();
+		assertEquals(10, stats.getProcessed());
+		assertEquals(1, stats.getFailures());
+		assertEquals(1, stats.getBatches());
+		assertEquals(0, stats.getDropped());
+	}
+}
@@ -2,21 +2,28 @@ package org.krakenapps.snmpmon;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.felix.ipojo.annotations.Component;
 import org.apache.felix.ipojo.annotations.Invalidate;
 import org.apache.felix.ipojo.annotations.Requires;
 import org.apache.felix.ipojo.annotations.Validate;
+import org.krakenapps.log.api.BatchLogPipe;
 import org.krakenapps.log.api.Log;
-import org.krakenapps.log.api.LogPipe;
 import org.krakenapps.log.api.Logger;
 import org.krakenapps.log.api.LoggerFactory;
 import org.krakenapps.log.api.LoggerFactoryEventListener;
@@ -27,10 +34,21 @@ import org.krakenapps.rrd.DataSourceConfig;
 import org.krakenapps.rrd.DataSourceType;
 import org.krakenapps.rrd.Rrd;
 import org.krakenapps.rrd.RrdConfig;
-import org.krakenapps.rrd.io.FilePersistentLayer;
+import org.krakenapps.rrd.io.MappedPersistentLayer;
 
+/**
+ * Accumulates network usage deltas of each snmp query logger, and updates its
+ * rrd once per minute. Logs are queued by logger threads and applied in
+ * batches by updater thread, so rrd file io does not block snmp polling.
+ * Queue is bounded, and logs are dropped and counted if updater falls behind.
+ */
 @Component(name = "snmpmon-rrd-updater")
-public class RrdUpdater implements LogPipe, LoggerFactoryEventListener {
+public class RrdUpdater implements BatchLogPipe, LoggerFactoryEventListener, Runnable {
+	private static final String[] COLUMNS = { "rx_bytes_delta", "tx_bytes_delta", "rx_discards_delta",
+			"tx_discards_delta", "rx_errors_delta", "tx_errors_delta", "rx_ucast_pkts_delta", "tx_ucast_pkts_delta" };
+
+	private static final int QUEUE_SIZE = Integer.getInteger("kraken.snmpmon.rrd_queue_size", 100000);
+
 	private org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(RrdUpdater.class);
 
 	@Requires
@@ -38,26 +56,43 @@ public class RrdUpdater implements LogPipe, LoggerFactoryEventListener {
 	private LoggerFactory factory;
 
 	private File rootDir;
-	private boolean run = true;
+	private volatile boolean run = true;
 
 	private ConcurrentMap<String, Rrd> rrds;
 	private ConcurrentMap<String, Cache> cache;
+	private BlockingQueue<Update> queue;
+	private Thread updater;
+	private AtomicLong dropped = new AtomicLong();
+	private long reportedDrops;
 
 	@Validate
 	public void validate() {
 		factory = factoryRegistry.getLoggerFactory("snmpmon");
-		factory.addListener(this);
 
 		rootDir = new File(System.getProperty("kraken.data.dir"), "kraken-snmpmon/rrd/");
 		rootDir.mkdirs();
 		rrds = new ConcurrentHashMap<String, Rrd>();
 		cache = new ConcurrentHashMap<String, Cache>();
+		queue = new LinkedBlockingQueue<Update>(QUEUE_SIZE);
+		dropped.set(0);
+		reportedDrops = 0;
+
+		run = true;
+		updater = new Thread(this, "Snmpmon RRD Updater");
+		updater.start();
+		factory.addListener(this);
 	}
 
 	@Invalidate
 	public void invalidate() {
 		run = false;
 		factory.removeListener(this);
+		updater.interrupt();
+		try {
+			updater.join(5000);
+		} catch (InterruptedException e) {
+		}
+		queue.clear();
 		rrds.clear();
 		cache.clear();
 	}
@@ -75,92 +110,178 @@ public class RrdUpdater implements LogPipe, LoggerFactoryEventListener {
 			file.delete();
 	}
 
-	@SuppressWarnings("unchecked")
 	@Override
 	public void onLog(Logger logger, Log log) {
 		if (!run || !logger.getFactoryFullName().equals(factory.getFullName()))
 			return;
 
-		Map<String, Object> data = new HashMap<String, Object>(log.getParams());
-		data.remove("_total");
-		data.remove("msg");
-		if (!"network-usage".equals(data.remove("logtype")))
+		enqueue(new Update(logger.getFullName(), log));
+	}
+
+	@Override
+	public void onLogBatch(Logger logger, List<Log> logs) {
+		if (!run || !logger.getFactoryFullName().equals(factory.getFullName()))
 			return;
 
-		String[] columns = { "rx_bytes_delta", "tx_bytes_delta", "rx_discards_delta", "tx_discards_delta", "rx_errors_delta",
-				"tx_errors_delta", "rx_ucast_pkts_delta", "tx_ucast_pkts_delta" };
+		for (Log log : logs)
+			enqueue(new Update(logger.getFullName(), log));
+	}
+
+	private void enqueue(Update update) {
+		// logger thread should not block on slow rrd io
+		if (!queue.offer(update))
+			dropped.incrementAndGet();
+	}
+
+	/**
+	 * @return the number of logs dropped since start because update queue was
+	 *         full
+	 */
+	public long getDroppedCount() {
+		return dropped.get();
+	}
+
+	@Override
+	public void run() {
+		List<Update> batch = new ArrayList<Update>();
 		try {
-			Cache cache = this.cache.get(logger.getFullName());
-			if (cache == null) {
-				cache = new Cache();
-				this.cache.put(logger.getFullName(), cache);
-			}
+			while (run) {
+				Update first = queue.poll(1, TimeUnit.SECONDS);
+				if (first == null)
+					continue;
 
-			for (String key : data.keySet()) {
+				batch.add(first);
+				queue.drainTo(batch);
 				try {
-					Map<String, Object> value = (Map<String, Object>) data.get(key);
-
-					for (String column : columns) {
-						String cacheKey = key + ":" + column;
-						double v = cache.delta.containsKey(cacheKey) ? cache.delta.get(cacheKey) : 0;
-						try {
-							v += ((Long) value.get(column)).doubleValue() / 60.0;
-							cache.delta.put(cacheKey, v);
-						} catch (ClassCastException e) {
-						} catch (NullPointerException e) {
-						}
-					}
-				} catch (ClassCastException e) {
+					flush(batch);
+				} catch (Throwable t) {
+					logger.error("kraken snmpmon: cannot update rrd", t);
+				}
+				batch.clear();
+
+				long drops = dropped.get();
+				if (drops != reportedDrops) {
+					logger.warn("kraken snmpmon: rrd update queue is full, dropped [{}] logs", drops - reportedDrops);
+					reportedDrops = drops;
 				}
 			}
+		} catch (InterruptedException e) {
+		} finally {
+			logger.info("kraken snmpmon: rrd updater stopped");
+		}
+	}
 
-			if (cache.beforeWrite.before(new Date(System.currentTimeMillis() - 60000))) {
-				Rrd rrd = rrds.get(logger.getFullName());
-				if (rrd == null) {
-					File file = new File(rootDir, logger.getFullName().replace("\\", "$") + ".rrd");
-					RrdConfig config = null;
-
-					if (!file.exists()) {
-						config = new RrdConfig(log.getDate(), 60);
-						for (String key : data.keySet()) {
-							for (String column : columns)
-								config.addDataSource(key + ":" + column, DataSourceType.GAUGE, 120, Double.MIN_VALUE,
-										Double.MAX_VALUE);
-						}
-
-						config.addArchive(ConsolidateFunc.AVERAGE, 0.5, 1, 360); // 6h / 1min
-						config.addArchive(ConsolidateFunc.AVERAGE, 0.5, 5, 288); // Daily / 5min
-						config.addArchive(ConsolidateFunc.AVERAGE, 0.5, 30, 336); // Weekly / 30min
-						config.addArchive(ConsolidateFunc.AVERAGE, 0.5, 120, 360); // Monthly / 2h
-						config.addArchive(ConsolidateFunc.AVERAGE, 0.5, 1440, 365); // Yearly / 1d
-					}
+	private void flush(List<Update> batch) {
+		// accumulate all deltas first, then check rrd write once per logger
+		Map<String, Update> latest = new LinkedHashMap<String, Update>();
+		for (Update update : batch)
+			if (accumulate(update))
+				latest.put(update.loggerName, update);
 
-					rrd = new CompactRrd(new FilePersistentLayer(file, 512 * 1024), config);
-					rrds.put(logger.getFullName(), rrd);
-				}
+		for (Update update : latest.values()) {
+			try {
+				Cache cache = this.cache.get(update.loggerName);
+				if (cache.beforeWrite.before(new Date(System.currentTimeMillis() - 60000)))
+					write(update, cache);
+			} catch (IOException e) {
+				this.logger.error("kraken snmpmon: io exception", e);
+			}
+		}
+	}
 
-				Set<String> exist = new HashSet<String>();
-				for (DataSourceConfig ds : rrd.getDataSources())
-					exist.add(ds.getName().substring(0, ds.getName().indexOf(':')));
-				for (String key : data.keySet()) {
-					if (!exist.contains(key)) {
-						for (String column : columns)
-							rrd.addDataSource(key + ":" + column, DataSourceType.GAUGE, 120, Double.MIN_VALUE, Double.MAX_VALUE);
+	@SuppressWarnings("unchecked")
+	private boolean accumulate(Update update) {
+		Map<String, Object> data = new HashMap<String, Object>(update.log.getParams());
+		data.remove("_total");
+		data.remove("msg");
+		if (!"network-usage".equals(data.remove("logtype")))
+			return false;
+
+		Cache cache = this.cache.get(update.loggerName);
+		if (cache == null) {
+			cache = new Cache();
+			this.cache.put(update.loggerName, cache);
+		}
+
+		for (String key : data.keySet()) {
+			try {
+				Map<String, Object> value = (Map<String, Object>) data.get(key);
+
+				for (String column : COLUMNS) {
+					String cacheKey = key + ":" + column;
+					double v = cache.delta.containsKey(cacheKey) ? cache.delta.get(cacheKey) : 0;
+					try {
+						v += ((Long) value.get(column)).doubleValue() / 60.0;
+						cache.delta.put(cacheKey, v);
+					} catch (ClassCastException e) {
+					} catch (NullPointerException e) {
 					}
 				}
-				for (String key : exist) {
-					if (!data.keySet().contains(key)) {
-						for (String column : columns)
-							rrd.removeDataSource(key + ":" + column);
-					}
+			} catch (ClassCastException e) {
+			}
+		}
+
+		update.data = data;
+		return true;
+	}
+
+	private void write(Update update, Cache cache) throws IOException {
+		Log log = update.log;
+		Map<String, Object> data = update.data;
+
+		Rrd rrd = rrds.get(update.loggerName);
+		if (rrd == null) {
+			File file = new File(rootDir, update.loggerName.replace("\\", "$") + ".rrd");
+			RrdConfig config = null;
+
+			if (!file.exists()) {
+				config = new RrdConfig(log.getDate(), 60);
+				for (String key : data.keySet()) {
+					for (String column : COLUMNS)
+						config.addDataSource(key + ":" + column, DataSourceType.GAUGE, 120, Double.MIN_VALUE,
+								Double.MAX_VALUE);
 				}
 
-				rrd.update(log.getDate(), cache.delta);
-				cache.beforeWrite = new Date();
-				cache.delta.clear();
+				config.addArchive(ConsolidateFunc.AVERAGE, 0.5, 1, 360); // 6h / 1min
+				config.addArchive(ConsolidateFunc.AVERAGE, 0.5, 5, 288); // Daily / 5min
+				config.addArchive(ConsolidateFunc.AVERAGE, 0.5, 30, 336); // Weekly / 30min
+				config.addArchive(ConsolidateFunc.AVERAGE, 0.5, 120, 360); // Monthly / 2h
+				config.addArchive(ConsolidateFunc.AVERAGE, 0.5, 1440, 365); // Yearly / 1d
+			}
+
+			rrd = new CompactRrd(new MappedPersistentLayer(file), config);
+			rrds.put(update.loggerName, rrd);
+		}
+
+		Set<String> exist = new HashSet<String>();
+		for (DataSourceConfig ds : rrd.getDataSources())
+			exist.add(ds.getName().substring(0, ds.getName().indexOf(':')));
+		for (String key : data.keySet()) {
+			if (!exist.contains(key)) {
+				for (String column : COLUMNS)
+					rrd.addDataSource(key + ":" + column, DataSourceType.GAUGE, 120, Double.MIN_VALUE, Double.MAX_VALUE);
 			}
-		} catch (IOException e) {
-			this.logger.error("kraken snmpmon: io exception", e);
+		}
+		for (String key : exist) {
+			if (!data.keySet().contains(key)) {
+				for (String column : COLUMNS)
+					rrd.removeDataSource(key + ":" + column);
+			}
+		}
+
+		rrd.update(log.getDate(), cache.delta);
+		cache.beforeWrite = new Date();
+		cache.delta.clear();
+	}
+
+	private static class Update {
+		private String loggerName;
+		private Log log;
+		private Map<String, Object> data;
+
+		public Update(String loggerName, Log log) {
+			this.loggerName = loggerName;
+			this.log = log;
 		}
 	}
 
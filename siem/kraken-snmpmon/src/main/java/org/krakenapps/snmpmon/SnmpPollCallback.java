@@ -0,0 +1,37 @@
+/*
+ * Copyright 2011 Future Systems
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.krakenapps.snmpmon;
+
+import java.util.List;
+
+import org.snmp4j.smi.VariableBinding;
+
+/**
+ * Receives result of one interface table poll. Called on poll delivery
+ * thread, one poll at a time.
+ */
+public interface SnmpPollCallback {
+	/**
+	 * @param results
+	 *            ifNumber followed by ifTable columns in oid order, same as
+	 *            subtree walk of interfaces
+	 */
+	void onPoll(List<VariableBinding> results);
+
+	void onTimeout();
+
+	void onError(Exception e);
+}
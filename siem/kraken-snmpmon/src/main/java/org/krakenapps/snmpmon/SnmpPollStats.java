@@ -0,0 +1,115 @@
+/*
+ * Copyright 2011 Future Systems
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.krakenapps.snmpmon;
+
+/**
+ * Poll counters of a target or whole poller. Latency is elapsed time from
+ * poll request to completion, and lateness is queueing delay before first
+ * request is sent.
+ */
+public class SnmpPollStats {
+	private long pollCount;
+	private long timeoutCount;
+	private long errorCount;
+	private long skipCount;
+	private long requestCount;
+	private long tooBigCount;
+	private long lastLatency;
+	private long maxLatency;
+	private long totalLatency;
+	private long lastLateness;
+	private long maxLateness;
+
+	synchronized void recordPoll(long lateness, long latency) {
+		pollCount++;
+		lastLatency = latency;
+		maxLatency = Math.max(maxLatency, latency);
+		totalLatency += latency;
+		lastLateness = lateness;
+		maxLateness = Math.max(maxLateness, lateness);
+	}
+
+	synchronized void recordTimeout() {
+		timeoutCount++;
+	}
+
+	synchronized void recordError() {
+		errorCount++;
+	}
+
+	synchronized void recordSkip() {
+		skipCount++;
+	}
+
+	synchronized void recordRequest() {
+		requestCount++;
+	}
+
+	synchronized void recordTooBig() {
+		tooBigCount++;
+	}
+
+	public synchronized long getPollCount() {
+		return pollCount;
+	}
+
+	public synchronized long getTimeoutCount() {
+		return timeoutCount;
+	}
+
+	public synchronized long getErrorCount() {
+		return errorCount;
+	}
+
+	public synchronized long getSkipCount() {
+		return skipCount;
+	}
+
+	public synchronized long getRequestCount() {
+		return requestCount;
+	}
+
+	public synchronized long getTooBigCount() {
+		return tooBigCount;
+	}
+
+	public synchronized long getLastLatency() {
+		return lastLatency;
+	}
+
+	public synchronized long getMaxLatency() {
+		return maxLatency;
+	}
+
+	public synchronized long getAverageLatency() {
+		return pollCount == 0 ? 0 : totalLatency / pollCount;
+	}
+
+	public synchronized long getLastLateness() {
+		return lastLateness;
+	}
+
+	public synchronized long getMaxLateness() {
+		return maxLateness;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return String.format("polls=%d, timeouts=%d, errors=%d, skips=%d, requests=%d, toobig=%d, "
+				+ "latency(avg/max)=%d/%dms, lateness(last/max)=%d/%dms", pollCount, timeoutCount, errorCount, skipCount,
+				requestCount, tooBigCount, getAverageLatency(), maxLatency, lastLateness, maxLateness);
+	}
+}
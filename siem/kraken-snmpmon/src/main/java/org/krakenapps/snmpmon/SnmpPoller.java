@@ -0,0 +1,583 @@
+/*
+ * Copyright 2011 Future Systems
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.krakenapps.snmpmon;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snmp4j.PDU;
+import org.snmp4j.Snmp;
+import org.snmp4j.Target;
+import org.snmp4j.event.ResponseEvent;
+import org.snmp4j.event.ResponseListener;
+import org.snmp4j.mp.SnmpConstants;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.VariableBinding;
+
+/**
+ * Asynchronous interface table poller on shared snmp session. A poll gets
+ * ifNumber and walks all ifTable columns concurrently with GETBULK (GETNEXT
+ * for v1), keeping several requests outstanding per target. Requests are
+ * paced by per target rate and total in-flight limit, and polls requested
+ * earlier are served first. Max repetitions of each target follows its table
+ * size, and shrinks on tooBig or timeout.
+ */
+public class SnmpPoller {
+	private static final OID IF_NUMBER = new OID(Interface.oidInterfaces + ".1.0");
+	private static final int COLUMN_COUNT = 22;
+	private static final OID[] COLUMNS = new OID[COLUMN_COUNT];
+	static {
+		for (int i = 0; i < COLUMN_COUNT; i++)
+			COLUMNS[i] = new OID(Interface.oidIfTable + ".1." + (i + 1));
+	}
+
+	private final Logger logger = LoggerFactory.getLogger(SnmpPoller.class.getName());
+	private final Snmp snmp;
+	private final SnmpPollStats stats = new SnmpPollStats();
+	private final ResponseListener listener = new ResponseHandler();
+
+	private int maxOutstanding = Integer.getInteger("kraken.snmpmon.max_outstanding", 4);
+	private int targetRate = Integer.getInteger("kraken.snmpmon.target_rate", 100);
+	private int maxInflight = Integer.getInteger("kraken.snmpmon.max_inflight", 1024);
+	private int maxRepetitions = Integer.getInteger("kraken.snmpmon.max_repetitions", 64);
+
+	private final Object lock = new Object();
+	private final Map<Target, TargetState> states = new IdentityHashMap<Target, TargetState>();
+
+	// targets paced by rate limit, ordered by next send time
+	private final PriorityQueue<TargetState> waiting = new PriorityQueue<TargetState>(64, new Comparator<TargetState>() {
+		@Override
+		public int compare(TargetState o1, TargetState o2) {
+			long d = o1.nextSend - o2.nextSend;
+			return d < 0 ? -1 : (d > 0 ? 1 : 0);
+		}
+	});
+
+	// sendable targets, ordered by poll request time
+	private final PriorityQueue<TargetState> ready = new PriorityQueue<TargetState>(64, new Comparator<TargetState>() {
+		@Override
+		public int compare(TargetState o1, TargetState o2) {
+			long d = o1.deadline - o2.deadline;
+			return d < 0 ? -1 : (d > 0 ? 1 : 0);
+		}
+	});
+
+	private int inflight;
+
+	// responses sent before restart are not counted as in-flight
+	private int generation;
+	private volatile boolean running;
+	private Thread dispatcher;
+	private ExecutorService delivery;
+
+	public SnmpPoller(Snmp snmp) {
+		if (snmp == null)
+			throw new IllegalArgumentException("snmp session is required");
+
+		this.snmp = snmp;
+	}
+
+	public void start() {
+		synchronized (lock) {
+			if (running)
+				return;
+
+			running = true;
+			delivery = Executors.newSingleThreadExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "Snmp Poll Delivery");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+
+			dispatcher = new Thread(new Dispatcher(), "Snmp Poll Dispatcher");
+			dispatcher.setDaemon(true);
+			dispatcher.start();
+		}
+	}
+
+	public void stop() {
+		Thread t;
+		synchronized (lock) {
+			if (!running)
+				return;
+
+			running = false;
+			t = dispatcher;
+			dispatcher = null;
+
+			// responses of outstanding requests are ignored
+			for (TargetState s : states.values()) {
+				s.queue.clear();
+				if (s.poll != null)
+					s.poll.done = true;
+			}
+			states.clear();
+			waiting.clear();
+			ready.clear();
+			inflight = 0;
+			generation++;
+			lock.notifyAll();
+		}
+
+		t.interrupt();
+		try {
+			t.join(5000);
+		} catch (InterruptedException e) {
+		}
+		delivery.shutdown();
+	}
+
+	public boolean isRunning() {
+		return running;
+	}
+
+	/**
+	 * Starts interface table poll of target. Callback is invoked once when
+	 * poll is completed or failed.
+	 * 
+	 * @return false if previous poll of target is not finished yet, or poller
+	 *         is not running
+	 */
+	public boolean poll(Target target, SnmpPollCallback callback) {
+		synchronized (lock) {
+			if (!running)
+				return false;
+
+			TargetState s = states.get(target);
+			if (s == null) {
+				s = new TargetState(target);
+				states.put(target, s);
+			}
+
+			if (s.poll != null) {
+				s.stats.recordSkip();
+				stats.recordSkip();
+				return false;
+			}
+
+			Poll poll = new Poll(s, callback);
+			s.poll = poll;
+			s.queue.add(new Request(poll, 0, IF_NUMBER, 0));
+			for (int i = 0; i < COLUMN_COUNT; i++)
+				s.queue.add(new Request(poll, i + 1, COLUMNS[i], s.maxRepetitions));
+
+			enqueue(s);
+			return true;
+		}
+	}
+
+	/**
+	 * Drops state of target. Running poll is abandoned without callback.
+	 */
+	public void release(Target target) {
+		synchronized (lock) {
+			TargetState s = states.remove(target);
+			if (s == null)
+				return;
+
+			s.queue.clear();
+			if (s.poll != null) {
+				s.poll.done = true;
+				s.poll = null;
+			}
+		}
+	}
+
+	public SnmpPollStats getStats() {
+		return stats;
+	}
+
+	public SnmpPollStats getStats(Target target) {
+		synchronized (lock) {
+			TargetState s = states.get(target);
+			return s == null ? null : s.stats;
+		}
+	}
+
+	public int getMaxRepetitions(Target target) {
+		synchronized (lock) {
+			TargetState s = states.get(target);
+			return s == null ? 0 : s.maxRepetitions;
+		}
+	}
+
+	public int getInflight() {
+		synchronized (lock) {
+			return inflight;
+		}
+	}
+
+	public void setMaxOutstanding(int maxOutstanding) {
+		this.maxOutstanding = maxOutstanding;
+	}
+
+	public void setTargetRate(int targetRate) {
+		this.targetRate = targetRate;
+	}
+
+	public void setMaxInflight(int maxInflight) {
+		this.maxInflight = maxInflight;
+	}
+
+	public void setMaxRepetitions(int maxRepetitions) {
+		this.maxRepetitions = maxRepetitions;
+	}
+
+	/**
+	 * Puts target to waiting or ready queue if it has sendable request.
+	 * Called with lock held.
+	 */
+	private void enqueue(TargetState s) {
+		if (s.queued || s.queue.isEmpty() || s.outstanding >= maxOutstanding)
+			return;
+
+		s.queued = true;
+		if (s.nextSend - System.nanoTime() <= 0) {
+			s.deadline = s.queue.peek().poll.requested;
+			ready.add(s);
+		} else {
+			waiting.add(s);
+		}
+		lock.notifyAll();
+	}
+
+	private void send(Request req) {
+		Target target = req.poll.state.target;
+		PDU pdu = new PDU();
+		pdu.add(new VariableBinding(req.from));
+		if (req.column == 0) {
+			pdu.setType(PDU.GET);
+		} else if (target.getVersion() == SnmpConstants.version1) {
+			pdu.setType(PDU.GETNEXT);
+		} else {
+			pdu.setType(PDU.GETBULK);
+			pdu.setNonRepeaters(0);
+			pdu.setMaxRepetitions(req.maxRepetitions);
+		}
+
+		try {
+			snmp.send(pdu, target, req, listener);
+		} catch (IOException e) {
+			complete(req, null, e);
+		}
+	}
+
+	private void complete(Request req, PDU response, Exception error) {
+		Runnable callback = null;
+		synchronized (lock) {
+			TargetState s = req.poll.state;
+			s.outstanding--;
+			if (req.generation == generation)
+				inflight--;
+
+			if (!req.poll.done)
+				callback = handle(req, response, error);
+
+			enqueue(s);
+			lock.notifyAll();
+		}
+
+		if (callback != null) {
+			try {
+				delivery.execute(callback);
+			} catch (Exception e) {
+				// poller is stopped
+			}
+		}
+	}
+
+	/**
+	 * Handles response with lock held.
+	 * 
+	 * @return callback if poll is finished, otherwise null
+	 */
+	private Runnable handle(Request req, PDU response, Exception error) {
+		Poll poll = req.poll;
+		TargetState s = poll.state;
+		if (error != null)
+			return fail(poll, error);
+
+		if (response == null) {
+			// large responses may be dropped on the path
+			s.maxRepetitions = Math.max(1, s.maxRepetitions / 2);
+			return fail(poll, null);
+		}
+
+		int status = response.getErrorStatus();
+		if (status == PDU.tooBig && req.maxRepetitions > 1) {
+			s.stats.recordTooBig();
+			stats.recordTooBig();
+			s.repetitionLimit = Math.max(1, req.maxRepetitions / 2);
+			s.maxRepetitions = Math.min(s.maxRepetitions, s.repetitionLimit);
+			s.queue.addFirst(new Request(poll, req.column, req.from, s.maxRepetitions));
+			return null;
+		}
+
+		// v1 agent reports end of mib view as noSuchName
+		boolean end = status == PDU.noSuchName && req.column > 0;
+		if (status != PDU.noError && !end)
+			return fail(poll, new IOException("snmp error status " + status + " from " + s.target.getAddress()));
+
+		if (req.column == 0) {
+			if (response.size() == 0 || response.get(0).isException())
+				return fail(poll, new ParseException("ifNumber not found from " + s.target.getAddress()));
+			poll.ifNumber = response.get(0);
+		} else {
+			List<VariableBinding> rows = poll.columns.get(req.column - 1);
+			OID column = COLUMNS[req.column - 1];
+			OID last = req.from;
+			end |= response.size() == 0;
+			for (int i = 0; !end && i < response.size(); i++) {
+				VariableBinding vb = response.get(i);
+				OID oid = vb.getOid();
+
+				// stop at next column, end of mib view, or non-increasing oid
+				if (vb.isException() || !oid.startsWith(column) || oid.compareTo(last) <= 0) {
+					end = true;
+					break;
+				}
+
+				rows.add(vb);
+				last = oid;
+			}
+
+			if (!end) {
+				// table is longer than max repetitions
+				if (req.maxRepetitions >= s.maxRepetitions)
+					s.maxRepetitions = Math.min(s.repetitionLimit, s.maxRepetitions * 2);
+				s.queue.add(new Request(poll, req.column, last, s.maxRepetitions));
+				return null;
+			}
+		}
+
+		if (--poll.pending > 0)
+			return null;
+
+		return finish(poll);
+	}
+
+	private Runnable finish(final Poll poll) {
+		TargetState s = poll.state;
+		poll.done = true;
+		if (s.poll == poll)
+			s.poll = null;
+
+		// just enough to walk each column in one request
+		int rowCount = poll.columns.get(0).size();
+		s.maxRepetitions = Math.max(1, Math.min(s.repetitionLimit, rowCount + 1));
+
+		final List<VariableBinding> results = new ArrayList<VariableBinding>(1 + rowCount * COLUMN_COUNT);
+		results.add(poll.ifNumber);
+		for (List<VariableBinding> rows : poll.columns)
+			results.addAll(rows);
+
+		long now = System.currentTimeMillis();
+		long latency = now - poll.requested;
+		long lateness = poll.firstSent - poll.requested;
+		s.stats.recordPoll(lateness, latency);
+		stats.recordPoll(lateness, latency);
+
+		return new Runnable() {
+			@Override
+			public void run() {
+				try {
+					poll.callback.onPoll(results);
+				} catch (Throwable t) {
+					logger.warn("kraken snmpmon: poll callback should not throw any exception", t);
+				}
+			}
+		};
+	}
+
+	/**
+	 * @param error
+	 *            null if timed out
+	 */
+	private Runnable fail(final Poll poll, final Exception error) {
+		TargetState s = poll.state;
+		poll.done = true;
+		if (s.poll == poll)
+			s.poll = null;
+		s.queue.clear();
+
+		if (error == null) {
+			s.stats.recordTimeout();
+			stats.recordTimeout();
+		} else {
+			s.stats.recordError();
+			stats.recordError();
+		}
+
+		return new Runnable() {
+			@Override
+			public void run() {
+				try {
+					if (error == null)
+						poll.callback.onTimeout();
+					else
+						poll.callback.onError(error);
+				} catch (Throwable t) {
+					logger.warn("kraken snmpmon: poll callback should not throw any exception", t);
+				}
+			}
+		};
+	}
+
+	private class Dispatcher implements Runnable {
+		@Override
+		public void run() {
+			List<Request> batch = new ArrayList<Request>();
+			try {
+				while (running) {
+					synchronized (lock) {
+						dispatch(batch);
+						if (batch.isEmpty()) {
+							long wait = 1000;
+							if (!waiting.isEmpty())
+								wait = Math.max(1, (waiting.peek().nextSend - System.nanoTime()) / 1000000);
+							lock.wait(wait);
+							continue;
+						}
+					}
+
+					// send out of lock, responses may arrive meanwhile
+					for (Request req : batch)
+						send(req);
+					batch.clear();
+				}
+			} catch (InterruptedException e) {
+			} catch (Throwable t) {
+				logger.error("kraken snmpmon: poll dispatcher failed", t);
+			} finally {
+				logger.info("kraken snmpmon: poll dispatcher stopped");
+			}
+		}
+
+		private void dispatch(List<Request> batch) {
+			long now = System.nanoTime();
+			while (!waiting.isEmpty() && waiting.peek().nextSend - now <= 0) {
+				TargetState s = waiting.poll();
+				s.deadline = s.queue.isEmpty() ? 0 : s.queue.peek().poll.requested;
+				ready.add(s);
+			}
+
+			long interval = 1000000000L / Math.max(1, targetRate);
+			while (inflight < maxInflight && !ready.isEmpty()) {
+				TargetState s = ready.poll();
+				s.queued = false;
+
+				// queue is cleared if poll is failed or released
+				Request req = s.queue.poll();
+				if (req == null)
+					continue;
+
+				s.outstanding++;
+				inflight++;
+				req.generation = generation;
+				s.nextSend = Math.max(s.nextSend - now, 0) + now + interval;
+				if (req.poll.firstSent == 0)
+					req.poll.firstSent = System.currentTimeMillis();
+				s.stats.recordRequest();
+				stats.recordRequest();
+				batch.add(req);
+
+				enqueue(s);
+			}
+		}
+	}
+
+	private class ResponseHandler implements ResponseListener {
+		@Override
+		public void onResponse(ResponseEvent event) {
+			// stop retransmission of async request. closing session notifies
+			// with InterruptedException while iterating pending requests, and
+			// cancel would break the iteration
+			if (!(event.getError() instanceof InterruptedException))
+				((Snmp) event.getSource()).cancel(event.getRequest(), this);
+			complete((Request) event.getUserObject(), event.getResponse(), event.getError());
+		}
+	}
+
+	private class TargetState {
+		private Target target;
+		private SnmpPollStats stats = new SnmpPollStats();
+		private LinkedList<Request> queue = new LinkedList<Request>();
+		private Poll poll;
+		private int outstanding;
+		private int maxRepetitions;
+		private int repetitionLimit;
+
+		// scheduling keys, valid while queued
+		private boolean queued;
+		private long nextSend = System.nanoTime();
+		private long deadline;
+
+		public TargetState(Target target) {
+			this.target = target;
+			this.repetitionLimit = SnmpPoller.this.maxRepetitions;
+			this.maxRepetitions = Math.min(10, repetitionLimit);
+		}
+	}
+
+	private static class Poll {
+		private TargetState state;
+		private SnmpPollCallback callback;
+		private long requested = System.currentTimeMillis();
+		private long firstSent;
+		private int pending = 1 + COLUMN_COUNT;
+		private boolean done;
+		private VariableBinding ifNumber;
+		private List<List<VariableBinding>> columns = new ArrayList<List<VariableBinding>>(COLUMN_COUNT);
+
+		public Poll(TargetState state, SnmpPollCallback callback) {
+			this.state = state;
+			this.callback = callback;
+			for (int i = 0; i < COLUMN_COUNT; i++)
+				columns.add(new ArrayList<VariableBinding>());
+		}
+	}
+
+	private static class Request {
+		private Poll poll;
+
+		// 0 for ifNumber, otherwise ifTable column
+		private int column;
+		private OID from;
+		private int maxRepetitions;
+		private int generation;
+
+		public Request(Poll poll, int column, OID from, int maxRepetitions) {
+			this.poll = poll;
+			this.column = column;
+			this.from = from;
+			this.maxRepetitions = maxRepetitions;
+		}
+	}
+}
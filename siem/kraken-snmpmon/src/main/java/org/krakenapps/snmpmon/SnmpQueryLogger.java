@@ -15,13 +15,10 @@
  */
 package org.krakenapps.snmpmon;
 
-import java.io.IOException;
 import java.net.InetAddress;
 import java.net.NetworkInterface;
 import java.net.SocketException;
 import java.net.UnknownHostException;
-import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.Date;
 import java.util.EnumMap;
 import java.util.Enumeration;
@@ -30,12 +27,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.PriorityBlockingQueue;
-import java.util.concurrent.ThreadFactory;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
 
 import org.krakenapps.log.api.AbstractLogger;
 import org.krakenapps.log.api.Log;
@@ -45,11 +36,6 @@ import org.krakenapps.snmpmon.Interface.IfEntry;
 import org.krakenapps.snmpmon.SnmpQueryLoggerFactory.ConfigOption;
 import org.slf4j.Logger;
 import org.snmp4j.CommunityTarget;
-import org.snmp4j.PDU;
-import org.snmp4j.Snmp;
-import org.snmp4j.TransportMapping;
-import org.snmp4j.event.ResponseEvent;
-import org.snmp4j.event.ResponseListener;
 import org.snmp4j.mp.SnmpConstants;
 import org.snmp4j.smi.Counter32;
 import org.snmp4j.smi.Counter64;
@@ -62,13 +48,12 @@ import org.snmp4j.smi.UdpAddress;
 import org.snmp4j.smi.UnsignedInteger32;
 import org.snmp4j.smi.Variable;
 import org.snmp4j.smi.VariableBinding;
-import org.snmp4j.transport.DefaultUdpTransportMapping;
-import org.snmp4j.util.DefaultPDUFactory;
-import org.snmp4j.util.TreeEvent;
-import org.snmp4j.util.TreeListener;
-import org.snmp4j.util.TreeUtils;
 
 /**
+ * Polls interface table of snmp agent at each interval, and writes network
+ * usage log. Polls are sent by shared {@link SnmpPoller}, and results are
+ * parsed on its delivery thread.
+ * 
  * @author stania
  */
 public class SnmpQueryLogger extends AbstractLogger {
@@ -76,51 +61,12 @@ public class SnmpQueryLogger extends AbstractLogger {
 	private static final int ethernetCsmacd = 6;
 	private static final int timeout = 3000;
 
-	private static ExecutorService sender;
-
-	private Snmp snmp;
+	private SnmpPoller poller;
 	private CommunityTarget commTarget;
-	private PDU pdu;
-	private Integer ifNumber;
 
 	private long loggerCreated;
 	private SnmpAgent target;
 
-	public static void open() {
-		BlockingQueue<Runnable> workQueue = new PriorityBlockingQueue<Runnable>(11, new Comparator<Runnable>() {
-			@Override
-			public int compare(Runnable o1, Runnable o2) {
-				if (o1 == null || !(o1 instanceof SnmpQueryLogger))
-					return -1;
-				if (o2 == null || !(o2 instanceof SnmpQueryLogger))
-					return 1;
-				SnmpQueryLogger l1 = (SnmpQueryLogger) o1;
-				if (l1.getLastRunDate() == null)
-					return -1;
-				SnmpQueryLogger l2 = (SnmpQueryLogger) o2;
-				if (l2.getLastRunDate() == null)
-					return 1;
-				boolean result = (l1.getLastRunDate().getTime() + l1.getInterval()) < (l2.getLastRunDate().getTime() + l2
-						.getInterval());
-				return result ? -1 : 1;
-			}
-		});
-
-		if (sender != null)
-			sender.shutdownNow();
-		sender = new ThreadPoolExecutor(1, 1, 1, TimeUnit.DAYS, workQueue, new ThreadFactory() {
-			@Override
-			public Thread newThread(Runnable r) {
-				return new Thread(r, "Snmp Query Logger");
-			}
-		});
-	}
-
-	public static void close() {
-		sender.shutdownNow();
-		sender = null;
-	}
-
 	public SnmpQueryLogger(String hostGuid, String name, String description, LoggerFactory loggerFactory, Properties config) {
 		super(hostGuid, name, description, loggerFactory, config);
 		parseConfig(config);
@@ -191,66 +137,70 @@ public class SnmpQueryLogger extends AbstractLogger {
 		}
 	}
 
-	public void setSnmp(Snmp snmp) {
-		this.snmp = snmp;
+	public void setPoller(SnmpPoller poller) {
+		this.poller = poller;
+	}
+
+	public SnmpPollStats getPollStats() {
+		return poller == null ? null : poller.getStats(commTarget);
 	}
 
 	@Override
 	protected void runOnce() {
-		try {
-			query();
-		} catch (Exception e) {
+		if (poller == null)
+			throw new IllegalStateException("snmp poller is not set");
+
+		// poll is skipped if previous one is still running
+		if (!poller.poll(commTarget, callback))
+			logger.debug("kraken snmpmon: poll for {}:{} skipped", target.getIp(), target.getPort());
+	}
+
+	@Override
+	protected void onStop() {
+		if (poller != null)
+			poller.release(commTarget);
+	}
+
+	private SnmpPollCallback callback = new SnmpPollCallback() {
+		@Override
+		public void onPoll(List<VariableBinding> results) {
+			try {
+				parseResult(results);
+			} catch (Exception e) {
+				onError(e);
+			}
+		}
+
+		@Override
+		public void onTimeout() {
+			Map<String, Object> m = new HashMap<String, Object>();
+			m.put("source_ip", deviceIp);
+			m.put("target_ip", target.getIp());
+			m.put("proto", "snmp");
+			m.put("port", 161);
+			m.put("timeout", timeout);
+			// Log on error
+			Log log = new SimpleLog(new Date(), getFullName(), "heartbeat", "Heartbeat failed", m);
+			write(log);
+		}
+
+		@Override
+		public void onError(Exception e) {
 			String targetStr = String.format("for %s:%d", target.getIp(), target.getPort());
 			if (e instanceof RuntimeException) {
 				if (e.getCause() != null) {
 					logger.warn("SNMP query failed " + targetStr + ", cause: " + e.getCause().getMessage());
 					logger.debug("SNMP query failed exception detail", e);
 				} else {
-					if (!(e instanceof TimeoutException)) {
-						logger.warn("SNMP query failed " + targetStr + ", msg: " + e.getClass().getName() + "(" + e.getMessage()
-								+ ")");
-						logger.debug("SNMP query failed exception detail", e);
-					}
-				}
-
-				if (e instanceof TimeoutException) {
-					Map<String, Object> m = new HashMap<String, Object>();
-					m.put("source_ip", deviceIp);
-					m.put("target_ip", target.getIp());
-					m.put("proto", "snmp");
-					m.put("port", 161);
-					m.put("timeout", timeout);
-					// Log on error
-					Log log = new SimpleLog(new Date(), getFullName(), "heartbeat", "Heartbeat failed", m);
-					write(log);
+					logger.warn("SNMP query failed " + targetStr + ", msg: " + e.getClass().getName() + "(" + e.getMessage()
+							+ ")");
+					logger.debug("SNMP query failed exception detail", e);
 				}
 			} else {
 				logger.warn("SNMP query failed " + targetStr + ": " + e.getClass().getName() + ":" + e.getMessage());
 				logger.debug("SNMP query failed exception detail", e);
 			}
 		}
-	}
-
-	private ResponseListener listener = new ResponseListener() {
-		@SuppressWarnings("unchecked")
-		@Override
-		public void onResponse(ResponseEvent event) {
-			if (event.getUserObject() != null) {
-				try {
-					((Snmp) event.getUserObject()).close();
-				} catch (IOException e) {
-				}
-			}
-
-			if (event == null || event.getResponse() == null)
-				return;
-
-			List<VariableBinding> results = event.getResponse().getVariableBindings();
-			if (results == null)
-				return;
-
-			parseResult(results);
-		}
 	};
 
 	private void parseResult(List<VariableBinding> results) {
@@ -260,12 +210,6 @@ public class SnmpQueryLogger extends AbstractLogger {
 			throw new ParseException("first result doesn't match with " + oidIfNumber + ": " + vbIfNumber.getOid());
 
 		int ifNumber = vbIfNumber.getVariable().toInt();
-		if (this.ifNumber == null)
-			this.ifNumber = ifNumber;
-		else {
-			if (this.ifNumber != ifNumber)
-				pdu = null;
-		}
 
 		Map<Integer, Interface> interfaces = new HashMap<Integer, Interface>();
 
@@ -409,68 +353,6 @@ public class SnmpQueryLogger extends AbstractLogger {
 		}
 	}
 
-	private void query() throws Exception {
-		Snmp snmp = this.snmp;
-		if (snmp == null) {
-			TransportMapping transport = new DefaultUdpTransportMapping(new UdpAddress());
-			transport.listen();
-			snmp = new Snmp(transport);
-		}
-
-		if (pdu != null) {
-			snmp.getBulk(pdu, commTarget, (this.snmp == null) ? snmp : null, listener);
-		} else {
-			ifNumber = null;
-			pdu = new PDU();
-			pdu.add(new VariableBinding(new OID(Interface.oidInterfaces)));
-			pdu.setType(PDU.GETBULK);
-			pdu.setMaxRepetitions(10);
-
-			TreeUtils treeUtils = new TreeUtils(snmp, new DefaultPDUFactory());
-			treeUtils.getSubtree(commTarget, Interface.oidInterfaces, (this.snmp == null) ? snmp : null, new TreeListener() {
-				private List<VariableBinding> results = new ArrayList<VariableBinding>();
-				private boolean finish = false;
-
-				@Override
-				public boolean next(TreeEvent event) {
-					if (event.getVariableBindings() != null) {
-						pdu.addAllOIDs(event.getVariableBindings());
-						for (VariableBinding vb : event.getVariableBindings())
-							results.add(vb);
-					}
-					return true;
-				}
-
-				@Override
-				public void finished(TreeEvent event) {
-					finish = true;
-					if (event.getVariableBindings() != null) {
-						pdu.addAllOIDs(event.getVariableBindings());
-						for (VariableBinding vb : event.getVariableBindings())
-							results.add(vb);
-					}
-					if (event.getUserObject() != null) {
-						try {
-							((Snmp) event.getUserObject()).close();
-						} catch (IOException e) {
-						}
-					}
-					parseResult(results);
-				}
-
-				@Override
-				public boolean isFinished() {
-					return finish;
-				}
-			});
-		}
-	}
-
-	@Override
-	protected ExecutorService getExecutor() {
-		return sender;
-	}
-
 	private static String deviceIp = null;
 	static {
 		try {
@@ -49,6 +49,7 @@ public class SnmpQueryLoggerFactory extends AbstractLoggerFactory {
 	private org.slf4j.Logger logger = LoggerFactory.getLogger(SnmpQueryLoggerFactory.class);
 	private TransportMapping transport;
 	private Snmp snmp;
+	private SnmpPoller poller;
 
 	public SnmpQueryLoggerFactory() {
 		try {
@@ -56,30 +57,42 @@ public class SnmpQueryLoggerFactory extends AbstractLoggerFactory {
 			transport.listen();
 			this.snmp = new Snmp(transport);
 		} catch (IOException e) {
-			logger.error("kraken snmpmon: ", e);
+			// every logger would fail to poll without shared transport
+			closeTransport();
+			throw new IllegalStateException("kraken snmpmon: cannot open snmp transport", e);
 		}
+		this.poller = new SnmpPoller(snmp);
 	}
 
 	@Validate
 	public void validate() {
-		SnmpQueryLogger.open();
+		poller.start();
 	}
 
 	@Invalidate
 	public void invalidate() {
-		SnmpQueryLogger.close();
+		logger.info("kraken snmpmon: poller stats [{}]", poller.getStats());
+		poller.stop();
+		closeTransport();
 		try {
-			if (transport != null)
-				transport.close();
+			if (snmp != null)
+				snmp.close();
 		} catch (IOException e) {
 		}
+	}
+
+	private void closeTransport() {
 		try {
-			if (snmp != null)
-				snmp.close();
+			if (transport != null)
+				transport.close();
 		} catch (IOException e) {
 		}
 	}
 
+	public SnmpPoller getPoller() {
+		return poller;
+	}
+
 	@Override
 	public String getName() {
 		return "snmpmon";
@@ -177,7 +190,7 @@ public class SnmpQueryLoggerFactory extends AbstractLoggerFactory {
 
 	public Logger createLogger(String name, String description, Properties config) {
 		SnmpQueryLogger logger = new SnmpQueryLogger("local", name, description, this, config);
-		logger.setSnmp(snmp);
+		logger.setPoller(poller);
 		return logger;
 	}
 
@@ -185,7 +198,7 @@ public class SnmpQueryLoggerFactory extends AbstractLoggerFactory {
 	protected Logger createLogger(LoggerSpecification spec) {
 		 SnmpQueryLogger logger = new SnmpQueryLogger(spec.getNamespace(), spec.getName(), spec.getDescription(), this,
 		 spec.getConfig());
-		 logger.setSnmp(snmp);
+		 logger.setPoller(poller);
 		 return logger;
 	}
 }
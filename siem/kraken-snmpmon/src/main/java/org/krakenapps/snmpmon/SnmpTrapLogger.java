@@ -1,6 +1,5 @@
 package org.krakenapps.snmpmon;
 
-import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -23,7 +22,7 @@ public class SnmpTrapLogger extends AbstractLogger {
 	public void push(SnmpTrap trap) {
 		Map<String, Object> m = new HashMap<String, Object>(trap.getVariableBindings());
 		m.put("generic_trap", toGenericTrapString(trap.getGenericTrap()));
-		write(new SimpleLog(new Date(), getFullName(), m));
+		write(new SimpleLog(trap.getDate(), getFullName(), m));
 	}
 
 	private String toGenericTrapString(int type) {
@@ -0,0 +1,231 @@
+package org.krakenapps.snmpmon;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.DatagramSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.snmp4j.CommunityTarget;
+import org.snmp4j.Snmp;
+import org.snmp4j.mp.SnmpConstants;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.OctetString;
+import org.snmp4j.smi.UdpAddress;
+import org.snmp4j.smi.VariableBinding;
+import org.snmp4j.transport.DefaultUdpTransportMapping;
+
+public class SnmpPollerTest {
+	private Snmp snmp;
+	private SnmpPoller poller;
+	private List<SnmpTestAgent> agents = new ArrayList<SnmpTestAgent>();
+
+	@Before
+	public void setup() throws IOException {
+		DefaultUdpTransportMapping transport = new DefaultUdpTransportMapping(new UdpAddress("127.0.0.1/0"));
+		snmp = new Snmp(transport);
+		snmp.listen();
+		poller = new SnmpPoller(snmp);
+	}
+
+	@After
+	public void teardown() throws IOException {
+		poller.stop();
+		snmp.close();
+		for (SnmpTestAgent agent : agents)
+			agent.stop();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNullSession() {
+		new SnmpPoller(null);
+	}
+
+	@Test
+	public void testWalk() throws Exception {
+		SnmpTestAgent agent = startAgent(48);
+		poller.start();
+
+		CommunityTarget target = target(agent.getPort(), 3000, 2);
+		Result r = poll(target);
+		assertTrue(r.await());
+		assertNotNull(r.results);
+
+		// ifNumber, then 22 columns of 48 rows in oid order
+		List<VariableBinding> results = r.results;
+		assertEquals(1 + 22 * 48, results.size());
+		assertEquals(new OID(Interface.oidInterfaces + ".1.0"), results.get(0).getOid());
+		assertEquals(48, results.get(0).getVariable().toInt());
+		for (int i = 1; i < results.size(); i++) {
+			int column = (i - 1) / 48 + 1;
+			int ifIndex = (i - 1) % 48 + 1;
+			assertEquals(new OID(Interface.oidIfTable + ".1." + column + "." + ifIndex), results.get(i).getOid());
+		}
+
+		// next poll walks each column in one request
+		assertEquals(49, poller.getMaxRepetitions(target));
+		int before = agent.getReceived();
+		r = poll(target);
+		assertTrue(r.await());
+		assertEquals(23, agent.getReceived() - before);
+
+		SnmpPollStats stats = poller.getStats(target);
+		assertEquals(2, stats.getPollCount());
+		assertEquals(0, stats.getTimeoutCount());
+	}
+
+	@Test
+	public void testTooBig() throws Exception {
+		SnmpTestAgent agent = startAgent(48);
+		agent.setMaxResponseSize(12);
+		poller.start();
+
+		CommunityTarget target = target(agent.getPort(), 3000, 2);
+		Result r = poll(target);
+		assertTrue(r.await());
+		assertEquals(1 + 22 * 48, r.results.size());
+
+		SnmpPollStats stats = poller.getStats(target);
+		assertTrue(stats.getTooBigCount() > 0);
+		assertTrue(poller.getMaxRepetitions(target) <= 12);
+
+		// limit is kept, no more tooBig
+		long tooBig = stats.getTooBigCount();
+		r = poll(target);
+		assertTrue(r.await());
+		assertEquals(1 + 22 * 48, r.results.size());
+		assertEquals(tooBig, stats.getTooBigCount());
+	}
+
+	@Test
+	public void testTimeout() throws Exception {
+		poller.start();
+
+		DatagramSocket silent = new DatagramSocket(0);
+		try {
+			CommunityTarget target = target(silent.getLocalPort(), 200, 0);
+			Result r = poll(target);
+			assertTrue(r.await());
+			assertTrue(r.timeout);
+			assertEquals(1, poller.getStats(target).getTimeoutCount());
+		} finally {
+			silent.close();
+		}
+	}
+
+	@Test
+	public void testSkipOverlappedPoll() throws Exception {
+		SnmpTestAgent agent = startAgent(4);
+		agent.setDelay(50);
+		poller.start();
+
+		CommunityTarget target = target(agent.getPort(), 3000, 0);
+		Result r = poll(target);
+		assertFalse(poller.poll(target, new Result()));
+		assertTrue(r.await());
+		assertEquals(1, poller.getStats(target).getSkipCount());
+		assertEquals(1, poller.getStats(target).getPollCount());
+	}
+
+	@Test
+	public void testTargetRate() throws Exception {
+		SnmpTestAgent agent = startAgent(4);
+		poller.setTargetRate(20);
+		poller.start();
+
+		// 23 requests paced by 50ms
+		CommunityTarget target = target(agent.getPort(), 3000, 0);
+		long begin = System.currentTimeMillis();
+		Result r = poll(target);
+		assertTrue(r.await());
+		long elapsed = System.currentTimeMillis() - begin;
+		assertTrue("elapsed " + elapsed, elapsed >= 1000);
+	}
+
+	@Test
+	public void testThroughput() throws Exception {
+		// 20 agents, 10 polls each
+		List<CommunityTarget> targets = new ArrayList<CommunityTarget>();
+		for (int i = 0; i < 20; i++)
+			targets.add(target(startAgent(48).getPort(), 3000, 2));
+		poller.start();
+
+		long begin = System.currentTimeMillis();
+		for (int round = 0; round < 10; round++) {
+			List<Result> results = new ArrayList<Result>();
+			for (CommunityTarget target : targets)
+				results.add(poll(target));
+			for (Result r : results) {
+				assertTrue(r.await());
+				assertEquals(1 + 22 * 48, r.results.size());
+			}
+		}
+		long elapsed = Math.max(1, System.currentTimeMillis() - begin);
+
+		SnmpPollStats stats = poller.getStats();
+		assertEquals(200, stats.getPollCount());
+		assertEquals(0, stats.getTimeoutCount());
+		System.out.println(String.format("snmp poller: %d polls/s, %s", 200 * 1000L / elapsed, stats));
+	}
+
+	private SnmpTestAgent startAgent(int interfaceCount) throws IOException {
+		SnmpTestAgent agent = new SnmpTestAgent(interfaceCount);
+		agent.start();
+		agents.add(agent);
+		return agent;
+	}
+
+	private CommunityTarget target(int port, int timeout, int retries) {
+		CommunityTarget target = new CommunityTarget();
+		target.setCommunity(new OctetString("public"));
+		target.setVersion(SnmpConstants.version2c);
+		target.setAddress(new UdpAddress("127.0.0.1/" + port));
+		target.setTimeout(timeout);
+		target.setRetries(retries);
+		return target;
+	}
+
+	private Result poll(CommunityTarget target) {
+		Result r = new Result();
+		assertTrue(poller.poll(target, r));
+		return r;
+	}
+
+	private static class Result implements SnmpPollCallback {
+		private CountDownLatch done = new CountDownLatch(1);
+		private List<VariableBinding> results;
+		private boolean timeout;
+		private Exception error;
+
+		public boolean await() throws InterruptedException {
+			return done.await(10, TimeUnit.SECONDS);
+		}
+
+		@Override
+		public void onPoll(List<VariableBinding> results) {
+			this.results = results;
+			done.countDown();
+		}
+
+		@Override
+		public void onTimeout() {
+			timeout = true;
+			done.countDown();
+		}
+
+		@Override
+		public void onError(Exception e) {
+			error = e;
+			done.countDown();
+		}
+	}
+}
@@ -0,0 +1,153 @@
+package org.krakenapps.snmpmon;
+
+import java.io.IOException;
+import java.net.DatagramSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.snmp4j.CommandResponder;
+import org.snmp4j.CommandResponderEvent;
+import org.snmp4j.MessageException;
+import org.snmp4j.PDU;
+import org.snmp4j.Snmp;
+import org.snmp4j.mp.StatusInformation;
+import org.snmp4j.smi.Counter32;
+import org.snmp4j.smi.Gauge32;
+import org.snmp4j.smi.Integer32;
+import org.snmp4j.smi.Null;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.OctetString;
+import org.snmp4j.smi.TimeTicks;
+import org.snmp4j.smi.UdpAddress;
+import org.snmp4j.smi.Variable;
+import org.snmp4j.smi.VariableBinding;
+import org.snmp4j.transport.DefaultUdpTransportMapping;
+
+/**
+ * In-process snmp agent which serves interfaces group of given number of
+ * ethernet interfaces.
+ */
+public class SnmpTestAgent implements CommandResponder {
+	private TreeMap<OID, Variable> mib = new TreeMap<OID, Variable>();
+	private Snmp snmp;
+	private int port;
+	private AtomicInteger received = new AtomicInteger();
+	private volatile int maxResponseSize = Integer.MAX_VALUE;
+	private volatile int delay;
+
+	public SnmpTestAgent(int interfaceCount) {
+		mib.put(new OID(Interface.oidInterfaces + ".1.0"), new Integer32(interfaceCount));
+		for (int i = 1; i <= interfaceCount; i++) {
+			put(1, i, new Integer32(i));
+			put(2, i, new OctetString("eth" + i));
+			put(3, i, new Integer32(6));
+			put(4, i, new Integer32(1500));
+			put(5, i, new Gauge32(1000000000L));
+			put(6, i, new OctetString("00:00:00:00:00:" + i));
+			put(7, i, new Integer32(1));
+			put(8, i, new Integer32(1));
+			put(9, i, new TimeTicks(0));
+			for (int c = 10; c <= 20; c++)
+				put(c, i, new Counter32(i * 1000L + c));
+			put(21, i, new Gauge32(0));
+			put(22, i, new OID("0.0"));
+		}
+	}
+
+	private void put(int column, int ifIndex, Variable value) {
+		mib.put(new OID(Interface.oidIfTable + ".1." + column + "." + ifIndex), value);
+	}
+
+	public void start() throws IOException {
+		DatagramSocket s = new DatagramSocket(0);
+		port = s.getLocalPort();
+		s.close();
+
+		snmp = new Snmp(new DefaultUdpTransportMapping(new UdpAddress("127.0.0.1/" + port)));
+		snmp.addCommandResponder(this);
+		snmp.listen();
+	}
+
+	public void stop() throws IOException {
+		snmp.close();
+	}
+
+	public int getPort() {
+		return port;
+	}
+
+	public int getReceived() {
+		return received.get();
+	}
+
+	/**
+	 * Responses with more variable bindings than max size are answered with
+	 * tooBig error.
+	 */
+	public void setMaxResponseSize(int maxResponseSize) {
+		this.maxResponseSize = maxResponseSize;
+	}
+
+	public void setDelay(int delay) {
+		this.delay = delay;
+	}
+
+	@Override
+	public void processPdu(CommandResponderEvent e) {
+		PDU request = e.getPDU();
+		if (request == null)
+			return;
+
+		received.incrementAndGet();
+		if (delay > 0) {
+			try {
+				Thread.sleep(delay);
+			} catch (InterruptedException ex) {
+			}
+		}
+
+		// read before response, bulk fields share error status and index
+		int type = request.getType();
+		int maxRepetitions = request.getMaxRepetitions();
+		List<VariableBinding> out = new ArrayList<VariableBinding>();
+		for (int i = 0; i < request.size(); i++) {
+			OID oid = request.get(i).getOid();
+			if (type == PDU.GET) {
+				Variable v = mib.get(oid);
+				out.add(new VariableBinding(oid, v != null ? v : Null.noSuchObject));
+			} else {
+				int count = type == PDU.GETBULK ? Math.max(1, maxRepetitions) : 1;
+				for (int n = 0; n < count; n++) {
+					Entry<OID, Variable> next = mib.higherEntry(oid);
+					if (next == null) {
+						out.add(new VariableBinding(oid, Null.endOfMibView));
+						break;
+					}
+					out.add(new VariableBinding(next.getKey(), next.getValue()));
+					oid = next.getKey();
+				}
+			}
+		}
+
+		PDU response = new PDU();
+		response.setType(PDU.RESPONSE);
+		response.setRequestID(request.getRequestID());
+		if (out.size() > maxResponseSize) {
+			response.setErrorStatus(PDU.tooBig);
+		} else {
+			for (VariableBinding vb : out)
+				response.add(vb);
+		}
+
+		try {
+			e.getMessageDispatcher().returnResponsePdu(e.getMessageProcessingModel(), e.getSecurityModel(),
+					e.getSecurityName(), e.getSecurityLevel(), response, e.getMaxSizeResponsePDU(),
+					e.getStateReference(), new StatusInformation());
+		} catch (MessageException ex) {
+		}
+		e.setProcessed(true);
+	}
+}
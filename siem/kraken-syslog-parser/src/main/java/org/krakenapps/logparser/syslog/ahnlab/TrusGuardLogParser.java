@@ -1,16 +1,18 @@
 package org.krakenapps.logparser.syslog.ahnlab;
 
 import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Scanner;
 
+import org.krakenapps.log.api.FastDateParser;
 import org.krakenapps.log.api.LogParser;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public class TrusGuardLogParser implements LogParser {
+	private static final FastDateParser dateFormat = new FastDateParser("yyyyMMdd HH:mm:ss");
+
 	private final Logger logger = LoggerFactory.getLogger(TrusGuardLogParser.class.getName());
 
 	@Override
@@ -48,7 +50,6 @@ public class TrusGuardLogParser implements LogParser {
 
 	private void parseFirewallLog(Scanner scanner, Map<String, Object> m) {
 		// log data
-		SimpleDateFormat dateFormat = new SimpleDateFormat("yyyyMMdd HH:mm:ss");
 		String dateToken = scanner.next();
 		String timeToken = scanner.next();
 		try {
@@ -93,7 +94,6 @@ public class TrusGuardLogParser implements LogParser {
 		m.put("module_flag", moduleFlag);
 
 		// log data
-		SimpleDateFormat dateFormat = new SimpleDateFormat("yyyyMMdd HH:mm:ss");
 		String dateToken = scanner.next();
 		String timeToken = scanner.next();
 		try {
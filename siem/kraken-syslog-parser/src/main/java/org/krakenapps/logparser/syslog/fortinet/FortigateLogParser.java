@@ -15,17 +15,29 @@
  */
 package org.krakenapps.logparser.syslog.fortinet;
 
+import java.util.HashMap;
 import java.util.Map;
 
+import org.krakenapps.log.api.FieldSink;
+import org.krakenapps.log.api.KeyTable;
 import org.krakenapps.log.api.LogParser;
-import org.krakenapps.util.QuotedKeyValueParser;
+import org.krakenapps.log.api.LogTokenizer;
+import org.krakenapps.log.api.MapFieldSink;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public class FortigateLogParser implements LogParser {
+	private static final KeyTable KEYS = new KeyTable("date", "time", "devname", "device_id", "log_id", "type", "subtype",
+			"pri", "vd", "status", "policyid", "dst_country", "src_country", "dir_disp", "tran_disp", "src", "src_name",
+			"src_port", "src_int", "dst", "dst_name", "dst_port", "dst_int", "tran_ip", "tran_port", "tran_sip",
+			"tran_sport", "service", "proto", "app_type", "duration", "rule", "policy_id", "identidx", "sent", "rcvd",
+			"sent_pkt", "rcvd_pkt", "vpn", "shaper_drop_sent", "shaper_drop_rcvd", "perip_drop", "shaper_sent_name",
+			"shaper_rcvd_name", "perip_name", "user", "group", "msg", "count", "severity", "attack_id", "attack_name",
+			"icmp_id", "icmp_type", "icmp_code", "ref", "sensor", "url", "hostname", "carrier_ep", "profile", "reason",
+			"action", "virus", "file", "quarskip", "catdesc", "cat", "req_type", "dtype", "sn", "logid");
+
 	private Logger logger = LoggerFactory.getLogger(this.getClass());
 
-	@SuppressWarnings("unchecked")
 	@Override
 	public Map<String, Object> parse(Map<String, Object> params) {
 		Integer severity = (Integer) params.get("severity");
@@ -33,7 +45,8 @@ public class FortigateLogParser implements LogParser {
 
 		String line = (String) params.get("msg");
 		try {
-			Map<String, Object> map = (Map<String, Object>) (Object) QuotedKeyValueParser.parse(line);
+			Map<String, Object> map = new HashMap<String, Object>(128);
+			parse(line, new MapFieldSink(map));
 
 			map.put("severity", severity);
 			map.put("facility", (Integer) params.get("facility"));
@@ -44,4 +57,19 @@ public class FortigateLogParser implements LogParser {
 		}
 		return null;
 	}
+
+	/**
+	 * Emits key=value pairs of fortigate log. Values can contain single or
+	 * double quoted segments.
+	 */
+	public static void parse(CharSequence line, FieldSink sink) {
+		LogTokenizer t = new LogTokenizer(line);
+		while (t.nextKey('=')) {
+			String key = t.token(KEYS);
+			if (t.atEnd())
+				break;
+
+			sink.onString(key, t.nextQuotedValue());
+		}
+	}
 }
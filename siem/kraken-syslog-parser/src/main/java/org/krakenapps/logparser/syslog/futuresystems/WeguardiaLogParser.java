@@ -1,11 +1,11 @@
 package org.krakenapps.logparser.syslog.futuresystems;
 
 import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Map;
 
 import org.krakenapps.log.api.DelimiterParser;
+import org.krakenapps.log.api.FastDateParser;
 import org.krakenapps.log.api.LogParser;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -15,15 +15,17 @@ public class WeguardiaLogParser implements LogParser {
 			"dip", "nat_dip", "dport", "nat_dport", "protocol", "logtype", "act", "severity", "product", "note", "count",
 			"category", "rule", "group_id", "usage", "user", "iface" };
 
+	private static final DelimiterParser delimiterParser = new DelimiterParser(";", columnHeaders);
+	private static final FastDateParser dateFormat = new FastDateParser("yyyyMMdd HHmmss");
+
 	private final Logger logger = LoggerFactory.getLogger(WeguardiaLogParser.class.getName());
 
 	@Override
 	public Map<String, Object> parse(Map<String, Object> params) {
 		try {
-			Map<String, Object> m = new DelimiterParser(";", columnHeaders).parse(params);
+			Map<String, Object> m = delimiterParser.parse(params);
 
 			// parse date
-			SimpleDateFormat dateFormat = new SimpleDateFormat("yyyyMMdd HHmmss");
 			Date d = dateFormat.parse((String) m.get("date"));
 			m.put("date", d);
 
@@ -3,56 +3,41 @@ package org.krakenapps.logparser.syslog.internal;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.krakenapps.log.api.FieldSink;
+import org.krakenapps.log.api.KeyTable;
+import org.krakenapps.log.api.LogTokenizer;
+import org.krakenapps.log.api.MapFieldSink;
+
+/**
+ * Parses space separated key=value pairs. Value can be double quoted.
+ */
 public class KeyValueParser {
+	private static final KeyTable EMPTY_KEYS = new KeyTable();
+
 	private KeyValueParser() {
 	}
 
 	public static Map<String, Object> parse(String line) {
-		int lineLength = line.length();
-		Map<String, Object> m = new HashMap<String, Object>();
-
-		int keyBegin = 0;
-		while (true) {
-			int keyEnd = line.indexOf('=', keyBegin);
-			if (keyEnd > 0) {
-				String key = line.substring(keyBegin, keyEnd);
-
-				if (keyEnd >= lineLength - 1) {
-					m.put(key, null);
-				} else if (line.charAt(keyEnd + 1) == '\"') {
-					int valueBegin = keyEnd + 2;
-					int valueEnd = line.indexOf('\"', keyEnd + 2);
-					String value = line.substring(valueBegin, valueEnd);
-					m.put(key, value);
-
-					// skip spaces
-					keyBegin = valueEnd + 1;
-					if (keyBegin >= lineLength - 1)
-						break;
-
-					while (line.charAt(keyBegin) == ' ')
-						keyBegin++;
-				} else {
-					int valueBegin = keyBegin + key.length() + 1;
-					int valueEnd = line.indexOf(' ', valueBegin);
-					String value = line.substring(valueBegin, valueEnd);
-					m.put(key, value);
-
-					// skip spaces
-					keyBegin = valueEnd + 1;
-					if (keyBegin >= lineLength - 1)
-						break;
-
-					while (line.charAt(keyBegin) == ' ')
-						keyBegin++;
-				}
-
-				if (keyBegin >= lineLength - 1)
-					break;
-			} else
+		return parse(line, EMPTY_KEYS);
+	}
+
+	public static Map<String, Object> parse(String line, KeyTable keys) {
+		MapFieldSink sink = new MapFieldSink(new HashMap<String, Object>());
+		parse(line, keys, sink);
+		return sink.getMap();
+	}
+
+	public static void parse(CharSequence line, KeyTable keys, FieldSink sink) {
+		LogTokenizer t = new LogTokenizer(line);
+		while (t.nextKey('=')) {
+			String key = t.token(keys);
+			if (t.atEnd()) {
+				sink.onNull(key);
 				break;
-		}
+			}
 
-		return m;
+			t.nextValue(' ', '\"');
+			sink.onString(key, t.token());
+		}
 	}
 }
@@ -15,13 +15,27 @@
  */
 package org.krakenapps.logparser.syslog.internal;
 
+import java.io.UnsupportedEncodingException;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
+import org.krakenapps.ahocorasick.AhoCorasickSearch;
+import org.krakenapps.ahocorasick.Pair;
+import org.krakenapps.ahocorasick.Pattern;
+import org.krakenapps.ahocorasick.SearchContext;
+
+/**
+ * Finds objects whose fingerprints are contained in text. All fingerprints
+ * are compiled into single aho-corasick automaton, so that one pass over the
+ * text yields all candidates. Automaton is rebuilt at next find() after
+ * registration.
+ */
 public class PatternFinder<T> {
 	private ConcurrentMap<String, Set<T>> map = new ConcurrentHashMap<String, Set<T>>();
+	private volatile AhoCorasickSearch acm;
 
 	private PatternFinder() {
 	}
@@ -38,7 +52,11 @@ public class PatternFinder<T> {
 			if (oldSet != null)
 				set = oldSet;
 		}
-		set.add(object);
+
+		synchronized (this) {
+			set.add(object);
+			acm = null;
+		}
 	}
 
 	public Set<String> fingetPrints() {
@@ -53,15 +71,75 @@ public class PatternFinder<T> {
 		return find(text, offset, text.length());
 	}
 
+	/**
+	 * @param limit
+	 *            end index of text region, exclusive
+	 */
+	@SuppressWarnings("unchecked")
 	public Set<T> find(String text, int offset, int limit) {
-		Set<String> keySet = map.keySet();
+		AhoCorasickSearch s = acm;
+		if (s == null)
+			s = compile();
+
+		String region = (offset == 0 && limit == text.length()) ? text : text.substring(offset, limit);
+		SearchContext ctx = new SearchContext();
+		ctx.setIncludeFailurePatterns(true);
+		List<Pair> pairs = s.search(encode(region), ctx);
+
 		Set<T> result = new HashSet<T>();
+		for (Pair p : pairs)
+			result.addAll(((FingerPrint<T>) p.getPattern()).objects);
 
-		for (String fingerPrint : keySet) {
-			if (text.contains(fingerPrint)) {
-				result.addAll(map.get(fingerPrint));
+		// empty fingerprint is contained in any text
+		Set<T> any = map.get("");
+		if (any != null) {
+			synchronized (this) {
+				result.addAll(any);
 			}
 		}
+
 		return result;
 	}
+
+	private synchronized AhoCorasickSearch compile() {
+		if (acm != null)
+			return acm;
+
+		AhoCorasickSearch s = new AhoCorasickSearch();
+		for (String fingerPrint : map.keySet()) {
+			if (fingerPrint.isEmpty())
+				continue;
+
+			Set<T> objects = new HashSet<T>(map.get(fingerPrint));
+			s.addKeyword(new FingerPrint<T>(encode(fingerPrint), objects));
+		}
+		s.compile();
+
+		acm = s;
+		return s;
+	}
+
+	private static byte[] encode(String s) {
+		// utf-8 is self-synchronizing, byte match implies character match
+		try {
+			return s.getBytes("utf-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static class FingerPrint<T> implements Pattern {
+		private byte[] keyword;
+		private Set<T> objects;
+
+		public FingerPrint(byte[] keyword, Set<T> objects) {
+			this.keyword = keyword;
+			this.objects = objects;
+		}
+
+		@Override
+		public byte[] getKeyword() {
+			return keyword;
+		}
+	}
 }
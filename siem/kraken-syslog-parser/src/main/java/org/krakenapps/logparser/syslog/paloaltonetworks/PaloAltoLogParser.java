@@ -15,12 +15,13 @@
  */
 package org.krakenapps.logparser.syslog.paloaltonetworks;
 
-import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
+import org.krakenapps.log.api.FieldSink;
 import org.krakenapps.log.api.LogParser;
+import org.krakenapps.log.api.LogTokenizer;
+import org.krakenapps.log.api.MapFieldSink;
 
 /**
  * Log Parser for Palo Alto Networks PA Series
@@ -29,149 +30,127 @@ import org.krakenapps.log.api.LogParser;
  * 
  */
 public class PaloAltoLogParser implements LogParser {
+	private static final int TYPE_COLUMN = 3;
+
+	private static final Schema TRAFFIC = new Schema().string(1, "recv_time").string(2, "serial").string(3, "type")
+			.string(4, "subtype").string(7, "src_ip").string(8, "dst_ip").string(9, "nat_src_ip").string(10, "nat_dst_ip")
+			.string(11, "rule").string(12, "src_user").string(13, "dst_user").string(14, "application")
+			.string(15, "virtual_system").string(16, "src_zone").string(17, "dst_zone").string(18, "in_iface")
+			.string(19, "out_iface").string(20, "log_profile").string(22, "session_id").integer(23, "repeat")
+			.integer(24, "src_port").integer(25, "dst_port").integer(26, "nat_src_port").integer(27, "nat_dst_port")
+			.string(28, "flags").string(29, "protocol").string(30, "action").longInteger(31, "bytes")
+			.longInteger(34, "packets").string(35, "start_time").integer(36, "elapsed_time").string(37, "category");
+
+	private static final Schema THREAT = new Schema().string(1, "recv_time").string(2, "serial").string(3, "type")
+			.string(4, "subtype").string(7, "src_ip").string(8, "dst_ip").string(9, "nat_src_ip").string(10, "nat_dst_ip")
+			.string(11, "rule").string(12, "src_user").string(13, "dst_user").string(14, "application")
+			.string(15, "virtual_system").string(16, "src_zone").string(17, "dst_zone").string(18, "in_iface")
+			.string(19, "out_iface").string(20, "log_profile").string(22, "session_id").integer(23, "repeat")
+			.integer(24, "src_port").integer(25, "dst_port").integer(26, "nat_src_port").integer(27, "nat_dst_port")
+			.string(28, "flags").string(29, "protocol").string(30, "action").quoted(31, "misc").string(32, "threat_id")
+			.string(33, "category").string(34, "severity").string(35, "direction");
+
+	private static final Schema CONFIG = new Schema().string(1, "recv_time").string(2, "serial").string(3, "type")
+			.string(4, "subtype").string(7, "host").string(8, "virtual_system").string(9, "command").string(10, "admin")
+			.string(11, "client").string(12, "result").string(13, "config_path");
+
+	private static final Schema SYSTEM = new Schema().string(1, "recv_time").string(2, "serial").string(3, "type")
+			.string(4, "subtype").string(7, "virtual_system").string(8, "event_id").string(9, "object")
+			.string(12, "module").string(13, "severity").string(14, "description");
 
 	@Override
 	public Map<String, Object> parse(Map<String, Object> params) {
 		String line = (String) params.get("line");
 
-		List<String> tokens = tokenize(line);
-		String type = tokens.get(3);
-		if (type.equals("TRAFFIC"))
-			return decodeTrafficLog(tokens);
-		else if (type.equals("THREAT"))
-			return decodeThreatLog(tokens);
-		else if (type.equals("CONFIG"))
-			return decodeConfigLog(tokens);
-		else if (type.equals("SYSTEM"))
-			return decodeSystemLog(tokens);
-
-		return null;
+		Map<String, Object> m = new HashMap<String, Object>(64);
+		if (!parse(line, new MapFieldSink(m)))
+			return null;
+		return m;
 	}
 
-	private List<String> tokenize(String line) {
-		List<String> l = new ArrayList<String>();
-
-		int offset = 0;
-
-		while (true) {
-			int pos = line.indexOf(',', offset);
-			if (pos < 0) {
-				l.add(line.substring(offset));
+	/**
+	 * Emits typed fields of PA series log.
+	 * 
+	 * @return false if log type is not supported or columns are missing
+	 */
+	public static boolean parse(CharSequence line, FieldSink sink) {
+		LogTokenizer t = new LogTokenizer(line);
+		if (!t.skip(',', TYPE_COLUMN + 1))
+			return false;
+
+		Schema schema = null;
+		if (t.tokenEquals("TRAFFIC"))
+			schema = TRAFFIC;
+		else if (t.tokenEquals("THREAT"))
+			schema = THREAT;
+		else if (t.tokenEquals("CONFIG"))
+			schema = CONFIG;
+		else if (t.tokenEquals("SYSTEM"))
+			schema = SYSTEM;
+		else
+			return false;
+
+		// columns before type are scanned again with schema
+		t.reset(line);
+		for (int i = 0; i <= schema.lastColumn; i++) {
+			if (!t.next(','))
+				return false;
+
+			String key = schema.keys[i];
+			if (key == null)
+				continue;
+
+			switch (schema.types[i]) {
+			case Schema.STRING:
+				sink.onString(key, t.token());
+				break;
+			case Schema.INT:
+				sink.onInt(key, t.tokenInt());
+				break;
+			case Schema.LONG:
+				sink.onLong(key, t.tokenLong());
+				break;
+			case Schema.QUOTED:
+				String s = t.token();
+				sink.onString(key, s.substring(1, s.length() - 1));
 				break;
 			}
-
-			l.add(line.substring(offset, pos));
-			offset = pos + 1;
 		}
 
-		return l;
+		return true;
 	}
 
-	private Map<String, Object> decodeTrafficLog(List<String> tokens) {
-		Map<String, Object> m = new HashMap<String, Object>();
-		m.put("recv_time", tokens.get(1));
-		m.put("serial", tokens.get(2));
-		m.put("type", tokens.get(3));
-		m.put("subtype", tokens.get(4));
-		m.put("src_ip", tokens.get(7));
-		m.put("dst_ip", tokens.get(8));
-		m.put("nat_src_ip", tokens.get(9));
-		m.put("nat_dst_ip", tokens.get(10));
-		m.put("rule", tokens.get(11));
-		m.put("src_user", tokens.get(12));
-		m.put("dst_user", tokens.get(13));
-		m.put("application", tokens.get(14));
-		m.put("virtual_system", tokens.get(15));
-		m.put("src_zone", tokens.get(16));
-		m.put("dst_zone", tokens.get(17));
-		m.put("in_iface", tokens.get(18));
-		m.put("out_iface", tokens.get(19));
-		m.put("log_profile", tokens.get(20));
-		m.put("session_id", tokens.get(22));
-		m.put("repeat", Integer.valueOf(tokens.get(23)));
-		m.put("src_port", Integer.valueOf(tokens.get(24)));
-		m.put("dst_port", Integer.valueOf(tokens.get(25)));
-		m.put("nat_src_port", Integer.valueOf(tokens.get(26)));
-		m.put("nat_dst_port", Integer.valueOf(tokens.get(27)));
-		m.put("flags", tokens.get(28));
-		m.put("protocol", tokens.get(29));
-		m.put("action", tokens.get(30));
-		m.put("bytes", Long.valueOf(tokens.get(31)));
-		m.put("packets", Long.valueOf(tokens.get(34)));
-		m.put("start_time", tokens.get(35));
-		m.put("elapsed_time", Integer.valueOf(tokens.get(36)));
-		m.put("category", tokens.get(37));
+	private static class Schema {
+		private static final int STRING = 0;
+		private static final int INT = 1;
+		private static final int LONG = 2;
+		private static final int QUOTED = 3;
 
-		return m;
-	}
+		private String[] keys = new String[64];
+		private int[] types = new int[64];
+		private int lastColumn;
 
-	private Map<String, Object> decodeThreatLog(List<String> tokens) {
-		Map<String, Object> m = new HashMap<String, Object>();
-		m.put("recv_time", tokens.get(1));
-		m.put("serial", tokens.get(2));
-		m.put("type", tokens.get(3));
-		m.put("subtype", tokens.get(4));
-		m.put("src_ip", tokens.get(7));
-		m.put("dst_ip", tokens.get(8));
-		m.put("nat_src_ip", tokens.get(9));
-		m.put("nat_dst_ip", tokens.get(10));
-		m.put("rule", tokens.get(11));
-		m.put("src_user", tokens.get(12));
-		m.put("dst_user", tokens.get(13));
-		m.put("application", tokens.get(14));
-		m.put("virtual_system", tokens.get(15));
-		m.put("src_zone", tokens.get(16));
-		m.put("dst_zone", tokens.get(17));
-		m.put("in_iface", tokens.get(18));
-		m.put("out_iface", tokens.get(19));
-		m.put("log_profile", tokens.get(20));
-		m.put("session_id", tokens.get(22));
-		m.put("repeat", Integer.valueOf(tokens.get(23)));
-		m.put("src_port", Integer.valueOf(tokens.get(24)));
-		m.put("dst_port", Integer.valueOf(tokens.get(25)));
-		m.put("nat_src_port", Integer.valueOf(tokens.get(26)));
-		m.put("nat_dst_port", Integer.valueOf(tokens.get(27)));
-		m.put("flags", tokens.get(28));
-		m.put("protocol", tokens.get(29));
-		m.put("action", tokens.get(30));
-		String misc = tokens.get(31);
-		m.put("misc", misc.substring(1, misc.length() - 1));
-		m.put("threat_id", tokens.get(32));
-		m.put("category", tokens.get(33));
-		m.put("severity", tokens.get(34));
-		m.put("direction", tokens.get(35));
-		return m;
-	}
+		public Schema string(int column, String key) {
+			return add(column, key, STRING);
+		}
 
-	private Map<String, Object> decodeConfigLog(List<String> tokens) {
-		Map<String, Object> m = new HashMap<String, Object>();
-		m.put("recv_time", tokens.get(1));
-		m.put("serial", tokens.get(2));
-		m.put("type", tokens.get(3));
-		m.put("subtype", tokens.get(4));
-		m.put("host", tokens.get(7));
-		m.put("virtual_system", tokens.get(8));
-		m.put("command", tokens.get(9));
-		m.put("admin", tokens.get(10));
-		m.put("client", tokens.get(11));
-		m.put("result", tokens.get(12));
-		m.put("config_path", tokens.get(13));
-		return m;
-	}
+		public Schema integer(int column, String key) {
+			return add(column, key, INT);
+		}
 
-	private Map<String, Object> decodeSystemLog(List<String> tokens) {
-		Map<String, Object> m = new HashMap<String, Object>();
-		m.put("recv_time", tokens.get(1));
-		m.put("serial", tokens.get(2));
-		m.put("type", tokens.get(3));
-		m.put("subtype", tokens.get(4));
-		m.put("virtual_system", tokens.get(7));
-		m.put("event_id", tokens.get(8));
-		m.put("object", tokens.get(9));
-		m.put("module", tokens.get(12));
-		m.put("severity", tokens.get(13));
-		m.put("description", tokens.get(14));
-		return m;
-	}
+		public Schema longInteger(int column, String key) {
+			return add(column, key, LONG);
+		}
+
+		public Schema quoted(int column, String key) {
+			return add(column, key, QUOTED);
+		}
 
+		private Schema add(int column, String key, int type) {
+			keys[column] = key;
+			types[column] = type;
+			lastColumn = Math.max(lastColumn, column);
+			return this;
+		}
+	}
 }
@@ -17,13 +17,17 @@ package org.krakenapps.logparser.syslog.xnsystems;
 
 import java.util.Map;
 
+import org.krakenapps.log.api.KeyTable;
 import org.krakenapps.log.api.LogParser;
 import org.krakenapps.logparser.syslog.internal.KeyValueParser;
 
 public class NeoboxLogParser implements LogParser {
+	private static final KeyTable KEYS = new KeyTable("xnkey", "code", "xnid", "class", "subclass", "level", "subject",
+			"result", "msg");
+
 	@Override
 	public Map<String, Object> parse(Map<String, Object> params) {
-		Map<String, Object> m = KeyValueParser.parse((String) params.get("line"));
+		Map<String, Object> m = KeyValueParser.parse((String) params.get("line"), KEYS);
 		if (m == null)
 			return null;
 
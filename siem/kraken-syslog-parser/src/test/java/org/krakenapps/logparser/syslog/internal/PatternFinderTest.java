@@ -0,0 +1,157 @@
+package org.krakenapps.logparser.syslog.internal;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+import org.krakenapps.logparser.syslog.juniper.attack.JuniperAttackLogParser;
+
+import static org.junit.Assert.*;
+
+public class PatternFinderTest {
+	private static final String FORMAT_FILE = "src/main/resources/org/krakenapps/logparser/syslog/juniper/attack/attack_log_format.txt";
+
+	@Test
+	public void testFind() {
+		PatternFinder<String> finder = PatternFinder.newInstance();
+		finder.register("flood! From ", "syn");
+		finder.register("SYN flood! From ", "syn-full");
+		finder.register("flood", "any-flood");
+		finder.register("침입", "korean");
+
+		assertEquals(set("syn", "syn-full", "any-flood"), finder.find("SYN flood! From 1.1.1.1:1 to 2.2.2.2:2"));
+		assertEquals(set("any-flood"), finder.find("ICMP flooding"));
+		assertEquals(set("korean"), finder.find("침입 탐지"));
+		assertEquals(set(), finder.find("Teardrop attack!"));
+
+		// region
+		assertEquals(set(), finder.find("SYN flood! From ", 4, 8));
+		assertEquals(set("any-flood"), finder.find("SYN flood! From ", 4, 9));
+	}
+
+	@Test
+	public void testRebuildAfterRegister() {
+		PatternFinder<String> finder = PatternFinder.newInstance();
+		finder.register("alpha", "a");
+		assertEquals(set("a"), finder.find("alpha beta"));
+
+		finder.register("beta", "b");
+		finder.register("alpha", "a2");
+		assertEquals(set("a", "a2", "b"), finder.find("alpha beta"));
+
+		finder.register("", "empty");
+		assertEquals(set("empty"), finder.find("gamma"));
+	}
+
+	@Test
+	public void testJuniperThroughput() throws IOException {
+		List<String> patterns = loadPatternStrings();
+		List<String> samples = new ArrayList<String>();
+		for (String pattern : patterns)
+			samples.add(fill(pattern));
+
+		JuniperAttackLogParser parser = JuniperAttackLogParser.newInstance(new FileReader(new File(FORMAT_FILE)));
+		Set<String> fingerPrints = new HashSet<String>(parser.getPatternKeySet());
+
+		int count = 200000;
+		String[] corpus = new String[count];
+		for (int i = 0; i < count; i++)
+			corpus[i] = samples.get(i % samples.size());
+
+		long begin = System.nanoTime();
+		int parsed = 0;
+		for (String line : corpus)
+			if (parser.parse(line) != null)
+				parsed++;
+		long parse = System.nanoTime() - begin;
+
+		System.out.println(String.format("juniper attack corpus: %d lines, parse: %d lines/s (%d parsed)", count,
+				rate(count, parse), parsed));
+
+		benchmark(fingerPrints, samples, corpus);
+
+		// signature set of full attack database
+		for (int i = 0; i < 3000; i++)
+			fingerPrints.add("Custom attack " + i + "! From ");
+
+		benchmark(fingerPrints, samples, corpus);
+	}
+
+	private void benchmark(Set<String> fingerPrints, List<String> samples, String[] corpus) {
+		PatternFinder<String> finder = PatternFinder.newInstance();
+		for (String fingerPrint : fingerPrints)
+			finder.register(fingerPrint, fingerPrint);
+
+		for (String sample : samples)
+			assertFalse(sample, finder.find(sample).isEmpty());
+
+		// warm up
+		for (int i = 0; i < 10000; i++) {
+			finder.find(corpus[i]);
+			containsScan(fingerPrints, corpus[i]);
+		}
+
+		long begin = System.nanoTime();
+		long found = 0;
+		for (String line : corpus)
+			found += finder.find(line).size();
+		long automaton = System.nanoTime() - begin;
+
+		int count = Math.min(corpus.length, 1000000000 / (fingerPrints.size() * 100));
+		begin = System.nanoTime();
+		long scanned = 0;
+		for (int i = 0; i < count; i++)
+			scanned += containsScan(fingerPrints, corpus[i]);
+		long scan = System.nanoTime() - begin;
+
+		if (count == corpus.length)
+			assertEquals(scanned, found);
+
+		System.out.println(String.format("%d fingerprints, automaton find: %d lines/s, contains scan: %d lines/s",
+				fingerPrints.size(), rate(corpus.length, automaton), rate(count, scan)));
+	}
+
+	private int containsScan(Set<String> fingerPrints, String line) {
+		int matched = 0;
+		for (String fingerPrint : fingerPrints)
+			if (line.contains(fingerPrint))
+				matched++;
+		return matched;
+	}
+
+	private long rate(int count, long elapsed) {
+		return count * 1000000000L / Math.max(elapsed, 1);
+	}
+
+	private List<String> loadPatternStrings() throws IOException {
+		List<String> patterns = new ArrayList<String>();
+		BufferedReader br = new BufferedReader(new FileReader(new File(FORMAT_FILE)));
+		try {
+			String line = null;
+			while ((line = br.readLine()) != null)
+				if (line.contains("!") && line.contains("<"))
+					patterns.add(line);
+		} finally {
+			br.close();
+		}
+		return patterns;
+	}
+
+	private String fill(String pattern) {
+		return pattern.replaceAll("\\{ ([^|}]+?) (\\|[^}]*)?\\}", "$1").replace("<src-ip>", "10.1.2.3")
+				.replace("<dst-ip>", "172.16.30.4").replace("<src-port>", "51234").replace("<dst-port>", "80")
+				.replace("<zone-name>", "Untrust").replace("<interface-name>", "ethernet0/1")
+				.replace("<none>", "12").replace("<protocol>", "17").replaceAll("<[^>]+>", "x");
+	}
+
+	private Set<String> set(String... values) {
+		return new HashSet<String>(Arrays.asList(values));
+	}
+}
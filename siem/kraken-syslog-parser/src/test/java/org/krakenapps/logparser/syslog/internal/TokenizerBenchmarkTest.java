@@ -0,0 +1,292 @@
+package org.krakenapps.logparser.syslog.internal;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.krakenapps.log.api.DelimiterParser;
+import org.krakenapps.log.api.FastDateParser;
+import org.krakenapps.log.api.KeyTable;
+import org.krakenapps.logparser.syslog.fortinet.FortigateLogParser;
+import org.krakenapps.logparser.syslog.paloaltonetworks.PaloAltoLogParser;
+import org.krakenapps.util.QuotedKeyValueParser;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compares tokenizer based parsers with previous substring and regex based
+ * implementations. Each benchmark checks that both produce same fields.
+ */
+public class TokenizerBenchmarkTest {
+	private static final int COUNT = 200000;
+
+	private static final String WEGUARDIA_LINE = "1;20120312 103012;10.0.0.1;192.168.0.10;1.1.1.1;51234;40000;"
+			+ "172.16.0.5;2.2.2.2;80;8080;6;1;allow;3;FW;note;12;1;10;2;;admin;eth0";
+
+	private static final String NEOBOX_LINE = "xnkey=fdf17a03cc7e7d8233c03ae442f38941 code=34553434 xnid=0501510001 "
+			+ "class=이벤트 subclass=인증 level=notice subject=admin result=성공 msg=\"관리자 admin 이(가) 보안장비 로그인에 성공하였습니다. (접속IP=192.168.0.149 접속프로그램=webbrowser) (LocalAuth)\"";
+
+	private static final String FORTIGATE_LINE = "date=2012-03-12 time=10:30:12 devname=FG200B3909601234 device_id=FG200B3909601234 "
+			+ "log_id=0021000002 type=traffic subtype=allowed pri=notice vd=root SN=1861 duration=180 user=N/A group=N/A "
+			+ "policy_id=1 proto=6 service=80/tcp app_type=N/A status=accept src=10.10.10.1 srcname=10.10.10.1 "
+			+ "dst=172.16.1.1 dstname=172.16.1.1 src_int=\"internal\" dst_int=\"wan1\" sent=1228 rcvd=1442 sent_pkt=7 "
+			+ "rcvd_pkt=6 src_port=2218 dst_port=80 vpn=\"N/A\" tran_ip=1.2.3.4 tran_port=2218 dir_disp=org tran_disp=snat "
+			+ "msg='session \\'closed\\' by peer' shaper_drop_sent=0 shaper_drop_rcvd=0";
+
+	private static final String PALOALTO_LINE = "Feb 22 16:27:11 1,2012/02/22 16:27:11,0002C101615,TRAFFIC,end,0,2012/02/22 16:27:10,172.16.246.56,112.76.169.110,0.0.0.0,0.0.0.0,"
+			+ "VPN,,,web-browsing,vsys1,L3_VPN,L3_DMZ,vlan,vlan.2,traffic_IPS_182,2012/02/22 16:27:10,344092,1,3744,80,0,0,0x0,tcp,allow,"
+			+ "1732,1732,1732,7,2012/02/22 16:24:30,130,any,0,0,0x0,172.16.0.0-172.31.255.255,Korea Republic Of,0";
+
+	private static final String[] WEGUARDIA_HEADERS = new String[] { "type", "date", "oip", "sip", "nat_sip", "sport",
+			"nat_sport", "dip", "nat_dip", "dport", "nat_dport", "protocol", "logtype", "act", "severity", "product", "note",
+			"count", "category", "rule", "group_id", "usage", "user", "iface" };
+
+	@Test
+	public void benchmarkDelimiterParser() {
+		final Map<String, Object> params = new HashMap<String, Object>();
+		params.put("line", WEGUARDIA_LINE);
+		final DelimiterParser parser = new DelimiterParser(";", WEGUARDIA_HEADERS);
+
+		assertEquals(legacyDelimiter(params, ";", WEGUARDIA_HEADERS), parser.parse(params));
+		assertEquals(legacyDelimiter(params, ";", null), new DelimiterParser(";", null).parse(params));
+
+		Map<String, Object> trailing = new HashMap<String, Object>();
+		for (String line : new String[] { "", ";", "a;;b;;", ";a", "a;b" }) {
+			trailing.put("line", line);
+			assertEquals(line, legacyDelimiter(trailing, ";", null), new DelimiterParser(";", null).parse(trailing));
+		}
+
+		compare("delimiter", new Runnable() {
+			@Override
+			public void run() {
+				legacyDelimiter(params, ";", WEGUARDIA_HEADERS);
+			}
+		}, new Runnable() {
+			@Override
+			public void run() {
+				parser.parse(params);
+			}
+		});
+	}
+
+	@Test
+	public void benchmarkKeyValueParser() {
+		final KeyTable keys = new KeyTable("xnkey", "code", "xnid", "class", "subclass", "level", "subject", "result", "msg");
+		assertEquals(legacyKeyValue(NEOBOX_LINE), KeyValueParser.parse(NEOBOX_LINE, keys));
+
+		compare("key value", new Runnable() {
+			@Override
+			public void run() {
+				legacyKeyValue(NEOBOX_LINE);
+			}
+		}, new Runnable() {
+			@Override
+			public void run() {
+				KeyValueParser.parse(NEOBOX_LINE, keys);
+			}
+		});
+	}
+
+	@Test
+	public void benchmarkFortigateParser() {
+		final Map<String, Object> params = new HashMap<String, Object>();
+		params.put("msg", FORTIGATE_LINE);
+		params.put("severity", 5);
+		params.put("facility", 1);
+		final FortigateLogParser parser = new FortigateLogParser();
+
+		assertEquals(legacyFortigate(params), parser.parse(params));
+		for (String line : new String[] { "k1=123 k2=\"asdf asdf asdf\" k3= \"asdf\" k4=\"\" k5=\"asdf\" k6='asdf'",
+				"k7='asdf asdf' k8=\"hello \\\" stania \\\"\" k9=asdf\"asdf asdf asdf\"", "k10=asdf\" asdf\" k11=",
+				"junk k12=a\\'b k13=\"open" }) {
+			Map<String, Object> m = new HashMap<String, Object>(params);
+			m.put("msg", line);
+			assertEquals(line, legacyFortigate(m), parser.parse(m));
+		}
+
+		compare("fortigate", new Runnable() {
+			@Override
+			public void run() {
+				legacyFortigate(params);
+			}
+		}, new Runnable() {
+			@Override
+			public void run() {
+				parser.parse(params);
+			}
+		});
+	}
+
+	@Test
+	public void benchmarkPaloAltoParser() {
+		final Map<String, Object> params = new HashMap<String, Object>();
+		params.put("line", PALOALTO_LINE);
+		final PaloAltoLogParser parser = new PaloAltoLogParser();
+
+		assertEquals(legacyPaloAltoTraffic(PALOALTO_LINE), parser.parse(params));
+
+		compare("paloalto", new Runnable() {
+			@Override
+			public void run() {
+				legacyPaloAltoTraffic(PALOALTO_LINE);
+			}
+		}, new Runnable() {
+			@Override
+			public void run() {
+				parser.parse(params);
+			}
+		});
+	}
+
+	@Test
+	public void benchmarkDateParser() throws Exception {
+		final String date = "20120312 103012";
+		final FastDateParser parser = new FastDateParser("yyyyMMdd HHmmss");
+		assertEquals(new SimpleDateFormat("yyyyMMdd HHmmss").parse(date), parser.parse(date));
+		assertEquals(new SimpleDateFormat("yyyyMMdd HHmmss").parse("20120231 250000"), parser.parse("20120231 250000"));
+		assertEquals(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS").parse("2012-07-01 08:59:01.123"), new FastDateParser(
+				"yyyy-MM-dd HH:mm:ss.SSS").parse("2012-07-01 08:59:01.123"));
+
+		compare("date", new Runnable() {
+			@Override
+			public void run() {
+				try {
+					new SimpleDateFormat("yyyyMMdd HHmmss").parse(date);
+				} catch (Exception e) {
+					throw new IllegalStateException(e);
+				}
+			}
+		}, new Runnable() {
+			@Override
+			public void run() {
+				try {
+					parser.parse(date);
+				} catch (Exception e) {
+					throw new IllegalStateException(e);
+				}
+			}
+		});
+	}
+
+	private void compare(String name, Runnable legacy, Runnable tokenizer) {
+		// warm up
+		for (int i = 0; i < COUNT / 4; i++) {
+			legacy.run();
+			tokenizer.run();
+		}
+
+		long legacyElapsed = measure(legacy);
+		long tokenizerElapsed = measure(tokenizer);
+		System.out.println(String.format("%s parser: legacy %d lines/s, tokenizer %d lines/s", name, rate(legacyElapsed),
+				rate(tokenizerElapsed)));
+	}
+
+	private long measure(Runnable r) {
+		long begin = System.nanoTime();
+		for (int i = 0; i < COUNT; i++)
+			r.run();
+		return System.nanoTime() - begin;
+	}
+
+	private long rate(long elapsed) {
+		return COUNT * 1000000000L / Math.max(elapsed, 1);
+	}
+
+	private static Map<String, Object> legacyDelimiter(Map<String, Object> params, String delimiter, String[] columnHeaders) {
+		String line = (String) params.get("line");
+		String[] tokens = line.split(delimiter);
+
+		Map<String, Object> m = new HashMap<String, Object>(tokens.length);
+		m.putAll(params);
+		m.remove("line");
+		for (int i = 0; i < tokens.length; i++) {
+			if (columnHeaders != null && i < columnHeaders.length)
+				m.put(columnHeaders[i], tokens[i].trim());
+			else
+				m.put("column" + Integer.toString(i), tokens[i]);
+		}
+
+		return m;
+	}
+
+	private static Map<String, Object> legacyKeyValue(String line) {
+		int lineLength = line.length();
+		Map<String, Object> m = new HashMap<String, Object>();
+
+		int keyBegin = 0;
+		while (true) {
+			int keyEnd = line.indexOf('=', keyBegin);
+			if (keyEnd > 0) {
+				String key = line.substring(keyBegin, keyEnd);
+
+				if (line.charAt(keyEnd + 1) == '\"') {
+					int valueEnd = line.indexOf('\"', keyEnd + 2);
+					m.put(key, line.substring(keyEnd + 2, valueEnd));
+					keyBegin = valueEnd + 1;
+				} else {
+					int valueEnd = line.indexOf(' ', keyEnd + 1);
+					m.put(key, line.substring(keyEnd + 1, valueEnd));
+					keyBegin = valueEnd + 1;
+				}
+
+				if (keyBegin >= lineLength - 1)
+					break;
+
+				while (line.charAt(keyBegin) == ' ')
+					keyBegin++;
+			} else
+				break;
+		}
+
+		return m;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Map<String, Object> legacyFortigate(Map<String, Object> params) {
+		Map<String, Object> map = (Map<String, Object>) (Object) QuotedKeyValueParser.parse((String) params.get("msg"));
+		map.put("severity", params.get("severity"));
+		map.put("facility", params.get("facility"));
+		return map;
+	}
+
+	private static Map<String, Object> legacyPaloAltoTraffic(String line) {
+		List<String> tokens = new ArrayList<String>();
+		int offset = 0;
+		while (true) {
+			int pos = line.indexOf(',', offset);
+			if (pos < 0) {
+				tokens.add(line.substring(offset));
+				break;
+			}
+
+			tokens.add(line.substring(offset, pos));
+			offset = pos + 1;
+		}
+
+		Map<String, Object> m = new HashMap<String, Object>();
+		String[] names = { null, "recv_time", "serial", "type", "subtype", null, null, "src_ip", "dst_ip", "nat_src_ip",
+				"nat_dst_ip", "rule", "src_user", "dst_user", "application", "virtual_system", "src_zone", "dst_zone",
+				"in_iface", "out_iface", "log_profile", null, "session_id" };
+		for (int i = 0; i < names.length; i++)
+			if (names[i] != null)
+				m.put(names[i], tokens.get(i));
+
+		m.put("repeat", Integer.valueOf(tokens.get(23)));
+		m.put("src_port", Integer.valueOf(tokens.get(24)));
+		m.put("dst_port", Integer.valueOf(tokens.get(25)));
+		m.put("nat_src_port", Integer.valueOf(tokens.get(26)));
+		m.put("nat_dst_port", Integer.valueOf(tokens.get(27)));
+		m.put("flags", tokens.get(28));
+		m.put("protocol", tokens.get(29));
+		m.put("action", tokens.get(30));
+		m.put("bytes", Long.valueOf(tokens.get(31)));
+		m.put("packets", Long.valueOf(tokens.get(34)));
+		m.put("start_time", tokens.get(35));
+		m.put("elapsed_time", Integer.valueOf(tokens.get(36)));
+		m.put("category", tokens.get(37));
+		return m;
+	}
+}